@@ -37,9 +37,12 @@ import com.mucommander.bookmark.file.BookmarkProtocolProvider;
 import com.mucommander.command.Command;
 import com.mucommander.command.CommandManager;
 import com.mucommander.command.CommandType;
+import com.mucommander.commons.file.ArchiveIndexCache;
 import com.mucommander.commons.file.FileFactory;
+import com.mucommander.commons.file.connection.ConnectionPool;
 import com.mucommander.commons.file.icon.impl.SwingFileIconProvider;
 import com.mucommander.commons.file.impl.ftp.FTPProtocolProvider;
+import com.mucommander.commons.file.impl.sevenzip.SevenZipArchiveFile;
 import com.mucommander.commons.file.impl.smb.SMBProtocolProvider;
 import com.mucommander.commons.runtime.OsFamily;
 import com.mucommander.conf.MuConfigurations;
@@ -81,6 +84,8 @@ public class TrolCommander {
     public static boolean isLaunching = true;
     /** Launch lock. */
     private static final Object LAUNCH_LOCK = new Object();
+    /** Name of the preferences subfolder where archive indexes are cached. */
+    private static final String ARCHIVE_INDEX_CACHE_FOLDER = "archive_index";
 
 
     // - Initialisation ---------------------------------------------------------
@@ -472,11 +477,21 @@ public class TrolCommander {
             // the servers to decide whether to show them.
             FTPProtocolProvider.setForceHiddenFilesListing(MuConfigurations.getPreferences().getVariable(MuPreference.LIST_HIDDEN_FILES, MuPreferences.DEFAULT_LIST_HIDDEN_FILES));
 
+            // Limit the number of connections opened to a same server, whatever the account they are opened with
+            ConnectionPool.setMaxConnectionsPerRealm(Math.max(1, MuConfigurations.getPreferences().getVariable(MuPreference.MAX_CONNECTIONS_PER_SERVER, MuPreferences.DEFAULT_MAX_CONNECTIONS_PER_SERVER)));
+
             // Use CredentialsManager for file URL authentication
             FileFactory.setDefaultAuthenticator(CredentialsManager.getAuthenticator());
 
             // Register the application-specific 'bookmark' protocol.
             FileFactory.registerProtocol(BookmarkProtocolProvider.BOOKMARK, new com.mucommander.bookmark.file.BookmarkProtocolProvider());
+
+            // Persist the listing of archives that are expensive to list, like compressed TAR archives
+            ArchiveIndexCache.setCacheFolder(PlatformManager.getPreferencesFolder().getChild(ARCHIVE_INDEX_CACHE_FOLDER));
+            ArchiveIndexCache.setMaxSize(MuConfigurations.getPreferences().getVariable(MuPreference.ARCHIVE_INDEX_CACHE_SIZE, MuPreferences.DEFAULT_ARCHIVE_INDEX_CACHE_SIZE));
+
+            // Bound the memory used to stream each entry of a 7-Zip archive
+            SevenZipArchiveFile.setEntryBufferSize(MuConfigurations.getPreferences().getVariable(MuPreference.ARCHIVE_ENTRY_BUFFER_SIZE, MuPreferences.DEFAULT_ARCHIVE_ENTRY_BUFFER_SIZE));
         }
     }
 
@@ -28,6 +28,7 @@ import org.slf4j.LoggerFactory;
 import javax.swing.tree.DefaultMutableTreeNode;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Vector;
 import java.util.WeakHashMap;
@@ -115,16 +116,41 @@ public abstract class AbstractArchiveFile extends ProxyFile {
         archiveEntryFiles = new WeakHashMap<>();
 
         long start = System.currentTimeMillis();
+
+        // Use the persistent index if the archive hasn't changed since it was created
+        boolean cacheable = isEntriesIndexCacheable() && ArchiveIndexCache.isEnabled();
+        if(cacheable) {
+            List<ArchiveEntry> cachedEntries = ArchiveIndexCache.load(this);
+            if(cachedEntries!=null) {
+                for(ArchiveEntry entry : cachedEntries)
+                    treeRoot.addArchiveEntry(entry);
+
+                LOGGER.info("entries tree loaded from index cache in "+(System.currentTimeMillis()-start)+" ms");
+
+                this.entryTreeRoot = treeRoot;
+                declareEntriesTreeUpToDate();
+                return;
+            }
+        }
+
+        List<ArchiveEntry> listedEntries = cacheable?new ArrayList<ArchiveEntry>():null;
         ArchiveEntryIterator entries = getEntryIterator();
         try {
             ArchiveEntry entry;
-            while((entry=entries.nextEntry())!=null)
+            while((entry=entries.nextEntry())!=null) {
                 treeRoot.addArchiveEntry(entry);
+                if(listedEntries!=null)
+                    listedEntries.add(entry);
+            }
 
-            LOGGER.info("entries tree created in "+(System.currentTimeMillis()-start)+" ms");
+            long listingTime = System.currentTimeMillis()-start;
+            LOGGER.info("entries tree created in "+listingTime+" ms");
 
             this.entryTreeRoot = treeRoot;
             declareEntriesTreeUpToDate();
+
+            if(listedEntries!=null)
+                ArchiveIndexCache.store(this, listedEntries, listingTime);
         }
         finally {
             try { entries.close(); }
@@ -134,6 +160,46 @@ public abstract class AbstractArchiveFile extends ProxyFile {
         }
     }
 
+    /**
+     * Returns <code>true</code> if the entries returned by {@link #getEntryIterator()} may be persisted by
+     * {@link ArchiveIndexCache} and used in place of the iterator the next time the entries tree is created, as long as
+     * the archive file hasn't changed. This is worth doing for archives that are expensive to list, but requires
+     * {@link #getEntryInputStream(ArchiveEntry, ArchiveEntryIterator)} to be able to locate entries using only the
+     * attributes that are persisted, i.e. without their {@link ArchiveEntry#getEntryObject() entry object}.
+     *
+     * <p>This implementation returns <code>false</code>.</p>
+     *
+     * @return true if the entries of this archive may be cached
+     */
+    protected boolean isEntriesIndexCacheable() {
+        return false;
+    }
+
+    /**
+     * Returns data that {@link ArchiveIndexCache} stores along with the entries of this archive, <code>null</code> if
+     * there is none. This method is called right after the archive has been listed, and the data is handed back to
+     * {@link #setEntriesIndexData(byte[])} when the entries are later loaded from the cache. This allows archives to
+     * keep what they learnt while being listed, without having to list them again.
+     *
+     * <p>This implementation returns <code>null</code>.</p>
+     *
+     * @return data to store along with the entries of this archive, null if there is none
+     */
+    protected byte[] getEntriesIndexData() {
+        return null;
+    }
+
+    /**
+     * Called by {@link ArchiveIndexCache} when the entries of this archive are loaded from the cache, with the data
+     * that {@link #getEntriesIndexData()} returned when the entries were stored, <code>null</code> if there was none.
+     *
+     * <p>This implementation does nothing.</p>
+     *
+     * @param data the data that was stored along with the entries of this archive, may be null
+     */
+    protected void setEntriesIndexData(byte data[]) {
+    }
+
     /**
      * Checks if the entries tree exists and if this file hasn't been modified since the tree was last created.
      * If any of those 2 conditions isn't met, the entries tree is (re)created.
@@ -441,6 +507,53 @@ public abstract class AbstractArchiveFile extends ProxyFile {
      */
     public abstract boolean isWritable();
 
+    /**
+     * Returns <code>true</code> if the streams returned by
+     * {@link #getEntryInputStream(ArchiveEntry, ArchiveEntryIterator)} can be opened and read from several threads
+     * concurrently, without an {@link ArchiveEntryIterator}. Archive implementations that need to traverse the archive
+     * to locate an entry should return <code>false</code>, as entries are then best read sequentially using the
+     * iterator.
+     *
+     * <p>This implementation returns <code>false</code>.</p>
+     *
+     * @return true if entries can be read concurrently
+     */
+    public boolean isConcurrentEntryReadSupported() {
+        return false;
+    }
+
+    /**
+     * Returns <code>true</code> if this archive can extract a set of entries in a single pass, with
+     * {@link #getBatchEntryIterator(List)}. Formats that compress several entries together, like solid 7-Zip and RAR
+     * archives, should support it: extracting their entries one by one decompresses the same data over and over.
+     *
+     * <p>This implementation returns <code>false</code>.</p>
+     *
+     * @return true if entries can be extracted in a single pass with {@link #getBatchEntryIterator(List)}
+     */
+    public boolean isBatchEntryReadSupported() {
+        return false;
+    }
+
+    /**
+     * Returns an iterator over the given entries that extracts them in a single pass over the archive. The iterator
+     * returns the entries in archive order, regardless of the order of the list, and the contents of the current
+     * entry are read by passing the iterator to {@link #getEntryInputStream(ArchiveEntry, ArchiveEntryIterator)}.
+     * The specified {@link ArchiveEntry} instances must have been returned by the {@link ArchiveEntryIterator} returned
+     * by {@link #getEntryIterator()}.
+     *
+     * <p>This implementation throws an <code>UnsupportedFileOperationException</code>, it must be overridden by
+     * archives whose {@link #isBatchEntryReadSupported()} method returns <code>true</code>.</p>
+     *
+     * @param entries the entries to extract, directories included
+     * @return an iterator that extracts the given entries in archive order
+     * @throws IOException if an error occurred while reading the archive
+     * @throws UnsupportedFileOperationException if batch extraction is not supported by this archive
+     */
+    public BatchArchiveEntryIterator getBatchEntryIterator(List<ArchiveEntry> entries) throws IOException, UnsupportedFileOperationException {
+        throw new UnsupportedFileOperationException(FileOperation.READ_FILE);
+    }
+
 
     /////////////////////////////////////////
     // Partial AbstractFile implementation //
@@ -522,6 +635,27 @@ public abstract class AbstractArchiveFile extends ProxyFile {
         return ls(entryTreeRoot, this, null, filter);
     }
 
+    /**
+     * This method is overridden to pass the topmost entries contained by this archive to the given listener, in a
+     * single batch, rather than the children of the underlying file.
+     *
+     * @param filter the FileFilter to be used to filter files out from the list, may be <code>null</code>
+     * @param listener the listener to pass the entries to
+     * @throws IOException if the archive entries could not be listed
+     * @throws UnsupportedFileOperationException if {@link FileOperation#READ_FILE} operations are not supported by the
+     * underlying file protocol.
+     */
+    @Override
+    public void ls(FileFilter filter, ListingListener listener) throws IOException, UnsupportedFileOperationException {
+        // Delegate to the ancestor if this file isn't actually an archive
+        if(!isArchive()) {
+            super.ls(filter, listener);
+            return;
+        }
+
+        listener.childrenListed(ls(filter));
+    }
+
     // Note: do not override #isDirectory() to always return true, as AbstractArchiveFile instances may be created when
     // the file does not exist yet, and then be mkdir(): in that case, the file will be a directory and not an archive.
 }
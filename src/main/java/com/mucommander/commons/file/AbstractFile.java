@@ -524,6 +524,28 @@ public abstract class AbstractFile implements FileAttributes, PermissionTypes, P
     }
 
 
+    /**
+     * Lists the children files that this file contains and passes them to the given {@link ListingListener} in
+     * batches, as they are listed, filtering out files that do not match the specified FileFilter. This method returns
+     * once the listing is complete, or once the listener has asked to stop. For this operation to be successful, this
+     * file must be 'browsable', i.e. {@link #isBrowsable()} must return <code>true</code>.
+     *
+     * <p>This default implementation calls {@link #ls(FileFilter)} and passes all the children at once, in a single
+     * batch. This method should be overridden by filesystems that list children in several requests or that can
+     * otherwise return the first children before the whole listing is complete.</p>
+     *
+     * @param filter the FileFilter to be used to filter files out from the list, may be <code>null</code>
+     * @param listener the listener to pass the children to
+     * @throws IOException if this operation is not possible (file is not browsable) or if an error occurred.
+     * Batches that were listed before the error occurred may already have been passed to the listener.
+     * @throws UnsupportedFileOperationException if this method relies on a file operation that is not supported
+     * or not implemented by the underlying filesystem.
+     */
+    public void ls(FileFilter filter, ListingListener listener) throws IOException, UnsupportedFileOperationException {
+        listener.childrenListed(ls(filter));
+    }
+
+
     /**
      * Returns the children files that this file contains, filtering out files that do not match the specified FilenameFilter.
      * For this operation to be successful, this file must be 'browsable', i.e. {@link #isBrowsable()} must return
@@ -39,6 +39,9 @@ public class ArchiveEntry extends SimpleFileAttributes {
     /** Caches the computed hashcode */
     private int hashCode;
 
+    /** Format-dependent offset of the entry within the archive, -1 if unknown */
+    private long offset = -1;
+
 
     /**
      * Creates a new ArchiveEntry with all attributes set to their default value.
@@ -123,6 +126,28 @@ public class ArchiveEntry extends SimpleFileAttributes {
         this.entryObject = entryObject;
     }
 
+    /**
+     * Returns the offset of this entry within the archive, <code>-1</code> if it is unknown. The meaning of the offset
+     * is archive format-dependent: it may for instance be the position of the entry's header in the uncompressed
+     * archive. Unlike {@link #getEntryObject() the entry object}, the offset is persisted by {@link ArchiveIndexCache}
+     * and can be used to locate an entry without having to list the archive again.
+     *
+     * @return the offset of this entry within the archive, -1 if it is unknown
+     */
+    public long getOffset() {
+        return offset;
+    }
+
+    /**
+     * Sets the offset of this entry within the archive, <code>-1</code> if it is unknown.
+     * See {@link #getOffset()} for more information about the offset.
+     *
+     * @param offset the offset of this entry within the archive, -1 if it is unknown
+     */
+    public void setOffset(long offset) {
+        this.offset = offset;
+    }
+
 
     ////////////////////////
     // Overridden methods //
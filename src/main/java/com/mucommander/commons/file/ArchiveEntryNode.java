@@ -0,0 +1,142 @@
+/**
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2010 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.commons.file;
+
+import javax.swing.tree.DefaultMutableTreeNode;
+import javax.swing.tree.MutableTreeNode;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A node of an {@link ArchiveEntryTree}. In addition to the ordered list of children maintained by
+ * <code>DefaultMutableTreeNode</code>, each node keeps a hash index of its children keyed by their name (the last
+ * path segment, without any trailing separator), so that a child can be looked up in constant time regardless of
+ * the number of entries the directory contains.
+ *
+ * <p>The index is maintained by {@link #insert(MutableTreeNode, int)} and {@link #remove(int)}, which all the other
+ * <code>DefaultMutableTreeNode</code> mutators go through. It is only allocated when the first child is added, leaf
+ * nodes therefore carry no extra cost.</p>
+ */
+public class ArchiveEntryNode extends DefaultMutableTreeNode {
+
+    private static final long serialVersionUID = 1L;
+
+    /** Name of this node within its parent, i.e. the last segment of the entry's path without trailing separator */
+    private final String name;
+
+    /** Children indexed by name, created lazily when the first child is inserted */
+    private Map<String, ArchiveEntryNode> childIndex;
+
+    /**
+     * Creates a new node with no user object, used for the root of the tree.
+     */
+    ArchiveEntryNode() {
+        this.name = "";
+    }
+
+    /**
+     * Creates a new node for the given entry.
+     *
+     * @param entry the entry this node corresponds to
+     * @param name the entry's name, i.e. the last segment of its path without trailing separator
+     */
+    public ArchiveEntryNode(ArchiveEntry entry, String name) {
+        super(entry, true);
+        this.name = name;
+    }
+
+    /**
+     * Returns the name of this node, i.e. the last segment of the entry's path without trailing separator.
+     *
+     * @return the name of this node
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Returns the {@link ArchiveEntry} this node corresponds to, <code>null</code> for the root node.
+     *
+     * @return the ArchiveEntry this node corresponds to
+     */
+    public ArchiveEntry getArchiveEntry() {
+        return (ArchiveEntry)getUserObject();
+    }
+
+    /**
+     * Returns the direct child with the given name, <code>null</code> if this node has no such child. If several
+     * children share the same name, the first one that was added is returned.
+     *
+     * @param childName name of the child to look up, without trailing separator
+     * @return the direct child with the given name, <code>null</code> if there is none
+     */
+    public ArchiveEntryNode getChild(String childName) {
+        return childIndex==null?null:childIndex.get(childName);
+    }
+
+
+    ////////////////////////
+    // Overridden methods //
+    ////////////////////////
+
+    /**
+     * Overridden to register the child in the name index. Children that are not <code>ArchiveEntryNode</code>
+     * instances are accepted but not indexed.
+     */
+    @Override
+    public void insert(MutableTreeNode newChild, int childIndex) {
+        super.insert(newChild, childIndex);
+
+        if(newChild instanceof ArchiveEntryNode) {
+            ArchiveEntryNode child = (ArchiveEntryNode)newChild;
+            if(this.childIndex==null)
+                this.childIndex = new HashMap<>();
+
+            // Keep the first child in case of duplicates, like a linear scan of the children would
+            if(!this.childIndex.containsKey(child.name))
+                this.childIndex.put(child.name, child);
+        }
+    }
+
+    /**
+     * Overridden to unregister the child from the name index. If another child with the same name exists, it takes
+     * the removed child's place in the index.
+     */
+    @Override
+    public void remove(int childIndex) {
+        MutableTreeNode child = (MutableTreeNode)getChildAt(childIndex);
+        super.remove(childIndex);
+
+        if(this.childIndex!=null && (child instanceof ArchiveEntryNode)) {
+            String childName = ((ArchiveEntryNode)child).name;
+            if(this.childIndex.get(childName)==child) {
+                this.childIndex.remove(childName);
+
+                int nbChildren = getChildCount();
+                for(int c=0; c<nbChildren; c++) {
+                    Object sibling = getChildAt(c);
+                    if((sibling instanceof ArchiveEntryNode) && childName.equals(((ArchiveEntryNode)sibling).name)) {
+                        this.childIndex.put(childName, (ArchiveEntryNode)sibling);
+                        break;
+                    }
+                }
+            }
+        }
+    }
+}
@@ -19,28 +19,62 @@
 
 package com.mucommander.commons.file;
 
-import com.mucommander.commons.file.util.PathUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.swing.tree.DefaultMutableTreeNode;
+import java.util.HashMap;
+import java.util.Map;
 
 /**
  * Stores archive entries and organizes them in a tree structure that maps entries in the way they are organized
  * inside the archive. An instance of <code>ArchiveEntryTree</code> also acts as the root node: all entry nodes
  * are children of it (direct or indirect).
  *
+ * <p>Nodes are {@link ArchiveEntryNode} instances which index their children by name, so adding an entry or looking
+ * one up costs one hash lookup per path segment, independently of the number of entries in each directory.
+ * Path segments are interned within the tree so that directory names repeated throughout the archive are
+ * only stored once.</p>
+ *
  * @author Maxence Bernard
  */
-public class ArchiveEntryTree extends DefaultMutableTreeNode {
+public class ArchiveEntryTree extends ArchiveEntryNode {
     private static final Logger LOGGER = LoggerFactory.getLogger(ArchiveEntryTree.class);
 
+    /** Pool of path segments used to share identical names between nodes */
+    private Map<String, String> names = new HashMap<>();
+
     /**
      * Creates a new empty tree.
      */
     public ArchiveEntryTree() {
     }
 
+    /**
+     * Returns the canonical instance of the given name within this tree.
+     *
+     * @param name the name to intern
+     * @return a string equal to the given one, shared by all nodes of this tree
+     */
+    private String intern(String name) {
+        String interned = names.get(name);
+        if(interned==null) {
+            names.put(name, name);
+            interned = name;
+        }
+        return interned;
+    }
+
+    /**
+     * Returns the name of the segment of <code>entryPath</code> starting at <code>start</code> and ending before
+     * <code>end</code>, without any trailing separator.
+     */
+    private static String getSegment(String entryPath, int start, int end) {
+        if(end>start && entryPath.charAt(end-1)=='/')
+            end--;
+        return entryPath.substring(start, end);
+    }
+
     /**
      * Adds the given entry to the archive tree, creating parent nodes as necessary.
      *
@@ -50,31 +84,21 @@ public class ArchiveEntryTree extends DefaultMutableTreeNode {
         String entryPath = entry.getPath();
         int entryDepth = entry.getDepth();
         int slashPos = 0;
-        DefaultMutableTreeNode node = this;
+        ArchiveEntryNode node = this;
         for(int d=1; d<=entryDepth; d++) {
+            int segmentStart = slashPos;
+            int segmentEnd = d==entryDepth?entryPath.length():(slashPos=entryPath.indexOf('/', slashPos)+1);
+            String name = intern(getSegment(entryPath, segmentStart, segmentEnd));
+
             if(d==entryDepth && !entry.isDirectory()) {
                 // create a leaf node for the entry
                 entry.setExists(true);      // the entry has to exist
-                node.add(new DefaultMutableTreeNode(entry, true));
+                node.add(new ArchiveEntryNode(entry, name));
                 break;
             }
 
-            String subPath = d==entryDepth?entryPath:entryPath.substring(0, (slashPos=entryPath.indexOf('/', slashPos)+1));
-
-            int nbChildren = node.getChildCount();
-            DefaultMutableTreeNode childNode = null;
-            boolean matchFound = false;
-            for(int c=0; c<nbChildren; c++) {
-                childNode = (DefaultMutableTreeNode)node.getChildAt(c);
-                // Path comparison is 'trailing slash insensitive'
-                if(PathUtils.pathEquals(((ArchiveEntry)childNode.getUserObject()).getPath(), subPath, "/")) {
-                    // Found a match
-                    matchFound = true;
-                    break;
-                }
-            }
-
-            if(matchFound) {
+            ArchiveEntryNode childNode = node.getChild(name);
+            if(childNode!=null) {
                 if(d==entryDepth) {
                     LOGGER.trace("Replacing entry for node "+childNode);
                     // Replace existing entry
@@ -88,11 +112,12 @@ public class ArchiveEntryTree extends DefaultMutableTreeNode {
                 if(d==entryDepth) {
                     // create a leaf node for the entry
                     entry.setExists(true);      // the entry has to exist
-                    node.add(new DefaultMutableTreeNode(entry, true));
+                    node.add(new ArchiveEntryNode(entry, name));
                 }
                 else {
+                    String subPath = entryPath.substring(0, slashPos);
                     LOGGER.trace("Creating node for "+subPath);
-                    childNode = new DefaultMutableTreeNode(new ArchiveEntry(subPath, true, entry.getDate(), 0, true), true);
+                    childNode = new ArchiveEntryNode(new ArchiveEntry(subPath, true, entry.getDate(), 0, true), name);
                     node.add(childNode);
                     node = childNode;
                 }
@@ -115,27 +140,14 @@ public class ArchiveEntryTree extends DefaultMutableTreeNode {
     public DefaultMutableTreeNode findEntryNode(String entryPath) {
         int entryDepth = ArchiveEntry.getDepth(entryPath);
         int slashPos = 0;
-        DefaultMutableTreeNode currentNode = this;
+        ArchiveEntryNode currentNode = this;
         for(int d=1; d<=entryDepth; d++) {
-            String subPath = d==entryDepth?entryPath:entryPath.substring(0, (slashPos=entryPath.indexOf('/', slashPos)+1));
-
-            int nbChildren = currentNode.getChildCount();
-            DefaultMutableTreeNode matchNode = null;
-            for(int c=0; c<nbChildren; c++) {
-                DefaultMutableTreeNode childNode = (DefaultMutableTreeNode)currentNode.getChildAt(c);
-
-                // Path comparison is 'trailing slash insensitive'
-                if(PathUtils.pathEquals(((ArchiveEntry)childNode.getUserObject()).getPath(), subPath, "/")) {
-                    // Found the node, let's return it
-                    matchNode = childNode;
-                    break;
-                }
-            }
+            int segmentStart = slashPos;
+            int segmentEnd = d==entryDepth?entryPath.length():(slashPos=entryPath.indexOf('/', slashPos)+1);
 
-            if(matchNode==null)
+            currentNode = currentNode.getChild(getSegment(entryPath, segmentStart, segmentEnd));
+            if(currentNode==null)
                 return null;    // No node maching the provided path, return null
-
-            currentNode = matchNode;
         }
 
         return currentNode;
@@ -0,0 +1,561 @@
+/**
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2010 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.commons.file;
+
+import com.mucommander.commons.file.filter.ExtensionFilenameFilter;
+import com.mucommander.commons.io.ByteUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UTFDataFormatException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Persistent cache of archive listings, which allows {@link AbstractArchiveFile} to rebuild its entries tree without
+ * having to read the archive again. This matters for archives that can only be listed by reading them entirely,
+ * like compressed TAR archives.
+ *
+ * <p>The cache is made of one binary index file per archive, stored in the {@link #setCacheFolder(AbstractFile) cache
+ * folder}. Indexes are written to a temporary file which is then renamed, so that a crash or a concurrent writer never
+ * leaves a truncated index behind. Index files are keyed by the archive's URL, and are only used if the archive's size and date still match
+ * the ones the index was created for. Each entry is stored with its path, size, date, directory flag, permissions,
+ * owner, group and {@link ArchiveEntry#getOffset() offset}. Paths are prefix-compressed and owners/groups
+ * are stored once, which keeps indexes compact. The entries are followed by the archive's own
+ * {@link AbstractArchiveFile#getEntriesIndexData() index data}, if any, which lets archives keep what they learnt
+ * while being listed (e.g. the checkpoints of a compressed stream) along with the entries.</p>
+ *
+ * <p>The total size of the cache folder is capped by {@link #setMaxSize(long)}: when the cap is exceeded, the least
+ * recently used indexes are deleted. Only archives whose listing took longer than
+ * {@link #setMinListingTime(long) a given time} are cached, there is no point in caching archives that can be listed
+ * in a snap.</p>
+ *
+ * <p>The cache is disabled until a cache folder is set. Archive implementations opt into the cache by overriding
+ * {@link AbstractArchiveFile#isEntriesIndexCacheable()}.</p>
+ */
+public class ArchiveIndexCache {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ArchiveIndexCache.class);
+
+    /** Default maximum size of the cache folder, in bytes */
+    public final static long DEFAULT_MAX_SIZE = 32 * 1024 * 1024;
+
+    /** Default minimum time a listing must take to be cached, in milliseconds */
+    public final static long DEFAULT_MIN_LISTING_TIME = 300;
+
+    /** Extension of index files */
+    private final static String INDEX_EXTENSION = ".idx";
+
+    /** Extension of the temporary files indexes are written to before being renamed */
+    private final static String TEMP_EXTENSION = ".tmp";
+
+    /** Age after which a temporary file is considered left over by a crash, in milliseconds */
+    private final static long TEMP_FILE_MAX_AGE = 60 * 60 * 1000;
+
+    /** Magic number at the beginning of index files ('muAI') */
+    private final static int MAGIC = 0x6D754149;
+
+    /** Version of the index file format, to be increased whenever the format changes */
+    private final static int FORMAT_VERSION = 3;
+
+    /** Flag bits of an entry */
+    private final static int FLAG_DIRECTORY = 1;
+    private final static int FLAG_PERMISSIONS = 2;
+
+    /** Folder where indexes are stored, null if the cache is disabled */
+    private static AbstractFile cacheFolder;
+
+    /** Maximum size of the cache folder, in bytes */
+    private static long maxSize = DEFAULT_MAX_SIZE;
+
+    /** Minimum time a listing must take to be cached, in milliseconds */
+    private static long minListingTime = DEFAULT_MIN_LISTING_TIME;
+
+    /**
+     * Sets the folder where archive indexes are stored, <code>null</code> to disable the cache. The folder is created
+     * when the first index is stored, if it doesn't exist already.
+     *
+     * @param folder the folder where archive indexes are stored, null to disable the cache
+     */
+    public static synchronized void setCacheFolder(AbstractFile folder) {
+        cacheFolder = folder;
+    }
+
+    /**
+     * Returns the folder where archive indexes are stored, <code>null</code> if the cache is disabled.
+     *
+     * @return the folder where archive indexes are stored, null if the cache is disabled
+     */
+    public static synchronized AbstractFile getCacheFolder() {
+        return cacheFolder;
+    }
+
+    /**
+     * Sets the maximum size of the cache folder, in bytes. Least recently used indexes are deleted when the total
+     * size of the indexes exceeds this value. A value of <code>0</code> disables the cache.
+     *
+     * @param size maximum size of the cache folder, in bytes
+     */
+    public static synchronized void setMaxSize(long size) {
+        maxSize = size;
+    }
+
+    /**
+     * Returns the maximum size of the cache folder, in bytes.
+     *
+     * @return the maximum size of the cache folder, in bytes
+     */
+    public static synchronized long getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * Sets the minimum time a listing must take for the archive's index to be cached, in milliseconds.
+     *
+     * @param time minimum time a listing must take to be cached, in milliseconds
+     */
+    public static synchronized void setMinListingTime(long time) {
+        minListingTime = time;
+    }
+
+    /**
+     * Returns the minimum time a listing must take for the archive's index to be cached, in milliseconds.
+     *
+     * @return minimum time a listing must take to be cached, in milliseconds
+     */
+    public static synchronized long getMinListingTime() {
+        return minListingTime;
+    }
+
+    /**
+     * Returns <code>true</code> if the cache is enabled, i.e. if a cache folder has been set and the maximum size is
+     * greater than zero.
+     *
+     * @return true if the cache is enabled
+     */
+    public static synchronized boolean isEnabled() {
+        return cacheFolder!=null && maxSize>0;
+    }
+
+    /**
+     * Returns the cached entries of the given archive, <code>null</code> if the archive has no cached index or if the
+     * archive has been modified since the index was created. Stale or corrupt indexes are deleted. The index data
+     * that was stored with the entries is handed to {@link AbstractArchiveFile#setEntriesIndexData(byte[])}.
+     *
+     * @param archive the archive for which to return entries
+     * @return the cached entries of the given archive, null if there are none
+     */
+    public static List<ArchiveEntry> load(AbstractArchiveFile archive) {
+        AbstractFile indexFile = getIndexFile(archive);
+        if(indexFile==null || !indexFile.exists())
+            return null;
+
+        synchronized(ArchiveIndexCache.class) {
+            List<ArchiveEntry> entries = null;
+            InputStream in = null;
+            try {
+                in = new BufferedInputStream(indexFile.getInputStream());
+                DataInputStream din = new DataInputStream(in);
+                List<ArchiveEntry> indexEntries = readIndex(din, getKey(archive), archive.getSize(), archive.getDate());
+                if(indexEntries!=null) {
+                    archive.setEntriesIndexData(readData(din));
+                    entries = indexEntries;
+                }
+            }
+            catch(IOException e) {
+                LOGGER.info("Could not read archive index "+indexFile, e);
+            }
+            finally {
+                closeSilently(in);
+            }
+
+            try {
+                if(entries==null) {
+                    // The index is stale or corrupt
+                    indexFile.delete();
+                }
+                else {
+                    // Mark the index as recently used
+                    indexFile.changeDate(System.currentTimeMillis());
+                }
+            }
+            catch(IOException e) {
+                LOGGER.debug("Caught exception", e);
+            }
+
+            return entries;
+        }
+    }
+
+    /**
+     * Stores the given entries as the index of the given archive, along with the archive's
+     * {@link AbstractArchiveFile#getEntriesIndexData() index data}, provided that the listing took at least
+     * {@link #getMinListingTime()} milliseconds. Least recently used indexes are then evicted if the cache has grown
+     * larger than {@link #getMaxSize()}.
+     *
+     * @param archive the archive the entries belong to
+     * @param entries all the entries of the archive, as returned by its entry iterator
+     * @param listingTime the time it took to list the archive, in milliseconds
+     */
+    public static void store(AbstractArchiveFile archive, List<ArchiveEntry> entries, long listingTime) {
+        if(listingTime<getMinListingTime())
+            return;
+
+        AbstractFile indexFile = getIndexFile(archive);
+        if(indexFile==null)
+            return;
+
+        synchronized(ArchiveIndexCache.class) {
+            AbstractFile tempFile = null;
+            OutputStream out = null;
+            boolean success = false;
+            try {
+                AbstractFile folder = indexFile.getParent();
+                if(!folder.exists())
+                    folder.mkdirs();
+
+                // Other processes may be writing the same index, hence the unique name
+                tempFile = folder.getChild(indexFile.getName()+"."+UUID.randomUUID()+TEMP_EXTENSION);
+                out = new BufferedOutputStream(tempFile.getOutputStream());
+                DataOutputStream dout = new DataOutputStream(out);
+                writeIndex(dout, getKey(archive), archive.getSize(), archive.getDate(), entries);
+                writeData(dout, archive.getEntriesIndexData());
+                out.close();
+                out = null;
+
+                tempFile.renameTo(indexFile);
+                success = true;
+            }
+            catch(IOException e) {
+                LOGGER.info("Could not write archive index "+indexFile, e);
+            }
+            finally {
+                closeSilently(out);
+            }
+
+            try {
+                if(success)
+                    evict();
+                else if(tempFile!=null && tempFile.exists())
+                    tempFile.delete();
+            }
+            catch(IOException e) {
+                LOGGER.debug("Caught exception", e);
+            }
+        }
+    }
+
+    /**
+     * Deletes all the indexes contained by the cache.
+     *
+     * @throws IOException if an index could not be deleted
+     */
+    public static synchronized void clear() throws IOException {
+        if(cacheFolder==null || !cacheFolder.exists())
+            return;
+
+        for(AbstractFile file : cacheFolder.ls(new ExtensionFilenameFilter(new String[]{INDEX_EXTENSION, TEMP_EXTENSION})))
+            file.delete();
+    }
+
+    /**
+     * Deletes the least recently used indexes until the total size of the cache is below the maximum size.
+     */
+    private static void evict() throws IOException {
+        // Temporary files left over by a crash
+        long now = System.currentTimeMillis();
+        for(AbstractFile file : cacheFolder.ls(new ExtensionFilenameFilter(TEMP_EXTENSION))) {
+            if(now-file.getDate()>TEMP_FILE_MAX_AGE)
+                file.delete();
+        }
+
+        AbstractFile files[] = cacheFolder.ls(new ExtensionFilenameFilter(INDEX_EXTENSION));
+
+        long totalSize = 0;
+        for(AbstractFile file : files)
+            totalSize += file.getSize();
+
+        if(totalSize<=maxSize)
+            return;
+
+        // Oldest first
+        Arrays.sort(files, new Comparator<AbstractFile>() {
+            public int compare(AbstractFile f1, AbstractFile f2) {
+                long d1 = f1.getDate();
+                long d2 = f2.getDate();
+                return d1<d2?-1:d1==d2?0:1;
+            }
+        });
+
+        for(int i=0; i<files.length && totalSize>maxSize; i++) {
+            long size = files[i].getSize();
+            LOGGER.debug("Evicting archive index "+files[i]);
+            files[i].delete();
+            totalSize -= size;
+        }
+    }
+
+    /**
+     * Returns the key identifying the given archive in the cache.
+     */
+    private static String getKey(AbstractArchiveFile archive) {
+        return archive.getURL().toString(false);
+    }
+
+    /**
+     * Returns the index file corresponding to the given archive, <code>null</code> if the cache is disabled.
+     */
+    private static AbstractFile getIndexFile(AbstractArchiveFile archive) {
+        AbstractFile folder;
+        synchronized(ArchiveIndexCache.class) {
+            if(!isEnabled())
+                return null;
+            folder = cacheFolder;
+        }
+
+        try {
+            MessageDigest digest = MessageDigest.getInstance("MD5");
+            String name = ByteUtils.toHexString(digest.digest(getKey(archive).getBytes("UTF-8")));
+            return folder.getChild(name+INDEX_EXTENSION);
+        }
+        catch(NoSuchAlgorithmException e) {
+            // MD5 is always available
+            LOGGER.warn("Caught exception", e);
+            return null;
+        }
+        catch(IOException e) {
+            LOGGER.info("Could not resolve archive index file", e);
+            return null;
+        }
+    }
+
+    private static void closeSilently(Closeable stream) {
+        if(stream==null)
+            return;
+
+        try { stream.close(); }
+        catch(IOException e) {
+            // Not much we can do about it
+        }
+    }
+
+
+    ///////////////////
+    // Index format  //
+    ///////////////////
+
+    /**
+     * Writes the index to the given stream. The index is made of a header identifying the archive, followed by
+     * the entries.
+     */
+    static void writeIndex(DataOutputStream out, String key, long archiveSize, long archiveDate, List<ArchiveEntry> entries) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeByte(FORMAT_VERSION);
+        out.writeUTF(key);
+        out.writeLong(archiveSize);
+        out.writeLong(archiveDate);
+        writeVarLong(out, entries.size());
+
+        Map<String, Integer> strings = new HashMap<>();
+        String previousPath = "";
+        for(ArchiveEntry entry : entries) {
+            String path = entry.getPath();
+
+            // Only store the part of the path that differs from the previous entry's
+            int prefixLength = 0;
+            int maxPrefixLength = Math.min(path.length(), previousPath.length());
+            while(prefixLength<maxPrefixLength && path.charAt(prefixLength)==previousPath.charAt(prefixLength))
+                prefixLength++;
+
+            writeVarLong(out, prefixLength);
+            try {
+                out.writeUTF(path.substring(prefixLength));
+            }
+            catch(UTFDataFormatException e) {
+                // Path is too long, this is a corner case that is not worth caching
+                throw new IOException("Entry path too long: "+path.length());
+            }
+            previousPath = path;
+
+            // Archive entry implementations may not have permissions
+            FilePermissions permissions = entry.getPermissions();
+            out.writeByte((entry.isDirectory()?FLAG_DIRECTORY:0)|(permissions==null?0:FLAG_PERMISSIONS));
+            writeVarLong(out, entry.getSize()+1);     // -1 stands for an unknown size
+            out.writeLong(entry.getDate());
+            writeVarLong(out, entry.getOffset()+1);     // -1 (unknown) is the most likely negative value
+
+            if(permissions!=null) {
+                PermissionBits mask = permissions.getMask();
+                writeVarLong(out, permissions.getIntValue());
+                writeVarLong(out, mask==null?0:mask.getIntValue());
+            }
+
+            writeString(out, entry.getOwner(), strings);
+            writeString(out, entry.getGroup(), strings);
+        }
+
+        out.flush();
+    }
+
+    /**
+     * Reads an index from the given stream and returns its entries, <code>null</code> if the index is stale, i.e. if it
+     * doesn't correspond to the given key, size and date.
+     */
+    static List<ArchiveEntry> readIndex(DataInputStream in, String key, long archiveSize, long archiveDate) throws IOException {
+        if(in.readInt()!=MAGIC || in.readByte()!=FORMAT_VERSION)
+            return null;
+
+        if(!key.equals(in.readUTF()) || in.readLong()!=archiveSize || in.readLong()!=archiveDate)
+            return null;
+
+        int nbEntries = (int)readVarLong(in);
+        List<ArchiveEntry> entries = new ArrayList<>(nbEntries);
+        List<String> strings = new ArrayList<>();
+        String previousPath = "";
+        for(int i=0; i<nbEntries; i++) {
+            int prefixLength = (int)readVarLong(in);
+            if(prefixLength>previousPath.length())
+                throw new IOException("Corrupt archive index");
+            String path = previousPath.substring(0, prefixLength)+in.readUTF();
+            previousPath = path;
+
+            int flags = in.readByte();
+            long size = readVarLong(in)-1;
+            long date = in.readLong();
+
+            ArchiveEntry entry = new ArchiveEntry(path, (flags&FLAG_DIRECTORY)!=0, date, size, true);
+            entry.setOffset(readVarLong(in)-1);
+            if((flags&FLAG_PERMISSIONS)!=0) {
+                int permissions = (int)readVarLong(in);
+                int mask = (int)readVarLong(in);
+                entry.setPermissions(new SimpleFilePermissions(permissions, mask));
+            }
+            entry.setOwner(readString(in, strings));
+            entry.setGroup(readString(in, strings));
+
+            entries.add(entry);
+        }
+
+        return entries;
+    }
+
+    /**
+     * Writes the index data of an archive, which follows the entries. The data is preceded by its length plus one,
+     * 0 standing for <code>null</code>.
+     */
+    static void writeData(DataOutputStream out, byte data[]) throws IOException {
+        writeVarLong(out, data==null?0:data.length+1);
+        if(data!=null)
+            out.write(data);
+
+        out.flush();
+    }
+
+    /**
+     * Reads the index data of an archive written by {@link #writeData(DataOutputStream, byte[])}.
+     */
+    static byte[] readData(DataInputStream in) throws IOException {
+        long length = readVarLong(in)-1;
+        if(length<0)
+            return null;
+        if(length>Integer.MAX_VALUE)
+            throw new IOException("Corrupt archive index");
+
+        byte data[] = new byte[(int)length];
+        in.readFully(data);
+        return data;
+    }
+
+    /**
+     * Writes a string that is likely to be repeated (owner, group) as a reference to the table of previously written
+     * strings. A reference equal to the table's size is followed by a new string, 0 stands for <code>null</code>.
+     */
+    private static void writeString(DataOutputStream out, String s, Map<String, Integer> strings) throws IOException {
+        if(s==null) {
+            writeVarLong(out, 0);
+            return;
+        }
+
+        Integer ref = strings.get(s);
+        if(ref==null) {
+            ref = strings.size()+1;
+            strings.put(s, ref);
+            writeVarLong(out, ref);
+            out.writeUTF(s);
+        }
+        else {
+            writeVarLong(out, ref);
+        }
+    }
+
+    private static String readString(DataInputStream in, List<String> strings) throws IOException {
+        int ref = (int)readVarLong(in);
+        if(ref==0)
+            return null;
+
+        if(ref==strings.size()+1) {
+            strings.add(in.readUTF());
+        }
+        else if(ref>strings.size()) {
+            throw new IOException("Corrupt archive index");
+        }
+
+        return strings.get(ref-1);
+    }
+
+    /**
+     * Writes a non-negative long using 7 bits per byte, the most significant bit indicating that more bytes follow.
+     */
+    private static void writeVarLong(DataOutputStream out, long value) throws IOException {
+        if(value<0)
+            throw new IOException("Negative value: "+value);
+
+        while((value & ~0x7FL)!=0) {
+            out.writeByte((int)((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.writeByte((int)value);
+    }
+
+    private static long readVarLong(DataInputStream in) throws IOException {
+        long value = 0;
+        for(int shift=0; shift<64; shift+=7) {
+            int b = in.readUnsignedByte();
+            value |= (long)(b & 0x7F) << shift;
+            if((b & 0x80)==0)
+                return value;
+        }
+
+        throw new IOException("Corrupt archive index");
+    }
+}
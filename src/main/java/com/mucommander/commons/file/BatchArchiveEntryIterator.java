@@ -0,0 +1,383 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2010 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.commons.file;
+
+import com.mucommander.commons.io.BoundedPipe;
+import com.mucommander.commons.io.BufferPool;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * An {@link ArchiveEntryIterator} that extracts a given set of entries in a single pass over the archive, and returns
+ * them in archive order. This is what makes extracting many entries from a solid archive fast: opening each entry
+ * separately would decompress the solid block from its start every time.
+ *
+ * <p>Subclasses implement {@link #extract(List)}, which is called in a separate thread and pushes the contents of the
+ * regular file entries, in archive order, to the streams returned by {@link #openEntry(ArchiveEntry)}. The thread
+ * iterating this iterator reads them with {@link #getEntryInputStream(ArchiveEntry)}, which
+ * {@link AbstractArchiveFile#getEntryInputStream(ArchiveEntry, ArchiveEntryIterator)} implementations call when they
+ * are given an instance of this class.</p>
+ *
+ * <p>Entries are handed over through a {@link BoundedPipe}, so the extraction is held back when the reader is behind
+ * and the memory used is bounded. An entry that is skipped, or whose stream is closed before its end, is still
+ * extracted but its contents are discarded. {@link #close()} aborts the extraction.</p>
+ *
+ * @see AbstractArchiveFile#getBatchEntryIterator(List)
+ */
+public abstract class BatchArchiveEntryIterator implements ArchiveEntryIterator {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(BatchArchiveEntryIterator.class);
+
+    /** Number of buffers of each entry's pipe */
+    private final static int NB_PIPE_BUFFERS = 4;
+
+    /** Time the extraction thread waits for the reader before checking if the iterator has been closed, in ms */
+    private final static long HANDOFF_POLL_TIMEOUT = 100;
+
+    /** Threads that run {@link #extract(List)}, reused from one batch to the next */
+    private final static ExecutorService extractionExecutor = new ThreadPoolExecutor(0, Integer.MAX_VALUE,
+            60, TimeUnit.SECONDS, new SynchronousQueue<Runnable>(), new ThreadFactory() {
+        private final AtomicInteger threadNumber = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "Batch extraction " + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    /** The entries to return, in archive order */
+    private final List<ArchiveEntry> entries;
+
+    /** Size of each buffer of the entries' pipes */
+    private final int bufferSize;
+
+    /** Pipes of the extracted entries waiting to be read. The queue is bounded so that the extraction of small entries
+     * doesn't run ahead of the reader. */
+    private final BlockingQueue<Handoff> handoffs = new ArrayBlockingQueue<>(1);
+
+    /** Index of the next entry returned by {@link #nextEntry()} */
+    private int nextIndex;
+
+    /** Entry last returned by {@link #nextEntry()} */
+    private ArchiveEntry currentEntry;
+
+    /** Stream of the current entry, null if it hasn't been requested yet */
+    private InputStream currentStream;
+
+    /** Pipe of the entry being extracted, accessed by the extraction thread only */
+    private BoundedPipe extractedPipe;
+
+    /** True once the extraction has been started */
+    private boolean started;
+
+    /** True once this iterator has been closed */
+    private volatile boolean closed;
+
+
+    /**
+     * Creates a new iterator for the given entries, using pipes of {@link BufferPool#getDefaultBufferSize()} bytes to
+     * hand over the entries' contents.
+     *
+     * @param entries the entries to extract, in archive order
+     */
+    protected BatchArchiveEntryIterator(List<ArchiveEntry> entries) {
+        this(entries, BufferPool.getDefaultBufferSize() * NB_PIPE_BUFFERS);
+    }
+
+    /**
+     * Creates a new iterator for the given entries.
+     *
+     * @param entries the entries to extract, in archive order
+     * @param pipeSize amount of memory used to hand over an entry's contents, in bytes
+     */
+    protected BatchArchiveEntryIterator(List<ArchiveEntry> entries, int pipeSize) {
+        this.entries = entries;
+        this.bufferSize = Math.max(1, pipeSize / NB_PIPE_BUFFERS);
+    }
+
+    /**
+     * Extracts the given entries, in this order, in a single pass over the archive. Each entry must be opened with
+     * {@link #openEntry(ArchiveEntry)}, even if it is empty, and its contents written to the returned stream, which
+     * must then be closed. Entries that are not in the list can be decompressed if the archive format requires it,
+     * but not written.
+     *
+     * <p>This method is called in a separate thread, the first time an entry is requested.</p>
+     *
+     * @param fileEntries the regular file entries to extract, in archive order
+     * @throws IOException if an error occurred while reading the archive, or if this iterator has been closed
+     */
+    protected abstract void extract(List<ArchiveEntry> fileEntries) throws IOException;
+
+    /**
+     * Returns the stream the contents of the given entry must be written to, waiting for the reader to catch up if
+     * necessary. This method is to be called by {@link #extract(List)}.
+     *
+     * @param entry the entry whose contents are about to be written
+     * @return the stream the contents of the entry must be written to
+     * @throws IOException if this iterator has been closed
+     */
+    protected OutputStream openEntry(ArchiveEntry entry) throws IOException {
+        checkClosed();
+
+        final BoundedPipe pipe = new BoundedPipe(bufferSize, NB_PIPE_BUFFERS);
+        extractedPipe = pipe;
+        putHandoff(new Handoff(entry, pipe.getInputStream(), null));
+
+        return new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                write(new byte[]{(byte)b}, 0, 1);
+            }
+
+            @Override
+            public void write(byte b[], int off, int len) throws IOException {
+                checkClosed();
+                // The entry has been skipped by the reader, discard its contents
+                if (pipe.isConsumerClosed()) {
+                    return;
+                }
+
+                try {
+                    pipe.getOutputStream().write(b, off, len);
+                } catch (IOException e) {
+                    // The reader has closed the entry in the meantime
+                    if (!pipe.isConsumerClosed()) {
+                        throw e;
+                    }
+                    checkClosed();
+                }
+            }
+
+            @Override
+            public void close() throws IOException {
+                pipe.getOutputStream().close();
+            }
+        };
+    }
+
+    /**
+     * Returns <code>true</code> if this iterator has been closed, in which case {@link #extract(List)} should stop
+     * as soon as possible.
+     *
+     * @return true if this iterator has been closed
+     */
+    protected boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Throws an <code>IOException</code> if this iterator has been closed.
+     */
+    private void checkClosed() throws IOException {
+        if (closed) {
+            throw new IOException("Batch extraction cancelled");
+        }
+    }
+
+    /**
+     * Hands the given handoff to the reader, waiting for it to take the previous one.
+     */
+    private void putHandoff(Handoff handoff) throws IOException {
+        try {
+            while (!handoffs.offer(handoff, HANDOFF_POLL_TIMEOUT, TimeUnit.MILLISECONDS)) {
+                checkClosed();
+            }
+        } catch (InterruptedException e) {
+            throw new InterruptedIOException();
+        }
+    }
+
+    /**
+     * Starts the extraction thread.
+     */
+    private void startExtraction() {
+        started = true;
+
+        final List<ArchiveEntry> fileEntries = new ArrayList<>();
+        for (ArchiveEntry entry : entries) {
+            if (!entry.isDirectory()) {
+                fileEntries.add(entry);
+            }
+        }
+
+        extractionExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                IOException error = null;
+                try {
+                    extract(fileEntries);
+                } catch (IOException e) {
+                    error = e;
+                    if (!closed) {
+                        LOGGER.info("Error extracting entries", e);
+                    }
+                } catch (RuntimeException e) {
+                    error = new IOException(e);
+                    LOGGER.info("Error extracting entries", e);
+                }
+
+                // Report the error to the reader of the entry that was being extracted
+                if (error != null && extractedPipe != null) {
+                    extractedPipe.fail(error);
+                }
+
+                // Tell the reader that there are no more entries
+                try {
+                    putHandoff(new Handoff(null, null, error));
+                } catch (IOException e) {
+                    // The iterator has been closed
+                }
+            }
+        });
+    }
+
+    /**
+     * Returns the contents of the given entry, which must be the entry last returned by {@link #nextEntry()}. The
+     * stream does not need to be consumed or closed before moving on to the next entry.
+     *
+     * @param entry the entry last returned by {@link #nextEntry()}
+     * @return the contents of the given entry
+     * @throws IOException if the entry isn't the current one, or if an error occurred while extracting the entry
+     */
+    public InputStream getEntryInputStream(ArchiveEntry entry) throws IOException {
+        checkClosed();
+        if (entry != currentEntry) {
+            throw new IOException("Not the current entry: " + entry.getPath());
+        }
+        if (entry.isDirectory()) {
+            throw new IOException("Not a regular file: " + entry.getPath());
+        }
+
+        if (currentStream == null) {
+            if (!started) {
+                startExtraction();
+            }
+
+            Handoff handoff;
+            try {
+                handoff = handoffs.take();
+            } catch (InterruptedException e) {
+                throw new InterruptedIOException();
+            }
+
+            if (handoff.entry != entry) {
+                if (handoff.stream != null) {
+                    handoff.stream.close();
+                }
+                if (handoff.error != null) {
+                    throw handoff.error;
+                }
+                throw new IOException("Entry was not extracted: " + entry.getPath());
+            }
+            currentStream = handoff.stream;
+        }
+
+        return currentStream;
+    }
+
+    /**
+     * Discards the rest of the current entry's contents.
+     */
+    private void skipCurrentEntry() throws IOException {
+        if (currentEntry == null || currentEntry.isDirectory()) {
+            return;
+        }
+
+        // The stream of an entry that hasn't been requested must still be taken off the queue
+        getEntryInputStream(currentEntry).close();
+    }
+
+
+    /////////////////////////////////////////
+    // ArchiveEntryIterator implementation //
+    /////////////////////////////////////////
+
+    @Override
+    public ArchiveEntry nextEntry() throws IOException {
+        checkClosed();
+        skipCurrentEntry();
+
+        currentStream = null;
+        currentEntry = nextIndex < entries.size() ? entries.get(nextIndex++) : null;
+
+        return currentEntry;
+    }
+
+    /**
+     * Aborts the extraction and closes the stream of the entry being read.
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+
+        if (currentStream != null) {
+            currentStream.close();
+        }
+
+        // Unblock the extraction thread if it is waiting for the reader
+        List<Handoff> remainingHandoffs = new ArrayList<>();
+        handoffs.drainTo(remainingHandoffs);
+        for (Handoff handoff : remainingHandoffs) {
+            if (handoff.stream != null) {
+                handoff.stream.close();
+            }
+        }
+    }
+
+
+    ///////////////////
+    // Inner classes //
+    ///////////////////
+
+    /**
+     * The stream of an extracted entry, or the end of the extraction when <code>entry</code> is <code>null</code>.
+     */
+    private static class Handoff {
+        private final ArchiveEntry entry;
+        private final InputStream stream;
+        /** Exception that ended the extraction, null if it completed normally */
+        private final IOException error;
+
+        private Handoff(ArchiveEntry entry, InputStream stream, IOException error) {
+            this.entry = entry;
+            this.stream = stream;
+            this.error = error;
+        }
+    }
+}
@@ -0,0 +1,45 @@
+/**
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2010 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.mucommander.commons.file;
+
+import com.mucommander.commons.file.filter.FileFilter;
+
+/**
+ * ListingListener receives the children of a folder in batches, as they are listed by
+ * {@link AbstractFile#ls(FileFilter, ListingListener)}. This allows to start working with the first children of a
+ * large or slow folder (a remote folder with thousands of files for instance) without waiting for the whole listing
+ * to complete.
+ *
+ * <p>Methods of this interface are called from the thread that lists the folder.</p>
+ *
+ * @see AbstractFile#ls(FileFilter, ListingListener)
+ */
+public interface ListingListener {
+
+    /**
+     * This method is called for each batch of children that have been listed. The batches of a listing never contain
+     * the same child twice. Batches may be empty, in particular when the folder is empty or when all the children of
+     * the batch have been filtered out.
+     *
+     * @param children the children that have just been listed
+     * @return <code>true</code> to continue listing the folder, <code>false</code> to stop
+     */
+    public boolean childrenListed(AbstractFile children[]);
+}
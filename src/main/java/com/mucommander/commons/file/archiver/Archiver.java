@@ -23,12 +23,14 @@ import com.mucommander.commons.file.FileAttributes;
 import com.mucommander.commons.file.FileOperation;
 import com.mucommander.commons.file.UnsupportedFileOperationException;
 import com.mucommander.commons.io.BufferedRandomOutputStream;
+import com.mucommander.commons.io.ParallelGZIPOutputStream;
 import com.mucommander.commons.io.RandomAccessOutputStream;
 import org.apache.hadoop.io.compress.bzip2.CBZip2OutputStream;
 
 import java.io.BufferedOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.util.zip.Deflater;
 import java.util.zip.GZIPOutputStream;
 
 
@@ -47,6 +49,10 @@ import java.util.zip.GZIPOutputStream;
  * <li><i>Many entries formats:</i> Formats that can store multiple entries along with a directory structure, e.g. Zip or Tar.
  * </ul>
  *
+ * <p>Formats that use the DEFLATE compression method (Zip and Gzip) let the compression level be specified, and can
+ * compress data using several threads: see {@link #formatSupportsCompressionLevel(int)} and
+ * {@link #getArchiver(AbstractFile, int, int, int)}.</p>
+ *
  * @author Maxence Bernard
  */
 public abstract class Archiver {
@@ -232,6 +238,28 @@ public abstract class Archiver {
      * @throws UnsupportedFileOperationException if the underlying filesystem does not support write operations
      */
     public static Archiver getArchiver(AbstractFile file, int format) throws IOException, UnsupportedFileOperationException {
+        return getArchiver(file, format, Deflater.DEFAULT_COMPRESSION, 1);
+    }
+
+    /**
+     * Returns an Archiver for the specified format and that uses the given {@link AbstractFile} to write entries to,
+     * compressing data with the given compression level and number of threads. <code>null</code> is returned if the
+     * specified format is not valid. The compression level and number of threads are ignored by formats that
+     * do not {@link #formatSupportsCompressionLevel(int) support them}.
+     *
+     * <p>See {@link #getArchiver(AbstractFile, int)} for more information about how the file is written.</p>
+     *
+     * @param file the AbstractFile which the returned Archiver will write entries to
+     * @param format an archive format
+     * @param level the compression level, from {@link Deflater#BEST_SPEED} to {@link Deflater#BEST_COMPRESSION}, or
+     * {@link Deflater#DEFAULT_COMPRESSION}
+     * @param nbThreads number of threads that compress data concurrently
+     * @return an Archiver for the specified format and that uses the given {@link AbstractFile} to write entries to ;
+     * null if the specified format is not valid.
+     * @throws IOException if the file cannot be opened for write, or if an error occurred while intializing the archiver
+     * @throws UnsupportedFileOperationException if the underlying filesystem does not support write operations
+     */
+    public static Archiver getArchiver(AbstractFile file, int format, int level, int nbThreads) throws IOException, UnsupportedFileOperationException {
         OutputStream out = null;
 
         if(file.isFileOperationSupported(FileOperation.RANDOM_WRITE_FILE)) {
@@ -251,7 +279,7 @@ public abstract class Archiver {
         if(out==null)
             out = new BufferedOutputStream(file.getOutputStream());
 
-        return getArchiver(out, format);
+        return getArchiver(out, format, level, nbThreads);
     }
 
 
@@ -267,14 +295,33 @@ public abstract class Archiver {
      * @throws IOException if an error occurred while intializing the archiver
      */
     public static Archiver getArchiver(OutputStream out, int format) throws IOException {
+        return getArchiver(out, format, Deflater.DEFAULT_COMPRESSION, 1);
+    }
+
+    /**
+     * Returns an Archiver for the specified format and that uses the given <code>OutputStream</code> to write entries to,
+     * compressing data with the given compression level and number of threads. <code>null</code> is returned if the
+     * specified format is not valid. The compression level and number of threads are ignored by formats that
+     * do not {@link #formatSupportsCompressionLevel(int) support them}.
+     *
+     * @param out the OutputStream which the returned Archiver will write entries to
+     * @param format an archive format
+     * @param level the compression level, from {@link Deflater#BEST_SPEED} to {@link Deflater#BEST_COMPRESSION}, or
+     * {@link Deflater#DEFAULT_COMPRESSION}
+     * @param nbThreads number of threads that compress data concurrently
+     * @return an Archiver for the specified format and that uses the given {@link AbstractFile} to write entries to ;
+     * null if the specified format is not valid.
+     * @throws IOException if an error occurred while intializing the archiver
+     */
+    public static Archiver getArchiver(OutputStream out, int format, int level, int nbThreads) throws IOException {
         Archiver archiver;
 
         switch(format) {
             case ZIP_FORMAT:
-                archiver = new ZipArchiver(out);
+                archiver = new ZipArchiver(out, level, nbThreads);
                 break;
             case GZ_FORMAT:
-                archiver = new SingleFileArchiver(new GZIPOutputStream(out));
+                archiver = new SingleFileArchiver(createGzipOutputStream(out, level, nbThreads));
                 break;
             case BZ2_FORMAT:
                 archiver = new SingleFileArchiver(createBzip2OutputStream(out));
@@ -283,7 +330,7 @@ public abstract class Archiver {
                 archiver = new TarArchiver(out);
                 break;
             case TAR_GZ_FORMAT:
-                archiver = new TarArchiver(new GZIPOutputStream(out));
+                archiver = new TarArchiver(createGzipOutputStream(out, level, nbThreads));
                 break;
             case TAR_BZ2_FORMAT:
                 archiver = new TarArchiver(createBzip2OutputStream(out));
@@ -298,6 +345,27 @@ public abstract class Archiver {
         return archiver;
     }
 
+    /**
+     * Creates and returns a Gzip <code>OutputStream</code> using the given <code>OutputStream</code> as the underlying
+     * stream. A {@link ParallelGZIPOutputStream} is returned if more than one thread is to be used.
+     *
+     * @param out the underlying stream
+     * @param level the compression level
+     * @param nbThreads number of threads that compress data concurrently
+     * @return a Gzip OutputStream
+     * @throws IOException if an error occurred while initializing the Gzip OutputStream
+     */
+    protected static OutputStream createGzipOutputStream(OutputStream out, final int level, int nbThreads) throws IOException {
+        if(nbThreads>1)
+            return new ParallelGZIPOutputStream(out, level, nbThreads);
+
+        return new GZIPOutputStream(out) {
+            {
+                def.setLevel(level);
+            }
+        };
+    }
+
     /**
      * Creates and returns a Bzip2 <code>OutputStream</code> using the given <code>OutputStream</code> as the underlying
      * stream.
@@ -368,6 +436,17 @@ public abstract class Archiver {
     public static boolean formatSupportsComment(int format) {
         return format==ZIP_FORMAT;
     }
+
+
+    /**
+     * Returns true if the specified archive format uses the DEFLATE compression method, in which case the compression
+     * level and the number of compression threads can be specified.
+     *
+     * @param format an archive format
+     */
+    public static boolean formatSupportsCompressionLevel(int format) {
+        return format==ZIP_FORMAT || format==GZ_FORMAT || format==TAR_GZ_FORMAT;
+    }
 	
 	
     //////////////////////
@@ -42,10 +42,12 @@ class ZipArchiver extends Archiver {
 
 
 
-    protected ZipArchiver(OutputStream outputStream) {
+    protected ZipArchiver(OutputStream outputStream, int level, int nbThreads) {
         super(outputStream);
 
         this.zos = new ZipOutputStream(outputStream);
+        zos.setLevel(level);
+        zos.setNbDeflaterThreads(nbThreads);
     }
 
 
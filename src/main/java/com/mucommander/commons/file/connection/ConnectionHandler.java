@@ -107,7 +107,9 @@ public abstract class ConnectionHandler {
     public boolean checkConnection() throws IOException {
         if(!isConnected()) {
             LOGGER.info("not connected, starting connection, this="+this);
+            long startTime = System.currentTimeMillis();
             startConnection();
+            ConnectionPool.notifyConnectionStarted(this, System.currentTimeMillis()-startTime);
             return true;
         }
 
@@ -146,7 +148,7 @@ public abstract class ConnectionHandler {
             isLocked = false;
         }
 
-        ConnectionPool.notifyConnectionHandlerLockReleased();
+        ConnectionPool.notifyConnectionHandlerLockReleased(this);
 
         return true;
     }
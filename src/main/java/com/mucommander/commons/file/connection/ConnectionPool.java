@@ -20,8 +20,13 @@ package com.mucommander.commons.file.connection;
 
 import java.io.InterruptedIOException;
 import java.util.ArrayList;
-import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -31,6 +36,19 @@ import com.mucommander.commons.file.FileURL;
 
 
 /**
+ * Shares {@link ConnectionHandler} instances across the files of a same server.
+ *
+ * <p>Connections are grouped by realm (see {@link FileURL#getRealm()}), each realm having its own pool that is
+ * independent from the others: looking up a connection for a realm never waits on another realm. The number of
+ * connections per realm, whatever the credentials they were opened with, is limited by
+ * {@link #setMaxConnectionsPerRealm(int)}. When the limit is reached, threads
+ * wait for a connection to be released, in the order in which they started waiting, for at most
+ * {@link #setWaitTimeout(long) the wait timeout}. New <code>ConnectionHandler</code> instances are created without
+ * holding any lock, so that a slow connection handler factory does not hold up other threads.</p>
+ *
+ * <p>A monitor thread periodically keeps connections alive and closes those that have been inactive for too long,
+ * see {@link #run()}.</p>
+ *
  * @see com.mucommander.commons.file.connection.ConnectionHandler
  * @author Maxence Bernard
  */
@@ -40,8 +58,8 @@ public class ConnectionPool implements Runnable {
     /** Singleton instance */
     private static ConnectionPool instance = new ConnectionPool();
 
-    /** List of registered ConnectionHandler */
-    private final static List<ConnectionHandler> connectionHandlers = new ArrayList<>();
+    /** Pools of ConnectionHandler, one per realm */
+    private final static ConcurrentMap<RealmKey, RealmPool> realmPools = new ConcurrentHashMap<>();
 
     /** The thread that monitors connections, null if there currently is no registered ConnectionHandler */
     private static Thread monitorThread;
@@ -49,83 +67,132 @@ public class ConnectionPool implements Runnable {
     /** Controls how of often the thread monitor checks connections */
     private final static int MONITOR_SLEEP_PERIOD = 1000;
 
-    /** Maximum number of simultaneous connections per realm/credentials combo */
-    private final static int MAX_CONNECTIONS_PER_REALM = 4;
+    /** Default maximum number of simultaneous connections per realm */
+    public final static int DEFAULT_MAX_CONNECTIONS_PER_REALM = 4;
 
+    /** Default number of milliseconds to wait for a connection to be released, 0 to wait indefinitely */
+    public final static long DEFAULT_WAIT_TIMEOUT = 0;
 
-    public static ConnectionHandler getConnectionHandler(ConnectionHandlerFactory connectionHandlerFactory, FileURL url, boolean acquireLock) throws InterruptedIOException {
-        FileURL realm = url.getRealm();
+    /** Maximum number of simultaneous connections per realm */
+    private static volatile int maxConnectionsPerRealm = DEFAULT_MAX_CONNECTIONS_PER_REALM;
 
-        while(true) {
-            synchronized(connectionHandlers) {      // Ensures that monitor thread is not currently changing the list while we access it
-                Credentials urlCredentials = url.getCredentials();
-                int matchingConnHandlers = 0;
+    /** Number of milliseconds to wait for a connection to be released, 0 to wait indefinitely */
+    private static volatile long waitTimeout = DEFAULT_WAIT_TIMEOUT;
 
-                // Try and find an appropriate existing ConnectionHandler
-                for (ConnectionHandler connHandler : connectionHandlers) {
-                	// ConnectionHandler must match the realm and credentials and must not be locked
-                	if (connHandler.equals(realm, urlCredentials)) {
-                		matchingConnHandlers++;
-                		synchronized(connHandler) {     // Ensures that lock remains unchanged while we access/update it
-                			if (!connHandler.isLocked()) {
-                				// Try to acquire lock if a lock was requested
-                				if(!acquireLock || connHandler.acquireLock()) {
-                					LOGGER.info("returning ConnectionHandler {}, realm = {}", connHandler, realm);
-
-                					// Update last activity timestamp to now
-                					connHandler.updateLastActivityTimestamp();
-
-                					return connHandler;
-                				}
-                			}
-                		}
-                	}
-                    
-                    if(matchingConnHandlers==MAX_CONNECTIONS_PER_REALM) {
-                        LOGGER.info("Maximum number of connection per realm reached, waiting for one to be removed or released...");
-                        try {
-                            // Wait for a ConnectionHandler to be released or removed from the pool
-                            connectionHandlers.wait();      // relinquishes the lock on connectionHandlers
-                            break;
-                        } catch(InterruptedException e) {
-                            LOGGER.info("Interrupted while waiting on a connection for {}", url, e);
-                            throw new InterruptedIOException();
-                        }
-                    }
-                }
 
-                if (matchingConnHandlers == MAX_CONNECTIONS_PER_REALM) {
-                    continue;
-                }
+    /**
+     * Returns the maximum number of simultaneous connections per realm.
+     *
+     * @return the maximum number of simultaneous connections per realm
+     */
+    public static int getMaxConnectionsPerRealm() {
+        return maxConnectionsPerRealm;
+    }
 
-                // No suitable ConnectionHandler found, create a new one
-                ConnectionHandler connHandler = connectionHandlerFactory.createConnectionHandler(url);
+    /**
+     * Sets the maximum number of simultaneous connections per realm. Lowering the limit does not close existing
+     * connections, but prevents new ones from being created until the number of connections is below the new limit.
+     *
+     * @param max the maximum number of simultaneous connections per realm, must be at least 1
+     */
+    public static void setMaxConnectionsPerRealm(int max) {
+        if(max<1)
+            throw new IllegalArgumentException("max must be at least 1: "+max);
 
-                // Acquire lock if a lock was requested
-                if (acquireLock) {
-                    connHandler.acquireLock();
-                }
+        maxConnectionsPerRealm = max;
+
+        // Threads that are waiting may be able to create a connection now
+        for(RealmPool pool : realmPools.values())
+            pool.signalWaiters();
+    }
+
+    /**
+     * Returns the number of milliseconds to wait for a connection to be released when the maximum number of
+     * connections has been reached, <code>0</code> to wait indefinitely.
+     *
+     * @return the number of milliseconds to wait for a connection to be released, 0 to wait indefinitely
+     */
+    public static long getWaitTimeout() {
+        return waitTimeout;
+    }
 
-                LOGGER.info("adding new ConnectionHandler {}, realm = {}", connHandler, connHandler.getRealm());
+    /**
+     * Sets the number of milliseconds to wait for a connection to be released when the maximum number of
+     * connections has been reached, <code>0</code> to wait indefinitely. When the timeout expires,
+     * {@link #getConnectionHandler(ConnectionHandlerFactory, FileURL, boolean)} throws an
+     * <code>InterruptedIOException</code>.
+     *
+     * @param timeout number of milliseconds to wait for a connection to be released, 0 to wait indefinitely
+     */
+    public static void setWaitTimeout(long timeout) {
+        if(timeout<0)
+            throw new IllegalArgumentException("timeout must not be negative: "+timeout);
 
-                // Insert new ConnectionHandler at first position as if it has more chances to be accessed again soon
-                connectionHandlers.add(0, connHandler);// insertElementAt(connHandler, 0);
+        waitTimeout = timeout;
+    }
 
-                // Start monitor thread if it is not currently running (if there previously was no registered ConnectionHandler)
-                if (monitorThread == null) {
-                    LOGGER.info("starting monitor thread");
-                    monitorThread = new Thread(instance);
-                    monitorThread.start();
-                }
 
-                // Update last activity timestamp to now
-                connHandler.updateLastActivityTimestamp();
+    /**
+     * Returns a <code>ConnectionHandler</code> for the specified location, matching its realm and credentials.
+     * An existing connection is returned if one is not locked, otherwise a new one is created using the given
+     * factory, unless the maximum number of connections for the realm has been reached, in which case this method
+     * waits for a connection to be released.
+     *
+     * @param connectionHandlerFactory the factory to use if a new ConnectionHandler has to be created
+     * @param url the location to get a connection for
+     * @param acquireLock <code>true</code> to lock the returned ConnectionHandler
+     * @return a ConnectionHandler for the specified location
+     * @throws InterruptedIOException if the thread was interrupted, or the wait timeout expired while waiting for
+     * a connection to be released
+     */
+    public static ConnectionHandler getConnectionHandler(ConnectionHandlerFactory connectionHandlerFactory, FileURL url, boolean acquireLock) throws InterruptedIOException {
+        FileURL realm = url.getRealm();
+        ConnectionHandler connHandler = getRealmPool(realm, true).getConnectionHandler(connectionHandlerFactory, url, acquireLock);
 
-                return connHandler;
-            }
+        // Start monitor thread if it is not currently running (if there previously was no registered ConnectionHandler)
+        startMonitorThread();
+
+        return connHandler;
+    }
+
+    /**
+     * Returns the pool of the specified realm, creating it if it doesn't exist and <code>create</code> is
+     * <code>true</code>.
+     */
+    private static RealmPool getRealmPool(FileURL realm, boolean create) {
+        RealmKey key = new RealmKey(realm);
+        RealmPool pool = realmPools.get(key);
+        if(pool==null && create) {
+            pool = new RealmPool(realm);
+            RealmPool existingPool = realmPools.putIfAbsent(key, pool);
+            if(existingPool!=null)
+                pool = existingPool;
+        }
+
+        return pool;
+    }
+
+    private static synchronized void startMonitorThread() {
+        if (monitorThread == null) {
+            LOGGER.info("starting monitor thread");
+            monitorThread = new Thread(instance, "ConnectionPool monitor");
+            monitorThread.setDaemon(true);
+            monitorThread.start();
         }
     }
 
+    private static synchronized boolean stopMonitorThreadIfIdle() {
+        // Stop monitor thread if there are no more ConnectionHandler
+        for(RealmPool pool : realmPools.values()) {
+            if(!pool.isEmpty())
+                return false;
+        }
+
+        LOGGER.info("No more ConnectionHandler, stopping monitor thread");
+        monitorThread = null;
+        return true;
+    }
+
 
     /**
      * Returns a list of registered ConnectionHandler instances. As the name of this method implies, the returned
@@ -135,25 +202,62 @@ public class ConnectionPool implements Runnable {
      * @return a list of registered ConnectionHandler instances
      */
     public static List<ConnectionHandler> getConnectionHandlersSnapshot() {
-        return new ArrayList<>(connectionHandlers);
+        List<ConnectionHandler> snapshot = new ArrayList<>();
+        for(RealmPool pool : realmPools.values())
+            snapshot.addAll(pool.connectionHandlers);
+
+        return snapshot;
     }
-    
-//    /**
-//     * Returns the ConnectionHandler instance located at the given position in the list.
-//     */
-//    private static ConnectionHandler getConnectionHandlerAt(int i) {
-//        return connectionHandlers.get(i);
-//    }
 
     /**
-     * Called by {@link ConnectionHandler#releaseLock()} to notify the <code>ConnectionHandler</code> that a
+     * Returns the metrics of the pool of the specified realm.
+     *
+     * @param realm the realm to return the metrics of, see {@link FileURL#getRealm()}
+     * @return the metrics of the pool of the specified realm
+     */
+    public static ConnectionPoolMetrics getMetrics(FileURL realm) {
+        RealmPool pool = getRealmPool(realm, false);
+
+        return pool==null
+            ? new ConnectionPoolMetrics(realm, 0, 0, 0, 0, 0, 0, 0)
+            : pool.getMetrics();
+    }
+
+    /**
+     * Returns the metrics of all realms combined.
+     *
+     * @return the metrics of all realms combined
+     */
+    public static ConnectionPoolMetrics getMetrics() {
+        ConnectionPoolMetrics metrics = new ConnectionPoolMetrics(null, 0, 0, 0, 0, 0, 0, 0);
+        for(RealmPool pool : realmPools.values())
+            metrics = metrics.add(pool.getMetrics());
+
+        return metrics;
+    }
+
+    /**
+     * Called by {@link ConnectionHandler#releaseLock()} to notify the <code>ConnectionPool</code> that a
      * <code>ConnectionHandler</code> has been released.
+     *
+     * @param connHandler the ConnectionHandler that was released
      */
-    static void notifyConnectionHandlerLockReleased() {
-        synchronized (connectionHandlers) {
-            // Notify any thread waiting for a ConnectionHandler to be released
-            connectionHandlers.notify();
-        }
+    static void notifyConnectionHandlerLockReleased(ConnectionHandler connHandler) {
+        RealmPool pool = getRealmPool(connHandler.getRealm(), false);
+        if(pool!=null)
+            pool.signalWaiters();
+    }
+
+    /**
+     * Called by {@link ConnectionHandler#checkConnection()} to report the time it took to start a connection.
+     *
+     * @param connHandler the ConnectionHandler whose connection was started
+     * @param time number of milliseconds it took to start the connection
+     */
+    static void notifyConnectionStarted(ConnectionHandler connHandler, long time) {
+        RealmPool pool = getRealmPool(connHandler.getRealm(), false);
+        if(pool!=null)
+            pool.connectionStarted(time);
     }
 
     /**
@@ -165,14 +269,300 @@ public class ConnectionPool implements Runnable {
      */
     public void run() {
 
-        while (monitorThread != null) {        // Thread will be interrupted by CloseConnectionThread if there are no more ConnectionHandler
+        while (true) {
             long now = System.currentTimeMillis();
 
-            synchronized(connectionHandlers) {      // Ensures that getConnectionHandler is not currently changing the list while we access it
-                for (Iterator<ConnectionHandler> it = connectionHandlers.iterator(); it.hasNext();) {
-                    final ConnectionHandler connHandler = it.next();
-                //for (ConnectionHandler connHandler : connectionHandlers) {
+            for(RealmPool pool : realmPools.values())
+                pool.monitor(now);
+
+            if(stopMonitorThreadIfIdle())
+                return;
+
+            // Sleep for MONITOR_SLEEP_PERIOD milliseconds, minus the processing time of this loop
+            try {
+                Thread.sleep(Math.max(0, MONITOR_SLEEP_PERIOD-(System.currentTimeMillis()-now)));
+            } catch(InterruptedException e) {
+                // Will loop again
+            }
+        }
+    }
+
+
+    /**
+     * Key of a realm in the map of pools. Credentials are not part of the key: a pool holds the connections of all
+     * the accounts used on a realm, and the {@link #getMaxConnectionsPerRealm() per-realm limit} applies to all of
+     * them combined, like the limits servers enforce per client. Connections opened with other credentials are
+     * closed when idle to make room for the ones being requested.
+     */
+    private static class RealmKey {
+
+        private final FileURL realm;
+
+        private RealmKey(FileURL realm) {
+            // FileURL#hashCode takes credentials into account. Realms normally have none (see FileURL#getRealm()),
+            // they are removed otherwise to keep hashCode consistent with equals.
+            if(realm.getCredentials()!=null) {
+                realm = (FileURL)realm.clone();
+                realm.setCredentials(null);
+            }
+
+            this.realm = realm;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return (o instanceof RealmKey) && realm.equals(((RealmKey)o).realm, false, true);
+        }
+
+        @Override
+        public int hashCode() {
+            return realm.hashCode();
+        }
+    }
+
+
+    /**
+     * The connections of a realm. The list of connections can be read without locking, but is only modified while
+     * holding the pool's lock, which is never held while a connection is being created, started or closed.
+     */
+    private static class RealmPool {
+
+        private final FileURL realm;
+
+        /** Registered ConnectionHandler, most recently created first */
+        private final List<ConnectionHandler> connectionHandlers = new CopyOnWriteArrayList<>();
+
+        /** Fair lock: threads waiting for a connection are served in the order in which they started waiting */
+        private final ReentrantLock lock = new ReentrantLock(true);
+
+        /** Signaled when a connection is released or removed from the pool */
+        private final Condition connectionAvailable = lock.newCondition();
+
+        /** Number of ConnectionHandler that are being created, guarded by lock */
+        private int pendingCreations;
+
+        /** Number of threads waiting for a connection, guarded by lock */
+        private int waiters;
+
+        /** Metrics, guarded by lock */
+        private long connectionsStarted;
+        private long totalConnectionTime;
+        private long maxConnectionTime;
+        private long waitTimeouts;
+
+        private RealmPool(FileURL realm) {
+            this.realm = realm;
+        }
+
+        private boolean isEmpty() {
+            lock.lock();
+            try {
+                return connectionHandlers.isEmpty() && pendingCreations==0;
+            }
+            finally {
+                lock.unlock();
+            }
+        }
+
+        private void signalWaiters() {
+            lock.lock();
+            try {
+                // Wake up all waiters: the first one in line may not be able to use the released connection if its
+                // credentials are different
+                connectionAvailable.signalAll();
+            }
+            finally {
+                lock.unlock();
+            }
+        }
+
+        private void connectionStarted(long time) {
+            lock.lock();
+            try {
+                connectionsStarted++;
+                totalConnectionTime += time;
+                maxConnectionTime = Math.max(maxConnectionTime, time);
+            }
+            finally {
+                lock.unlock();
+            }
+        }
+
+        private ConnectionPoolMetrics getMetrics() {
+            lock.lock();
+            try {
+                int active = 0;
+                for(ConnectionHandler connHandler : connectionHandlers) {
+                    if(connHandler.isLocked())
+                        active++;
+                }
+
+                return new ConnectionPoolMetrics(realm, active, connectionHandlers.size()-active, waiters,
+                        connectionsStarted, totalConnectionTime, maxConnectionTime, waitTimeouts);
+            }
+            finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Returns a registered ConnectionHandler that matches the given credentials and is not locked, locking it if
+         * requested, <code>null</code> if there is none. Must be called while holding the lock.
+         */
+        private ConnectionHandler findAvailable(Credentials credentials, boolean acquireLock) {
+            for (ConnectionHandler connHandler : connectionHandlers) {
+                // ConnectionHandler must match the realm and credentials and must not be locked
+                if (connHandler.equals(realm, credentials)) {
+                    synchronized(connHandler) {     // Ensures that lock remains unchanged while we access/update it
+                        // Try to acquire lock if a lock was requested
+                        if (!connHandler.isLocked() && (!acquireLock || connHandler.acquireLock()))
+                            return connHandler;
+                    }
+                }
+            }
+
+            return null;
+        }
+
+        /**
+         * Removes and returns a registered ConnectionHandler that does not match the given credentials and is not
+         * locked, <code>null</code> if there is none. Must be called while holding the lock.
+         */
+        private ConnectionHandler removeIdleMismatch(Credentials credentials) {
+            for (ConnectionHandler connHandler : connectionHandlers) {
+                if (!connHandler.equals(realm, credentials)) {
+                    synchronized(connHandler) {
+                        if (!connHandler.isLocked()) {
+                            connectionHandlers.remove(connHandler);
+                            return connHandler;
+                        }
+                    }
+                }
+            }
+
+            return null;
+        }
+
+        private ConnectionHandler getConnectionHandler(ConnectionHandlerFactory connectionHandlerFactory, FileURL url, boolean acquireLock) throws InterruptedIOException {
+            Credentials urlCredentials = url.getCredentials();
+            long timeout = waitTimeout;
+            long deadline = System.nanoTime()+TimeUnit.MILLISECONDS.toNanos(timeout);
 
+            try {
+                lock.lockInterruptibly();
+            } catch(InterruptedException e) {
+                LOGGER.info("Interrupted while waiting on a connection for {}", url, e);
+                throw new InterruptedIOException();
+            }
+
+            ConnectionHandler evictedConnHandler = null;
+            try {
+                while(true) {
+                    // Try and find an appropriate existing ConnectionHandler
+                    ConnectionHandler connHandler = findAvailable(urlCredentials, acquireLock);
+                    if(connHandler!=null) {
+                        LOGGER.info("returning ConnectionHandler {}, realm = {}", connHandler, realm);
+
+                        // Update last activity timestamp to now
+                        connHandler.updateLastActivityTimestamp();
+
+                        return connHandler;
+                    }
+
+                    // Reserve a slot for a new ConnectionHandler if the limit has not been reached
+                    if(connectionHandlers.size()+pendingCreations < maxConnectionsPerRealm) {
+                        pendingCreations++;
+                        break;
+                    }
+
+                    // Make room by closing an idle connection that was opened with other credentials
+                    evictedConnHandler = removeIdleMismatch(urlCredentials);
+                    if(evictedConnHandler!=null) {
+                        LOGGER.info("Removing idle ConnectionHandler {} to make room for new credentials", evictedConnHandler);
+                        pendingCreations++;
+                        break;
+                    }
+
+                    LOGGER.info("Maximum number of connection per realm reached, waiting for one to be removed or released...");
+                    waiters++;
+                    try {
+                        // Wait for a ConnectionHandler to be released or removed from the pool
+                        if(timeout==0) {
+                            connectionAvailable.await();
+                        }
+                        else {
+                            long remaining = deadline-System.nanoTime();
+                            if(remaining<=0) {
+                                waitTimeouts++;
+                                throw new InterruptedIOException("Timed out waiting for a connection to "+realm.toString(false));
+                            }
+                            connectionAvailable.awaitNanos(remaining);
+                        }
+                    } catch(InterruptedException e) {
+                        LOGGER.info("Interrupted while waiting on a connection for {}", url, e);
+                        throw new InterruptedIOException();
+                    } finally {
+                        waiters--;
+                    }
+                }
+            } finally {
+                lock.unlock();
+            }
+
+            // Close evicted connection in a separate thread as it could lock this thread
+            if(evictedConnHandler!=null)
+                new CloseConnectionThread(evictedConnHandler).start();
+
+            // No suitable ConnectionHandler found, create a new one without holding the lock
+            ConnectionHandler connHandler = null;
+            try {
+                connHandler = connectionHandlerFactory.createConnectionHandler(url);
+
+                // Acquire lock if a lock was requested
+                if (acquireLock) {
+                    connHandler.acquireLock();
+                }
+
+                // Update last activity timestamp to now
+                connHandler.updateLastActivityTimestamp();
+            } finally {
+                lock.lock();
+                try {
+                    pendingCreations--;
+                    if(connHandler!=null) {
+                        LOGGER.info("adding new ConnectionHandler {}, realm = {}", connHandler, connHandler.getRealm());
+
+                        // Insert new ConnectionHandler at first position as if it has more chances to be accessed again soon
+                        connectionHandlers.add(0, connHandler);
+                    }
+                    else {
+                        // The slot that was reserved is available again
+                        connectionAvailable.signalAll();
+                    }
+                } finally {
+                    lock.unlock();
+                }
+            }
+
+            return connHandler;
+        }
+
+        /**
+         * Removes the given ConnectionHandler and notifies waiters. Must be called while holding the lock.
+         */
+        private void remove(ConnectionHandler connHandler) {
+            connectionHandlers.remove(connHandler);
+            // Notify any thread waiting for a ConnectionHandler to be released
+            connectionAvailable.signalAll();
+        }
+
+        /**
+         * Keeps connections alive and removes the ones that have expired.
+         */
+        private void monitor(long now) {
+            lock.lock();        // Ensures that getConnectionHandler is not currently changing the list while we access it
+            try {
+                for (ConnectionHandler connHandler : connectionHandlers) {
                     synchronized(connHandler) {     // Ensures that no one is trying to acquire a lock on the connection while we access it
                         // Do not touch ConnectionHandler if it is currently locked
                         if (connHandler.isLocked()) {
@@ -184,10 +574,7 @@ public class ConnectionPool implements Runnable {
                         if (!connHandler.isConnected()) {
                             LOGGER.info("Removing unconnected ConnectionHandler {}", connHandler);
 
-                            //connectionHandlers.remove(connHandler);
-                            it.remove();
-                            // Notify any thread waiting for a ConnectionHandler to be released
-                            connectionHandlers.notify();
+                            remove(connHandler);
 
                             continue;       // Skips close on inactivity and keep alive checks
                         }
@@ -200,10 +587,7 @@ public class ConnectionPool implements Runnable {
                         if (closePeriod != -1 && now - lastUsed > closePeriod*1000) {
                             LOGGER.info("Removing timed-out ConnectionHandler {}",connHandler);
 
-                            //connectionHandlers.remove(connHandler);
-                            it.remove();
-                            // Notify any thread waiting for a ConnectionHandler to be released
-                            connectionHandlers.notify();
+                            remove(connHandler);
 
                             // Close connection in a separate thread as it could lock this thread
                             new CloseConnectionThread(connHandler).start();
@@ -223,19 +607,8 @@ public class ConnectionPool implements Runnable {
                         }
                     }
                 }
-
-                // Stop monitor thread if there are no more ConnectionHandler
-                if (connectionHandlers.size() == 0) {
-                    LOGGER.info("No more ConnectionHandler, stopping monitor thread");
-                    monitorThread = null;
-                }
-            }
-
-            // Sleep for MONITOR_SLEEP_PERIOD milliseconds, minus the processing time of this loop
-            try {
-                Thread.sleep(Math.max(0, MONITOR_SLEEP_PERIOD-(System.currentTimeMillis()-now)));
-            } catch(InterruptedException e) {
-                // Will loop again
+            } finally {
+                lock.unlock();
             }
         }
     }
@@ -0,0 +1,151 @@
+/**
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2010 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.commons.file.connection;
+
+import com.mucommander.commons.file.FileURL;
+
+/**
+ * A snapshot of the state of the {@link ConnectionPool} for a given realm, or for all realms combined. Instances are
+ * immutable and do not reflect the changes that occur after they have been created.
+ *
+ * @see ConnectionPool#getMetrics(FileURL)
+ * @see ConnectionPool#getMetrics()
+ */
+public class ConnectionPoolMetrics {
+
+    private final FileURL realm;
+    private final int activeConnections;
+    private final int idleConnections;
+    private final int waiters;
+    private final long connectionsStarted;
+    private final long totalConnectionTime;
+    private final long maxConnectionTime;
+    private final long waitTimeouts;
+
+    ConnectionPoolMetrics(FileURL realm, int activeConnections, int idleConnections, int waiters,
+                          long connectionsStarted, long totalConnectionTime, long maxConnectionTime, long waitTimeouts) {
+        this.realm = realm;
+        this.activeConnections = activeConnections;
+        this.idleConnections = idleConnections;
+        this.waiters = waiters;
+        this.connectionsStarted = connectionsStarted;
+        this.totalConnectionTime = totalConnectionTime;
+        this.maxConnectionTime = maxConnectionTime;
+        this.waitTimeouts = waitTimeouts;
+    }
+
+    /**
+     * Returns the sum of both metrics, used to combine the metrics of several realms.
+     */
+    ConnectionPoolMetrics add(ConnectionPoolMetrics metrics) {
+        return new ConnectionPoolMetrics(null,
+                activeConnections+metrics.activeConnections,
+                idleConnections+metrics.idleConnections,
+                waiters+metrics.waiters,
+                connectionsStarted+metrics.connectionsStarted,
+                totalConnectionTime+metrics.totalConnectionTime,
+                Math.max(maxConnectionTime, metrics.maxConnectionTime),
+                waitTimeouts+metrics.waitTimeouts);
+    }
+
+    /**
+     * Returns the realm these metrics correspond to, <code>null</code> if they combine all realms.
+     *
+     * @return the realm these metrics correspond to, null if they combine all realms
+     */
+    public FileURL getRealm() {
+        return realm;
+    }
+
+    /**
+     * Returns the number of connections that are currently locked by a client.
+     *
+     * @return the number of connections that are currently locked by a client
+     */
+    public int getActiveConnections() {
+        return activeConnections;
+    }
+
+    /**
+     * Returns the number of connections that are currently registered in the pool but not locked by a client.
+     *
+     * @return the number of connections that are registered in the pool but not locked
+     */
+    public int getIdleConnections() {
+        return idleConnections;
+    }
+
+    /**
+     * Returns the number of threads that are currently waiting for a connection to be released.
+     *
+     * @return the number of threads that are currently waiting for a connection to be released
+     */
+    public int getWaiters() {
+        return waiters;
+    }
+
+    /**
+     * Returns the number of connections that have been started (established) since the pool was created.
+     *
+     * @return the number of connections that have been started since the pool was created
+     */
+    public long getConnectionsStarted() {
+        return connectionsStarted;
+    }
+
+    /**
+     * Returns the average time it took to start a connection, in milliseconds, <code>0</code> if no connection has
+     * been started yet.
+     *
+     * @return the average time it took to start a connection, in milliseconds
+     */
+    public long getAverageConnectionTime() {
+        return connectionsStarted==0?0:totalConnectionTime/connectionsStarted;
+    }
+
+    /**
+     * Returns the longest time it took to start a connection, in milliseconds.
+     *
+     * @return the longest time it took to start a connection, in milliseconds
+     */
+    public long getMaxConnectionTime() {
+        return maxConnectionTime;
+    }
+
+    /**
+     * Returns the number of times a thread gave up waiting for a connection because the wait timeout expired.
+     *
+     * @return the number of times a thread gave up waiting for a connection
+     */
+    public long getWaitTimeouts() {
+        return waitTimeouts;
+    }
+
+    @Override
+    public String toString() {
+        return (realm==null?"all realms":realm.toString(false))
+            +": active="+activeConnections
+            +" idle="+idleConnections
+            +" waiters="+waiters
+            +" started="+connectionsStarted
+            +" avgConnectionTime="+getAverageConnectionTime()+"ms"
+            +" maxConnectionTime="+maxConnectionTime+"ms"
+            +" waitTimeouts="+waitTimeouts;
+    }
+}
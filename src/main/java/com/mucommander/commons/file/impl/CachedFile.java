@@ -22,6 +22,7 @@ package com.mucommander.commons.file.impl;
 import com.mucommander.commons.file.AbstractFile;
 import com.mucommander.commons.file.FilePermissions;
 import com.mucommander.commons.file.FileProtocols;
+import com.mucommander.commons.file.ListingListener;
 import com.mucommander.commons.file.UnsupportedFileOperationException;
 import com.mucommander.commons.file.filter.FileFilter;
 import com.mucommander.commons.file.filter.FilenameFilter;
@@ -29,10 +30,10 @@ import com.mucommander.commons.file.impl.local.LocalFile;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.File;
 import java.io.IOException;
-import java.lang.reflect.Field;
-import java.lang.reflect.Method;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.DosFileAttributes;
 
 /**
  * CachedFile is a ProxyFile that caches the return values of most {@link AbstractFile} getter methods. This allows
@@ -124,56 +125,8 @@ public class CachedFile extends ProxyFile {
     private AbstractFile getCanonicalFile;
     private boolean getCanonicalFileSet;
 
-    // Used to access the java.io.FileSystem#getBooleanAttributes method
-    private static boolean getFileAttributesAvailable;
-    private static Method mGetBooleanAttributes;
-    private static int BA_DIRECTORY, BA_EXISTS, BA_HIDDEN;
-    private static Object fs;
-
-    static {
-        // Exposes the java.io.FileSystem class which by default has package access, in order to use its
-        // 'getBooleanAttributes' method to speed up access to file attributes under Windows.
-        // This method allows to retrieve the values of the 'exists', 'isDirectory' and 'isHidden' attributes in one
-        // pass, resolving the underlying file only once instead of 3 times. Since resolving a file is a particularly
-        // expensive operation under Windows due to improper use of the Win32 API, this helps speed things up a little.
-        // References:
-        //  - http://bugs.sun.com/bugdatabase/view_bug.do?bug_id=5036988
-        //  - http://bugs.sun.com/bugdatabase/view_bug.do?bug_id=6240028
-        //
-        // This hack was made for Windows, but is now used for other platforms as well as it is necessarily faster than
-        // retrieving file attributes individually.
-
-        try {
-            // Resolve FileSystem class, 'getBooleanAttributes' method and fields
-            Class<?> cFile = File.class;
-            Class<?> cFileSystem = Class.forName("java.io.FileSystem");
-            mGetBooleanAttributes = cFileSystem.getDeclaredMethod("getBooleanAttributes", cFile);
-            Field fBA_EXISTS = cFileSystem.getDeclaredField("BA_EXISTS");
-            Field fBA_DIRECTORY = cFileSystem.getDeclaredField("BA_DIRECTORY");
-            Field fBA_HIDDEN = cFileSystem.getDeclaredField("BA_HIDDEN");
-            Field fFs = cFile.getDeclaredField("fs");
-
-            // Allow access to the 'getBooleanAttributes' method and to the fields we're interested in
-            mGetBooleanAttributes.setAccessible(true);
-            fFs.setAccessible(true);
-            fBA_EXISTS.setAccessible(true);
-            fBA_DIRECTORY.setAccessible(true);
-            fBA_HIDDEN.setAccessible(true);
-
-            // Retrieve constant field values once for all
-            BA_EXISTS = (Integer) fBA_EXISTS.get(null);
-            BA_DIRECTORY = (Integer) fBA_DIRECTORY.get(null);
-            BA_HIDDEN = (Integer) fBA_HIDDEN.get(null);
-            fs = fFs.get(null);
-
-            getFileAttributesAvailable = true;
-            LOGGER.trace("Access to java.io.FileSystem granted");
-        }
-        catch(Exception e) {
-            LOGGER.info("Error while allowing access to java.io.FileSystem", e);
-        }
-    }
-
+    /** True once the attributes of the local file have been pre-fetched, see #getFileAttributes(AbstractFile) */
+    private boolean fileAttributesFetched;
 
     /**
      * Creates a new CachedFile instance around the specified AbstractFile, caching returned values of cached methods
@@ -203,33 +156,64 @@ public class CachedFile extends ProxyFile {
 
 
     /**
-     * Pre-fetches values of {@link #isDirectory}, {@link #exists} and {@link #isHidden} for the given local file,
-     * using the <code>java.io.FileSystem#getBooleanAttributes(java.io.File)</code> method.
-     * The given {@link AbstractFile} must be a local file or a proxy to a local file ('file' protocol). This method
-     * must only be called if the {@link #getFileAttributesAvailable} field is <code>true</code>.
+     * Pre-fetches values of {@link #isDirectory}, {@link #exists}, {@link #getSize}, {@link #getDate} and, under
+     * Windows, {@link #isHidden} for the given file if it is a local file or a proxy to a local file, reading the
+     * attributes of the file at once with {@link LocalFile#readAttributes()}. The attributes of a file that has just
+     * been listed are already known and thus cost nothing. This method does nothing if the attributes couldn't be
+     * read, in which case the values will be retrieved individually.
      */
     private void getFileAttributes(AbstractFile file) {
+        // The method is called at most once
+        fileAttributesFetched = true;
+
         file = file.getTopAncestor();
+        if(!(file instanceof LocalFile))
+            return;
 
-        if(file instanceof LocalFile) {
-            try {
-                int ba = (Integer) mGetBooleanAttributes.invoke(fs, file.getUnderlyingFileObject());
+        BasicFileAttributes attributes;
+        try {
+            attributes = ((LocalFile)file).readAttributes();
+        }
+        catch(NoSuchFileException e) {
+            exists = false;
+            existsSet = true;
+
+            isDirectory = false;
+            isDirectorySet = true;
+
+            return;
+        }
+        catch(IOException e) {
+            LOGGER.info("Could not retrieve file attributes for {}", file, e);
+            return;
+        }
 
-                isDirectory = (ba & BA_DIRECTORY)!=0;
-                isDirectorySet = true;
+        exists = true;
+        existsSet = true;
 
-                exists = (ba & BA_EXISTS)!=0;
-                existsSet = true;
+        isDirectory = attributes.isDirectory();
+        isDirectorySet = true;
 
-                isHidden = (ba & BA_HIDDEN)!=0;
-                isHiddenSet = true;
-            }
-            catch(Exception e) {
-                LOGGER.info("Could not retrieve file attributes for {}", file, e);
-            }
+        getSize = attributes.size();
+        getSizeSet = true;
+
+        getDate = attributes.lastModifiedTime().toMillis();
+        getDateSet = true;
+
+        if(attributes instanceof DosFileAttributes) {
+            isHidden = ((DosFileAttributes)attributes).isHidden();
+            isHiddenSet = true;
         }
     }
 
+    /**
+     * Returns <code>true</code> if the attributes of the proxied file should be pre-fetched with
+     * {@link #getFileAttributes(AbstractFile)}.
+     */
+    private boolean shouldGetFileAttributes() {
+        return !fileAttributesFetched && FileProtocols.FILE.equals(file.getURL().getScheme());
+    }
+
 
     ////////////////////////////////////////////////////
     // Overridden methods to cache their return value //
@@ -237,6 +221,9 @@ public class CachedFile extends ProxyFile {
 
     @Override
     public long getSize() {
+        if(!getSizeSet && shouldGetFileAttributes())
+            getFileAttributes(file);
+
         if(!getSizeSet) {
             getSize = file.getSize();
             getSizeSet = true;
@@ -247,6 +234,9 @@ public class CachedFile extends ProxyFile {
 
     @Override
     public long getDate() {
+        if(!getDateSet && shouldGetFileAttributes())
+            getFileAttributes(file);
+
         if(!getDateSet) {
             getDate = file.getDate();
             getDateSet = true;
@@ -267,7 +257,7 @@ public class CachedFile extends ProxyFile {
 
     @Override
     public boolean isDirectory() {
-        if(!isDirectorySet && getFileAttributesAvailable && FileProtocols.FILE.equals(file.getURL().getScheme()))
+        if(!isDirectorySet && shouldGetFileAttributes())
             getFileAttributes(file);
         // Note: getFileAttributes() might fail to retrieve file attributes, so we need to test isDirectorySet again
 
@@ -291,7 +281,7 @@ public class CachedFile extends ProxyFile {
 
     @Override
     public boolean isHidden() {
-        if(!isHiddenSet && getFileAttributesAvailable && FileProtocols.FILE.equals(file.getURL().getScheme()))
+        if(!isHiddenSet && shouldGetFileAttributes())
             getFileAttributes(file);
         // Note: getFileAttributes() might fail to retrieve file attributes, so we need to test isDirectorySet again
 
@@ -365,7 +355,7 @@ public class CachedFile extends ProxyFile {
 
     @Override
     public boolean exists() {
-        if(!existsSet && getFileAttributesAvailable && FileProtocols.FILE.equals(file.getURL().getScheme()))
+        if(!existsSet && shouldGetFileAttributes())
             getFileAttributes(file);
         // Note: getFileAttributes() might fail to retrieve file attributes, so we need to test isDirectorySet again
 
@@ -512,4 +502,19 @@ public class CachedFile extends ProxyFile {
 
         return files;
     }
+
+    @Override
+    public void ls(FileFilter filter, final ListingListener listener) throws IOException, UnsupportedFileOperationException {
+        if(!recurseInstances) {
+            file.ls(filter, listener);
+            return;
+        }
+
+        // Create a CachedFile instance around each of the files of every batch
+        file.ls(filter, new ListingListener() {
+            public boolean childrenListed(AbstractFile children[]) {
+                return listener.childrenListed(createCachedFiles(children));
+            }
+        });
+    }
 }
@@ -70,6 +70,10 @@ import java.util.Date;
  * These properties are only used when the FTP connection is created. Setting them after the connection is created
  * will not have any immediate effect, their values will only be used if the connection needs to be re-established.
  *
+ * <p>Files are resolved using the <code>MLST</code> command and directories listed using the <code>MLSD</code> command
+ * if the server supports them, with <code>LIST</code> being used otherwise. Directory listings are cached for a short
+ * period of time (see {@link #setListingCachingPeriod(long)}) and invalidated whenever a file is modified.
+ *
  * <p>Access to FTP files is provided by the <code>Commons-net</code> library distributed under the Apache Software License.
  * The {@link #getUnderlyingFileObject()} method allows to retrieve a <code>org.apache.commons.net.ftp.FTPFile</code>
  * instance corresponding to this FTPFile.
@@ -151,11 +155,22 @@ public class FTPFile extends ProtocolFile implements ConnectionHandlerFactory {
     }
 
 
+    /**
+     * Sets the period of time during which directory listings are cached before being fetched again from the server.
+     * Cached listings are used to list directories and to resolve the files they contain, and are invalidated when
+     * a file is modified by muCommander.
+     *
+     * @param period period of time during which listings are cached, in milliseconds. 0 disables listing caching.
+     */
+    public static void setListingCachingPeriod(long period) {
+        FTPListingCache.setCachingPeriod(period);
+    }
+
+
     private org.apache.commons.net.ftp.FTPFile getFTPFile(FileURL fileURL) throws IOException {
-        // Todo: this method is very ineffective as it lists the parent directory to retrieve the information about the
-        // requested file to workaround the fact that FTPClient#listFiles follows directories.
-        // => Use the MLST command if supported by the server (use FEAT command to find out if it is supported).
-        // See http://tools.ietf.org/html/draft-ietf-ftpext-mlst-16
+        // FTPClient#listFiles follows directories, so the information about the requested file is retrieved either
+        // with the MLST command if the server supports it, or by listing the parent directory. A recent listing of the
+        // parent directory is used if there is one.
         FileURL parentURL = fileURL.getParent();
         LOGGER.trace("fileURL={} parent={}", fileURL, parentURL);
 
@@ -170,9 +185,33 @@ public class FTPFile extends ProtocolFile implements ConnectionHandlerFactory {
                 // Makes sure the connection is started, if not starts it
                 connHandler.checkConnection();
 
-                // List files contained by this file's parent in order to retrieve the FTPFile instance corresponding
-                // to this file
-                files = listFiles(connHandler, parentURL.getPath());
+                files = connHandler.listingCache.get(parentURL.getPath());
+                if(files==null) {
+                    if(connHandler.mlsxSupported) {
+                        org.apache.commons.net.ftp.FTPFile file = connHandler.ftpClient.mlistFile(fileURL.getPath());
+                        if(file!=null)
+                            return file;
+
+                        // File doesn't exist
+                        if(connHandler.ftpClient.getReplyCode()==FTPReply.FILE_UNAVAILABLE)
+                            return null;
+
+                        // The server doesn't support MLST after all, fall back to listing the parent
+                        LOGGER.info("MLST failed: {}", connHandler.ftpClient.getReplyString());
+                        connHandler.mlsxSupported = false;
+                    }
+
+                    // List files contained by this file's parent in order to retrieve the FTPFile instance
+                    // corresponding to this file
+                    files = listFiles(connHandler, parentURL.getPath());
+                }
+            }
+            catch(IOException e) {
+                // Checks if the IOException corresponds to a socket error and in that case, closes the connection
+                connHandler.checkSocketException(e);
+
+                // Re-throw IOException
+                throw e;
             }
             finally {
                 // Release the lock on the ConnectionHandler
@@ -186,7 +225,7 @@ public class FTPFile extends ProtocolFile implements ConnectionHandlerFactory {
             // Find the file in the parent folder's contents
             String wantedName = fileURL.getFilename();
             for (org.apache.commons.net.ftp.FTPFile file1 : files) {
-                if (file1.getName().equalsIgnoreCase(wantedName))
+                if (file1!=null && file1.getName().equalsIgnoreCase(wantedName))
                     return file1;
             }
 
@@ -208,8 +247,9 @@ public class FTPFile extends ProtocolFile implements ConnectionHandlerFactory {
 
     /**
      * Lists and returns the contents of the given path on the server using the given connection handler.
-     * The directory contents is listed by issuing a CWD followed by a LIST so after this method is called, the current
-     * working directory is left to the specified path.
+     * The directory contents is listed by issuing a CWD followed by an MLSD if the server supports it, a LIST otherwise,
+     * so after this method is called, the current working directory is left to the specified path.
+     * If the directory has been listed recently, the cached listing is returned without communicating with the server.
      *
      * @param connHandler the connection handler to use for communicating with the server
      * @param absPath absolute path to the directory to list
@@ -219,7 +259,10 @@ public class FTPFile extends ProtocolFile implements ConnectionHandlerFactory {
      * @throws AuthException if the user is not allowed to access this directory
      */
     private static org.apache.commons.net.ftp.FTPFile[] listFiles(FTPConnectionHandler connHandler, String absPath) throws IOException, AuthException {
-        org.apache.commons.net.ftp.FTPFile files[];
+        org.apache.commons.net.ftp.FTPFile files[] = connHandler.listingCache.get(absPath);
+        if(files!=null)
+            return files;
+
         try {
             // Important: the folder is listed by changing the current working directory using the CWD command and then
             // issuing a LIST to list the current directory, instead of issuing a LIST with the path as an argument.
@@ -240,13 +283,18 @@ public class FTPFile extends ProtocolFile implements ConnectionHandlerFactory {
             // http://issues.apache.org/jira/browse/NET-10
 
             connHandler.ftpClient.changeWorkingDirectory(absPath);
-            files = connHandler.ftpClient.listFiles();
+            if(connHandler.mlsxSupported)
+                files = connHandler.ftpClient.mlistDir();
+            else
+                files = connHandler.ftpClient.listFiles();
 
             // Throw an IOException if server replied with an error
             connHandler.checkServerReply();
 
             if(files==null)     // In some rare conditions (bug) this method can return null
-                return new org.apache.commons.net.ftp.FTPFile[0];
+                files = new org.apache.commons.net.ftp.FTPFile[0];
+
+            connHandler.listingCache.put(absPath, files);
 
             return files;
         }
@@ -325,6 +373,7 @@ public class FTPFile extends ProtocolFile implements ConnectionHandlerFactory {
             LOGGER.info("sending SITE UTIME {} {}", sdate, absPath);
             boolean success = connHandler.ftpClient.sendSiteCommand("UTIME "+sdate+" "+absPath);
             LOGGER.info("server reply: {}", connHandler.ftpClient.getReplyString());
+            connHandler.listingCache.invalidate(absPath);
 
             if(!success) {
                 int replyCode = connHandler.ftpClient.getReplyCode();
@@ -524,6 +573,7 @@ public class FTPFile extends ProtocolFile implements ConnectionHandlerFactory {
                 connHandler.ftpClient.removeDirectory(absPath);
             else
                 connHandler.ftpClient.deleteFile(absPath);
+            connHandler.listingCache.invalidate(absPath);
 
             // Throw an IOException if server replied with an error
             connHandler.checkServerReply();
@@ -611,6 +661,7 @@ public class FTPFile extends ProtocolFile implements ConnectionHandlerFactory {
             connHandler.checkConnection();
 
             connHandler.ftpClient.makeDirectory(absPath);
+            connHandler.listingCache.invalidate(absPath);
             // Throw an IOException if server replied with an error
             connHandler.checkServerReply();
 
@@ -691,6 +742,7 @@ public class FTPFile extends ProtocolFile implements ConnectionHandlerFactory {
             LOGGER.info("sending SITE CHMOD {} {}", Integer.toOctalString(permissions), absPath);
             boolean success = connHandler.ftpClient.sendSiteCommand("CHMOD "+Integer.toOctalString(permissions)+" "+absPath);
             LOGGER.info("server reply: {}", connHandler.ftpClient.getReplyString());
+            connHandler.listingCache.invalidate(absPath);
 
             if(!success) {
                 int replyCode = connHandler.ftpClient.getReplyCode();
@@ -749,7 +801,11 @@ public class FTPFile extends ProtocolFile implements ConnectionHandlerFactory {
             // Makes sure the connection is started, if not starts it
             connHandler.checkConnection();
 
-            if(!connHandler.ftpClient.rename(absPath, destFile.getURL().getPath()))
+            boolean success = connHandler.ftpClient.rename(absPath, destFile.getURL().getPath());
+            connHandler.listingCache.invalidate(absPath);
+            connHandler.listingCache.invalidate(destFile.getURL().getPath());
+
+            if(!success)
                 throw new IOException();
         }
         catch(IOException e) {
@@ -1054,6 +1110,7 @@ public class FTPFile extends ProtocolFile implements ConnectionHandlerFactory {
                     out = connHandler.ftpClient.appendFileStream(absPath);
                 else
                     out = connHandler.ftpClient.storeFileStream(absPath);   // Note: do NOT use storeUniqueFileStream which appends .1 if the file already exists and fails with proftpd
+                connHandler.listingCache.invalidate(absPath);
 
                 if(out==null)
                     throw new IOException();
@@ -1097,6 +1154,9 @@ public class FTPFile extends ProtocolFile implements ConnectionHandlerFactory {
                 throw e;
             }
             finally {
+                // The file's size and date have changed
+                connHandler.listingCache.invalidate(absPath);
+
                 // Release the lock on the ConnectionHandler
                 connHandler.releaseLock();
             }
@@ -1109,7 +1169,7 @@ public class FTPFile extends ProtocolFile implements ConnectionHandlerFactory {
      */
     private static class FTPConnectionHandler extends ConnectionHandler {
 
-        private FTPClient ftpClient;
+        private MLSxFTPClient ftpClient;
 //        private CustomFTPClient ftpClient;
 
         /** Controls whether passive mode should be used for data transfers (default is true) */
@@ -1130,6 +1190,12 @@ public class FTPFile extends ProtocolFile implements ConnectionHandlerFactory {
         /** False if SITE CHMOD command is not supported by the remote server (once tried and failed) */
         private boolean chmodCommandSupported = true;
 
+        /** True if the MLST and MLSD commands are supported by the remote server, as advertised by the FEAT command */
+        private boolean mlsxSupported;
+
+        /** Directory listings of the server, shared with the other connections to the same server */
+        private final FTPListingCache listingCache;
+
         /** Controls how ofter should keepAlive() be called by ConnectionPool */
         private final static long KEEP_ALIVE_PERIOD = 60;
 
@@ -1180,6 +1246,8 @@ public class FTPFile extends ProtocolFile implements ConnectionHandlerFactory {
             }
 
             setKeepAlivePeriod(KEEP_ALIVE_PERIOD);
+
+            this.listingCache = FTPListingCache.getSharedCache(getRealm(), getCredentials());
         }
 
 
@@ -1237,7 +1305,7 @@ public class FTPFile extends ProtocolFile implements ConnectionHandlerFactory {
             LOGGER.info("connecting to {}", getRealm().getHost());
 
 //            this.ftpClient = new CustomFTPClient();
-            this.ftpClient = new FTPClient();
+            this.ftpClient = new MLSxFTPClient();
 
             int retriesLeft = nbConnectionRetries;
             int retryDelay = connectionRetryDelay *1000;
@@ -1304,6 +1372,11 @@ public class FTPFile extends ProtocolFile implements ConnectionHandlerFactory {
 	                    ftpClient.sendCommand("OPTS UTF8 ON");
 	                }
 
+	                // Use MLST and MLSD rather than LIST if the server supports them: their output is standardized and
+	                // MLST retrieves the attributes of a single file without listing its parent
+	                mlsxSupported = ftpClient.isMLSxSupported();
+	                LOGGER.info("MLST/MLSD supported={}", mlsxSupported);
+
 	                break;
 	            }
 	            catch(IOException e) {
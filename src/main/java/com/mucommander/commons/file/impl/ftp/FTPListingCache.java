@@ -0,0 +1,194 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2010 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.commons.file.impl.ftp;
+
+import com.mucommander.commons.file.Credentials;
+import com.mucommander.commons.file.FileURL;
+import org.apache.commons.net.ftp.FTPFile;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Caches the directory listings of an FTP server for a short period of time, so that resolving several files located
+ * in the same directory does not list the directory over and over again.
+ *
+ * <p>A cache is shared by all the connections to the same server with the same credentials, see
+ * {@link #getSharedCache(FileURL, Credentials)}: a listing cached by one connection is thus invalidated when a file is
+ * modified through another connection. Listings are invalidated by {@link #invalidate(String)} whenever a file is
+ * written, created, renamed, deleted or has its attributes changed, and expire after the
+ * {@link #setCachingPeriod(long) caching period} to account for changes made by other clients.</p>
+ *
+ * <p>This class is thread-safe.</p>
+ */
+class FTPListingCache {
+
+    /** Default period of time during which listings are cached, in milliseconds */
+    final static long DEFAULT_CACHING_PERIOD = 5000;
+
+    /** Period of time during which listings are cached, 0 disables caching */
+    private static volatile long cachingPeriod = DEFAULT_CACHING_PERIOD;
+
+    /** Caches shared by the connections to the same server, keyed by realm and credentials */
+    private final static Map<List<Object>, FTPListingCache> sharedCaches = new HashMap<List<Object>, FTPListingCache>();
+
+    /** Cached listings, keyed by normalized directory path */
+    private final Map<String, Listing> listings = new HashMap<String, Listing>();
+
+    private final static String SEPARATOR = "/";
+
+
+    FTPListingCache() {
+    }
+
+    /**
+     * Returns the cache shared by the connections to the given realm with the given credentials, creating it if it
+     * doesn't exist yet.
+     *
+     * @param realm the server's realm
+     * @param credentials the credentials used to connect to the server, may be <code>null</code>
+     * @return the cache shared by the connections to the realm
+     */
+    static FTPListingCache getSharedCache(FileURL realm, Credentials credentials) {
+        List<Object> key = Arrays.<Object>asList(realm, credentials);
+        synchronized(sharedCaches) {
+            FTPListingCache cache = sharedCaches.get(key);
+            if(cache==null) {
+                cache = new FTPListingCache();
+                sharedCaches.put(key, cache);
+            }
+            return cache;
+        }
+    }
+
+    /**
+     * Sets the period of time during which listings are cached, <code>0</code> to disable caching.
+     * The default value is {@link #DEFAULT_CACHING_PERIOD}.
+     *
+     * @param period period of time during which listings are cached, in milliseconds
+     */
+    static void setCachingPeriod(long period) {
+        cachingPeriod = period;
+    }
+
+    /**
+     * Returns the period of time during which listings are cached, in milliseconds.
+     *
+     * @return the period of time during which listings are cached, in milliseconds
+     */
+    static long getCachingPeriod() {
+        return cachingPeriod;
+    }
+
+    /**
+     * Removes the trailing separator of the given path, unless it is the root folder.
+     */
+    private static String normalizePath(String path) {
+        while(path.length()>1 && path.endsWith(SEPARATOR))
+            path = path.substring(0, path.length()-1);
+
+        return path;
+    }
+
+    /**
+     * Returns the cached listing of the given directory, <code>null</code> if the directory hasn't been listed
+     * recently.
+     *
+     * @param path absolute path to the directory
+     * @return the cached listing, <code>null</code> if there is none
+     */
+    synchronized FTPFile[] get(String path) {
+        path = normalizePath(path);
+        Listing listing = listings.get(path);
+        if(listing==null)
+            return null;
+
+        if(System.currentTimeMillis()-listing.time>=cachingPeriod) {
+            listings.remove(path);
+            return null;
+        }
+
+        return listing.files;
+    }
+
+    /**
+     * Caches the listing of the given directory. Expired listings are purged when this method is called.
+     *
+     * @param path absolute path to the directory
+     * @param files the directory's contents
+     */
+    synchronized void put(String path, FTPFile files[]) {
+        long now = System.currentTimeMillis();
+
+        Iterator<Listing> iterator = listings.values().iterator();
+        while(iterator.hasNext()) {
+            if(now-iterator.next().time>=cachingPeriod)
+                iterator.remove();
+        }
+
+        if(cachingPeriod>0)
+            listings.put(normalizePath(path), new Listing(files, now));
+    }
+
+    /**
+     * Invalidates the listings affected by a change of the given file: the listing of its parent, and the listings
+     * of the file and of its descendants in case it is a directory that has been deleted or renamed.
+     *
+     * @param path absolute path to the file that has changed
+     */
+    synchronized void invalidate(String path) {
+        path = normalizePath(path);
+
+        int pos = path.lastIndexOf(SEPARATOR);
+        if(pos!=-1)
+            listings.remove(pos==0?SEPARATOR:path.substring(0, pos));
+
+        String descendantsPrefix = path.endsWith(SEPARATOR)?path:path+SEPARATOR;
+        Iterator<String> iterator = listings.keySet().iterator();
+        while(iterator.hasNext()) {
+            String listingPath = iterator.next();
+            if(listingPath.equals(path) || listingPath.startsWith(descendantsPrefix))
+                iterator.remove();
+        }
+    }
+
+    /**
+     * Removes all the cached listings.
+     */
+    synchronized void clear() {
+        listings.clear();
+    }
+
+
+    /**
+     * A cached directory listing.
+     */
+    private static class Listing {
+        private final FTPFile files[];
+        private final long time;
+
+        private Listing(FTPFile files[], long time) {
+            this.files = files;
+            this.time = time;
+        }
+    }
+}
@@ -0,0 +1,206 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2010 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.commons.file.impl.ftp;
+
+import org.apache.commons.net.ftp.FTPFile;
+import org.apache.commons.net.ftp.FTPFileEntryParserImpl;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Calendar;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * Parses the entries returned by the <code>MLSD</code> and <code>MLST</code> commands, as specified by
+ * <a href="http://tools.ietf.org/html/rfc3659">RFC 3659</a>.
+ *
+ * <p>Unlike <code>LIST</code> listings whose format varies from one server to another, an <code>MLSx</code> entry is
+ * made of a list of standardized facts followed by the file's name, for instance:
+ * <code>type=file;size=1024;modify=20100302143652;UNIX.mode=0644; readme.txt</code>. The following facts are
+ * used: <code>type</code>, <code>size</code>, <code>sizd</code>, <code>modify</code>, <code>perm</code>, and the
+ * <code>UNIX.mode</code>, <code>UNIX.owner</code> and <code>UNIX.group</code> extensions. Other facts are ignored.</p>
+ */
+class MLSxEntryParser extends FTPFileEntryParserImpl {
+
+    /** Format of the 'modify' fact, without the optional milliseconds, always expressed in GMT */
+    private final static String TIME_VAL_FORMAT = "yyyyMMddHHmmss";
+
+    /** Prefix of the 'type' fact of Unix symlinks, followed by the symlink's target */
+    private final static String UNIX_SYMLINK_TYPE_PREFIX = "os.unix=slink:";
+
+
+    /**
+     * Parses the given entry and returns the corresponding FTPFile, or <code>null</code> if the entry could not be
+     * parsed. The name of the returned file is the pathname of the entry as returned by the server.
+     *
+     * @param entry the entry to parse
+     * @param isListing <code>true</code> if the entry is part of an <code>MLSD</code> listing, in which case entries
+     * designating the listed directory or its parent are discarded and <code>null</code> is returned for them
+     * @return the corresponding FTPFile, <code>null</code> if the entry could not be parsed or is discarded
+     */
+    static FTPFile parseEntry(String entry, boolean isListing) {
+        // Facts are separated from the pathname by a single space. Pathnames may contain spaces, fact values can't.
+        int pos = entry.indexOf(' ');
+        if(pos==-1)
+            return null;
+
+        String name = entry.substring(pos+1);
+        if(name.equals(""))
+            return null;
+
+        FTPFile file = new FTPFile();
+        file.setRawListing(entry);
+        file.setName(name);
+
+        boolean hasUnixMode = false;
+        String perm = null;
+        for(String fact : entry.substring(0, pos).split(";")) {
+            int eqPos = fact.indexOf('=');
+            if(eqPos==-1)
+                continue;
+
+            String factName = fact.substring(0, eqPos).toLowerCase(Locale.ENGLISH);
+            String value = fact.substring(eqPos+1);
+
+            if(factName.equals("type")) {
+                String type = value.toLowerCase(Locale.ENGLISH);
+                if(type.equals("cdir") || type.equals("pdir")) {
+                    if(isListing)
+                        return null;
+                    file.setType(FTPFile.DIRECTORY_TYPE);
+                }
+                else if(type.equals("dir")) {
+                    file.setType(FTPFile.DIRECTORY_TYPE);
+                }
+                else if(type.equals("file")) {
+                    file.setType(FTPFile.FILE_TYPE);
+                }
+                else if(type.startsWith(UNIX_SYMLINK_TYPE_PREFIX) && type.length()>UNIX_SYMLINK_TYPE_PREFIX.length()) {
+                    file.setType(FTPFile.SYMBOLIC_LINK_TYPE);
+                    file.setLink(value.substring(UNIX_SYMLINK_TYPE_PREFIX.length()));
+                }
+                // Symlinks whose target is not given and other OS-specific types are left as unknown
+            }
+            else if(factName.equals("size") || factName.equals("sizd")) {
+                try { file.setSize(Long.parseLong(value)); }
+                catch(NumberFormatException e) {}
+            }
+            else if(factName.equals("modify")) {
+                Calendar timestamp = parseTimeVal(value);
+                if(timestamp!=null)
+                    file.setTimestamp(timestamp);
+            }
+            else if(factName.equals("unix.mode")) {
+                try {
+                    setPermissions(file, Integer.parseInt(value, 8));
+                    hasUnixMode = true;
+                }
+                catch(NumberFormatException e) {}
+            }
+            else if(factName.equals("unix.owner") || factName.equals("unix.ownername")) {
+                file.setUser(value);
+            }
+            else if(factName.equals("unix.group") || factName.equals("unix.groupname")) {
+                file.setGroup(value);
+            }
+            else if(factName.equals("unix.uid")) {
+                if(file.getUser()==null)
+                    file.setUser(value);
+            }
+            else if(factName.equals("unix.gid")) {
+                if(file.getGroup()==null)
+                    file.setGroup(value);
+            }
+            else if(factName.equals("perm")) {
+                perm = value.toLowerCase(Locale.ENGLISH);
+            }
+        }
+
+        // The 'perm' fact only tells what the current user can do, use it only if the Unix permissions are unknown
+        if(!hasUnixMode && perm!=null) {
+            boolean isDirectory = file.isDirectory();
+            file.setPermission(FTPFile.USER_ACCESS, FTPFile.READ_PERMISSION,
+                    isDirectory?perm.indexOf('l')!=-1:perm.indexOf('r')!=-1);
+            file.setPermission(FTPFile.USER_ACCESS, FTPFile.WRITE_PERMISSION,
+                    isDirectory?perm.indexOf('c')!=-1||perm.indexOf('m')!=-1:perm.indexOf('w')!=-1||perm.indexOf('a')!=-1);
+            file.setPermission(FTPFile.USER_ACCESS, FTPFile.EXECUTE_PERMISSION,
+                    isDirectory&&perm.indexOf('e')!=-1);
+        }
+
+        return file;
+    }
+
+    /**
+     * Parses a 'time-val' as specified by RFC 3659, i.e. a <code>YYYYMMDDHHMMSS</code> GMT time optionally followed
+     * by a fraction of a second. Returns <code>null</code> if the value could not be parsed.
+     */
+    private static Calendar parseTimeVal(String value) {
+        if(value.length()<TIME_VAL_FORMAT.length())
+            return null;
+
+        SimpleDateFormat format = new SimpleDateFormat(TIME_VAL_FORMAT);
+        TimeZone gmt = TimeZone.getTimeZone("GMT");
+        format.setTimeZone(gmt);
+        format.setLenient(false);
+
+        Calendar calendar = Calendar.getInstance(gmt);
+        try {
+            calendar.setTime(format.parse(value.substring(0, TIME_VAL_FORMAT.length())));
+        }
+        catch(ParseException e) {
+            return null;
+        }
+
+        // Milliseconds, if any
+        if(value.length()>TIME_VAL_FORMAT.length()+1 && value.charAt(TIME_VAL_FORMAT.length())=='.') {
+            String fraction = (value.substring(TIME_VAL_FORMAT.length()+1)+"00").substring(0, 3);
+            try { calendar.set(Calendar.MILLISECOND, Integer.parseInt(fraction)); }
+            catch(NumberFormatException e) {}
+        }
+
+        return calendar;
+    }
+
+    /**
+     * Sets the user, group and other permissions of the given file from the given Unix mode.
+     */
+    private static void setPermissions(FTPFile file, int mode) {
+        int accesses[] = {FTPFile.USER_ACCESS, FTPFile.GROUP_ACCESS, FTPFile.WORLD_ACCESS};
+        for(int i=0; i<accesses.length; i++) {
+            int bits = mode>>(6-3*i);
+            file.setPermission(accesses[i], FTPFile.READ_PERMISSION, (bits&4)!=0);
+            file.setPermission(accesses[i], FTPFile.WRITE_PERMISSION, (bits&2)!=0);
+            file.setPermission(accesses[i], FTPFile.EXECUTE_PERMISSION, (bits&1)!=0);
+        }
+    }
+
+
+    ///////////////////////////////////////
+    // FTPFileEntryParser implementation //
+    ///////////////////////////////////////
+
+    /**
+     * Parses an entry of an <code>MLSD</code> listing. Returns <code>null</code> for the entries designating the listed
+     * directory and its parent.
+     */
+    public FTPFile parseFTPEntry(String entry) {
+        return parseEntry(entry, true);
+    }
+}
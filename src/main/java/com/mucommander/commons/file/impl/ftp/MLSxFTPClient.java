@@ -0,0 +1,155 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2010 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.commons.file.impl.ftp;
+
+import org.apache.commons.net.ftp.FTPClient;
+import org.apache.commons.net.ftp.FTPClientConfig;
+import org.apache.commons.net.ftp.FTPCommand;
+import org.apache.commons.net.ftp.FTPFile;
+import org.apache.commons.net.ftp.FTPFileEntryParser;
+import org.apache.commons.net.ftp.FTPReply;
+import org.apache.commons.net.ftp.parser.DefaultFTPFileEntryParserFactory;
+import org.apache.commons.net.ftp.parser.FTPFileEntryParserFactory;
+
+import java.io.IOException;
+import java.util.Locale;
+
+/**
+ * An <code>FTPClient</code> that adds support for the <code>FEAT</code>, <code>MLST</code> and <code>MLSD</code>
+ * commands (<a href="http://tools.ietf.org/html/rfc3659">RFC 3659</a>), which the version of Commons-net muCommander
+ * uses lacks.
+ *
+ * <p><code>MLSD</code> listings are retrieved by Commons-net's listing code, which opens the data connection and reads
+ * the entries: the <code>LIST</code> command it sends is replaced by <code>MLSD</code>, and the entries are parsed by
+ * {@link MLSxEntryParser}.</p>
+ */
+class MLSxFTPClient extends FTPClient {
+
+    /** Key of the MLSD entry parser */
+    private final static String MLSD_PARSER_KEY = "MLSD";
+
+    /** True while an MLSD listing is being initiated */
+    private boolean mlsdListing;
+
+
+    MLSxFTPClient() {
+        final FTPFileEntryParserFactory defaultFactory = new DefaultFTPFileEntryParserFactory();
+        setParserFactory(new FTPFileEntryParserFactory() {
+            public FTPFileEntryParser createFileEntryParser(String key) {
+                if(MLSD_PARSER_KEY.equals(key))
+                    return new MLSxEntryParser();
+
+                return defaultFactory.createFileEntryParser(key);
+            }
+
+            public FTPFileEntryParser createFileEntryParser(FTPClientConfig config) {
+                return defaultFactory.createFileEntryParser(config);
+            }
+        });
+    }
+
+    /**
+     * Sends a <code>FEAT</code> command and returns <code>true</code> if the server advertises the <code>MLST</code>
+     * feature, which implies support for both <code>MLST</code> and <code>MLSD</code>.
+     *
+     * @return <code>true</code> if the server supports the MLST and MLSD commands
+     * @throws IOException if an error occurred while communicating with the server
+     */
+    boolean isMLSxSupported() throws IOException {
+        if(!FTPReply.isPositiveCompletion(sendCommand("FEAT")))
+            return false;
+
+        // Features are listed one per line, each line starting with a space
+        String replies[] = getReplyStrings();
+        for(String reply : replies) {
+            if(reply.startsWith(" ") && reply.trim().toUpperCase(Locale.ENGLISH).startsWith("MLST"))
+                return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * Lists the current working directory with an <code>MLSD</code> command. The returned array may contain
+     * <code>null</code> entries, for the entries that could not be parsed and for the directory itself and its
+     * parent.
+     *
+     * @return the contents of the current working directory
+     * @throws IOException if an error occurred while communicating with the server
+     */
+    FTPFile[] mlistDir() throws IOException {
+        mlsdListing = true;
+        try {
+            return initiateListParsing(MLSD_PARSER_KEY, null).getFiles();
+        }
+        finally {
+            mlsdListing = false;
+        }
+    }
+
+    /**
+     * Returns the attributes of the given file using an <code>MLST</code> command, or <code>null</code> if the
+     * server could not return them, in which case the reply code tells why. The name of the returned file is the
+     * last component of the path.
+     *
+     * @param absPath absolute path to the file
+     * @return the file's attributes, <code>null</code> if they could not be retrieved
+     * @throws IOException if an error occurred while communicating with the server
+     */
+    FTPFile mlistFile(String absPath) throws IOException {
+        if(!FTPReply.isPositiveCompletion(sendCommand("MLST", absPath)))
+            return null;
+
+        // The entry is the line of the reply that starts with a space
+        for(String reply : getReplyStrings()) {
+            if(reply.startsWith(" ")) {
+                FTPFile file = MLSxEntryParser.parseEntry(reply.substring(1), false);
+                if(file==null)
+                    return null;
+
+                String name = file.getName();
+                if(name.length()>1 && name.endsWith("/"))
+                    name = name.substring(0, name.length()-1);
+                int pos = name.lastIndexOf('/');
+                if(pos!=-1 && name.length()>1)
+                    name = name.substring(pos+1);
+                file.setName(name);
+
+                return file;
+            }
+        }
+
+        return null;
+    }
+
+
+    ////////////////////////
+    // Overridden methods //
+    ////////////////////////
+
+    @Override
+    public int sendCommand(int command, String args) throws IOException {
+        // Send MLSD instead of LIST when initiating an MLSD listing. Arguments are not sent as MLSD lists the
+        // current working directory without any of the LIST switches.
+        if(mlsdListing && command==FTPCommand.LIST)
+            return sendCommand(MLSD_PARSER_KEY, null);
+
+        return super.sendCommand(command, args);
+    }
+}
@@ -23,6 +23,7 @@ import com.mucommander.commons.file.*;
 import com.mucommander.commons.io.BlockRandomInputStream;
 import com.mucommander.commons.io.RandomAccessInputStream;
 import com.mucommander.commons.io.RandomAccessOutputStream;
+import com.mucommander.commons.io.SegmentSource;
 import com.mucommander.commons.io.base64.Base64Encoder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -74,7 +75,7 @@ import java.util.regex.Pattern;
  *
  * @author Maxence Bernard
  */
-public class HTTPFile extends ProtocolFile {
+public class HTTPFile extends ProtocolFile implements SegmentSource {
     private static final Logger LOGGER = LoggerFactory.getLogger(HTTPFile.class);
 
     /** java.net.URL corresponding to this */
@@ -90,6 +91,9 @@ public class HTTPFile extends ProtocolFile {
     /** True if file has been resolved on the remote HTTP server, either successfully or unsuccessfully */
     private boolean fileResolved;
 
+    /** True if the server advertised support for byte ranges when the file was resolved */
+    private boolean acceptsRanges;
+
     private boolean parentValSet;
     protected AbstractFile parent;
 	
@@ -200,7 +204,10 @@ public class HTTPFile extends ProtocolFile {
             attributes.setDate(date);
 
             // Resolve size with content-length header (-1 if not available)
-            attributes.setSize(conn.getContentLength());
+            attributes.setSize(conn.getContentLengthLong());
+
+            // Determine whether the resource can be requested in segments
+            acceptsRanges = "bytes".equalsIgnoreCase(conn.getHeaderField("Accept-Ranges"));
 
             // Test if content is HTML
             String contentType = conn.getContentType();
@@ -707,6 +714,49 @@ public class HTTPFile extends ProtocolFile {
     }
 
 
+    //////////////////////////////////
+    // SegmentSource implementation //
+    //////////////////////////////////
+
+    /**
+     * Returns <code>true</code> if the server advertised support for byte ranges with the 'Accept-Ranges' header when
+     * the resource was resolved. The resource is resolved if it hasn't been already.
+     */
+    public boolean isSegmentReadSupported() {
+        if(!fileResolved) {
+            try {
+                resolveFile();
+            }
+            catch(IOException e) {
+                // Already logged by resolveFile()
+            }
+        }
+
+        return acceptsRanges;
+    }
+
+    /**
+     * Requests the given segment of the resource using the HTTP 1.1 'Range' header. An <code>IOException</code> is
+     * thrown if the server does not honor the header, i.e. if it does not reply with a '206 Partial Content' response.
+     */
+    public InputStream getSegmentInputStream(long offset, long length) throws IOException {
+        HttpURLConnection conn = getHttpURLConnection(this.url);
+        conn.setRequestProperty("Range", "bytes="+offset+"-"+(offset+length-1));
+
+        // Establish connection
+        conn.connect();
+
+        // Check HTTP response code and throw appropriate IOException if request failed
+        checkHTTPResponse(conn);
+        if(conn.getResponseCode()!=HttpURLConnection.HTTP_PARTIAL) {
+            conn.disconnect();
+            throw new IOException("Range requests not supported by the server");
+        }
+
+        return conn.getInputStream();
+    }
+
+
     ///////////////////
     // Inner classes //
     ///////////////////
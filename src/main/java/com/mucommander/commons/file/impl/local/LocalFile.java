@@ -31,9 +31,14 @@ import java.io.OutputStream;
 import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
 import java.nio.file.FileSystems;
 import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
 import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.DosFileAttributes;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.StringTokenizer;
@@ -51,11 +56,13 @@ import com.mucommander.commons.file.FileProtocols;
 import com.mucommander.commons.file.FileURL;
 import com.mucommander.commons.file.GroupedPermissionBits;
 import com.mucommander.commons.file.IndividualPermissionBits;
+import com.mucommander.commons.file.ListingListener;
 import com.mucommander.commons.file.MacOsSystemFolder;
 import com.mucommander.commons.file.PermissionBits;
 import com.mucommander.commons.file.ProtocolFile;
 import com.mucommander.commons.file.UnsupportedFileOperation;
 import com.mucommander.commons.file.UnsupportedFileOperationException;
+import com.mucommander.commons.file.filter.FileFilter;
 import com.mucommander.commons.file.filter.FilenameFilter;
 import com.mucommander.commons.file.util.Kernel32;
 import com.mucommander.commons.file.util.Kernel32API;
@@ -114,6 +121,10 @@ public class LocalFile extends ProtocolFile {
     protected AbstractFile parent;
     /** Indicates whether the parent folder instance has been retrieved and cached or not (parent can be null) */
     protected boolean parentValueSet;
+
+    /** Attributes read when this file was listed, null once they have been returned by #readAttributes(). Only set on
+     * instances that are not pooled by FileFactory, see #createChild(Path, BasicFileAttributes) */
+    private volatile BasicFileAttributes listedAttributes;
 	
     /** Underlying local filesystem's path separator: "/" under UNIX systems, "\" under Windows and OS/2 */
     public final static String SEPARATOR = File.separator;
@@ -121,6 +132,14 @@ public class LocalFile extends ProtocolFile {
     /** Are we running Windows ? */
     private final static boolean IS_WINDOWS =  OsFamily.WINDOWS.isCurrent();
 
+    /** Attributes read by #readAttributes(): DOS attributes include the hidden flag under Windows */
+    private final static Class<? extends BasicFileAttributes> ATTRIBUTES_CLASS = IS_WINDOWS
+            ? DosFileAttributes.class
+            : BasicFileAttributes.class;
+
+    /** Number of children passed at once to the ListingListener by #ls(FileFilter, ListingListener) */
+    private final static int LISTING_BATCH_SIZE = 1000;
+
     /** True if the underlying local filesystem uses drives assigned to letters (e.g. A:\, C:\, ...) instead
      * of having single a root folder '/' */
     public final static boolean USES_ROOT_DRIVES = IS_WINDOWS || OsFamily.OS_2.isCurrent();
@@ -176,8 +195,18 @@ public class LocalFile extends ProtocolFile {
      * {@link File} instance otherwise.
      */
     protected LocalFile(FileURL fileURL, File file) throws IOException {
+        this(fileURL, file, null);
+    }
+
+    /**
+     * Creates a new instance of LocalFile, using the given {@link File} if not <code>null</code>, and keeping the
+     * attributes that were read when the file was listed until they are retrieved by {@link #readAttributes()}.
+     */
+    protected LocalFile(FileURL fileURL, File file, BasicFileAttributes listedAttributes) throws IOException {
         super(fileURL);
 
+        this.listedAttributes = listedAttributes;
+
         if(file==null) {
             String path = fileURL.getPath();
 
@@ -214,6 +243,66 @@ public class LocalFile extends ProtocolFile {
     // LocalFile-specific methods //
     ////////////////////////////////
 
+    /**
+     * Reads the basic attributes of this file (type, size and date, as well as the hidden flag under Windows where
+     * <code>DosFileAttributes</code> are returned) in a single filesystem call, following symbolic links. This is
+     * cheaper than calling the corresponding getters one after the other.
+     *
+     * <p>If this file has been created by {@link #ls(FileFilter, ListingListener)}, the attributes that were read when
+     * the file was listed are returned the first time this method is called, without accessing the filesystem.
+     * Later calls read the attributes again. Such instances are not pooled by {@link FileFactory}: instances retrieved
+     * from it always read the attributes from the filesystem.</p>
+     *
+     * @return the attributes of this file
+     * @throws java.nio.file.NoSuchFileException if this file does not exist
+     * @throws IOException if the attributes could not be read
+     */
+    public BasicFileAttributes readAttributes() throws IOException {
+        BasicFileAttributes attributes = listedAttributes;
+        if(attributes!=null) {
+            listedAttributes = null;
+            return attributes;
+        }
+
+        return Files.readAttributes(toPath(), ATTRIBUTES_CLASS);
+    }
+
+    /**
+     * Returns a <code>java.nio.file.Path</code> corresponding to this file.
+     */
+    private Path toPath() throws IOException {
+        try {
+            return file.toPath();
+        }
+        catch(InvalidPathException e) {
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * Creates the child of this folder that has the given name.
+     */
+    private AbstractFile createChild(Path childPath, BasicFileAttributes attributes) throws IOException {
+        // Clone the FileURL of this file and set the child's path, this is more efficient than creating a new
+        // FileURL instance from scratch.
+        FileURL childURL = (FileURL)fileURL.clone();
+        String childName = childPath.getFileName().toString();
+        childURL.setPath(absPath+SEPARATOR+childName);
+
+        // The attributes read while listing are only valid for the listing: they are kept by an instance that is not
+        // pooled by FileFactory, so that they are not returned by readAttributes() to the callers that later retrieve
+        // the file from the pool. Archives are always pooled, so that their entries are shared by all the instances.
+        if(attributes!=null && !FileFactory.isArchiveFilename(childName)) {
+            AbstractFile child = new LocalFile(childURL, childPath.toFile(), attributes);
+            child.setParent(this);
+            return child;
+        }
+
+        // Retrieves an AbstractFile (LocalFile or AbstractArchiveFile) instance that's potentially already in
+        // the cache, reuse this file as the file's parent, and create the java.io.File instance from the path.
+        return FileFactory.getFile(childURL, this, childPath.toFile());
+    }
+
     /**
      * Returns the user home folder. Most if not all OSes have one, but in the unlikely event that the OS doesn't have
      * one or that the folder cannot be resolved, <code>null</code> will be returned.
@@ -671,9 +760,20 @@ public class LocalFile extends ProtocolFile {
         return false;
     }
 
+    /**
+     * Implementation notes: the date is read with <code>java.nio.file</code> rather than
+     * <code>java.io.File#lastModified()</code>, which only has a precision of one second on some platforms, so that it
+     * matches the date returned by {@link #readAttributes()}.
+     */
     @Override
     public long getDate() {
-        return file.lastModified();
+        try {
+            return Files.getLastModifiedTime(toPath()).toMillis();
+        }
+        catch(IOException e) {
+            // The file doesn't exist or its path is not valid for java.nio.file, let java.io.File deal with it
+            return file.lastModified();
+        }
     }
 
     @Override
@@ -1011,28 +1111,65 @@ public class LocalFile extends ProtocolFile {
 
     @Override
     public AbstractFile[] ls(FilenameFilter filenameFilter) throws IOException {
-        File files[] = file.listFiles(filenameFilter==null?null:new LocalFilenameFilter(filenameFilter));
+        List<AbstractFile> children = new ArrayList<AbstractFile>();
 
-        if(files==null)
-            throw new IOException();
+        try(DirectoryStream<Path> stream = filenameFilter==null
+                ?Files.newDirectoryStream(toPath())
+                :Files.newDirectoryStream(toPath(), new LocalFilenameFilter(filenameFilter))) {
+            for(Path childPath: stream)
+                children.add(createChild(childPath, null));
+        }
+        catch(DirectoryIteratorException e) {
+            throw e.getCause();
+        }
 
-        int nbFiles = files.length;
-        AbstractFile children[] = new AbstractFile[nbFiles];
-        FileURL childURL;
+        return children.toArray(new AbstractFile[children.size()]);
+    }
 
-        for(int i=0; i<nbFiles; i++) {
-            // Clone the FileURL of this file and set the child's path, this is more efficient than creating a new
-            // FileURL instance from scratch.
-            childURL = (FileURL)fileURL.clone();
+    /**
+     * Overridden to read the attributes of each child as it is listed, in a single call per child. The attributes
+     * are kept by the children until {@link #readAttributes()} is called, which {@link com.mucommander.commons.file.impl.CachedFile}
+     * does to pre-populate its cached values. The children that keep attributes are not pooled by {@link FileFactory},
+     * archives excepted (their attributes are read individually). Children are passed to the listener in batches of
+     * {@value #LISTING_BATCH_SIZE}.
+     */
+    @Override
+    public void ls(FileFilter filter, ListingListener listener) throws IOException {
+        List<AbstractFile> batch = new ArrayList<AbstractFile>();
 
-			childURL.setPath(absPath+SEPARATOR+files[i].getName());
+        try(DirectoryStream<Path> stream = Files.newDirectoryStream(toPath())) {
+            for(Path childPath: stream) {
+                BasicFileAttributes attributes;
+                try {
+                    attributes = Files.readAttributes(childPath, ATTRIBUTES_CLASS);
+                }
+                catch(IOException e) {
+                    // Broken symlink or file deleted in the meantime, the attributes will be read individually
+                    attributes = null;
+                }
+                batch.add(createChild(childPath, attributes));
 
-            // Retrieves an AbstractFile (LocalFile or AbstractArchiveFile) instance that's potentially already in
-            // the cache, reuse this file as the file's parent, and the already-created java.io.File instance.
-            children[i] = FileFactory.getFile(childURL, this, files[i]);
+                if(batch.size()==LISTING_BATCH_SIZE) {
+                    if(!listener.childrenListed(toArray(batch, filter)))
+                        return;
+                    batch.clear();
+                }
+            }
+        }
+        catch(DirectoryIteratorException e) {
+            throw e.getCause();
         }
 
-        return children;
+        listener.childrenListed(toArray(batch, filter));
+    }
+
+    /**
+     * Returns the given children as an array, filtering out the ones that do not match the filter, if any.
+     */
+    private static AbstractFile[] toArray(List<AbstractFile> children, FileFilter filter) {
+        AbstractFile childrenArray[] = children.toArray(new AbstractFile[children.size()]);
+
+        return filter==null?childrenArray:filter.filter(childrenArray);
     }
 
     @Override
@@ -1166,6 +1303,20 @@ public class LocalFile extends ProtocolFile {
             }
         }
 
+        /**
+         * Reads using <code>FileChannel</code> positional reads, which do not modify the channel's position and can be
+         * performed concurrently.
+         */
+        @Override
+        public int read(long position, byte b[], int off, int len) throws IOException {
+            return channel.read(ByteBuffer.wrap(b, off, len), position);
+        }
+
+        @Override
+        public boolean isConcurrentReadSupported() {
+            return true;
+        }
+
         @Override
         public void close() throws IOException {
             BufferPool.releaseByteBuffer(bb);
@@ -1389,9 +1540,9 @@ public class LocalFile extends ProtocolFile {
 
 
     /**
-     * Turns a {@link FilenameFilter} into a {@link java.io.FilenameFilter}.
+     * Turns a {@link FilenameFilter} into a <code>java.nio.file.DirectoryStream.Filter</code>.
      */
-    private static class LocalFilenameFilter implements java.io.FilenameFilter {
+    private static class LocalFilenameFilter implements DirectoryStream.Filter<Path> {
 
         private FilenameFilter filter;
 
@@ -1400,12 +1551,12 @@ public class LocalFile extends ProtocolFile {
         }
 
 
-        ///////////////////////////////////////////
-        // java.io.FilenameFilter implementation //
-        ///////////////////////////////////////////
+        /////////////////////////////////////////////////////////
+        // java.nio.file.DirectoryStream.Filter implementation //
+        /////////////////////////////////////////////////////////
 
-        public boolean accept(File dir, String name) {
-            return filter.accept(name);
+        public boolean accept(Path entry) {
+            return filter.accept(entry.getFileName().toString());
         }
     }
 }
@@ -30,6 +30,7 @@ import com.mucommander.commons.file.AbstractFile;
 import com.mucommander.commons.file.AbstractROArchiveFile;
 import com.mucommander.commons.file.ArchiveEntry;
 import com.mucommander.commons.file.ArchiveEntryIterator;
+import com.mucommander.commons.file.BatchArchiveEntryIterator;
 import com.mucommander.commons.file.UnsupportedFileOperationException;
 import com.mucommander.commons.file.WrapperArchiveEntryIterator;
 
@@ -121,6 +122,11 @@ public class RarArchiveFile extends AbstractROArchiveFile {
 
     @Override
     public synchronized InputStream getEntryInputStream(ArchiveEntry entry, ArchiveEntryIterator entryIterator) throws IOException, UnsupportedFileOperationException {
+        // The entry is being extracted along with others, in a single pass
+        if (entryIterator instanceof BatchArchiveEntryIterator) {
+            return ((BatchArchiveEntryIterator)entryIterator).getEntryInputStream(entry);
+        }
+
 		try {
 			checkRarFile();
 		} catch (RarException e) {
@@ -133,4 +139,24 @@ public class RarArchiveFile extends AbstractROArchiveFile {
 			throw new IOException();
 		}
 	}
+
+    /**
+     * Returns <code>true</code>: entries of solid archives depend on the entries stored before them, extracting them
+     * one by one would decompress the archive from its start every time.
+     */
+    @Override
+    public boolean isBatchEntryReadSupported() {
+        return true;
+    }
+
+    @Override
+    public synchronized BatchArchiveEntryIterator getBatchEntryIterator(List<ArchiveEntry> entries) throws IOException, UnsupportedFileOperationException {
+        try {
+            checkRarFile();
+        } catch (RarException e) {
+            throw new IOException();
+        }
+
+        return rarFile.getBatchEntryIterator(entries);
+    }
 }
@@ -21,12 +21,20 @@ import com.github.junrar.Archive;
 import com.github.junrar.exception.RarException;
 import com.github.junrar.rarfile.FileHeader;
 import com.mucommander.commons.file.AbstractFile;
+import com.mucommander.commons.file.ArchiveEntry;
+import com.mucommander.commons.file.BatchArchiveEntryIterator;
 import com.mucommander.commons.file.UnsupportedFileOperationException;
+import com.mucommander.commons.io.SinkOutputStream;
 
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 /**
  * 
@@ -102,6 +110,83 @@ public class RarFile {
     }
 
 
+    /**
+     * Returns an iterator that extracts the given entries in a single pass over the archive, in archive order.
+     * Entries of a solid archive depend on the entries stored before them, which are decompressed and discarded
+     * if they are not part of the batch.
+     *
+     * @param entries the entries to extract, whose path uses '/' as a separator
+     * @return an iterator that extracts the given entries in archive order
+     */
+    public BatchArchiveEntryIterator getBatchEntryIterator(List<ArchiveEntry> entries) {
+        final Map<String, ArchiveEntry> entriesByPath = new HashMap<>();
+        for (ArchiveEntry entry : entries) {
+            entriesByPath.put(entry.getPath(), entry);
+        }
+
+        // Sort the entries in archive order
+        List<ArchiveEntry> sortedEntries = new ArrayList<>();
+        for (FileHeader header : archive.getFileHeaders()) {
+            ArchiveEntry entry = entriesByPath.get(getPath(header));
+            if (entry != null) {
+                sortedEntries.add(entry);
+            }
+        }
+
+        return new BatchArchiveEntryIterator(sortedEntries) {
+            @Override
+            protected void extract(List<ArchiveEntry> fileEntries) throws IOException {
+                int nbRemainingEntries = fileEntries.size();
+                // The archive is opened again, this RarFile may be used by other threads in the meantime
+                Archive batchArchive;
+                try {
+                    batchArchive = new Archive(new File(file.getPath()));
+                } catch (RarException e) {
+                    throw new IOException(e);
+                }
+
+                try {
+                    boolean solid = batchArchive.getMainHeader().isSolid();
+                    for (FileHeader header : batchArchive.getFileHeaders()) {
+                        if (nbRemainingEntries == 0 || isClosed()) {
+                            break;
+                        }
+                        if (header.isDirectory()) {
+                            continue;
+                        }
+
+                        ArchiveEntry entry = entriesByPath.get(getPath(header));
+                        if (entry != null && !entry.isDirectory()) {
+                            OutputStream out = openEntry(entry);
+                            try {
+                                batchArchive.extractFile(header, out);
+                            } finally {
+                                out.close();
+                            }
+                            nbRemainingEntries--;
+                        } else if (solid) {
+                            // Entries that follow depend on this one's decompression state
+                            batchArchive.extractFile(header, new SinkOutputStream());
+                        }
+                    }
+                } catch (RarException e) {
+                    throw new IOException(e);
+                } finally {
+                    batchArchive.close();
+                }
+            }
+        };
+    }
+
+    /**
+     * Returns the path of the given header, with '/' as a separator.
+     */
+    private static String getPath(FileHeader header) {
+        String fileName = header.getFileNameW().isEmpty() ? header.getFileNameString() : header.getFileNameW();
+        return fileName.replace('\\', '/');
+    }
+
+
     private FileHeader findFileHeader(String path) {
         for (FileHeader h : archive.getFileHeaders()) {
             String fileName = h.getFileNameW().isEmpty() ? h.getFileNameString() : h.getFileNameW();
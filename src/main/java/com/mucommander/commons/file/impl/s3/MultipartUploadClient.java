@@ -0,0 +1,69 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2010 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.commons.file.impl.s3;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Performs the requests of an S3 multipart upload, for a particular object. Implementations must allow parts to be
+ * uploaded concurrently by several threads.
+ *
+ * @see S3MultipartUpload
+ * @see RestMultipartUploadClient
+ */
+public interface MultipartUploadClient {
+
+    /**
+     * Initiates a multipart upload and returns its ID.
+     *
+     * @return the upload ID
+     * @throws IOException if the request failed
+     */
+    String initiateUpload() throws IOException;
+
+    /**
+     * Uploads a part of the object and returns its ETag.
+     *
+     * @param uploadId the upload ID returned by {@link #initiateUpload()}
+     * @param partNumber number of the part, starting at 1
+     * @param data the part's data
+     * @param len number of bytes of the part
+     * @return the ETag of the part
+     * @throws IOException if the request failed
+     */
+    String uploadPart(String uploadId, int partNumber, byte data[], int len) throws IOException;
+
+    /**
+     * Completes a multipart upload, assembling the given parts into the object.
+     *
+     * @param uploadId the upload ID returned by {@link #initiateUpload()}
+     * @param partETags the ETags of the parts, in order: the first element is the ETag of part 1
+     * @throws IOException if the request failed
+     */
+    void completeUpload(String uploadId, List<String> partETags) throws IOException;
+
+    /**
+     * Aborts a multipart upload, discarding the parts that have been uploaded.
+     *
+     * @param uploadId the upload ID returned by {@link #initiateUpload()}
+     * @throws IOException if the request failed
+     */
+    void abortUpload(String uploadId) throws IOException;
+}
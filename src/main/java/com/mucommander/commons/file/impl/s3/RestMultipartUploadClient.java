@@ -0,0 +1,256 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2010 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.commons.file.impl.s3;
+
+import com.mucommander.commons.io.StreamUtils;
+import com.mucommander.commons.io.base64.Base64Encoder;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.security.GeneralSecurityException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.TimeZone;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Performs the requests of an S3 multipart upload using the S3 REST API.
+ *
+ * <p>The version of JetS3t muCommander uses predates multipart uploads, so the four requests involved are implemented
+ * here on top of <code>HttpURLConnection</code>, signed the same way JetS3t signs its requests. Like JetS3t, the
+ * bucket may be addressed in the host name of the endpoint (virtual-host style), which S3 requires for buckets located
+ * outside of the US standard region, or in the path of the requests (path-style).</p>
+ */
+public class RestMultipartUploadClient implements MultipartUploadClient {
+
+    /** Content type of uploaded objects */
+    private final static String OBJECT_CONTENT_TYPE = "binary/octet-stream";
+
+    /** Content type of the 'Complete Multipart Upload' request body */
+    private final static String XML_CONTENT_TYPE = "application/xml";
+
+    /** Matches the upload ID in the 'Initiate Multipart Upload' response */
+    private final static Pattern UPLOAD_ID_PATTERN = Pattern.compile("<UploadId>(.*?)</UploadId>");
+
+    /** Base URL of the server, without a trailing slash */
+    private final String endpoint;
+
+    private final String accessKey;
+    private final String secretKey;
+
+    /** Encoded path of the object, including the bucket name, which requests are signed with */
+    private final String resource;
+
+    /** Encoded path of the object in request URLs, which includes the bucket name only for path-style requests */
+    private final String path;
+
+
+    /**
+     * Creates a new RestMultipartUploadClient uploading the given object.
+     *
+     * @param endpoint base URL of the server, e.g. <code>https://s3.amazonaws.com</code>, or of the bucket if
+     * <code>virtualHost</code> is <code>true</code>, e.g. <code>https://bucket.s3.amazonaws.com</code>
+     * @param accessKey the AWS access key
+     * @param secretKey the AWS secret key
+     * @param bucketName name of the bucket the object is uploaded to
+     * @param objectKey key of the object
+     * @param virtualHost <code>true</code> if the endpoint designates the bucket, <code>false</code> to address the
+     * bucket in the path of the requests
+     */
+    public RestMultipartUploadClient(String endpoint, String accessKey, String secretKey, String bucketName, String objectKey, boolean virtualHost) {
+        this.endpoint = endpoint.endsWith("/")?endpoint.substring(0, endpoint.length()-1):endpoint;
+        this.accessKey = accessKey;
+        this.secretKey = secretKey;
+        this.resource = "/"+encodePath(bucketName)+"/"+encodePath(objectKey);
+        this.path = virtualHost?"/"+encodePath(objectKey):resource;
+    }
+
+    /**
+     * URL-encodes the given path, leaving the path separators unencoded.
+     */
+    private static String encodePath(String path) {
+        StringBuilder sb = new StringBuilder();
+        try {
+            String segments[] = path.split("/", -1);
+            for (int i = 0; i < segments.length; i++) {
+                if (i > 0)
+                    sb.append('/');
+                sb.append(URLEncoder.encode(segments[i], "UTF-8").replace("+", "%20").replace("*", "%2A").replace("%7E", "~"));
+            }
+        }
+        catch (IOException e) {
+            // Can't happen, UTF-8 is always supported
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Returns the query string of the given upload sub-resource, for signing (<code>encode==false</code>) or for the
+     * request URL.
+     */
+    private static String getUploadSubResource(String uploadId, int partNumber, boolean encode) throws IOException {
+        return (partNumber>0?"?partNumber="+partNumber+"&":"?")+"uploadId="+(encode?URLEncoder.encode(uploadId, "UTF-8"):uploadId);
+    }
+
+    /**
+     * Opens a signed connection to the object, with the given sub-resource. Sub-resources are signed unencoded,
+     * <code>query</code> is the URL-encoded form sent in the request.
+     */
+    private HttpURLConnection openConnection(String method, String subResource, String query, String contentType) throws IOException {
+        SimpleDateFormat dateFormat = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss 'GMT'", Locale.US);
+        dateFormat.setTimeZone(TimeZone.getTimeZone("GMT"));
+        String date = dateFormat.format(new Date());
+
+        // The date is sent in a x-amz-date header, HttpURLConnection may not let us set the Date header
+        String stringToSign = method+"\n"
+                +"\n"
+                +(contentType==null?"":contentType)+"\n"
+                +"\n"
+                +"x-amz-date:"+date+"\n"
+                +resource+subResource;
+
+        HttpURLConnection conn = (HttpURLConnection)new URL(endpoint+path+query).openConnection();
+        conn.setRequestMethod(method);
+        conn.setUseCaches(false);
+        conn.setRequestProperty("x-amz-date", date);
+        conn.setRequestProperty("Authorization", "AWS "+accessKey+":"+sign(stringToSign));
+        // HttpURLConnection sends a default content type with request bodies, which would break the signature
+        if (contentType != null)
+            conn.setRequestProperty("Content-Type", contentType);
+
+        return conn;
+    }
+
+    /**
+     * Returns the Base64-encoded HMAC-SHA1 signature of the given string.
+     */
+    private String sign(String stringToSign) throws IOException {
+        try {
+            Mac mac = Mac.getInstance("HmacSHA1");
+            mac.init(new SecretKeySpec(secretKey.getBytes("UTF-8"), "HmacSHA1"));
+            return Base64Encoder.encode(mac.doFinal(stringToSign.getBytes("UTF-8")));
+        }
+        catch (GeneralSecurityException e) {
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * Sends the given body, if any, and returns the response body. Throws an <code>IOException</code> if the
+     * response code is not a success.
+     */
+    private static String execute(HttpURLConnection conn, byte body[], int len) throws IOException {
+        try {
+            if (body != null) {
+                conn.setDoOutput(true);
+                conn.setFixedLengthStreamingMode(len);
+                OutputStream out = conn.getOutputStream();
+                try {
+                    out.write(body, 0, len);
+                }
+                finally {
+                    out.close();
+                }
+            }
+
+            int responseCode = conn.getResponseCode();
+            if (responseCode / 100 != 2)
+                throw new IOException("HTTP "+responseCode+": "+readResponse(conn.getErrorStream()));
+
+            return readResponse(conn.getInputStream());
+        }
+        finally {
+            conn.disconnect();
+        }
+    }
+
+    /**
+     * Reads the given response stream into a string, and closes it.
+     */
+    private static String readResponse(InputStream in) throws IOException {
+        if (in == null)
+            return "";
+
+        try {
+            ByteArrayOutputStream bout = new ByteArrayOutputStream();
+            StreamUtils.copyStream(in, bout);
+            return bout.toString("UTF-8");
+        }
+        finally {
+            in.close();
+        }
+    }
+
+
+    //////////////////////////////////////////
+    // MultipartUploadClient implementation //
+    //////////////////////////////////////////
+
+    public String initiateUpload() throws IOException {
+        HttpURLConnection conn = openConnection("POST", "?uploads", "?uploads", OBJECT_CONTENT_TYPE);
+        String response = execute(conn, null, 0);
+
+        Matcher matcher = UPLOAD_ID_PATTERN.matcher(response);
+        if (!matcher.find())
+            throw new IOException("No upload ID in response: "+response);
+
+        return matcher.group(1);
+    }
+
+    public String uploadPart(String uploadId, int partNumber, byte data[], int len) throws IOException {
+        HttpURLConnection conn = openConnection("PUT", getUploadSubResource(uploadId, partNumber, false), getUploadSubResource(uploadId, partNumber, true), OBJECT_CONTENT_TYPE);
+        execute(conn, data, len);
+
+        String eTag = conn.getHeaderField("ETag");
+        if (eTag == null)
+            throw new IOException("No ETag for part "+partNumber);
+
+        return eTag;
+    }
+
+    public void completeUpload(String uploadId, List<String> partETags) throws IOException {
+        StringBuilder sb = new StringBuilder("<CompleteMultipartUpload>");
+        for (int i = 0; i < partETags.size(); i++)
+            sb.append("<Part><PartNumber>").append(i+1).append("</PartNumber><ETag>").append(partETags.get(i)).append("</ETag></Part>");
+        sb.append("</CompleteMultipartUpload>");
+        byte body[] = sb.toString().getBytes("UTF-8");
+
+        HttpURLConnection conn = openConnection("POST", getUploadSubResource(uploadId, 0, false), getUploadSubResource(uploadId, 0, true), XML_CONTENT_TYPE);
+        String response = execute(conn, body, body.length);
+
+        // The request may fail after the response code has been sent, in which case the body contains an error
+        if (response.contains("<Error>"))
+            throw new IOException("Failed to complete multipart upload: "+response);
+    }
+
+    public void abortUpload(String uploadId) throws IOException {
+        HttpURLConnection conn = openConnection("DELETE", getUploadSubResource(uploadId, 0, false), getUploadSubResource(uploadId, 0, true), null);
+        execute(conn, null, 0);
+    }
+}
@@ -20,6 +20,7 @@
 package com.mucommander.commons.file.impl.s3;
 
 import com.mucommander.commons.file.*;
+import com.mucommander.commons.file.filter.FileFilter;
 import com.mucommander.commons.io.RandomAccessOutputStream;
 import com.mucommander.commons.runtime.JavaVersion;
 import org.jets3t.service.Constants;
@@ -38,6 +39,10 @@ import java.util.Date;
  */
 public abstract class S3File extends ProtocolFile {
 
+    /** Name of the property that controls whether the server is reached over HTTPS, <code>"true"</code> for HTTPS
+     * (default), <code>"false"</code> for plain HTTP */
+    public final static String HTTPS_PROPERTY_NAME = "https";
+
     protected org.jets3t.service.S3Service service;
 
     protected AbstractFile parent;
@@ -76,59 +81,97 @@ public abstract class S3File extends ProtocolFile {
         try {
             S3ObjectsChunk chunk = service.listObjectsChunked(bucketName, prefix, "/", Constants.DEFAULT_OBJECT_LIST_CHUNK_SIZE, null, true);
             org.jets3t.service.model.S3Object objects[] = chunk.getObjects();
-            String[] commonPrefixes = chunk.getCommonPrefixes();
 
             if(objects.length==0 && !prefix.equals("")) {
                 // This happens only when the directory does not exist
                 throw new IOException();
             }
 
-            AbstractFile[] children = new AbstractFile[objects.length+commonPrefixes.length];
-            FileURL childURL;
-            int i=0;
-            String objectKey;
-
-            for(org.jets3t.service.model.S3Object object : objects) {
-                // Discard the object corresponding to the prefix itself
-                objectKey = object.getKey();
-                if(objectKey.equals(prefix))
-                    continue;
-
-                childURL = (FileURL)fileURL.clone();
-                childURL.setPath(bucketName + "/" + objectKey);
+            return createChildren(bucketName, prefix, parent, objects, chunk.getCommonPrefixes());
+        }
+        catch(S3ServiceException e) {
+            throw getIOException(e);
+        }
+    }
 
-                children[i] = FileFactory.getFile(childURL, parent, service, object);
-                i++;
+    /**
+     * Lists the objects and common prefixes (directories) under the given prefix one chunk at a time, and passes
+     * the children of each chunk to the listener as soon as the chunk has been retrieved, rather than waiting for the
+     * complete listing like {@link #listObjects(String, String, S3File)}.
+     */
+    protected void listObjects(String bucketName, String prefix, S3File parent, FileFilter filter, ListingListener listener) throws IOException {
+        try {
+            String priorLastKey = null;
+            boolean firstChunk = true;
+            do {
+                S3ObjectsChunk chunk = service.listObjectsChunked(bucketName, prefix, "/", Constants.DEFAULT_OBJECT_LIST_CHUNK_SIZE, priorLastKey, false);
+                org.jets3t.service.model.S3Object objects[] = chunk.getObjects();
+
+                // The directory object comes first, so this happens only when the directory does not exist
+                if(firstChunk && objects.length==0 && !prefix.equals(""))
+                    throw new IOException();
+                firstChunk = false;
+
+                AbstractFile children[] = createChildren(bucketName, prefix, parent, objects, chunk.getCommonPrefixes());
+                if(!listener.childrenListed(filter==null?children:filter.filter(children)))
+                    return;
+
+                priorLastKey = chunk.getPriorLastKey();
             }
+            while(priorLastKey!=null);
+        }
+        catch(S3ServiceException e) {
+            throw getIOException(e);
+        }
+    }
 
-            org.jets3t.service.model.S3Object directoryObject;
-            for(String commonPrefix : commonPrefixes) {
-                childURL = (FileURL)fileURL.clone();
-                childURL.setPath(bucketName + "/" + commonPrefix);
-
-                directoryObject = new org.jets3t.service.model.S3Object(commonPrefix);
-                // Common prefixes are not objects per se, and therefore do not have a date, content-length nor owner.
-                directoryObject.setLastModifiedDate(new Date(System.currentTimeMillis()));
-                directoryObject.setContentLength(0);
-                children[i] = FileFactory.getFile(childURL, parent, service, directoryObject);
-                i++;
-            }
+    /**
+     * Creates the children corresponding to the given objects and common prefixes, discarding the object that
+     * corresponds to the prefix itself.
+     */
+    private AbstractFile[] createChildren(String bucketName, String prefix, S3File parent, org.jets3t.service.model.S3Object objects[], String commonPrefixes[]) throws IOException {
+        AbstractFile[] children = new AbstractFile[objects.length+commonPrefixes.length];
+        FileURL childURL;
+        int i=0;
+        String objectKey;
+
+        for(org.jets3t.service.model.S3Object object : objects) {
+            // Discard the object corresponding to the prefix itself
+            objectKey = object.getKey();
+            if(objectKey.equals(prefix))
+                continue;
+
+            childURL = (FileURL)fileURL.clone();
+            childURL.setPath(bucketName + "/" + objectKey);
+
+            children[i] = FileFactory.getFile(childURL, parent, service, object);
+            i++;
+        }
 
-            // Trim the array if an object was discarded.
-            // Note: Having to recreate an array sucks (puts pressure on the GC), but I haven't found a reliable way
-            // to know in advance whether the prefix will appear in the results or not.
-            if(i<children.length) {
-                AbstractFile[] childrenTrimmed = new AbstractFile[i];
-                System.arraycopy(children, 0, childrenTrimmed, 0, i);
+        org.jets3t.service.model.S3Object directoryObject;
+        for(String commonPrefix : commonPrefixes) {
+            childURL = (FileURL)fileURL.clone();
+            childURL.setPath(bucketName + "/" + commonPrefix);
+
+            directoryObject = new org.jets3t.service.model.S3Object(commonPrefix);
+            // Common prefixes are not objects per se, and therefore do not have a date, content-length nor owner.
+            directoryObject.setLastModifiedDate(new Date(System.currentTimeMillis()));
+            directoryObject.setContentLength(0);
+            children[i] = FileFactory.getFile(childURL, parent, service, directoryObject);
+            i++;
+        }
 
-                return childrenTrimmed;
-            }
+        // Trim the array if an object was discarded.
+        // Note: Having to recreate an array sucks (puts pressure on the GC), but I haven't found a reliable way
+        // to know in advance whether the prefix will appear in the results or not.
+        if(i<children.length) {
+            AbstractFile[] childrenTrimmed = new AbstractFile[i];
+            System.arraycopy(children, 0, childrenTrimmed, 0, i);
 
-            return children;
-        }
-        catch(S3ServiceException e) {
-            throw getIOException(e);
+            return childrenTrimmed;
         }
+
+        return children;
     }
 
 
@@ -0,0 +1,350 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2010 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.commons.file.impl.s3;
+
+import com.mucommander.commons.io.FileTransferException;
+import com.mucommander.commons.io.StreamUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Uploads a stream of unknown length to S3 using a multipart upload, without spooling it to a temporary file.
+ *
+ * <p>The stream is read into part buffers that are uploaded concurrently by a pool of threads. The number of part
+ * buffers is bounded: at most <code>nbThreads+1</code> parts are held in memory, the stream is not read further while
+ * they are all being uploaded. Each part is retried a number of times before the upload is given up, in which case
+ * the multipart upload is aborted so that no storage is left behind.</p>
+ *
+ * <p>The size of the parts starts at the specified part size, and is doubled every {@link #PART_SIZE_INCREASE_INTERVAL}
+ * parts up to {@link #MAX_PART_SIZE}, so that large objects do not exceed the {@link #MAX_PARTS} parts S3 allows.</p>
+ *
+ * @see MultipartUploadClient
+ */
+public class S3MultipartUpload {
+    private static final Logger LOGGER = LoggerFactory.getLogger(S3MultipartUpload.class);
+
+    /** Minimum size of a part (except the last one) allowed by S3: 5MB */
+    public final static int MIN_PART_SIZE = 5*1024*1024;
+
+    /** Default size of the first parts: 8MB */
+    public final static int DEFAULT_PART_SIZE = 8*1024*1024;
+
+    /** Maximum size of a part: 64MB */
+    public final static int MAX_PART_SIZE = 64*1024*1024;
+
+    /** Maximum number of parts of a multipart upload allowed by S3 */
+    public final static int MAX_PARTS = 10000;
+
+    /** Number of parts after which the part size is doubled */
+    public final static int PART_SIZE_INCREASE_INTERVAL = 1000;
+
+    /** Default number of parts that are uploaded concurrently */
+    public final static int DEFAULT_NB_THREADS = 4;
+
+    /** Default number of times a part is retried before the upload is given up */
+    public final static int DEFAULT_MAX_RETRIES = 3;
+
+    /** Size of the buffer the first part starts being read into, grown as data is read */
+    private final static int FIRST_PART_BUFFER_SIZE = 64*1024;
+
+    /** Delay before a part is retried for the first time, doubled with every retry */
+    private final static long RETRY_DELAY = 1000;
+
+    /** Performs the requests */
+    private final MultipartUploadClient client;
+
+    /** Size of the first parts */
+    private final int partSize;
+
+    /** Number of parts that are uploaded concurrently */
+    private final int nbThreads;
+
+    /** Number of times a part is retried */
+    private final int maxRetries;
+
+    /** Delay before a part is retried for the first time */
+    private long retryDelay = RETRY_DELAY;
+
+
+    /**
+     * Creates a new S3MultipartUpload with the default part size, number of threads and number of retries.
+     *
+     * @param client the client that performs the requests
+     */
+    public S3MultipartUpload(MultipartUploadClient client) {
+        this(client, DEFAULT_PART_SIZE, DEFAULT_NB_THREADS, DEFAULT_MAX_RETRIES);
+    }
+
+    /**
+     * Creates a new S3MultipartUpload.
+     *
+     * @param client the client that performs the requests
+     * @param partSize size of the first parts, should not be smaller than {@link #MIN_PART_SIZE}
+     * @param nbThreads number of parts that are uploaded concurrently
+     * @param maxRetries number of times a part is retried before the upload is given up
+     */
+    public S3MultipartUpload(MultipartUploadClient client, int partSize, int nbThreads, int maxRetries) {
+        if (partSize <= 0 || nbThreads <= 0 || maxRetries < 0) {
+            throw new IllegalArgumentException();
+        }
+
+        this.client = client;
+        this.partSize = partSize;
+        this.nbThreads = nbThreads;
+        this.maxRetries = maxRetries;
+    }
+
+    /**
+     * Sets the delay before a part is retried for the first time, doubled with every retry. Default is one second.
+     *
+     * @param retryDelay the delay before a part is retried for the first time, in milliseconds
+     */
+    public void setRetryDelay(long retryDelay) {
+        this.retryDelay = retryDelay;
+    }
+
+    /**
+     * Returns the size of the first parts.
+     *
+     * @return the size of the first parts
+     */
+    public int getPartSize() {
+        return partSize;
+    }
+
+    /**
+     * Returns the size of the part with the given number.
+     *
+     * @param partNumber number of the part, starting at 1
+     * @return the size of the part
+     */
+    int getPartSize(int partNumber) {
+        long size = partSize;
+        for (int i = (partNumber-1)/PART_SIZE_INCREASE_INTERVAL; i > 0 && size < MAX_PART_SIZE; i--)
+            size *= 2;
+
+        return (int)Math.min(size, Math.max(MAX_PART_SIZE, partSize));
+    }
+
+    /**
+     * Reads the first part from the given stream, to find out whether a multipart upload is worth it. The buffer the
+     * part is read into starts small and grows as data is read, so that a stream that ends before a whole part, which
+     * is uploaded with a single PUT request, does not cost a whole part buffer.
+     *
+     * @param in the stream to read the first part from
+     * @return the data that was read, of the size of the first part if the stream did not end before
+     * @throws IOException if the stream could not be read
+     */
+    public byte[] readFirstPart(InputStream in) throws IOException {
+        byte buffer[] = new byte[Math.min(FIRST_PART_BUFFER_SIZE, partSize)];
+        int len = 0;
+        while (true) {
+            len += StreamUtils.readUpTo(in, buffer, len, buffer.length-len);
+
+            // The stream has ended
+            if (len < buffer.length)
+                return Arrays.copyOf(buffer, len);
+
+            if (buffer.length == partSize)
+                return buffer;
+
+            buffer = Arrays.copyOf(buffer, (int)Math.min(2L*buffer.length, partSize));
+        }
+    }
+
+    /**
+     * Uploads the contents of the given stream. The first part, which has already been read from the stream by the
+     * caller to find out whether a multipart upload was worth it, is passed separately. The stream is read until its
+     * end but is not closed.
+     *
+     * @param firstPart the first part's data
+     * @param firstPartLen number of bytes of the first part
+     * @param in the stream to read the following parts from
+     * @return the total number of bytes uploaded
+     * @throws FileTransferException if the stream could not be read or the upload failed. The multipart upload is
+     * aborted in this case.
+     */
+    public long upload(byte firstPart[], int firstPartLen, InputStream in) throws FileTransferException {
+        final String uploadId;
+        try {
+            uploadId = client.initiateUpload();
+        }
+        catch (IOException e) {
+            LOGGER.info("Failed to initiate multipart upload", e);
+            throw new FileTransferException(FileTransferException.OPENING_DESTINATION);
+        }
+
+        // Parts being filled or uploaded, including the one being read
+        final Semaphore partBuffers = new Semaphore(nbThreads+1);
+        final List<Future<String>> parts = new ArrayList<Future<String>>();
+        ExecutorService executor = createExecutor();
+        boolean completed = false;
+        try {
+            long totalSize = 0;
+            byte part[] = firstPart;
+            int partLen = firstPartLen;
+            int partNumber = 1;
+
+            partBuffers.acquire();
+            while (true) {
+                parts.add(submitPart(executor, partBuffers, uploadId, partNumber, part, partLen));
+                totalSize += partLen;
+
+                // Wait for a part buffer to be available, and stop if a part has failed
+                partBuffers.acquire();
+                checkFailedParts(parts);
+
+                if (partNumber == MAX_PARTS)
+                    throw new FileTransferException(FileTransferException.WRITING_DESTINATION);
+
+                partNumber++;
+                part = new byte[getPartSize(partNumber)];
+                try {
+                    partLen = StreamUtils.readUpTo(in, part);
+                }
+                catch (IOException e) {
+                    throw new FileTransferException(FileTransferException.READING_SOURCE);
+                }
+
+                // The last part is empty if the stream ended on a part boundary: it is not uploaded
+                if (partLen == 0)
+                    break;
+            }
+
+            List<String> partETags = new ArrayList<String>(parts.size());
+            for (Future<String> future : parts)
+                partETags.add(getPartETag(future));
+
+            try {
+                client.completeUpload(uploadId, partETags);
+            }
+            catch (IOException e) {
+                LOGGER.info("Failed to complete multipart upload", e);
+                throw new FileTransferException(FileTransferException.WRITING_DESTINATION);
+            }
+
+            completed = true;
+            return totalSize;
+        }
+        catch (InterruptedException e) {
+            throw new FileTransferException(FileTransferException.WRITING_DESTINATION);
+        }
+        finally {
+            executor.shutdownNow();
+
+            if (!completed) {
+                try {
+                    client.abortUpload(uploadId);
+                }
+                catch (IOException e) {
+                    LOGGER.info("Failed to abort multipart upload "+uploadId, e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Submits the given part to the upload threads. The part buffer is released once the part has been uploaded.
+     */
+    private Future<String> submitPart(ExecutorService executor, final Semaphore partBuffers, final String uploadId, final int partNumber, final byte part[], final int partLen) {
+        return executor.submit(new Callable<String>() {
+            public String call() throws Exception {
+                try {
+                    return uploadPart(uploadId, partNumber, part, partLen);
+                }
+                finally {
+                    partBuffers.release();
+                }
+            }
+        });
+    }
+
+    /**
+     * Uploads the given part, retrying up to {@link #maxRetries} times.
+     */
+    private String uploadPart(String uploadId, int partNumber, byte part[], int partLen) throws IOException, InterruptedException {
+        long delay = retryDelay;
+        for (int attempt = 0; ; attempt++) {
+            try {
+                return client.uploadPart(uploadId, partNumber, part, partLen);
+            }
+            catch (IOException e) {
+                if (attempt >= maxRetries)
+                    throw e;
+
+                LOGGER.info("Failed to upload part "+partNumber+", retrying", e);
+                Thread.sleep(delay);
+                delay *= 2;
+            }
+        }
+    }
+
+    /**
+     * Throws a <code>FileTransferException</code> if one of the parts that have been uploaded so far has failed.
+     */
+    private static void checkFailedParts(List<Future<String>> parts) throws FileTransferException, InterruptedException {
+        for (Future<String> future : parts) {
+            if (future.isDone())
+                getPartETag(future);
+        }
+    }
+
+    /**
+     * Waits for the given part to be uploaded and returns its ETag.
+     */
+    private static String getPartETag(Future<String> future) throws FileTransferException, InterruptedException {
+        try {
+            return future.get();
+        }
+        catch (ExecutionException e) {
+            LOGGER.info("Failed to upload part", e.getCause());
+            throw new FileTransferException(FileTransferException.WRITING_DESTINATION);
+        }
+    }
+
+    /**
+     * Creates the threads that upload parts.
+     */
+    private ExecutorService createExecutor() {
+        final String threadName = getClass().getSimpleName()+" thread ";
+        final AtomicInteger threadCount = new AtomicInteger();
+
+        return Executors.newFixedThreadPool(nbThreads, new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, threadName+threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+}
@@ -20,16 +20,21 @@
 package com.mucommander.commons.file.impl.s3;
 
 import com.mucommander.commons.file.*;
+import com.mucommander.commons.file.filter.FileFilter;
 import com.mucommander.commons.io.BufferPool;
 import com.mucommander.commons.io.FileTransferException;
 import com.mucommander.commons.io.RandomAccessInputStream;
+import com.mucommander.commons.io.SegmentSource;
 import com.mucommander.commons.io.StreamUtils;
+import org.jets3t.service.Constants;
+import org.jets3t.service.Jets3tProperties;
 import org.jets3t.service.S3Service;
 import org.jets3t.service.S3ServiceException;
 import org.jets3t.service.model.S3Owner;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -39,7 +44,7 @@ import java.io.OutputStream;
  *
  * @author Maxence Bernard
  */
-public class S3Object extends S3File {
+public class S3Object extends S3File implements SegmentSource {
     private static final Logger LOGGER = LoggerFactory.getLogger(S3Object.class);
 
     private String bucketName;
@@ -142,6 +147,11 @@ public class S3Object extends S3File {
         return listObjects(bucketName, getObjectKey(true), this);
     }
 
+    @Override
+    public void ls(FileFilter filter, ListingListener listener) throws IOException {
+        listObjects(bucketName, getObjectKey(true), this, filter, listener);
+    }
+
     @Override
     public void mkdir() throws IOException {
         if(exists())
@@ -325,51 +335,84 @@ public class S3Object extends S3File {
             putObject(in, length);
         }
         else {
-            // Copy the stream to a temporary file so that we can know the object's length, which has to be declared
-            // in the PUT request's headers (that is before the transfer is started).
-            final AbstractFile tempFile;
-            final OutputStream tempOut;
+            // The object's length has to be declared in the PUT request's headers (that is before the transfer is
+            // started). Read the stream up to the size of a part: if it ends before that, upload it with a single
+            // PUT request, otherwise upload it part by part without having to spool it to a temporary file.
+            S3MultipartUpload upload = new S3MultipartUpload(createMultipartUploadClient());
+            byte firstPart[];
             try {
-                tempFile = FileFactory.getTemporaryFile(false);
-                tempOut = tempFile.getOutputStream();
-            } catch (IOException e) {
-                throw new FileTransferException(FileTransferException.OPENING_DESTINATION);
+                firstPart = upload.readFirstPart(in);
+            }
+            catch(IOException e) {
+                throw new FileTransferException(FileTransferException.READING_SOURCE);
             }
 
-            try {
-                // Copy the stream to the temporary file
-                try {
-                    StreamUtils.copyStream(in, tempOut, IO_BUFFER_SIZE);
-                }
-                finally {
-                    // Close the stream even if copyStream() threw an IOException
-                    try {
-                        tempOut.close();
-                    } catch(IOException e) {
-                        // Do not re-throw the exception to prevent swallowing the exception thrown in the try block
-                    }
-                }
-
-                InputStream tempIn;
-                try {
-                    tempIn = tempFile.getInputStream();
-                } catch(IOException e) {
-                    throw new FileTransferException(FileTransferException.OPENING_SOURCE);
-                }
-
-                putObject(tempIn, tempFile.getSize());
+            if(firstPart.length<upload.getPartSize()) {
+                putObject(new ByteArrayInputStream(firstPart), firstPart.length);
             }
-            finally {
-                // Delete the temporary file, no matter what.
-                try {
-                    tempFile.delete();
-                } catch(IOException e) {
-                    // Do not re-throw the exception to prevent exceptions caught in the catch block from being replaced
-                }
+            else {
+                upload.upload(firstPart, firstPart.length, in);
+
+                // Fetch the attributes of the assembled object
+                atts.updateAttributes();
+                atts.updateExpirationDate();
             }
         }
     }
 
+    /**
+     * Creates a client performing the requests of a multipart upload of this object, with this file's credentials.
+     * The client addresses the same server as the JetS3t service, in the same way.
+     *
+     * @return a client performing the requests of a multipart upload of this object
+     */
+    private MultipartUploadClient createMultipartUploadClient() {
+        Jets3tProperties props = service.getJetS3tProperties();
+        String host = props.getStringProperty("s3service.s3-endpoint", Constants.S3_HOSTNAME);
+        boolean https = service.isHttpsOnly();
+        int standardPort = https?443:80;
+        int port = https
+            ?props.getIntProperty("s3service.s3-endpoint-https-port", standardPort)
+            :props.getIntProperty("s3service.s3-endpoint-http-port", standardPort);
+
+        // Like JetS3t, address the bucket in the host name if it is a valid DNS name: S3 answers path-style requests
+        // to buckets located outside of the US standard region with a redirect
+        boolean virtualHost = S3Service.isBucketNameValidDNSName(bucketName) && !props.getBoolProperty("s3service.disable-dns-buckets", false);
+        if(virtualHost)
+            host = bucketName+"."+host;
+
+        String endpoint = (https?"https://":"http://")+host+(port==standardPort?"":":"+port);
+
+        Credentials credentials = fileURL.getCredentials();
+        return new RestMultipartUploadClient(endpoint, credentials.getLogin(), credentials.getPassword(), bucketName, getObjectKey(false), virtualHost);
+    }
+
+
+    //////////////////////////////////
+    // SegmentSource implementation //
+    //////////////////////////////////
+
+    /**
+     * Always returns <code>true</code>: S3 supports byte ranges.
+     */
+    public boolean isSegmentReadSupported() {
+        return true;
+    }
+
+    /**
+     * Requests the given segment of the object by performing a 'GET Object' request with a byte range.
+     */
+    public InputStream getSegmentInputStream(long offset, long length) throws IOException {
+        try {
+            return service.getObject(bucketName, getObjectKey(false), null, null, null, null, offset, offset+length-1)
+                .getDataInputStream();
+        }
+        catch(S3ServiceException e) {
+            throw getIOException(e);
+        }
+    }
+
+
     ///////////////////
     // Inner classes //
     ///////////////////
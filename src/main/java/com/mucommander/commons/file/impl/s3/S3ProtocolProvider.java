@@ -45,9 +45,18 @@ public class S3ProtocolProvider implements ProtocolProvider {
 
         if(instantiationParams.length==0) {
             try {
-                service = new RestS3Service(new AWSCredentials(credentials.getLogin(), credentials.getPassword()));
                 Jets3tProperties props = new Jets3tProperties();
                 props.setProperty("s3service.s3-endpoint", url.getHost());
+                // HTTPS is used unless plain HTTP is explicitly requested for this location
+                String httpsProperty = url.getProperty(S3File.HTTPS_PROPERTY_NAME);
+                boolean https = httpsProperty==null || !httpsProperty.equals("false");
+                props.setProperty("s3service.https-only", Boolean.toString(https));
+
+                int port = url.getPort();
+                if(port!=-1 && port!=url.getStandardPort())
+                    props.setProperty(https?"s3service.s3-endpoint-https-port":"s3service.s3-endpoint-http-port", Integer.toString(port));
+
+                service = new RestS3Service(new AWSCredentials(credentials.getLogin(), credentials.getPassword()), null, null, props);
             }
             catch(S3ServiceException e) {
                 throw S3File.getIOException(e, url);
@@ -18,7 +18,7 @@
 package com.mucommander.commons.file.impl.sevenzip;
 
 import com.mucommander.commons.file.*;
-import com.mucommander.commons.util.CircularByteBuffer;
+import com.mucommander.commons.io.BoundedPipe;
 import net.sf.sevenzipjbinding.*;
 import net.sf.sevenzipjbinding.impl.RandomAccessFileInStream;
 import org.slf4j.Logger;
@@ -26,6 +26,12 @@ import org.slf4j.LoggerFactory;
 
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Created on 23/05/14.
@@ -35,6 +41,30 @@ public class SevenZipArchiveFile extends AbstractROArchiveFile {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(SevenZipArchiveFile.class);
 
+    /** Default amount of memory used to stream an entry, see {@link #setEntryBufferSize(int)} */
+    public static final int DEFAULT_ENTRY_BUFFER_SIZE = 1024 * 1024;
+
+    /** Number of buffers the memory used to stream an entry is split into */
+    private static final int NB_ENTRY_BUFFERS = 4;
+
+    /** Amount of memory used to stream an entry */
+    private static volatile int entryBufferSize = DEFAULT_ENTRY_BUFFER_SIZE;
+
+    /** Threads that extract entries into the pipe read by {@link #getEntryInputStream(ArchiveEntry, ArchiveEntryIterator)}.
+     * Threads are reused from one entry to the next, and stop after being idle for a while. The number of threads is not
+     * bounded, as an entry's extraction only ends once the entry has been consumed or closed. */
+    private static final ExecutorService extractionExecutor = new ThreadPoolExecutor(0, Integer.MAX_VALUE,
+            60, TimeUnit.SECONDS, new SynchronousQueue<Runnable>(), new ThreadFactory() {
+        private final AtomicInteger threadNumber = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "7-Zip extraction " + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
     private ISevenZipInArchive inArchive;
     private ArchiveOpenVolumeCallback archiveOpenVolumeCallback;
 
@@ -85,41 +115,105 @@ public class SevenZipArchiveFile extends AbstractROArchiveFile {
 
     @Override
     public InputStream getEntryInputStream(ArchiveEntry entry, ArchiveEntryIterator entryIterator) throws IOException, UnsupportedFileOperationException {
+        // The entry is being extracted along with others, in a single pass
+        if (entryIterator instanceof BatchArchiveEntryIterator) {
+            return ((BatchArchiveEntryIterator)entryIterator).getEntryInputStream(entry);
+        }
+
         final int[] in = new int[1];
         in[0] = (Integer)entry.getEntryObject();
-        final CircularByteBuffer cbb = new CircularByteBuffer(CircularByteBuffer.INFINITE_SIZE);
-        new Thread() {
+        final BoundedPipe pipe = new BoundedPipe(Math.max(1, entryBufferSize / NB_ENTRY_BUFFERS), NB_ENTRY_BUFFERS);
+        extractionExecutor.execute(new Runnable() {
             @Override
             public void run() {
+                // The entry may have been closed before the extraction started
+                if (pipe.isConsumerClosed()) {
+                    pipe.fail(new IOException("Entry closed"));
+                    return;
+                }
+
+                // Each entry has an archive of its own, as several entries may be extracted at the same time
+                SevenZipRandomAccessFile randomAccessFile = null;
+                ISevenZipInArchive sevenZipFile = null;
                 try {
-                    final ISevenZipInArchive sevenZipFile = openSevenZipFile();
-                    sevenZipFile.extract(in, false, new ExtractCallback(inArchive, cbb.getOutputStream()));
-                } catch (SevenZipException e) {
-                    e.printStackTrace();
-                } catch (IOException e) {
-                    e.printStackTrace();
+                    randomAccessFile = new SevenZipRandomAccessFile(file);
+                    sevenZipFile = SevenZip.openInArchive(ArchiveFormat.SEVEN_ZIP, randomAccessFile);
+                    sevenZipFile.extract(in, false, new ExtractCallback(sevenZipFile, pipe.getOutputStream()));
+                    pipe.getOutputStream().close();
+                } catch (SevenZipException | IOException e) {
+                    if (pipe.isConsumerClosed()) {
+                        LOGGER.trace("Extraction cancelled", e);
+                    } else {
+                        LOGGER.info("Error extracting 7-Zip entry", e);
+                    }
+                    pipe.fail(e instanceof IOException ? (IOException)e : new IOException(e));
+                } catch (Throwable t) {
+                    // Unchecked exceptions and errors, of the native library for instance, must also end the pipe,
+                    // otherwise the reader would wait for the entry's bytes forever
+                    LOGGER.info("Error extracting 7-Zip entry", t);
+                    pipe.fail(new IOException(t));
                 } finally {
-                    if (inArchive != null) {
+                    if (sevenZipFile != null) {
                         try {
-                            inArchive.close();
+                            sevenZipFile.close();
                         } catch (SevenZipException e) {
-                            e.printStackTrace();
+                            LOGGER.info("Error closing archive", e);
                         }
                     }
-                    try {
-                        cbb.getOutputStream().close();
-                    } catch (IOException e) {
-                        e.printStackTrace();
+                    if (randomAccessFile != null) {
+                        randomAccessFile.close();
                     }
-                    inArchive = null;
                 }
             }
-        }.start();
+        });
 
-        return cbb.getInputStream();
+        return pipe.getInputStream();
     }
 
+    /**
+     * Returns <code>true</code>: entries of solid archives are decompressed together, extracting them one by one
+     * would decompress the same solid block over and over.
+     */
+    @Override
+    public boolean isBatchEntryReadSupported() {
+        return true;
+    }
 
+    @Override
+    public BatchArchiveEntryIterator getBatchEntryIterator(List<ArchiveEntry> entries) throws IOException, UnsupportedFileOperationException {
+        // Entries are identified by their index in the archive
+        List<ArchiveEntry> sortedEntries = new ArrayList<>(entries);
+        Collections.sort(sortedEntries, new Comparator<ArchiveEntry>() {
+            @Override
+            public int compare(ArchiveEntry entry1, ArchiveEntry entry2) {
+                return Integer.compare((Integer)entry1.getEntryObject(), (Integer)entry2.getEntryObject());
+            }
+        });
+
+        return new SevenZipBatchEntryIterator(sortedEntries);
+    }
+
+    /**
+     * Returns the amount of memory used to stream an entry returned by
+     * {@link #getEntryInputStream(ArchiveEntry, ArchiveEntryIterator)}, in bytes. The extraction of the entry is held
+     * back when the consumer is that much behind.
+     *
+     * @return the amount of memory used to stream an entry, in bytes
+     */
+    public static int getEntryBufferSize() {
+        return entryBufferSize;
+    }
+
+    /**
+     * Sets the amount of memory used to stream an entry returned by
+     * {@link #getEntryInputStream(ArchiveEntry, ArchiveEntryIterator)}, in bytes. This applies to entries opened after
+     * this call.
+     *
+     * @param size the amount of memory used to stream an entry, in bytes
+     */
+    public static void setEntryBufferSize(int size) {
+        entryBufferSize = size;
+    }
 
 
     /**
@@ -139,6 +233,124 @@ public class SevenZipArchiveFile extends AbstractROArchiveFile {
         return result;
     }
 
+    /**
+     * Extracts a set of entries with a single call to <code>ISevenZipInArchive#extract</code>, which decompresses
+     * each solid block only once.
+     */
+    private class SevenZipBatchEntryIterator extends BatchArchiveEntryIterator {
+
+        private SevenZipBatchEntryIterator(List<ArchiveEntry> entries) {
+            super(entries, entryBufferSize);
+        }
+
+        @Override
+        protected void extract(List<ArchiveEntry> fileEntries) throws IOException {
+            SevenZipRandomAccessFile randomAccessFile = new SevenZipRandomAccessFile(file);
+            ISevenZipInArchive sevenZipFile = null;
+            try {
+                sevenZipFile = SevenZip.openInArchive(ArchiveFormat.SEVEN_ZIP, randomAccessFile);
+                BatchExtractCallback callback = new BatchExtractCallback(fileEntries);
+                sevenZipFile.extract(callback.indices, false, callback);
+                callback.openEntries(-1);
+            } catch (SevenZipException e) {
+                throw new IOException(e);
+            } finally {
+                if (sevenZipFile != null) {
+                    try {
+                        sevenZipFile.close();
+                    } catch (SevenZipException e) {
+                        LOGGER.info("Error closing archive", e);
+                    }
+                }
+                randomAccessFile.close();
+            }
+        }
+
+        /**
+         * Writes the extracted entries to the streams returned by {@link #openEntry(ArchiveEntry)}.
+         */
+        private class BatchExtractCallback implements IArchiveExtractCallback {
+            private final List<ArchiveEntry> fileEntries;
+            private final int[] indices;
+            /** Position in fileEntries of the next entry to open */
+            private int nextEntry;
+            /** Stream of the entry being extracted, null if none */
+            private OutputStream out;
+
+            private BatchExtractCallback(List<ArchiveEntry> fileEntries) {
+                this.fileEntries = fileEntries;
+                this.indices = new int[fileEntries.size()];
+                for (int i = 0; i < indices.length; i++) {
+                    indices[i] = (Integer)fileEntries.get(i).getEntryObject();
+                }
+            }
+
+            /**
+             * Opens the entries up to the one with the given index, and returns its stream. Entries the library hasn't
+             * asked a stream for are opened and closed right away, so that they are returned empty. An index of
+             * <code>-1</code> opens all the remaining entries.
+             */
+            private OutputStream openEntries(int index) throws IOException {
+                while (nextEntry < indices.length) {
+                    OutputStream entryOut = openEntry(fileEntries.get(nextEntry));
+                    if (indices[nextEntry++] == index) {
+                        return entryOut;
+                    }
+                    entryOut.close();
+                }
+                if (index != -1) {
+                    throw new IOException("Unexpected entry index: " + index);
+                }
+                return null;
+            }
+
+            public ISequentialOutStream getStream(int index, ExtractAskMode extractAskMode) throws SevenZipException {
+                if (extractAskMode != ExtractAskMode.EXTRACT) {
+                    return null;
+                }
+                try {
+                    out = openEntries(index);
+                } catch (IOException e) {
+                    throw new SevenZipException(e);
+                }
+                return new ISequentialOutStream() {
+                    public int write(byte[] data) throws SevenZipException {
+                        try {
+                            out.write(data);
+                        } catch (IOException e) {
+                            throw new SevenZipException(e);
+                        }
+                        return data.length;
+                    }
+                };
+            }
+
+            public void prepareOperation(ExtractAskMode extractAskMode) throws SevenZipException {
+            }
+
+            public void setOperationResult(ExtractOperationResult extractOperationResult) throws SevenZipException {
+                if (out == null) {
+                    return;
+                }
+                if (extractOperationResult != ExtractOperationResult.OK) {
+                    throw new SevenZipException("Extraction error: " + extractOperationResult);
+                }
+                try {
+                    out.close();
+                } catch (IOException e) {
+                    throw new SevenZipException(e);
+                }
+                out = null;
+            }
+
+            public void setCompleted(long completeValue) throws SevenZipException {
+            }
+
+            public void setTotal(long total) throws SevenZipException {
+            }
+        }
+    }
+
     private static class ArchiveOpenVolumeCallback implements IArchiveOpenVolumeCallback {
 
         /**
@@ -256,7 +468,8 @@ public class SevenZipArchiveFile extends AbstractROArchiveFile {
                 return;
             }
             if (extractOperationResult != ExtractOperationResult.OK) {
-                System.err.println("Extraction error  = " + extractOperationResult);
+                // Report the error to the reader instead of ending the entry's stream as if it was complete
+                throw new SevenZipException("Extraction error: " + extractOperationResult);
             } else {
 //System.out.println(String.format("%9X | %10s | %s", hash, size, inArchive.getProperty(index, PropID.PATH)));
                 hash = 0;
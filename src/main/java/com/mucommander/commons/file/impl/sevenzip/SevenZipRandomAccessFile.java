@@ -91,6 +91,18 @@ public class SevenZipRandomAccessFile implements IInStream, ISequentialInStream
     }
 
 
+    /**
+     * Closes the underlying stream. Errors are logged and ignored.
+     */
+    public void close() {
+        try {
+            stream.close();
+        } catch (IOException e) {
+            LOGGER.trace("Error closing stream", e);
+        }
+    }
+
+
     private InputStream openStreamAndCheckSignature(AbstractFile file) throws IOException {
         byte[] buf = new byte[16];
         PushbackInputStream pushbackInputStream = file.getPushBackInputStream(buf.length);
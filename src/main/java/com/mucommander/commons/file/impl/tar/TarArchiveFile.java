@@ -23,16 +23,21 @@ import com.mucommander.commons.file.*;
 import com.mucommander.commons.file.impl.tar.provider.TarEntry;
 import com.mucommander.commons.file.impl.tar.provider.TarInputStream;
 import com.mucommander.commons.io.StreamUtils;
+import com.mucommander.commons.io.checkpoint.Checkpoint;
+import com.mucommander.commons.io.checkpoint.CheckpointBzip2InputStream;
+import com.mucommander.commons.io.checkpoint.CheckpointGzipInputStream;
+import com.mucommander.commons.io.checkpoint.CheckpointIndex;
 import com.mucommander.commons.util.StringUtils;
-import org.apache.hadoop.io.compress.bzip2.CBZip2InputStream;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.zip.GZIPInputStream;
 
 
 /**
@@ -47,6 +52,13 @@ import java.util.zip.GZIPInputStream;
 public class TarArchiveFile extends AbstractROArchiveFile {
     private static final Logger LOGGER = LoggerFactory.getLogger(TarArchiveFile.class);
 
+    /** Checkpoints of the compressed stream, allowing decompression to be resumed close to an entry */
+    private CheckpointIndex checkpointIndex;
+    /** Date of the archive when the checkpoint index was created */
+    private long checkpointIndexDate;
+    /** Size of the archive when the checkpoint index was created */
+    private long checkpointIndexSize;
+
     /**
      * Creates a TarArchiveFile on of the given file.
      *
@@ -57,49 +69,111 @@ public class TarArchiveFile extends AbstractROArchiveFile {
     }
 
 
+    /**
+     * Returns <code>true</code> if this archive is Gzip-compressed, based on its extension.
+     *
+     * @return true if this archive is Gzip-compressed
+     */
+    private boolean isGzipped() {
+        String name = getName();
+        return StringUtils.endsWithIgnoreCase(name, "tgz") || StringUtils.endsWithIgnoreCase(name, "tar.gz");
+    }
+
+    /**
+     * Returns <code>true</code> if this archive is Bzip2-compressed, based on its extension.
+     *
+     * @return true if this archive is Bzip2-compressed
+     */
+    private boolean isBzipped() {
+        String name = getName();
+        return StringUtils.endsWithIgnoreCase(name, "tbz2") || StringUtils.endsWithIgnoreCase(name, "tar.bz2");
+    }
+
+    /**
+     * Returns the checkpoint index of this archive's compressed stream, creating a new one if this method is called
+     * for the first time or if the archive has been modified since the index was created.
+     *
+     * @return the checkpoint index of this archive's compressed stream
+     */
+    private synchronized CheckpointIndex getCheckpointIndex() {
+        long date = file.getDate();
+        long size = file.getSize();
+        if (checkpointIndex == null || date != checkpointIndexDate || size != checkpointIndexSize) {
+            checkpointIndex = new CheckpointIndex();
+            checkpointIndexDate = date;
+            checkpointIndexSize = size;
+        }
+
+        return checkpointIndex;
+    }
+
     /**
      * Returns a TarInputStream which can be used to read TAR entries.
      *
+     * <p>If the archive is not compressed and the underlying file has random read access, the stream is positioned
+     * at the specified entry offset directly. If the archive is compressed and <code>useCheckpoints</code> is
+     * <code>true</code>, decompression is resumed at the closest checkpoint that precedes the entry, if any.
+     * Otherwise, the archive is read (and decompressed) from the start and the stream skips to the entry offset.
+     * Checkpoints are recorded as the compressed stream is read, the listing of the archive's entries therefore
+     * leaves an index of the whole archive behind, which is stored along with the entries by {@link ArchiveIndexCache}.</p>
+     *
      * @param entryOffset offset from the start of the archive to an entry. Must be a multiple of recordSize, or
      * <code>0</code> to start at the first entry.
+     * @param useCheckpoints <code>true</code> to resume decompression at the closest checkpoint that precedes the entry
      * @return a TarInputStream which can be used to read TAR entries
      * @throws IOException if an error occurred while create the stream
      * @throws UnsupportedFileOperationException if this operation is not supported by the underlying filesystem,
      * or is not implemented.
      */
-    private TarInputStream createTarStream(long entryOffset) throws IOException, UnsupportedFileOperationException {
-        InputStream in = file.getInputStream();
+    private TarInputStream createTarStream(long entryOffset, boolean useCheckpoints) throws IOException, UnsupportedFileOperationException {
+        boolean gzipped = isGzipped();
+        boolean bzipped = !gzipped && isBzipped();
 
-        String name = getName();
+        if (!gzipped && !bzipped) {
+            // Seek straight to the entry, without reading what precedes it
+            if (entryOffset > 0 && file.isFileOperationSupported(FileOperation.RANDOM_READ_FILE))
+                return new TarInputStream(file.getInputStream(entryOffset));
+
+            return new TarInputStream(file.getInputStream(), entryOffset);
+        }
+
+        CheckpointIndex index = getCheckpointIndex();
+        Checkpoint checkpoint = useCheckpoints && entryOffset > 0 ? index.get(entryOffset) : null;
+        InputStream in = checkpoint == null ? file.getInputStream() : file.getInputStream(checkpoint.getCompressedByteOffset());
+
+        try {
             // Gzip-compressed file
-        if (StringUtils.endsWithIgnoreCase(name, "tgz") || StringUtils.endsWithIgnoreCase(name, "tar.gz"))
+            if (gzipped) {
                 // Note: this will fail for gz/tgz entries inside a tar file (IOException: Not in GZIP format),
                 // why is a complete mystery: the gz/tgz entry can be extracted and then properly browsed
-            in = new GZIPInputStream(in);
-
-        // Bzip2-compressed file
-        else if (StringUtils.endsWithIgnoreCase(name, "tbz2") || StringUtils.endsWithIgnoreCase(name, "tar.bz2")) {
-            try {
-                // Skips the 2 magic bytes 'BZ', as required by CBZip2InputStream. Quoted from CBZip2InputStream's Javadoc:
-                // "Although BZip2 headers are marked with the magic 'Bz'. this constructor expects the next byte in the
-                // stream to be the first one after the magic.  Thus callers have to skip the first two bytes. Otherwise
-                // this constructor will throw an exception."
-                StreamUtils.skipFully(in, 2);
-
-                // Quoted from CBZip2InputStream's Javadoc:
-                // "CBZip2InputStream reads bytes from the compressed source stream via the single byte {@link java.io.InputStream#read()
-                // read()} method exclusively. Thus you should consider to use a buffered source stream."
-                in = new CBZip2InputStream(new BufferedInputStream(in));
-            } catch (Exception e) {
-                // CBZip2InputStream is known to throw NullPointerException if file is not properly Bzip2-encoded
-                // so we need to catch those and throw them as IOException
-                LOGGER.info("Exception caught while creating CBZip2InputStream, throwing IOException", e);
-
-                throw new IOException();
+                in = checkpoint == null
+                        ? new CheckpointGzipInputStream(in, index)
+                        : new CheckpointGzipInputStream(in, checkpoint, index);
             }
-        }
+            // Bzip2-compressed file
+            else {
+                in = checkpoint == null
+                        ? new CheckpointBzip2InputStream(in, index)
+                        : new CheckpointBzip2InputStream(in, checkpoint, index);
+            }
+
+            if (checkpoint == null)
+                return new TarInputStream(in, entryOffset);
 
-        return new TarInputStream(in, entryOffset);
+            StreamUtils.skipFully(in, entryOffset - checkpoint.getUncompressedOffset());
+            return new TarInputStream(in);
+        } catch (IOException e) {
+            in.close();
+            throw e;
+        } catch (Exception e) {
+            in.close();
+
+            // CBZip2InputStream is known to throw NullPointerException if file is not properly Bzip2-encoded
+            // so we need to catch those and throw them as IOException
+            LOGGER.info("Exception caught while creating compressed stream, throwing IOException", e);
+
+            throw new IOException();
+        }
     }
 
 
@@ -107,9 +181,64 @@ public class TarArchiveFile extends AbstractROArchiveFile {
     // AbstractArchiveFile implementation //
     ////////////////////////////////////////
 
+    /**
+     * Returns <code>true</code>: listing a TAR archive requires reading it entirely (and decompressing it for
+     * tgz and tbz2 archives), and entries can be located using only their offset.
+     */
+    @Override
+    protected boolean isEntriesIndexCacheable() {
+        return true;
+    }
+
+    /**
+     * Returns the checkpoints recorded while listing a compressed archive, so that entries loaded from the index cache
+     * can be located without decompressing the archive from the start. Returns <code>null</code> if the archive is
+     * not compressed or if there are no checkpoints.
+     */
+    @Override
+    protected byte[] getEntriesIndexData() {
+        if (!isGzipped() && !isBzipped())
+            return null;
+
+        CheckpointIndex index = getCheckpointIndex();
+        if (index.size() == 0)
+            return null;
+
+        try {
+            ByteArrayOutputStream bout = new ByteArrayOutputStream();
+            index.write(new DataOutputStream(bout));
+            return bout.toByteArray();
+        } catch (IOException e) {
+            // Can't happen with a ByteArrayOutputStream
+            LOGGER.info("Could not write checkpoint index", e);
+            return null;
+        }
+    }
+
+    /**
+     * Restores the checkpoints that were stored along with the entries, the index cache having already checked
+     * that the archive hasn't changed since.
+     */
+    @Override
+    protected void setEntriesIndexData(byte[] data) {
+        if (data == null)
+            return;
+
+        try {
+            CheckpointIndex index = CheckpointIndex.read(new DataInputStream(new ByteArrayInputStream(data)));
+            synchronized (this) {
+                checkpointIndex = index;
+                checkpointIndexDate = file.getDate();
+                checkpointIndexSize = file.getSize();
+            }
+        } catch (IOException e) {
+            LOGGER.info("Could not read checkpoint index", e);
+        }
+    }
+
     @Override
     public ArchiveEntryIterator getEntryIterator() throws IOException, UnsupportedFileOperationException {
-        return new TarEntryIterator(createTarStream(0));
+        return new TarEntryIterator(createTarStream(0, false));
     }
 
 
@@ -138,11 +267,23 @@ public class TarArchiveFile extends AbstractROArchiveFile {
             // This is not the one, look for the entry from the beginning of the archive
         }
 
-        // Iterate through the archive until we've found the entry
+        // Iterate through the archive until we've found the entry. Entries loaded from the index cache have no
+        // TarEntry object but carry the entry's offset.
         TarEntry tarEntry = (TarEntry)entry.getEntryObject();
-        if (tarEntry != null) {
-            TarInputStream tin = createTarStream(tarEntry.getOffset());
-            tin.getNextEntry();
+        long entryOffset = tarEntry != null ? tarEntry.getOffset() : entry.getOffset();
+        if (entryOffset >= 0) {
+            TarInputStream tin = createTarStream(entryOffset, true);
+            TarEntry resumedEntry = tin.getNextEntry();
+
+            // Make sure that resuming decompression at a checkpoint led to the entry, decompress the archive from
+            // the start otherwise
+            if (resumedEntry == null || !resumedEntry.getName().equals(entry.getPath())) {
+                LOGGER.info("Entry {} not found after resuming decompression, reading archive from the start", entry.getPath());
+                tin.close();
+
+                tin = createTarStream(entryOffset, false);
+                tin.getNextEntry();
+            }
 
             return tin;
         }
@@ -83,6 +83,7 @@ class TarEntryIterator implements ArchiveEntryIterator {
         entry.setOwner(tarEntry.getUserName());
         entry.setGroup(tarEntry.getGroupName());
         entry.setEntryObject(tarEntry);
+        entry.setOffset(tarEntry.getOffset());
 
         return entry;
     }
@@ -280,8 +280,8 @@ public class TarInputStream extends InputStream {
 
             // Offset of the current entry from the start of the archive,
             // allows to reposition the stream at the start of the entry
-            currEntry.setOffset(buffer.getCurrentBlockNum()*buffer.getBlockSize()
-                               + buffer.getCurrentRecordNum()*buffer.getRecordSize());
+            currEntry.setOffset((long)buffer.getCurrentBlockNum()*buffer.getBlockSize()
+                               + (long)buffer.getCurrentRecordNum()*buffer.getRecordSize());
 
             if (debug) {
                 System.err.println("TarInputStream: SET CURRENTRY '"
@@ -300,6 +300,10 @@ public class TarInputStream extends InputStream {
         }
 
         if (currEntry != null && currEntry.isGNULongNameEntry()) {
+            // The entry starts with the long name's header, repositioning the stream there allows the long name
+            // to be read again
+            long longNameOffset = currEntry.getOffset();
+
             // read in the name
             StringBuilder longName = new StringBuilder();
             int length;
@@ -318,6 +322,7 @@ public class TarInputStream extends InputStream {
                 longName.deleteCharAt(longName.length() - 1);
             }
             currEntry.setName(longName.toString());
+            currEntry.setOffset(longNameOffset);
         }
 
         return currEntry;
@@ -428,7 +433,7 @@ public class TarInputStream extends InputStream {
      * @throws IOException on error
      */
     private long skipBytes(long numToSkip) throws IOException {
-        int totalSkipped = 0;
+        long totalSkipped = 0;
 
         int recordSize = buffer.getRecordSize();
         int blockSize = buffer.getBlockSize();
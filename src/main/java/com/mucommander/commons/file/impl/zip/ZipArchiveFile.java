@@ -86,6 +86,19 @@ public class ZipArchiveFile extends AbstractRWArchiveFile {
         }
     }
 
+    /**
+     * Calls {@link #checkZipFile()} and returns the up-to-date ZipFile instance. This method is synchronized so that
+     * entry streams can be opened concurrently without holding this archive's lock while the stream is being created.
+     *
+     * @return the up-to-date ZipFile instance
+     * @throws IOException if an error occurred while reloading
+     */
+    private synchronized ZipFile getUpToDateZipFile() throws IOException, UnsupportedFileOperationException {
+        checkZipFile();
+
+        return zipFile;
+    }
+
     /**
      * Declare the underlying Zip file as up-to-date. Calling this method after the Zip file has been modified prevents
      * {@link #checkZipFile()} from being reloaded.
@@ -188,17 +201,29 @@ public class ZipArchiveFile extends AbstractRWArchiveFile {
     }
 
 
+    /**
+     * Returns <code>true</code> if the underlying file has random read access, in which case entries are read with
+     * {@link ZipFile#getInputStream(ZipEntry)}, which supports concurrent reads.
+     *
+     * @return true if entries can be read concurrently
+     */
     @Override
-    public synchronized InputStream getEntryInputStream(ArchiveEntry entry, ArchiveEntryIterator entryIterator) throws IOException, UnsupportedFileOperationException {
-        // If the underlying AbstractFile has random read access, use our own ZipFile implementation to read the entry
+    public boolean isConcurrentEntryReadSupported() {
+        return file.isFileOperationSupported(FileOperation.RANDOM_READ_FILE);
+    }
+
+    @Override
+    public InputStream getEntryInputStream(ArchiveEntry entry, ArchiveEntryIterator entryIterator) throws IOException, UnsupportedFileOperationException {
+        // If the underlying AbstractFile has random read access, use our own ZipFile implementation to read the entry.
+        // ZipFile#getInputStream is thread-safe, so entries can be read concurrently.
         if (file.isFileOperationSupported(FileOperation.RANDOM_READ_FILE)) {
-            checkZipFile();
+            ZipFile upToDateZipFile = getUpToDateZipFile();
 
             ZipEntry zipEntry = (com.mucommander.commons.file.impl.zip.provider.ZipEntry)entry.getEntryObject();
             if(zipEntry==null)  // Should not normally happen
                 throw new IOException();
 
-            return zipFile.getInputStream(zipEntry);
+            return upToDateZipFile.getInputStream(zipEntry);
         }
         // If the underlying AbstractFile doesn't have random read access, use java.util.InputStream to
         // read the entry. This is much slower than the former method as the file cannot be seeked and needs
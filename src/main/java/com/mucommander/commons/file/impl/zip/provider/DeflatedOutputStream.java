@@ -84,19 +84,30 @@ public class DeflatedOutputStream extends ZipEntryOutputStream {
         }
     }
 
+    /**
+     * Finishes writing the DEFLATED-compressed data, see {@link #finishDeflate()}.
+     *
+     * @throws IOException if an I/O occurred
+     */
+    @Override
+    public void finish() throws IOException {
+        finishDeflate();
+    }
+
 
     /////////////////////////////////////////
     // ZipEntryOutputStream implementation //
     /////////////////////////////////////////
 
     @Override
-    public int getTotalIn() {
-        return deflater.getTotalIn();
+    public long getTotalIn() {
+        // Deflater#getTotalIn() overflows past 2GB
+        return deflater.getBytesRead();
     }
 
     @Override
-    public int getTotalOut() {
-        return deflater.getTotalOut();
+    public long getTotalOut() {
+        return deflater.getBytesWritten();
     }
 
 
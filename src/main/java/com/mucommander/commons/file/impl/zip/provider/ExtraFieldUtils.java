@@ -44,6 +44,7 @@ public class ExtraFieldUtils {
     static {
         register(AsiExtraField.class);
         register(JarMarker.class);
+        register(Zip64ExtendedInformationExtraField.class);
     }
 
     /**
@@ -0,0 +1,107 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2010 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.commons.file.impl.zip.provider;
+
+import com.mucommander.commons.io.ParallelDeflater;
+import com.mucommander.commons.io.ParallelDeflaterOutputStream;
+
+import java.io.IOException;
+
+/**
+ * ParallelDeflatedOutputStream compresses data using the DEFLATED compression method, with the threads of a
+ * {@link ParallelDeflater}.
+ *
+ * <p>Unlike {@link DeflatedOutputStream}, compressed data is written asynchronously to the underlying stream:
+ * {@link #getTotalOut()} returns the entry's compressed size only once all the entry's blocks have been written, that
+ * is from a task submitted with {@link ParallelDeflater#runInOrder(ParallelDeflater.OrderedTask)} after the entry has
+ * been {@link #finish() finished}.</p>
+ */
+public class ParallelDeflatedOutputStream extends ZipEntryOutputStream {
+
+    /** The stream that compresses the entry's data */
+    private final ParallelDeflaterOutputStream dout;
+
+
+    /**
+     * Creates a new <code>ParallelDeflatedOutputStream</code> that compresses data with the given
+     * <code>ParallelDeflater</code> and compression level, and automatically updates the CRC32 checksum.
+     *
+     * @param deflater the ParallelDeflater that compresses data
+     * @param level the compression level
+     */
+    public ParallelDeflatedOutputStream(ParallelDeflater deflater, int level) {
+        super(null, ZipConstants.DEFLATED);
+
+        this.dout = deflater.createOutputStream(level);
+    }
+
+
+    /////////////////////////////////////////
+    // ZipEntryOutputStream implementation //
+    /////////////////////////////////////////
+
+    @Override
+    public long getTotalIn() {
+        return dout.getBytesRead();
+    }
+
+    @Override
+    public long getTotalOut() {
+        return dout.getBytesWritten();
+    }
+
+    /**
+     * Submits the last block of the entry's data, without waiting for it to be compressed.
+     *
+     * @throws IOException if an I/O occurred
+     */
+    @Override
+    public void finish() throws IOException {
+        dout.finish();
+    }
+
+
+    /////////////////////////////////
+    // OutputStream implementation //
+    /////////////////////////////////
+
+    @Override
+    public void write(byte[] b, int offset, int length) throws IOException {
+        dout.write(b, offset, length);
+        crc.update(b, offset, length);
+    }
+
+    /**
+     * Overridden as there is no underlying stream to flush: compressed data is written by the
+     * <code>ParallelDeflater</code>.
+     */
+    @Override
+    public void flush() throws IOException {
+    }
+
+    /**
+     * Completes writing the entry <b>without</b> closing the underlying <code>OutputStream</code>.
+     *
+     * @throws IOException if an I/O occurred
+     */
+    @Override
+    public void close() throws IOException {
+        finish();
+    }
+}
@@ -0,0 +1,216 @@
+/**
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2010 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.mucommander.commons.file.impl.zip.provider;
+
+import java.util.zip.ZipException;
+
+/**
+ * The Zip64 extended information extra field (header ID <code>0x0001</code>), which holds the sizes and local file
+ * header offset of an entry that do not fit in the Zip32 fields of the local and central file headers.
+ *
+ * <p>The layout of this field differs between the local file header and the central directory:
+ * <ul>
+ *  <li>in the local file header, it always contains both the uncompressed and the compressed size.</li>
+ *  <li>in the central directory, it contains, in this order, only the uncompressed size, compressed size and local
+ * file header offset whose Zip32 field is set to <code>0xFFFFFFFF</code>.</li>
+ * </ul>
+ * Since {@link ExtraFieldUtils#parse(byte[])} parses extra fields without knowing where they come from,
+ * the data is first parsed with the local file header layout, and must be parsed again with
+ * {@link #parseCentralDirectoryData(boolean, boolean, boolean)} when it comes from the central directory.</p>
+ */
+public class Zip64ExtendedInformationExtraField implements ZipExtraField {
+
+    /** Header ID of the Zip64 extended information extra field */
+    public static final ZipShort HEADER_ID = new ZipShort(0x0001);
+
+    /** Length of the field in the local file header: uncompressed and compressed sizes */
+    private static final int LOCAL_FILE_DATA_LENGTH = 16;
+
+    /** Uncompressed size of the entry */
+    private long size;
+
+    /** Compressed size of the entry */
+    private long compressedSize;
+
+    /** Offset to the local file header of the entry */
+    private long headerOffset;
+
+    /** Tell which values are included in the central directory */
+    private boolean centralSize, centralCompressedSize, centralHeaderOffset;
+
+    /** Raw data this field was parsed from, null if it wasn't parsed */
+    private byte[] rawData;
+
+    /** No-arg constructor */
+    public Zip64ExtendedInformationExtraField() {
+    }
+
+    /**
+     * Returns the uncompressed size of the entry.
+     *
+     * @return the uncompressed size of the entry
+     */
+    public long getSize() {
+        return size;
+    }
+
+    /**
+     * Sets the uncompressed size of the entry.
+     *
+     * @param size the uncompressed size of the entry
+     */
+    public void setSize(long size) {
+        this.size = size;
+    }
+
+    /**
+     * Returns the compressed size of the entry.
+     *
+     * @return the compressed size of the entry
+     */
+    public long getCompressedSize() {
+        return compressedSize;
+    }
+
+    /**
+     * Sets the compressed size of the entry.
+     *
+     * @param compressedSize the compressed size of the entry
+     */
+    public void setCompressedSize(long compressedSize) {
+        this.compressedSize = compressedSize;
+    }
+
+    /**
+     * Returns the offset to the local file header of the entry.
+     *
+     * @return the offset to the local file header of the entry
+     */
+    public long getHeaderOffset() {
+        return headerOffset;
+    }
+
+    /**
+     * Sets the offset to the local file header of the entry.
+     *
+     * @param headerOffset the offset to the local file header of the entry
+     */
+    public void setHeaderOffset(long headerOffset) {
+        this.headerOffset = headerOffset;
+    }
+
+    /**
+     * Specifies which values are included in the central directory: those whose Zip32 field in the central file header
+     * is set to <code>0xFFFFFFFF</code>.
+     *
+     * @param size true if the uncompressed size is included
+     * @param compressedSize true if the compressed size is included
+     * @param headerOffset true if the local file header offset is included
+     */
+    public void setCentralDirectoryValues(boolean size, boolean compressedSize, boolean headerOffset) {
+        this.centralSize = size;
+        this.centralCompressedSize = compressedSize;
+        this.centralHeaderOffset = headerOffset;
+    }
+
+    /**
+     * Parses the data this field was created from as central directory data, containing only the values whose
+     * Zip32 field in the central file header is set to <code>0xFFFFFFFF</code>.
+     *
+     * @param size true if the uncompressed size is included
+     * @param compressedSize true if the compressed size is included
+     * @param headerOffset true if the local file header offset is included
+     * @throws ZipException if the data is too short to contain the values
+     */
+    public void parseCentralDirectoryData(boolean size, boolean compressedSize, boolean headerOffset) throws ZipException {
+        setCentralDirectoryValues(size, compressedSize, headerOffset);
+        if(rawData==null)
+            return;
+
+        int expectedLength = (size?8:0) + (compressedSize?8:0) + (headerOffset?8:0);
+        if(rawData.length<expectedLength)
+            throw new ZipException("Zip64 extended information extra field is too short: "+rawData.length+" bytes, expected "+expectedLength);
+
+        int off = 0;
+        if(size) {
+            this.size = ZipEightByteInteger.getValue(rawData, off);
+            off += 8;
+        }
+        if(compressedSize) {
+            this.compressedSize = ZipEightByteInteger.getValue(rawData, off);
+            off += 8;
+        }
+        if(headerOffset)
+            this.headerOffset = ZipEightByteInteger.getValue(rawData, off);
+    }
+
+
+    ///////////////////////////////////
+    // ZipExtraField implementation //
+    ///////////////////////////////////
+
+    public ZipShort getHeaderId() {
+        return HEADER_ID;
+    }
+
+    public ZipShort getLocalFileDataLength() {
+        return new ZipShort(LOCAL_FILE_DATA_LENGTH);
+    }
+
+    public ZipShort getCentralDirectoryLength() {
+        return new ZipShort((centralSize?8:0) + (centralCompressedSize?8:0) + (centralHeaderOffset?8:0));
+    }
+
+    public byte[] getLocalFileDataData() {
+        byte[] data = new byte[LOCAL_FILE_DATA_LENGTH];
+        ZipEightByteInteger.getBytes(size, data, 0);
+        ZipEightByteInteger.getBytes(compressedSize, data, 8);
+
+        return data;
+    }
+
+    public byte[] getCentralDirectoryData() {
+        byte[] data = new byte[getCentralDirectoryLength().getValue()];
+        int off = 0;
+        if(centralSize) {
+            ZipEightByteInteger.getBytes(size, data, off);
+            off += 8;
+        }
+        if(centralCompressedSize) {
+            ZipEightByteInteger.getBytes(compressedSize, data, off);
+            off += 8;
+        }
+        if(centralHeaderOffset)
+            ZipEightByteInteger.getBytes(headerOffset, data, off);
+
+        return data;
+    }
+
+    public void parseFromLocalFileData(byte[] data, int offset, int length) throws ZipException {
+        rawData = new byte[length];
+        System.arraycopy(data, offset, rawData, 0, length);
+
+        // Some packers only include the sizes that do not fit in the local file header: parse what is there
+        if(length>=8)
+            size = ZipEightByteInteger.getValue(data, offset);
+        if(length>=16)
+            compressedSize = ZipEightByteInteger.getValue(data, offset+8);
+    }
+}
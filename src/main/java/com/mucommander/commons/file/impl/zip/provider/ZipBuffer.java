@@ -25,6 +25,7 @@ package com.mucommander.commons.file.impl.zip.provider;
  *
  * @see ZipShort#getBytes(int, byte[], int)
  * @see ZipLong#getBytes(long, byte[], int)
+ * @see ZipEightByteInteger#getBytes(long, byte[], int)
  * @author Maxence Bernard
  */
 public class ZipBuffer {
@@ -32,6 +33,9 @@ public class ZipBuffer {
     /**  2-byte buffer that can hold a Zip short value */
     byte[] shortBuffer = new byte[2];
 
-    /**  2-byte buffer that can hold a Zip long value */
+    /**  4-byte buffer that can hold a Zip long value */
     byte[] longBuffer = new byte[4];
+
+    /**  8-byte buffer that can hold a Zip64 eight-byte value */
+    byte[] eightByteBuffer = new byte[8];
 }
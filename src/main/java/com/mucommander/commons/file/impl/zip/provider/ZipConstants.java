@@ -54,6 +54,17 @@ public interface ZipConstants {
      * */
     public static final long MAX_ZIP32_SIZE = 4294967295l;
 
+    /**
+     * Value of the Zip32 size and offset fields whose actual value is stored in Zip64 structures, i.e. (2^32)-1.
+     */
+    static final long ZIP64_MAGIC = MAX_ZIP32_SIZE;
+
+    /**
+     * Value of the Zip32 number of entries fields whose actual value is stored in the Zip64 end of central directory
+     * record, i.e. (2^16)-1.
+     */
+    static final int ZIP64_MAGIC_SHORT = 0xFFFF;
+
     /**
      * Size of write buffers
      */
@@ -83,4 +94,14 @@ public interface ZipConstants {
      * End of central dir signature
      */
     static final byte[] EOCD_SIG = ZipLong.getBytes(0X06054B50L);
+
+    /**
+     * Zip64 end of central dir signature
+     */
+    static final byte[] ZIP64_EOCD_SIG = ZipLong.getBytes(0X06064B50L);
+
+    /**
+     * Zip64 end of central dir locator signature
+     */
+    static final byte[] ZIP64_EOCD_LOCATOR_SIG = ZipLong.getBytes(0X07064B50L);
 }
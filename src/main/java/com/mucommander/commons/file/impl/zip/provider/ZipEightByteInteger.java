@@ -0,0 +1,74 @@
+/**
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2010 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.mucommander.commons.file.impl.zip.provider;
+
+/**
+ * Utility class that converts eight byte integers, used by Zip64 structures, to and from the little endian byte order
+ * of Zip files. Unlike {@link ZipLong}, values are signed Java longs: Zip64 values greater than
+ * <code>Long.MAX_VALUE</code> are not supported.
+ *
+ * @see ZipLong
+ */
+public final class ZipEightByteInteger {
+
+    private ZipEightByteInteger() {
+    }
+
+    /**
+     * Converts the given long value as eight bytes in little endian byte order.
+     *
+     * @param value the long value to convert
+     * @return the converted value as a byte array
+     */
+    public static byte[] getBytes(long value) {
+        return getBytes(value, new byte[8], 0);
+    }
+
+    /**
+     * Converts the given long value as eight bytes in little endian byte order. The specified byte array is used to
+     * store the result, starting at the given offset. The returned byte array is the same as the given one.
+     *
+     * @param value the long value to convert
+     * @param result the byte array in which to store the value
+     * @param off offset at which to start writing the result in the array
+     * @return the converted value as a byte array
+     */
+    public static byte[] getBytes(long value, byte[] result, int off) {
+        for(int i=0; i<8; i++)
+            result[off+i] = (byte)(value >>> (8*i));
+
+        return result;
+    }
+
+    /**
+     * Returns the value as a Java long of the eight bytes starting at the given array offset.
+     *
+     * @param bytes the array of bytes
+     * @param offset the offset to start
+     * @return the corresponding Java long value
+     */
+    public static long getValue(byte[] bytes, int offset) {
+        long value = 0;
+        for(int i=7; i>=0; i--)
+            value = (value << 8) | (bytes[offset+i] & 0xFF);
+
+        return value;
+    }
+}
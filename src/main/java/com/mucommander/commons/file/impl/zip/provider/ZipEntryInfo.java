@@ -36,12 +36,16 @@ final class ZipEntryInfo {
     /** Offset to the local file header */
     long headerOffset = -1;
 
-    /** Offset to the start of file data */
-    long dataOffset = -1;
+    /** Offset to the start of file data. Volatile as it is lazily calculated by concurrent entry readers */
+    volatile long dataOffset = -1;
 
     /** <code>true</code> if this entry has a data descriptor in the Zip file */
     boolean hasDataDescriptor;
 
+    /** <code>true</code> if the local file header has a Zip64 extended information extra field, in which case the
+     * sizes in the data descriptor are 8-byte long */
+    boolean localZip64;
+
     /** The encoding used for filename and comment fields */
     String encoding;
 
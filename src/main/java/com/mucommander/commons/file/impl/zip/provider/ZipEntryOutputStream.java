@@ -90,6 +90,15 @@ public abstract class ZipEntryOutputStream extends OutputStream {
         return crc.getValue();
     }
 
+    /**
+     * Finishes writing the compressed data, <b>without</b> closing the underlying <code>OutputStream</code>. This method
+     * is called once all the entry's data has been written. This implementation does nothing.
+     *
+     * @throws IOException if an I/O error occurred
+     */
+    public void finish() throws IOException {
+    }
+
 
     /////////////////////////////////////////
     // Partial OutputStream implementation //
@@ -120,12 +129,12 @@ public abstract class ZipEntryOutputStream extends OutputStream {
      *
      * @return the uncompressed size of the data written so far
      */
-    public abstract int getTotalIn();
+    public abstract long getTotalIn();
 
     /**
      * Returns the compressed size of the data written so far.
      *
      * @return the compressed size of the data written so far
      */
-    public abstract int getTotalOut();
+    public abstract long getTotalOut();
 }
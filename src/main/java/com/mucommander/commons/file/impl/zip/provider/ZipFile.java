@@ -56,6 +56,8 @@ import java.util.zip.ZipException;
  *   <li>There is no <code>getName</code> method.</li>
  *   <li>There is no <code>close</code> method: underlying input and output streams are opened and closed automatically
  *    as they are needed.</li>
+ *   <li>{@link #getInputStream(ZipEntry)} can be called from several threads concurrently, and the returned streams
+ *    read independently from one another.</li>
  *   <li><code>entries</code> has been renamed to {@link #getEntries()} and returns an <code>Iterator</code> instead of
  * an <code>Enumeration</code>.</li>
  *   <li><code>size</code> has been renamed to {@link #getNbEntries()}.</li>
@@ -82,6 +84,18 @@ public class ZipFile implements ZipConstants {
     /** The currently opened RandomAccessInputStream to the zip file (may be null) */
     private RandomAccessOutputStream raos;
 
+    /** RandomAccessInputStream shared by the entry streams when it supports concurrent reads, null if none is open */
+    private RandomAccessInputStream sharedEntryRais;
+
+    /** Number of entry streams currently reading from {@link #sharedEntryRais} */
+    private int nbSharedEntryRaisUsers;
+
+    /** <code>true</code> once it is known that the archive file does not support concurrent reads */
+    private boolean exclusiveEntryReads;
+
+    /** Lock that guards the shared entry RandomAccessInputStream */
+    private final Object entryReadLock = new Object();
+
     /** Contains ZipEntry instances corresponding to the archive's entries, in the order they were found in the archive. */
     private Vector<ZipEntry> entries = new Vector<>();
 
@@ -156,6 +170,79 @@ public class ZipFile implements ZipConstants {
         }
     }
 
+    /**
+     * Returns a RandomAccessInputStream for reading an entry's data. If the archive file supports concurrent reads, the
+     * returned stream is shared with the other entry streams and must only be read with positional reads. In any case,
+     * the returned stream must be released with {@link #closeEntryRead(RandomAccessInputStream)}.
+     *
+     * @return a RandomAccessInputStream for reading an entry's data
+     * @throws IOException if an error occured while opening the zip file for random read access.
+     * @throws UnsupportedFileOperationException if a required operation is not supported by the underlying filesystem.
+     */
+    private RandomAccessInputStream openEntryRead() throws IOException, UnsupportedFileOperationException {
+        synchronized(entryReadLock) {
+            if(sharedEntryRais!=null) {
+                nbSharedEntryRaisUsers++;
+                return sharedEntryRais;
+            }
+
+            if(!exclusiveEntryReads) {
+                RandomAccessInputStream entryRais = file.getRandomAccessInputStream();
+                if(entryRais.isConcurrentReadSupported()) {
+                    sharedEntryRais = entryRais;
+                    nbSharedEntryRaisUsers = 1;
+                }
+                else {
+                    exclusiveEntryReads = true;
+                }
+
+                return entryRais;
+            }
+        }
+
+        // Each entry stream has its own RandomAccessInputStream, open it without holding the lock
+        return file.getRandomAccessInputStream();
+    }
+
+    /**
+     * Releases a RandomAccessInputStream that was returned by {@link #openEntryRead()}. The shared stream is closed
+     * when it is no longer used by any entry stream.
+     *
+     * @param entryRais the stream to release
+     * @throws IOException if an error occurred while closing the stream
+     */
+    private void closeEntryRead(RandomAccessInputStream entryRais) throws IOException {
+        synchronized(entryReadLock) {
+            if(entryRais==sharedEntryRais) {
+                if(--nbSharedEntryRaisUsers>0)
+                    return;
+
+                sharedEntryRais = null;
+            }
+        }
+
+        entryRais.close();
+    }
+
+    /**
+     * Reads exactly <code>b.length</code> bytes starting at the given position, using positional reads.
+     *
+     * @param in the stream to read from
+     * @param position the position at which to start reading
+     * @param b the buffer into which the data is read
+     * @throws IOException if an I/O error occurred or if the end of the stream was reached
+     */
+    private static void readFully(RandomAccessInputStream in, long position, byte b[]) throws IOException {
+        int off = 0;
+        while(off<b.length) {
+            int nbRead = in.read(position+off, b, off, b.length-off);
+            if(nbRead<0)
+                throw new EOFException();
+
+            off += nbRead;
+        }
+    }
+
     /**
      * Opens the zip file for random write access.
      *
@@ -255,6 +342,12 @@ public class ZipFile implements ZipConstants {
     /**
      * Returns an InputStream for reading the contents of the given entry.
      *
+     * <p>This method may be called from several threads concurrently. The returned streams are independent from one
+     * another: if the archive file supports concurrent reads (see
+     * {@link RandomAccessInputStream#isConcurrentReadSupported()}), they share a single
+     * <code>RandomAccessInputStream</code> which is closed when the last of them is closed. If not, each stream uses
+     * its own <code>RandomAccessInputStream</code>.</p>
+     *
      * @param ze the entry to get the stream for.
      * @return a stream to read the entry from.
      * @throws IOException if unable to create an input stream from the zipentry
@@ -267,17 +360,20 @@ public class ZipFile implements ZipConstants {
         if (entryInfo == null)
             throw new ZipException("Unknown entry: "+ze.getName());
 
-        openRead();
-        RandomAccessInputStream entryIn = this.rais;
+        RandomAccessInputStream entryIn = openEntryRead();
+        BoundedInputStream bis;
+        try {
+            // If data offset is -1 (not calculated yet), calculate it now
+            if (entryInfo.dataOffset == -1)
+                calculateDataOffset(entryIn, entryInfo);
 
-        // If data offset is -1 (not calculated yet), calculate it now
-        if (entryInfo.dataOffset == -1)
-            calculateDataOffset(entryInfo);
+            bis = new BoundedInputStream(entryIn, entryInfo.dataOffset, ze.getCompressedSize());
+        }
+        catch(IOException e) {
+            closeEntryRead(entryIn);
+            throw e;
+        }
 
-        this.rais = null;
-        
-        long start = entryInfo.dataOffset;
-        BoundedInputStream bis = new BoundedInputStream(entryIn, start, ze.getCompressedSize());
         switch (ze.getMethod()) {
             case ZipConstants.STORED:
                 return bis;
@@ -379,7 +475,7 @@ public class ZipFile implements ZipConstants {
 
                     // If data offset is -1 (not calculated yet), calculate it now
                     if (entryInfo.dataOffset == -1)
-                        calculateDataOffset(entryInfo);
+                        calculateDataOffset(rais, entryInfo);
 
                     // Zero out all bytes of the local file header+data for the deleted entry
                     // Note: the data descriptor (if any) is not erased, this would require some extra check and it is
@@ -457,11 +553,11 @@ public class ZipFile implements ZipConstants {
             final ZipEntryInfo entryInfo = new ZipEntryInfo();
             entryInfo.encoding = UTF_8;   // Always use UTF-8 for new entries
             entryInfo.headerOffset = centralDirectoryStart;
+            entry.setEntryInfo(entryInfo);
             entryInfo.dataOffset = entryInfo.headerOffset +
                                      ZipOutputStream.writeLocalFileHeader(entry, raos, entryInfo.encoding, false, zipBuffer);
 
             // Add the new entry to the internal lists
-            entry.setEntryInfo(entryInfo);
             entries.add(entry);
             nameMap.put(entry.getName(), entry);
 
@@ -610,10 +706,10 @@ public class ZipFile implements ZipConstants {
 
             // If data offset is -1 (not calculated yet), calculate it now
             if (currentEntryInfo.dataOffset == -1)
-                calculateDataOffset(currentEntryInfo);
+                calculateDataOffset(rais, currentEntryInfo);
 
             if(currentEntryInfo.headerOffset>0) {
-                StreamUtils.copyChunk(rais, raos, currentEntryInfo.headerOffset, 0, (currentEntryInfo.dataOffset- currentEntryInfo.headerOffset)+currentEntry.getCompressedSize());
+                StreamUtils.copyChunk(rais, raos, currentEntryInfo.headerOffset, 0, getLocalEntryLength(currentEntry));
                 shift = currentEntryInfo.headerOffset;
 
                 currentEntryInfo.headerOffset = 0;
@@ -631,19 +727,17 @@ public class ZipFile implements ZipConstants {
 
                 // If data offset is -1 (not calculated yet), calculate it now
                 if (currentEntryInfo.dataOffset == -1)
-                    calculateDataOffset(currentEntryInfo);
+                    calculateDataOffset(rais, currentEntryInfo);
 
-                // Calculate the offset to the end of the previous entry based on its data offset and compressed size
-                // and taking into account a potential data descriptor
-                long previousCompressedSize = previousEntry.getCompressedSize();
-                long previousEntryEnd = previousEntryInfo.dataOffset+previousCompressedSize;
-                if(previousEntryInfo.hasDataDescriptor)
-                    previousEntryEnd += 16;
+                // Calculate the offset to the end of the previous entry based on its local header offset, data
+                // offset and compressed size, taking into account a potential data descriptor
+                long previousEntryEnd = previousEntryInfo.headerOffset+getLocalEntryLength(previousEntry);
 
                 // Tests if there is some unused space between the 2 entries
                 if(previousEntryEnd < currentEntryInfo.headerOffset) {
-                    StreamUtils.copyChunk(rais, raos, currentEntryInfo.headerOffset, previousEntryInfo.dataOffset+previousCompressedSize, (currentEntryInfo.dataOffset- currentEntryInfo.headerOffset)+currentEntry.getCompressedSize());
-                    shift = currentEntryInfo.headerOffset - (previousEntryInfo.dataOffset+previousCompressedSize);
+                    // Move the entry along with its data descriptor (if any)
+                    StreamUtils.copyChunk(rais, raos, currentEntryInfo.headerOffset, previousEntryEnd, getLocalEntryLength(currentEntry));
+                    shift = currentEntryInfo.headerOffset - previousEntryEnd;
 
                     currentEntryInfo.headerOffset -= shift;
                     currentEntryInfo.dataOffset -= shift;
@@ -690,15 +784,33 @@ public class ZipFile implements ZipConstants {
     }
 
 
+    /**
+     * Returns the number of bytes the given entry occupies before the central directory: local file header, data and
+     * data descriptor (if any). The entry's data offset must have been calculated.
+     *
+     * @param ze the entry for which to return the length
+     * @return the number of bytes the entry occupies before the central directory
+     */
+    private static long getLocalEntryLength(ZipEntry ze) {
+        ZipEntryInfo entryInfo = ze.getEntryInfo();
+        long length = (entryInfo.dataOffset - entryInfo.headerOffset) + ze.getCompressedSize();
+        if(entryInfo.hasDataDescriptor)
+            length += ZipOutputStream.getDataDescriptorLength(ze);
+
+        return length;
+    }
+
     /**
      * Calulcates the data offset of the entry which starts at the given ZipEntryInfo.headerOffset and stores the result
-     * in ZipEntryInfo.dataOffset. After calling this method, the RandomAccessInputStream will be positionned at the
-     * beginning of the filename field.
+     * in ZipEntryInfo.dataOffset. The local file header's extra fields are looked up for a Zip64 extended information
+     * extra field, ZipEntryInfo.localZip64 is set accordingly. The local file header is read using positional reads,
+     * so this method may be called concurrently on a stream that supports it.
      *
+     * @param in the stream to read the local file header from
      * @param entryInfo the ZipEntryInfo object in which to store the data offset
      * @throws IOException if an unexpected I/O error occurred
      */
-    private void calculateDataOffset(ZipEntryInfo entryInfo) throws IOException {
+    private static void calculateDataOffset(RandomAccessInputStream in, ZipEntryInfo entryInfo) throws IOException {
         // Skip the following fields:
         //  local file header signature     4 bytes
         //  version needed to extract       2 bytes
@@ -712,17 +824,34 @@ public class ZipFile implements ZipConstants {
         // Total nb of bytes to skip:      26
 
         long dataOffset = entryInfo.headerOffset + 26;
-        rais.seek(dataOffset);
+
+        // Read the filename and extra field lengths (2 bytes each)
+        byte[] b = new byte[4];
+        readFully(in, dataOffset, b);
 
         // Advance the offset of the filename field's length (plus the filename length field: 2 bytes)
-        byte[] b = new byte[2];
-        rais.readFully(b);
-        dataOffset += 2 + ZipShort.getValue(b);
+        int fileNameLen = ZipShort.getValue(b, 0);
+        dataOffset += 2 + fileNameLen;
 
         // Advance the offset of the extra field's length (plus the extra field length field: 2 bytes)
-        rais.readFully(b);
-        dataOffset += 2 + ZipShort.getValue(b);
+        int extraLen = ZipShort.getValue(b, 2);
+        dataOffset += 2 + extraLen;
+
+        // Look for a Zip64 extended information extra field, which determines the layout of the data descriptor
+        byte[] extra = new byte[extraLen];
+        readFully(in, dataOffset - extraLen, extra);
+
+        boolean localZip64 = false;
+        int off = 0;
+        while(off+4<=extraLen) {
+            if(ZipShort.getValue(extra, off)==Zip64ExtendedInformationExtraField.HEADER_ID.getValue()) {
+                localZip64 = true;
+                break;
+            }
+            off += 4 + ZipShort.getValue(extra, off+2);
+        }
 
+        entryInfo.localZip64 = localZip64;
         entryInfo.dataOffset = dataOffset;
     }
 
@@ -869,6 +998,24 @@ public class ZipFile implements ZipConstants {
             rais.readFully(extra);
             ze.setExtra(extra);
 
+            // Values that do not fit in the Zip32 fields are stored in the Zip64 extended information extra field
+            boolean zip64Size = ze.getSize()==ZIP64_MAGIC;
+            boolean zip64CompressedSize = ze.getCompressedSize()==ZIP64_MAGIC;
+            boolean zip64Offset = entryInfo.headerOffset==ZIP64_MAGIC;
+            if(zip64Size || zip64CompressedSize || zip64Offset) {
+                Zip64ExtendedInformationExtraField zip64Field = getZip64ExtraField(ze);
+                if(zip64Field==null)
+                    throw new ZipException("Missing Zip64 extended information extra field");
+
+                zip64Field.parseCentralDirectoryData(zip64Size, zip64CompressedSize, zip64Offset);
+                if(zip64Size)
+                    ze.setSize(zip64Field.getSize());
+                if(zip64CompressedSize)
+                    ze.setCompressedSize(zip64Field.getCompressedSize());
+                if(zip64Offset)
+                    entryInfo.headerOffset = zip64Field.getHeaderOffset();
+            }
+
             // Read comment bytes
             byte[] comment = new byte[commentLen];
             rais.readFully(comment);
@@ -925,6 +1072,21 @@ public class ZipFile implements ZipConstants {
         }
     }
 
+    /**
+     * Returns the Zip64 extended information extra field of the given entry, <code>null</code> if it has none.
+     *
+     * @param ze the entry for which to return the Zip64 extended information extra field
+     * @return the entry's Zip64 extended information extra field, <code>null</code> if it has none
+     */
+    private static Zip64ExtendedInformationExtraField getZip64ExtraField(ZipEntry ze) {
+        for(ZipExtraField field : ze.getExtraFields()) {
+            if(field instanceof Zip64ExtendedInformationExtraField)
+                return (Zip64ExtendedInformationExtraField)field;
+        }
+
+        return null;
+    }
+
     /**
      * Sets the given filename in the ZipEntry.
      *
@@ -1003,10 +1165,42 @@ public class ZipFile implements ZipConstants {
         /* the central dir                 */ + 2
         /* size of the central directory   */ + 4;
 
+    /** Size of the Zip64 End Of Central Directory locator, which immediately precedes the End Of Central Directory */
+    private static final int ZIP64_EOCD_LOCATOR_SIZE =
+        /* zip64 end of central dir locator */
+        /* signature                        */ 4
+        /* number of the disk with the      */
+        /* start of the zip64 end of        */
+        /* central directory                */ + 4
+        /* relative offset of the zip64     */
+        /* end of central directory record  */ + 8
+        /* total number of disks            */ + 4;
+
+    /** Size of the Zip64 End Of Central Directory record, without extensible data */
+    private static final int ZIP64_EOCD_SIZE =
+        /* zip64 end of central dir         */
+        /* signature                        */ 4
+        /* size of zip64 end of central     */
+        /* directory record                 */ + 8
+        /* version made by                  */ + 2
+        /* version needed to extract        */ + 2
+        /* number of this disk              */ + 4
+        /* number of the disk with the      */
+        /* start of the central directory   */ + 4
+        /* total number of entries in the   */
+        /* central directory on this disk   */ + 8
+        /* total number of entries in the   */
+        /* central directory                */ + 8
+        /* size of the central directory    */ + 8
+        /* offset of start of central       */
+        /* directory with respect to        */
+        /* the starting disk number         */ + 8;
+
     /**
      * Searches for the end of central dir record, parses
      * it and positions the stream at the first central directory
-     * record.
+     * record. If the archive has a Zip64 end of central dir record,
+     * the central directory offset is read from it.
      *
      * @throws IOException if an I/O error occurs
      * @throws ZipException if the end of central directory signature could not be found. This can be interpreted as the
@@ -1050,6 +1244,18 @@ public class ZipFile implements ZipConstants {
                 throw new ZipException("Invalid Zip stream (EOCD signature not found)");
             }
 
+            // Zip64 archives have a Zip64 EOCD locator right before the EOCD
+            byte[] zip64Locator = null;
+            if(off>=ZIP64_EOCD_LOCATOR_SIZE) {
+                zip64Locator = new byte[ZIP64_EOCD_LOCATOR_SIZE];
+                System.arraycopy(buf, off-ZIP64_EOCD_LOCATOR_SIZE, zip64Locator, 0, ZIP64_EOCD_LOCATOR_SIZE);
+            }
+            else if(length-bufLen+off>=ZIP64_EOCD_LOCATOR_SIZE) {
+                zip64Locator = new byte[ZIP64_EOCD_LOCATOR_SIZE];
+                rais.seek(length-bufLen+off-ZIP64_EOCD_LOCATOR_SIZE);
+                rais.readFully(zip64Locator);
+            }
+
             // Parse the offset to the central directory start
             off += CFD_LOCATOR_OFFSET;
             byte[] cdStart = new byte[4];
@@ -1071,13 +1277,46 @@ public class ZipFile implements ZipConstants {
             comment = getString(commentBytes, defaultEncoding!=null?defaultEncoding:EncodingDetector.detectEncoding(commentBytes));
 
             // Seek to the start of the central directory
-            rais.seek(ZipLong.getValue(cdStart));
+            long cdOffset = zip64Locator==null?-1:getZip64CentralDirectoryOffset(zip64Locator);
+            rais.seek(cdOffset==-1?ZipLong.getValue(cdStart):cdOffset);
         }
         finally {
             BufferPool.releaseByteArray(buf);
         }
     }
 
+    /**
+     * Returns the offset to the start of the central directory, as read from the Zip64 end of central dir record
+     * designated by the given Zip64 end of central dir locator. <code>-1</code> is returned if the given bytes are
+     * not a Zip64 end of central dir locator, i.e. if the archive is not a Zip64 one.
+     *
+     * @param zip64Locator the bytes that precede the end of central dir record
+     * @return the offset to the start of the central directory, <code>-1</code> if this is not a Zip64 archive
+     * @throws IOException if an I/O error occurs
+     * @throws ZipException if the locator does not point to a Zip64 end of central dir record
+     */
+    private long getZip64CentralDirectoryOffset(byte[] zip64Locator) throws IOException, ZipException {
+        for(int i=0; i<4; i++) {
+            if(zip64Locator[i]!=ZIP64_EOCD_LOCATOR_SIG[i])
+                return -1;
+        }
+
+        long zip64EocdOffset = ZipEightByteInteger.getValue(zip64Locator, 8);
+        if(zip64EocdOffset<0 || zip64EocdOffset+ZIP64_EOCD_SIZE>rais.getLength())
+            throw new ZipException("Invalid Zip64 EOCD offset");
+
+        byte[] zip64Eocd = new byte[ZIP64_EOCD_SIZE];
+        rais.seek(zip64EocdOffset);
+        rais.readFully(zip64Eocd);
+
+        for(int i=0; i<4; i++) {
+            if(zip64Eocd[i]!=ZIP64_EOCD_SIG[i])
+                throw new ZipException("Invalid Zip stream (Zip64 EOCD signature not found)");
+        }
+
+        return ZipEightByteInteger.getValue(zip64Eocd, ZIP64_EOCD_SIZE-8);
+    }
+
     /**
      * Creates and returns a String created using the given bytes and encoding.
      * If the specified encoding isn't supported, the platform's default encoding will be used.
@@ -1110,15 +1349,17 @@ public class ZipFile implements ZipConstants {
     
     /**
      * InputStream that delegates requests to the underlying RandomAccessFile, making sure that only bytes from a
-     * certain range can be read.
+     * certain range can be read. Bytes are read with positional reads, which allows the underlying stream to be shared
+     * with other entry streams if it supports concurrent reads.
      */
-    private static class BoundedInputStream extends InputStream {
+    private class BoundedInputStream extends InputStream {
 
         private final RandomAccessInputStream rais;
 
         private long remaining;
         private long loc;
         private boolean addDummyByte = false;
+        private boolean closed;
 
         BoundedInputStream(RandomAccessInputStream rais, long start, long remaining) {
             this.rais = rais;
@@ -1128,17 +1369,9 @@ public class ZipFile implements ZipConstants {
 
         @Override
         public int read() throws IOException {
-            if (remaining-- <= 0) {
-                if (addDummyByte) {
-                    addDummyByte = false;
-                    return 0;
-                }
-                return -1;
-            }
-            synchronized (rais) {
-                rais.seek(loc++);
-                return rais.read();
-            }
+            byte b[] = new byte[1];
+            int ret = read(b, 0, 1);
+            return ret<=0?-1:b[0]&0xFF;
         }
 
         @Override
@@ -1159,11 +1392,7 @@ public class ZipFile implements ZipConstants {
             if (len > remaining) {
                 len = (int) remaining;
             }
-            int ret;
-            synchronized (rais) {
-                rais.seek(loc);
-                ret = rais.read(b, off, len);
-            }
+            int ret = rais.read(loc, b, off, len);
             if (ret > 0) {
                 loc += ret;
                 remaining -= ret;
@@ -1173,7 +1402,11 @@ public class ZipFile implements ZipConstants {
 
         @Override
         public void close() throws IOException {
-            rais.close();
+            if (closed)
+                return;
+
+            closed = true;
+            closeEntryRead(rais);
         }
 
         /**
@@ -19,6 +19,7 @@
 package com.mucommander.commons.file.impl.zip.provider;
 
 import com.mucommander.commons.io.BufferPool;
+import com.mucommander.commons.io.ParallelDeflater;
 import com.mucommander.commons.io.RandomAccessOutputStream;
 
 import java.io.IOException;
@@ -33,6 +34,8 @@ import java.util.zip.ZipException;
  * functionality of this package, especially internal/external file attributes and extra fields with different layouts
  * for local file data and central directory entries.
  *
+ * <p>DEFLATED entries can be compressed by several threads, see {@link #setNbDeflaterThreads(int)}.</p>
+ *
  * <p>--------------------------------------------------------------------------------------------------------------<br>
  * <br>
  * This class is based off the <code>org.apache.tools.zip</code> package of the <i>Apache Ant</i> project. The Ant
@@ -67,6 +70,12 @@ public class ZipOutputStream extends OutputStream implements ZipConstants {
     /** Buffer used by Deflater to deflate data */
     protected byte[] deflaterBuf;
 
+    /** Number of threads that compress DEFLATED entries */
+    private int nbDeflaterThreads = 1;
+
+    /** Compresses DEFLATED entries when more than one thread is used, created on demand, null otherwise */
+    private ParallelDeflater parallelDeflater;
+
     /** List of zip entries written so far */
     private Vector<ZipEntry> entries;
 
@@ -97,12 +106,24 @@ public class ZipOutputStream extends OutputStream implements ZipConstants {
     /** 20 as ZipShort */
     private static final byte[] SHORT_20 = ZipShort.getBytes(20);
 
+    /** 45 as ZipShort */
+    private static final byte[] SHORT_45 = ZipShort.getBytes(45);
+
     /** 2048 as ZipShort */
     private static final byte[] SHORT_2048 = ZipShort.getBytes(2048);
 
     /** 2056 as ZipShort */
     private static final byte[] SHORT_2056 = ZipShort.getBytes(2056);
 
+    /** Zip64 magic value as ZipLong */
+    private static final byte[] LONG_ZIP64_MAGIC = ZipLong.getBytes(ZIP64_MAGIC);
+
+    /** 'Version needed to extract' of entries that use Zip64 extensions */
+    private static final int ZIP64_VERSION = 45;
+
+    /** Length of the Zip64 end of central directory record, minus the signature and size fields (12 bytes) */
+    private static final long ZIP64_EOCD_REMAINING_LEN = 44;
+
 
     /**
      * The underlying stream this ZipOutputStream writes zip-compressed data to.
@@ -174,6 +195,39 @@ public class ZipOutputStream extends OutputStream implements ZipConstants {
         return encoding==null || encoding.equalsIgnoreCase("UTF-8") || encoding.equalsIgnoreCase("UTF8");
     }
 
+    /**
+     * Sets the number of threads that compress DEFLATED entries. With more than one thread, the data of DEFLATED
+     * entries is split into blocks that are compressed concurrently, and the headers of the following entries are
+     * written as soon as the previous entries' data has been compressed, so that small entries are also compressed
+     * concurrently. The output is a standard Zip file.
+     *
+     * <p>Default is 1: entries are compressed by the thread writing to this stream.</p>
+     *
+     * @param nbThreads the number of threads that compress DEFLATED entries
+     */
+    public void setNbDeflaterThreads(int nbThreads) {
+        this.nbDeflaterThreads = Math.max(1, nbThreads);
+    }
+
+    /**
+     * Returns the number of threads that compress DEFLATED entries.
+     *
+     * @return the number of threads that compress DEFLATED entries
+     */
+    public int getNbDeflaterThreads() {
+        return nbDeflaterThreads;
+    }
+
+    /**
+     * Waits for the entries that are being compressed concurrently, if any, to be written to the underlying stream.
+     *
+     * @throws IOException if an error occurred while writing the entries
+     */
+    private void flushParallelDeflater() throws IOException {
+        if (parallelDeflater != null)
+            parallelDeflater.flush();
+    }
+
     /**
      * Finishs writing the contents and closes this as well as the
      * underlying stream.
@@ -182,6 +236,8 @@ public class ZipOutputStream extends OutputStream implements ZipConstants {
      */
     public void finish() throws IOException {
         closeEntry();
+        flushParallelDeflater();
+
         long cdOffset = written;
         int nbEntries = entries.size();
         ZipEntry ze;
@@ -204,11 +260,24 @@ public class ZipOutputStream extends OutputStream implements ZipConstants {
         if (entry == null)
             return;
 
-        finalizeEntryData(entry, zeos, out, !hasRandomAccess, zipBuffer);
-        written += entry.getCompressedSize();
+        if (zeos instanceof ParallelDeflatedOutputStream) {
+            // Finalize the entry once all its data has been compressed and written
+            final ZipEntry entry = this.entry;
+            final ZipEntryOutputStream zeos = this.zeos;
+            zeos.finish();
+            parallelDeflater.runInOrder(new ParallelDeflater.OrderedTask() {
+                public void run(OutputStream out) throws IOException {
+                    finalizeEntry(entry, zeos);
+                }
+            });
+
+            this.entry = null;
+            this.entryInfo = null;
+            this.zeos = null;
+            return;
+        }
 
-        if(!hasRandomAccess)
-            written += writeDataDescriptor(entry, out, zipBuffer);
+        finalizeEntry(entry, zeos);
 
         entry = null;
         entryInfo = null;
@@ -217,6 +286,18 @@ public class ZipOutputStream extends OutputStream implements ZipConstants {
         zeos = null;
     }
 
+    /**
+     * Writes the size and CRC information of the given entry once its data has been written, and updates the number
+     * of bytes written so far.
+     */
+    private void finalizeEntry(ZipEntry entry, ZipEntryOutputStream zeos) throws IOException {
+        finalizeEntryData(entry, zeos, out, !hasRandomAccess, zipBuffer);
+        written += entry.getCompressedSize();
+
+        if(!hasRandomAccess)
+            written += writeDataDescriptor(entry, out, zipBuffer);
+    }
+
     /**
      * Writes the size and CRC information of an entry. This method is to be called right after a file entry's data
      * has been written.
@@ -236,11 +317,10 @@ public class ZipOutputStream extends OutputStream implements ZipConstants {
         long crc = zeos.getCrc();
 
         if (entry.getMethod() == DEFLATED) {
-            ((DeflatedOutputStream)zeos).finishDeflate();
+            zeos.finish();
 
-            entry.setSize(adjustToLong(zeos.getTotalIn()));
-            long compressedSize = adjustToLong(zeos.getTotalOut());
-            entry.setCompressedSize(compressedSize);
+            entry.setSize(zeos.getTotalIn());
+            entry.setCompressedSize(zeos.getTotalOut());
             entry.setCrc(crc);
         }
         else {      // Method is STORED
@@ -251,21 +331,89 @@ public class ZipOutputStream extends OutputStream implements ZipConstants {
             entry.setCrc(crc);
         }
 
+        ZipEntryInfo entryInfo = entry.getEntryInfo();
+        boolean zip64 = requiresZip64(entry);
+
         // If random access output, write the local file header containing
         // the correct CRC and compressed/uncompressed sizes
         if (!useDataDescriptor) {
+            // The sizes can only be written if room for the Zip64 extra field was made in the local file header
+            if (zip64 && !entryInfo.localZip64)
+                throw new ZipException("Entry too large for a Zip32 local file header: "+entry.getName());
+
             RandomAccessOutputStream raos = (RandomAccessOutputStream)out;
 
             long save = raos.getOffset();
 
-            raos.seek(entry.getEntryInfo().headerOffset + 14);
+            if (zip64) {
+                raos.seek(entryInfo.headerOffset + 4);
+                raos.write(SHORT_45);
+            }
+
+            raos.seek(entryInfo.headerOffset + 14);
             raos.write(ZipLong.getBytes(entry.getCrc(), zipBuffer.longBuffer));
-            raos.write(ZipLong.getBytes(entry.getCompressedSize(), zipBuffer.longBuffer));
-            raos.write(ZipLong.getBytes(entry.getSize(), zipBuffer.longBuffer));
+            raos.write(zip64?LONG_ZIP64_MAGIC:ZipLong.getBytes(entry.getCompressedSize(), zipBuffer.longBuffer));
+            raos.write(zip64?LONG_ZIP64_MAGIC:ZipLong.getBytes(entry.getSize(), zipBuffer.longBuffer));
+
+            if (entryInfo.localZip64) {
+                // The Zip64 extra field is the last one of the local file header, its 16 data bytes end where the
+                // entry data starts
+                raos.seek(entryInfo.dataOffset - 16);
+                raos.write(ZipEightByteInteger.getBytes(entry.getSize(), zipBuffer.eightByteBuffer, 0));
+                raos.write(ZipEightByteInteger.getBytes(entry.getCompressedSize(), zipBuffer.eightByteBuffer, 0));
+            }
+
             raos.seek(save);
         }
     }
 
+    /**
+     * Returns <code>true</code> if the sizes of the given entry do not fit in Zip32 fields and must be stored in a
+     * Zip64 extended information extra field.
+     *
+     * @param ze the entry to test
+     * @return <code>true</code> if the sizes of the given entry require Zip64 extensions
+     */
+    protected static boolean requiresZip64(ZipEntry ze) {
+        return ze.getSize()>=ZIP64_MAGIC || ze.getCompressedSize()>=ZIP64_MAGIC;
+    }
+
+    /**
+     * Returns the length of the data descriptor that follows the data of the given entry: 24 bytes if its sizes are
+     * stored as Zip64 eight-byte values, 16 bytes otherwise. The entry's sizes must be known.
+     *
+     * @param ze the entry for which to return the data descriptor length
+     * @return the length of the entry's data descriptor
+     */
+    protected static long getDataDescriptorLength(ZipEntry ze) {
+        ZipEntryInfo entryInfo = ze.getEntryInfo();
+        return (entryInfo!=null && entryInfo.localZip64) || requiresZip64(ze) ? 24 : 16;
+    }
+
+    /**
+     * Returns the extra fields of the given entry, replacing any Zip64 extended information extra field it has with
+     * the given one. The given field is added last, <code>null</code> can be passed to simply remove the entry's
+     * Zip64 field.
+     *
+     * @param ze the entry whose extra fields to return
+     * @param zip64Field the Zip64 extended information extra field to add, <code>null</code> for none
+     * @return the extra fields to write for the given entry
+     */
+    private static ZipExtraField[] getExtraFields(ZipEntry ze, Zip64ExtendedInformationExtraField zip64Field) {
+        Vector<ZipExtraField> fields = new Vector<ZipExtraField>();
+        for (ZipExtraField field : ze.getExtraFields()) {
+            if (!field.getHeaderId().equals(Zip64ExtendedInformationExtraField.HEADER_ID))
+                fields.addElement(field);
+        }
+
+        if (zip64Field != null)
+            fields.addElement(zip64Field);
+
+        ZipExtraField[] result = new ZipExtraField[fields.size()];
+        fields.copyInto(result);
+        return result;
+    }
+
     /**
      * Start writing the given entry. The entry is written by calling the <code>write()</code> of this class.
      * When the entry has finished being written, {@link #closeEntry()} must be called.
@@ -293,6 +441,27 @@ public class ZipOutputStream extends OutputStream implements ZipConstants {
             entry.setTime(System.currentTimeMillis());
         }
 
+        if(entryMethod == DEFLATED && nbDeflaterThreads > 1) {
+            if(parallelDeflater == null)
+                parallelDeflater = new ParallelDeflater(out, nbDeflaterThreads);
+
+            zeos = new ParallelDeflatedOutputStream(parallelDeflater, level);
+
+            // Write the local file header once the previous entries have been compressed and written
+            final ZipEntry entry = this.entry;
+            final ZipEntryInfo entryInfo = this.entryInfo;
+            parallelDeflater.runInOrder(new ParallelDeflater.OrderedTask() {
+                public void run(OutputStream out) throws IOException {
+                    writeEntryLocalFileHeader(entry, entryInfo);
+                }
+            });
+
+            return;
+        }
+
+        // Entries that are not compressed concurrently are written directly, after the previous entries
+        flushParallelDeflater();
+
         if(entryMethod == DEFLATED) {
             deflater.reset();
             deflater.setLevel(level);
@@ -303,6 +472,14 @@ public class ZipOutputStream extends OutputStream implements ZipConstants {
             zeos = new StoredOutputStream(out);
         }
 
+        writeEntryLocalFileHeader(entry, entryInfo);
+    }
+
+    /**
+     * Writes the local file header of the given entry at the current position, and updates the entry's offsets and
+     * the number of bytes written so far.
+     */
+    private void writeEntryLocalFileHeader(ZipEntry entry, ZipEntryInfo entryInfo) throws IOException {
         entryInfo.headerOffset = written;
         written += writeLocalFileHeader(entry, out, encoding, !hasRandomAccess, zipBuffer);
         entryInfo.dataOffset = written;
@@ -348,6 +525,11 @@ public class ZipOutputStream extends OutputStream implements ZipConstants {
     /**
      * Writes the local file header entry.
      *
+     * <p>A Zip64 extended information extra field is added if the entry's size is known to require it or, when no
+     * data descriptor is used, if the size is not known yet: the actual sizes will then be written in it by
+     * {@link #finalizeEntryData(ZipEntry, ZipEntryOutputStream, OutputStream, boolean, ZipBuffer)}.
+     * {@link ZipEntryInfo#localZip64} is set accordingly if the entry has a {@link ZipEntryInfo}.</p>
+     *
      * @param ze the entry to write
      * @param out the OutputStream to write the header to
      * @param encoding the encoding to use for writing the entry's filename. If UTF-8 is used, the general purpose bit
@@ -364,9 +546,15 @@ public class ZipOutputStream extends OutputStream implements ZipConstants {
 
         int zipMethod = ze.getMethod();
 
+        boolean zip64 = requiresZip64(ze);
+        boolean localZip64 = zip64 || (!useDataDescriptor && ze.getSize()==-1);
+        ZipEntryInfo entryInfo = ze.getEntryInfo();
+        if (entryInfo != null)
+            entryInfo.localZip64 = localZip64;
+
         // version needed to extract
         // general purpose bit flag
-        writeVersionAndGPBF(out, encoding, useDataDescriptor);
+        writeVersionAndGPBF(out, encoding, useDataDescriptor, zip64);
         // nbWritten += 4;
 
         // compression method
@@ -383,7 +571,14 @@ public class ZipOutputStream extends OutputStream implements ZipConstants {
 
         // this information is not known at this stage so it will be set after the data has been written,
         // either in the data descriptor (if used), or here by seeking (requires random access)
-        out.write(LONG_TRIPLE_0);   // 12 zero bytes
+        if (zip64) {
+            out.write(LONG_0);
+            out.write(LONG_ZIP64_MAGIC);
+            out.write(LONG_ZIP64_MAGIC);
+        }
+        else {
+            out.write(LONG_TRIPLE_0);   // 12 zero bytes
+        }
         // written += 12;
 
         // file name length
@@ -392,7 +587,8 @@ public class ZipOutputStream extends OutputStream implements ZipConstants {
         // written += 2;
 
         // extra field length
-        byte[] extra = ze.getLocalFileDataExtra();
+        byte[] extra = ExtraFieldUtils.mergeLocalExtraFields(
+                getExtraFields(ze, localZip64?new Zip64ExtendedInformationExtraField():null));
         out.write(ZipShort.getBytes(extra.length, zipBuffer.shortBuffer));
         // written += 2;
 
@@ -413,21 +609,31 @@ public class ZipOutputStream extends OutputStream implements ZipConstants {
     /**
      * Writes the data descriptor, using the CRC, compressed and uncompressed size attributes contained in the
      * given ZipEntry.
-     * The length of the field is returned, it is always 16 bytes.
+     * The length of the field is returned: 24 bytes if the sizes are written as Zip64 eight-byte values, 16 bytes
+     * otherwise.
      *
      * @param ze the entry for which to write the data descriptor
      * @param out the OutputStream where to write the data descriptor to
      * @param zipBuffer a ZipBuffer instance used to convert integer values to Zip variants
-     * @return the number of bytes that were written, i.e. the size of the data descriptor (16 bytes)
+     * @return the number of bytes that were written, i.e. the size of the data descriptor (16 or 24 bytes)
      * @throws IOException if an I/O error occurred
+     * @see #getDataDescriptorLength(ZipEntry)
      */
     protected static long writeDataDescriptor(ZipEntry ze, OutputStream out, ZipBuffer zipBuffer) throws IOException {
         out.write(DD_SIG);
         out.write(ZipLong.getBytes(ze.getCrc(), zipBuffer.longBuffer));
-        out.write(ZipLong.getBytes(ze.getCompressedSize(), zipBuffer.longBuffer));
-        out.write(ZipLong.getBytes(ze.getSize(), zipBuffer.longBuffer));
 
-        return 16;
+        long length = getDataDescriptorLength(ze);
+        if (length == 24) {
+            out.write(ZipEightByteInteger.getBytes(ze.getCompressedSize(), zipBuffer.eightByteBuffer, 0));
+            out.write(ZipEightByteInteger.getBytes(ze.getSize(), zipBuffer.eightByteBuffer, 0));
+        }
+        else {
+            out.write(ZipLong.getBytes(ze.getCompressedSize(), zipBuffer.longBuffer));
+            out.write(ZipLong.getBytes(ze.getSize(), zipBuffer.longBuffer));
+        }
+
+        return length;
     }
 
     /**
@@ -441,7 +647,7 @@ public class ZipOutputStream extends OutputStream implements ZipConstants {
      * @throws IOException if an I/O error occurred
      */
     protected static long writeVersionMadeBy(ZipEntry ze, OutputStream out, ZipBuffer zipBuffer) throws IOException {
-        out.write(ZipShort.getBytes((ze.getPlatform() << 8) | 20, zipBuffer.shortBuffer));
+        out.write(ZipShort.getBytes((ze.getPlatform() << 8) | ZIP64_VERSION, zipBuffer.shortBuffer));
 
         return 2;
     }
@@ -459,6 +665,21 @@ public class ZipOutputStream extends OutputStream implements ZipConstants {
      * @return the number of bytes that were written, i.e. the size of the central file header 
      */
     protected static long writeCentralFileHeader(ZipEntry ze, OutputStream out, String encoding, long localFileHeaderOffset, boolean useDataDescriptor, ZipBuffer zipBuffer) throws IOException {
+        // Values that do not fit in the Zip32 fields are stored in a Zip64 extended information extra field
+        boolean zip64Size = ze.getSize()>=ZIP64_MAGIC;
+        boolean zip64CompressedSize = ze.getCompressedSize()>=ZIP64_MAGIC;
+        boolean zip64Offset = localFileHeaderOffset>=ZIP64_MAGIC;
+        boolean zip64 = zip64Size || zip64CompressedSize || zip64Offset;
+
+        Zip64ExtendedInformationExtraField zip64Field = null;
+        if (zip64) {
+            zip64Field = new Zip64ExtendedInformationExtraField();
+            zip64Field.setSize(ze.getSize());
+            zip64Field.setCompressedSize(ze.getCompressedSize());
+            zip64Field.setHeaderOffset(localFileHeaderOffset);
+            zip64Field.setCentralDirectoryValues(zip64Size, zip64CompressedSize, zip64Offset);
+        }
+
         out.write(CFH_SIG);
         // nbWritten += 4;
 
@@ -468,7 +689,7 @@ public class ZipOutputStream extends OutputStream implements ZipConstants {
 
         // version needed to extract
         // general purpose bit flag
-        writeVersionAndGPBF(out, encoding, useDataDescriptor);
+        writeVersionAndGPBF(out, encoding, useDataDescriptor, zip64);
         // nbWritten += 4;
 
         // compression method
@@ -483,8 +704,8 @@ public class ZipOutputStream extends OutputStream implements ZipConstants {
         // compressed length
         // uncompressed length
         out.write(ZipLong.getBytes(ze.getCrc(), zipBuffer.longBuffer));
-        out.write(ZipLong.getBytes(ze.getCompressedSize(), zipBuffer.longBuffer));
-        out.write(ZipLong.getBytes(ze.getSize(), zipBuffer.longBuffer));
+        out.write(zip64CompressedSize?LONG_ZIP64_MAGIC:ZipLong.getBytes(ze.getCompressedSize(), zipBuffer.longBuffer));
+        out.write(zip64Size?LONG_ZIP64_MAGIC:ZipLong.getBytes(ze.getSize(), zipBuffer.longBuffer));
         // nbWritten += 12;
 
         // file name length
@@ -493,7 +714,7 @@ public class ZipOutputStream extends OutputStream implements ZipConstants {
         // nbWritten += 2;
 
         // extra field length
-        byte[] extra = ze.getCentralDirectoryExtra();
+        byte[] extra = ExtraFieldUtils.mergeCentralExtraFields(getExtraFields(ze, zip64Field));
         out.write(ZipShort.getBytes(extra.length, zipBuffer.shortBuffer));
         // nbWritten += 2;
 
@@ -519,7 +740,7 @@ public class ZipOutputStream extends OutputStream implements ZipConstants {
         // nbWritten += 4;
 
         // relative offset of LFH
-        out.write(ZipLong.getBytes(localFileHeaderOffset, zipBuffer.longBuffer));
+        out.write(zip64Offset?LONG_ZIP64_MAGIC:ZipLong.getBytes(localFileHeaderOffset, zipBuffer.longBuffer));
         // nbWritten += 4;
 
         long nbWritten = 46;
@@ -546,10 +767,11 @@ public class ZipOutputStream extends OutputStream implements ZipConstants {
      * @param out the OutputStream to write the fields to
      * @param encoding the encoding used for writing the filename and optional comment
      * @param useDataDescriptor true if a data descriptor is used for the entry
+     * @param zip64 true if the entry uses Zip64 extensions
      * @return the number of bytes that were written, i.e. 4
      * @throws IOException if an I/O error occurred
      */
-    protected static long writeVersionAndGPBF(OutputStream out, String encoding, boolean useDataDescriptor) throws IOException {
+    protected static long writeVersionAndGPBF(OutputStream out, String encoding, boolean useDataDescriptor, boolean zip64) throws IOException {
         boolean isUTF8 = isUTF8(encoding);
 
         // General purpose bit flag :
@@ -557,8 +779,8 @@ public class ZipOutputStream extends OutputStream implements ZipConstants {
         // Bit 3 signals a data descriptor is used
 
         if (useDataDescriptor) {
-            // requires version 2 as we are going to store length info in the data descriptor
-            out.write(SHORT_20);
+            // requires version 2 as we are going to store length info in the data descriptor, 4.5 for Zip64
+            out.write(zip64?SHORT_45:SHORT_20);
 
             // General purpose bit flag
             out.write(isUTF8?
@@ -567,8 +789,8 @@ public class ZipOutputStream extends OutputStream implements ZipConstants {
             );
         }
         else {
-            // Version
-            out.write(SHORT_10);
+            // Version: 4.5 for Zip64
+            out.write(zip64?SHORT_45:SHORT_10);
 
             // General purpose bit flag
             out.write(isUTF8?
@@ -582,7 +804,10 @@ public class ZipOutputStream extends OutputStream implements ZipConstants {
 
 
     /**
-     * Writes the end of the central directory record.
+     * Writes the end of the central directory record. If the number of entries, the length or the offset of the central
+     * directory do not fit in the Zip32 record, the Zip64 end of central directory record and locator are written
+     * before it. In that case, <code>out</code> must be positioned right after the central directory,
+     * i.e. at <code>cdOffset+cdLength</code>.
      *
      * @param out the OutputStream to write the end of the central directory record to
      * @param nbEntries number of entries the Zip file contains
@@ -596,19 +821,55 @@ public class ZipOutputStream extends OutputStream implements ZipConstants {
     protected static void writeCentralDirectoryEnd(OutputStream out, int nbEntries, long cdLength, long cdOffset, String comment, String encoding, ZipBuffer zipBuffer)
             throws IOException {
 
+        boolean zip64 = nbEntries>=ZIP64_MAGIC_SHORT || cdLength>=ZIP64_MAGIC || cdOffset>=ZIP64_MAGIC;
+
+        if(zip64) {
+            long zip64EocdOffset = cdOffset + cdLength;
+
+            // Zip64 end of central directory record
+            out.write(ZIP64_EOCD_SIG);
+            out.write(ZipEightByteInteger.getBytes(ZIP64_EOCD_REMAINING_LEN, zipBuffer.eightByteBuffer, 0));
+
+            // version made by, version needed to extract
+            out.write(SHORT_45);
+            out.write(SHORT_45);
+
+            // disk numbers
+            out.write(LONG_0);
+            out.write(LONG_0);
+
+            // number of entries
+            ZipEightByteInteger.getBytes(nbEntries, zipBuffer.eightByteBuffer, 0);
+            out.write(zipBuffer.eightByteBuffer);
+            out.write(zipBuffer.eightByteBuffer);
+
+            // length and location of CD
+            out.write(ZipEightByteInteger.getBytes(cdLength, zipBuffer.eightByteBuffer, 0));
+            out.write(ZipEightByteInteger.getBytes(cdOffset, zipBuffer.eightByteBuffer, 0));
+
+            // Zip64 end of central directory locator
+            out.write(ZIP64_EOCD_LOCATOR_SIG);
+            // disk number
+            out.write(LONG_0);
+            // location of the Zip64 EOCD record
+            out.write(ZipEightByteInteger.getBytes(zip64EocdOffset, zipBuffer.eightByteBuffer, 0));
+            // total number of disks
+            out.write(ZipLong.getBytes(1, zipBuffer.longBuffer));
+        }
+
         out.write(EOCD_SIG);
 
         // disk numbers
         out.write(LONG_0);      // 2x SHORT_0
 
         // number of entries
-        ZipShort.getBytes(nbEntries, zipBuffer.shortBuffer);
+        ZipShort.getBytes(Math.min(nbEntries, ZIP64_MAGIC_SHORT), zipBuffer.shortBuffer);
         out.write(zipBuffer.shortBuffer);
         out.write(zipBuffer.shortBuffer);
 
         // length and location of CD
-        out.write(ZipLong.getBytes(cdLength, zipBuffer.longBuffer));
-        out.write(ZipLong.getBytes(cdOffset, zipBuffer.longBuffer));
+        out.write(ZipLong.getBytes(Math.min(cdLength, ZIP64_MAGIC), zipBuffer.longBuffer));
+        out.write(ZipLong.getBytes(Math.min(cdOffset, ZIP64_MAGIC), zipBuffer.longBuffer));
 
         // ZIP file comment
         byte[] data = getBytes(comment, encoding);
@@ -636,16 +897,6 @@ public class ZipOutputStream extends OutputStream implements ZipConstants {
         }
     }
 
-    /**
-     * Returns a long that is the unsigned intepretation of the given (signed) int.
-     *
-     * @param i the value to treat as unsigned int
-     * @return the unsigned int as a long
-     */
-    protected static long adjustToLong(int i) {
-        return i & 0xFFFFFFFFl;
-    }
-
 
     /////////////////////////////////
     // OutputStream implementation //
@@ -700,7 +951,15 @@ public class ZipOutputStream extends OutputStream implements ZipConstants {
      */
     @Override
     public void close() throws IOException {
-        finish();
+        try {
+            finish();
+        }
+        finally {
+            if(parallelDeflater != null) {
+                parallelDeflater.close();
+                parallelDeflater = null;
+            }
+        }
 
         if(deflaterBuf !=null) {         // Only if close() has not already been called already
             BufferPool.releaseByteArray(deflaterBuf);
@@ -23,6 +23,9 @@ import com.mucommander.commons.file.AbstractFile;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
 import java.util.WeakHashMap;
 
 /**
@@ -47,10 +50,9 @@ import java.util.WeakHashMap;
  * are checked. The lower this period is, the faster changes will be reported to listeners, but also the higher the
  * impact on I/O and CPU. This parameter should be carefully specified to avoid hogging resources excessively.</p>
  *
- * <p>Note that FileMonitor uses file attributes polling because the Java API doesn't currently provide any better way
- * to do detect file changes. If Java ever does provide a callback mechanism for detecting file changes, this class
- * will be modified to take advantage of it. Another possible improvement would be to add JNI hooks for platform-specific
- * filesystem events such as 'inotify' (Linux Kernel), 'kqueue' (BSD, Mac OS X), PAM (Solaris), ...</p>
+ * <p>Local files that can be watched by {@link FolderWatcher} are not polled at the poll period: their attributes
+ * are checked as soon as the file system reports a change to the file, and only every {@link #WATCHED_POLL_PERIOD}
+ * milliseconds otherwise, in case a change was not reported.</p>
  *
  * @see FileChangeListener
  * @author Maxence Bernard
@@ -74,6 +76,12 @@ public class FileMonitor implements FileMonitorConstants, Runnable {
      */
     private boolean isInitialized;
 
+    /** True when the file system has reported a change to the monitored file that has not been checked yet */
+    private boolean changeReported;
+
+    /** Poll period in milliseconds of files that are watched by {@link FolderWatcher} */
+    public final static long WATCHED_POLL_PERIOD = 10000;
+
     /** Registered FileChangeListener instances, stored as weak references */
     private WeakHashMap<FileChangeListener, ?> listeners = new WeakHashMap<FileChangeListener, Object>();
 
@@ -215,6 +223,8 @@ public class FileMonitor implements FileMonitorConstants, Runnable {
      */
     public synchronized void stopMonitoring() {
         monitorThread = null;
+        // Wake up the monitor thread if it is waiting for a change to be reported
+        notifyAll();
     }
 
     /**
@@ -255,6 +265,8 @@ public class FileMonitor implements FileMonitorConstants, Runnable {
         boolean lastIsDirectory = (attributes&IS_DIRECTORY_ATTRIBUTE)!=0 && file.isDirectory();
         boolean lastExists = (attributes&EXISTS_ATTRIBUTE)!=0 && file.exists();
 
+        List<FolderWatcher.Watch> watches = startWatching();
+
         synchronized(this) {
             // We are now ready to detect file changes, notify the thread that started this thread
             isInitialized = true;
@@ -311,12 +323,86 @@ public class FileMonitor implements FileMonitorConstants, Runnable {
                 fireFileChangeEvent(changedAttributes);
 
             // Get some well-deserved rest: sleep for the specified poll period minus the time we spent
-            // for this iteration
+            // for this iteration, or until a change is reported if the file is watched
             try {
-                Thread.sleep(Math.max(pollPeriod-(System.currentTimeMillis()-now), 0));
+                if(watches.isEmpty())
+                    Thread.sleep(Math.max(pollPeriod-(System.currentTimeMillis()-now), 0));
+                else
+                    waitForReportedChange(Math.max(pollPeriod, WATCHED_POLL_PERIOD)-(System.currentTimeMillis()-now));
             }
             catch(InterruptedException e) {
             }
         }
+
+        for(FolderWatcher.Watch watch : watches)
+            watch.cancel();
+    }
+
+    /**
+     * Watches the folder that contains the monitored file and, if the monitored file is a folder, the file itself.
+     * Returns an empty list if the file cannot be watched, in which case it must be polled.
+     */
+    private List<FolderWatcher.Watch> startWatching() {
+        List<FolderWatcher.Watch> watches = new ArrayList<>();
+        AbstractFile parent = file.getParent();
+        if(parent==null)
+            return watches;
+
+        final String name = file.getName();
+        FolderWatcher.Watch parentWatch = FolderWatcher.watch(parent, new FolderWatchListener() {
+            public void childrenChanged(AbstractFile folder, Set<String> created, Set<String> deleted, Set<String> modified) {
+                if(created.contains(name) || deleted.contains(name) || modified.contains(name))
+                    changeReported();
+            }
+
+            public void folderChanged(AbstractFile folder) {
+                changeReported();
+            }
+        });
+
+        if(parentWatch==null)
+            return watches;
+        watches.add(parentWatch);
+
+        // The date of a folder changes when its contents change
+        if(file.isDirectory()) {
+            FolderWatcher.Watch folderWatch = FolderWatcher.watch(file, new FolderWatchListener() {
+                public void childrenChanged(AbstractFile folder, Set<String> created, Set<String> deleted, Set<String> modified) {
+                    changeReported();
+                }
+
+                public void folderChanged(AbstractFile folder) {
+                    changeReported();
+                }
+            });
+
+            if(folderWatch!=null)
+                watches.add(folderWatch);
+        }
+
+        return watches;
+    }
+
+    /**
+     * Called by {@link FolderWatcher} when a change to the monitored file has been reported.
+     */
+    private synchronized void changeReported() {
+        changeReported = true;
+        notifyAll();
+    }
+
+    /**
+     * Waits until a change to the monitored file is reported, monitoring is stopped or the given number of
+     * milliseconds has elapsed.
+     */
+    private synchronized void waitForReportedChange(long timeout) throws InterruptedException {
+        long deadline = System.currentTimeMillis()+timeout;
+        long remaining = timeout;
+        while(!changeReported && monitorThread==Thread.currentThread() && remaining>0) {
+            wait(remaining);
+            remaining = deadline-System.currentTimeMillis();
+        }
+
+        changeReported = false;
     }
 }
@@ -0,0 +1,57 @@
+/**
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2010 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.commons.file.util;
+
+import com.mucommander.commons.file.AbstractFile;
+
+import java.util.Set;
+
+/**
+ * Interface to be implemented by classes that wish to be notified of changes made to the contents of a folder watched
+ * by {@link FolderWatcher}.
+ *
+ * <p>Methods of this interface are called from the {@link FolderWatcher} thread: implementations should return
+ * quickly and perform any lengthy operation in a separate thread.</p>
+ *
+ * @see FolderWatcher
+ */
+public interface FolderWatchListener {
+
+    /**
+     * This method is called when children of the watched folder have been created, deleted or modified. Changes that
+     * happen in a quick succession are reported at once, and cancel each other out when possible: a file that was
+     * created and deleted in the meantime is not reported, a file that was deleted and created again is reported as
+     * modified.
+     *
+     * @param folder the watched folder
+     * @param created names of the children that have been created
+     * @param deleted names of the children that have been deleted
+     * @param modified names of the children whose contents or attributes have been modified
+     */
+    public void childrenChanged(AbstractFile folder, Set<String> created, Set<String> deleted, Set<String> modified);
+
+    /**
+     * This method is called when the changes made to the watched folder could not be tracked individually, either
+     * because too many changes happened at once or because the folder itself has been deleted or cannot be watched
+     * anymore. The folder should be reloaded entirely.
+     *
+     * @param folder the watched folder
+     */
+    public void folderChanged(AbstractFile folder);
+}
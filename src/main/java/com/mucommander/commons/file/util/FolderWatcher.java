@@ -0,0 +1,363 @@
+/**
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2010 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.commons.file.util;
+
+import com.mucommander.commons.file.AbstractFile;
+import com.mucommander.commons.file.impl.local.LocalFile;
+import com.mucommander.commons.runtime.OsFamily;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <code>FolderWatcher</code> notifies {@link FolderWatchListener} instances of the changes made to the contents of
+ * local folders, using the operating system's file change notifications (<code>java.nio.file.WatchService</code>)
+ * rather than by polling the folders.
+ *
+ * <p>Only local folders can be watched, and only on platforms where the Java runtime uses native notifications:
+ * {@link #watch(AbstractFile, FolderWatchListener)} returns <code>null</code> for all other folders, in which case
+ * the caller should fall back to polling, using {@link FileMonitor} for instance.</p>
+ *
+ * <p>Bursts of changes are coalesced: the changes made to a folder are reported once no change has happened for
+ * {@link #QUIET_PERIOD} milliseconds, or at the latest {@link #MAX_DELAY} milliseconds after the first change.</p>
+ *
+ * <p>Implementation note: all folders are watched by one single thread, which is started when the first folder is
+ * watched. Listeners are notified from that thread.</p>
+ *
+ * @see FolderWatchListener
+ */
+public class FolderWatcher implements Runnable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(FolderWatcher.class);
+
+    /** Number of milliseconds without any change after which the pending changes of a folder are reported */
+    public final static long QUIET_PERIOD = 100;
+
+    /** Maximum number of milliseconds the changes of a folder are held back while changes keep on happening */
+    public final static long MAX_DELAY = 1000;
+
+    /** Singleton instance */
+    private final static FolderWatcher instance = new FolderWatcher();
+
+    /** The WatchService all folders are registered with, null until the first folder is watched */
+    private static WatchService watchService;
+
+    /** Watches registered for each WatchKey, guarded by FolderWatcher.class */
+    private final static Map<WatchKey, List<Watch>> watches = new HashMap<>();
+
+    /** Changes that have not been reported yet, only accessed by the watcher thread */
+    private final Map<WatchKey, PendingChanges> pendingChanges = new HashMap<>();
+
+
+    /**
+     * Returns <code>true</code> if the Java runtime uses native file change notifications on the current platform.
+     * On other platforms, <code>WatchService</code> polls folders at a low frequency, which is of no use here.
+     *
+     * @return true if folders can be watched on the current platform
+     */
+    public static boolean isSupported() {
+        return OsFamily.LINUX.isCurrent() || OsFamily.WINDOWS.isCurrent() || OsFamily.SOLARIS.isCurrent();
+    }
+
+    /**
+     * Starts watching the given folder for changes, notifying the specified listener of the changes made to its
+     * contents. Returns <code>null</code> if the folder cannot be watched: if it is not a local folder (an archive
+     * is not a folder in that respect), if the current platform is not {@link #isSupported() supported} or if an
+     * error occurred.
+     *
+     * <p>{@link Watch#cancel()} must be called once the folder doesn't need to be watched anymore.</p>
+     *
+     * @param folder the folder to watch
+     * @param listener the listener to notify of changes
+     * @return a Watch that allows to stop watching the folder, <code>null</code> if the folder cannot be watched
+     */
+    public static Watch watch(AbstractFile folder, FolderWatchListener listener) {
+        if(!isSupported() || folder.isArchive())
+            return null;
+
+        AbstractFile topAncestor = folder.getTopAncestor();
+        if(!(topAncestor instanceof LocalFile))
+            return null;
+
+        return watch(((File)topAncestor.getUnderlyingFileObject()).toPath(), folder, listener);
+    }
+
+    /**
+     * Starts watching the folder located at the given path. This method does not check whether the platform is
+     * supported.
+     *
+     * @param path the path of the folder to watch
+     * @param folder the folder to pass to the listener
+     * @param listener the listener to notify of changes
+     * @return a Watch that allows to stop watching the folder, <code>null</code> if the folder cannot be watched
+     */
+    static synchronized Watch watch(Path path, AbstractFile folder, FolderWatchListener listener) {
+        try {
+            if(watchService==null) {
+                watchService = FileSystems.getDefault().newWatchService();
+
+                Thread watcherThread = new Thread(instance, "FolderWatcher");
+                watcherThread.setDaemon(true);
+                watcherThread.start();
+            }
+
+            // Registering a folder that is already registered returns the same key
+            WatchKey key = path.register(watchService,
+                    StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_DELETE,
+                    StandardWatchEventKinds.ENTRY_MODIFY);
+
+            List<Watch> keyWatches = watches.get(key);
+            if(keyWatches==null) {
+                keyWatches = new ArrayList<>();
+                watches.put(key, keyWatches);
+            }
+
+            Watch watch = new Watch(key, folder, listener);
+            keyWatches.add(watch);
+
+            return watch;
+        }
+        catch(IOException | UnsupportedOperationException e) {
+            LOGGER.info("Cannot watch {}, error: {}", path, e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Removes the given watch, and stops watching the folder if there are no more watches for it.
+     */
+    private static synchronized void cancel(Watch watch) {
+        List<Watch> keyWatches = watches.get(watch.key);
+        if(keyWatches!=null && keyWatches.remove(watch) && keyWatches.isEmpty()) {
+            watches.remove(watch.key);
+            watch.key.cancel();
+        }
+    }
+
+    /**
+     * Returns a copy of the watches registered for the given key, removing them if <code>remove</code> is
+     * <code>true</code>.
+     */
+    private static synchronized List<Watch> getWatches(WatchKey key, boolean remove) {
+        List<Watch> keyWatches = remove?watches.remove(key):watches.get(key);
+
+        return keyWatches==null?new ArrayList<Watch>():new ArrayList<>(keyWatches);
+    }
+
+
+    /**
+     * Adds the events that are pending on the given key to the changes that have not been reported yet.
+     */
+    private void addEvents(WatchKey key, long now) {
+        PendingChanges changes = pendingChanges.get(key);
+        if(changes==null) {
+            changes = new PendingChanges(now);
+            pendingChanges.put(key, changes);
+        }
+        changes.lastEventTime = now;
+
+        for(WatchEvent<?> event: key.pollEvents()) {
+            WatchEvent.Kind<?> kind = event.kind();
+            if(kind==StandardWatchEventKinds.OVERFLOW) {
+                changes.overflow = true;
+                continue;
+            }
+
+            String name = event.context().toString();
+            if(kind==StandardWatchEventKinds.ENTRY_CREATE) {
+                if(changes.deleted.remove(name))
+                    changes.modified.add(name);
+                else
+                    changes.created.add(name);
+            }
+            else if(kind==StandardWatchEventKinds.ENTRY_DELETE) {
+                // A file that was created in the meantime is simply forgotten
+                if(!changes.created.remove(name)) {
+                    changes.modified.remove(name);
+                    changes.deleted.add(name);
+                }
+            }
+            else if(!changes.created.contains(name)) {
+                changes.modified.add(name);
+            }
+        }
+
+        // The key is not signalled anymore if it is invalid, i.e. if the folder has been deleted
+        if(!key.reset())
+            changes.invalid = true;
+    }
+
+    /**
+     * Reports the changes whose quiet period or maximum delay has expired and returns the number of milliseconds
+     * until the next pending changes are due, <code>-1</code> if there are no more pending changes.
+     */
+    private long reportDueChanges(long now) {
+        long nextDue = -1;
+
+        Iterator<Map.Entry<WatchKey, PendingChanges>> iterator = pendingChanges.entrySet().iterator();
+        while(iterator.hasNext()) {
+            Map.Entry<WatchKey, PendingChanges> entry = iterator.next();
+            PendingChanges changes = entry.getValue();
+
+            long due = changes.invalid
+                    ?now
+                    :Math.min(changes.lastEventTime+QUIET_PERIOD, changes.firstEventTime+MAX_DELAY);
+            if(due>now) {
+                nextDue = nextDue==-1?due-now:Math.min(nextDue, due-now);
+                continue;
+            }
+
+            iterator.remove();
+            report(entry.getKey(), changes);
+        }
+
+        return nextDue;
+    }
+
+    private void report(WatchKey key, PendingChanges changes) {
+        for(Watch watch: getWatches(key, changes.invalid)) {
+            try {
+                if(changes.overflow || changes.invalid)
+                    watch.listener.folderChanged(watch.folder);
+                else if(!changes.isEmpty())
+                    watch.listener.childrenChanged(watch.folder, Collections.unmodifiableSet(changes.created),
+                            Collections.unmodifiableSet(changes.deleted), Collections.unmodifiableSet(changes.modified));
+            }
+            catch(Throwable t) {
+                LOGGER.warn("Caught exception while reporting changes of "+watch.folder, t);
+            }
+        }
+    }
+
+
+    /////////////////////////////
+    // Runnable implementation //
+    /////////////////////////////
+
+    public void run() {
+        WatchService watchService;
+        synchronized(FolderWatcher.class) {
+            watchService = FolderWatcher.watchService;
+        }
+
+        long timeout = -1;
+        while(true) {
+            try {
+                // Wait for an event, or until pending changes are due
+                WatchKey key = timeout==-1
+                        ?watchService.take()
+                        :watchService.poll(timeout, TimeUnit.MILLISECONDS);
+
+                long now = System.currentTimeMillis();
+                while(key!=null) {
+                    addEvents(key, now);
+                    key = watchService.poll();
+                }
+
+                timeout = reportDueChanges(now);
+            }
+            catch(InterruptedException e) {
+                // Will loop again
+            }
+            catch(ClosedWatchServiceException e) {
+                return;
+            }
+        }
+    }
+
+
+    /**
+     * Changes made to a folder that have not been reported yet.
+     */
+    private static class PendingChanges {
+
+        private final Set<String> created = new HashSet<>();
+        private final Set<String> deleted = new HashSet<>();
+        private final Set<String> modified = new HashSet<>();
+
+        /** True if events have been lost */
+        private boolean overflow;
+        /** True if the folder cannot be watched anymore */
+        private boolean invalid;
+
+        private final long firstEventTime;
+        private long lastEventTime;
+
+        private PendingChanges(long now) {
+            this.firstEventTime = now;
+        }
+
+        private boolean isEmpty() {
+            return created.isEmpty() && deleted.isEmpty() && modified.isEmpty();
+        }
+    }
+
+
+    /**
+     * A folder being watched on behalf of a listener, as returned by
+     * {@link FolderWatcher#watch(AbstractFile, FolderWatchListener)}.
+     */
+    public static class Watch {
+
+        private final WatchKey key;
+        private final AbstractFile folder;
+        private final FolderWatchListener listener;
+
+        private Watch(WatchKey key, AbstractFile folder, FolderWatchListener listener) {
+            this.key = key;
+            this.folder = folder;
+            this.listener = listener;
+        }
+
+        /**
+         * Returns the watched folder.
+         *
+         * @return the watched folder
+         */
+        public AbstractFile getFolder() {
+            return folder;
+        }
+
+        /**
+         * Stops watching the folder. The listener may still be notified of changes that were about to be reported
+         * when this method was called.
+         */
+        public void cancel() {
+            FolderWatcher.cancel(this);
+        }
+    }
+}
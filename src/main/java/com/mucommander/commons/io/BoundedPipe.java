@@ -0,0 +1,404 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2010 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.commons.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * A pipe that connects a producer thread writing to an <code>OutputStream</code> with a consumer thread reading from
+ * an <code>InputStream</code>, using a fixed amount of memory.
+ *
+ * <p>Bytes are written into a fixed number of buffers, retrieved from {@link BufferPool}, which are handed off to the
+ * consumer once full. When all the buffers are waiting to be consumed, {@link #getOutputStream() writes} block until
+ * the consumer has caught up: a fast producer feeding a slow consumer is thus held back rather than buffering
+ * everything it produces on the heap, as a <code>CircularByteBuffer</code> of infinite size would do.</p>
+ *
+ * <p>The pipe ends as follows:
+ * <ul>
+ *   <li>when the producer closes the output stream, the consumer reads the remaining bytes and then the end of the
+ *   stream</li>
+ *   <li>when the producer calls {@link #fail(IOException)}, the consumer reads the remaining bytes and then gets the
+ *   exception</li>
+ *   <li>when the consumer closes the input stream before the end of the stream, pending and subsequent writes throw an
+ *   <code>IOException</code>, which allows the producer to abort its work.</li>
+ * </ul>
+ * The buffers are released to the {@link BufferPool} once both sides are done with them.</p>
+ *
+ * <p>Note: each stream should be used by a single thread. The input stream can however be closed from any thread to
+ * interrupt a blocked producer.</p>
+ *
+ * @see PipelinedInputStream
+ */
+public class BoundedPipe {
+
+    /** Default number of buffers of the pipe */
+    public final static int DEFAULT_NB_BUFFERS = 4;
+
+    /** Marker put in the free buffers queue to wake up the producer when the input stream is closed */
+    private final static byte CLOSED_MARKER[] = new byte[0];
+
+    /** Buffers waiting to be filled by the producer */
+    private final BlockingQueue<byte[]> freeBuffers;
+
+    /** Filled buffers waiting to be consumed, followed by an end marker once the producer is done. The number of
+     * buffers it contains is bounded by the number of free buffers, the queue itself does not need to be. */
+    private final BlockingQueue<Chunk> filledBuffers = new LinkedBlockingQueue<>();
+
+    /** All the buffers of the pipe, released to the BufferPool once both sides are done */
+    private final byte buffers[][];
+
+    private final PipeOutputStream out = new PipeOutputStream();
+
+    private final PipeInputStream in = new PipeInputStream();
+
+    /** True once the producer has closed the output stream or called {@link #fail(IOException)} */
+    private boolean producerDone;
+
+    /** True once the consumer has closed the input stream */
+    private volatile boolean consumerDone;
+
+    /** True once the buffers have been released to the BufferPool */
+    private boolean buffersReleased;
+
+
+    /**
+     * Creates a new BoundedPipe with {@link #DEFAULT_NB_BUFFERS} buffers of
+     * {@link BufferPool#getDefaultBufferSize() default size}.
+     */
+    public BoundedPipe() {
+        this(BufferPool.getDefaultBufferSize(), DEFAULT_NB_BUFFERS);
+    }
+
+    /**
+     * Creates a new BoundedPipe with the specified number of buffers of the specified size. The pipe holds at most
+     * <code>bufferSize*nbBuffers</code> bytes that have been written and not read yet.
+     *
+     * @param bufferSize size of each buffer, in bytes
+     * @param nbBuffers number of buffers of the pipe
+     */
+    public BoundedPipe(int bufferSize, int nbBuffers) {
+        if (bufferSize <= 0 || nbBuffers <= 0) {
+            throw new IllegalArgumentException("bufferSize and nbBuffers must be strictly positive");
+        }
+
+        // One more slot for the closed marker
+        this.freeBuffers = new ArrayBlockingQueue<>(nbBuffers + 1);
+        this.buffers = new byte[nbBuffers][];
+        for (int i = 0; i < nbBuffers; i++) {
+            buffers[i] = BufferPool.getByteArray(bufferSize);
+            freeBuffers.add(buffers[i]);
+        }
+    }
+
+    /**
+     * Returns the stream the producer writes to. Closing it signals the end of the stream to the consumer.
+     *
+     * @return the stream the producer writes to
+     */
+    public OutputStream getOutputStream() {
+        return out;
+    }
+
+    /**
+     * Returns the stream the consumer reads from. Closing it before the end of the stream has been reached makes
+     * the producer's writes fail.
+     *
+     * @return the stream the consumer reads from
+     */
+    public InputStream getInputStream() {
+        return in;
+    }
+
+    /**
+     * Returns <code>true</code> if the consumer has closed the input stream, in which case the producer can stop
+     * producing.
+     *
+     * @return true if the consumer has closed the input stream
+     */
+    public boolean isConsumerClosed() {
+        return consumerDone;
+    }
+
+    /**
+     * Ends the stream with the given exception, which is thrown to the consumer once it has read the bytes written
+     * before. Bytes that have been written but not flushed are discarded. This method has no effect if the output
+     * stream has already been closed.
+     *
+     * @param e the exception to throw to the consumer
+     */
+    public void fail(IOException e) {
+        endProducer(new Chunk(null, 0, e));
+    }
+
+    /**
+     * Ends the producer side by adding the given end marker to the queue, unless it has already ended.
+     */
+    private void endProducer(Chunk endMarker) {
+        synchronized (this) {
+            if (producerDone) {
+                return;
+            }
+            producerDone = true;
+        }
+
+        filledBuffers.offer(endMarker);
+        releaseBuffersIfDone();
+    }
+
+    /**
+     * Releases the buffers to the BufferPool if both the producer and the consumer are done with them.
+     */
+    private synchronized void releaseBuffersIfDone() {
+        if (producerDone && consumerDone && !buffersReleased) {
+            buffersReleased = true;
+            for (byte buffer[] : buffers) {
+                BufferPool.releaseByteArray(buffer);
+            }
+        }
+    }
+
+
+    ///////////////////
+    // Inner classes //
+    ///////////////////
+
+    /**
+     * A buffer filled by the producer, or an end marker when <code>buffer</code> is <code>null</code>.
+     */
+    private static class Chunk {
+        /** Marker added to the queue when the input stream is closed */
+        private final static Chunk CLOSED = new Chunk(null, 0, null);
+
+        private final byte buffer[];
+        private final int length;
+        /** Exception that ended the stream, null for a normal end of stream */
+        private final IOException exception;
+
+        private Chunk(byte buffer[], int length, IOException exception) {
+            this.buffer = buffer;
+            this.length = length;
+            this.exception = exception;
+        }
+    }
+
+    /**
+     * The producer side of the pipe.
+     */
+    private class PipeOutputStream extends OutputStream {
+
+        /** Buffer currently being filled, null if none */
+        private byte buffer[];
+
+        /** Number of bytes written to the current buffer */
+        private int length;
+
+        /**
+         * Returns a buffer with room left, waiting for the consumer to free one if necessary.
+         */
+        private byte[] getBuffer() throws IOException {
+            if (producerDone) {
+                throw new IOException("Stream closed");
+            }
+
+            if (buffer != null) {
+                if (length < buffer.length) {
+                    return buffer;
+                }
+                flushBuffer();
+            }
+
+            if (consumerDone) {
+                throw new IOException("Pipe closed by the reader");
+            }
+
+            try {
+                buffer = freeBuffers.take();
+            } catch (InterruptedException e) {
+                throw new InterruptedIOException();
+            }
+
+            if (buffer == CLOSED_MARKER) {
+                buffer = null;
+                throw new IOException("Pipe closed by the reader");
+            }
+            length = 0;
+
+            return buffer;
+        }
+
+        /**
+         * Hands the current buffer off to the consumer, if it contains any byte.
+         */
+        private void flushBuffer() {
+            if (buffer != null && length > 0) {
+                filledBuffers.offer(new Chunk(buffer, length, null));
+                buffer = null;
+            }
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            byte buffer[] = getBuffer();
+            buffer[length++] = (byte)b;
+        }
+
+        @Override
+        public void write(byte b[], int off, int len) throws IOException {
+            while (len > 0) {
+                byte buffer[] = getBuffer();
+                int nbWritten = Math.min(len, buffer.length - length);
+                System.arraycopy(b, off, buffer, length, nbWritten);
+                length += nbWritten;
+                off += nbWritten;
+                len -= nbWritten;
+            }
+        }
+
+        /**
+         * Hands the bytes written so far off to the consumer, without waiting for the current buffer to be full.
+         */
+        @Override
+        public void flush() throws IOException {
+            if (producerDone) {
+                throw new IOException("Stream closed");
+            }
+            flushBuffer();
+        }
+
+        @Override
+        public void close() {
+            if (!producerDone) {
+                flushBuffer();
+            }
+            endProducer(new Chunk(null, 0, null));
+        }
+    }
+
+    /**
+     * The consumer side of the pipe.
+     */
+    private class PipeInputStream extends InputStream {
+
+        /** Chunk currently being consumed, null if none */
+        private Chunk currentChunk;
+
+        /** Offset of the next byte to consume in the current chunk */
+        private int currentOffset;
+
+        /**
+         * Returns the chunk to consume bytes from, waiting for the producer to fill one if necessary.
+         * The returned chunk is either a chunk with bytes left to consume, or an end marker.
+         */
+        private Chunk getChunk() throws IOException {
+            if (currentChunk != null) {
+                if (currentChunk.buffer == null || currentOffset < currentChunk.length) {
+                    return currentChunk;
+                }
+
+                // Give the buffer back to the producer
+                freeBuffers.offer(currentChunk.buffer);
+                currentChunk = null;
+            }
+
+            if (consumerDone) {
+                throw new IOException("Stream closed");
+            }
+
+            try {
+                currentChunk = filledBuffers.take();
+            } catch (InterruptedException e) {
+                throw new InterruptedIOException();
+            }
+            currentOffset = 0;
+
+            return currentChunk;
+        }
+
+        /**
+         * Throws the exception held by the given end marker, if any, or returns <code>-1</code>.
+         */
+        private int endOfStream(Chunk chunk) throws IOException {
+            if (chunk == Chunk.CLOSED) {
+                throw new IOException("Stream closed");
+            }
+            if (chunk.exception != null) {
+                throw chunk.exception;
+            }
+            return -1;
+        }
+
+        @Override
+        public int read() throws IOException {
+            Chunk chunk = getChunk();
+            if (chunk.buffer == null) {
+                return endOfStream(chunk);
+            }
+
+            return chunk.buffer[currentOffset++] & 0xFF;
+        }
+
+        @Override
+        public int read(byte b[], int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+
+            Chunk chunk = getChunk();
+            if (chunk.buffer == null) {
+                return endOfStream(chunk);
+            }
+
+            int nbRead = Math.min(len, chunk.length - currentOffset);
+            System.arraycopy(chunk.buffer, currentOffset, b, off, nbRead);
+            currentOffset += nbRead;
+
+            return nbRead;
+        }
+
+        @Override
+        public int available() {
+            Chunk chunk = currentChunk;
+            return chunk == null || chunk.buffer == null ? 0 : chunk.length - currentOffset;
+        }
+
+        /**
+         * Closes this stream. If the producer is still writing, its pending and subsequent writes fail.
+         */
+        @Override
+        public void close() {
+            synchronized (BoundedPipe.this) {
+                if (consumerDone) {
+                    return;
+                }
+                consumerDone = true;
+            }
+
+            // Wake up the producer if it is waiting for a free buffer, and the consumer if it is waiting for a chunk
+            freeBuffers.offer(CLOSED_MARKER);
+            filledBuffers.offer(Chunk.CLOSED);
+            releaseBuffersIfDone();
+        }
+    }
+}
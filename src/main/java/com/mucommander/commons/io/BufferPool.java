@@ -21,9 +21,18 @@ package com.mucommander.commons.io;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.lang.ref.WeakReference;
+import java.nio.Buffer;
 import java.nio.ByteBuffer;
 import java.nio.CharBuffer;
-import java.util.Vector;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 /**
  * This class allows to share and reuse byte buffers to avoid excessive memory allocation and garbage collection.
@@ -46,7 +55,16 @@ import java.util.Vector;
  * </ul>
  * </p>
  *
- * <p>Note: this class is thread safe and thus can safely be used by concurrent threads.</p>
+ * <p>Buffers are grouped by size class, i.e. by buffer class and length, so that a buffer of the requested size is
+ * found without looking at the other buffers in the pool. Each thread keeps the last few buffers of a size class it
+ * has released in its own magazine, and gets them back without contending with other threads. Buffers that don't fit
+ * in a thread's magazine go to the size class's depot, a lock-free stack shared by all threads, where they can be
+ * picked by threads whose magazine is empty. The magazines of threads that have died are returned to the depot.</p>
+ *
+ * <p>Hit, miss and contention counters are available through {@link #getStatistics()}.</p>
+ *
+ * <p>Note: this class is thread safe and thus can safely be used by concurrent threads. No lock is held by
+ * <code>get*Buffer</code> and <code>release*Buffer</code> methods.</p>
  *
  * @author Maxence Bernard, Nicolas Rinaudo
  * @see com.mucommander.commons.io.StreamUtils
@@ -55,23 +73,41 @@ public class BufferPool {
     /** Logger used by this class. */
     private static final Logger LOGGER = LoggerFactory.getLogger(BufferPool.class);
 
-    /** List of BufferContainer instances that wraps available buffers */
-    private static Vector<BufferContainer> bufferContainers = new Vector<>();
-
     /** The initial default buffer size */
     public final static int INITIAL_DEFAULT_BUFFER_SIZE = 65536;
 
     /** Size of buffers returned by get*Buffer methods without a size argument */
-    public static int defaultBufferSize = INITIAL_DEFAULT_BUFFER_SIZE;
+    public static volatile int defaultBufferSize = INITIAL_DEFAULT_BUFFER_SIZE;
 
     /** The initial max pool size */
     public final static long INITIAL_POOL_LIMIT = 10485760;
 
     /** Maximum combined size of all pooled buffers, in bytes */
-    public static long maxPoolSize = INITIAL_POOL_LIMIT;
+    public static volatile long maxPoolSize = INITIAL_POOL_LIMIT;
+
+    /** Maximum number of buffers of a size class held by a thread's magazine */
+    public final static int MAGAZINE_CAPACITY = 4;
 
     /** Current combined size of all pooled buffers, in bytes */
-    public static long poolSize;
+    private final static AtomicLong poolSize = new AtomicLong();
+
+    /** Size classes, keyed by buffer class and length */
+    private final static ConcurrentMap<SizeClassKey, SizeClass> sizeClasses = new ConcurrentHashMap<>();
+
+    /** All the buffers that currently are in the pool, whether in a magazine or in a depot */
+    private final static ConcurrentMap<BufferKey, Boolean> pooledBuffers = new ConcurrentHashMap<>();
+
+    /** Number of get*Buffer calls that returned a pooled buffer */
+    private final static StripedCounter hits = new StripedCounter();
+
+    /** Number of get*Buffer calls that returned a pooled buffer taken from a shared depot */
+    private final static StripedCounter depotHits = new StripedCounter();
+
+    /** Number of get*Buffer calls that had to create a new buffer */
+    private final static StripedCounter misses = new StripedCounter();
+
+    /** Number of times the pool size had to be updated again because another thread updated it at the same time */
+    private final static StripedCounter contentions = new StripedCounter();
 
 
     /**
@@ -80,7 +116,7 @@ public class BufferPool {
      *
      * @return a byte array with a length of {@link #getDefaultBufferSize()}
      */
-    public static synchronized byte[] getByteArray() {
+    public static byte[] getByteArray() {
         return getByteArray(getDefaultBufferSize());
     }
 
@@ -98,7 +134,7 @@ public class BufferPool {
      * @param length length of the byte array
      * @return a byte array of the specified size
      */
-    public static synchronized byte[] getByteArray(int length) {
+    public static byte[] getByteArray(int length) {
         return (byte[])getBuffer(new ByteArrayFactory(), length);
     }
 
@@ -108,7 +144,7 @@ public class BufferPool {
      *
      * @return a char array with a length of {@link #getDefaultBufferSize()}
      */
-    public static synchronized char[] getCharArray() {
+    public static char[] getCharArray() {
         return getCharArray(getDefaultBufferSize());
     }
 
@@ -126,7 +162,7 @@ public class BufferPool {
      * @param length length of the char array
      * @return a char array of the specified length
      */
-    public static synchronized char[] getCharArray(int length) {
+    public static char[] getCharArray(int length) {
         return (char[])getBuffer(new CharArrayFactory(), length);
     }
 
@@ -136,7 +172,7 @@ public class BufferPool {
      *
      * @return a ByteBuffer with a capacity equal to {@link #getDefaultBufferSize()}
      */
-    public static synchronized ByteBuffer getByteBuffer() {
+    public static ByteBuffer getByteBuffer() {
         return getByteBuffer(getDefaultBufferSize());
     }
 
@@ -154,7 +190,7 @@ public class BufferPool {
      * @param capacity capacity of the ByteBuffer
      * @return a ByteBuffer with the specified capacity
      */
-    public static synchronized ByteBuffer getByteBuffer(int capacity) {
+    public static ByteBuffer getByteBuffer(int capacity) {
         return (ByteBuffer)getBuffer(new ByteBufferFactory(), capacity);
     }
 
@@ -165,7 +201,7 @@ public class BufferPool {
      *
      * @return a CharBuffer with a capacity equal to {@link #getDefaultBufferSize()}
      */
-    public static synchronized CharBuffer getCharBuffer() {
+    public static CharBuffer getCharBuffer() {
         return getCharBuffer(getDefaultBufferSize());
     }
 
@@ -183,7 +219,7 @@ public class BufferPool {
      * @param capacity capacity of the CharBuffer
      * @return a CharBuffer with the specified capacity
      */
-    public static synchronized CharBuffer getCharBuffer(int capacity) {
+    public static CharBuffer getCharBuffer(int capacity) {
         return (CharBuffer)getBuffer(new CharBufferFactory(), capacity);
     }
 
@@ -195,14 +231,14 @@ public class BufferPool {
      * @param factory BufferFactory used to identify the target buffer class and create a new buffer (if necessary)
      * @return a buffer with a size equal to {@link #getDefaultBufferSize()}
      */
-    public static synchronized Object getBuffer(BufferFactory factory) {
+    public static Object getBuffer(BufferFactory factory) {
         return getBuffer(factory, getDefaultBufferSize());
     }
 
     /**
-     * Returns a byte array of the specified size. This method first checks if a buffer the same size as the specified
-     * one and a class compatible with the specified factory exists in the pool. If one is found, it is removed from the
-     * pool and returned.
+     * Returns a buffer of the specified size. This method first checks if a buffer of the specified size that was
+     * released with a factory of the same buffer class exists in the pool. If one is found, it is removed from the
+     * pool and returned, cleared if it is an NIO buffer.
      * If not, a new instance is created and returned using {@link BufferFactory#newBuffer(int)}.
      *
      * <p>This method won't return the same buffer instance until it has been released with
@@ -212,28 +248,27 @@ public class BufferPool {
      * @param size size of the buffer
      * @return a buffer of the specified size
      */
-    public static synchronized Object getBuffer(BufferFactory factory, int size) {
-        int nbBuffers = bufferContainers.size();
-        BufferContainer bufferContainer;
-        Object buffer;
-
-        // Looks for a buffer container in the pool that matches the specified size and buffer class.
-        for(int i=0; i<nbBuffers; i++) {
-            bufferContainer = bufferContainers.elementAt(i);
-            buffer = bufferContainer.getBuffer();
-
-            // Caution: mind the difference between BufferContainer#getLength() and BufferContainer#getSize()
-            if(bufferContainer.getLength()==size && (factory.matchesBufferClass(buffer.getClass()))) {
-                bufferContainers.removeElementAt(i);
-                poolSize -= bufferContainer.getSize();
-                return buffer;
-            }
+    public static Object getBuffer(BufferFactory factory, int size) {
+        SizeClass sizeClass = sizeClasses.get(new SizeClassKey(factory.getBufferClass(), size));
+        Object buffer = sizeClass==null?null:sizeClass.take();
+
+        if(buffer==null) {
+            misses.increment();
+            LOGGER.trace("Creating new buffer with {} size={}", factory, size);
+
+            // No buffer with the same class and size found in the pool, create a new one and return it
+            return factory.newBuffer(size);
         }
 
-        LOGGER.trace("Creating new buffer with {} size=", factory, size);
+        pooledBuffers.remove(new BufferKey(buffer));
+        poolSize.addAndGet(-sizeClass.bufferSize);
+        hits.increment();
+
+        // NIO buffers are returned the way they were created, regardless of how they were released
+        if(buffer instanceof Buffer)
+            ((Buffer)buffer).clear();
 
-        // No buffer with the same class and size found in the pool, create a new one and return it
-        return factory.newBuffer(size);
+        return buffer;
     }
 
 
@@ -249,7 +284,7 @@ public class BufferPool {
      * @return <code>true</code> if the buffer was added to the pool, <code>false</code> if the buffer was already in the pool
      * @throws IllegalArgumentException if specified buffer is null
      */
-    public static synchronized boolean releaseByteArray(byte buffer[]) {
+    public static boolean releaseByteArray(byte buffer[]) {
         return releaseBuffer(buffer, new ByteArrayFactory());
     }
 
@@ -265,7 +300,7 @@ public class BufferPool {
      * @return <code>true</code> if the buffer was added to the pool, <code>false</code> if the buffer was already in the pool
      * @throws IllegalArgumentException if specified buffer is null
      */
-    public static synchronized boolean releaseCharArray(char buffer[]) {
+    public static boolean releaseCharArray(char buffer[]) {
         return releaseBuffer(buffer, new CharArrayFactory());
     }
 
@@ -281,7 +316,7 @@ public class BufferPool {
      * @return <code>true</code> if the buffer was added to the pool, <code>false</code> if the buffer was already in the pool
      * @throws IllegalArgumentException if specified buffer is null
      */
-    public static synchronized boolean releaseByteBuffer(ByteBuffer buffer) {
+    public static boolean releaseByteBuffer(ByteBuffer buffer) {
         return releaseBuffer(buffer, new ByteBufferFactory());
     }
 
@@ -297,7 +332,7 @@ public class BufferPool {
      * @return <code>true</code> if the buffer was added to the pool, <code>false</code> if the buffer was already in the pool
      * @throws IllegalArgumentException if specified buffer is null
      */
-    public static synchronized boolean releaseCharBuffer(CharBuffer buffer) {
+    public static boolean releaseCharBuffer(CharBuffer buffer) {
         return releaseBuffer(buffer, new CharBufferFactory());
     }
 
@@ -305,7 +340,8 @@ public class BufferPool {
      * Makes the given buffer available for further calls to {@link #getBuffer(com.mucommander.commons.io.BufferPool.BufferFactory,int)} with the same buffer
      * size and factory.
      * Returns <code>true</code> if the buffer was added to the pool, <code>false</code> if the buffer was already in 
-     * the pool or the pool size limit has been reached.
+     * the pool, if the pool size limit has been reached or if the factory does not
+     * {@link BufferFactory#isPoolable(Object) pool} this kind of buffer.
      *
      * <p>After calling this method, the given buffer instance <b>must not be used</b>, otherwise it could get
      * corrupted if other threads were using it.</p>
@@ -315,34 +351,70 @@ public class BufferPool {
      * @return <code>true</code> if the buffer was added to the pool, <code>false</code> if the buffer was already in the pool or the pool size limit has been reached
      * @throws IllegalArgumentException if specified buffer is null
      */
-    public static synchronized boolean releaseBuffer(Object buffer, BufferFactory factory) {
+    public static boolean releaseBuffer(Object buffer, BufferFactory factory) {
         if(buffer==null)
             throw new IllegalArgumentException("specified buffer is null");
 
-        BufferContainer bufferContainer = factory.newBufferContainer(buffer);
+        if(!factory.isPoolable(buffer))
+            return false;
 
-        if(bufferContainers.contains(bufferContainer)) {
+        BufferKey bufferKey = new BufferKey(buffer);
+        if(pooledBuffers.putIfAbsent(bufferKey, Boolean.TRUE)!=null) {
             LOGGER.info("Warning: specified buffer is already in the pool: {}", buffer);
             return false;
         }
 
+        BufferContainer bufferContainer = factory.newBufferContainer(buffer);
         long bufferSize = bufferContainer.getSize();        // size in bytes (!= length)
 
-        if(maxPoolSize!=-1 && poolSize+bufferSize>maxPoolSize) {
+        if(!reservePoolSize(bufferSize)) {
+            pooledBuffers.remove(bufferKey);
             LOGGER.info("Warning: maximum pool size reached, buffer not added to the pool: {}", buffer);
             return false;
         }
 
-        bufferContainers.add(bufferContainer);
-        poolSize += bufferSize;
+        getSizeClass(new SizeClassKey(factory.getBufferClass(), bufferContainer.getLength()), bufferSize).put(buffer);
 
         return true;
     }
 
+    /**
+     * Adds the given size to the pool size if it doesn't exceed the maximum pool size, and returns <code>true</code>
+     * if it does not.
+     */
+    private static boolean reservePoolSize(long bufferSize) {
+        while(true) {
+            long currentSize = poolSize.get();
+            long max = maxPoolSize;
+            if(max!=-1 && currentSize+bufferSize>max)
+                return false;
+
+            if(poolSize.compareAndSet(currentSize, currentSize+bufferSize))
+                return true;
+
+            contentions.increment();
+        }
+    }
+
+    /**
+     * Returns the size class with the given key, creating it if it doesn't exist yet.
+     */
+    private static SizeClass getSizeClass(SizeClassKey key, long bufferSize) {
+        SizeClass sizeClass = sizeClasses.get(key);
+        if(sizeClass==null) {
+            SizeClass newSizeClass = new SizeClass(bufferSize);
+            sizeClass = sizeClasses.putIfAbsent(key, newSizeClass);
+            if(sizeClass==null)
+                sizeClass = newSizeClass;
+        }
+
+        return sizeClass;
+    }
+
     /**
      * Returns <code>true</code> if the specified buffer is currently in the pool.
      *
-     * <p>Note that it is not necessary (and thus not recommended for performance reasons) to call this method before
+     * <p>Note that it is not necessary (and thus not recommended for performance reasons) to call this method before
      * calling <code>release*Buffer</code> as it already performs this test before adding a buffer to the pool.</p>
      *
      * @param buffer the buffer to look for in the pool
@@ -350,7 +422,7 @@ public class BufferPool {
      * @return <code>true</code> if the specified buffer is already in the pool
      */
     public static boolean containsBuffer(Object buffer, BufferFactory factory) {
-        return bufferContainers.contains(factory.newBufferContainer(buffer));
+        return pooledBuffers.containsKey(new BufferKey(buffer));
     }
 
 
@@ -361,7 +433,7 @@ public class BufferPool {
      * @return the number of buffers currently in the pool
      */
     public static int getBufferCount() {
-        return bufferContainers.size();
+        return pooledBuffers.size();
     }
 
     /**
@@ -372,17 +444,35 @@ public class BufferPool {
      * @return the number of buffers currently in the pool
      */
     public static int getBufferCount(BufferFactory factory) {
-        int count = 0;        
-        int nbBuffers = bufferContainers.size();
-        for(int i=0; i<nbBuffers; i++) {
-            if(factory.matchesBufferClass(bufferContainers.elementAt(i).getBuffer().getClass())) {
+        int count = 0;
+        for(BufferKey bufferKey : pooledBuffers.keySet()) {
+            if(factory.matchesBufferClass(bufferKey.buffer.getClass()))
                 count ++;
-            }
         }
 
         return count;
     }
 
+    /**
+     * Returns a snapshot of the pool's hit, miss and contention counters, accumulated since the pool was created or
+     * since the last call to {@link #resetStatistics()}. This method is provided for monitoring and debugging purposes.
+     *
+     * @return a snapshot of the pool's statistics
+     */
+    public static Statistics getStatistics() {
+        return new Statistics(hits.sum(), depotHits.sum(), misses.sum(), contentions.sum());
+    }
+
+    /**
+     * Resets the pool's hit, miss and contention counters to zero.
+     */
+    public static void resetStatistics() {
+        hits.reset();
+        depotHits.reset();
+        misses.reset();
+        contentions.reset();
+    }
+
     /**
      * Returns the default size of buffers returned by <code>get*Buffer</code> methods without a <code>size</code>
      * argument.
@@ -400,7 +490,7 @@ public class BufferPool {
      *
      * @param bufferSize the new buffer size
      */
-    public static synchronized void setDefaultBufferSize(int bufferSize) {
+    public static void setDefaultBufferSize(int bufferSize) {
         BufferPool.defaultBufferSize = bufferSize;
     }
 
@@ -411,7 +501,7 @@ public class BufferPool {
      * @return the combined size in bytes of all buffers that are currenty in the pool
      */
     public static long getPoolSize() {
-        return poolSize;
+        return poolSize.get();
     }
 
     /**
@@ -434,7 +524,7 @@ public class BufferPool {
      *
      * @param maxPoolSize the maximum combined size in bytes for all buffers in the pool
      */
-    public static synchronized void setMaxPoolSize(long maxPoolSize) {
+    public static void setMaxPoolSize(long maxPoolSize) {
         BufferPool.maxPoolSize = maxPoolSize;
     }
 
@@ -533,6 +623,18 @@ public class BufferPool {
          * @return the Class of buffer instances this factory creates
          */
         public abstract Class<?> getBufferClass();
+
+        /**
+         * Returns <code>true</code> if the given buffer can be added to the pool and returned by
+         * {@link BufferPool#getBuffer(BufferFactory, int)} in place of a buffer created by {@link #newBuffer(int)}.
+         * This implementation returns <code>true</code>.
+         *
+         * @param buffer the buffer to be released
+         * @return <code>true</code> if the buffer can be added to the pool
+         */
+        public boolean isPoolable(Object buffer) {
+            return true;
+        }
     }
 
     /**
@@ -597,9 +699,9 @@ public class BufferPool {
 
     /**
      * This class is a {@link BufferFactory} implementation for <code>java.nio.ByteBuffer</code> buffers.
-     * ByteBuffer instances created by {@link #newBuffer(int)} are direct ; the actually Class of those instances may be actually
-     * be <code>java.nio.DirectByteBuffer</code> and not <code>java.nio.ByteBuffer</code> as returned by
-     * {@link #getBufferClass()}.
+     * ByteBuffer instances created by {@link #newBuffer(int)} are direct, heap buffers are not added to the pool.
+     * The actual Class of those instances may be <code>java.nio.DirectByteBuffer</code> and not
+     * <code>java.nio.ByteBuffer</code> as returned by {@link #getBufferClass()}.
      */
     public static class ByteBufferFactory extends BufferFactory {
         @Override
@@ -628,6 +730,15 @@ public class BufferPool {
         public Class<?> getBufferClass() {
             return ByteBuffer.class;
         }
+
+        /**
+         * Returns <code>true</code> only for direct buffers, as buffers returned by {@link #newBuffer(int)} are
+         * direct.
+         */
+        @Override
+        public boolean isPoolable(Object buffer) {
+            return ((ByteBuffer)buffer).isDirect();
+        }
     }
 
     /**
@@ -659,4 +770,267 @@ public class BufferPool {
             return CharBuffer.class;
         }
     }
+
+    /**
+     * Identifies a size class: buffers of the same class and length.
+     */
+    private static class SizeClassKey {
+        private final Class<?> bufferClass;
+        private final int length;
+
+        private SizeClassKey(Class<?> bufferClass, int length) {
+            this.bufferClass = bufferClass;
+            this.length = length;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if(!(o instanceof SizeClassKey))
+                return false;
+
+            SizeClassKey key = (SizeClassKey)o;
+            return length==key.length && bufferClass==key.bufferClass;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31*bufferClass.hashCode() + length;
+        }
+    }
+
+    /**
+     * Wraps a buffer and compares buffers by identity, arrays and NIO buffers having content-based
+     * <code>equals</code> and <code>hashCode</code> methods.
+     */
+    private static class BufferKey {
+        private final Object buffer;
+
+        private BufferKey(Object buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return (o instanceof BufferKey) && buffer==((BufferKey)o).buffer;
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(buffer);
+        }
+    }
+
+    /**
+     * The pooled buffers of a size class: the magazines of the threads that released them, and a depot shared by all
+     * threads.
+     */
+    private static class SizeClass {
+
+        /** Size in bytes of the buffers of this class */
+        private final long bufferSize;
+
+        /** Buffers that didn't fit in a thread's magazine, used as a LIFO stack */
+        private final ConcurrentLinkedDeque<Object> depot = new ConcurrentLinkedDeque<>();
+
+        /** The magazines of all the threads that have used this size class */
+        private final ConcurrentLinkedQueue<Magazine> magazines = new ConcurrentLinkedQueue<>();
+
+        /** The current thread's magazine */
+        private final ThreadLocal<Magazine> magazine = new ThreadLocal<Magazine>() {
+            @Override
+            protected Magazine initialValue() {
+                Magazine magazine = new Magazine(Thread.currentThread());
+                magazines.add(magazine);
+                // Threads come and go, this is a good time to recover the buffers of those that are gone
+                reclaimDeadMagazines();
+                return magazine;
+            }
+        };
+
+        private SizeClass(long bufferSize) {
+            this.bufferSize = bufferSize;
+        }
+
+        /**
+         * Returns a buffer taken from the current thread's magazine or from the depot, <code>null</code> if there
+         * is none.
+         */
+        private Object take() {
+            Object buffer = magazine.get().pop();
+            if(buffer==null) {
+                buffer = depot.pollFirst();
+                if(buffer==null) {
+                    // A new buffer is about to be created, unless dead threads have left buffers in their magazine
+                    reclaimDeadMagazines();
+                    buffer = depot.pollFirst();
+                }
+
+                if(buffer!=null)
+                    depotHits.increment();
+            }
+
+            return buffer;
+        }
+
+        /**
+         * Adds the given buffer to the current thread's magazine, or to the depot if the magazine is full.
+         */
+        private void put(Object buffer) {
+            if(!magazine.get().push(buffer))
+                depot.offerFirst(buffer);
+        }
+
+        /**
+         * Moves the buffers of the magazines whose thread has died to the depot.
+         */
+        private void reclaimDeadMagazines() {
+            Iterator<Magazine> iterator = magazines.iterator();
+            while(iterator.hasNext()) {
+                Magazine magazine = iterator.next();
+                if(!magazine.isOwnerAlive()) {
+                    iterator.remove();
+                    magazine.drainTo(depot);
+                }
+            }
+        }
+    }
+
+    /**
+     * A small stack of buffers owned by a thread. Only the owner thread pushes and pops buffers; once it has died,
+     * its buffers are drained by another thread.
+     */
+    private static class Magazine {
+
+        /** The thread this magazine belongs to, weakly referenced so that the thread can be garbage-collected */
+        private final WeakReference<Thread> owner;
+
+        /** The buffers, packed at the beginning of the array */
+        private final AtomicReferenceArray<Object> buffers = new AtomicReferenceArray<>(MAGAZINE_CAPACITY);
+
+        /** Number of buffers in the magazine, only accessed by the owner thread */
+        private int count;
+
+        private Magazine(Thread owner) {
+            this.owner = new WeakReference<>(owner);
+        }
+
+        private Object pop() {
+            if(count==0)
+                return null;
+
+            return buffers.getAndSet(--count, null);
+        }
+
+        private boolean push(Object buffer) {
+            if(count==MAGAZINE_CAPACITY)
+                return false;
+
+            buffers.set(count++, buffer);
+            return true;
+        }
+
+        private boolean isOwnerAlive() {
+            Thread thread = owner.get();
+            return thread!=null && thread.isAlive();
+        }
+
+        private void drainTo(ConcurrentLinkedDeque<Object> depot) {
+            for(int i=0; i<MAGAZINE_CAPACITY; i++) {
+                Object buffer = buffers.getAndSet(i, null);
+                if(buffer!=null)
+                    depot.offerFirst(buffer);
+            }
+        }
+    }
+
+    /**
+     * A counter that is incremented by many threads, spread across several cells so that threads don't contend on the
+     * same memory location.
+     */
+    private static class StripedCounter {
+
+        /** Number of cells, a power of two */
+        private final static int NB_CELLS = 16;
+
+        /** Distance between two cells, so that each cell lies on its own cache line */
+        private final static int CELL_PADDING = 8;
+
+        private final AtomicLongArray cells = new AtomicLongArray(NB_CELLS*CELL_PADDING);
+
+        private void increment() {
+            cells.incrementAndGet((int)(Thread.currentThread().getId() & (NB_CELLS-1))*CELL_PADDING);
+        }
+
+        private long sum() {
+            long sum = 0;
+            for(int i=0; i<NB_CELLS; i++)
+                sum += cells.get(i*CELL_PADDING);
+            return sum;
+        }
+
+        private void reset() {
+            for(int i=0; i<NB_CELLS; i++)
+                cells.set(i*CELL_PADDING, 0);
+        }
+    }
+
+    /**
+     * A snapshot of the pool's counters, returned by {@link BufferPool#getStatistics()}.
+     */
+    public static class Statistics {
+        private final long hits;
+        private final long depotHits;
+        private final long misses;
+        private final long contentions;
+
+        private Statistics(long hits, long depotHits, long misses, long contentions) {
+            this.hits = hits;
+            this.depotHits = depotHits;
+            this.misses = misses;
+            this.contentions = contentions;
+        }
+
+        /**
+         * Returns the number of buffer requests that were served by a pooled buffer.
+         *
+         * @return the number of buffer requests that were served by a pooled buffer
+         */
+        public long getHits() {
+            return hits;
+        }
+
+        /**
+         * Returns the number of buffer requests that were served by a pooled buffer taken from a depot shared by all
+         * threads rather than from the requesting thread's magazine. This number is included in {@link #getHits()}.
+         *
+         * @return the number of buffer requests that were served by a depot
+         */
+        public long getDepotHits() {
+            return depotHits;
+        }
+
+        /**
+         * Returns the number of buffer requests that required a new buffer to be created.
+         *
+         * @return the number of buffer requests that required a new buffer to be created
+         */
+        public long getMisses() {
+            return misses;
+        }
+
+        /**
+         * Returns the number of times a thread had to retry updating the pool size because another thread updated it
+         * at the same time.
+         *
+         * @return the number of times the pool size was updated concurrently
+         */
+        public long getContentions() {
+            return contentions;
+        }
+
+        @Override
+        public String toString() {
+            return "hits="+hits+" (depot="+depotHits+") misses="+misses+" contentions="+contentions;
+        }
+    }
 }
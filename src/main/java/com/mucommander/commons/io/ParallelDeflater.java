@@ -0,0 +1,372 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2010 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.commons.io;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.Deflater;
+
+/**
+ * Compresses data in the raw DEFLATE format using several threads, in the manner of <i>pigz</i>, and writes the
+ * compressed data to an underlying <code>OutputStream</code> in order.
+ *
+ * <p>Data written to a {@link ParallelDeflaterOutputStream} created by {@link #createOutputStream(int)} is split into
+ * blocks that are compressed concurrently by a pool of threads. Each block is primed with the last 32KB of the previous
+ * block as a preset dictionary and ends with a sync flush, so that the concatenation of the compressed blocks is a
+ * single, standard DEFLATE stream which compresses almost as well as a sequential one.</p>
+ *
+ * <p>Compressed blocks are written to the underlying stream in the order they were submitted, by the thread that writes
+ * the data, as soon as they are ready. Operations that must be performed in between, typically writing the headers
+ * of a container format, are submitted with {@link #runInOrder(OrderedTask)} and performed once all the data submitted
+ * before them has been written. The number of blocks that are being compressed or waiting to be written is bounded:
+ * the writing thread waits for the oldest block when the limit is reached.</p>
+ *
+ * <p>Note: this class is not thread-safe, only one thread should write to it. The compression threads are daemon
+ * threads that are stopped by {@link #close()}.</p>
+ *
+ * @see ParallelDeflaterOutputStream
+ * @see ParallelGZIPOutputStream
+ */
+public class ParallelDeflater {
+
+    /** Default size of the blocks that are compressed concurrently: 128KB */
+    public final static int DEFAULT_BLOCK_SIZE = 131072;
+
+    /** Size of the DEFLATE sliding window, i.e. maximum length of a preset dictionary: 32KB */
+    final static int DICTIONARY_SIZE = 32768;
+
+    /** Maximum number of blocks that are being compressed or waiting to be written, per thread */
+    private final static int PENDING_BLOCKS_FACTOR = 2;
+
+    /** The stream compressed data is written to */
+    private final OutputStream out;
+
+    /** Size of the blocks that are compressed concurrently */
+    private final int blockSize;
+
+    /** Maximum number of blocks that are being compressed or waiting to be written */
+    private final int maxPendingBlocks;
+
+    /** The threads that compress blocks */
+    private final ExecutorService executor;
+
+    /** Deflater instances that are not being used by a compression thread */
+    private final Queue<Deflater> deflaters = new ConcurrentLinkedQueue<Deflater>();
+
+    /** Compressed blocks and ordered tasks, in the order they were submitted */
+    private final Queue<Object> pending = new ArrayDeque<Object>();
+
+    /** Number of blocks in {@link #pending} */
+    private int nbPendingBlocks;
+
+    /** True once this ParallelDeflater has been closed */
+    private boolean closed;
+
+
+    /**
+     * Creates a new ParallelDeflater that compresses {@link #DEFAULT_BLOCK_SIZE} blocks with the given number of
+     * threads.
+     *
+     * @param out the stream compressed data is written to
+     * @param nbThreads number of threads that compress blocks concurrently
+     */
+    public ParallelDeflater(OutputStream out, int nbThreads) {
+        this(out, nbThreads, DEFAULT_BLOCK_SIZE);
+    }
+
+    /**
+     * Creates a new ParallelDeflater that compresses blocks of the given size with the given number of threads.
+     *
+     * @param out the stream compressed data is written to
+     * @param nbThreads number of threads that compress blocks concurrently
+     * @param blockSize size of the blocks that are compressed concurrently, in bytes
+     */
+    public ParallelDeflater(OutputStream out, int nbThreads, int blockSize) {
+        if (nbThreads <= 0 || blockSize <= 0) {
+            throw new IllegalArgumentException("nbThreads and blockSize must be strictly positive");
+        }
+
+        this.out = out;
+        this.blockSize = blockSize;
+        this.maxPendingBlocks = nbThreads*PENDING_BLOCKS_FACTOR;
+
+        final String threadName = getClass().getSimpleName()+" thread ";
+        final AtomicInteger threadCount = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(nbThreads, new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, threadName+threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Returns the size of the blocks that are compressed concurrently.
+     *
+     * @return the size of the blocks that are compressed concurrently, in bytes
+     */
+    public int getBlockSize() {
+        return blockSize;
+    }
+
+    /**
+     * Creates a new stream that compresses the data written to it as a DEFLATE stream of its own, using the given
+     * compression level. Streams must be written to one after the other: a stream must be
+     * {@link ParallelDeflaterOutputStream#finish() finished} before the next one is written to.
+     *
+     * @param level the compression level, from {@link Deflater#BEST_SPEED} to {@link Deflater#BEST_COMPRESSION}, or
+     * {@link Deflater#DEFAULT_COMPRESSION}
+     * @return a new stream that compresses the data written to it
+     */
+    public ParallelDeflaterOutputStream createOutputStream(int level) {
+        return new ParallelDeflaterOutputStream(this, level);
+    }
+
+    /**
+     * Submits the given block to the compression threads. The previous block of the same DEFLATE stream, if any, is
+     * used as a preset dictionary.
+     *
+     * @param stream the stream the block belongs to, its compressed size is updated when the block is written
+     * @param level the compression level
+     * @param input the block's uncompressed data, must not be modified once submitted
+     * @param len number of bytes of the block
+     * @param previousInput the previous block of the same stream, <code>null</code> if this is the first block
+     * @param previousLen number of bytes of the previous block
+     * @param last true if this is the last block of the DEFLATE stream
+     * @throws IOException if an error occurred while writing the blocks that were ready
+     */
+    void submitBlock(final ParallelDeflaterOutputStream stream, final int level, final byte input[], final int len, final byte previousInput[], final int previousLen, final boolean last) throws IOException {
+        checkOpen();
+
+        // Wait for the oldest block if too many are pending
+        while (nbPendingBlocks >= maxPendingBlocks)
+            writeNext(true);
+
+        Future<byte[]> future = executor.submit(new Callable<byte[]>() {
+            public byte[] call() {
+                return compressBlock(level, input, len, previousInput, previousLen, last);
+            }
+        });
+
+        pending.add(new Block(stream, future));
+        nbPendingBlocks++;
+
+        // Write the blocks that are ready, without waiting
+        writeReady();
+    }
+
+    /**
+     * Compresses the given block, called by the compression threads.
+     */
+    private byte[] compressBlock(int level, byte input[], int len, byte previousInput[], int previousLen, boolean last) {
+        Deflater deflater = deflaters.poll();
+        if (deflater == null)
+            deflater = new Deflater(level, true);
+        else
+            deflater.setLevel(level);
+
+        try {
+            if (previousInput != null && previousLen > 0) {
+                int dictionaryLen = Math.min(DICTIONARY_SIZE, previousLen);
+                deflater.setDictionary(previousInput, previousLen-dictionaryLen, dictionaryLen);
+            }
+
+            deflater.setInput(input, 0, len);
+            if (last)
+                deflater.finish();
+
+            // Compressed data is usually smaller than the input: start with a buffer the size of the input and grow
+            // it if needed
+            byte buf[] = new byte[Math.max(64, len + (len>>4))];
+            int off = 0;
+            while (true) {
+                int nbDeflated = last
+                        ? deflater.deflate(buf, off, buf.length-off)
+                        : deflater.deflate(buf, off, buf.length-off, Deflater.SYNC_FLUSH);
+                off += nbDeflated;
+
+                if (last ? deflater.finished() : off < buf.length)
+                    break;
+
+                if (off == buf.length) {
+                    byte newBuf[] = new byte[buf.length*2];
+                    System.arraycopy(buf, 0, newBuf, 0, off);
+                    buf = newBuf;
+                }
+            }
+
+            byte compressed[] = new byte[off];
+            System.arraycopy(buf, 0, compressed, 0, off);
+            return compressed;
+        }
+        finally {
+            deflater.reset();
+            deflaters.add(deflater);
+        }
+    }
+
+    /**
+     * Submits a task that is performed, by the thread writing to this ParallelDeflater, once all the data submitted
+     * before it has been written to the underlying stream. The task is performed immediately if no data is pending.
+     *
+     * @param task the task to perform
+     * @throws IOException if an error occurred while writing the data that was ready or while performing the task
+     */
+    public void runInOrder(OrderedTask task) throws IOException {
+        checkOpen();
+
+        pending.add(task);
+        writeReady();
+    }
+
+    /**
+     * Writes the blocks and performs the tasks that are ready, in order, without waiting for blocks being compressed.
+     */
+    private void writeReady() throws IOException {
+        while (!pending.isEmpty() && writeNext(false)) {
+            // Keep writing
+        }
+    }
+
+    /**
+     * Writes the oldest pending block or performs the oldest pending task.
+     *
+     * @param wait if true, waits for the oldest block to be compressed. If false, returns <code>false</code> if it is
+     * not compressed yet.
+     * @return true if a block was written or a task performed
+     */
+    private boolean writeNext(boolean wait) throws IOException {
+        Object next = pending.peek();
+        if (next instanceof Block) {
+            Block block = (Block)next;
+            if (!wait && !block.future.isDone())
+                return false;
+
+            byte compressed[];
+            try {
+                compressed = block.future.get();
+            }
+            catch (InterruptedException e) {
+                throw new InterruptedIOException();
+            }
+            catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof IOException)
+                    throw (IOException)cause;
+
+                throw new IOException(cause);
+            }
+
+            pending.remove();
+            nbPendingBlocks--;
+
+            out.write(compressed);
+            block.stream.addBytesWritten(compressed.length);
+        }
+        else {
+            pending.remove();
+            ((OrderedTask)next).run(out);
+        }
+
+        return true;
+    }
+
+    /**
+     * Waits for all pending blocks to be compressed and written, performs all pending tasks, and flushes the
+     * underlying stream.
+     *
+     * @throws IOException if an error occurred while writing to the underlying stream
+     */
+    public void flush() throws IOException {
+        checkOpen();
+
+        while (!pending.isEmpty())
+            writeNext(true);
+
+        out.flush();
+    }
+
+    /**
+     * Throws an <code>IOException</code> if this ParallelDeflater has been closed.
+     */
+    private void checkOpen() throws IOException {
+        if (closed)
+            throw new IOException("ParallelDeflater closed");
+    }
+
+    /**
+     * Stops the compression threads and releases the resources used by this ParallelDeflater. Pending blocks and
+     * tasks are discarded: {@link #flush()} must be called before if they are to be written. The underlying stream is
+     * <b>not</b> closed.
+     */
+    public void close() {
+        if (closed)
+            return;
+
+        closed = true;
+        executor.shutdownNow();
+        pending.clear();
+        nbPendingBlocks = 0;
+
+        // Deflaters that are still being used by a compression thread are left to the garbage collector
+        Deflater deflater;
+        while ((deflater = deflaters.poll()) != null)
+            deflater.end();
+    }
+
+
+    /**
+     * A task submitted with {@link ParallelDeflater#runInOrder(OrderedTask)}.
+     */
+    public interface OrderedTask {
+
+        /**
+         * Performs the task, once all the data submitted before it has been written to the given stream.
+         *
+         * @param out the stream compressed data is written to
+         * @throws IOException if an I/O error occurred
+         */
+        void run(OutputStream out) throws IOException;
+    }
+
+    /**
+     * A block being compressed, along with the stream it belongs to.
+     */
+    private static class Block {
+        private final ParallelDeflaterOutputStream stream;
+        private final Future<byte[]> future;
+
+        private Block(ParallelDeflaterOutputStream stream, Future<byte[]> future) {
+            this.stream = stream;
+            this.future = future;
+        }
+    }
+}
@@ -0,0 +1,168 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2010 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.commons.io;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * An <code>OutputStream</code> that compresses the data written to it as a single raw DEFLATE stream, using the
+ * threads of a {@link ParallelDeflater}. Instances are created by {@link ParallelDeflater#createOutputStream(int)}.
+ *
+ * <p>The compressed data is written to the <code>ParallelDeflater</code>'s underlying stream asynchronously:
+ * {@link #getBytesWritten()} only accounts for the blocks that have been written so far. The stream must be
+ * {@link #finish() finished} once all the data has been written, to compress the last block.</p>
+ *
+ * @see ParallelDeflater
+ */
+public class ParallelDeflaterOutputStream extends OutputStream {
+
+    /** The ParallelDeflater that compresses the blocks */
+    private final ParallelDeflater deflater;
+
+    /** Compression level */
+    private final int level;
+
+    /** Block currently being filled */
+    private byte block[];
+
+    /** Number of bytes in the current block */
+    private int blockLen;
+
+    /** Previous block, used as a preset dictionary for the current one, null if none */
+    private byte previousBlock[];
+
+    /** Number of bytes in the previous block */
+    private int previousBlockLen;
+
+    /** Number of uncompressed bytes written to this stream */
+    private long bytesRead;
+
+    /** Number of compressed bytes written to the underlying stream so far */
+    private long bytesWritten;
+
+    /** True once the last block has been submitted */
+    private boolean finished;
+
+
+    /**
+     * Creates a new ParallelDeflaterOutputStream that compresses data with the given ParallelDeflater and compression
+     * level.
+     *
+     * @param deflater the ParallelDeflater that compresses blocks
+     * @param level the compression level
+     */
+    ParallelDeflaterOutputStream(ParallelDeflater deflater, int level) {
+        this.deflater = deflater;
+        this.level = level;
+        this.block = new byte[deflater.getBlockSize()];
+    }
+
+    /**
+     * Returns the total number of uncompressed bytes written to this stream.
+     *
+     * @return the total number of uncompressed bytes written to this stream
+     */
+    public long getBytesRead() {
+        return bytesRead;
+    }
+
+    /**
+     * Returns the total number of compressed bytes written to the underlying stream so far. Once this stream has been
+     * finished, this value is the compressed size of the DEFLATE stream only after all its blocks have been written,
+     * for instance from a task submitted with {@link ParallelDeflater#runInOrder(ParallelDeflater.OrderedTask)}.
+     *
+     * @return the total number of compressed bytes written to the underlying stream so far
+     */
+    public long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    /**
+     * Called by {@link ParallelDeflater} when a block of this stream has been written to the underlying stream.
+     */
+    void addBytesWritten(int nbBytes) {
+        bytesWritten += nbBytes;
+    }
+
+    /**
+     * Submits the current block, and starts a new one.
+     */
+    private void submitBlock(boolean last) throws IOException {
+        deflater.submitBlock(this, level, block, blockLen, previousBlock, previousBlockLen, last);
+
+        previousBlock = block;
+        previousBlockLen = blockLen;
+        block = last ? null : new byte[block.length];
+        blockLen = 0;
+    }
+
+    /**
+     * Submits the last block of the DEFLATE stream. This method does not wait for the blocks to be compressed and
+     * written, and does not close the underlying stream. Subsequent calls have no effect.
+     *
+     * @throws IOException if an error occurred while writing the blocks that were ready
+     */
+    public void finish() throws IOException {
+        if (finished)
+            return;
+
+        finished = true;
+        submitBlock(true);
+        previousBlock = null;
+    }
+
+
+    /////////////////////////////////
+    // OutputStream implementation //
+    /////////////////////////////////
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[]{(byte)b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte b[], int off, int len) throws IOException {
+        if (finished)
+            throw new IOException("Stream finished");
+
+        bytesRead += len;
+        while (len > 0) {
+            if (blockLen == block.length)
+                submitBlock(false);
+
+            int nbBytes = Math.min(len, block.length-blockLen);
+            System.arraycopy(b, off, block, blockLen, nbBytes);
+            blockLen += nbBytes;
+            off += nbBytes;
+            len -= nbBytes;
+        }
+    }
+
+    /**
+     * Finishes the DEFLATE stream, <b>without</b> closing the underlying stream.
+     *
+     * @throws IOException if an error occurred while writing the blocks that were ready
+     */
+    @Override
+    public void close() throws IOException {
+        finish();
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2010 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.commons.io;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.CRC32;
+
+/**
+ * A replacement for <code>java.util.zip.GZIPOutputStream</code> that compresses data using several threads, with a
+ * {@link ParallelDeflater}. The output is a standard, single-member Gzip stream that can be read by any Gzip
+ * implementation.
+ *
+ * <p>The CRC32 checksum of the uncompressed data is calculated by the thread writing to this stream, while blocks are
+ * being compressed by the compression threads.</p>
+ *
+ * @see ParallelDeflater
+ */
+public class ParallelGZIPOutputStream extends OutputStream {
+
+    /** Gzip header: magic number, DEFLATE compression method, no flag, no modification time, no extra flag, unknown OS */
+    private final static byte HEADER[] = {
+        (byte)0x1f, (byte)0x8b, 8, 0, 0, 0, 0, 0, 0, (byte)0xff
+    };
+
+    /** The underlying stream */
+    private final OutputStream out;
+
+    /** The ParallelDeflater that compresses data */
+    private final ParallelDeflater deflater;
+
+    /** The DEFLATE stream of the Gzip member */
+    private final ParallelDeflaterOutputStream dout;
+
+    /** Checksum of the uncompressed data */
+    private final CRC32 crc = new CRC32();
+
+    /** True once the Gzip trailer has been written */
+    private boolean finished;
+
+    /** True once this stream has been closed */
+    private boolean closed;
+
+
+    /**
+     * Creates a new ParallelGZIPOutputStream that compresses data with the given compression level and number of
+     * threads, and writes it to the given stream. The Gzip header is written immediately.
+     *
+     * @param out the underlying stream
+     * @param level the compression level, from {@link java.util.zip.Deflater#BEST_SPEED} to
+     * {@link java.util.zip.Deflater#BEST_COMPRESSION}, or {@link java.util.zip.Deflater#DEFAULT_COMPRESSION}
+     * @param nbThreads number of threads that compress data concurrently
+     * @throws IOException if an error occurred while writing the header
+     */
+    public ParallelGZIPOutputStream(OutputStream out, int level, int nbThreads) throws IOException {
+        this.out = out;
+        this.deflater = new ParallelDeflater(out, nbThreads);
+        this.dout = deflater.createOutputStream(level);
+
+        out.write(HEADER);
+    }
+
+    /**
+     * Finishes writing compressed data and writes the Gzip trailer, <b>without</b> closing the underlying stream.
+     * This method waits for all blocks to be compressed and written.
+     *
+     * @throws IOException if an I/O error occurred
+     */
+    public void finish() throws IOException {
+        if (finished)
+            return;
+
+        finished = true;
+        dout.finish();
+        deflater.flush();
+
+        // Trailer: CRC32 and uncompressed size modulo 2^32, in little endian byte order
+        byte trailer[] = new byte[8];
+        long crcValue = crc.getValue();
+        long size = dout.getBytesRead();
+        for (int i = 0; i < 4; i++) {
+            trailer[i] = (byte)(crcValue >> (8*i));
+            trailer[4+i] = (byte)(size >> (8*i));
+        }
+        out.write(trailer);
+    }
+
+
+    /////////////////////////////////
+    // OutputStream implementation //
+    /////////////////////////////////
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[]{(byte)b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte b[], int off, int len) throws IOException {
+        dout.write(b, off, len);
+        crc.update(b, off, len);
+    }
+
+    /**
+     * Waits for the blocks that have been submitted so far to be compressed and written, and flushes the underlying
+     * stream. Note that the block being filled is not compressed.
+     *
+     * @throws IOException if an I/O error occurred
+     */
+    @Override
+    public void flush() throws IOException {
+        if (!finished)
+            deflater.flush();
+        out.flush();
+    }
+
+    /**
+     * Finishes writing compressed data, closes the underlying stream and stops the compression threads.
+     *
+     * @throws IOException if an I/O error occurred
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed)
+            return;
+
+        closed = true;
+        try {
+            finish();
+        }
+        finally {
+            deflater.close();
+            out.close();
+        }
+    }
+}
@@ -0,0 +1,506 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2010 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.commons.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * An InputStream that reads an underlying stream ahead of its consumer, in a reader thread.
+ *
+ * <p>Reader threads are taken from a pool shared by all instances, which holds at most {@link #MAX_READER_THREADS}
+ * threads. A stream created while they are all busy is not read ahead: it reads the underlying stream directly, in
+ * the consumer's thread, see {@link #isReadAhead()}.</p>
+ *
+ * <p>The reader thread fills a fixed number of buffers, retrieved from {@link BufferPool}, and hands them off to the
+ * thread consuming this stream through a bounded ring: at most <code>nbBuffers</code> buffers are filled and not
+ * consumed yet. When used to copy a stream, for instance with
+ * {@link StreamUtils#copyStream(InputStream, java.io.OutputStream)}, reading the source and writing the destination
+ * thus happen at the same time, instead of one after the other. This is worthwhile when the source and the destination
+ * both have a significant latency, typically when copying a file from one network protocol to another.</p>
+ *
+ * <p>The following metrics allow to determine which side of a copy is the bottleneck:
+ * <ul>
+ *   <li>{@link #getReaderStallTime()}: time the reader thread has spent waiting for a buffer to be consumed, in other
+ *   words waiting for the destination. A large value means the destination is the bottleneck.</li>
+ *   <li>{@link #getConsumerStallTime()}: time the consumer has spent waiting for a buffer to be filled, in other words
+ *   waiting for the source. A large value means the source is the bottleneck.</li>
+ *   <li>{@link #getQueueDepth()}, {@link #getMaxQueueDepth()} and {@link #getAverageQueueDepth()}: number of filled
+ *   buffers waiting to be consumed. A ring that is mostly full means the destination is the bottleneck, a ring that is
+ *   mostly empty means the source is.</li>
+ * </ul>
+ * These methods can be called from any thread, while the stream is being consumed.</p>
+ *
+ * <p>Closing this stream closes the underlying stream and stops the reader thread. Errors that occur while reading
+ * the underlying stream are thrown by the read method that reaches them, after the bytes read before the error have
+ * been consumed.</p>
+ *
+ * <p>Note: this class is not thread-safe, only one thread should consume it. {@link #close()} can however be called
+ * from another thread to interrupt a blocked consumer.</p>
+ */
+public class PipelinedInputStream extends InputStream {
+
+    /** Default number of buffers of the ring */
+    public final static int DEFAULT_NB_BUFFERS = 8;
+
+    /** Maximum number of streams that are read ahead at the same time */
+    public final static int MAX_READER_THREADS = 16;
+
+    /** Time after which an idle reader thread ends, in seconds */
+    private final static int READER_THREAD_KEEP_ALIVE = 60;
+
+    /** Threads reading the underlying streams ahead, shared by all instances */
+    private final static ThreadPoolExecutor READER_EXECUTOR = createReaderExecutor();
+
+    /** The underlying stream that is read ahead */
+    private final InputStream in;
+
+    /** Buffers waiting to be filled by the reader thread */
+    private final BlockingQueue<byte[]> freeBuffers;
+
+    /** Filled buffers waiting to be consumed, followed by an end marker when the reader thread is done. The number of
+     * buffers it contains is bounded by the number of free buffers, the queue itself does not need to be. */
+    private final BlockingQueue<Chunk> filledBuffers = new LinkedBlockingQueue<>();
+
+    /** All the buffers of the ring, released to the BufferPool once the stream has been consumed to the end */
+    private final byte buffers[][];
+
+    /** True if the underlying stream is read ahead, false if it is read directly because no reader thread was
+     * available */
+    private final boolean readAhead;
+
+    /** The thread that reads the underlying stream, null when the reader is not running */
+    private Thread readerThread;
+
+    /** True once the reader has stopped reading the underlying stream */
+    private volatile boolean readerDone;
+
+    /** Chunk currently being consumed, null if none */
+    private Chunk currentChunk;
+
+    /** Offset of the next byte to consume in the current chunk */
+    private int currentOffset;
+
+    /** True once this stream has been closed */
+    private volatile boolean closed;
+
+    /** True once the buffers have been released to the BufferPool */
+    private boolean buffersReleased;
+
+    /** Total time spent by the reader thread waiting for a free buffer, in nanoseconds */
+    private volatile long readerStallTime;
+
+    /** Total time spent by the consumer waiting for a filled buffer, in nanoseconds */
+    private volatile long consumerStallTime;
+
+    /** Maximum number of filled buffers waiting to be consumed */
+    private volatile int maxQueueDepth;
+
+    /** Sum of the queue depths observed every time a buffer was filled, used to compute the average queue depth */
+    private volatile long queueDepthSum;
+
+    /** Number of buffers that have been filled */
+    private volatile long nbChunks;
+
+
+    /**
+     * Creates a new PipelinedInputStream reading the given stream ahead with {@link #DEFAULT_NB_BUFFERS} buffers of
+     * {@link BufferPool#getDefaultBufferSize() default size}.
+     *
+     * @param in the underlying stream to read ahead
+     */
+    public PipelinedInputStream(InputStream in) {
+        this(in, BufferPool.getDefaultBufferSize(), DEFAULT_NB_BUFFERS);
+    }
+
+    /**
+     * Creates a new PipelinedInputStream reading the given stream ahead with the specified number of buffers of the
+     * specified size. The reader is started immediately, unless all the reader threads are busy in which case the
+     * given stream is read directly.
+     *
+     * @param in the underlying stream to read ahead
+     * @param bufferSize size of each buffer, in bytes
+     * @param nbBuffers number of buffers of the ring, i.e. maximum number of filled buffers that have not been
+     * consumed yet
+     */
+    public PipelinedInputStream(InputStream in, int bufferSize, int nbBuffers) {
+        if (bufferSize <= 0 || nbBuffers <= 0) {
+            throw new IllegalArgumentException("bufferSize and nbBuffers must be strictly positive");
+        }
+
+        this.in = in;
+        this.freeBuffers = new ArrayBlockingQueue<>(nbBuffers);
+        this.buffers = new byte[nbBuffers][];
+        for (int i = 0; i < nbBuffers; i++) {
+            buffers[i] = BufferPool.getByteArray(bufferSize);
+            freeBuffers.add(buffers[i]);
+        }
+
+        boolean readAhead;
+        try {
+            READER_EXECUTOR.execute(new Reader());
+            readAhead = true;
+        }
+        catch (RejectedExecutionException e) {
+            // All the reader threads are busy: read the underlying stream directly
+            readAhead = false;
+            readerDone = true;
+            buffersReleased = true;
+            for (byte buffer[] : buffers) {
+                BufferPool.releaseByteArray(buffer);
+            }
+        }
+        this.readAhead = readAhead;
+    }
+
+    /**
+     * Creates the pool of reader threads. Its threads are daemon threads, which end after having been idle for
+     * {@link #READER_THREAD_KEEP_ALIVE} seconds.
+     */
+    private static ThreadPoolExecutor createReaderExecutor() {
+        final String threadName = PipelinedInputStream.class.getSimpleName() + " reader ";
+        final AtomicInteger threadCount = new AtomicInteger();
+
+        return new ThreadPoolExecutor(0, MAX_READER_THREADS, READER_THREAD_KEEP_ALIVE, TimeUnit.SECONDS,
+                new SynchronousQueue<Runnable>(), new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, threadName + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+
+    /**
+     * Returns <code>true</code> if the underlying stream is read ahead, <code>false</code> if it is read directly
+     * because all the reader threads were busy when this stream was created.
+     *
+     * @return true if the underlying stream is read ahead
+     */
+    public boolean isReadAhead() {
+        return readAhead;
+    }
+
+    /**
+     * Returns <code>true</code> once the reader has stopped reading the underlying stream, because its end has been
+     * reached, an error has occurred or this stream has been closed. Always returns <code>true</code> if the
+     * underlying stream is not {@link #isReadAhead() read ahead}.
+     *
+     * @return true once the reader has stopped reading the underlying stream
+     */
+    public boolean isReaderDone() {
+        return readerDone;
+    }
+
+
+    /**
+     * Returns the number of filled buffers that are currently waiting to be consumed.
+     *
+     * @return the number of filled buffers that are currently waiting to be consumed
+     */
+    public int getQueueDepth() {
+        int depth = 0;
+        for (Chunk chunk : filledBuffers) {
+            if (chunk.buffer != null) {
+                depth++;
+            }
+        }
+        return depth;
+    }
+
+    /**
+     * Returns the maximum number of filled buffers that have been waiting to be consumed at the same time.
+     *
+     * @return the maximum number of filled buffers that have been waiting to be consumed at the same time
+     */
+    public int getMaxQueueDepth() {
+        return maxQueueDepth;
+    }
+
+    /**
+     * Returns the average number of filled buffers waiting to be consumed, observed every time a buffer is filled.
+     *
+     * @return the average number of filled buffers waiting to be consumed
+     */
+    public float getAverageQueueDepth() {
+        long nbChunks = this.nbChunks;
+        return nbChunks == 0 ? 0 : queueDepthSum / (float)nbChunks;
+    }
+
+    /**
+     * Returns the total time the reader thread has spent waiting for buffers to be consumed, in milliseconds.
+     * This is the time the source has spent waiting for the destination.
+     *
+     * @return the total time the reader thread has spent waiting for buffers to be consumed, in milliseconds
+     */
+    public long getReaderStallTime() {
+        return readerStallTime / 1000000;
+    }
+
+    /**
+     * Returns the total time the consumer has spent waiting for buffers to be filled, in milliseconds.
+     * This is the time the destination has spent waiting for the source.
+     *
+     * @return the total time the consumer has spent waiting for buffers to be filled, in milliseconds
+     */
+    public long getConsumerStallTime() {
+        return consumerStallTime / 1000000;
+    }
+
+    /**
+     * Returns the chunk to consume bytes from, waiting for the reader thread to fill one if necessary.
+     * The returned chunk is either a chunk with bytes left to consume, or an end marker.
+     */
+    private Chunk getChunk() throws IOException {
+        if (currentChunk != null) {
+            if (currentChunk.buffer == null || currentOffset < currentChunk.length) {
+                return currentChunk;
+            }
+
+            // Give the buffer back to the reader thread
+            freeBuffers.offer(currentChunk.buffer);
+            currentChunk = null;
+        }
+
+        if (closed) {
+            throw new IOException("Stream closed");
+        }
+
+        Chunk chunk = filledBuffers.poll();
+        if (chunk == null) {
+            long waitStart = System.nanoTime();
+            try {
+                chunk = filledBuffers.take();
+            } catch (InterruptedException e) {
+                throw new InterruptedIOException();
+            }
+            finally {
+                consumerStallTime += System.nanoTime() - waitStart;
+            }
+        }
+
+        currentChunk = chunk;
+        currentOffset = 0;
+
+        return chunk;
+    }
+
+    /**
+     * Throws the exception held by the given end marker, if any, or returns <code>-1</code>.
+     */
+    private int endOfStream(Chunk chunk) throws IOException {
+        if (chunk == Chunk.CLOSED) {
+            throw new IOException("Stream closed");
+        }
+        if (chunk.exception != null) {
+            throw chunk.exception;
+        }
+        return -1;
+    }
+
+
+    ////////////////////////////////
+    // InputStream implementation //
+    ////////////////////////////////
+
+    @Override
+    public int read() throws IOException {
+        if (!readAhead) {
+            return in.read();
+        }
+
+        Chunk chunk = getChunk();
+        if (chunk.buffer == null) {
+            return endOfStream(chunk);
+        }
+
+        return chunk.buffer[currentOffset++] & 0xFF;
+    }
+
+    @Override
+    public int read(byte b[], int off, int len) throws IOException {
+        if (!readAhead) {
+            return in.read(b, off, len);
+        }
+
+        if (len == 0) {
+            return 0;
+        }
+
+        Chunk chunk = getChunk();
+        if (chunk.buffer == null) {
+            return endOfStream(chunk);
+        }
+
+        int nbRead = Math.min(len, chunk.length - currentOffset);
+        System.arraycopy(chunk.buffer, currentOffset, b, off, nbRead);
+        currentOffset += nbRead;
+
+        return nbRead;
+    }
+
+    @Override
+    public int available() throws IOException {
+        if (!readAhead) {
+            return in.available();
+        }
+
+        Chunk chunk = currentChunk;
+        return chunk == null || chunk.buffer == null ? 0 : chunk.length - currentOffset;
+    }
+
+    /**
+     * Closes the underlying stream and stops the reader thread. The buffers are released to the {@link BufferPool} only
+     * if the stream has been consumed to the end, otherwise they are left to the garbage collector as the reader thread
+     * may still be using them.
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+
+            // The reader thread is done with the buffers once the end marker has been consumed
+            if (currentChunk != null && currentChunk.buffer == null && !buffersReleased) {
+                buffersReleased = true;
+                for (byte buffer[] : buffers) {
+                    BufferPool.releaseByteArray(buffer);
+                }
+            }
+        }
+
+        try {
+            in.close();
+        }
+        finally {
+            synchronized (this) {
+                if (readerThread != null) {
+                    readerThread.interrupt();
+                }
+            }
+            // Wake up the consumer if it is waiting for a buffer
+            filledBuffers.offer(Chunk.CLOSED);
+        }
+    }
+
+
+    ///////////////////
+    // Inner classes //
+    ///////////////////
+
+    /**
+     * A buffer filled by the reader thread, or an end marker when <code>buffer</code> is <code>null</code>.
+     */
+    private static class Chunk {
+        /** Marker added to the queue when the stream is closed */
+        private final static Chunk CLOSED = new Chunk(null, 0, null);
+
+        private final byte buffer[];
+        private final int length;
+        /** Exception that ended the stream, null for a normal end of stream */
+        private final IOException exception;
+
+        private Chunk(byte buffer[], int length, IOException exception) {
+            this.buffer = buffer;
+            this.length = length;
+            this.exception = exception;
+        }
+    }
+
+    /**
+     * Reads the underlying stream into the free buffers until the end of the stream is reached, an error occurs or the
+     * stream is closed.
+     */
+    private class Reader implements Runnable {
+        @Override
+        public void run() {
+            // End marker posted once the reader is done, whatever the reason, so that the consumer never waits forever
+            Chunk end = Chunk.CLOSED;
+            synchronized (PipelinedInputStream.this) {
+                readerThread = Thread.currentThread();
+            }
+            try {
+                while (!closed) {
+                    byte buffer[] = freeBuffers.poll();
+                    if (buffer == null) {
+                        long waitStart = System.nanoTime();
+                        try {
+                            buffer = freeBuffers.take();
+                        }
+                        finally {
+                            readerStallTime += System.nanoTime() - waitStart;
+                        }
+                    }
+
+                    int nbRead = in.read(buffer, 0, buffer.length);
+                    if (nbRead == -1) {
+                        freeBuffers.offer(buffer);
+                        end = new Chunk(null, 0, null);
+                        return;
+                    }
+                    if (nbRead == 0) {
+                        freeBuffers.offer(buffer);
+                        continue;
+                    }
+
+                    filledBuffers.put(new Chunk(buffer, nbRead, null));
+
+                    int depth = filledBuffers.size();
+                    if (depth > maxQueueDepth) {
+                        maxQueueDepth = depth;
+                    }
+                    queueDepthSum += depth;
+                    nbChunks++;
+                }
+            }
+            catch (IOException e) {
+                end = new Chunk(null, 0, e);
+            }
+            catch (InterruptedException e) {
+                // The stream has been closed
+            }
+            catch (Throwable t) {
+                // Unchecked exceptions and errors of the underlying stream are thrown to the consumer as well
+                end = new Chunk(null, 0, new IOException(t));
+            }
+            finally {
+                synchronized (PipelinedInputStream.this) {
+                    readerThread = null;
+                    // Clear the interrupt close() may have sent, the thread goes back to the pool
+                    Thread.interrupted();
+                }
+                readerDone = true;
+                filledBuffers.offer(end);
+            }
+        }
+    }
+}
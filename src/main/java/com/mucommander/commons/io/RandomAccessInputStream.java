@@ -85,6 +85,41 @@ public abstract class RandomAccessInputStream extends InputStream implements Ran
         StreamUtils.readFully(this, b, off, len);
     }
 
+    /**
+     * Reads up to <code>len</code> bytes of data from this file into an array of bytes, starting at the given position
+     * in the file.
+     *
+     * <p>This implementation seeks to the given position if the current offset differs and reads from there: the
+     * offset is left right after the bytes that were read, and calls must not be made concurrently. Implementations
+     * that return <code>true</code> from {@link #isConcurrentReadSupported()} read without using nor modifying the
+     * offset, and may be called concurrently by several threads.</p>
+     *
+     * @param position the position in the file at which to start reading
+     * @param b the buffer into which the data is read
+     * @param off the start offset of the data
+     * @param len the maximum number of bytes read
+     * @return the total number of bytes read into the buffer, or -1 if the given position is at or past the end of the
+     * file
+     * @throws IOException if an I/O error occurs
+     */
+    public int read(long position, byte b[], int off, int len) throws IOException {
+        if(getOffset()!=position)
+            seek(position);
+
+        return read(b, off, len);
+    }
+
+    /**
+     * Returns <code>true</code> if {@link #read(long, byte[], int, int)} reads without using the offset of this
+     * stream, in which case several threads can read from it concurrently. This implementation returns
+     * <code>false</code>.
+     *
+     * @return <code>true</code> if positional reads can be performed concurrently
+     */
+    public boolean isConcurrentReadSupported() {
+        return false;
+    }
+
 
     ////////////////////////
     // Overridden methods //
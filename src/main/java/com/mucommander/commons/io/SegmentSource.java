@@ -0,0 +1,52 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2010 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.commons.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * A source of data that can be read segment by segment, several segments at the same time. This is typically
+ * implemented by remote files whose protocol allows to request a byte range of the file, for instance with the HTTP
+ * <code>Range</code> header, so that a {@link SegmentedInputStream} can download a file over several connections.
+ *
+ * @see SegmentedInputStream
+ */
+public interface SegmentSource {
+
+    /**
+     * Returns <code>true</code> if segments can be requested. This may not be the case if for instance the server
+     * does not support ranged requests.
+     *
+     * @return <code>true</code> if segments can be requested
+     */
+    boolean isSegmentReadSupported();
+
+    /**
+     * Returns an <code>InputStream</code> to read the given segment of the data. The returned stream must return
+     * exactly <code>length</code> bytes, unless the end of the data has been reached. This method may be called by
+     * several threads at the same time.
+     *
+     * @param offset offset of the segment's first byte
+     * @param length number of bytes of the segment
+     * @return an InputStream to read the segment
+     * @throws IOException if the segment could not be opened
+     */
+    InputStream getSegmentInputStream(long offset, long length) throws IOException;
+}
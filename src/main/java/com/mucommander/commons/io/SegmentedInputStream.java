@@ -0,0 +1,513 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2010 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.commons.io;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * An InputStream that downloads a range of a {@link SegmentSource} over several connections at the same time, and
+ * returns its bytes in order.
+ *
+ * <p>The range is split into segments of a fixed size, which are fetched concurrently by a pool of threads, each
+ * segment being read entirely into memory. The number of segments that are fetched or fetched and not consumed yet is
+ * bounded to twice the number of threads: the threads do not run further ahead of the consumer. A segment that fails
+ * is retried a number of times, resuming where the previous attempt stopped; if it fails for good, the error is thrown
+ * by the read method that reaches the segment.</p>
+ *
+ * <p>If a target <code>FileChannel</code> is specified, each segment is also written to the channel by the thread that
+ * fetched it, at the segment's position, as soon as it has been fetched: the channel receives segments out of order
+ * and does not go through the consumer. In that case, the bytes returned by the <code>read</code> methods have already
+ * been written to the channel, and {@link #skip(long) skipping} this stream until it returns <code>0</code> downloads
+ * the range to the channel. Like {@link TransferChannelInputStream}, this stream can thus be wrapped in filter streams
+ * such as {@link CounterInputStream} or {@link ThroughputLimitInputStream} to count the bytes that have been
+ * downloaded or limit the throughput.</p>
+ *
+ * <p>Closing this stream stops the threads, closes the segment streams that are open, and closes the target channel
+ * if any.</p>
+ *
+ * <p>Note: this class is not thread-safe, only one thread should consume it. {@link #close()} can however be called
+ * from another thread to interrupt a blocked consumer.</p>
+ *
+ * @see SegmentSource
+ */
+public class SegmentedInputStream extends InputStream {
+    private static final Logger LOGGER = LoggerFactory.getLogger(SegmentedInputStream.class);
+
+    /** Default size of a segment: 4MB */
+    public final static int DEFAULT_SEGMENT_SIZE = 4*1024*1024;
+
+    /** Default number of segments fetched at the same time */
+    public final static int DEFAULT_NB_THREADS = 4;
+
+    /** Default number of times a segment is retried before the download is given up */
+    public final static int DEFAULT_MAX_RETRIES = 3;
+
+    /** Default delay before a segment is retried for the first time, doubled with every retry */
+    public final static long DEFAULT_RETRY_DELAY = 1000;
+
+    /** The source the segments are fetched from */
+    private final SegmentSource source;
+
+    /** Offset of the range in the source */
+    private final long offset;
+
+    /** Length of the range */
+    private final long length;
+
+    /** Size of a segment, except the last one which may be smaller */
+    private final int segmentSize;
+
+    /** Number of segments of the range */
+    private final long nbSegments;
+
+    /** Number of threads fetching segments */
+    private final int nbThreads;
+
+    /** Maximum number of segments being fetched, or fetched and not consumed yet */
+    private final int maxPendingSegments;
+
+    /** Channel segments are written to, null if none */
+    private final FileChannel target;
+
+    /** Position of the first byte of the range in the target channel */
+    private final long targetPosition;
+
+    /** Number of times a segment is retried */
+    private int maxRetries = DEFAULT_MAX_RETRIES;
+
+    /** Delay before a segment is retried for the first time */
+    private long retryDelay = DEFAULT_RETRY_DELAY;
+
+    /** The threads fetching segments, null until the stream is first consumed */
+    private ExecutorService executor;
+
+    /** Segments that have been fetched and not consumed yet, by segment index. Guarded by this. */
+    private final Map<Long, Segment> fetchedSegments = new HashMap<Long, Segment>();
+
+    /** Segment streams that are currently open. Guarded by this. */
+    private final Set<InputStream> openStreams = new HashSet<InputStream>();
+
+    /** Index of the next segment to fetch. Guarded by this. */
+    private long nextSegmentIndex;
+
+    /** Index of the segment being consumed. Guarded by this. */
+    private long currentSegmentIndex;
+
+    /** Offset of the next byte to consume in the current segment */
+    private int currentSegmentOffset;
+
+    /** True once this stream has been closed */
+    private volatile boolean closed;
+
+
+    /**
+     * Creates a new SegmentedInputStream that downloads the given range of the source with the specified number of
+     * threads.
+     *
+     * @param source the source to fetch segments from
+     * @param offset offset of the range in the source
+     * @param length length of the range
+     * @param segmentSize size of a segment
+     * @param nbThreads number of segments fetched at the same time
+     */
+    public SegmentedInputStream(SegmentSource source, long offset, long length, int segmentSize, int nbThreads) {
+        this(source, offset, length, segmentSize, nbThreads, null, 0);
+    }
+
+    /**
+     * Creates a new SegmentedInputStream that downloads the given range of the source with the specified number of
+     * threads, and writes each segment to the given channel at the given position plus the segment's offset in the
+     * range.
+     *
+     * @param source the source to fetch segments from
+     * @param offset offset of the range in the source
+     * @param length length of the range
+     * @param segmentSize size of a segment
+     * @param nbThreads number of segments fetched at the same time
+     * @param target channel segments are written to, <code>null</code> for none
+     * @param targetPosition position of the range's first byte in the target channel
+     */
+    public SegmentedInputStream(SegmentSource source, long offset, long length, int segmentSize, int nbThreads, FileChannel target, long targetPosition) {
+        if (offset < 0 || length < 0 || segmentSize <= 0 || nbThreads <= 0) {
+            throw new IllegalArgumentException();
+        }
+
+        this.source = source;
+        this.offset = offset;
+        this.length = length;
+        this.segmentSize = segmentSize;
+        this.nbSegments = (length+segmentSize-1)/segmentSize;
+        this.nbThreads = (int)Math.min(nbThreads, Math.max(1, nbSegments));
+        this.maxPendingSegments = this.nbThreads*2;
+        this.target = target;
+        this.targetPosition = targetPosition;
+    }
+
+    /**
+     * Sets the number of times a segment is retried before the download is given up. Default is
+     * {@link #DEFAULT_MAX_RETRIES}.
+     *
+     * @param maxRetries number of times a segment is retried
+     */
+    public void setMaxRetries(int maxRetries) {
+        this.maxRetries = maxRetries;
+    }
+
+    /**
+     * Sets the delay before a segment is retried for the first time, doubled with every retry. Default is
+     * {@link #DEFAULT_RETRY_DELAY}.
+     *
+     * @param retryDelay delay before a segment is retried for the first time, in milliseconds
+     */
+    public void setRetryDelay(long retryDelay) {
+        this.retryDelay = retryDelay;
+    }
+
+    /**
+     * Returns the segment being consumed, waiting for it to be fetched if necessary, or <code>null</code> if all the
+     * segments have been consumed. The threads fetching segments are started the first time this method is called.
+     */
+    private synchronized Segment getCurrentSegment() throws IOException {
+        if (closed)
+            throw new IOException("Stream closed");
+
+        if (currentSegmentIndex >= nbSegments)
+            return null;
+
+        if (executor == null)
+            startThreads();
+
+        Segment segment;
+        try {
+            while ((segment=fetchedSegments.get(currentSegmentIndex)) == null && !closed)
+                wait();
+        }
+        catch (InterruptedException e) {
+            throw new InterruptedIOException();
+        }
+
+        if (closed)
+            throw new IOException("Stream closed");
+
+        if (segment.error != null)
+            throw segment.error;
+
+        return segment;
+    }
+
+    /**
+     * Advances the current segment by the given number of bytes, and moves on to the next segment once the current
+     * one has been consumed entirely, letting the threads fetch a new segment.
+     */
+    private synchronized void consume(Segment segment, int nbBytes) {
+        currentSegmentOffset += nbBytes;
+        if (currentSegmentOffset == segment.data.length) {
+            fetchedSegments.remove(currentSegmentIndex);
+            currentSegmentIndex++;
+            currentSegmentOffset = 0;
+            notifyAll();
+        }
+    }
+
+    /**
+     * Starts the threads fetching segments.
+     */
+    private void startThreads() {
+        final String threadName = getClass().getSimpleName()+" thread ";
+        final AtomicInteger threadCount = new AtomicInteger();
+
+        executor = Executors.newFixedThreadPool(nbThreads, new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, threadName+threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+
+        for (int i = 0; i < nbThreads; i++)
+            executor.execute(new Fetcher());
+    }
+
+    /**
+     * Returns the index of the next segment to fetch, waiting for the consumer to catch up if too many segments are
+     * pending. Returns <code>-1</code> if there are no more segments to fetch or if the stream has been closed.
+     */
+    private synchronized long nextSegmentToFetch() throws InterruptedException {
+        while (!closed && nextSegmentIndex < nbSegments && nextSegmentIndex >= currentSegmentIndex+maxPendingSegments)
+            wait();
+
+        if (closed || nextSegmentIndex >= nbSegments)
+            return -1;
+
+        return nextSegmentIndex++;
+    }
+
+    /**
+     * Fetches the given segment, retrying up to {@link #maxRetries} times, and writes it to the target channel if
+     * there is one.
+     */
+    private Segment fetchSegment(long segmentIndex) throws InterruptedException {
+        long segmentOffset = segmentIndex*segmentSize;
+        Segment segment = new Segment(new byte[(int)Math.min(segmentSize, length-segmentOffset)]);
+        byte data[] = segment.data;
+        int nbRead = 0;
+        long delay = retryDelay;
+
+        for (int attempt = 0; ; attempt++) {
+            try {
+                // Resume where the previous attempt stopped
+                InputStream in = openSegmentStream(offset+segmentOffset+nbRead, data.length-nbRead);
+                try {
+                    while (nbRead < data.length) {
+                        int n = in.read(data, nbRead, data.length-nbRead);
+                        if (n == -1)
+                            throw new EOFException();
+
+                        nbRead += n;
+                    }
+                }
+                finally {
+                    closeSegmentStream(in);
+                }
+
+                break;
+            }
+            catch (IOException e) {
+                if (closed || attempt >= maxRetries) {
+                    segment.error = e;
+                    return segment;
+                }
+
+                LOGGER.info("Failed to fetch segment at offset "+(offset+segmentOffset)+", retrying", e);
+                Thread.sleep(delay);
+                delay *= 2;
+            }
+        }
+
+        if (target != null) {
+            try {
+                ByteBuffer buffer = ByteBuffer.wrap(data);
+                long position = targetPosition+segmentOffset;
+                while (buffer.hasRemaining())
+                    position += target.write(buffer, position);
+            }
+            catch (IOException e) {
+                segment.error = e;
+            }
+        }
+
+        return segment;
+    }
+
+    /**
+     * Opens a segment stream and registers it so that it can be closed if this stream is closed.
+     */
+    private InputStream openSegmentStream(long segmentOffset, long segmentLength) throws IOException {
+        InputStream in = source.getSegmentInputStream(segmentOffset, segmentLength);
+        synchronized (this) {
+            if (!closed) {
+                openStreams.add(in);
+                return in;
+            }
+        }
+
+        in.close();
+        throw new IOException("Stream closed");
+    }
+
+    /**
+     * Closes the given segment stream and unregisters it.
+     */
+    private void closeSegmentStream(InputStream in) {
+        synchronized (this) {
+            openStreams.remove(in);
+        }
+
+        try {
+            in.close();
+        }
+        catch (IOException e) {
+            // Not much to do about it
+        }
+    }
+
+
+    ////////////////////////////////
+    // InputStream implementation //
+    ////////////////////////////////
+
+    @Override
+    public int read() throws IOException {
+        byte b[] = new byte[1];
+        int nbRead = read(b, 0, 1);
+
+        return nbRead <= 0 ? -1 : b[0] & 0xFF;
+    }
+
+    @Override
+    public int read(byte b[], int off, int len) throws IOException {
+        if (len == 0)
+            return 0;
+
+        Segment segment = getCurrentSegment();
+        if (segment == null)
+            return -1;
+
+        int nbRead = Math.min(len, segment.data.length-currentSegmentOffset);
+        System.arraycopy(segment.data, currentSegmentOffset, b, off, nbRead);
+        consume(segment, nbRead);
+
+        return nbRead;
+    }
+
+    /**
+     * Skips up to <code>n</code> bytes, waiting for them to be fetched (and written to the target channel if there is
+     * one), and returns the number of bytes that have actually been skipped. At most the remaining bytes of the current
+     * segment are skipped. <code>0</code> is returned when the end of the range has been reached.
+     *
+     * @param n maximum number of bytes to skip
+     * @return the number of bytes that have been skipped
+     * @throws IOException if the current segment could not be fetched or written to the target channel
+     */
+    @Override
+    public long skip(long n) throws IOException {
+        if (n <= 0)
+            return 0;
+
+        Segment segment = getCurrentSegment();
+        if (segment == null)
+            return 0;
+
+        int nbSkipped = (int)Math.min(n, segment.data.length-currentSegmentOffset);
+        consume(segment, nbSkipped);
+
+        return nbSkipped;
+    }
+
+    @Override
+    public synchronized int available() throws IOException {
+        Segment segment = fetchedSegments.get(currentSegmentIndex);
+
+        return segment == null || segment.error != null ? 0 : segment.data.length-currentSegmentOffset;
+    }
+
+    @Override
+    public void close() throws IOException {
+        InputStream streams[];
+        synchronized (this) {
+            if (closed)
+                return;
+
+            closed = true;
+            notifyAll();
+
+            streams = openStreams.toArray(new InputStream[openStreams.size()]);
+            openStreams.clear();
+            fetchedSegments.clear();
+        }
+
+        if (executor != null)
+            executor.shutdownNow();
+
+        // Closing the streams interrupts the threads that are blocked reading them
+        for (InputStream in : streams) {
+            try {
+                in.close();
+            }
+            catch (IOException e) {
+                // Not much to do about it
+            }
+        }
+
+        if (target != null)
+            target.close();
+    }
+
+
+    ///////////////////
+    // Inner classes //
+    ///////////////////
+
+    /**
+     * A segment that has been fetched, or that failed.
+     */
+    private static class Segment {
+        private final byte data[];
+        private IOException error;
+
+        private Segment(byte data[]) {
+            this.data = data;
+        }
+    }
+
+    /**
+     * Fetches segments until there are no more segments to fetch, or this stream is closed.
+     */
+    private class Fetcher implements Runnable {
+        public void run() {
+            try {
+                long segmentIndex;
+                while ((segmentIndex=nextSegmentToFetch()) != -1) {
+                    Segment segment;
+                    try {
+                        segment = fetchSegment(segmentIndex);
+                    }
+                    catch (InterruptedException e) {
+                        throw e;
+                    }
+                    catch (Throwable t) {
+                        // Unchecked exceptions and errors are reported as the segment's error, otherwise the consumer
+                        // would wait for this segment forever
+                        segment = new Segment(null);
+                        segment.error = new IOException(t);
+                    }
+
+                    synchronized (SegmentedInputStream.this) {
+                        if (!closed)
+                            fetchedSegments.put(segmentIndex, segment);
+                        SegmentedInputStream.this.notifyAll();
+                    }
+
+                    // The consumer will stop at the failed segment, no need to fetch the following ones
+                    if (segment.error != null)
+                        return;
+                }
+            }
+            catch (InterruptedException e) {
+                // The stream has been closed
+            }
+        }
+    }
+}
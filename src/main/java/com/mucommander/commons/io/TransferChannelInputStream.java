@@ -0,0 +1,132 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2010 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.commons.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * An InputStream that reads a source <code>FileChannel</code> and writes every byte it consumes to a target channel.
+ *
+ * <p>Bytes returned by the <code>read</code> methods are written to the target channel before they are returned.
+ * Bytes that are {@link #skip(long) skipped} are not returned at all: they are transferred from the source channel to
+ * the target channel using {@link FileChannel#transferTo(long, long, WritableByteChannel)}, which lets the operating
+ * system copy them without going through a user-space buffer.</p>
+ *
+ * <p>Skipping this stream until {@link #skip(long)} returns <code>0</code> thus copies the source channel to the target
+ * channel. Because the copy happens through regular <code>InputStream</code> calls, this stream can be wrapped in
+ * filter streams such as {@link CounterInputStream} or {@link ThroughputLimitInputStream}, provided they forward calls
+ * to <code>skip</code>. Closing this stream closes both channels, which interrupts a transfer that is in progress in
+ * another thread.</p>
+ */
+public class TransferChannelInputStream extends InputStream {
+
+    /** Channel bytes are read from */
+    private final FileChannel source;
+
+    /** Channel bytes are written to */
+    private final WritableByteChannel target;
+
+    /**
+     * Creates a new TransferChannelInputStream that transfers the given source channel, from its current position, to
+     * the given target channel.
+     *
+     * @param source the channel to read bytes from
+     * @param target the channel to write bytes to
+     */
+    public TransferChannelInputStream(FileChannel source, WritableByteChannel target) {
+        this.source = source;
+        this.target = target;
+    }
+
+    /**
+     * Writes the given bytes to the target channel entirely.
+     */
+    private void write(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            target.write(buffer);
+        }
+    }
+
+
+    ////////////////////////////////
+    // InputStream implementation //
+    ////////////////////////////////
+
+    @Override
+    public int read() throws IOException {
+        byte b[] = new byte[1];
+        int nbRead = read(b, 0, 1);
+
+        return nbRead <= 0 ? -1 : b[0] & 0xFF;
+    }
+
+    @Override
+    public int read(byte b[], int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+
+        int nbRead = source.read(ByteBuffer.wrap(b, off, len));
+        if (nbRead > 0) {
+            write(ByteBuffer.wrap(b, off, nbRead));
+        }
+
+        return nbRead;
+    }
+
+    /**
+     * Transfers up to <code>n</code> bytes from the source channel to the target channel, and returns the number of
+     * bytes that have actually been transferred. <code>0</code> is returned when the end of the source channel has
+     * been reached.
+     *
+     * @param n maximum number of bytes to transfer
+     * @return the number of bytes that have been transferred
+     * @throws IOException if an I/O error occurred while reading the source channel or writing the target channel
+     */
+    @Override
+    public long skip(long n) throws IOException {
+        if (n <= 0) {
+            return 0;
+        }
+
+        long position = source.position();
+        long nbTransferred = source.transferTo(position, n, target);
+        source.position(position + nbTransferred);
+
+        return nbTransferred;
+    }
+
+    @Override
+    public int available() throws IOException {
+        return (int)Math.min(Integer.MAX_VALUE, Math.max(0, source.size() - source.position()));
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            source.close();
+        } finally {
+            target.close();
+        }
+    }
+}
@@ -0,0 +1,220 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2010 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.commons.io.checkpoint;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Sits between a Bzip2 decompressor and the compressed stream, and looks for the 48-bit magic numbers that start
+ * Bzip2 blocks and end Bzip2 streams in the bits the decompressor consumes. Bzip2 blocks are not byte-aligned, so
+ * the magic numbers are looked for at every bit position.
+ *
+ * <p>To resume decompression at a block that is not the first one, the scanner can:
+ * <ul>
+ *   <li>return a few bytes, typically the stream header, before the compressed stream. Those bytes are not scanned.</li>
+ *   <li>shift the compressed stream by a number of bits, so that a block that does not start on a byte boundary
+ * starts on one.</li>
+ *   <li>replace the combined CRC that follows the end-of-stream magic with the one computed from the CRCs of the
+ * blocks that were actually returned, so that the decompressor does not fail when it reaches the end of the stream.
+ * The CRC of each block is still verified by the decompressor.</li>
+ * </ul>
+ * The scanner reads one byte ahead of the bytes it returns, so that the part of the combined CRC that shares a
+ * byte with the end-of-stream magic can be replaced before it is returned.</p>
+ *
+ * <p>This stream is meant to be read one byte at a time, like Bzip2 decompressors do, and should be given a buffered
+ * stream.</p>
+ */
+class Bzip2BlockScanner extends InputStream {
+
+    /** Magic number that starts a block: the BCD representation of pi */
+    final static long BLOCK_MAGIC = 0x314159265359L;
+
+    /** Magic number that ends a stream: the BCD representation of sqrt(pi) */
+    final static long END_OF_STREAM_MAGIC = 0x177245385090L;
+
+    private final static long MAGIC_MASK = (1L<<48)-1;
+
+    private final InputStream in;
+    private final byte prefix[];
+    private int prefixPos;
+
+    /** Number of bits the compressed stream is shifted by */
+    private final int shift;
+    /** Current byte of the compressed stream when shifting, -1 at the end of the stream */
+    private int current;
+    /** True if the combined CRC must be replaced */
+    private final boolean replaceCombinedCrc;
+
+    /** The next byte to return, -1 at the end of the stream */
+    private int next;
+    private boolean started;
+
+    /** Position of the first bit that was scanned */
+    private final long startBitOffset;
+    /** Position of the bit that follows the last scanned one */
+    private long bitOffset;
+    /** The last 64 bits that were scanned */
+    private long register;
+
+    /** Position of the CRC of the last block that was found, -1 once it has been read */
+    private long blockCrcOffset = -1;
+    /** Combined CRC of the blocks that were found */
+    private int combinedCrc;
+    /** Position of the combined CRC, -1 if the end-of-stream magic has not been found */
+    private long combinedCrcOffset = -1;
+
+    /** Position of the first block magic found since the last reset, -1 if none was found */
+    private long blockMagicOffset = -1;
+
+    /**
+     * Creates a new scanner.
+     *
+     * @param in the compressed stream, positioned at the byte that contains <code>bitOffset</code>
+     * @param bitOffset position in the compressed stream of the first bit this scanner returns
+     * @param prefix bytes to return before the compressed stream, not scanned
+     * @param replaceCombinedCrc <code>true</code> to replace the combined CRC that ends the stream with the one
+     * computed from the blocks that were returned
+     * @throws IOException if an error occurred while reading the first byte of a shifted stream
+     */
+    Bzip2BlockScanner(InputStream in, long bitOffset, byte prefix[], boolean replaceCombinedCrc) throws IOException {
+        this.in = in;
+        this.prefix = prefix;
+        this.shift = (int)(bitOffset&7);
+        this.startBitOffset = bitOffset;
+        this.bitOffset = bitOffset;
+        this.replaceCombinedCrc = replaceCombinedCrc;
+
+        if(shift>0)
+            current = in.read();
+    }
+
+    /**
+     * Returns the position of the first bit of the first block magic found since the last call to
+     * {@link #resetBlockMagic()}, <code>-1</code> if none was found.
+     *
+     * @return the position of the first block magic found since the last reset, -1 if none was found
+     */
+    long getBlockMagicOffset() {
+        return blockMagicOffset;
+    }
+
+    /**
+     * Forgets about the block magic found since the last reset.
+     */
+    void resetBlockMagic() {
+        blockMagicOffset = -1;
+    }
+
+    private int readShifted() throws IOException {
+        if(shift==0)
+            return in.read();
+
+        if(current<0)
+            return -1;
+
+        int following = in.read();
+        int b = (current<<shift)&0xFF;
+        if(following>=0)
+            b |= following>>>(8-shift);
+        current = following;
+
+        return b;
+    }
+
+    /**
+     * Reads the next byte of the compressed stream, looks for magic numbers in it and returns it, with the bits of
+     * the combined CRC it contains replaced if needed.
+     */
+    private int fetch() throws IOException {
+        int b = readShifted();
+        if(b<0)
+            return b;
+
+        long byteOffset = bitOffset;
+        register = (register<<8)|b;
+        bitOffset += 8;
+
+        if(blockCrcOffset!=-1 && bitOffset>=blockCrcOffset+32) {
+            int blockCrc = (int)(register>>>(bitOffset-blockCrcOffset-32));
+            combinedCrc = ((combinedCrc<<1)|(combinedCrc>>>31))^blockCrc;
+            blockCrcOffset = -1;
+        }
+
+        // Look for magic numbers that end in the byte that was just read
+        for(int s=0; s<8; s++) {
+            long start = bitOffset-s-48;
+            if(start<startBitOffset)
+                break;
+
+            long bits = (register>>>s)&MAGIC_MASK;
+            if(bits==BLOCK_MAGIC) {
+                if(blockMagicOffset==-1)
+                    blockMagicOffset = start;
+                blockCrcOffset = start+48;
+            }
+            else if(bits==END_OF_STREAM_MAGIC && combinedCrcOffset==-1) {
+                combinedCrcOffset = start+48;
+            }
+        }
+
+        if(replaceCombinedCrc && combinedCrcOffset!=-1) {
+            for(int i=0; i<8; i++) {
+                long crcBit = byteOffset+i-combinedCrcOffset;
+                if(crcBit>=0 && crcBit<32) {
+                    int mask = 0x80>>>i;
+                    b = ((combinedCrc>>>(31-crcBit))&1)==0?b&~mask:b|mask;
+                }
+            }
+        }
+
+        return b;
+    }
+
+    ////////////////////////////////
+    // InputStream implementation //
+    ////////////////////////////////
+
+    @Override
+    public int read() throws IOException {
+        if(prefixPos<prefix.length)
+            return prefix[prefixPos++]&0xFF;
+
+        if(!started) {
+            next = fetch();
+            started = true;
+        }
+
+        int b = next;
+        if(b>=0)
+            next = fetch();
+
+        return b;
+    }
+
+    @Override
+    public int available() throws IOException {
+        return prefix.length-prefixPos + (started && next>=0?1:0) + in.available();
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+}
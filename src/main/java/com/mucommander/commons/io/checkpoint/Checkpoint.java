@@ -0,0 +1,104 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2010 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.commons.io.checkpoint;
+
+/**
+ * A <code>Checkpoint</code> is a location in a compressed stream where decompression can be resumed, without
+ * having to decompress what precedes it. It associates an offset in the uncompressed data with the position, in
+ * bits, of the compressed block that starts there, and holds whatever state the decompressor needs to resume at
+ * that point (the last 32KB of uncompressed data for Deflate streams, nothing for Bzip2 streams).
+ *
+ * @see CheckpointIndex
+ */
+public class Checkpoint {
+
+    /** Offset of the checkpoint in the uncompressed data */
+    private final long uncompressedOffset;
+
+    /** Position of the checkpoint in the compressed stream, in bits */
+    private final long compressedBitOffset;
+
+    /** Decompressor state, may be null */
+    private final byte[] state;
+
+    /**
+     * Creates a new checkpoint.
+     *
+     * @param uncompressedOffset offset of the checkpoint in the uncompressed data
+     * @param compressedBitOffset position of the checkpoint in the compressed stream, in bits
+     * @param state the state the decompressor needs to resume at this checkpoint, may be <code>null</code>
+     */
+    public Checkpoint(long uncompressedOffset, long compressedBitOffset, byte[] state) {
+        this.uncompressedOffset = uncompressedOffset;
+        this.compressedBitOffset = compressedBitOffset;
+        this.state = state;
+    }
+
+    /**
+     * Returns the offset of this checkpoint in the uncompressed data.
+     *
+     * @return the offset of this checkpoint in the uncompressed data
+     */
+    public long getUncompressedOffset() {
+        return uncompressedOffset;
+    }
+
+    /**
+     * Returns the position of this checkpoint in the compressed stream, in bits.
+     *
+     * @return the position of this checkpoint in the compressed stream, in bits
+     */
+    public long getCompressedBitOffset() {
+        return compressedBitOffset;
+    }
+
+    /**
+     * Returns the offset of the byte of the compressed stream that contains the first bit of this checkpoint.
+     *
+     * @return the offset of the byte of the compressed stream that contains the first bit of this checkpoint
+     */
+    public long getCompressedByteOffset() {
+        return compressedBitOffset>>>3;
+    }
+
+    /**
+     * Returns the number of bits of the byte returned by {@link #getCompressedByteOffset()} that precede this
+     * checkpoint, and must be discarded when resuming. Bits are counted from the least significant for Deflate
+     * streams, from the most significant for Bzip2 streams.
+     *
+     * @return the number of bits that precede this checkpoint in its first byte, between 0 and 7
+     */
+    public int getBitShift() {
+        return (int)(compressedBitOffset&7);
+    }
+
+    /**
+     * Returns the state the decompressor needs to resume at this checkpoint, <code>null</code> if there is none.
+     *
+     * @return the state the decompressor needs to resume at this checkpoint, may be <code>null</code>
+     */
+    public byte[] getState() {
+        return state;
+    }
+
+    @Override
+    public String toString() {
+        return super.toString()+" uncompressedOffset="+uncompressedOffset+" compressedBitOffset="+compressedBitOffset;
+    }
+}
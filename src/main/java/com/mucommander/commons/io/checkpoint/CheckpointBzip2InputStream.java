@@ -0,0 +1,188 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2010 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.commons.io.checkpoint;
+
+import org.apache.hadoop.io.compress.bzip2.CBZip2InputStream;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * <code>CheckpointBzip2InputStream</code> decompresses a Bzip2 stream using <code>CBZip2InputStream</code> and records
+ * {@link Checkpoint checkpoints} in a {@link CheckpointIndex} as it goes. Once a checkpoint has been recorded, a new
+ * stream can be created at that checkpoint, from the compressed stream positioned at
+ * {@link Checkpoint#getCompressedByteOffset()}, without having to decompress the data that precedes it.
+ *
+ * <p>Bzip2 blocks are compressed independently from each other, so decompression can be resumed at the start of any
+ * block by giving the decompressor a stream header followed by the block, shifted so that it starts on a byte
+ * boundary. Blocks are located by looking for the magic number they start with in the compressed data the
+ * decompressor reads. Checkpoints only hold the stream's block size, and therefore take very little memory.</p>
+ *
+ * <p><code>CBZip2InputStream</code> decompresses a block as soon as the last byte of the previous one has been
+ * returned, which is what allows the uncompressed offset of a block to be known: once the index needs a checkpoint,
+ * decompressed data is read one byte at a time so that the byte after which the block magic has been read is known.
+ * The rest of the data is read in bulk.</p>
+ *
+ * @see CheckpointIndex
+ */
+public class CheckpointBzip2InputStream extends InputStream {
+
+    /** The underlying Bzip2 decompressor */
+    private final InputStream decoder;
+    /** Looks for block boundaries in the data read by the decoder */
+    private final Bzip2BlockScanner scanner;
+    /** The index checkpoints are added to, may be null */
+    private final CheckpointIndex index;
+    /** State shared by all checkpoints of the stream: the block size header byte */
+    private final byte state[];
+
+    /** Uncompressed offset of the next byte to be returned */
+    private long position;
+    private boolean eof;
+
+    /**
+     * Creates a new stream that decompresses the given Bzip2 stream from its start, recording checkpoints in the
+     * specified index as it goes.
+     *
+     * @param in the Bzip2 stream, positioned at its start (before the <code>BZh</code> magic)
+     * @param index the index to add checkpoints to, <code>null</code> not to record checkpoints
+     * @throws IOException if the stream does not start with a valid Bzip2 header
+     */
+    public CheckpointBzip2InputStream(InputStream in, CheckpointIndex index) throws IOException {
+        in = new BufferedInputStream(in);
+        if(in.read()!='B' || in.read()!='Z' || in.read()!='h')
+            throw new IOException("Not in BZIP2 format");
+
+        int blockSize = in.read();
+        if(blockSize<'1' || blockSize>'9')
+            throw new IOException("Invalid BZIP2 block size");
+
+        this.index = index;
+        this.state = new byte[]{(byte)blockSize};
+        this.scanner = new Bzip2BlockScanner(in, 32, new byte[]{'h', (byte)blockSize}, false);
+        this.decoder = createDecoder(scanner);
+    }
+
+    /**
+     * Creates a new stream that resumes decompression at the given checkpoint. The compressed stream must be
+     * positioned at {@link Checkpoint#getCompressedByteOffset()}. Checkpoints past the ones already present in the
+     * index are recorded as the stream is read.
+     *
+     * <p>The combined CRC that ends the stream cannot be verified when decompression is resumed, the CRC of each
+     * block is verified as usual.</p>
+     *
+     * @param in the Bzip2 stream, positioned at the checkpoint's compressed byte offset
+     * @param checkpoint the checkpoint to resume decompression at
+     * @param index the index to add checkpoints to, <code>null</code> not to record checkpoints
+     * @throws IOException if the checkpoint is corrupt or an I/O error occurred
+     */
+    public CheckpointBzip2InputStream(InputStream in, Checkpoint checkpoint, CheckpointIndex index) throws IOException {
+        byte checkpointState[] = checkpoint.getState();
+        if(checkpointState==null || checkpointState.length!=1)
+            throw new IOException("Corrupt checkpoint");
+
+        this.index = index;
+        this.state = checkpointState;
+        this.position = checkpoint.getUncompressedOffset();
+        this.scanner = new Bzip2BlockScanner(new BufferedInputStream(in), checkpoint.getCompressedBitOffset(),
+                new byte[]{'h', checkpointState[0]}, true);
+        this.decoder = createDecoder(scanner);
+    }
+
+    private static InputStream createDecoder(InputStream in) throws IOException {
+        try {
+            return new CBZip2InputStream(in);
+        }
+        catch(RuntimeException e) {
+            // CBZip2InputStream is known to throw NullPointerException if the stream is not properly Bzip2-encoded
+            throw new IOException("Invalid BZIP2 stream", e);
+        }
+    }
+
+    /**
+     * Returns the offset in the uncompressed data of the next byte this stream will return.
+     *
+     * @return the offset in the uncompressed data of the next byte this stream will return
+     */
+    public long getPosition() {
+        return position;
+    }
+
+
+    ////////////////////////////////
+    // InputStream implementation //
+    ////////////////////////////////
+
+    @Override
+    public int read() throws IOException {
+        if(eof)
+            return -1;
+
+        scanner.resetBlockMagic();
+        int b = decoder.read();
+        if(b<0) {
+            eof = true;
+            return -1;
+        }
+
+        position++;
+
+        // The next block has been read if this byte was the last one of the current block
+        long blockMagicOffset = scanner.getBlockMagicOffset();
+        if(blockMagicOffset!=-1 && index!=null && index.needsCheckpoint(position))
+            index.add(new Checkpoint(position, blockMagicOffset, state));
+
+        return b;
+    }
+
+    @Override
+    public int read(byte b[], int off, int len) throws IOException {
+        if(len==0)
+            return 0;
+
+        if(eof)
+            return -1;
+
+        // A checkpoint may be recorded in the requested range: locate the next block one byte at a time
+        if(index!=null && index.needsCheckpoint(position+len)) {
+            int n = 0;
+            int c;
+            while(n<len && (c=read())!=-1)
+                b[off+n++] = (byte)c;
+
+            return n==0?-1:n;
+        }
+
+        int n = decoder.read(b, off, len);
+        if(n<0) {
+            eof = true;
+            return -1;
+        }
+
+        position += n;
+
+        return n;
+    }
+
+    @Override
+    public void close() throws IOException {
+        decoder.close();
+    }
+}
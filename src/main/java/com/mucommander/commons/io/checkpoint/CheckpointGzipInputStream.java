@@ -0,0 +1,969 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2010 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.commons.io.checkpoint;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+/**
+ * <code>CheckpointGzipInputStream</code> decompresses a Gzip stream, like <code>java.util.zip.GZIPInputStream</code>
+ * does, and records {@link Checkpoint checkpoints} in a {@link CheckpointIndex} as it goes. Once a checkpoint
+ * has been recorded, a new stream can be created at that checkpoint, from the compressed stream positioned at
+ * {@link Checkpoint#getCompressedByteOffset()}, without having to decompress the data that precedes it.
+ *
+ * <p>This is the technique used by zlib's <code>zran</code> example: a Deflate stream can be resumed at the
+ * start of any of its blocks, provided that the decompressor knows the bit where the block starts and is given the
+ * 32KB of uncompressed data that precede it, which back-references may point to. <code>java.util.zip.Inflater</code>
+ * does not report block boundaries and cannot be started in the middle of a byte, so this class comes with its own
+ * Inflate implementation. Checkpoints hold the preceding 32KB in Deflate-compressed form.</p>
+ *
+ * <p>That implementation is slower than <code>Inflater</code>, so it is only used where checkpoints may have to be
+ * recorded: at a block that starts on a byte boundary, decompression is handed off to an <code>Inflater</code> primed
+ * with the window if no index was given, or up to the last checkpoint of the index otherwise. Decompression is then
+ * handed back at that checkpoint, and new checkpoints are recorded past it.</p>
+ *
+ * <p>Multi-member streams (concatenated Gzip files) are supported. The CRC32 and size of each member are checked,
+ * except for the member a stream was resumed in, since only part of it is decompressed.</p>
+ *
+ * @see CheckpointIndex
+ */
+public class CheckpointGzipInputStream extends InputStream {
+
+    /** Maximum distance of a back-reference */
+    private final static int MAX_WINDOW_SIZE = 32768;
+
+    /** Maximum length of a back-reference */
+    private final static int MAX_MATCH = 258;
+
+    /** Size of the ring buffer that holds both the window and the data that has not been read yet */
+    private final static int RING_SIZE = 1<<17;
+    private final static int RING_MASK = RING_SIZE-1;
+
+    /** Size of the buffer compressed data is read into */
+    private final static int INPUT_BUFFER_SIZE = 65536;
+
+    /** Number of bytes kept at the start of the input buffer when it is refilled for the <code>Inflater</code>, which
+     * may have read that far past the bit where it is handed back at */
+    private final static int INFLATER_INPUT_KEEP = 64;
+
+    /** Gzip header flags */
+    private final static int FHCRC = 2;
+    private final static int FEXTRA = 4;
+    private final static int FNAME = 8;
+    private final static int FCOMMENT = 16;
+
+    /** Decoder states */
+    private final static int STATE_HEADER = 0;
+    private final static int STATE_BLOCK_HEADER = 1;
+    private final static int STATE_STORED = 2;
+    private final static int STATE_HUFFMAN = 3;
+    private final static int STATE_TRAILER = 4;
+    private final static int STATE_EOF = 5;
+    private final static int STATE_INFLATER = 6;
+
+    private final static int LENGTH_BASE[] = {
+        3, 4, 5, 6, 7, 8, 9, 10, 11, 13, 15, 17, 19, 23, 27, 31, 35, 43, 51, 59, 67, 83, 99, 115, 131, 163, 195, 227,
+        258
+    };
+    private final static int LENGTH_EXTRA[] = {
+        0, 0, 0, 0, 0, 0, 0, 0, 1, 1, 1, 1, 2, 2, 2, 2, 3, 3, 3, 3, 4, 4, 4, 4, 5, 5, 5, 5, 0
+    };
+    private final static int DIST_BASE[] = {
+        1, 2, 3, 4, 5, 7, 9, 13, 17, 25, 33, 49, 65, 97, 129, 193, 257, 385, 513, 769, 1025, 1537, 2049, 3073, 4097,
+        6145, 8193, 12289, 16385, 24577
+    };
+    private final static int DIST_EXTRA[] = {
+        0, 0, 0, 0, 1, 1, 2, 2, 3, 3, 4, 4, 5, 5, 6, 6, 7, 7, 8, 8, 9, 9, 10, 10, 11, 11, 12, 12, 13, 13
+    };
+    /** Order in which code length code lengths are stored in a dynamic block header */
+    private final static int CODE_LENGTH_ORDER[] = {
+        16, 17, 18, 0, 8, 7, 9, 6, 10, 5, 11, 4, 12, 3, 13, 2, 14, 1, 15
+    };
+
+    /** Fixed Huffman tables, shared by all instances */
+    private final static int FIXED_LITERAL_TABLE[] = new int[1<<9];
+    private final static int FIXED_DISTANCE_TABLE[] = new int[1<<5];
+
+    static {
+        byte lengths[] = new byte[288+30];
+        Arrays.fill(lengths, 0, 144, (byte)8);
+        Arrays.fill(lengths, 144, 256, (byte)9);
+        Arrays.fill(lengths, 256, 280, (byte)7);
+        Arrays.fill(lengths, 280, 288, (byte)8);
+        Arrays.fill(lengths, 288, 318, (byte)5);
+        try {
+            buildTable(lengths, 0, 288, FIXED_LITERAL_TABLE);
+            buildTable(lengths, 288, 30, FIXED_DISTANCE_TABLE);
+        }
+        catch(IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /** The compressed stream */
+    private final InputStream in;
+    /** The index checkpoints are added to, may be null */
+    private final CheckpointIndex index;
+
+    private final byte inBuf[] = new byte[INPUT_BUFFER_SIZE];
+    private int inPos;
+    private int inLen;
+    private boolean inEOF;
+    /** Number of bytes shifted into the bit buffer, counted from the start of the compressed stream */
+    private long inBytes;
+    /** Number of zero bytes that have been shifted into the bit buffer after the end of the compressed stream */
+    private int padding;
+    private long bitBuf;
+    private int bitCount;
+
+    private final byte ring[] = new byte[RING_SIZE];
+    /** Uncompressed offset of the next byte to be decompressed */
+    private long produced;
+    /** Uncompressed offset of the next byte to be returned */
+    private long consumed;
+    /** Uncompressed offset of the first byte back-references may point to */
+    private long historyStart;
+
+    private final CRC32 crc = new CRC32();
+    private boolean checkCrc;
+    /** Uncompressed offset up to which the CRC has been computed */
+    private long crcPos;
+    /** Uncompressed offset of the start of the current member */
+    private long memberStart;
+    private boolean firstMember = true;
+
+    private int state;
+    private boolean lastBlock;
+    private int storedRemaining;
+
+    private final int literalTable[] = new int[1<<15];
+    private final int distanceTable[] = new int[1<<15];
+    private final int codeLengthTable[] = new int[1<<7];
+    private final byte lengths[] = new byte[286+30];
+    private int currentLiteralTable[];
+    private int currentDistanceTable[];
+    private int literalMask;
+    private int distanceMask;
+
+    /** Decompresses the blocks that need no checkpoint, created the first time decompression is handed off */
+    private Inflater inflater;
+    /** Offset in the compressed stream of the first byte of the input buffer, while the Inflater is used */
+    private long inBufStart;
+    /** Checkpoint decompression is handed back at, null to use the Inflater up to the end of the member */
+    private Checkpoint inflaterEnd;
+
+    private boolean closed;
+
+    /**
+     * Creates a new stream that decompresses the given Gzip stream from its start, recording checkpoints in the
+     * specified index as it goes.
+     *
+     * @param in the Gzip stream, positioned at its start
+     * @param index the index to add checkpoints to, <code>null</code> not to record checkpoints
+     * @throws IOException if the stream does not start with a valid Gzip header
+     */
+    public CheckpointGzipInputStream(InputStream in, CheckpointIndex index) throws IOException {
+        this.in = in;
+        this.index = index;
+
+        state = STATE_HEADER;
+        if(!readMemberHeader())
+            throw new EOFException();
+    }
+
+    /**
+     * Creates a new stream that resumes decompression at the given checkpoint. The compressed stream must be
+     * positioned at {@link Checkpoint#getCompressedByteOffset()}. Checkpoints past the ones already present in the
+     * index are recorded as the stream is read.
+     *
+     * @param in the Gzip stream, positioned at the checkpoint's compressed byte offset
+     * @param checkpoint the checkpoint to resume decompression at
+     * @param index the index to add checkpoints to, <code>null</code> not to record checkpoints
+     * @throws IOException if the checkpoint's state is corrupt or an I/O error occurred
+     */
+    public CheckpointGzipInputStream(InputStream in, Checkpoint checkpoint, CheckpointIndex index) throws IOException {
+        this.in = in;
+        this.index = index;
+
+        inBytes = checkpoint.getCompressedByteOffset();
+        produced = consumed = crcPos = checkpoint.getUncompressedOffset();
+
+        byte window[] = inflateWindow(checkpoint.getState());
+        for(int i=0; i<window.length; i++)
+            ring[(int)((produced-window.length+i)&RING_MASK)] = window[i];
+        historyStart = produced-window.length;
+        memberStart = produced;
+
+        int shift = checkpoint.getBitShift();
+        if(shift>0)
+            readBits(shift);
+
+        firstMember = false;
+        checkCrc = false;
+        state = STATE_BLOCK_HEADER;
+    }
+
+    /**
+     * Returns the offset in the uncompressed data of the next byte this stream will return.
+     *
+     * @return the offset in the uncompressed data of the next byte this stream will return
+     */
+    public long getPosition() {
+        return consumed;
+    }
+
+
+    //////////////////////
+    // Bit-level access //
+    //////////////////////
+
+    private boolean fillInput() throws IOException {
+        return fillInput(0);
+    }
+
+    /**
+     * Reads compressed data into the input buffer, after the given number of bytes that are kept from the end of the
+     * previous data. Returns <code>false</code> if the end of the compressed stream has been reached.
+     */
+    private boolean fillInput(int keep) throws IOException {
+        if(inEOF)
+            return false;
+
+        int n;
+        do {
+            n = in.read(inBuf, keep, inBuf.length-keep);
+        }
+        while(n==0);
+
+        if(n<0) {
+            inEOF = true;
+            return false;
+        }
+
+        inPos = keep;
+        inLen = keep+n;
+        return true;
+    }
+
+    /**
+     * Fills the bit buffer with at least 57 bits. Zero bytes are used once the end of the compressed stream has
+     * been reached, {@link #checkOverrun()} tells whether any of them has been consumed.
+     */
+    private void refill() throws IOException {
+        while(bitCount<=56) {
+            int b;
+            if(inPos<inLen || fillInput()) {
+                b = inBuf[inPos++]&0xFF;
+            }
+            else {
+                b = 0;
+                padding++;
+            }
+
+            bitBuf |= ((long)b)<<bitCount;
+            bitCount += 8;
+            inBytes++;
+        }
+    }
+
+    private long getBitPosition() {
+        return (inBytes<<3)-bitCount;
+    }
+
+    private void checkOverrun() throws IOException {
+        if(padding>0 && getBitPosition()>(inBytes-padding)<<3)
+            throw new EOFException("Unexpected end of ZLIB input stream");
+    }
+
+    private int readBits(int n) throws IOException {
+        if(bitCount<n)
+            refill();
+
+        int value = (int)(bitBuf&((1L<<n)-1));
+        bitBuf >>>= n;
+        bitCount -= n;
+
+        if(padding>0)
+            checkOverrun();
+
+        return value;
+    }
+
+    private void alignToByte() {
+        int n = bitCount&7;
+        bitBuf >>>= n;
+        bitCount -= n;
+    }
+
+    /**
+     * Returns <code>true</code> if there is at least one more byte to read in the compressed stream. The stream
+     * must be aligned on a byte boundary.
+     */
+    private boolean hasMoreInput() throws IOException {
+        refill();
+        return getBitPosition()<(inBytes-padding)<<3;
+    }
+
+
+    ///////////////////
+    // Gzip wrapping //
+    ///////////////////
+
+    /**
+     * Reads the header of the next Gzip member and returns <code>true</code>, or returns <code>false</code> if the end
+     * of the stream has been reached. Like <code>GZIPInputStream</code>, trailing data that is not a Gzip member is
+     * ignored.
+     */
+    private boolean readMemberHeader() throws IOException {
+        if(!hasMoreInput()) {
+            if(firstMember)
+                throw new EOFException();
+            return false;
+        }
+
+        if(readBits(8)!=0x1f || !hasMoreInput() || readBits(8)!=0x8b) {
+            if(firstMember)
+                throw new ZipException("Not in GZIP format");
+            return false;
+        }
+
+        if(readBits(8)!=8)
+            throw new ZipException("Unsupported compression method");
+
+        int flags = readBits(8);
+        // Skip modification time, extra flags and operating system
+        readBits(32);
+        readBits(16);
+
+        if((flags&FEXTRA)!=0) {
+            int extraLength = readBits(16);
+            for(int i=0; i<extraLength; i++)
+                readBits(8);
+        }
+        if((flags&FNAME)!=0) {
+            while(readBits(8)!=0);
+        }
+        if((flags&FCOMMENT)!=0) {
+            while(readBits(8)!=0);
+        }
+        if((flags&FHCRC)!=0)
+            readBits(16);
+
+        firstMember = false;
+        memberStart = historyStart = crcPos = produced;
+        crc.reset();
+        checkCrc = true;
+        state = STATE_BLOCK_HEADER;
+
+        return true;
+    }
+
+    private void readMemberTrailer() throws IOException {
+        alignToByte();
+        long expectedCrc = readBits(32)&0xFFFFFFFFL;
+        long expectedSize = readBits(32)&0xFFFFFFFFL;
+
+        if(checkCrc) {
+            updateCrc();
+            if(crc.getValue()!=expectedCrc || ((produced-memberStart)&0xFFFFFFFFL)!=expectedSize)
+                throw new ZipException("Corrupt GZIP trailer");
+        }
+    }
+
+    private void updateCrc() {
+        if(!checkCrc) {
+            crcPos = produced;
+            return;
+        }
+
+        while(crcPos<produced) {
+            int start = (int)(crcPos&RING_MASK);
+            int len = (int)Math.min(produced-crcPos, RING_SIZE-start);
+            crc.update(ring, start, len);
+            crcPos += len;
+        }
+    }
+
+
+    /////////////
+    // Inflate //
+    /////////////
+
+    /**
+     * Builds a single-level lookup table for the given canonical Huffman code lengths: the table is indexed by the
+     * next <code>maxLength</code> bits of input, and each entry holds the decoded symbol shifted left by 4 bits,
+     * ORed with the length of its code. Entries that do not correspond to a code are 0. Returns the maximum code
+     * length, <code>0</code> if no symbol has a code.
+     */
+    private static int buildTable(byte lengths[], int offset, int nbSymbols, int table[]) throws IOException {
+        int count[] = new int[16];
+        int maxLength = 0;
+        for(int i=0; i<nbSymbols; i++) {
+            int length = lengths[offset+i];
+            count[length]++;
+            if(length>maxLength)
+                maxLength = length;
+        }
+
+        table[0] = 0;
+        if(maxLength==0)
+            return 0;
+
+        count[0] = 0;
+        int left = 1;
+        for(int length=1; length<16; length++) {
+            left = (left<<1)-count[length];
+            if(left<0)
+                throw new ZipException("Invalid Huffman code: over-subscribed");
+        }
+
+        int nextCode[] = new int[16];
+        int code = 0;
+        for(int length=1; length<16; length++) {
+            code = (code+count[length-1])<<1;
+            nextCode[length] = code;
+        }
+
+        int size = 1<<maxLength;
+        Arrays.fill(table, 0, size, 0);
+        for(int symbol=0; symbol<nbSymbols; symbol++) {
+            int length = lengths[offset+symbol];
+            if(length==0)
+                continue;
+
+            // Codes are stored most significant bit first, whereas bits are read least significant first
+            int reversed = Integer.reverse(nextCode[length]++)>>>(32-length);
+            int entry = (symbol<<4)|length;
+            for(int i=reversed; i<size; i+=1<<length)
+                table[i] = entry;
+        }
+
+        return maxLength;
+    }
+
+    private void readBlockHeader() throws IOException {
+        if(startInflater())
+            return;
+
+        recordCheckpoint();
+
+        lastBlock = readBits(1)==1;
+        switch(readBits(2)) {
+            case 0:
+                alignToByte();
+                int length = readBits(16);
+                if(length!=(~readBits(16)&0xFFFF))
+                    throw new ZipException("Invalid stored block lengths");
+                storedRemaining = length;
+                state = STATE_STORED;
+                break;
+
+            case 1:
+                currentLiteralTable = FIXED_LITERAL_TABLE;
+                literalMask = (1<<9)-1;
+                currentDistanceTable = FIXED_DISTANCE_TABLE;
+                distanceMask = (1<<5)-1;
+                state = STATE_HUFFMAN;
+                break;
+
+            case 2:
+                readDynamicTables();
+                state = STATE_HUFFMAN;
+                break;
+
+            default:
+                throw new ZipException("Invalid block type");
+        }
+    }
+
+    private void readDynamicTables() throws IOException {
+        int nbLiterals = readBits(5)+257;
+        int nbDistances = readBits(5)+1;
+        int nbCodeLengths = readBits(4)+4;
+        if(nbLiterals>286 || nbDistances>30)
+            throw new ZipException("Too many length or distance symbols");
+
+        byte codeLengthLengths[] = new byte[19];
+        for(int i=0; i<nbCodeLengths; i++)
+            codeLengthLengths[CODE_LENGTH_ORDER[i]] = (byte)readBits(3);
+        int codeLengthMask = (1<<buildTable(codeLengthLengths, 0, 19, codeLengthTable))-1;
+
+        int total = nbLiterals+nbDistances;
+        int n = 0;
+        while(n<total) {
+            if(bitCount<16)
+                refill();
+
+            int entry = codeLengthTable[(int)bitBuf&codeLengthMask];
+            int codeLength = entry&15;
+            if(codeLength==0)
+                throw new ZipException("Invalid code lengths set");
+            bitBuf >>>= codeLength;
+            bitCount -= codeLength;
+
+            int symbol = entry>>>4;
+            if(symbol<16) {
+                lengths[n++] = (byte)symbol;
+                continue;
+            }
+
+            byte value = 0;
+            int repeat;
+            if(symbol==16) {
+                if(n==0)
+                    throw new ZipException("Invalid bit length repeat");
+                value = lengths[n-1];
+                repeat = 3+readBits(2);
+            }
+            else if(symbol==17) {
+                repeat = 3+readBits(3);
+            }
+            else {
+                repeat = 11+readBits(7);
+            }
+
+            if(n+repeat>total)
+                throw new ZipException("Invalid bit length repeat");
+            while(repeat-->0)
+                lengths[n++] = value;
+        }
+
+        if(lengths[256]==0)
+            throw new ZipException("Invalid code: missing end-of-block");
+
+        literalMask = (1<<buildTable(lengths, 0, nbLiterals, literalTable))-1;
+        distanceMask = (1<<buildTable(lengths, nbLiterals, nbDistances, distanceTable))-1;
+        currentLiteralTable = literalTable;
+        currentDistanceTable = distanceTable;
+    }
+
+    /**
+     * Copies as much of the current stored block as fits in the ring buffer.
+     */
+    private void inflateStored() throws IOException {
+        int space = (int)Math.min(storedRemaining, consumed+RING_SIZE-produced);
+        for(int i=0; i<space; i++) {
+            byte b;
+            if(bitCount>=8) {
+                b = (byte)bitBuf;
+                bitBuf >>>= 8;
+                bitCount -= 8;
+            }
+            else {
+                if(inPos==inLen && !fillInput())
+                    throw new EOFException("Unexpected end of ZLIB input stream");
+                b = inBuf[inPos++];
+                inBytes++;
+            }
+            ring[(int)(produced++&RING_MASK)] = b;
+        }
+
+        checkOverrun();
+
+        storedRemaining -= space;
+        if(storedRemaining==0)
+            state = lastBlock?STATE_TRAILER:STATE_BLOCK_HEADER;
+    }
+
+    /**
+     * Decodes symbols of the current Huffman block until the end of the block, or until the ring buffer is full.
+     */
+    private void inflateHuffman() throws IOException {
+        byte ring[] = this.ring;
+        int literalTable[] = currentLiteralTable;
+        int literalMask = this.literalMask;
+        int distanceTable[] = currentDistanceTable;
+        int distanceMask = this.distanceMask;
+        long limit = consumed+RING_SIZE-MAX_MATCH;
+        long pos = produced;
+        long bitBuf = this.bitBuf;
+        int bitCount = this.bitCount;
+
+        try {
+            while(pos<=limit) {
+                // 48 bits are enough for a length code, a distance code and their extra bits
+                if(bitCount<48) {
+                    this.bitBuf = bitBuf;
+                    this.bitCount = bitCount;
+                    refill();
+                    checkOverrun();
+                    bitBuf = this.bitBuf;
+                    bitCount = this.bitCount;
+                }
+
+                int entry = literalTable[(int)bitBuf&literalMask];
+                int codeLength = entry&15;
+                if(codeLength==0)
+                    throw new ZipException("Invalid literal/length code");
+                bitBuf >>>= codeLength;
+                bitCount -= codeLength;
+
+                int symbol = entry>>>4;
+                if(symbol<256) {
+                    ring[(int)(pos++&RING_MASK)] = (byte)symbol;
+                    continue;
+                }
+
+                if(symbol==256) {
+                    state = lastBlock?STATE_TRAILER:STATE_BLOCK_HEADER;
+                    break;
+                }
+
+                symbol -= 257;
+                if(symbol>=29)
+                    throw new ZipException("Invalid literal/length code");
+                int extra = LENGTH_EXTRA[symbol];
+                int length = LENGTH_BASE[symbol]+(int)(bitBuf&((1<<extra)-1));
+                bitBuf >>>= extra;
+                bitCount -= extra;
+
+                entry = distanceTable[(int)bitBuf&distanceMask];
+                codeLength = entry&15;
+                if(codeLength==0)
+                    throw new ZipException("Invalid distance code");
+                bitBuf >>>= codeLength;
+                bitCount -= codeLength;
+
+                symbol = entry>>>4;
+                if(symbol>=30)
+                    throw new ZipException("Invalid distance code");
+                extra = DIST_EXTRA[symbol];
+                int distance = DIST_BASE[symbol]+(int)(bitBuf&((1<<extra)-1));
+                bitBuf >>>= extra;
+                bitCount -= extra;
+
+                if(distance>pos-historyStart)
+                    throw new ZipException("Invalid distance too far back");
+
+                for(long from=pos-distance, end=pos+length; pos<end; )
+                    ring[(int)(pos++&RING_MASK)] = ring[(int)(from++&RING_MASK)];
+            }
+        }
+        finally {
+            this.bitBuf = bitBuf;
+            this.bitCount = bitCount;
+            this.produced = pos;
+        }
+
+        checkOverrun();
+    }
+
+    /**
+     * Decompresses data into the ring buffer until it is full or the end of the stream has been reached.
+     */
+    private void fill() throws IOException {
+        while(state!=STATE_EOF && consumed+RING_SIZE-produced>MAX_MATCH) {
+            switch(state) {
+                case STATE_HEADER:
+                    if(!readMemberHeader())
+                        state = STATE_EOF;
+                    break;
+
+                case STATE_BLOCK_HEADER:
+                    readBlockHeader();
+                    break;
+
+                case STATE_STORED:
+                    inflateStored();
+                    break;
+
+                case STATE_HUFFMAN:
+                    inflateHuffman();
+                    break;
+
+                case STATE_TRAILER:
+                    readMemberTrailer();
+                    state = STATE_HEADER;
+                    break;
+
+                case STATE_INFLATER:
+                    inflateWithInflater();
+                    break;
+            }
+        }
+
+        updateCrc();
+    }
+
+
+    //////////////
+    // Inflater //
+    //////////////
+
+    /**
+     * Hands decompression off to the <code>Inflater</code> and returns <code>true</code> if the block that starts at
+     * the current bit position needs no checkpoint and starts on a byte boundary.
+     */
+    private boolean startInflater() throws IOException {
+        Checkpoint end = null;
+        if(index!=null) {
+            end = index.get(Long.MAX_VALUE);
+            if(end==null || end.getUncompressedOffset()<=produced)
+                return false;
+        }
+
+        // Give back the bytes of the bit buffer, which must all come from the input buffer
+        int nbBytes = bitCount>>3;
+        if((bitCount&7)!=0 || padding>0 || nbBytes>inPos)
+            return false;
+
+        inPos -= nbBytes;
+        inBytes -= nbBytes;
+        bitBuf = 0;
+        bitCount = 0;
+        inBufStart = inBytes-inPos;
+
+        if(inflater==null)
+            inflater = new Inflater(true);
+        else
+            inflater.reset();
+
+        int windowLength = (int)Math.min(MAX_WINDOW_SIZE, produced-historyStart);
+        if(windowLength>0) {
+            byte window[] = new byte[windowLength];
+            for(int i=0; i<windowLength; i++)
+                window[i] = ring[(int)((produced-windowLength+i)&RING_MASK)];
+            inflater.setDictionary(window);
+        }
+        inflater.setInput(inBuf, inPos, inLen-inPos);
+
+        inflaterEnd = end;
+        state = STATE_INFLATER;
+        return true;
+    }
+
+    /**
+     * Decompresses data with the <code>Inflater</code> until the ring buffer is full, the end of the member's Deflate
+     * stream is reached, or the checkpoint decompression is handed back at is passed.
+     */
+    private void inflateWithInflater() throws IOException {
+        int start = (int)(produced&RING_MASK);
+        int len = (int)Math.min(consumed+RING_SIZE-produced, RING_SIZE-start);
+        // Stop one byte past the checkpoint, which tells that the checkpoint does not start the next member
+        if(inflaterEnd!=null)
+            len = (int)Math.min(len, inflaterEnd.getUncompressedOffset()+1-produced);
+
+        int n;
+        try {
+            n = inflater.inflate(ring, start, len);
+        }
+        catch(DataFormatException e) {
+            throw new ZipException(e.getMessage());
+        }
+        produced += n;
+
+        if(inflater.finished()) {
+            inPos = inLen-inflater.getRemaining();
+            inBytes = inBufStart+inPos;
+            state = STATE_TRAILER;
+        }
+        else if(inflaterEnd!=null && produced>inflaterEnd.getUncompressedOffset()) {
+            // Resume at the checkpoint, which is where the Inflater has got to, give or take a few bytes of input
+            produced = inflaterEnd.getUncompressedOffset();
+            inBytes = inflaterEnd.getCompressedByteOffset();
+            long pos = inBytes-inBufStart;
+            if(pos<0 || pos>inLen)
+                throw new ZipException("Corrupt checkpoint");
+            inPos = (int)pos;
+
+            int shift = inflaterEnd.getBitShift();
+            if(shift>0)
+                readBits(shift);
+            state = STATE_BLOCK_HEADER;
+        }
+        else if(n==0) {
+            if(inflater.needsDictionary())
+                throw new ZipException("Invalid distance too far back");
+
+            if(inflater.needsInput()) {
+                int keep = Math.min(INFLATER_INPUT_KEEP, inLen);
+                System.arraycopy(inBuf, inLen-keep, inBuf, 0, keep);
+                inBufStart += inLen-keep;
+                if(!fillInput(keep))
+                    throw new EOFException("Unexpected end of ZLIB input stream");
+                inflater.setInput(inBuf, inPos, inLen-inPos);
+            }
+        }
+    }
+
+
+    /////////////////
+    // Checkpoints //
+    /////////////////
+
+    /**
+     * Adds a checkpoint to the index for the block that starts at the current bit position, if the index needs one.
+     */
+    private void recordCheckpoint() throws IOException {
+        if(index==null || !index.needsCheckpoint(produced))
+            return;
+
+        int windowLength = (int)Math.min(MAX_WINDOW_SIZE, produced-historyStart);
+        byte window[] = new byte[windowLength];
+        for(int i=0; i<windowLength; i++)
+            window[i] = ring[(int)((produced-windowLength+i)&RING_MASK)];
+
+        index.add(new Checkpoint(produced, getBitPosition(), deflateWindow(window)));
+    }
+
+    private static byte[] deflateWindow(byte window[]) {
+        Deflater deflater = new Deflater();
+        try {
+            deflater.setInput(window);
+            deflater.finish();
+
+            ByteArrayOutputStream bout = new ByteArrayOutputStream(window.length/2+64);
+            byte buffer[] = new byte[8192];
+            while(!deflater.finished()) {
+                int n = deflater.deflate(buffer);
+                bout.write(buffer, 0, n);
+            }
+
+            return bout.toByteArray();
+        }
+        finally {
+            deflater.end();
+        }
+    }
+
+    private static byte[] inflateWindow(byte state[]) throws IOException {
+        if(state==null)
+            return new byte[0];
+
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(state);
+
+            ByteArrayOutputStream bout = new ByteArrayOutputStream(MAX_WINDOW_SIZE);
+            byte buffer[] = new byte[8192];
+            while(!inflater.finished()) {
+                int n = inflater.inflate(buffer);
+                if(n==0 && !inflater.finished() && (inflater.needsInput() || inflater.needsDictionary()))
+                    throw new ZipException("Corrupt checkpoint");
+                bout.write(buffer, 0, n);
+            }
+
+            if(bout.size()>MAX_WINDOW_SIZE)
+                throw new ZipException("Corrupt checkpoint");
+
+            return bout.toByteArray();
+        }
+        catch(DataFormatException e) {
+            throw new ZipException("Corrupt checkpoint");
+        }
+        finally {
+            inflater.end();
+        }
+    }
+
+
+    ////////////////////////////////
+    // InputStream implementation //
+    ////////////////////////////////
+
+    private void ensureOpen() throws IOException {
+        if(closed)
+            throw new IOException("Stream closed");
+    }
+
+    @Override
+    public int read() throws IOException {
+        ensureOpen();
+
+        if(produced==consumed) {
+            fill();
+            if(produced==consumed)
+                return -1;
+        }
+
+        return ring[(int)(consumed++&RING_MASK)]&0xFF;
+    }
+
+    @Override
+    public int read(byte b[], int off, int len) throws IOException {
+        ensureOpen();
+
+        if(len==0)
+            return 0;
+
+        if(produced==consumed) {
+            fill();
+            if(produced==consumed)
+                return -1;
+        }
+
+        int n = (int)Math.min(len, produced-consumed);
+        int start = (int)(consumed&RING_MASK);
+        int firstPart = Math.min(n, RING_SIZE-start);
+        System.arraycopy(ring, start, b, off, firstPart);
+        if(firstPart<n)
+            System.arraycopy(ring, 0, b, off+firstPart, n-firstPart);
+
+        consumed += n;
+        return n;
+    }
+
+    /**
+     * Overridden to skip decompressed data without copying it.
+     */
+    @Override
+    public long skip(long n) throws IOException {
+        ensureOpen();
+
+        long skipped = 0;
+        while(skipped<n) {
+            if(produced==consumed) {
+                fill();
+                if(produced==consumed)
+                    break;
+            }
+
+            long chunk = Math.min(n-skipped, produced-consumed);
+            consumed += chunk;
+            skipped += chunk;
+        }
+
+        return skipped;
+    }
+
+    @Override
+    public int available() throws IOException {
+        ensureOpen();
+
+        return (int)Math.min(Integer.MAX_VALUE, produced-consumed);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if(!closed) {
+            closed = true;
+            if(inflater!=null)
+                inflater.end();
+            in.close();
+        }
+    }
+}
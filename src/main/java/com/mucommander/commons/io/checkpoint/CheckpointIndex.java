@@ -0,0 +1,213 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2010 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.commons.io.checkpoint;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A <code>CheckpointIndex</code> holds the {@link Checkpoint checkpoints} of a compressed stream, sorted by
+ * uncompressed offset. Checkpoints are added by the decompressing streams of this package as the compressed stream is
+ * read, at most one every {@link #getSpan() span} bytes of uncompressed data, so the index is built as a side effect
+ * of the first complete read of the stream and gets more useful every time a stream reads past its last checkpoint.
+ *
+ * <p>An index can be {@link #write(DataOutput) written} and {@link #read(DataInput) read back}, so that checkpoints
+ * outlive the stream that recorded them.</p>
+ *
+ * <p>This class is thread-safe: several streams may share the same index and read it or add to it concurrently.</p>
+ *
+ * @see CheckpointGzipInputStream
+ * @see CheckpointBzip2InputStream
+ */
+public class CheckpointIndex {
+
+    /** Default minimum distance between two checkpoints: 16MB of uncompressed data */
+    public final static long DEFAULT_SPAN = 16*1024*1024;
+
+    /** Maximum length of a checkpoint's state accepted by {@link #read(DataInput)}, guards against corrupt data */
+    private final static int MAX_STATE_LENGTH = 1024*1024;
+
+    /** Minimum distance between two checkpoints, in uncompressed bytes */
+    private final long span;
+
+    /** Checkpoints sorted by uncompressed offset */
+    private final List<Checkpoint> checkpoints = new ArrayList<>();
+
+    /**
+     * Creates a new empty index using the {@link #DEFAULT_SPAN default span}.
+     */
+    public CheckpointIndex() {
+        this(DEFAULT_SPAN);
+    }
+
+    /**
+     * Creates a new empty index with the specified span. The smaller the span, the less data has to be decompressed
+     * before reaching a given offset, but the more memory the index takes.
+     *
+     * @param span minimum distance between two checkpoints, in uncompressed bytes
+     */
+    public CheckpointIndex(long span) {
+        if(span<=0)
+            throw new IllegalArgumentException("span must be positive: "+span);
+
+        this.span = span;
+    }
+
+    /**
+     * Returns the minimum distance between two checkpoints, in uncompressed bytes.
+     *
+     * @return the minimum distance between two checkpoints, in uncompressed bytes
+     */
+    public long getSpan() {
+        return span;
+    }
+
+    /**
+     * Returns <code>true</code> if a checkpoint located at the specified uncompressed offset would be added to this
+     * index, i.e. if it is at least {@link #getSpan() span} bytes past the last checkpoint (or the start of the stream
+     * if the index is empty). Streams call this method to avoid the cost of creating checkpoints that are not needed.
+     *
+     * @param uncompressedOffset an offset in the uncompressed data
+     * @return true if a checkpoint located at the specified offset would be added to this index
+     */
+    public synchronized boolean needsCheckpoint(long uncompressedOffset) {
+        int size = checkpoints.size();
+        long lastOffset = size==0?0:checkpoints.get(size-1).getUncompressedOffset();
+
+        return uncompressedOffset-lastOffset >= span;
+    }
+
+    /**
+     * Adds the given checkpoint to this index, if {@link #needsCheckpoint(long)} returns <code>true</code> for its
+     * uncompressed offset. Returns <code>true</code> if the checkpoint was added.
+     *
+     * @param checkpoint the checkpoint to add
+     * @return true if the checkpoint was added, false if it was ignored
+     */
+    public synchronized boolean add(Checkpoint checkpoint) {
+        if(!needsCheckpoint(checkpoint.getUncompressedOffset()))
+            return false;
+
+        checkpoints.add(checkpoint);
+        return true;
+    }
+
+    /**
+     * Returns the checkpoint with the greatest uncompressed offset that is less than or equal to the specified one,
+     * <code>null</code> if there is none, in which case the stream has to be decompressed from the start.
+     *
+     * @param uncompressedOffset the offset to reach in the uncompressed data
+     * @return the closest checkpoint preceding the specified offset, null if there is none
+     */
+    public synchronized Checkpoint get(long uncompressedOffset) {
+        int low = 0;
+        int high = checkpoints.size()-1;
+        Checkpoint closest = null;
+
+        while(low<=high) {
+            int mid = (low+high)>>>1;
+            Checkpoint checkpoint = checkpoints.get(mid);
+            if(checkpoint.getUncompressedOffset()<=uncompressedOffset) {
+                closest = checkpoint;
+                low = mid+1;
+            }
+            else {
+                high = mid-1;
+            }
+        }
+
+        return closest;
+    }
+
+    /**
+     * Returns the number of checkpoints this index contains.
+     *
+     * @return the number of checkpoints this index contains
+     */
+    public synchronized int size() {
+        return checkpoints.size();
+    }
+
+    /**
+     * Removes all checkpoints from this index. This method must be called whenever the compressed stream changes.
+     */
+    public synchronized void clear() {
+        checkpoints.clear();
+    }
+
+    /**
+     * Writes the span and the checkpoints of this index to the given output, in a format that can be read back by
+     * {@link #read(DataInput)}.
+     *
+     * @param out the output to write this index to
+     * @throws IOException if an I/O error occurred
+     */
+    public synchronized void write(DataOutput out) throws IOException {
+        out.writeLong(span);
+        out.writeInt(checkpoints.size());
+        for(Checkpoint checkpoint : checkpoints) {
+            out.writeLong(checkpoint.getUncompressedOffset());
+            out.writeLong(checkpoint.getCompressedBitOffset());
+
+            byte state[] = checkpoint.getState();
+            out.writeInt(state==null?-1:state.length);
+            if(state!=null)
+                out.write(state);
+        }
+    }
+
+    /**
+     * Reads an index that was written by {@link #write(DataOutput)} from the given input.
+     *
+     * @param in the input to read the index from
+     * @return the index that was read
+     * @throws IOException if an I/O error occurred or if the data is not a valid index
+     */
+    public static CheckpointIndex read(DataInput in) throws IOException {
+        long span = in.readLong();
+        int nbCheckpoints = in.readInt();
+        if(span<=0 || nbCheckpoints<0)
+            throw new IOException("Corrupt checkpoint index");
+
+        CheckpointIndex index = new CheckpointIndex(span);
+        for(int i=0; i<nbCheckpoints; i++) {
+            long uncompressedOffset = in.readLong();
+            long compressedBitOffset = in.readLong();
+
+            int stateLength = in.readInt();
+            if(stateLength<-1 || stateLength>MAX_STATE_LENGTH)
+                throw new IOException("Corrupt checkpoint index");
+
+            byte state[] = null;
+            if(stateLength>=0) {
+                state = new byte[stateLength];
+                in.readFully(state);
+            }
+
+            // Checkpoints were written in order and span bytes apart, anything else is corrupt
+            if(compressedBitOffset<0 || !index.add(new Checkpoint(uncompressedOffset, compressedBitOffset, state)))
+                throw new IOException("Corrupt checkpoint index");
+        }
+
+        return index;
+    }
+}
@@ -69,6 +69,11 @@ public enum MuPreference {
 	WAIT_AFTER_REFRESH(MuPreferences.WAIT_AFTER_REFRESH),
 	PROGRESS_DIALOG_EXPANDED(MuPreferences.PROGRESS_DIALOG_EXPANDED),
 	PROGRESS_DIALOG_CLOSE_WHEN_FINISHED(MuPreferences.PROGRESS_DIALOG_CLOSE_WHEN_FINISHED),
+	PIPELINED_TRANSFERS(MuPreferences.PIPELINED_TRANSFERS),
+	TRANSFER_WORKERS(MuPreferences.TRANSFER_WORKERS),
+	SEGMENTED_DOWNLOAD_CONNECTIONS(MuPreferences.SEGMENTED_DOWNLOAD_CONNECTIONS),
+	SEGMENTED_DOWNLOAD_SEGMENT_SIZE(MuPreferences.SEGMENTED_DOWNLOAD_SEGMENT_SIZE),
+	MAX_CONNECTIONS_PER_SERVER(MuPreferences.MAX_CONNECTIONS_PER_SERVER),
 	THEME_TYPE(MuPreferences.THEME_TYPE),
 	THEME_NAME(MuPreferences.THEME_NAME),
     SYNTAX_THEME_NAME(MuPreferences.SYNTAX_THEME_NAME),
@@ -77,6 +82,12 @@ public enum MuPreference {
 	SMB_LM_COMPATIBILITY(MuPreferences.SMB_LM_COMPATIBILITY),
 	SMB_USE_EXTENDED_SECURITY(MuPreferences.SMB_USE_EXTENDED_SECURITY),
 	SHOW_TAB_HEADER(MuPreferences.SHOW_SINGLE_TAB_HEADER),
+	ARCHIVE_INDEX_CACHE_SIZE(MuPreferences.ARCHIVE_INDEX_CACHE_SIZE),
+	ARCHIVE_ENTRY_BUFFER_SIZE(MuPreferences.ARCHIVE_ENTRY_BUFFER_SIZE),
+	FIND_PARALLELISM(MuPreferences.FIND_PARALLELISM),
+	FIND_CONTENT_THREADS(MuPreferences.FIND_CONTENT_THREADS),
+	FIND_ORDERED_RESULTS(MuPreferences.FIND_ORDERED_RESULTS),
+	LARGE_TEXT_FILE_THRESHOLD(MuPreferences.LARGE_TEXT_FILE_THRESHOLD),
     FILE_GROUP_1_MASK(MuPreferences.FILE_GROUP_1_MASK),
     FILE_GROUP_2_MASK(MuPreferences.FILE_GROUP_2_MASK),
     FILE_GROUP_3_MASK(MuPreferences.FILE_GROUP_3_MASK),
@@ -325,6 +325,36 @@ public class MuPreferences implements MuPreferencesAPI {
 	/** Default progress dialog behavior when the job is finished. */
 	public static final boolean DEFAULT_PROGRESS_DIALOG_CLOSE_WHEN_FINISHED  = true;
 
+	// - Variables used for file transfers -----------------------------------
+	// -----------------------------------------------------------------------
+	/** Section containing all file transfer variables. */
+	public static final String TRANSFER_SECTION                   = "transfer";
+	/** Controls whether files copied from or to a remote file system are read ahead in a separate thread. */
+	public static final String PIPELINED_TRANSFERS                = TRANSFER_SECTION + '.' + "pipelined";
+	/** Default value for {@link #PIPELINED_TRANSFERS}. */
+	public static final boolean DEFAULT_PIPELINED_TRANSFERS       = false;
+	/** Number of files copied or moved at the same time by a file transfer job. */
+	public static final String TRANSFER_WORKERS                   = TRANSFER_SECTION + '.' + "workers";
+	/** Default value for {@link #TRANSFER_WORKERS}. */
+	public static final int DEFAULT_TRANSFER_WORKERS              = 1;
+	/** Number of connections used to download a single file whose protocol supports ranged requests, 1 to disable segmented downloads. */
+	public static final String SEGMENTED_DOWNLOAD_CONNECTIONS     = TRANSFER_SECTION + '.' + "segmented_download_connections";
+	/** Default value for {@link #SEGMENTED_DOWNLOAD_CONNECTIONS}. */
+	public static final int DEFAULT_SEGMENTED_DOWNLOAD_CONNECTIONS = 1;
+	/** Size of the segments of a segmented download, in bytes. */
+	public static final String SEGMENTED_DOWNLOAD_SEGMENT_SIZE    = TRANSFER_SECTION + '.' + "segmented_download_segment_size";
+	/** Default value for {@link #SEGMENTED_DOWNLOAD_SEGMENT_SIZE}: 4MB. */
+	public static final int DEFAULT_SEGMENTED_DOWNLOAD_SEGMENT_SIZE = 4 * 1024 * 1024;
+
+	// - Variables used for server connections ------------------------------
+	// -----------------------------------------------------------------------
+	/** Section containing all server connection variables. */
+	public static final String CONNECTION_SECTION                 = "connection";
+	/** Maximum number of simultaneous connections to a same server, shared by all the accounts used on it. */
+	public static final String MAX_CONNECTIONS_PER_SERVER         = CONNECTION_SECTION + '.' + "max_connections_per_server";
+	/** Default value for {@link #MAX_CONNECTIONS_PER_SERVER}. */
+	public static final int DEFAULT_MAX_CONNECTIONS_PER_SERVER    = 4;
+
 
 
 	// - Variables used for themes -------------------------------------------
@@ -386,6 +416,45 @@ public class MuPreferences implements MuPreferencesAPI {
 	/** Default value for {@link #SMB_USE_EXTENDED_SECURITY}. */
 	public static final boolean DEFAULT_SMB_USE_EXTENDED_SECURITY = false;
 
+	// - Variables used for archives -----------------------------------------
+	// -----------------------------------------------------------------------
+	/** Section containing all archive variables. */
+	public static final String ARCHIVE_SECTION                    = "archive";
+	/** Maximum size in bytes of the cache that stores the listing of archives that are expensive to list. */
+	public static final String ARCHIVE_INDEX_CACHE_SIZE           = ARCHIVE_SECTION + '.' + "index_cache_size";
+	/** Default value for {@link #ARCHIVE_INDEX_CACHE_SIZE}. */
+	public static final long DEFAULT_ARCHIVE_INDEX_CACHE_SIZE     = 32 * 1024 * 1024;
+	/** Amount of memory in bytes used to stream an entry of a 7-Zip archive. */
+	public static final String ARCHIVE_ENTRY_BUFFER_SIZE          = ARCHIVE_SECTION + '.' + "entry_buffer_size";
+	/** Default value for {@link #ARCHIVE_ENTRY_BUFFER_SIZE}. */
+	public static final int DEFAULT_ARCHIVE_ENTRY_BUFFER_SIZE     = 1024 * 1024;
+
+	// - Variables used for file search --------------------------------------
+	// -----------------------------------------------------------------------
+	/** Section containing all file search variables. */
+	public static final String FIND_SECTION                       = "find";
+	/** Number of threads that list folders and match file names in parallel. */
+	public static final String FIND_PARALLELISM                   = FIND_SECTION + '.' + "parallelism";
+	/** Default value for {@link #FIND_PARALLELISM}. */
+	public static final int DEFAULT_FIND_PARALLELISM              = Runtime.getRuntime().availableProcessors();
+	/** Maximum number of files whose content is searched at the same time. */
+	public static final String FIND_CONTENT_THREADS               = FIND_SECTION + '.' + "content_threads";
+	/** Default value for {@link #FIND_CONTENT_THREADS}. */
+	public static final int DEFAULT_FIND_CONTENT_THREADS          = 4;
+	/** Controls whether search results are shown in folder order once the search is over, or as soon as they are found. */
+	public static final String FIND_ORDERED_RESULTS               = FIND_SECTION + '.' + "ordered_results";
+	/** Default value for {@link #FIND_ORDERED_RESULTS}. */
+	public static final boolean DEFAULT_FIND_ORDERED_RESULTS      = false;
+
+	// - Variables used for file viewers --------------------------------------
+	// -----------------------------------------------------------------------
+	/** Section containing all file viewer variables. */
+	public static final String VIEWER_SECTION                     = "viewer";
+	/** Size in bytes above which text files are viewed without being loaded in memory. */
+	public static final String LARGE_TEXT_FILE_THRESHOLD          = VIEWER_SECTION + '.' + "large_text_file_threshold";
+	/** Default value for {@link #LARGE_TEXT_FILE_THRESHOLD}. */
+	public static final long DEFAULT_LARGE_TEXT_FILE_THRESHOLD    = 10 * 1024 * 1024;
+
     // - File group masks ----------------------------------------------------
     // -----------------------------------------------------------------------
     public static final String FILE_GROUP_SECTION                 = "file_groups";
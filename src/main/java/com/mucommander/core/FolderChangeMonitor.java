@@ -20,7 +20,9 @@ package com.mucommander.core;
 
 import java.awt.event.WindowEvent;
 import java.awt.event.WindowListener;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.Vector;
 
 import org.slf4j.Logger;
@@ -31,6 +33,8 @@ import com.mucommander.commons.file.FileProtocols;
 import com.mucommander.commons.file.filter.AbstractFileFilter;
 import com.mucommander.commons.file.filter.FileFilter;
 import com.mucommander.commons.file.filter.OrFileFilter;
+import com.mucommander.commons.file.util.FolderWatchListener;
+import com.mucommander.commons.file.util.FolderWatcher;
 import com.mucommander.conf.MuConfigurations;
 import com.mucommander.conf.MuPreference;
 import com.mucommander.conf.MuPreferences;
@@ -42,6 +46,10 @@ import com.mucommander.ui.main.FolderPanel;
 /**
  * This file monitors changes in the current folder of a FolderPanel, checking periodically if the current folder's
  * date has changed. If a change has been detected, the FolderPanel will be asked to refresh its current folder.
+ *
+ * <p>Local folders are not checked periodically: they are watched using {@link FolderWatcher}, which reports
+ * changes as soon as they happen, including changes that do not affect the folder's date. When only existing files
+ * have been modified, the corresponding rows are refreshed rather than the whole folder.</p>
  * 
  * <p>If the MainFrame which contains the monitored FolderPanel becomes inactive (lies in the background), monitoring
  * on will be not happen until the MainFrame becomes active again.
@@ -52,7 +60,7 @@ import com.mucommander.ui.main.FolderPanel;
  * @author Maxence Bernard
  * @see <a href="http://trac.mucommander.com/wiki/FolderAutoRefresh">FolderAutoRefresh wiki entry</a>
  */
-public class FolderChangeMonitor implements Runnable, WindowListener, LocationListener {
+public class FolderChangeMonitor implements Runnable, WindowListener, LocationListener, FolderWatchListener {
 	private static final Logger LOGGER = LoggerFactory.getLogger(FolderChangeMonitor.class);
 	
     /** Folder panel we are monitoring */
@@ -82,6 +90,18 @@ public class FolderChangeMonitor implements Runnable, WindowListener, LocationLi
     /** Number of checks in current folder */
     private int nbSamples = 0;
 
+    /** Watches the current folder for changes, null if the current folder cannot be watched and must be checked periodically */
+    private volatile FolderWatcher.Watch folderWatch;
+
+    /** True if the folder watch can no longer be trusted and must be renewed */
+    private boolean folderWatchInvalidated;
+
+    /** True if the current folder has changed in a way that requires it to be refreshed entirely */
+    private boolean folderRefreshPending;
+
+    /** Names of the current folder's children that have been modified and whose rows have not been refreshed yet */
+    private Set<String> pendingModifiedFiles = new HashSet<>();
+
 	
     //////////////////////
     // Static variables //
@@ -141,6 +161,7 @@ public class FolderChangeMonitor implements Runnable, WindowListener, LocationLi
 
         this.currentFolder = folderPanel.getCurrentFolder();
         this.currentFolderDate = currentFolder.getDate();
+        updateFolderWatch();
 
         // Folder contents is up-to-date let's wait before checking it for changes
         this.lastCheckTimestamp = System.currentTimeMillis();
@@ -184,6 +205,12 @@ long t0 = System.currentTimeMillis();
 
 
     private void checkForMonitor(FolderChangeMonitor monitor) {
+        // Watched folders need not be checked, only the changes that could not be applied yet are
+        if (monitor.folderWatch != null) {
+            monitor.applyPendingChanges();
+            return;
+        }
+
         // Check for changes in current folder and refresh it only if :
         // - MainFrame is in the foreground
         // - monitor is not paused
@@ -243,6 +270,59 @@ long t0 = System.currentTimeMillis();
         // Reset time average
         totalCheckTime = 0;
         nbSamples = 0;
+
+        updateFolderWatch();
+    }
+
+
+    /**
+     * Starts watching the current folder, if it can be watched and isn't watched already. The changes that were
+     * reported for the previous folder or before the folder was refreshed are discarded.
+     */
+    private synchronized void updateFolderWatch() {
+        folderRefreshPending = false;
+        pendingModifiedFiles.clear();
+
+        if (folderWatch != null) {
+            if (!folderWatchInvalidated && currentFolder.equals(folderWatch.getFolder()))
+                return;
+
+            folderWatch.cancel();
+            folderWatch = null;
+        }
+
+        folderWatchInvalidated = false;
+
+        // Auto-refresh is disabled if the check period is negative
+        if (checkPeriod >= 0 && !disableAutoRefreshFilter.match(currentFolder))
+            folderWatch = FolderWatcher.watch(currentFolder, this);
+    }
+
+
+    /**
+     * Refreshes the current folder, or the rows of the files that have been modified, if changes have been reported
+     * by {@link FolderWatcher}. Changes are not applied but kept pending if the MainFrame is in the background, if
+     * this monitor is paused or if the current folder is being changed.
+     */
+    private synchronized void applyPendingChanges() {
+        if (!folderRefreshPending && pendingModifiedFiles.isEmpty())
+            return;
+
+        if (!folderPanel.getMainFrame().isForegroundActive() || folderChanging || paused)
+            return;
+
+        if (folderRefreshPending) {
+            LOGGER.debug(this+" ("+currentFolder.getName()+") Detected changes in current folder, refreshing table!");
+
+            // Refresh current folder in a separate thread as to not lock the watcher thread
+            folderPanel.tryRefreshCurrentFolder();
+        }
+        else {
+            folderPanel.getFileTable().refreshFiles(new HashSet<>(pendingModifiedFiles));
+        }
+
+        folderRefreshPending = false;
+        pendingModifiedFiles.clear();
     }
 	
 	
@@ -304,6 +384,36 @@ long t0 = System.currentTimeMillis();
     }
 
 
+    ////////////////////////////////////////
+    // FolderWatchListener implementation //
+    ////////////////////////////////////////
+
+    public synchronized void childrenChanged(AbstractFile folder, Set<String> created, Set<String> deleted, Set<String> modified) {
+        // Ignore changes reported for a previous folder
+        if (folderWatch == null || folder != folderWatch.getFolder())
+            return;
+
+        // Files that have been created or deleted require the folder to be listed again
+        if (!created.isEmpty() || !deleted.isEmpty())
+            folderRefreshPending = true;
+        else
+            pendingModifiedFiles.addAll(modified);
+
+        applyPendingChanges();
+    }
+
+    public synchronized void folderChanged(AbstractFile folder) {
+        if (folderWatch == null || folder != folderWatch.getFolder())
+            return;
+
+        // The folder may have been deleted or events may have been lost: watch it again once it has been refreshed
+        folderWatchInvalidated = true;
+        folderRefreshPending = true;
+
+        applyPendingChanges();
+    }
+
+
     ///////////////////////////////////
     // WindowListener implementation //
     ///////////////////////////////////
@@ -323,6 +433,13 @@ long t0 = System.currentTimeMillis();
     public void windowClosed(WindowEvent e) {
         // Remove the MainFrame from the list of monitored instances
         instances.remove(this);
+
+        synchronized(this) {
+            if (folderWatch != null) {
+                folderWatch.cancel();
+                folderWatch = null;
+            }
+        }
         LOGGER.debug("nbInstances="+instances.size());
     }	
 	
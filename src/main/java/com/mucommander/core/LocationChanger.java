@@ -47,6 +47,7 @@ import com.mucommander.ui.dialog.QuestionDialog;
 import com.mucommander.ui.dialog.auth.AuthDialog;
 import com.mucommander.ui.dialog.file.DownloadDialog;
 import com.mucommander.ui.event.LocationManager;
+import com.mucommander.ui.event.LocationManager.FolderChangeCallback;
 import com.mucommander.ui.main.FolderPanel;
 import com.mucommander.ui.main.MainFrame;
 import com.mucommander.utils.Callback;
@@ -99,19 +100,43 @@ public class LocationChanger {
 		mainFrame.setCursor(new Cursor(Cursor.WAIT_CURSOR));
 		
     	Thread setLocationThread = new Thread() {
+    		/** True once the actions have been made active again */
+    		private boolean folderSet;
+
     		@Override
     		public void run() {
     			AbstractFile folder = getWorkableLocation(folderURL);
     			try {
-    				locationManager.setCurrentFolder(folder, null, true);
+    				// The rest of the folder is listed once it is presented, actions can be made active again
+    				locationManager.setCurrentFolder(folder, null, true, new FolderChangeCallback() {
+    					public boolean presentingFolder() {
+    						return true;
+    					}
+
+    					public void folderPresented() {
+    						folderSet();
+    					}
+
+    					public boolean isListingCancelled() {
+    						return false;
+    					}
+    				});
     			} finally {
-    				mainFrame.setNoEventsMode(false);
-    				// Restore default cursor
-					mainFrame.setCursor(Cursor.getDefaultCursor());
-					// Notify callback that the folder has been set 
-    				callback.call();
+    				folderSet();
     	    	}
     		}
+
+    		private void folderSet() {
+    			if (folderSet)
+    				return;
+    			folderSet = true;
+
+    			mainFrame.setNoEventsMode(false);
+    			// Restore default cursor
+    			mainFrame.setCursor(Cursor.getDefaultCursor());
+    			// Notify callback that the folder has been set
+    			callback.call();
+    		}
     	};
 
     	if (EventQueue.isDispatchThread())
@@ -336,15 +361,17 @@ public class LocationChanger {
      * @param folder folder to be made current folder
      * @param fileToSelect file to be selected after the folder has been refreshed (if it exists in the folder), can be null in which case FileTable rules will be used to select current file
      * @param changeLockedTab - flag that indicates whether to change the presented folder in the currently selected tab although it's locked
+     * @param callback notified of the progress of the folder change, may cancel it
+     * @return <code>true</code> if the folder was presented, <code>false</code> if the folder change was cancelled
 	 * @throws IOException 
 	 * @throws UnsupportedFileOperationException 
      */
-    private void setCurrentFolder(AbstractFile folder, AbstractFile fileToSelect, boolean changeLockedTab) throws IOException {
+    private boolean setCurrentFolder(AbstractFile folder, AbstractFile fileToSelect, boolean changeLockedTab, FolderChangeCallback callback) throws IOException {
     	// Update the timestamp right before the folder is set in case FolderChangeMonitor checks the timestamp
         // while FileTable#setCurrentFolder is being called. 
         lastFolderChangeTime = System.currentTimeMillis();
         
-    	locationManager.setCurrentFolder(folder, fileToSelect, changeLockedTab);
+    	return locationManager.setCurrentFolder(folder, fileToSelect, changeLockedTab, callback);
     }
 
     /**
@@ -479,7 +506,7 @@ public class LocationChanger {
 		private CredentialsMapping credentialsMapping;
 
 		/** True if this thread has been interrupted by the user using #tryKill */
-		private boolean killed;
+		private volatile boolean killed;
 		/** True if an attempt to kill this thread using Thread#interrupt() has already been made */
 		private boolean killedByInterrupt;
 		/** True if an attempt to kill this thread using Thread#stop() has already been made */
@@ -820,26 +847,52 @@ public class LocationChanger {
 								LOGGER.debug("this thread has been killed, returning");
 								break;
 							}
-							// From now on, thread cannot be killed (would comprise table integrity)
-							doNotKill = true;
 						}
 
-						// files listed -> 75% complete
-						folderPanel.setProgressValue(75);
-
 						LOGGER.trace("calling setCurrentFolder");
 
-						// Change the file table's current folder and select the specified file (if any)
-						setCurrentFolder(folder, fileToSelect, changeLockedTab);
+						// If new credentials were entered by the user, these can be considered valid once the folder
+						// has been presented. Do not add the credentials if guest credentials were selected by the user.
+						final CredentialsMapping validCredentialsMapping = guestCredentialsSelected ? null : newCredentialsMapping;
+
+						// Change the file table's current folder and select the specified file (if any). The folder
+						// is listed until it is presented, the folder change can be cancelled until then.
+						if (!setCurrentFolder(folder, fileToSelect, changeLockedTab, new FolderChangeCallback() {
+							public boolean presentingFolder() {
+								synchronized(KILL_LOCK) {
+									if(killed) {
+										LOGGER.debug("this thread has been killed, returning");
+										return false;
+									}
+									// From now on, thread cannot be killed (would comprise table integrity)
+									doNotKill = true;
+								}
 
-						// folder set -> 95% complete
-						folderPanel.setProgressValue(95);
+								// files listed -> 75% complete
+								folderPanel.setProgressValue(75);
+								return true;
+							}
 
-						// If new credentials were entered by the user, these can now be considered valid
-						// (folder was changed successfully), so we add them to the CredentialsManager.
-						// Do not add the credentials if guest credentials were selected by the user.
-						if (newCredentialsMapping != null && !guestCredentialsSelected)
-							CredentialsManager.addCredentials(newCredentialsMapping);
+							public void folderPresented() {
+								// folder set -> 95% complete
+								folderPanel.setProgressValue(95);
+
+								if (validCredentialsMapping != null)
+									CredentialsManager.addCredentials(validCredentialsMapping);
+
+								// The table is consistent again: end the folder change while the rest of the folder
+								// is listed, killing the thread then only stops the listing
+								synchronized(KILL_LOCK) {
+									doNotKill = false;
+								}
+								cleanup(true);
+							}
+
+							public boolean isListingCancelled() {
+								return killed;
+							}
+						}))
+							break;
 
 						// All good !
 						folderChangedSuccessfully = true;
@@ -21,6 +21,9 @@ package com.mucommander.job;
 import com.mucommander.commons.file.AbstractFile;
 import com.mucommander.commons.file.AbstractRWArchiveFile;
 import com.mucommander.commons.file.util.FileSet;
+import com.mucommander.conf.MuConfigurations;
+import com.mucommander.conf.MuPreference;
+import com.mucommander.conf.MuPreferences;
 import com.mucommander.text.Translator;
 import com.mucommander.ui.dialog.file.FileCollisionDialog;
 import com.mucommander.ui.dialog.file.FileCollisionRenameDialog;
@@ -79,6 +82,36 @@ public abstract class AbstractCopyJob extends TransferFileJob {
         this.defaultFileExistsAction = fileExistsAction;
     }
 
+    /**
+     * Returns the number of files to transfer at the same time, as specified by the
+     * {@link MuPreferences#TRANSFER_WORKERS} preference. Files are transferred one at a time if the destination folder
+     * or any of the source files is located inside an archive, as archive entries cannot be read or written
+     * concurrently.
+     *
+     * @return the number of files to transfer at the same time
+     */
+    protected int getDefaultNbWorkers() {
+        if (baseDestFolder.getParentArchive() != null)
+            return 1;
+
+        for (AbstractFile file : files) {
+            if (file.getParentArchive() != null)
+                return 1;
+        }
+
+        return getPreferredNbWorkers();
+    }
+
+    /**
+     * Returns the number of files to transfer at the same time, as specified by the
+     * {@link MuPreferences#TRANSFER_WORKERS} preference.
+     *
+     * @return the number of files to transfer at the same time, as specified by the preferences
+     */
+    protected int getPreferredNbWorkers() {
+        return MuConfigurations.getPreferences().getVariable(MuPreference.TRANSFER_WORKERS, MuPreferences.DEFAULT_TRANSFER_WORKERS);
+    }
+
     /**
      * Creates a destination file given a destination folder and a new file name.
      * @param destFolder a destination folder
@@ -21,6 +21,7 @@ package com.mucommander.job;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.zip.Deflater;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -57,6 +58,12 @@ public class ArchiveJob extends TransferFileJob {
 	
     /** Optional archive comment */
     private String archiveComment;
+
+    /** Compression level, for formats that support it */
+    private int compressionLevel = Deflater.DEFAULT_COMPRESSION;
+
+    /** Number of threads that compress data, for formats that support it */
+    private int nbCompressionThreads = 1;
 	
     /** Lock to avoid Archiver.close() to be called while data is being written */
     private final Object ioLock = new Object();
@@ -72,6 +79,29 @@ public class ArchiveJob extends TransferFileJob {
         this.baseFolderPath = getBaseSourceFolder().getAbsolutePath(false);
     }
 
+    /**
+     * Sets the compression level, for the archive formats that
+     * {@link Archiver#formatSupportsCompressionLevel(int) support it}. This method must be called before the job is
+     * started.
+     *
+     * @param compressionLevel the compression level, from {@link Deflater#BEST_SPEED} to
+     * {@link Deflater#BEST_COMPRESSION}, or {@link Deflater#DEFAULT_COMPRESSION}
+     */
+    public void setCompressionLevel(int compressionLevel) {
+        this.compressionLevel = compressionLevel;
+    }
+
+    /**
+     * Sets the number of threads that compress data, for the archive formats that
+     * {@link Archiver#formatSupportsCompressionLevel(int) support it}. This method must be called before the job is
+     * started.
+     *
+     * @param nbCompressionThreads the number of threads that compress data
+     */
+    public void setNbCompressionThreads(int nbCompressionThreads) {
+        this.nbCompressionThreads = Math.max(1, nbCompressionThreads);
+    }
+
 
     ////////////////////////////////////
     // TransferFileJob implementation //
@@ -180,7 +210,7 @@ public class ArchiveJob extends TransferFileJob {
         do {
             try {
                 // Tries to get an Archiver instance.
-                this.archiver = Archiver.getArchiver(destFile, archiveFormat);
+                this.archiver = Archiver.getArchiver(destFile, archiveFormat, compressionLevel, nbCompressionThreads);
                 this.archiver.setComment(archiveComment);
 
                 break;
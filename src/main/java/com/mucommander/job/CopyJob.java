@@ -81,6 +81,7 @@ public class CopyJob extends AbstractCopyJob {
 
         this.mode = mode;
         this.errorDialogTitle = Translator.get(mode==Mode.DOWNLOAD ? "download_dialog.error_title" : "copy_dialog.error_title");
+        setNbWorkers(getDefaultNbWorkers());
         scanDirectoryThread = new ScanDirectoryThread(files);
         scanDirectoryThread.start();
     }
@@ -174,12 +175,19 @@ public class CopyJob extends AbstractCopyJob {
 
                     // Only when finished with folder, set destination folder's date to match the original folder one
                     if (destFile.isFileOperationSupported(FileOperation.CHANGE_DATE)) {
-                        try {
-                            destFile.changeDate(file.getDate());
-                        } catch (IOException e) {
-                            LOGGER.debug("failed to change the date of "+destFile, e);
-                            // Fail silently
-                        }
+                        final AbstractFile sourceFolder = file;
+                        final AbstractFile destFolderFile = destFile;
+                        // Wait for the folder's files to be copied, as copying them changes the folder's date
+                        runAfterTransfers(new Runnable() {
+                            public void run() {
+                                try {
+                                    destFolderFile.changeDate(sourceFolder.getDate());
+                                } catch (IOException e) {
+                                    LOGGER.debug("failed to change the date of "+destFolderFile, e);
+                                    // Fail silently
+                                }
+                            }
+                        });
                     }
 
                     return true;
@@ -197,8 +205,8 @@ public class CopyJob extends AbstractCopyJob {
         }
         // File is a regular file, copy it
         else  {
-            // Copy the file
-            return tryCopyFile(file, destFile, append, errorDialogTitle);
+            // Copy the file, in a worker thread if files are copied concurrently
+            return submitFileCopy(file, destFile, append, errorDialogTitle, null);
         }
     }
 
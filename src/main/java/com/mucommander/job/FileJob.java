@@ -71,6 +71,10 @@ public abstract class FileJob implements Runnable {
     /** Lock used when job is being paused */
     private final Object pauseLock = new Object();
 
+    /** Lock held while waiting for a user response, so that threads processing files for this job ask one
+     * question at a time */
+    private final Object userResponseLock = new Object();
+
     /** Timestamp in milliseconds when job started */
     private long startDate;
 
@@ -110,6 +114,9 @@ public abstract class FileJob implements Runnable {
 
     /** If set to true, processed files will be unmarked from current table */
     private boolean autoUnmark = true;
+
+    /** Table processed files are unmarked from, the table that was active when the job started */
+    private FileTable activeTable;
 	
     /** File to be selected after job has finished (can be null if not set) */
     private AbstractFile fileToSelect;
@@ -132,7 +139,7 @@ public abstract class FileJob implements Runnable {
 
 
     /** Current state of this job */
-    private int jobState = NOT_STARTED;
+    private volatile int jobState = NOT_STARTED;
 
     /** List of registered FileJobListener stored as weak references */
     private WeakHashMap<FileJobListener, ?> listeners = new WeakHashMap<FileJobListener, Object>();
@@ -406,8 +413,9 @@ public abstract class FileJob implements Runnable {
      * Release reference to thread and store job's end date.
      */
     private void stop() {
-        // Return if job has already been stopped
-        if (jobThread == null)
+        // Return if job has already been stopped. The end date is checked rather than the job's thread, which is not
+        // set if the files were processed without starting the job (see #processFiles())
+        if (endDate != 0)
             return;
 
 //        // Start by calling interrupt to have the thread return from any blocking I/O occurring in an interruptible
@@ -435,8 +443,8 @@ public abstract class FileJob implements Runnable {
                 // Call the jobResumed method to notify of the new job's state
                 jobResumed();
 
-                // Wake up the job's thread that is potentially waiting for pause to be over 
-                pauseLock.notify();
+                // Wake up the job's threads that are potentially waiting for pause to be over
+                pauseLock.notifyAll();
 
                 // Switch to RUNNING state and notify listeners
                 setState(RUNNING);
@@ -467,21 +475,31 @@ public abstract class FileJob implements Runnable {
 //        // Notify ProgressDialog (if any) that a new file is being processed
 //        if(progressDialog!=null)
 //            progressDialog.notifyCurrentFileChanged();
-        
+
+        waitWhilePaused();
+//        if(this.currentFile!=null)
+//            this.nbFilesProcessed++;
+    }
+
+
+    /**
+     * Blocks the calling thread for as long as this job is paused. This method is called by
+     * {@link #nextFile(AbstractFile)} and can be called by jobs that process files in threads other than the job's
+     * thread, so that those threads are paused as well.
+     */
+    protected void waitWhilePaused() {
         // Lock the pause lock
         synchronized(pauseLock) {
             // Loop while job is paused, there shouldn't normally be more than one loop
             while(getState()==PAUSED) {
                 try {
-                    // Wait for a call to notify()
+                    // Wait for a call to notifyAll()
                     pauseLock.wait();
                 } catch(InterruptedException e) {
                     // No more problem, loop one more time
                 }
             }
         }
-//        if(this.currentFile!=null)
-//            this.nbFilesProcessed++;
     }
 
 
@@ -543,6 +561,17 @@ public abstract class FileJob implements Runnable {
     }
 
 
+    /**
+     * This method is called after the last call to {@link #processFile(AbstractFile,Object)} is made and before
+     * {@link #jobCompleted()} is called, to let jobs that process files in other threads wait for those files.
+     * The job is considered interrupted if its state is {@link #INTERRUPTED} when this method returns.
+     *
+     * <p>This method implementation does nothing as files are processed in the job's thread by default.</p>
+     */
+    protected void finishPendingFiles() {
+    }
+
+
     /**
      * This method is called when this job has been paused, either by the user, or by the job when asking for user input.
      * 
@@ -598,6 +627,17 @@ public abstract class FileJob implements Runnable {
      * Displays an error dialog with the specified title and message and returns the selection action's value.
      */
     protected int showErrorDialog(String title, String message, String actionTexts[], int actionValues[]) {
+        // Another thread may be waiting for the user to answer another error
+        synchronized(userResponseLock) {
+            // Return CANCEL_ACTION if the job was interrupted while waiting for another error
+            if (getState() == INTERRUPTED)
+                return CANCEL_ACTION;
+
+            return doShowErrorDialog(title, message, actionTexts, actionValues);
+        }
+    }
+
+    private int doShowErrorDialog(String title, String message, String actionTexts[], int actionValues[]) {
         // Return SKIP_ACTION if 'skip all' has previously been selected and 'skip' is in the list of actions.
         if (autoSkipErrors) {
             for (int actionValue : actionValues)
@@ -652,15 +692,18 @@ public abstract class FileJob implements Runnable {
     }
     
     protected Object waitForUserResponseObject(DialogResult dialog) {
-        // Put this job in pause mode while waiting for user response
-        setPaused(true);
-        
-        UserInputHelper jobUserInput = new UserInputHelper(this, dialog);
-        Object userInput = jobUserInput.getUserInput();
-        
-        // Back to work
-        setPaused(false);
-        return userInput;
+        // Threads processing files for this job ask one question at a time
+        synchronized(userResponseLock) {
+            // Put this job in pause mode while waiting for user response
+            setPaused(true);
+
+            UserInputHelper jobUserInput = new UserInputHelper(this, dialog);
+            Object userInput = jobUserInput.getUserInput();
+
+            // Back to work
+            setPaused(false);
+            return userInput;
+        }
     }
     
 	
@@ -804,13 +847,23 @@ public abstract class FileJob implements Runnable {
      * This method is public as a side-effect of this class implementing <code>Runnable</code>.
      */
     public final void run() {
-        FileTable activeTable = getMainFrame().getActiveTable();
+        activeTable = getMainFrame().getActiveTable();
 
         // Notify that this job has started
         jobStarted();
 
 //this.nbFilesDiscovered += nbFiles;
 
+        processFiles();
+
+        // Refresh tables's current folders, based on the job's refresh policy.
+        refreshTables();
+    }
+
+    /**
+     * Processes all the top-level files, unless this job is interrupted, and completes the job.
+     */
+    void processFiles() {
         // Loop on all source files, checking that job has not been interrupted
         for(int i = 0; i < nbFiles; i++) {
             AbstractFile currentFile = files.elementAt(i);
@@ -826,25 +879,49 @@ public abstract class FileJob implements Runnable {
             if (getState() == INTERRUPTED)
                 break;
 
-            // Unmark file in active table if 'auto unmark' is enabled
-            // and file was processed successfully
-            if (autoUnmark && success) {
-                // Do not repaint rows individually as it would be too expensive
-                activeTable.setFileMarked(currentFile, false, false);
-            }
+            fileProcessed(currentFile, success);
 
             // If last file was reached without any user interruption, all files have been processed with or
             // without errors, switch to FINISHED state and notify listeners
             if (i == nbFiles-1) {
+                // Wait for files that are still being processed by other threads
+                finishPendingFiles();
+                if (getState() == INTERRUPTED)
+                    break;
+
                 currentFileIndex++;
                 stop();
                 jobCompleted();
                 setState(FINISHED);
             }
         }
+    }
 
-        // Refresh tables's current folders, based on the job's refresh policy.
-        refreshTables();
+    /**
+     * This method is called once the given top-level file has been processed by {@link #processFile(AbstractFile,Object)}.
+     * It unmarks the file in the active table if 'auto unmark' is enabled and the file was processed successfully.
+     *
+     * <p>This method can be overridden by jobs that process files in other threads, to find out whether the file
+     * was processed successfully once these threads are done with it.</p>
+     *
+     * @param file the top-level file that has been processed
+     * @param success the value returned by {@link #processFile(AbstractFile,Object)}
+     */
+    protected void fileProcessed(AbstractFile file, boolean success) {
+        // Unmark file in active table if 'auto unmark' is enabled
+        // and file was processed successfully
+        if (autoUnmark && success)
+            unmarkFile(file);
+    }
+
+    /**
+     * Unmarks the given file in the table that was active when this job started.
+     *
+     * @param file the file to unmark
+     */
+    protected void unmarkFile(AbstractFile file) {
+        // Do not repaint rows individually as it would be too expensive
+        activeTable.setFileMarked(file, false, false);
     }
 
 
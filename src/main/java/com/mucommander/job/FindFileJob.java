@@ -17,26 +17,58 @@
  */
 package com.mucommander.job;
 
+import com.mucommander.commons.file.AbstractArchiveFile;
 import com.mucommander.commons.file.AbstractFile;
 import com.mucommander.commons.file.UnsupportedFileOperationException;
 import com.mucommander.commons.file.util.FileSet;
+import com.mucommander.conf.MuPreferences;
 import com.mucommander.profiler.Profiler;
 import com.mucommander.ui.main.MainFrame;
 import org.apache.commons.io.filefilter.AbstractFileFilter;
 import org.apache.commons.io.filefilter.WildcardFileFilter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import ru.trolsoft.utils.search.*;
 
 import java.io.File;
+import java.io.FilterInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.UnsupportedEncodingException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Queue;
 import java.util.Scanner;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 /**
- * Job for directory scanning
+ * Job for directory scanning.
+ *
+ * <p>Folders are listed and file names are matched by a {@link ForkJoinPool}, one task per file, so that the
+ * sub-folders of a folder are searched in parallel and idle threads steal the pending folders of busy ones.
+ * Searching the content of files is delegated to a separate, bounded pool so that the number of files opened at the
+ * same time does not grow with the number of folders being traversed. When this pool is saturated, the traversal
+ * thread searches the file itself, which slows the traversal down to the pace of the content search.</p>
+ *
+ * <p>Results are either made available as soon as they are found (in no particular order), or, if
+ * {@link #setOrderedResults(boolean) ordered results} are enabled, all at once when the search is over, in the order in
+ * which a sequential, depth-first search would have found them.</p>
  */
 public class FindFileJob extends FileJob {
+    private static final Logger LOGGER = LoggerFactory.getLogger(FindFileJob.class);
+
+    /** Number of pending content searches per content search thread, before traversal threads search files themselves */
+    private static final int CONTENT_QUEUE_FACTOR = 4;
 
     private AbstractFile startDirectory;
     private String fileContent;
@@ -49,6 +81,24 @@ public class FindFileJob extends FileJob {
 
     private final List<AbstractFile> list = new ArrayList<>();
 
+    /** Number of threads that list folders and match file names */
+    private int parallelism = MuPreferences.DEFAULT_FIND_PARALLELISM;
+
+    /** Maximum number of files whose content is searched at the same time */
+    private int contentThreads = MuPreferences.DEFAULT_FIND_CONTENT_THREADS;
+
+    /** If true, results are published in folder order when the search is over */
+    private boolean orderedResults = MuPreferences.DEFAULT_FIND_ORDERED_RESULTS;
+
+    /** Matches waiting to be published in order, only used when results are ordered */
+    private final Queue<Match> pendingMatches = new ConcurrentLinkedQueue<>();
+
+    /** Pool that traverses folders, null when the job is not searching */
+    private volatile ForkJoinPool traversalPool;
+
+    /** Pool that searches the content of files, null when the job is not searching */
+    private volatile ThreadPoolExecutor contentPool;
+
     public FindFileJob(MainFrame mainFrame) {
         super(mainFrame);
         setAutoUnmark(false);
@@ -67,59 +117,234 @@ public class FindFileJob extends FileJob {
             return false;
         }
 
-        // If file is a directory, recurs
-        if (file.isDirectory() && !file.isSymlink()) {
-            searchInFile(file);
-            if (!searchSubdirectories && !file.equals(startDirectory)) {
-                return true;
+        traversalPool = new ForkJoinPool(Math.max(1, parallelism));
+        contentPool = new ThreadPoolExecutor(Math.max(1, contentThreads), Math.max(1, contentThreads), 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<Runnable>(Math.max(1, contentThreads) * CONTENT_QUEUE_FACTOR),
+                new ThreadPoolExecutor.CallerRunsPolicy());
+        try {
+            traversalPool.invoke(new SearchTask(file, new int[0], true));
+            // Wait for the content searches that are still pending
+            contentPool.shutdown();
+            while (!contentPool.awaitTermination(1, TimeUnit.SECONDS)) {
+                if (getState() == INTERRUPTED) {
+                    break;
+                }
             }
-            try {
-                AbstractFile subFiles[] = file.ls();
-                for (int i = 0; i < subFiles.length && getState() != INTERRUPTED; i++) {
-                    if (ignoreHidden && file.isHidden()) {
-                        continue;
-                    }
-                    // Notify job that we're starting to process this file (needed for recursive calls to processFile)
-                    nextFile(subFiles[i]);
-                    processFile(subFiles[i], null);
+        } catch (CancellationException | RejectedExecutionException e) {
+            // The pools have been shut down, the job has been interrupted
+        } catch (InterruptedException e) {
+            LOGGER.debug("Interrupted while waiting for content searches", e);
+        } finally {
+            traversalPool.shutdownNow();
+            contentPool.shutdownNow();
+        }
+
+        if (orderedResults) {
+            publishOrderedResults();
+        }
+
+        return getState() != INTERRUPTED;
+    }
+
+    @Override
+    protected void jobStopped() {
+        super.jobStopped();
+
+        // Stops the tasks that have not started yet, running tasks stop as soon as they notice that the job has
+        // been interrupted
+        ForkJoinPool traversalPool = this.traversalPool;
+        if (traversalPool != null) {
+            traversalPool.shutdownNow();
+        }
+        ThreadPoolExecutor contentPool = this.contentPool;
+        if (contentPool != null) {
+            contentPool.shutdownNow();
+        }
+    }
+
+    /**
+     * Searches the given file: matches its name and content, then searches its children if it is a folder or a
+     * browsable archive.
+     */
+    private class SearchTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final AbstractFile file;
+        /** Position of the file in a sequential, depth-first search */
+        private final int order[];
+        /** True for the start directory, which is always listed */
+        private final boolean root;
+
+        SearchTask(AbstractFile file, int order[], boolean root) {
+            this.file = file;
+            this.order = order;
+            this.root = root;
+        }
+
+        @Override
+        protected void compute() {
+            if (getState() == INTERRUPTED) {
+                return;
+            }
+            // Notify job that we're starting to process this file, this blocks while the job is paused
+            nextFile(file);
+
+            List<SearchTask> subTasks = new ArrayList<>();
+            // If file is a directory, recurse
+            if (file.isDirectory() && !file.isSymlink()) {
+                searchInFile(file, order);
+                if (searchSubdirectories || root) {
+                    addChildren(subTasks);
                 }
-            } catch(IOException e) {
-                // Should we tell the user?
+            } else {
+                searchInFile(file, order);
+            }
+
+            if (file.isArchive() && searchArchives) {
+                addChildren(subTasks);
             }
-        } else { // If not, increase file counter and bytes total
-            if (!ignoreHidden || !file.isHidden()) {
-                searchInFile(file);
+
+            if (!subTasks.isEmpty() && getState() != INTERRUPTED) {
+                invokeAll(subTasks);
             }
         }
 
-        if (file.isArchive() && searchArchives) {
+        private void addChildren(List<SearchTask> subTasks) {
             try {
                 AbstractFile subFiles[] = file.ls();
-                for (int i = 0; i < subFiles.length && getState() != INTERRUPTED; i++) {
-                    if (ignoreHidden && file.isHidden()) {
+                for (AbstractFile subFile : subFiles) {
+                    if (ignoreHidden && subFile.isHidden()) {
                         continue;
                     }
-                    // Notify job that we're starting to process this file (needed for recursive calls to processFile)
-                    nextFile(subFiles[i]);
-                    processFile(subFiles[i], null);
+                    int subOrder[] = Arrays.copyOf(order, order.length + 1);
+                    // Archive entries are listed after the children of the same file, if any
+                    subOrder[order.length] = subTasks.size();
+                    subTasks.add(new SearchTask(subFile, subOrder, false));
                 }
             } catch(IOException e) {
                 // Should we tell the user?
+                LOGGER.debug("Could not list " + file, e);
             }
         }
+    }
 
-        return true;
+    /**
+     * Searches the content of a file in the content search pool.
+     */
+    private class ContentSearchTask implements Runnable {
+        private final AbstractFile file;
+        private final int order[];
+
+        ContentSearchTask(AbstractFile file, int order[]) {
+            this.file = file;
+            this.order = order;
+        }
+
+        @Override
+        public void run() {
+            if (getState() == INTERRUPTED) {
+                return;
+            }
+            boolean found;
+            AbstractArchiveFile archive = file.getParentArchive();
+            if (archive == null) {
+                found = fileContainsString(file);
+            } else {
+                // Archive implementations are not all able to read several entries at once
+                synchronized (archive) {
+                    found = fileContainsString(file);
+                }
+            }
+            if (found) {
+                addMatch(file, order);
+            }
+        }
+    }
+
+    /**
+     * A file that has been found, with its position in a sequential, depth-first search.
+     */
+    private static class Match {
+        private final int order[];
+        private final AbstractFile file;
+
+        Match(int order[], AbstractFile file) {
+            this.order = order;
+            this.file = file;
+        }
+    }
+
+    /** Sorts matches in the order of a sequential, depth-first search, folders before their children */
+    private static final Comparator<Match> MATCH_ORDER = new Comparator<Match>() {
+        @Override
+        public int compare(Match m1, Match m2) {
+            int len = Math.min(m1.order.length, m2.order.length);
+            for (int i = 0; i < len; i++) {
+                if (m1.order[i] != m2.order[i]) {
+                    return m1.order[i] < m2.order[i] ? -1 : 1;
+                }
+            }
+            return m1.order.length - m2.order.length;
+        }
+    };
+
+    /**
+     * Reads the content of files, checking the job's state before each block, so that searching a large file can be
+     * paused and interrupted.
+     */
+    private class JobStateInputStream extends FilterInputStream {
+
+        JobStateInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            waitWhilePaused();
+            if (getState() == INTERRUPTED) {
+                return -1;
+            }
+            return super.read(b, off, len);
+        }
     }
 
-    private void searchInFile(AbstractFile file) {
+    private void searchInFile(AbstractFile file, int order[]) {
         File f = new File(file.toString());
-        if (fileFilter.accept(f) && fileContainsString(file)) {
+        if (!fileFilter.accept(f)) {
+            return;
+        }
+        if (fileContent == null || fileContent.isEmpty()) {
+            addMatch(file, order);
+        } else if (!file.isDirectory()) {
+            try {
+                contentPool.execute(new ContentSearchTask(file, order));
+            } catch (RejectedExecutionException e) {
+                // The job has been interrupted
+            }
+        }
+    }
+
+    private void addMatch(AbstractFile file, int order[]) {
+        if (orderedResults) {
+            pendingMatches.add(new Match(order, file));
+        } else {
             synchronized (this) {
                 list.add(file);
             }
         }
     }
 
+    private void publishOrderedResults() {
+        List<Match> matches = new ArrayList<>(pendingMatches);
+        pendingMatches.clear();
+        Collections.sort(matches, MATCH_ORDER);
+        synchronized (this) {
+            for (Match match : matches) {
+                list.add(match.file);
+            }
+        }
+    }
+
     private boolean fileContainsString0(AbstractFile f) {
         //Profiler.start("check_old");
         if (fileContent == null || fileContent.isEmpty()) {
@@ -168,11 +393,15 @@ public class FindFileJob extends FileJob {
             SearchPattern searchPattern = caseSensitive ?
                     new StringCaseSensitiveSearchPattern(fileContent, charset) :
                     new StringCaseInsensitiveSearchPattern(fileContent, charset);
-            SearchSourceStream source = new InputStreamSource(f.getInputStream());
-            long pos = SearchUtils.indexOf(source, searchPattern);
-            //Profiler.stop("check_new");
-            return pos >= 0;
-        } catch (SearchException | IOException e) {
+            InputStream in = new JobStateInputStream(f.getInputStream());
+            try {
+                long pos = SearchUtils.indexOf(in, new HorspoolSearcher(searchPattern));
+                //Profiler.stop("check_new");
+                return pos >= 0 && getState() != INTERRUPTED;
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
             e.printStackTrace();
             return false;
         }
@@ -193,6 +422,29 @@ public class FindFileJob extends FileJob {
         setFiles(fs);
     }
 
+    /**
+     * Sets the number of threads that list folders and match file names, must be called before the job is started.
+     */
+    public void setParallelism(int parallelism) {
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Sets the maximum number of files whose content is searched at the same time, must be called before the job is
+     * started.
+     */
+    public void setContentThreads(int contentThreads) {
+        this.contentThreads = contentThreads;
+    }
+
+    /**
+     * If <code>true</code>, results are made available all at once when the search is over, in the order in which a
+     * sequential search would have found them. Otherwise, they are made available as soon as they are found.
+     */
+    public void setOrderedResults(boolean orderedResults) {
+        this.orderedResults = orderedResults;
+    }
+
     public void setup(String fileMask, String fileContent, boolean searchSubdirs, boolean searchArchives, boolean caseSensitive, boolean ignoreHidden) {
         fileMask = fileMask.trim();
         fileMask = fileMask.isEmpty() ? "*" : fileMask;
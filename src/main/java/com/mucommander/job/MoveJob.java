@@ -46,6 +46,9 @@ public class MoveJob extends AbstractCopyJob {
     /** True if this job corresponds to a single file renaming */
     protected boolean renameMode = false;
 
+    /** Folder whose files are currently being moved, null for top level files */
+    private FolderMove currentFolderMove;
+
     
     /**
      * Creates a new MoveJob without starting it.
@@ -63,6 +66,33 @@ public class MoveJob extends AbstractCopyJob {
 
         this.errorDialogTitle = Translator.get("move_dialog.error_title");
         this.renameMode = renameMode;
+        setNbWorkers(getDefaultNbWorkers());
+    }
+
+
+    /**
+     * Deletes the given file, displaying an error dialog with the given message if it could not be deleted and giving
+     * the user the choice to skip the file, retry or cancel.
+     *
+     * @return true if the file was deleted
+     */
+    private boolean deleteFile(AbstractFile file, String errorMessageKey) {
+        do {		// Loop for retry
+            try  {
+                file.delete();
+                return true;
+            }
+            catch(IOException e) {
+                LOGGER.debug("IOException caught", e);
+
+                int ret = showErrorDialog(errorDialogTitle, Translator.get(errorMessageKey, file.getAbsolutePath()));
+                // Retry loops
+                if(ret==RETRY_ACTION)
+                    continue;
+                // Cancel, skip or close dialog returns false
+                return false;
+            }
+        } while(true);
     }
 
 
@@ -104,24 +134,8 @@ public class MoveJob extends AbstractCopyJob {
             return false;
 
         // Do not follow symlink, simply delete it and return
-        if(file.isSymlink()) {
-            do {		// Loop for retry
-                try  {
-                    file.delete();
-                    return true;
-                }
-                catch(IOException e) {
-                    LOGGER.debug("IOException caught", e);
-
-                    int ret = showErrorDialog(errorDialogTitle, Translator.get("cannot_delete_file", file.getAbsolutePath()));
-                    // Retry loops
-                    if(ret==RETRY_ACTION)
-                        continue;
-                    // Cancel, skip or close dialog returns false
-                    return false;
-                }
-            } while(true);
-        }
+        if(file.isSymlink())
+            return deleteFile(file, "cannot_delete_file");
 
         destFile = checkForCollision(file, destFolder, destFile, renameMode);
         if (destFile == null)
@@ -170,95 +184,95 @@ public class MoveJob extends AbstractCopyJob {
             }
 			
             // move each file in this folder recursively
-            do {		// Loop for retry
-                try {
-                    AbstractFile subFiles[] = file.ls();
-                    boolean isFolderEmpty = true;
-                    for (AbstractFile subFile : subFiles) {
-                        // Return now if the job was interrupted, so that we do not attempt to delete this folder
-                        if (getState() == INTERRUPTED)
-                            return false;
-
-                        // Notify job that we're starting to process this file (needed for recursive calls to processFile)
-                        nextFile(subFile);
-                        if (!processFile(subFile, destFile))
-                            isFolderEmpty = false;
+            final FolderMove folderMove = new FolderMove(currentFolderMove);
+            currentFolderMove = folderMove;
+            try {
+                do {		// Loop for retry
+                    try {
+                        AbstractFile subFiles[] = file.ls();
+                        for (AbstractFile subFile : subFiles) {
+                            // Return now if the job was interrupted, so that we do not attempt to delete this folder
+                            if (getState() == INTERRUPTED)
+                                return false;
+
+                            // Notify job that we're starting to process this file (needed for recursive calls to processFile)
+                            nextFile(subFile);
+                            if (!processFile(subFile, destFile))
+                                folderMove.markIncomplete();
+                        }
+                    }
+                    catch(IOException e) {
+                        // file.ls() failed
+                        int ret = showErrorDialog(errorDialogTitle, Translator.get("cannot_read_folder", file.getName()));
+                        // Retry loops
+                        if(ret==RETRY_ACTION)
+                            continue;
+                        // Cancel, skip or close dialog returns false
+                        return false;
                     }
+                    break;
+                } while(true);
+            }
+            finally {
+                currentFolderMove = folderMove.parent;
+            }
 
+            // The folder can only be finished once its files have been moved, which may still be in progress in
+            // worker threads
+            final AbstractFile sourceFolder = file;
+            final AbstractFile destFolderFile = destFile;
+            final int fileIndex = getCurrentFileIndex();
+            runAfterTransfers(new Runnable() {
+                public void run() {
                     // Only when finished with folder, set destination folder's date to match the original folder one
-                    if(destFile.isFileOperationSupported(FileOperation.CHANGE_DATE)) {
+                    if(destFolderFile.isFileOperationSupported(FileOperation.CHANGE_DATE)) {
                         try {
-                            destFile.changeDate(file.getDate());
+                            destFolderFile.changeDate(sourceFolder.getDate());
                         }
                         catch (IOException e) {
-                            LOGGER.debug("failed to change the date of "+destFile, e);
+                            LOGGER.debug("failed to change the date of "+destFolderFile, e);
                             // Fail silently
                         }
                     }
 
-                    // If one file failed to be moved, return false (failure) since this folder could not be moved totally
-                    if(!isFolderEmpty)
-                        return false;
-                }
-                catch(IOException e) {
-                    // file.ls() failed
-                    int ret = showErrorDialog(errorDialogTitle, Translator.get("cannot_read_folder", file.getName()));
-                    // Retry loops
-                    if(ret==RETRY_ACTION)
-                        continue;
-                    // Cancel, skip or close dialog returns false
-                    return false;
-                }
-                break;
-            } while(true);
-
-            // Return now if the job was interrupted, so that we do not attempt to delete this folder
-            if(getState()==INTERRUPTED)
-                return false;
+                    // Do not attempt to delete this folder if the job was interrupted or if one of its files could
+                    // not be moved, since this folder could not be moved totally
+                    if(getState()==INTERRUPTED || folderMove.isIncomplete()) {
+                        folderMove.markIncomplete();
+                        markFileFailed(fileIndex);
+                        return;
+                    }
 
-            // finally, delete the empty folder
-            do {		// Loop for retry
-                try  {
-                    file.delete();
-                    return true;
-                }
-                catch(IOException e) {
-                    int ret = showErrorDialog(errorDialogTitle, Translator.get("cannot_delete_folder", file.getAbsolutePath()));
-                    // Retry loops
-                    if(ret==RETRY_ACTION)
-                        continue;
-                    // Cancel, skip or close dialog returns false
-                    return false;
+                    // finally, delete the empty folder
+                    if(!deleteFile(sourceFolder, "cannot_delete_folder")) {
+                        folderMove.markIncomplete();
+                        markFileFailed(fileIndex);
+                    }
                 }
-            } while(true);
+            });
+
+            // If files are moved by worker threads, the top-level file is reported as moved only once the folder is
+            // finished (see TransferFileJob#fileProcessed)
+            return !folderMove.isIncomplete();
         }
         // File is a regular file, move it by copying it to the destination and then deleting it
         else  {
 
             // if renameTo() was not supported or failed, or if it wasn't possible because of 'append',
             // try the hard way by copying the file first, and then deleting the source file.
-            if(tryCopyFile(file, destFile, append, errorDialogTitle) && getState()!=INTERRUPTED) {
-                // Delete the source file
-                do {		// Loop for retry
-                    try  {
-                        file.delete();
-                        // All OK
-                        return true;
-                    }
-                    catch(IOException e) {
-                        LOGGER.debug("IOException caught", e);
+            final FolderMove folderMove = currentFolderMove;
+            return submitFileCopy(file, destFile, append, errorDialogTitle, new FileCopyListener() {
+                public boolean fileCopied(AbstractFile sourceFile, AbstractFile destFile, boolean copied) {
+                    // Delete the source file
+                    boolean moved = copied && getState()!=INTERRUPTED && deleteFile(sourceFile, "cannot_delete_file");
 
-                        int ret = showErrorDialog(errorDialogTitle, Translator.get("cannot_delete_file", file.getAbsolutePath()));
-                        // Retry loops
-                        if(ret==RETRY_ACTION)
-                            continue;
-                        // Cancel, skip or close dialog returns false
-                        return false;
-                    }
-                } while(true);
-            }
+                    // The enclosing folders cannot be deleted if the file was not moved
+                    if(!moved && folderMove!=null)
+                        folderMove.markIncomplete();
 
-            return false;
+                    return moved;
+                }
+            });
         }
     }
 
@@ -308,4 +322,32 @@ public class MoveJob extends AbstractCopyJob {
 
         return Translator.get("move_dialog.moving_file", getCurrentFilename());
     }
+
+
+    /**
+     * Keeps track of whether all the files of a folder have been moved, so that the folder is deleted only if it is
+     * empty. Files may be moved by worker threads after the folder has been traversed.
+     */
+    private static class FolderMove {
+        /** Enclosing folder, null for top level folders */
+        private final FolderMove parent;
+        /** True if one of the folder's files could not be moved */
+        private volatile boolean incomplete;
+
+        private FolderMove(FolderMove parent) {
+            this.parent = parent;
+        }
+
+        /**
+         * Marks this folder and its enclosing folders as not moved completely.
+         */
+        private void markIncomplete() {
+            for(FolderMove folderMove = this; folderMove!=null; folderMove = folderMove.parent)
+                folderMove.incomplete = true;
+        }
+
+        private boolean isIncomplete() {
+            return incomplete;
+        }
+    }
 }
@@ -90,6 +90,9 @@ public class SelfUpdateJob extends CopyJob {
         this.tempDestJar = tempDestJar;
         this.classLoader = getClass().getClassLoader();
 
+        // The update jar is moved in place once processFile has returned, which must be after it has been copied
+        setNbWorkers(1);
+
         directoryOrClassFileFilter = new OrFileFilter(
             new AttributeFileFilter(FileAttribute.DIRECTORY),
             new ExtensionFilenameFilter(".class")
@@ -19,10 +19,27 @@
 
 package com.mucommander.job;
 
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import com.mucommander.commons.file.*;
 import org.slf4j.Logger;
@@ -35,9 +52,16 @@ import com.mucommander.commons.io.ByteCounter;
 import com.mucommander.commons.io.ChecksumInputStream;
 import com.mucommander.commons.io.CounterInputStream;
 import com.mucommander.commons.io.FileTransferException;
+import com.mucommander.commons.io.PipelinedInputStream;
+import com.mucommander.commons.io.SegmentSource;
+import com.mucommander.commons.io.SegmentedInputStream;
 import com.mucommander.commons.io.ThroughputLimitInputStream;
+import com.mucommander.commons.io.TransferChannelInputStream;
 import com.mucommander.commons.io.security.MuProvider;
 import com.mucommander.commons.runtime.OsFamily;
+import com.mucommander.conf.MuConfigurations;
+import com.mucommander.conf.MuPreference;
+import com.mucommander.conf.MuPreferences;
 import com.mucommander.text.Translator;
 import com.mucommander.ui.dialog.file.ProgressDialog;
 import com.mucommander.ui.main.MainFrame;
@@ -66,26 +90,62 @@ public abstract class TransferFileJob extends FileJob {
     /** Contains the number of bytes skipped so far (resumed files), see {@link #getTotalSkippedByteCounter()} */
     private ByteCounter totalSkippedByteCounter;
 
-    /** InputStream currently being processed, may be null */
-    private ThroughputLimitInputStream tlin;
+    /** Transfer carried out by the job's thread */
+    private final Transfer jobTransfer;
+
+    /** Transfer carried out by the current worker thread, not set in the job's thread */
+    private final ThreadLocal<Transfer> workerTransfer = new ThreadLocal<>();
+
+    /** Transfers currently carried out by worker threads */
+    private final Set<Transfer> workerTransfers = Collections.synchronizedSet(new HashSet<Transfer>());
+
+    /** Number of files transferred at the same time by worker threads, 1 to transfer files one at a time in the
+     * job's thread */
+    private int nbWorkers = 1;
+
+    /** Worker threads, created when the first file is handed off to them */
+    private volatile ThreadPoolExecutor workers;
+
+    /** Tasks to run in the job's thread once all the files handed off to worker threads have been transferred */
+    private final List<Runnable> pendingTasks = new ArrayList<>();
+
+    /** Indexes of the top-level files that were not processed successfully after {@link #processFile(AbstractFile, Object)}
+     * returned, because one of their copies failed in a worker thread */
+    private final Set<Integer> failedFileIndexes = Collections.synchronizedSet(new HashSet<Integer>());
+
+    /** Number of files that can wait to be transferred, per worker thread */
+    private final static int WORK_QUEUE_FACTOR = 2;
 
     /** ThroughputLimit in bytes per second, -1 initially (no limit) */
     private long throughputLimit = -1;
 
-    /** Has the file currently being processed been skipped ? */
-    private boolean currentFileSkipped;
-
     /** If true, all transfers will be checked for integrity: the checksum of the source and destination file will
      *  be calculated and compared to verify they match. */
     private boolean integrityCheckEnabled;
 
-    /** True when the checksum of the source or destination file is being calculated. */
-    private boolean isCheckingIntegrity;
-
     /** The checksum algorithm used for checking the integrity of transferred files. The algorithm has to be the fastest
      * possible (to have the minimum impact on transfer speed) and does not need to have a good resitance to collision. */
     private final static String CHECKSUM_VERIFICATION_ALGORITHM = "Adler32";
 
+    /** Maximum number of bytes transferred by a single channel transfer, when copying a local file to a local file.
+     * Pausing the job, skipping the current file and the throughput limit are taken into account between transfers. */
+    private final static long CHANNEL_TRANSFER_CHUNK_SIZE = 8 * 1024 * 1024;
+
+    /** Files smaller than this are not read ahead: starting a reader thread would cost more than it saves */
+    private final static long PIPELINED_COPY_MIN_SIZE = 1024 * 1024;
+
+    /** If true, files copied from or to a remote file system are read ahead in a separate thread */
+    private boolean pipelinedCopyEnabled;
+
+    /** Files smaller than this number of segments are not downloaded in segments */
+    private final static int SEGMENTED_DOWNLOAD_MIN_SEGMENTS = 2;
+
+    /** Number of connections used to download a file in segments, 1 if segmented downloads are disabled */
+    private int segmentedDownloadConnections;
+
+    /** Size of the segments of segmented downloads, in bytes */
+    private int segmentedDownloadSegmentSize;
+
     /**
      * If user changed "Overwrite all readonly" in the question dialog
      */
@@ -106,9 +166,26 @@ public abstract class TransferFileJob extends FileJob {
         this.currentFileByteCounter = new ByteCounter();
         this.currentFileSkippedByteCounter = new ByteCounter();
 
-        // Account the current file's byte counter in the total byte counter
-        this.totalByteCounter = new ByteCounter(currentFileByteCounter);
-        this.totalSkippedByteCounter = new ByteCounter(currentFileSkippedByteCounter);
+        this.jobTransfer = new Transfer(currentFileByteCounter, currentFileSkippedByteCounter);
+
+        // Account the current file's byte counter in the total byte counter, as well as the byte counters of the
+        // files being transferred by worker threads
+        this.totalByteCounter = new ByteCounter(currentFileByteCounter) {
+            @Override
+            public synchronized long getByteCount() {
+                return super.getByteCount() + getWorkersByteCount(false);
+            }
+        };
+        this.totalSkippedByteCounter = new ByteCounter(currentFileSkippedByteCounter) {
+            @Override
+            public synchronized long getByteCount() {
+                return super.getByteCount() + getWorkersByteCount(true);
+            }
+        };
+
+        this.pipelinedCopyEnabled = MuConfigurations.getPreferences().getVariable(MuPreference.PIPELINED_TRANSFERS, MuPreferences.DEFAULT_PIPELINED_TRANSFERS);
+        this.segmentedDownloadConnections = MuConfigurations.getPreferences().getVariable(MuPreference.SEGMENTED_DOWNLOAD_CONNECTIONS, MuPreferences.DEFAULT_SEGMENTED_DOWNLOAD_CONNECTIONS);
+        this.segmentedDownloadSegmentSize = MuConfigurations.getPreferences().getVariable(MuPreference.SEGMENTED_DOWNLOAD_SEGMENT_SIZE, MuPreferences.DEFAULT_SEGMENTED_DOWNLOAD_SEGMENT_SIZE);
     }
 
     protected void copyToReadonlyFile(AbstractFile sourceFile, AbstractFile destFile, boolean append) throws FileTransferException {
@@ -127,8 +204,10 @@ public abstract class TransferFileJob extends FileJob {
      * As much as the source and destination protocols allow, the source file's date and permissions will be preserved.
      */
     protected void copyFile(AbstractFile sourceFile, AbstractFile destFile, boolean append) throws FileTransferException {
+        Transfer transfer = getTransfer();
+
         // Reset this field in case it was set to true for the previous file
-        isCheckingIntegrity = false;
+        transfer.checkingIntegrity = false;
 
         // Throw a specific FileTransferException if source and destination files are identical
         if (sourceFile.equalsCanonical(destFile))
@@ -148,10 +227,24 @@ public abstract class TransferFileJob extends FileJob {
             }
         }
 
-        // If the file wasn't copied using copyRemotelyTo(), or if copyRemotelyTo() failed
+        // Local files are copied by the operating system, without going through a user-space buffer
+        if (!copied && isChannelTransferPossible(sourceFile, destFile)) {
+            transferChannels(sourceFile, destFile, append);
+            copied = true;
+        }
+
+        // Files downloaded in segments to a local file are written straight to the file by the download threads
+        if (!copied && !integrityCheckEnabled && destFile.getTopAncestor() instanceof LocalFile
+                && isSegmentedDownload(sourceFile, sourceFile.getSize())) {
+            downloadSegments(sourceFile, destFile, append);
+            copied = true;
+        }
+
+        // If the file wasn't copied using copyRemotelyTo() or channels, or if copyRemotelyTo() failed
         InputStream in = null;
         if (!copied) {
             // Copy source file stream to destination file
+            InputStream countedIn;
             try {
                 long inLength = sourceFile.getSize();
 
@@ -159,29 +252,33 @@ public abstract class TransferFileJob extends FileJob {
                 try  {
                     long destFileSize = destFile.getSize();
                     if(append && destFileSize!=-1) {
-                        in = sourceFile.getInputStream(destFileSize);
+                        inLength = inLength==-1?-1:inLength-destFileSize;
+                        in = isSegmentedDownload(sourceFile, inLength)
+                            ?createSegmentedInputStream(sourceFile, destFileSize, inLength, null)
+                            :pipelineInputStream(sourceFile.getInputStream(destFileSize), sourceFile, destFile, inLength);
                         // Do not calculate checksum, as it needs to be calculated on the whole file
 
-                        inLength -= destFileSize;
                         // Increase current file ByteCounter by the number of bytes skipped
-                        currentFileByteCounter.add(destFileSize);
+                        transfer.byteCounter.add(destFileSize);
                         // Increase skipped ByteCounter by the number of bytes skipped
-                        currentFileSkippedByteCounter.add(destFileSize);
+                        transfer.skippedByteCounter.add(destFileSize);
                     } else {
-                        in = sourceFile.getInputStream();
+                        in = isSegmentedDownload(sourceFile, inLength)
+                            ?createSegmentedInputStream(sourceFile, 0, inLength, null)
+                            :pipelineInputStream(sourceFile.getInputStream(), sourceFile, destFile, inLength);
                         if (integrityCheckEnabled) {
                             in = new ChecksumInputStream(in, MessageDigest.getInstance(CHECKSUM_VERIFICATION_ALGORITHM));
                         }
                     }
 
-                    setCurrentInputStream(in);
+                    countedIn = setCurrentInputStream(in);
                 } catch(Exception e) {
                     LOGGER.debug("IOException caught, throwing FileTransferException", e);
                     throw new FileTransferException(FileTransferException.OPENING_SOURCE);
                 }
 
                 // Copy source stream to destination file
-                destFile.copyStream(tlin, append, inLength);
+                destFile.copyStream(countedIn, append, inLength);
             }
             finally {
                 // This block will always be executed, even if an exception
@@ -189,6 +286,22 @@ public abstract class TransferFileJob extends FileJob {
 
                 // Tries to close the streams no matter what happened before
                 closeCurrentInputStream();
+
+                PipelinedInputStream pipelinedIn = transfer.pipelinedIn;
+                if (pipelinedIn != null) {
+                    // Close the stream in case it was not registered yet
+                    try {
+                        pipelinedIn.close();
+                    } catch(IOException e) {
+                        // Not much to do about it
+                    }
+
+                    LOGGER.debug("Pipelined copy of "+sourceFile+": reader stalled "+pipelinedIn.getReaderStallTime()+"ms"
+                            +" waiting for the destination, writer stalled "+pipelinedIn.getConsumerStallTime()+"ms"
+                            +" waiting for the source, average queue depth "+pipelinedIn.getAverageQueueDepth()
+                            +", max queue depth "+pipelinedIn.getMaxQueueDepth());
+                    transfer.pipelinedIn = null;
+                }
             }
         }
 
@@ -233,7 +346,7 @@ public abstract class TransferFileJob extends FileJob {
             String destinationChecksum;
 
             // Indicate that integrity is being checked, the value is reset when the next file starts
-            isCheckingIntegrity = true;
+            transfer.checkingIntegrity = true;
 
             if(in!=null && (in instanceof ChecksumInputStream)) {
                 // The file was copied with a ChecksumInputStream, the checksum is already calculated, simply
@@ -270,8 +383,216 @@ public abstract class TransferFileJob extends FileJob {
         }
     }
 
+    /**
+     * Returns <code>true</code> if the given source file should be read ahead in a separate thread while it is copied
+     * to the given destination file, so that reading the source and writing the destination overlap.
+     * This implementation returns <code>true</code> if {@link #isPipelinedCopyEnabled() pipelined copy is enabled},
+     * at least one of the files is not a local file and the file is large enough, or its size is not known.
+     * This method can be overridden to change this policy on a per-transfer basis.
+     *
+     * @param sourceFile the file to copy
+     * @param destFile the file to copy to
+     * @param length the number of bytes to copy, <code>-1</code> if not known
+     * @return true if the source file should be read ahead
+     */
+    protected boolean isPipelinedCopy(AbstractFile sourceFile, AbstractFile destFile, long length) {
+        return pipelinedCopyEnabled
+            && (length == -1 || length >= PIPELINED_COPY_MIN_SIZE)
+            && !(sourceFile.getTopAncestor() instanceof LocalFile && destFile.getTopAncestor() instanceof LocalFile);
+    }
+
+    /**
+     * Wraps the given source stream in a {@link PipelinedInputStream} if
+     * {@link #isPipelinedCopy(AbstractFile, AbstractFile, long)} returns <code>true</code>, returns it as is otherwise.
+     */
+    private InputStream pipelineInputStream(InputStream in, AbstractFile sourceFile, AbstractFile destFile, long length) {
+        if (!isPipelinedCopy(sourceFile, destFile, length))
+            return in;
+
+        PipelinedInputStream pipelinedIn = new PipelinedInputStream(in);
+        getTransfer().pipelinedIn = pipelinedIn;
+        return pipelinedIn;
+    }
+
+    /**
+     * Returns the first ancestor of the given file that is a {@link SegmentSource}, <code>null</code> if it has none.
+     */
+    private static SegmentSource getSegmentSource(AbstractFile file) {
+        AbstractFile ancestor = file;
+        while (!(ancestor instanceof SegmentSource) && ancestor.hasAncestor())
+            ancestor = ancestor.getAncestor();
+
+        return ancestor instanceof SegmentSource ? (SegmentSource)ancestor : null;
+    }
+
+    /**
+     * Returns <code>true</code> if the given source file should be downloaded over several connections at the same
+     * time, with ranged requests. This implementation returns <code>true</code> if
+     * {@link #getSegmentedDownloadConnections() segmented downloads are enabled}, the file's protocol supports ranged
+     * requests and the file is large enough to be split into several segments.
+     * This method can be overridden to change this policy on a per-transfer basis.
+     *
+     * @param sourceFile the file to copy
+     * @param length the number of bytes to copy, <code>-1</code> if not known
+     * @return true if the source file should be downloaded in segments
+     */
+    protected boolean isSegmentedDownload(AbstractFile sourceFile, long length) {
+        if (segmentedDownloadConnections <= 1
+                || length < (long)segmentedDownloadSegmentSize * SEGMENTED_DOWNLOAD_MIN_SEGMENTS)
+            return false;
+
+        SegmentSource segmentSource = getSegmentSource(sourceFile);
+        return segmentSource != null && segmentSource.isSegmentReadSupported();
+    }
+
+    /**
+     * Creates a {@link SegmentedInputStream} downloading the given range of the source file, and writing it to the
+     * given channel if it is not <code>null</code>.
+     */
+    private SegmentedInputStream createSegmentedInputStream(AbstractFile sourceFile, long offset, long length, FileChannel target) {
+        return new SegmentedInputStream(getSegmentSource(sourceFile), offset, length,
+                segmentedDownloadSegmentSize, segmentedDownloadConnections, target, offset);
+    }
+
+    /**
+     * Downloads the given source file to the given local destination file in segments, optionally resuming the
+     * operation. Segments are written to the destination file at their position by the threads that download them.
+     * The {@link SegmentedInputStream} is registered as the current InputStream and skipped until its end, so that
+     * downloaded bytes are counted, the throughput is limited, and the transfer can be paused, skipped and stopped,
+     * exactly like stream copies.
+     */
+    private void downloadSegments(AbstractFile sourceFile, AbstractFile destFile, boolean append) throws FileTransferException {
+        File dest = (File)destFile.getTopAncestor().getUnderlyingFileObject();
+
+        // Closed in the finally block until the SegmentedInputStream, which closes its target channel, is created
+        RandomAccessFile destRaf = null;
+        try {
+            long offset = 0;
+            FileChannel destChannel;
+            try {
+                long destFileSize = destFile.getSize();
+                if (append && destFileSize!=-1) {
+                    offset = destFileSize;
+                    // Increase current file ByteCounter by the number of bytes skipped
+                    getTransfer().byteCounter.add(destFileSize);
+                    // Increase skipped ByteCounter by the number of bytes skipped
+                    getTransfer().skippedByteCounter.add(destFileSize);
+                }
+                destRaf = new RandomAccessFile(dest, "rw");
+                destChannel = destRaf.getChannel();
+                // Discard the bytes that are not kept: the whole file, or those after the resume offset
+                destChannel.truncate(offset);
+            } catch(IOException e) {
+                LOGGER.debug("IOException caught, throwing FileTransferException", e);
+                throw new FileTransferException(FileTransferException.OPENING_DESTINATION);
+            }
+
+            long length = Math.max(0, sourceFile.getSize()-offset);
+            InputStream in = setCurrentInputStream(createSegmentedInputStream(sourceFile, offset, length, destChannel));
+            destRaf = null;
+            try {
+                // Download until the end of the source file is reached
+                while (in.skip(segmentedDownloadSegmentSize) > 0);
+            } catch(IOException e) {
+                LOGGER.debug("IOException caught, throwing FileTransferException", e);
+                throw new FileTransferException(FileTransferException.READING_SOURCE);
+            }
+
+            try {
+                in.close();
+            } catch(IOException e) {
+                throw new FileTransferException(FileTransferException.CLOSING_DESTINATION);
+            }
+        }
+        finally {
+            // Tries to close the stream and channel no matter what happened before
+            closeCurrentInputStream();
+            if (destRaf != null) {
+                try {
+                    destRaf.close();
+                } catch(IOException e) {
+                    // Not much to do about it
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns <code>true</code> if the given source file can be copied to the given destination file using
+     * {@link #transferChannels(AbstractFile, AbstractFile, boolean)}: both files have to be local files. Files are not
+     * transferred this way if the integrity check is enabled, as the source file's bytes have to go through a checksum
+     * anyway.
+     */
+    private boolean isChannelTransferPossible(AbstractFile sourceFile, AbstractFile destFile) {
+        return !integrityCheckEnabled
+            && sourceFile.getTopAncestor() instanceof LocalFile
+            && destFile.getTopAncestor() instanceof LocalFile;
+    }
+
+    /**
+     * Copies the given local source file to the given local destination file, optionally resuming the operation, using
+     * {@link FileChannel#transferTo(long, long, java.nio.channels.WritableByteChannel)} in chunks of
+     * {@link #CHANNEL_TRANSFER_CHUNK_SIZE} bytes. The channels are registered as the current InputStream using
+     * a {@link TransferChannelInputStream} which transfers data when skipped, so that transferred bytes are counted,
+     * the throughput is limited, and the transfer can be paused, skipped and stopped, exactly like stream copies.
+     */
+    private void transferChannels(AbstractFile sourceFile, AbstractFile destFile, boolean append) throws FileTransferException {
+        File source = (File)sourceFile.getTopAncestor().getUnderlyingFileObject();
+        File dest = (File)destFile.getTopAncestor().getUnderlyingFileObject();
+
+        try {
+            FileChannel sourceChannel;
+            try {
+                sourceChannel = new FileInputStream(source).getChannel();
+            } catch(IOException e) {
+                LOGGER.debug("IOException caught, throwing FileTransferException", e);
+                throw new FileTransferException(FileTransferException.OPENING_SOURCE);
+            }
+
+            FileChannel destChannel;
+            try {
+                long destFileSize = destFile.getSize();
+                if (append && destFileSize!=-1) {
+                    sourceChannel.position(destFileSize);
+                    // Increase current file ByteCounter by the number of bytes skipped
+                    getTransfer().byteCounter.add(destFileSize);
+                    // Increase skipped ByteCounter by the number of bytes skipped
+                    getTransfer().skippedByteCounter.add(destFileSize);
+                }
+                destChannel = new FileOutputStream(dest, append).getChannel();
+            } catch(IOException e) {
+                LOGGER.debug("IOException caught, throwing FileTransferException", e);
+                try {
+                    sourceChannel.close();
+                } catch(IOException e2) {
+                    // Not much to do about it
+                }
+                throw new FileTransferException(FileTransferException.OPENING_DESTINATION);
+            }
+
+            InputStream in = setCurrentInputStream(new TransferChannelInputStream(sourceChannel, destChannel));
+            try {
+                // Transfer until the end of the source file is reached
+                while (in.skip(CHANNEL_TRANSFER_CHUNK_SIZE) > 0);
+            } catch(IOException e) {
+                LOGGER.debug("IOException caught, throwing FileTransferException", e);
+                throw new FileTransferException(FileTransferException.WRITING_DESTINATION);
+            }
+
+            try {
+                in.close();
+            } catch(IOException e) {
+                throw new FileTransferException(FileTransferException.CLOSING_DESTINATION);
+            }
+        }
+        finally {
+            // Tries to close the channels no matter what happened before
+            closeCurrentInputStream();
+        }
+    }
+
     private String calculateChecksum(AbstractFile file) throws IOException, NoSuchAlgorithmException {
-        currentFileByteCounter.reset();
+        getTransfer().byteCounter.reset();
         InputStream in = setCurrentInputStream(file.getInputStream());
         try {
             return AbstractFile.calculateChecksum(in, MessageDigest.getInstance(CHECKSUM_VERIFICATION_ALGORITHM));
@@ -352,8 +673,8 @@ public abstract class TransferFileJob extends FileJob {
                 // Retry action (append or retry)
                 if (choice == RETRY_ACTION || choice == APPEND_ACTION || choice == OVERWRITE_READONLY_ACTION || choice == OVERWRITE_READONLY_ALL_ACTION) {
                     // Reset current file byte counters
-                    currentFileByteCounter.reset();
-                    currentFileSkippedByteCounter.reset();
+                    getTransfer().byteCounter.reset();
+                    getTransfer().skippedByteCounter.reset();
                     // Append resumes transfer
                     append = choice == APPEND_ACTION;
                     overwriteReadonly = choice == OVERWRITE_READONLY_ACTION || choice == OVERWRITE_READONLY_ALL_ACTION;
@@ -385,29 +706,263 @@ public abstract class TransferFileJob extends FileJob {
      * @return the 'augmented' InputStream using the given stream as the underlying InputStream
      */
     protected synchronized InputStream setCurrentInputStream(InputStream in) {
-        if(tlin==null) {
-            tlin = new ThroughputLimitInputStream(new CounterInputStream(in, currentFileByteCounter), throughputLimit);
+        Transfer transfer = getTransfer();
+        if(transfer.tlin==null) {
+            transfer.tlin = new ThroughputLimitInputStream(new CounterInputStream(in, transfer.byteCounter), getState()==PAUSED?0:getStreamThroughputLimit());
         }
         else {
-            tlin.setUnderlyingInputStream(new CounterInputStream(in, currentFileByteCounter));
+            transfer.tlin.setUnderlyingInputStream(new CounterInputStream(in, transfer.byteCounter));
         }
 
-        return tlin;
+        return transfer.tlin;
     }
 
     /**
      * Closes the currently registered source InputStream.
      */
     protected synchronized void closeCurrentInputStream() {
-        if (tlin != null) {
+        closeInputStream(getTransfer());
+    }
+
+    /**
+     * Closes the source InputStream registered by the given transfer, if any.
+     */
+    private synchronized void closeInputStream(Transfer transfer) {
+        if (transfer.tlin != null) {
             try {
-                tlin.close();
+                transfer.tlin.close();
             } catch(IOException e) {
 
             }
         }
     }
 
+    /**
+     * Returns the transfer carried out by the calling thread: the one of the current worker thread if called from a
+     * worker thread, the one of the job's thread otherwise.
+     */
+    private Transfer getTransfer() {
+        Transfer transfer = workerTransfer.get();
+        return transfer==null?jobTransfer:transfer;
+    }
+
+    /**
+     * Returns the transfer whose progress is displayed: the one of the worker thread transferring the current file if
+     * there is one, the one of the job's thread otherwise.
+     */
+    private Transfer getDisplayedTransfer() {
+        AbstractFile currentFile = getCurrentFile();
+        if (currentFile != null) {
+            synchronized(workerTransfers) {
+                for (Transfer transfer : workerTransfers) {
+                    if (transfer.file == currentFile)
+                        return transfer;
+                }
+            }
+        }
+
+        return jobTransfer;
+    }
+
+    /**
+     * Returns all the transfers currently carried out, by the job's thread and by worker threads.
+     */
+    private List<Transfer> getTransfers() {
+        List<Transfer> transfers = new ArrayList<>();
+        transfers.add(jobTransfer);
+        synchronized(workerTransfers) {
+            transfers.addAll(workerTransfers);
+        }
+
+        return transfers;
+    }
+
+    /**
+     * Returns the sum of the byte counters of the files being transferred by worker threads.
+     *
+     * @param skipped true to sum the skipped byte counters, false to sum the byte counters
+     */
+    private long getWorkersByteCount(boolean skipped) {
+        long count = 0;
+        synchronized(workerTransfers) {
+            for (Transfer transfer : workerTransfers)
+                count += (skipped?transfer.skippedByteCounter:transfer.byteCounter).getByteCount();
+        }
+
+        return count;
+    }
+
+    /**
+     * Returns the throughput limit of each registered InputStream: files transferred at the same time share the
+     * throughput limit.
+     */
+    private long getStreamThroughputLimit() {
+        if (throughputLimit <= 0 || nbWorkers <= 1)
+            return throughputLimit;
+
+        return Math.max(1, throughputLimit/nbWorkers);
+    }
+
+
+    /**
+     * Returns the number of files that are transferred at the same time, <code>1</code> if files are transferred one
+     * at a time in the job's thread (default).
+     *
+     * @return the number of files that are transferred at the same time
+     */
+    public int getNbWorkers() {
+        return nbWorkers;
+    }
+
+    /**
+     * Sets the number of files that are transferred at the same time by {@link #submitFileCopy(AbstractFile, AbstractFile, boolean, String, FileCopyListener)},
+     * <code>1</code> to transfer files one at a time in the job's thread. This method must be called before the job
+     * is started.
+     *
+     * @param nbWorkers the number of files that are transferred at the same time
+     */
+    public void setNbWorkers(int nbWorkers) {
+        this.nbWorkers = Math.max(1, nbWorkers);
+    }
+
+    /**
+     * Copies the given source file to the specified destination file with {@link #tryCopyFile(AbstractFile, AbstractFile, boolean, String)},
+     * either in the job's thread or in a worker thread if more than one {@link #setNbWorkers(int) worker} has been
+     * specified. In the latter case, this method returns as soon as the file has been handed off to a worker thread,
+     * blocking only while all worker threads are busy and their queue is full.
+     *
+     * <p>The given listener, if any, is notified in the thread the file was copied in. Operations that depend on all
+     * the files handed off so far having been copied should be deferred with {@link #runAfterTransfers(Runnable)}.</p>
+     *
+     * <p>If the copy of a file that was handed off to a worker thread fails, or if the listener reports that the file
+     * was not processed successfully, the current top-level file is not considered as processed successfully: it is
+     * not unmarked (see {@link #fileProcessed(AbstractFile, boolean)}).</p>
+     *
+     * @param sourceFile the file to copy
+     * @param destFile the file to copy to
+     * @param append true to resume the transfer
+     * @param errorDialogTitle title of the error dialogs displayed if the copy fails
+     * @param listener notified once the file has been copied, may be null
+     * @return false if the file was copied in the job's thread and its copy failed, or if the file could not be handed
+     * off because the job has been stopped, true otherwise
+     */
+    protected boolean submitFileCopy(final AbstractFile sourceFile, final AbstractFile destFile, final boolean append, final String errorDialogTitle, final FileCopyListener listener) {
+        if (nbWorkers <= 1) {
+            boolean copied = tryCopyFile(sourceFile, destFile, append, errorDialogTitle);
+            if (listener != null)
+                copied = listener.fileCopied(sourceFile, destFile, copied);
+
+            return copied;
+        }
+
+        if (workers == null)
+            workers = createWorkers();
+
+        final int fileIndex = getCurrentFileIndex();
+        try {
+            workers.execute(new Runnable() {
+                public void run() {
+                    if (!copyFileInWorker(sourceFile, destFile, append, errorDialogTitle, listener))
+                        markFileFailed(fileIndex);
+                }
+            });
+        } catch(RejectedExecutionException e) {
+            // The job has been stopped
+            return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Copies the given file in the calling worker thread, accounting its bytes in the job's byte counters.
+     * Returns <code>true</code> if the file was processed successfully.
+     */
+    private boolean copyFileInWorker(AbstractFile sourceFile, AbstractFile destFile, boolean append, String errorDialogTitle, FileCopyListener listener) {
+        waitWhilePaused();
+        if (getState() == INTERRUPTED)
+            return false;
+
+        Transfer transfer = new Transfer(new ByteCounter(), new ByteCounter());
+        transfer.file = sourceFile;
+        workerTransfer.set(transfer);
+        workerTransfers.add(transfer);
+        try {
+            boolean copied = tryCopyFile(sourceFile, destFile, append, errorDialogTitle);
+            if (listener != null)
+                copied = listener.fileCopied(sourceFile, destFile, copied);
+
+            return copied;
+        }
+        finally {
+            // Move the file's bytes to the total byte counters before the transfer stops being accounted for
+            totalByteCounter.add(transfer.byteCounter, true);
+            totalSkippedByteCounter.add(transfer.skippedByteCounter, true);
+            workerTransfers.remove(transfer);
+            workerTransfer.remove();
+        }
+    }
+
+    /**
+     * Creates the worker threads used by {@link #submitFileCopy(AbstractFile, AbstractFile, boolean, String, FileCopyListener)}.
+     * When all worker threads are busy and their queue is full, the job's thread waits for a worker to be available.
+     */
+    private ThreadPoolExecutor createWorkers() {
+        final String threadName = getClass().getName()+" worker ";
+        final AtomicInteger threadCount = new AtomicInteger();
+
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(nbWorkers, nbWorkers, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<Runnable>(nbWorkers*WORK_QUEUE_FACTOR),
+                new ThreadFactory() {
+                    public Thread newThread(Runnable r) {
+                        Thread thread = new Thread(r, threadName+threadCount.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                },
+                new RejectedExecutionHandler() {
+                    public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+                        if (executor.isShutdown())
+                            throw new RejectedExecutionException();
+
+                        try {
+                            executor.getQueue().put(r);
+                        } catch(InterruptedException e) {
+                            throw new RejectedExecutionException(e);
+                        }
+                    }
+                });
+
+        return executor;
+    }
+
+    /**
+     * Runs the given task in the job's thread once all the files handed off to worker threads so far have been
+     * copied, or immediately if files are copied in the job's thread. Tasks are run in the order they were
+     * submitted, and are not run if the job is interrupted.
+     *
+     * @param task the task to run once all pending files have been copied
+     */
+    protected void runAfterTransfers(Runnable task) {
+        if (workers == null) {
+            task.run();
+        }
+        else {
+            pendingTasks.add(task);
+        }
+    }
+
+    /**
+     * Records that the top-level file with the given index was not processed successfully, even though
+     * {@link #processFile(AbstractFile, Object)} may have reported otherwise. This method can be called from worker
+     * threads and from the tasks deferred with {@link #runAfterTransfers(Runnable)}.
+     *
+     * @param fileIndex index of the top-level file, as returned by {@link #getCurrentFileIndex()} while it was processed
+     */
+    protected void markFileFailed(int fileIndex) {
+        failedFileIndexes.add(fileIndex);
+    }
+
 
     /**
      * Returns <code>true</code> if file transfers need to be checked for data integrity. In this case, the checksum of
@@ -429,13 +984,86 @@ public abstract class TransferFileJob extends FileJob {
         this.integrityCheckEnabled = integrityCheckEnabled;
     }
 
+    /**
+     * Returns <code>true</code> if files copied from or to a remote file system are read ahead in a separate thread,
+     * see {@link #isPipelinedCopy(AbstractFile, AbstractFile, long)}. This is disabled by default, unless enabled by the
+     * {@link MuPreferences#PIPELINED_TRANSFERS} preference.
+     *
+     * @return true if files copied from or to a remote file system are read ahead in a separate thread
+     */
+    public boolean isPipelinedCopyEnabled() {
+        return pipelinedCopyEnabled;
+    }
+
+    /**
+     * Specifies whether files copied from or to a remote file system should be read ahead in a separate thread.
+     * The new value is taken into account when the next file starts.
+     *
+     * @param pipelinedCopyEnabled true if files copied from or to a remote file system should be read ahead
+     */
+    public void setPipelinedCopyEnabled(boolean pipelinedCopyEnabled) {
+        this.pipelinedCopyEnabled = pipelinedCopyEnabled;
+    }
+
+    /**
+     * Returns the number of connections used to download a single file whose protocol supports ranged requests,
+     * see {@link #isSegmentedDownload(AbstractFile, long)}. <code>1</code> means segmented downloads are disabled.
+     * The default value is the {@link MuPreferences#SEGMENTED_DOWNLOAD_CONNECTIONS} preference.
+     *
+     * @return the number of connections used to download a single file
+     */
+    public int getSegmentedDownloadConnections() {
+        return segmentedDownloadConnections;
+    }
+
+    /**
+     * Sets the number of connections used to download a single file whose protocol supports ranged requests,
+     * <code>1</code> to disable segmented downloads. The new value is taken into account when the next file starts.
+     *
+     * @param segmentedDownloadConnections the number of connections used to download a single file
+     */
+    public void setSegmentedDownloadConnections(int segmentedDownloadConnections) {
+        this.segmentedDownloadConnections = segmentedDownloadConnections;
+    }
+
+    /**
+     * Returns the size of the segments of segmented downloads, in bytes. The default value is the
+     * {@link MuPreferences#SEGMENTED_DOWNLOAD_SEGMENT_SIZE} preference.
+     *
+     * @return the size of the segments of segmented downloads
+     */
+    public int getSegmentedDownloadSegmentSize() {
+        return segmentedDownloadSegmentSize;
+    }
+
+    /**
+     * Sets the size of the segments of segmented downloads, in bytes. The new value is taken into account when the
+     * next file starts.
+     *
+     * @param segmentedDownloadSegmentSize the size of the segments of segmented downloads
+     */
+    public void setSegmentedDownloadSegmentSize(int segmentedDownloadSegmentSize) {
+        this.segmentedDownloadSegmentSize = segmentedDownloadSegmentSize;
+    }
+
+    /**
+     * Returns the stream reading the current file ahead, <code>null</code> if the current file is not read ahead.
+     * Its metrics tell whether the source or the destination is the bottleneck of the current transfer, see
+     * {@link PipelinedInputStream}.
+     *
+     * @return the stream reading the current file ahead, null if the current file is not read ahead
+     */
+    public PipelinedInputStream getPipelinedInputStream() {
+        return getDisplayedTransfer().pipelinedIn;
+    }
+
     /**
      * Returns <code>true</code> if the integrity of the current file is being verified.
      *
      * @return true if the integrity of the current file is being verified
      */
     protected boolean isCheckingIntegrity() {
-        return isCheckingIntegrity;
+        return getDisplayedTransfer().checkingIntegrity;
     }
 
 
@@ -443,14 +1071,15 @@ public abstract class TransferFileJob extends FileJob {
      * Interrupts the current file transfer and advance to the next one.
      */
     public synchronized void skipCurrentFile() {
-        if (tlin != null) {
-            LOGGER.debug("skipping current file, closing "+ tlin);
+        Transfer transfer = getDisplayedTransfer();
+        if (transfer.tlin != null) {
+            LOGGER.debug("skipping current file, closing "+ transfer.tlin);
 
             // Prevents an error from being reported when the current InputStream is closed
-            currentFileSkipped = true;
+            transfer.skipped = true;
 
             // Close the current input stream to interrupt the transfer
-            closeCurrentInputStream();
+            closeInputStream(transfer);
         }
 
         // Resume job if currently paused 
@@ -464,7 +1093,7 @@ public abstract class TransferFileJob extends FileJob {
      * @return true if the file that is currently being processed has been skipped
      */
     public synchronized boolean wasCurrentFileSkipped() {
-        return currentFileSkipped;
+        return getTransfer().skipped;
     }
 
     /**
@@ -487,7 +1116,7 @@ public abstract class TransferFileJob extends FileJob {
      * @return the number of bytes that have been processed in the current file
      */
     public ByteCounter getCurrentFileByteCounter() {
-        return currentFileByteCounter;
+        return getDisplayedTransfer().byteCounter;
     }
 
     /**
@@ -497,7 +1126,7 @@ public abstract class TransferFileJob extends FileJob {
      * @return the number of bytes that have been skipped in the current file
      */
     public ByteCounter getCurrentFileSkippedByteCounter() {
-        return currentFileSkippedByteCounter;
+        return getDisplayedTransfer().skippedByteCounter;
     }
 
     /**
@@ -547,8 +1176,12 @@ public abstract class TransferFileJob extends FileJob {
         this.throughputLimit = bytesPerSecond<=0?-1:bytesPerSecond;
 
         synchronized(this) {
-            if(getState()!=PAUSED && tlin !=null)
-                tlin.setThroughputLimit(throughputLimit);
+            if(getState()!=PAUSED) {
+                for (Transfer transfer : getTransfers()) {
+                    if (transfer.tlin != null)
+                        transfer.tlin.setThroughputLimit(getStreamThroughputLimit());
+                }
+            }
         }
     }
 
@@ -568,17 +1201,23 @@ public abstract class TransferFileJob extends FileJob {
     ////////////////////////
 
     /**
-     * Overrides {@link FileJob#jobStopped()} to stop any file processing by closing the source InputStream.
+     * Overrides {@link FileJob#jobStopped()} to stop any file processing by closing the source InputStreams and
+     * stopping worker threads.
      */
     @Override
     protected void jobStopped() {
         super.jobStopped();
 
+        if (workers != null)
+            workers.shutdownNow();
+
         synchronized(this) {
-            if(tlin !=null) {
-                LOGGER.debug("closing current InputStream "+ tlin);
+            for (Transfer transfer : getTransfers()) {
+                if(transfer.tlin !=null) {
+                    LOGGER.debug("closing current InputStream "+ transfer.tlin);
 
-                closeCurrentInputStream();
+                    closeInputStream(transfer);
+                }
             }
         }
     }
@@ -593,8 +1232,10 @@ public abstract class TransferFileJob extends FileJob {
         super.jobPaused();
 
         synchronized(this) {
-            if(tlin !=null)
-                tlin.setThroughputLimit(0);
+            for (Transfer transfer : getTransfers()) {
+                if(transfer.tlin !=null)
+                    transfer.tlin.setThroughputLimit(0);
+            }
         }
     }
 
@@ -609,8 +1250,10 @@ public abstract class TransferFileJob extends FileJob {
 
         synchronized(this) {
             // Restore previous throughput limit (if any, -1 by default)
-            if(tlin !=null)
-                tlin.setThroughputLimit(throughputLimit);
+            for (Transfer transfer : getTransfers()) {
+                if(transfer.tlin !=null)
+                    transfer.tlin.setThroughputLimit(getStreamThroughputLimit());
+            }
         }
     }
 
@@ -625,11 +1268,60 @@ public abstract class TransferFileJob extends FileJob {
         totalSkippedByteCounter.add(currentFileSkippedByteCounter, true);
 
         // Reset some fields that need it
-        currentFileSkipped = false;
+        jobTransfer.skipped = false;
 
         super.nextFile(file);
     }
 
+    /**
+     * Overrides {@link FileJob#fileProcessed(AbstractFile, boolean)} to wait for the files that were handed off to
+     * worker threads: the top-level file is processed successfully only if all of them were.
+     */
+    @Override
+    protected void fileProcessed(final AbstractFile file, final boolean success) {
+        if (workers == null) {
+            super.fileProcessed(file, success && !failedFileIndexes.contains(getCurrentFileIndex()));
+            return;
+        }
+
+        final int fileIndex = getCurrentFileIndex();
+        runAfterTransfers(new Runnable() {
+            public void run() {
+                TransferFileJob.super.fileProcessed(file, success && !failedFileIndexes.contains(fileIndex));
+            }
+        });
+    }
+
+    /**
+     * Overrides {@link FileJob#finishPendingFiles()} to wait for worker threads to copy the files that were handed off
+     * to them, and to run the tasks that were deferred until then.
+     */
+    @Override
+    protected void finishPendingFiles() {
+        super.finishPendingFiles();
+
+        if (workers == null)
+            return;
+
+        workers.shutdown();
+        try {
+            while (!workers.awaitTermination(1, TimeUnit.SECONDS)) {
+                if (getState() == INTERRUPTED)
+                    return;
+            }
+        } catch(InterruptedException e) {
+            return;
+        }
+
+        for (Runnable task : pendingTasks) {
+            if (getState() == INTERRUPTED)
+                return;
+
+            task.run();
+        }
+        pendingTasks.clear();
+    }
+
     /**
      * Method overridden to return a more accurate percentage of job processed so far by taking into account the current
      * file's percentage of completion.
@@ -682,4 +1374,47 @@ public abstract class TransferFileJob extends FileJob {
 //
 //        return nbFilesProcessed/getNbFilesDiscovered();
 //    }
+
+
+    /**
+     * Notified by {@link TransferFileJob#submitFileCopy(AbstractFile, AbstractFile, boolean, String, FileCopyListener)}
+     * once a file has been copied, in the thread it was copied in.
+     */
+    protected interface FileCopyListener {
+
+        /**
+         * Called once the given file has been copied, or its copy has failed.
+         *
+         * @param sourceFile the file that was copied
+         * @param destFile the file it was copied to
+         * @param copied true if the file was properly copied
+         * @return true if the file was processed successfully
+         */
+        boolean fileCopied(AbstractFile sourceFile, AbstractFile destFile, boolean copied);
+    }
+
+    /**
+     * State of a file transfer carried out by the job's thread or by a worker thread.
+     */
+    private static class Transfer {
+        /** Number of bytes processed in the file so far */
+        private final ByteCounter byteCounter;
+        /** Number of bytes skipped in the file so far */
+        private final ByteCounter skippedByteCounter;
+        /** InputStream currently being processed, may be null */
+        private ThroughputLimitInputStream tlin;
+        /** Has the file been skipped ? */
+        private boolean skipped;
+        /** True when the checksum of the source or destination file is being calculated */
+        private volatile boolean checkingIntegrity;
+        /** Stream reading the file ahead, null if the file is not read ahead */
+        private volatile PipelinedInputStream pipelinedIn;
+        /** File being transferred by a worker thread */
+        private volatile AbstractFile file;
+
+        private Transfer(ByteCounter byteCounter, ByteCounter skippedByteCounter) {
+            this.byteCounter = byteCounter;
+            this.skippedByteCounter = skippedByteCounter;
+        }
+    }
 }
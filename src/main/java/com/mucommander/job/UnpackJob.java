@@ -38,7 +38,11 @@ import java.util.List;
 /**
  * This job unpacks a set of archive files to a base destination folder. Archive entries are extracted in their natural
  * order using {@link com.mucommander.commons.file.AbstractArchiveFile#getEntryIterator()}, to traverse the archive only once
- * and achieve optimal performance.
+ * and achieve optimal performance. Archives whose entries can be read concurrently
+ * (see {@link com.mucommander.commons.file.AbstractArchiveFile#isConcurrentEntryReadSupported()}) have their entries
+ * extracted by several worker threads at the same time. Archives that can extract a set of entries in a single pass
+ * (see {@link com.mucommander.commons.file.AbstractArchiveFile#isBatchEntryReadSupported()}), like solid 7-Zip and
+ * RAR archives, have the selected entries extracted that way.
  *
  * @author Maxence Bernard
  */
@@ -74,6 +78,7 @@ public class UnpackJob extends AbstractCopyJob {
 
         this.errorDialogTitle = Translator.get("unpack_dialog.error_title");
         this.baseArchiveDepth = 0;
+        setNbWorkers(getDefaultNbWorkers());
     }
 
     /**
@@ -94,6 +99,7 @@ public class UnpackJob extends AbstractCopyJob {
         this.errorDialogTitle = Translator.get("unpack_dialog.error_title");
         this.baseArchiveDepth = baseArchiveDepth;
         this.selectedEntries = selectedEntries;
+        setNbWorkers(getDefaultNbWorkers());
     }
 
 
@@ -182,6 +188,12 @@ public class UnpackJob extends AbstractCopyJob {
         AbstractArchiveFile archiveFile = file.getAncestor(AbstractArchiveFile.class);
         ArchiveEntryIterator iterator = null;
 
+        // Entries are handed off to worker threads only if they can be read without the iterator
+        boolean concurrentEntryRead = getNbWorkers()>1 && archiveFile.isConcurrentEntryReadSupported();
+
+        // Entries of solid archives are extracted in a single pass rather than one by one
+        boolean batchEntryRead = !concurrentEntryRead && archiveFile.isBatchEntryReadSupported();
+
 
         // calculate total size and files count
         calculateTotalSize(archiveFile);
@@ -195,37 +207,14 @@ public class UnpackJob extends AbstractCopyJob {
 
         // Unpack the archive, copying entries one by one, in the iterator's order
         try {
-            iterator = archiveFile.getEntryIterator();
+            iterator = batchEntryRead
+                    ? archiveFile.getBatchEntryIterator(getEntriesToUnpack(archiveFile))
+                    : archiveFile.getEntryIterator();
             while ((entry = iterator.nextEntry()) != null && getState() != INTERRUPTED) {
                 entryPath = entry.getPath();
 
-                boolean processEntry = false;
-                if (selectedEntries == null) {    // Entries are processed
-                    processEntry = true;
-                } else {                          // We need to determine if the entry should be processed or not
-                    // Process this entry if the selectedEntries set contains this entry, or a parent of this entry
-                    int nbSelectedEntries = selectedEntries.size();
-                    for(int i=0; i<nbSelectedEntries; i++) {
-                        ArchiveEntry selectedEntry = selectedEntries.get(i);
-                        // Note: paths of directory entries must end with '/', so this compares whether
-                        // selectedEntry is a parent of the current entry.
-                        if (selectedEntry.isDirectory()) {
-                            if (entryPath.startsWith(selectedEntry.getPath())) {
-                                processEntry = true;
-                                break;
-                                // Note: we can't remove selectedEntryPath from the set, we still need it
-                            }
-                        } else if (entryPath.equals(selectedEntry.getPath())) {
-                            // If the (regular file) entry is in the set, remove it as we no longer need it (will speed up
-                            // subsequent searches)
-                            processEntry = true;
-                            selectedEntries.remove(i);
-                            break;
-                        }
-                    }
-                }
-
-                if (!processEntry) {
+                // The batch iterator only returns the entries to unpack
+                if (!batchEntryRead && !isEntrySelected(entryPath)) {
                     continue;
                 }
                 processedFilesCount++;
@@ -308,7 +297,11 @@ System.out.println(file.getAbsolutePath() + " -> " + file.getCanonicalPath());
                     // The entry is wrapped in a ProxyFile to override #getInputStream() and delegate it to
                     // ArchiveFile#getEntryInputStream in order to take advantage of the ArchiveEntryIterator, which for
                     // some archive file implementations (such as TAR) can speed things by an order of magnitude.
-                    if (!tryCopyFile(new ProxiedEntryFile(entryFile, entry, archiveFile, iterator), destFile, append, errorDialogTitle)) {
+                    // Entries that are read concurrently do not use the iterator, which is not thread-safe.
+                    if (concurrentEntryRead) {
+                        submitFileCopy(new ProxiedEntryFile(entryFile, entry, archiveFile, null), destFile, append, errorDialogTitle, null);
+                    }
+                    else if (!tryCopyFile(new ProxiedEntryFile(entryFile, entry, archiveFile, iterator), destFile, append, errorDialogTitle)) {
                         // !!! we don't need to break the process in this case
 //                        return false;
                     }
@@ -334,6 +327,65 @@ System.out.println(file.getAbsolutePath() + " -> " + file.getCanonicalPath());
         return false;
     }
 
+    /**
+     * Returns <code>true</code> if the entry with the given path is to be unpacked, i.e. if there are no selected
+     * entries or if the selected entries contain this entry or one of its parents. Regular file entries are removed
+     * from the selected entries once found, to speed up subsequent searches.
+     *
+     * @param entryPath path of the entry
+     * @return true if the entry is to be unpacked
+     */
+    private boolean isEntrySelected(String entryPath) {
+        if (selectedEntries == null) {
+            return true;
+        }
+
+        int nbSelectedEntries = selectedEntries.size();
+        for(int i=0; i<nbSelectedEntries; i++) {
+            ArchiveEntry selectedEntry = selectedEntries.get(i);
+            // Note: paths of directory entries must end with '/', so this compares whether
+            // selectedEntry is a parent of the current entry.
+            if (selectedEntry.isDirectory()) {
+                if (entryPath.startsWith(selectedEntry.getPath())) {
+                    // Note: we can't remove selectedEntryPath from the set, we still need it
+                    return true;
+                }
+            } else if (entryPath.equals(selectedEntry.getPath())) {
+                // If the (regular file) entry is in the set, remove it as we no longer need it (will speed up
+                // subsequent searches)
+                selectedEntries.remove(i);
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Returns all the entries of the given archive that are to be unpacked, in the order of the archive's
+     * {@link ArchiveEntryIterator}.
+     *
+     * @param archiveFile the archive being unpacked
+     * @return the entries to unpack
+     * @throws IOException if an error occurred while reading the archive
+     */
+    private List<ArchiveEntry> getEntriesToUnpack(AbstractArchiveFile archiveFile) throws IOException {
+        List<ArchiveEntry> entries = new ArrayList<>();
+        ArchiveEntryIterator iterator = archiveFile.getEntryIterator();
+        try {
+            ArchiveEntry entry;
+            while ((entry = iterator.nextEntry()) != null && getState() != INTERRUPTED) {
+                if (isEntrySelected(entry.getPath())) {
+                    entries.add(entry);
+                }
+            }
+        } finally {
+            iterator.close();
+        }
+
+        return entries;
+    }
+
     // This job modifies the base destination folder and its subfolders
     @Override
     protected boolean hasFolderChanged(AbstractFile folder) {
@@ -345,6 +397,21 @@ System.out.println(file.getAbsolutePath() + " -> " + file.getCanonicalPath());
     // Overridden methods //
     ////////////////////////
 
+    /**
+     * Overridden to allow several worker threads even though the source files are archives: whether entries are
+     * actually extracted concurrently is decided for each archive, in {@link #processFile(AbstractFile, Object)}.
+     * Files are extracted one at a time if the destination folder is located inside an archive.
+     *
+     * @return the number of entries to extract at the same time
+     */
+    @Override
+    protected int getDefaultNbWorkers() {
+        if (baseDestFolder.getParentArchive() != null)
+            return 1;
+
+        return getPreferredNbWorkers();
+    }
+
     @Override
     protected void jobCompleted() {
         super.jobCompleted();
@@ -21,6 +21,10 @@ import com.jidesoft.hints.ListDataIntelliHints;
 import com.mucommander.cache.TextHistory;
 import com.mucommander.commons.file.AbstractFile;
 import com.mucommander.commons.file.FileFactory;
+import com.mucommander.conf.MuConfigurations;
+import com.mucommander.conf.MuPreference;
+import com.mucommander.conf.MuPreferences;
+import com.mucommander.conf.MuPreferencesAPI;
 import com.mucommander.job.FileJob;
 import com.mucommander.job.FindFileJob;
 import com.mucommander.text.Translator;
@@ -286,6 +290,10 @@ public class FindFileDialog extends FocusDialog implements ActionListener, Docum
         clearResults();
         job = new FindFileJob(mainFrame);
         job.setStartDirectory(FileFactory.getFile(edtFromDirectory.getText()));
+        MuPreferencesAPI preferences = MuConfigurations.getPreferences();
+        job.setParallelism(preferences.getVariable(MuPreference.FIND_PARALLELISM, MuPreferences.DEFAULT_FIND_PARALLELISM));
+        job.setContentThreads(preferences.getVariable(MuPreference.FIND_CONTENT_THREADS, MuPreferences.DEFAULT_FIND_CONTENT_THREADS));
+        job.setOrderedResults(preferences.getVariable(MuPreference.FIND_ORDERED_RESULTS, MuPreferences.DEFAULT_FIND_ORDERED_RESULTS));
         job.setup(edtFileName.getText(), edtText.getText(), cbSearchSubdirectories.isSelected(), cbSearchArchives.isSelected(), cbCaseSensitive.isSelected(), cbIgnoreHidden.isSelected());
         updateResultLabel();
         job.start();
@@ -26,7 +26,9 @@ import java.awt.event.ItemListener;
 import javax.swing.JComboBox;
 import javax.swing.JLabel;
 import javax.swing.JPanel;
+import javax.swing.JSpinner;
 import javax.swing.JTextArea;
+import javax.swing.SpinnerNumberModel;
 
 import com.mucommander.commons.file.AbstractFile;
 import com.mucommander.commons.file.archiver.Archiver;
@@ -45,7 +47,8 @@ import com.mucommander.ui.text.FilePathField;
 
 /**
  * This dialog allows the user to pack marked files to an archive file of a selected format (Zip, TAR, ...)
- * and add an optional comment to the archive (for the formats that support it).
+ * and add an optional comment to the archive (for the formats that support it). The compression level and the number
+ * of threads that compress data can be specified for the formats that support it.
  *
  * @author Maxence Bernard
  */
@@ -56,12 +59,27 @@ public class PackDialog extends TransferDestinationDialog implements ItemListene
 	
     private JTextArea commentArea;
 
+    private JSpinner levelSpinner;
+    private JSpinner threadsSpinner;
+
     /** Used to keep track of the last selected archive format. */
     private int lastFormatIndex;
 
     /** Last archive format used (Zip initially), selected by default when this dialog is created */
     private static int lastFormat = Archiver.ZIP_FORMAT;
 
+    /** Default compression level */
+    private final static int DEFAULT_COMPRESSION_LEVEL = 6;
+
+    /** Maximum number of compression threads that can be selected */
+    private final static int MAX_COMPRESSION_THREADS = 64;
+
+    /** Last compression level used, selected by default when this dialog is created */
+    private static int lastCompressionLevel = DEFAULT_COMPRESSION_LEVEL;
+
+    /** Last number of compression threads used (number of processors initially), selected by default when this dialog is created */
+    private static int lastNbCompressionThreads = Math.min(Runtime.getRuntime().availableProcessors(), MAX_COMPRESSION_THREADS);
+
 
     public PackDialog(MainFrame mainFrame, FileSet files) {
         super(mainFrame, files, ActionProperties.getActionLabel(PackAction.Descriptor.ACTION_ID), Translator.get("pack_dialog_description"), Translator.get("pack"), Translator.get("pack_dialog.error_title"), false);
@@ -98,6 +116,17 @@ public class PackDialog extends TransferDestinationDialog implements ItemListene
 
         YBoxPanel mainPanel = getMainPanel();
         mainPanel.add(tempPanel);		
+
+        // Compression level and threads, enabled only if selected archive format supports them
+
+        tempPanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        tempPanel.add(new JLabel(Translator.get("pack_dialog.compression_level")));
+        levelSpinner = new JSpinner(new SpinnerNumberModel(lastCompressionLevel, 0, 9, 1));
+        tempPanel.add(levelSpinner);
+        tempPanel.add(new JLabel(Translator.get("pack_dialog.compression_threads")));
+        threadsSpinner = new JSpinner(new SpinnerNumberModel(lastNbCompressionThreads, 1, MAX_COMPRESSION_THREADS, 1));
+        tempPanel.add(threadsSpinner);
+        mainPanel.add(tempPanel);
         mainPanel.addSpace(10);
 		
         // Comment area, enabled only if selected archive format has comment support
@@ -106,6 +135,21 @@ public class PackDialog extends TransferDestinationDialog implements ItemListene
         commentArea = new JTextArea();
         commentArea.setRows(4);
         mainPanel.add(commentArea);
+
+        updateFormatOptions(lastFormat);
+    }
+
+    /**
+     * Enables the comment area, compression level and threads only if the given archive format supports them.
+     *
+     * @param format the selected archive format
+     */
+    private void updateFormatOptions(int format) {
+        commentArea.setEnabled(Archiver.formatSupportsComment(format));
+
+        boolean compressionLevel = Archiver.formatSupportsCompressionLevel(format);
+        levelSpinner.setEnabled(compressionLevel);
+        threadsSpinner.setEnabled(compressionLevel);
     }
 	
 
@@ -137,10 +181,16 @@ public class PackDialog extends TransferDestinationDialog implements ItemListene
 
     @Override
     protected TransferFileJob createTransferFileJob(ProgressDialog progressDialog, PathUtils.ResolvedDestination resolvedDest, int defaultFileExistsAction) {
-        // Remember last format used, for next time this dialog is invoked
+        // Remember last format and compression settings used, for next time this dialog is invoked
         lastFormat = formats[formatsComboBox.getSelectedIndex()];
+        lastCompressionLevel = ((Number)levelSpinner.getValue()).intValue();
+        lastNbCompressionThreads = ((Number)threadsSpinner.getValue()).intValue();
+
+        ArchiveJob archiveJob = new ArchiveJob(progressDialog, mainFrame, files, resolvedDest.getDestinationFile(), lastFormat, Archiver.formatSupportsComment(lastFormat)?commentArea.getText():null);
+        archiveJob.setCompressionLevel(lastCompressionLevel);
+        archiveJob.setNbCompressionThreads(lastNbCompressionThreads);
 
-        return new ArchiveJob(progressDialog, mainFrame, files, resolvedDest.getDestinationFile(), lastFormat, Archiver.formatSupportsComment(lastFormat)?commentArea.getText():null);
+        return archiveJob;
     }
 
     @Override
@@ -199,7 +249,7 @@ public class PackDialog extends TransferDestinationDialog implements ItemListene
                 pathField.setSelectionEnd(selectionEnd);
             }
 
-            commentArea.setEnabled(Archiver.formatSupportsComment(formats[formatsComboBox.getSelectedIndex()]));
+            updateFormatOptions(formats[newFormatIndex]);
             lastFormatIndex = newFormatIndex;
         }
 
@@ -22,6 +22,7 @@ package com.mucommander.ui.dialog.server;
 import com.mucommander.commons.file.Credentials;
 import com.mucommander.commons.file.FileProtocols;
 import com.mucommander.commons.file.FileURL;
+import com.mucommander.commons.file.impl.s3.S3File;
 import com.mucommander.text.Translator;
 import com.mucommander.ui.main.MainFrame;
 
@@ -42,6 +43,7 @@ public class S3Panel extends ServerPanel {
     private JPasswordField passwordField;
     private JTextField initialDirField;
     private JSpinner portSpinner;
+    private JCheckBox httpsCheckBox;
 
     private static String lastServer = "s3.amazonaws.com";
     private static String lastUsername = "";
@@ -49,6 +51,8 @@ public class S3Panel extends ServerPanel {
     private String lastPassword = "";
     private static String lastInitialDir = "/";
     private static int lastPort = FileURL.getRegisteredHandler(FileProtocols.S3).getStandardPort();
+    /** HTTPS is enabled by default, plain HTTP has to be requested explicitly (e.g. for a local S3-compatible server) */
+    private static boolean lastHttps = true;
 
 
     S3Panel(ServerConnectDialog dialog, final MainFrame mainFrame) {
@@ -82,6 +86,11 @@ public class S3Panel extends ServerPanel {
         // Port field, initialized to last port
         portSpinner = createPortSpinner(lastPort);
         addRow(Translator.get("server_connect_dialog.port"), portSpinner, 15);
+
+        // HTTPS checkbox, initialized to last value
+        // Not localized on purpose
+        httpsCheckBox = new JCheckBox("HTTPS", lastHttps);
+        addRow("", httpsCheckBox, 0);
     }
 
 
@@ -91,6 +100,7 @@ public class S3Panel extends ServerPanel {
         lastPassword = new String(passwordField.getPassword());
         lastInitialDir = initialDirField.getText();
         lastPort = (Integer) portSpinner.getValue();
+        lastHttps = httpsCheckBox.isSelected();
     }
 
 
@@ -112,6 +122,9 @@ public class S3Panel extends ServerPanel {
         // Set port
         url.setPort(lastPort);
 
+        // Set https property to true (default) or false
+        url.setProperty(S3File.HTTPS_PROPERTY_NAME, ""+lastHttps);
+
         return url;
     }
 
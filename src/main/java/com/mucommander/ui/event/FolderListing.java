@@ -0,0 +1,138 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2012 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.ui.event;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.mucommander.commons.file.AbstractFile;
+import com.mucommander.commons.file.ListingListener;
+import com.mucommander.commons.file.filter.FileFilter;
+
+/**
+ * Lists a folder in batches on behalf of {@link LocationManager}: the folder is presented as soon as the first batch
+ * of its children has been listed, and the other batches are added to it as they are listed.
+ *
+ * <p>The folder change can be cancelled until the folder is presented. The listing of the other batches then stops
+ * as soon as the folder change is cancelled, or when the folder is no longer the current one.</p>
+ */
+abstract class FolderListing implements ListingListener {
+    private static final Logger LOGGER = LoggerFactory.getLogger(FolderListing.class);
+
+    /** The folder being listed */
+    private final AbstractFile folder;
+
+    /** Notified of the progress of the folder change */
+    private final LocationManager.FolderChangeCallback callback;
+
+    /** True once the folder has been presented */
+    private boolean presented;
+
+    /** True if the folder change was cancelled before the folder was presented */
+    private boolean cancelled;
+
+    /**
+     * Creates a new FolderListing for the given folder.
+     *
+     * @param folder the folder to list
+     * @param callback notified of the progress of the folder change
+     */
+    FolderListing(AbstractFile folder, LocationManager.FolderChangeCallback callback) {
+        this.folder = folder;
+        this.callback = callback;
+    }
+
+    /**
+     * Lists the folder and returns once the listing is complete or has been stopped. The folder is presented empty
+     * if it could not be listed.
+     *
+     * @param filter filters out the children that must not be presented
+     * @return <code>true</code> if the folder was presented, <code>false</code> if the folder change was cancelled
+     * before
+     */
+    boolean list(FileFilter filter) {
+        LOGGER.trace("calling ls()");
+        try {
+            folder.ls(filter, this);
+        } catch (Exception e) {
+            LOGGER.debug("Couldn't ls children of " + folder.getAbsolutePath() + ", error: " + e.getMessage());
+        }
+
+        if (!presented && !cancelled) {
+            present(new AbstractFile[0]);
+        }
+
+        return presented;
+    }
+
+    public boolean childrenListed(AbstractFile children[]) {
+        if (!presented) {
+            return present(children);
+        }
+
+        if (callback.isListingCancelled() || !isCurrentFolder(folder)) {
+            LOGGER.debug("Folder change cancelled or folder left, stopping the listing of " + folder.getAbsolutePath());
+            return false;
+        }
+
+        addFiles(folder, children);
+        return true;
+    }
+
+    /**
+     * Presents the folder with the given children, unless the folder change has been cancelled.
+     */
+    private boolean present(AbstractFile children[]) {
+        if (!callback.presentingFolder()) {
+            LOGGER.debug("Folder change cancelled, not presenting " + folder.getAbsolutePath());
+            cancelled = true;
+            return false;
+        }
+
+        presentFolder(folder, children);
+        presented = true;
+        callback.folderPresented();
+
+        return true;
+    }
+
+    /**
+     * Presents the given folder with its first children.
+     *
+     * @param folder the folder to present
+     * @param children the first children of the folder
+     */
+    protected abstract void presentFolder(AbstractFile folder, AbstractFile children[]);
+
+    /**
+     * Adds the given children to the presented folder.
+     *
+     * @param folder the presented folder
+     * @param children the children that have just been listed
+     */
+    protected abstract void addFiles(AbstractFile folder, AbstractFile children[]);
+
+    /**
+     * Returns <code>true</code> if the given folder is still the current folder.
+     *
+     * @param folder the presented folder
+     * @return <code>true</code> if the given folder is still the current folder
+     */
+    protected abstract boolean isCurrentFolder(AbstractFile folder);
+}
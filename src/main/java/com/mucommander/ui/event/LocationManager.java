@@ -18,7 +18,9 @@
 
 package com.mucommander.ui.event;
 
-import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.WeakHashMap;
 
 import org.slf4j.Logger;
@@ -26,7 +28,7 @@ import org.slf4j.LoggerFactory;
 
 import com.mucommander.commons.file.AbstractFile;
 import com.mucommander.commons.file.FileURL;
-import com.mucommander.commons.file.UnsupportedFileOperationException;
+import com.mucommander.commons.file.ListingListener;
 import com.mucommander.core.FolderChangeMonitor;
 import com.mucommander.core.GlobalLocationHistory;
 import com.mucommander.ui.main.ConfigurableFolderFilter;
@@ -44,8 +46,8 @@ public class LocationManager {
     /** The FolderPanel instance this LocationManager manages location events for */
     private FolderPanel folderPanel;
 
-    /** Current location presented in the FolderPanel */
-    private AbstractFile currentFolder;
+    /** Current location presented in the FolderPanel, read by the threads that list folders */
+    private volatile AbstractFile currentFolder;
 
     /** Filters out unwanted files when listing folder contents */
 	private ConfigurableFolderFilter configurableFolderFilter = new ConfigurableFolderFilter();
@@ -63,27 +65,110 @@ public class LocationManager {
         addLocationListener(GlobalLocationHistory.Instance());
     }
 
+    /**
+     * Receives the progress of a folder change made by
+     * {@link LocationManager#setCurrentFolder(AbstractFile, AbstractFile, boolean, FolderChangeCallback)}.
+     * Methods of this interface are called from the thread that changes the folder.
+     */
+    public interface FolderChangeCallback {
+
+        /**
+         * Called right before the folder is presented. The folder change can be cancelled by returning
+         * <code>false</code>, in which case the folder is not presented.
+         *
+         * @return <code>true</code> to present the folder, <code>false</code> to cancel the folder change
+         */
+        public boolean presentingFolder();
+
+        /**
+         * Called once the folder has been presented with its first children, before the other children are listed.
+         */
+        public void folderPresented();
+
+        /**
+         * Called before each batch of children is added to the presented folder.
+         *
+         * @return <code>true</code> to stop listing the folder
+         */
+        public boolean isListingCancelled();
+    }
+
     /**
      * Set the given {@link AbstractFile} as the folder presented in the {@link FolderPanel}.
      * This method saves the given {@link AbstractFile}, and notify the {@link LocationListener}s that
      * the location was changed to it.
+     *
+     * <p>Unless the current folder is being refreshed, the folder is presented as soon as the first batch of its
+     * children has been listed, and the other children are added to the table as they are listed (see
+     * {@link AbstractFile#ls(com.mucommander.commons.file.filter.FileFilter, ListingListener)}). This method
+     * returns once the folder has been listed entirely, or once the listing has been stopped: either by the callback
+     * or because another folder has become the current one.</p>
      * 
      * @param folder the {@link AbstractFile} that is going to be presented in the {@link FolderPanel}
-     * @throws IOException 
-     * @throws UnsupportedFileOperationException 
+     * @param fileToSelect the file to select, <code>null</code> to let the file table choose
+     * @param changeLockedTab flag that indicates whether to change the presented folder in the currently selected tab although it's locked
+     * @param callback notified of the progress of the folder change, may cancel it
+     * @return <code>true</code> if the folder was presented, <code>false</code> if the folder change was cancelled
      */
-    public void setCurrentFolder(AbstractFile folder, AbstractFile fileToSelect, boolean changeLockedTab) {
-    	LOGGER.trace("calling ls()");
-    	AbstractFile[] children;
-		try {
-			children = folder.ls(configurableFolderFilter);
-		} catch (Exception e) {
-			LOGGER.debug("Couldn't ls children of " + folder.getAbsolutePath() + ", error: " + e.getMessage());
-			children = new AbstractFile[0];
-		}
-
-    	folderPanel.setCurrentFolder(folder, children, fileToSelect, changeLockedTab);
+    public boolean setCurrentFolder(final AbstractFile folder, final AbstractFile fileToSelect, final boolean changeLockedTab, final FolderChangeCallback callback) {
+    	// When refreshing the current folder, list it entirely before presenting it: presenting the first children
+    	// would remove the others from the table until they are listed
+    	if (currentFolder != null && folder.equalsCanonical(currentFolder)) {
+    		LOGGER.trace("calling ls()");
+    		// Note: the batches are collected rather than calling ls(FileFilter), as some filesystems fetch the
+    		// children's attributes along with them only when listing in batches
+    		final List<AbstractFile> children = new ArrayList<AbstractFile>();
+    		try {
+    			folder.ls(configurableFolderFilter, new ListingListener() {
+    				public boolean childrenListed(AbstractFile[] batch) {
+    					children.addAll(Arrays.asList(batch));
+    					return !callback.isListingCancelled();
+    				}
+    			});
+    		} catch (Exception e) {
+    			LOGGER.debug("Couldn't ls children of " + folder.getAbsolutePath() + ", error: " + e.getMessage());
+    			children.clear();
+    		}
+
+    		if (!callback.presentingFolder())
+    			return false;
 
+    		folderPanel.setCurrentFolder(folder, children.toArray(new AbstractFile[children.size()]), fileToSelect, changeLockedTab);
+    		folderSet(folder);
+    		callback.folderPresented();
+    		return true;
+    	}
+
+    	// Otherwise present the folder as soon as its first children have been listed, and add the other ones as
+    	// they are listed. When going up, the previous folder is selected as soon as it is listed.
+    	final AbstractFile laterFileToSelect = fileToSelect != null || currentFolder == null || !folder.equals(currentFolder.getParent())
+    			? fileToSelect
+    			: currentFolder;
+
+    	return new FolderListing(folder, callback) {
+    		@Override
+    		protected void presentFolder(AbstractFile folder, AbstractFile[] children) {
+    			folderPanel.setCurrentFolder(folder, children, fileToSelect, changeLockedTab);
+    			folderSet(folder);
+    		}
+
+    		@Override
+    		protected void addFiles(AbstractFile folder, AbstractFile[] children) {
+    			folderPanel.getFileTable().addFiles(folder, children, laterFileToSelect);
+    		}
+
+    		@Override
+    		protected boolean isCurrentFolder(AbstractFile folder) {
+    			return currentFolder == folder;
+    		}
+    	}.list(configurableFolderFilter);
+    }
+
+    /**
+     * Saves the given folder as the current one once it is presented in the {@link FolderPanel}, and notifies the
+     * {@link LocationListener}s.
+     */
+    private void folderSet(AbstractFile folder) {
     	this.currentFolder = folder;
 
     	// Notify listeners that the location has changed
@@ -24,7 +24,10 @@ import java.awt.FontMetrics;
 import java.awt.Point;
 import java.awt.Rectangle;
 import java.awt.event.*;
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
 import java.util.WeakHashMap;
 
 import javax.swing.DefaultCellEditor;
@@ -165,6 +168,9 @@ public class FileTable extends JTable implements MouseListener, MouseMotionListe
     /** Timestamp of the last focus gain (in milliseconds) */
     private long focusGainedTime;
 
+    /** Batches of children listed by #addFiles that have not been added to the table yet */
+    private final List<FileBatch> pendingBatches = new ArrayList<>();
+
 
     /** Delay in ms after which filename editor can be triggered when current row's filename cell is clicked */
     private final static int EDIT_NAME_CLICK_DELAY = 500;
@@ -529,12 +535,14 @@ public class FileTable extends JTable implements MouseListener, MouseMotionListe
         AbstractFile currentFolder = folderPanel.getCurrentFolder();
 
         // If we're refreshing the current folder, save the current selection and marked files
-        // in order to restore them properly.
+        // in order to restore them properly, and try to apply only the changes to the current rows.
         FileSet markedFiles  = null;
+        FileTableModel.FolderUpdate folderUpdate = null;
         if (currentFolder != null && folder.equalsCanonical(currentFolder)) {
             markedFiles = tableModel.getMarkedFiles();
             if (fileToSelect==null)
                 fileToSelect = getSelectedFile();
+            folderUpdate = tableModel.prepareUpdate(folder, children);
         }
 
         // If we're navigating to the current folder's parent, we select the current folder.
@@ -546,7 +554,7 @@ public class FileTable extends JTable implements MouseListener, MouseMotionListe
         // Changes the current folder in the swing thread to make sure that repaints cannot
         // happen in the middle of the operation - this is used to prevent flickering, badly
         // refreshed frames and such unpleasant graphical artifacts.
-        Runnable folderChangeThread = new FolderChangeThread(folder, children, markedFiles, fileToSelect);
+        Runnable folderChangeThread = new FolderChangeThread(folder, children, markedFiles, fileToSelect, folderUpdate);
 
         // Wait for the getTask to complete, so that we return only when the folder has actually been changed and the
         // table updated to reflect the new folder.
@@ -567,6 +575,114 @@ public class FileTable extends JTable implements MouseListener, MouseMotionListe
         }
     }
 
+    /**
+     * Refreshes the attributes of the current folder's children that have one of the given names, without reloading
+     * the folder. The current selection and marked files remain the same. If the changes cannot be applied to the
+     * rows in place, the current folder is refreshed entirely.
+     *
+     * <p>This method returns immediately, the table is updated in the event dispatch thread.</p>
+     *
+     * @param names names of the children to refresh
+     */
+    public void refreshFiles(final Set<String> names) {
+        SwingUtilities.invokeLater(new Runnable() {
+            public void run() {
+                AbstractFile selectedFile = getSelectedFile(true);
+
+                if (!tableModel.refreshFiles(names)) {
+                    folderPanel.tryRefreshCurrentFolder();
+                    return;
+                }
+
+                // Rows may have been sorted again
+                if (selectedFile != null) {
+                    int row = tableModel.getFileRow(selectedFile);
+                    if (row >= 0 && row != currentRow) {
+                        selectRow(row);
+                    }
+                }
+
+                // Sizes of marked files may have changed
+                if (tableModel.getNbMarkedFiles() > 0) {
+                    fireMarkedFilesChangedEvent();
+                }
+
+                repaint();
+            }
+        });
+    }
+
+    /**
+     * Adds the given children to the current folder while it is being listed, after
+     * {@link #setCurrentFolder(AbstractFile, AbstractFile[], AbstractFile)} has been called with the first children
+     * of the folder. Rows are inserted at their sorted position. The selected file remains selected, unless the
+     * specified file to select is part of the children, in which case it becomes the selected file.
+     *
+     * <p>This method fetches the attributes of the children, it should not be called from the event dispatch thread.
+     * It returns without waiting for the table to be updated: batches that are added while the event dispatch thread
+     * is busy are inserted all at once.</p>
+     *
+     * @param folder the folder the children belong to, the children are ignored if it is not the current folder anymore
+     * @param children the children to add
+     * @param fileToSelect the file to select, <code>null</code> to keep the current selection
+     */
+    public void addFiles(AbstractFile folder, AbstractFile children[], AbstractFile fileToSelect) {
+        FileBatch batch = new FileBatch(folder, FileTableModel.createCachedFiles(children), fileToSelect);
+
+        synchronized(pendingBatches) {
+            pendingBatches.add(batch);
+            // A flush is already scheduled, it will pick this batch up
+            if (pendingBatches.size() > 1) {
+                return;
+            }
+        }
+
+        SwingUtilities.invokeLater(new Runnable() {
+            public void run() {
+                List<FileBatch> batches;
+                synchronized(pendingBatches) {
+                    batches = new ArrayList<>(pendingBatches);
+                    pendingBatches.clear();
+                }
+
+                AbstractFile selectedFile = getSelectedFile(true, true);
+                AbstractFile fileToSelect = null;
+                boolean filesAdded = false;
+
+                // Add consecutive batches of the same folder at once
+                for (int i=0; i < batches.size(); ) {
+                    FileBatch batch = batches.get(i);
+                    List<AbstractFile> files = new ArrayList<>();
+                    int j = i;
+                    for (; j < batches.size() && batches.get(j).folder.equals(batch.folder); j++) {
+                        for (AbstractFile file: batches.get(j).files) {
+                            files.add(file);
+                        }
+                        if (batches.get(j).fileToSelect != null) {
+                            fileToSelect = batches.get(j).fileToSelect;
+                        }
+                    }
+                    i = j;
+
+                    filesAdded |= tableModel.addFiles(batch.folder, files.toArray(new AbstractFile[files.size()]));
+                }
+
+                if (!filesAdded) {
+                    return;
+                }
+
+                // Rows have been inserted before the selected one, or the file to select has just been listed
+                int row = fileToSelect == null ? -1 : tableModel.getFileRow(fileToSelect);
+                if (row != -1) {
+                    selectRow(currentRow = row);
+                    fireSelectedFileChangedEvent();
+                } else if (selectedFile != null && (row = tableModel.getFileRow(selectedFile)) != -1 && row != currentRow) {
+                    selectRow(currentRow = row);
+                }
+            }
+        });
+    }
+
     /**
      * Sets row height based on current cell's font and border, revalidates and repaints this JTable.
      */
@@ -1853,16 +1969,32 @@ public class FileTable extends JTable implements MouseListener, MouseMotionListe
         private AbstractFile[] children;
         private FileSet        markedFiles;
         private AbstractFile   selectedFile;
+        private FileTableModel.FolderUpdate folderUpdate;
 
-        private FolderChangeThread(AbstractFile folder, AbstractFile[] children, FileSet markedFiles, AbstractFile selectedFile) {
+        private FolderChangeThread(AbstractFile folder, AbstractFile[] children, FileSet markedFiles, AbstractFile selectedFile, FileTableModel.FolderUpdate folderUpdate) {
             this.folder       = folder;
             this.children     = children;
             this.markedFiles  = markedFiles;
             this.selectedFile = selectedFile;
+            this.folderUpdate = folderUpdate;
         }
 
         public void run() {
             try {
+                // Apply the changes to the current rows if the current folder is being refreshed,
+                // marked files are kept by the model
+                if (folderUpdate != null && tableModel.applyUpdate(folderUpdate)) {
+                    int rowToSelect = selectedFile == null ? -1 : tableModel.getFileRow(selectedFile);
+                    if (rowToSelect == -1) {
+                        rowToSelect = Math.min(currentRow, tableModel.getRowCount() - 1);
+                    }
+
+                    selectRow(currentRow = Math.max(rowToSelect, 0));
+                    fireSelectedFileChangedEvent();
+                    fireMarkedFilesChangedEvent();
+                    return;
+                }
+
                 // Set the new current folder.
                 tableModel.setCurrentFolder(folder, children);
                 // Update the visibility state of conditional columns
@@ -1935,4 +2067,19 @@ public class FileTable extends JTable implements MouseListener, MouseMotionListe
         mainFrame.getStatusBar().updateSelectedFilesInfo();
     }
 
+    /**
+     * Children of a folder being listed, see {@link FileTable#addFiles(AbstractFile, AbstractFile[], AbstractFile)}.
+     */
+    private static class FileBatch {
+        private final AbstractFile folder;
+        private final AbstractFile files[];
+        private final AbstractFile fileToSelect;
+
+        private FileBatch(AbstractFile folder, AbstractFile files[], AbstractFile fileToSelect) {
+            this.folder = folder;
+            this.files = files;
+            this.fileToSelect = fileToSelect;
+        }
+    }
+
 }
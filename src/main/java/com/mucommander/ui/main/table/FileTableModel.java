@@ -104,6 +104,9 @@ public class FileTableModel extends AbstractTableModel {
 
     private FileComparator fileComparator;
 
+    /** Maximum number of changes for which a folder is updated incrementally rather than set again */
+    private final static int MAX_INCREMENTAL_CHANGES = 1000;
+
     static {
         // Initialize the size column format based on the configuration
         setSizeFormat(MuConfigurations.getPreferences().getVariable(MuPreference.DISPLAY_COMPACT_FILE_SIZE,
@@ -250,6 +253,397 @@ public class FileTableModel extends AbstractTableModel {
         fillCellCache();
     }
 
+    /**
+     * Refreshes the attributes of the current folder's children that have one of the given names, without reloading
+     * the folder. Marked rows are preserved, and rows are sorted again if the current sort criterion depends on
+     * attributes that may have changed.
+     *
+     * <p>Returns <code>false</code> if a child has turned from a file into a directory or vice-versa, in which case the
+     * folder should be refreshed entirely.</p>
+     *
+     * @param names names of the children to refresh
+     * @return <code>false</code> if the folder should be refreshed entirely
+     */
+    synchronized boolean refreshFiles(Set<String> names) {
+        final int indexOffset = parent == null ? 0 : 1;
+        boolean refreshed = false;
+
+        for (int i=0; i < cachedFiles.length; i++) {
+            AbstractFile oldFile = cachedFiles[i];
+            if (!names.contains(oldFile.getName())) {
+                continue;
+            }
+
+            AbstractFile file = new CachedFile(((CachedFile)oldFile).getProxiedFile(), true);
+            if (file.isDirectory() != oldFile.isDirectory()) {
+                return false;
+            }
+
+            // Replace the array rather than modifying it, so that a pending FolderUpdate knows it is out of date
+            if (!refreshed) {
+                cachedFiles = cachedFiles.clone();
+            }
+
+            // Update the combined size of marked files
+            if (rowMarked[i]) {
+                unmarkFile(oldFile);
+                markFile(file);
+            }
+
+            cachedFiles[i] = file;
+            Arrays.fill(cellValuesCache[i + indexOffset], null);
+            refreshed = true;
+        }
+
+        // Only the name and extension of a file are guaranteed not to have changed
+        if (refreshed && sortInfo.getCriterion() != Column.NAME && sortInfo.getCriterion() != Column.EXTENSION) {
+            sortRows();
+        }
+
+        return true;
+    }
+
+    /**
+     * Compares the given children of the current folder with the ones currently displayed, and returns the changes
+     * to apply with {@link #applyUpdate(FolderUpdate)}. This method fetches the attributes of the new children and
+     * thus should not be called from the event dispatch thread.
+     *
+     * <p>Returns <code>null</code> if the folder is not the current folder or if there are so many changes that
+     * calling {@link #setCurrentFolder(AbstractFile, AbstractFile[])} would be cheaper.</p>
+     *
+     * @param folder the current folder
+     * @param children the current folder's children
+     * @return the changes to apply, <code>null</code> if the folder should be set with #setCurrentFolder
+     */
+    FolderUpdate prepareUpdate(AbstractFile folder, AbstractFile children[]) {
+        AbstractFile oldFiles[];
+        synchronized(this) {
+            if (currentFolder == null || !folder.equals(currentFolder)) {
+                return null;
+            }
+            oldFiles = cachedFiles;
+        }
+
+        Map<String, Integer> oldIndexes = new HashMap<>(oldFiles.length*4/3+1);
+        for (int i=0; i < oldFiles.length; i++) {
+            oldIndexes.put(oldFiles[i].getName(), i);
+        }
+
+        int nbFiles = children.length;
+        AbstractFile files[] = new AbstractFile[nbFiles];
+        int oldFileIndexes[] = new int[nbFiles];
+        int nbChanges = 0;
+
+        // we needn't prefetch local files for performance optimization purposes
+        boolean needPrefetch = nbFiles > 0 && !(children[0] instanceof LocalFile);
+
+        for (int i=0; i < nbFiles; i++) {
+            Integer oldIndex = oldIndexes.remove(children[i].getName());
+            AbstractFile oldFile = oldIndex == null ? null : oldFiles[oldIndex];
+
+            AbstractFile file = new CachedFile(children[i], true);
+            if (oldFile != null
+                    && file.isDirectory() == oldFile.isDirectory()
+                    && file.getDate() == oldFile.getDate()
+                    && (file.isDirectory() || file.getSize() == oldFile.getSize())) {
+                // Unchanged: keep the previous instance, its attributes have already been fetched
+                file = oldFile;
+            } else {
+                nbChanges++;
+                if (needPrefetch) {
+                    prefetchCachedFileAttributes(file);
+                }
+            }
+
+            files[i] = file;
+            oldFileIndexes[i] = oldIndex == null ? -1 : oldIndex;
+        }
+
+        // Files that are left have been deleted
+        nbChanges += oldIndexes.size();
+        if (nbChanges > MAX_INCREMENTAL_CHANGES) {
+            return null;
+        }
+
+        return new FolderUpdate(folder, oldFiles, files, oldFileIndexes);
+    }
+
+    /**
+     * Applies the changes returned by {@link #prepareUpdate(AbstractFile, AbstractFile[])} to this model: rows of
+     * deleted files are removed, rows of new files are inserted at their sorted position, and rows of files whose
+     * attributes have changed are updated, or moved if the sort order depends on those attributes. Marked files
+     * and calculated directory sizes are preserved. A fine-grained <code>TableModelEvent</code> is fired for each
+     * range of rows that has changed.
+     *
+     * <p>Returns <code>false</code> without changing anything if the model has changed since the update was
+     * prepared.</p>
+     *
+     * @param update the changes to apply
+     * @return <code>false</code> if the update could not be applied
+     */
+    synchronized boolean applyUpdate(FolderUpdate update) {
+        if (update.oldFiles != cachedFiles) {
+            return false;
+        }
+
+        final int indexOffset = parent == null ? 0 : 1;
+        int nbOldFiles = cachedFiles.length;
+        int nbFiles = update.files.length;
+        Column criterion = sortInfo.getCriterion();
+        boolean sortedByAttributes = criterion != Column.NAME && criterion != Column.EXTENSION;
+
+        // Map the previous file indexes to the new ones, and find out which files must be inserted at a new position
+        int newFileIndexes[] = new int[nbOldFiles];
+        Arrays.fill(newFileIndexes, -1);
+        boolean inserted[] = new boolean[nbFiles];
+        boolean updated[] = new boolean[nbFiles];
+        boolean newRowMarked[] = new boolean[nbFiles];
+        Object newCellValuesCache[][] = new Object[nbFiles + indexOffset][];
+        if (parent != null) {
+            newCellValuesCache[0] = cellValuesCache[0];
+        }
+
+        for (int i=0; i < nbFiles; i++) {
+            int oldIndex = update.oldFileIndexes[i];
+            AbstractFile file = update.files[i];
+
+            if (oldIndex == -1) {
+                inserted[i] = true;
+                newCellValuesCache[i + indexOffset] = new Object[Column.values().length-1];
+                continue;
+            }
+
+            newFileIndexes[oldIndex] = i;
+            newRowMarked[i] = rowMarked[oldIndex];
+            Object cell[] = cellValuesCache[oldIndex + indexOffset];
+            newCellValuesCache[i + indexOffset] = cell;
+
+            AbstractFile oldFile = cachedFiles[oldIndex];
+            if (file != oldFile) {
+                Arrays.fill(cell, null);
+                // The file may have to move if the sort order depends on the attributes that have changed
+                if (sortedByAttributes || file.isDirectory() != oldFile.isDirectory()) {
+                    inserted[i] = true;
+                } else {
+                    updated[i] = true;
+                }
+
+                if (rowMarked[oldIndex]) {
+                    unmarkFile(oldFile);
+                    markFile(file);
+                }
+            }
+        }
+
+        // Rows of deleted and moved files, in the previous row order
+        int nbOldRows = fileArrayIndex.length;
+        boolean deletedRows[] = new boolean[nbOldRows];
+        int survivors[] = new int[nbFiles];
+        int nbSurvivors = 0;
+        for (int row=0; row < nbOldRows; row++) {
+            int oldIndex = fileArrayIndex[row];
+            int index = newFileIndexes[oldIndex];
+            if (index == -1 || inserted[index]) {
+                deletedRows[row] = true;
+                if (index == -1 && rowMarked[oldIndex]) {
+                    unmarkFile(cachedFiles[oldIndex]);
+                    nbRowsMarked--;
+                }
+            } else {
+                survivors[nbSurvivors++] = index;
+            }
+        }
+
+        // Merge the inserted files into the remaining rows, which are already sorted
+        this.fileComparator = createFileComparator(sortInfo);
+        this.cachedFiles = update.files;
+
+        int insertions[] = new int[nbFiles - nbSurvivors];
+        int nbInsertions = 0;
+        for (int i=0; i < nbFiles; i++) {
+            if (inserted[i]) {
+                insertions[nbInsertions++] = i;
+            }
+        }
+        sortIndexes(insertions);
+
+        boolean insertedRows[] = new boolean[nbFiles];
+        int newFileArrayIndex[] = mergeRows(survivors, nbSurvivors, insertions, insertedRows);
+        this.fileComparator = null;
+
+        this.currentFolder = (update.folder instanceof CachedFile) ? update.folder : new CachedFile(update.folder, true);
+        this.fileArrayIndex = newFileArrayIndex;
+        this.rowMarked = newRowMarked;
+        this.cellValuesCache = newCellValuesCache;
+
+        // The folder's date has most likely changed
+        if (parent != null) {
+            currentFolderDateSnapshot = currentFolder.getDate();
+            cellValuesCache[0][Column.DATE.ordinal()-1] = CustomDateFormat.format(new Date(currentFolderDateSnapshot));
+        }
+
+        // Notify listeners: deletions in descending order so that row indexes remain valid,
+        // then insertions and updates in ascending order
+        for (int row=nbOldRows-1; row >= 0; row--) {
+            if (deletedRows[row]) {
+                int lastRow = row;
+                while (row > 0 && deletedRows[row-1]) {
+                    row--;
+                }
+                fireTableRowsDeleted(row + indexOffset, lastRow + indexOffset);
+            }
+        }
+        fireRowRanges(insertedRows, true, indexOffset);
+
+        boolean updatedRows[] = new boolean[nbFiles];
+        for (int row=0; row < nbFiles; row++) {
+            updatedRows[row] = updated[newFileArrayIndex[row]];
+        }
+        fireRowRanges(updatedRows, false, indexOffset);
+
+        return true;
+    }
+
+    /**
+     * Adds the given children to the current folder while it is being listed: rows of the new files are inserted at
+     * their sorted position, and a <code>TableModelEvent</code> is fired for each range of inserted rows. The children
+     * must have been created with {@link #createCachedFiles(AbstractFile[])}.
+     *
+     * <p>Returns <code>false</code> without changing anything if the given folder is not the current folder anymore.</p>
+     *
+     * @param folder the folder the children belong to
+     * @param children the children to add, which must not already be part of the current folder
+     * @return <code>false</code> if the children could not be added
+     */
+    synchronized boolean addFiles(AbstractFile folder, AbstractFile children[]) {
+        if (currentFolder == null || !folder.equals(currentFolder)) {
+            return false;
+        }
+
+        final int indexOffset = parent == null ? 0 : 1;
+        int nbOldFiles = cachedFiles.length;
+        int nbFiles = nbOldFiles + children.length;
+
+        AbstractFile newCachedFiles[] = Arrays.copyOf(cachedFiles, nbFiles);
+        System.arraycopy(children, 0, newCachedFiles, nbOldFiles, children.length);
+        this.cachedFiles = newCachedFiles;
+        this.rowMarked = Arrays.copyOf(rowMarked, nbFiles);
+
+        Object newCellValuesCache[][] = Arrays.copyOf(cellValuesCache, nbFiles + indexOffset);
+        for (int i=nbOldFiles + indexOffset; i < newCellValuesCache.length; i++) {
+            newCellValuesCache[i] = new Object[Column.values().length-1];
+        }
+        this.cellValuesCache = newCellValuesCache;
+
+        int insertions[] = new int[children.length];
+        for (int i=0; i < insertions.length; i++) {
+            insertions[i] = nbOldFiles + i;
+        }
+
+        this.fileComparator = createFileComparator(sortInfo);
+        sortIndexes(insertions);
+        boolean insertedRows[] = new boolean[nbFiles];
+        this.fileArrayIndex = mergeRows(fileArrayIndex, fileArrayIndex.length, insertions, insertedRows);
+        this.fileComparator = null;
+
+        fireRowRanges(insertedRows, true, indexOffset);
+
+        return true;
+    }
+
+    /**
+     * Creates a CachedFile instance around each of the given children and pre-fetches their attributes if needed,
+     * for {@link #addFiles(AbstractFile, AbstractFile[])}. This method is I/O-bound and thus should not be called
+     * from the event dispatch thread.
+     *
+     * @param children the children to wrap
+     * @return the children wrapped in CachedFile instances
+     */
+    static AbstractFile[] createCachedFiles(AbstractFile children[]) {
+        int nbFiles = children.length;
+        AbstractFile cachedFiles[] = new AbstractFile[nbFiles];
+
+        // we needn't prefetch local files for performance optimization purposes
+        boolean needPrefetch = nbFiles > 0 && !(children[0] instanceof LocalFile);
+
+        for (int i=0; i < nbFiles; i++) {
+            cachedFiles[i] = new CachedFile(children[i], true);
+            if (needPrefetch) {
+                prefetchCachedFileAttributes(cachedFiles[i]);
+            }
+        }
+
+        return cachedFiles;
+    }
+
+    /**
+     * Merges the first <code>nbIndexes</code> of the given file indexes and the inserted ones, both sorted with the
+     * current file comparator, into a new row order. Rows of the inserted indexes are flagged in the given array.
+     */
+    private int[] mergeRows(int indexes[], int nbIndexes, int insertions[], boolean insertedRows[]) {
+        int nbRows = nbIndexes + insertions.length;
+        int rows[] = new int[nbRows];
+        for (int row=0, i=0, n=0; row < nbRows; row++) {
+            if (n < insertions.length && (i == nbIndexes || compare(insertions[n], indexes[i]) < 0)) {
+                rows[row] = insertions[n++];
+                insertedRows[row] = true;
+            } else {
+                rows[row] = indexes[i++];
+            }
+        }
+
+        return rows;
+    }
+
+    /**
+     * Fires an insertion or update event for each range of consecutive rows that are set in the given array.
+     */
+    private void fireRowRanges(boolean rows[], boolean insertion, int indexOffset) {
+        for (int row=0; row < rows.length; row++) {
+            if (rows[row]) {
+                int firstRow = row;
+                while (row+1 < rows.length && rows[row+1]) {
+                    row++;
+                }
+
+                if (insertion) {
+                    fireTableRowsInserted(firstRow + indexOffset, row + indexOffset);
+                } else {
+                    fireTableRowsUpdated(firstRow + indexOffset, row + indexOffset);
+                }
+            }
+        }
+    }
+
+    /**
+     * Removes the given file from the combined size of marked files, without changing the number of marked files.
+     */
+    private void unmarkFile(AbstractFile file) {
+        if (file.isDirectory()) {
+            markedDirectories.remove(file);
+        } else {
+            // File size can equal -1 if not available, do not count that in total
+            long fileSize = file.getSize();
+            if (fileSize > 0) {
+                markedTotalSize -= fileSize;
+            }
+        }
+    }
+
+    /**
+     * Adds the given file to the combined size of marked files, without changing the number of marked files.
+     */
+    private void markFile(AbstractFile file) {
+        if (file.isDirectory()) {
+            markedDirectories.add(file);
+        } else {
+            long fileSize = file.getSize();
+            if (fileSize > 0) {
+                markedTotalSize += fileSize;
+            }
+        }
+    }
+
     /**
      * Pre-fetch the attributes that are used by the table renderer and some actions from the given CachedFile.
      * By doing so, the attributes will be available when the associated getters are called and thus the methods won't
@@ -754,6 +1148,26 @@ public class FileTableModel extends AbstractTableModel {
         return fileComparator.compare(cachedFiles[index1], cachedFiles[index2]);
     }
 
+    /**
+     * Sorts the given file indexes using the current file comparator.
+     */
+    private void sortIndexes(int indexes[]) {
+        Integer sortedIndexes[] = new Integer[indexes.length];
+        for (int i=0; i < indexes.length; i++) {
+            sortedIndexes[i] = indexes[i];
+        }
+
+        Arrays.sort(sortedIndexes, new Comparator<Integer>() {
+            public int compare(Integer index1, Integer index2) {
+                return FileTableModel.this.compare(index1, index2);
+            }
+        });
+
+        for (int i=0; i < indexes.length; i++) {
+            indexes[i] = sortedIndexes[i];
+        }
+    }
+
 
 
     //////////////////////////////////////////
@@ -947,4 +1361,29 @@ public class FileTableModel extends AbstractTableModel {
     }
 
 
+    /**
+     * The changes to apply to the current folder's rows, as computed by
+     * {@link FileTableModel#prepareUpdate(AbstractFile, AbstractFile[])}.
+     */
+    static class FolderUpdate {
+
+        /** The current folder */
+        private final AbstractFile folder;
+
+        /** The files the changes were computed against */
+        private final AbstractFile oldFiles[];
+
+        /** The new files: unchanged files are the previous instances */
+        private final AbstractFile files[];
+
+        /** Index of each new file in the previous files, -1 for files that have been created */
+        private final int oldFileIndexes[];
+
+        private FolderUpdate(AbstractFile folder, AbstractFile oldFiles[], AbstractFile files[], int oldFileIndexes[]) {
+            this.folder = folder;
+            this.oldFiles = oldFiles;
+            this.files = files;
+            this.oldFileIndexes = oldFileIndexes;
+        }
+    }
 }
@@ -47,6 +47,7 @@ public class EditorRegistrar {
 
     static {
         registerFileEditor(new com.mucommander.ui.viewer.text.TextFactory());
+        registerFileEditor(new com.mucommander.ui.viewer.hex.HexFactory());
     }
 
     /**
@@ -119,6 +120,7 @@ public class EditorRegistrar {
 
                 // User confirmed the operation
                 editor = factory.createFileEditor();
+                break;
             }
         }
 
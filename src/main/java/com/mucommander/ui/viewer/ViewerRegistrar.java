@@ -56,6 +56,9 @@ public class ViewerRegistrar {
 
         registerFileViewer(new com.mucommander.ui.viewer.html.HtmlFactory());
 
+        // Large text files are viewed without being loaded in memory, instead of being rejected by the TextFactory
+        registerFileViewer(new com.mucommander.ui.viewer.text.LargeTextFactory());
+
         registerFileViewer(new com.mucommander.ui.viewer.text.TextFactory());
 
         // The HexFactory must be the last FileViewer to be registered (otherwise it would open other factories file types)
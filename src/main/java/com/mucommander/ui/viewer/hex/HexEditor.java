@@ -0,0 +1,246 @@
+/*
+ * This file is part of trolCommander, http://www.trolsoft.ru/trolcommander
+ * Copyright (C) 2014 Oleg Trifonov
+ *
+ * trolCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * trolCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.mucommander.ui.viewer.hex;
+
+import com.mucommander.commons.file.AbstractFile;
+import com.mucommander.commons.file.FileOperation;
+import com.mucommander.commons.io.RandomAccessOutputStream;
+import com.mucommander.text.Translator;
+import com.mucommander.ui.helper.MenuToolkit;
+import com.mucommander.ui.helper.MnemonicHelper;
+import com.mucommander.ui.viewer.FileEditor;
+import com.mucommander.ui.viewer.FileFrame;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import ru.trolsoft.hexeditor.data.MuCommanderByteBuffer;
+import ru.trolsoft.hexeditor.data.PieceTable;
+import ru.trolsoft.hexeditor.ui.EditableHexTableModel;
+import ru.trolsoft.hexeditor.ui.HexTable;
+import ru.trolsoft.hexeditor.ui.ViewerHexTableModel;
+
+import javax.swing.*;
+import javax.swing.event.TableModelEvent;
+import javax.swing.event.TableModelListener;
+import java.awt.event.ActionEvent;
+import java.awt.event.KeyEvent;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Hex editor.
+ *
+ * The file is edited through a {@link PieceTable}, so that files of any size can be edited without being loaded.
+ * Changes are written in place when the size of the file is unchanged, otherwise the whole file is written to a
+ * temporary file that replaces the original one.
+ */
+class HexEditor extends FileEditor implements TableModelListener {
+    private static final Logger LOGGER = LoggerFactory.getLogger(HexEditor.class);
+    private static final long serialVersionUID = 1L;
+
+    private final HexViewer hexViewerDelegate;
+    private EditableHexTableModel model;
+    /** The original file */
+    private MuCommanderByteBuffer sourceBuffer;
+
+    private JMenuItem undoItem;
+    private JMenuItem redoItem;
+
+
+    public HexEditor() {
+        hexViewerDelegate = new HexViewer() {
+            @Override
+            protected ViewerHexTableModel createModel(AbstractFile file) throws IOException {
+                sourceBuffer = new MuCommanderByteBuffer(file);
+                model = new EditableHexTableModel(new PieceTable(sourceBuffer));
+                model.addTableModelListener(HexEditor.this);
+                return model;
+            }
+
+            @Override
+            protected void setComponentToPresent(JComponent component) {
+                HexEditor.this.setComponentToPresent(component);
+            }
+
+            @Override
+            protected FileFrame getFrame() {
+                return HexEditor.this.getFrame();
+            }
+
+            @Override
+            protected void updateStatusBar(long offset) {
+                super.updateStatusBar(offset);
+                if (getHexTable() != null) {
+                    getStatusBar().setInsertMode(getHexTable().isInsertMode());
+                }
+            }
+        };
+    }
+
+
+    @Override
+    protected void show(AbstractFile file) throws IOException {
+        hexViewerDelegate.show(file);
+        HexTable hexTable = hexViewerDelegate.getHexTable();
+        if (hexTable != null) {
+            getViewport().setBackground(hexTable.getBackground());
+            getStatusBar().setInsertMode(hexTable.isInsertMode());
+        }
+    }
+
+    @Override
+    public JMenuBar getMenuBar() {
+        JMenuBar menuBar = super.getMenuBar();
+        MnemonicHelper menuMnemonicHelper = new MnemonicHelper();
+        MnemonicHelper menuItemMnemonicHelper = new MnemonicHelper();
+
+        JMenu editMenu = MenuToolkit.addMenu(Translator.get("text_editor.edit"), menuMnemonicHelper, null);
+        undoItem = MenuToolkit.addMenuItem(editMenu, Translator.get("text_editor.undo"), menuItemMnemonicHelper, KeyStroke.getKeyStroke(KeyEvent.VK_Z, HexViewer.getCtrlOrMetaMask()), this);
+        redoItem = MenuToolkit.addMenuItem(editMenu, Translator.get("text_editor.redo"), menuItemMnemonicHelper, KeyStroke.getKeyStroke(KeyEvent.VK_Y, HexViewer.getCtrlOrMetaMask()), this);
+        menuBar.add(editMenu);
+        menuBar.add(hexViewerDelegate.getViewMenu());
+
+        hexViewerDelegate.setMainKeyListener(this, menuBar);
+        return menuBar;
+    }
+
+    @Override
+    protected StatusBar getStatusBar() {
+        return hexViewerDelegate.getStatusBar();
+    }
+
+    @Override
+    protected void saveStateOnClose() {
+        if (model != null) {
+            try {
+                model.getPieceTable().close();
+            } catch (IOException e) {
+                LOGGER.debug("failed to close the edited file", e);
+            }
+        }
+    }
+
+    @Override
+    protected void restoreStateOnStartup() {
+
+    }
+
+
+    ///////////////////////////////
+    // FileEditor implementation //
+    ///////////////////////////////
+
+    @Override
+    protected void saveAs(AbstractFile destFile) throws IOException {
+        getStatusBar().setStatusMessage(Translator.get("text_editor.writing"));
+        PieceTable pieceTable = model.getPieceTable();
+
+        if (destFile.equals(getCurrentFile())) {
+            if (pieceTable.canSaveInPlace() && destFile.isFileOperationSupported(FileOperation.RANDOM_WRITE_FILE)) {
+                // Only the changed bytes are written
+                RandomAccessOutputStream out = destFile.getRandomAccessOutputStream();
+                try {
+                    pieceTable.writeChanges(out);
+                } finally {
+                    out.close();
+                }
+            } else {
+                // The original file is read while the new one is written, which thus can't be written in place
+                AbstractFile tempFile = getTemporaryFile(destFile);
+                try {
+                    write(pieceTable, tempFile);
+                    sourceBuffer.invalidate();
+                    tempFile.moveTo(destFile);
+                } finally {
+                    if (tempFile.exists()) {
+                        tempFile.delete();
+                    }
+                }
+            }
+            pieceTable.setSaved(sourceBuffer);
+        } else {
+            write(pieceTable, destFile);
+            sourceBuffer = new MuCommanderByteBuffer(destFile);
+            pieceTable.setSaved(sourceBuffer);
+        }
+        model.reload();
+
+        // We get here only if the destination file was updated successfully
+        // so we can set that no further save is needed at this stage
+        setSaveNeeded(false);
+
+        // Change the parent folder's date to now, so that changes are picked up by folder auto-refresh (see ticket #258)
+        if (destFile.isFileOperationSupported(FileOperation.CHANGE_DATE)) {
+            try {
+                destFile.getParent().changeDate(System.currentTimeMillis());
+            } catch (IOException e) {
+                LOGGER.debug("failed to change the date of "+destFile, e);
+                // Fail silently
+            }
+        }
+        getStatusBar().setStatusMessage(Translator.get("text_editor.saved"));
+    }
+
+    private static void write(PieceTable pieceTable, AbstractFile destFile) throws IOException {
+        OutputStream out = destFile.getOutputStream();
+        try {
+            pieceTable.write(out);
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Returns a file that doesn't exist yet in the folder of the given file
+     */
+    private static AbstractFile getTemporaryFile(AbstractFile file) throws IOException {
+        AbstractFile parent = file.getParent();
+        AbstractFile tempFile = parent.getDirectChild(file.getName() + ".tmp");
+        for (int i = 1; tempFile.exists(); i++) {
+            tempFile = parent.getDirectChild(file.getName() + ".tmp" + i);
+        }
+        return tempFile;
+    }
+
+
+    ///////////////////////////////////
+    // ActionListener implementation //
+    ///////////////////////////////////
+
+    @Override
+    public void actionPerformed(ActionEvent e) {
+        Object source = e.getSource();
+        if (source == undoItem || source == redoItem) {
+            long offset = source == undoItem ? model.undo() : model.redo();
+            if (offset >= 0) {
+                hexViewerDelegate.getHexTable().gotoOffset(offset);
+            }
+        } else {
+            super.actionPerformed(e);
+        }
+    }
+
+
+    ///////////////////////////////////////
+    // TableModelListener implementation //
+    ///////////////////////////////////////
+
+    @Override
+    public void tableChanged(TableModelEvent e) {
+        setSaveNeeded(model.getPieceTable().isModified());
+    }
+}
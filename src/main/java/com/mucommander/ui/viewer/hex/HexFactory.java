@@ -19,16 +19,18 @@ package com.mucommander.ui.viewer.hex;
 
 import com.mucommander.commons.file.AbstractFile;
 import com.mucommander.text.Translator;
+import com.mucommander.ui.viewer.EditorFactory;
+import com.mucommander.ui.viewer.FileEditor;
 import com.mucommander.ui.viewer.FileViewer;
 import com.mucommander.ui.viewer.ViewerFactory;
 import com.mucommander.ui.viewer.WarnUserException;
 
 /**
- * <code>ViewerFactory</code> implementation for creating hex viewers.
+ * <code>ViewerFactory</code> and <code>EditorFactory</code> implementation for creating hex viewers and editors.
  *
  * @author Oleg Trifonov
  */
-public class HexFactory implements ViewerFactory {
+public class HexFactory implements ViewerFactory, EditorFactory {
     @Override
     public boolean canViewFile(AbstractFile file) throws WarnUserException {
         return !file.isDirectory();
@@ -39,6 +41,16 @@ public class HexFactory implements ViewerFactory {
         return new HexViewer();
     }
 
+    @Override
+    public boolean canEditFile(AbstractFile file) throws WarnUserException {
+        return !file.isDirectory();
+    }
+
+    @Override
+    public FileEditor createFileEditor() {
+        return new HexEditor();
+    }
+
     @Override
     public String getName() {
         return Translator.get("viewer_type.hex");
@@ -77,7 +77,7 @@ public class HexViewer extends FileViewer {
         findPrevItem = MenuToolkit.addMenuItem(menuView, Translator.get("hex_viewer.searchPrev"), menuMnemonicHelper, KeyStroke.getKeyStroke(KeyEvent.VK_F3, KeyEvent.SHIFT_DOWN_MASK), this);
     }
 
-    private int getCtrlOrMetaMask() {
+    static int getCtrlOrMetaMask() {
         if (OsFamily.getCurrent() != OsFamily.MAC_OS_X) {
             return KeyEvent.CTRL_MASK;
         } else {
@@ -89,21 +89,45 @@ public class HexViewer extends FileViewer {
         @Override
         public void onChange(long offset) {
             if (statusBar != null) {
-                statusBar.setOffset(offset);
-                try {
-                    statusBar.setByteValue(byteBuffer.getByte(offset));
-                } catch (IOException e) {
-                    e.printStackTrace();
-                }
+                updateStatusBar(offset);
             }
         }
     };
 
+    /**
+     * Shows the current offset and the value of the byte at that offset
+     *
+     * @param offset the current offset
+     */
+    protected void updateStatusBar(long offset) {
+        // The size changes while the file is being edited
+        statusBar.setMaxOffset(model.getSize() - 1);
+        statusBar.setOffset(offset);
+        if (offset >= 0 && offset < model.getSize()) {
+            try {
+                statusBar.setByteValue(byteBuffer.getByte(offset));
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Creates the model of the table that displays the given file
+     *
+     * @param file the file to display
+     * @return the table model
+     * @throws IOException if an I/O error occurred
+     */
+    protected ViewerHexTableModel createModel(AbstractFile file) throws IOException {
+        return new ViewerHexTableModel(new MuCommanderByteBuffer(file));
+    }
+
     @Override
     protected void show(AbstractFile file) throws IOException {
         try {
-            byteBuffer = new MuCommanderByteBuffer(file);
-            model = new ViewerHexTableModel(byteBuffer);
+            model = createModel(file);
+            byteBuffer = model.getBuffer();
             model.load();
             hexTable = new HexTable(model);
             hexTable.setBackground(ThemeManager.getCurrentColor(Theme.EDITOR_BACKGROUND_COLOR));
@@ -121,7 +145,7 @@ public class HexViewer extends FileViewer {
             hexTable.setOnOffsetChangeListener(onOffsetChangeListener);
             onOffsetChangeListener.onChange(0);
 
-            statusBar.setMaxOffset(file.getSize() - 1);
+            statusBar.setMaxOffset(model.getSize() - 1);
             statusBar.setOffset(hexTable.getCurrentAddress());
 
             setComponentToPresent(hexTable);
@@ -131,6 +155,14 @@ public class HexViewer extends FileViewer {
         }
     }
 
+    HexTable getHexTable() {
+        return hexTable;
+    }
+
+    JMenu getViewMenu() {
+        return menuView;
+    }
+
     @Override
     protected StatusBar getStatusBar() {
         if (statusBar == null) {
@@ -37,6 +37,7 @@ public class StatusBar extends org.fife.ui.StatusBar {
     private JLabel lblOffset;
     private JLabel lblEncoding;
     private JLabel lblValue;
+    private JLabel lblMode;
 
     private long maxOffset = -1;
 
@@ -93,6 +94,22 @@ public class StatusBar extends org.fife.ui.StatusBar {
         lblValue.setText(s);
     }
 
+    /**
+     * Shows whether typed bytes are inserted or overwrite the existing ones, the indicator is only shown by editors
+     *
+     * @param insertMode true for insert mode, false for overwrite mode
+     */
+    public void setInsertMode(boolean insertMode) {
+        if (lblMode == null) {
+            lblMode = createLabel();
+            GridBagConstraints c = new GridBagConstraints();
+            c.fill = GridBagConstraints.BOTH;
+            c.weightx = 0.0;
+            addStatusBarComponent(new StatusBarPanel(new BorderLayout(), lblMode), c);
+        }
+        lblMode.setText(insertMode ? "INS" : "OVR");
+    }
+
     public void clearStatusMessage() {
         setStatusMessage("");
     }
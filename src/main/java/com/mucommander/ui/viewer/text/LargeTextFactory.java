@@ -0,0 +1,75 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2012 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.ui.viewer.text;
+
+import com.mucommander.commons.file.AbstractFile;
+import com.mucommander.commons.file.FileOperation;
+import com.mucommander.commons.io.BinaryDetector;
+import com.mucommander.commons.io.EncodingDetector;
+import com.mucommander.conf.MuConfigurations;
+import com.mucommander.conf.MuPreference;
+import com.mucommander.conf.MuPreferences;
+import com.mucommander.text.Translator;
+import com.mucommander.ui.viewer.FileViewer;
+import com.mucommander.ui.viewer.ViewerFactory;
+
+import java.io.IOException;
+import java.io.PushbackInputStream;
+
+/**
+ * <code>ViewerFactory</code> implementation for creating {@link LargeTextViewer large text viewers}. Text files that
+ * are larger than {@link MuPreferences#LARGE_TEXT_FILE_THRESHOLD} and can be read randomly are viewed by this factory
+ * instead of {@link TextFactory}, which loads the whole file in memory.
+ */
+public class LargeTextFactory implements ViewerFactory {
+
+    @Override
+    public boolean canViewFile(AbstractFile file) {
+        if (file.isDirectory() || !file.isFileOperationSupported(FileOperation.RANDOM_READ_FILE)) {
+            return false;
+        }
+        long threshold = MuConfigurations.getPreferences().getVariable(MuPreference.LARGE_TEXT_FILE_THRESHOLD, MuPreferences.DEFAULT_LARGE_TEXT_FILE_THRESHOLD);
+        if (file.getSize() <= threshold) {
+            return false;
+        }
+        // Binary files are left to the other factories
+        try {
+            PushbackInputStream is = file.getPushBackInputStream(EncodingDetector.MAX_RECOMMENDED_BYTE_SIZE);
+            return !BinaryDetector.guessBinary(is);
+        } catch (IOException e) {
+            e.printStackTrace();
+            try {
+                file.closePushbackInputStream();
+            } catch (IOException e1) {
+                e1.printStackTrace();
+            }
+            return false;
+        }
+    }
+
+    @Override
+    public FileViewer createFileViewer() {
+        return new LargeTextViewer();
+    }
+
+    @Override
+    public String getName() {
+        return Translator.get("viewer_type.large_text");
+    }
+}
@@ -0,0 +1,649 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2012 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.ui.viewer.text;
+
+import com.mucommander.commons.file.AbstractFile;
+import com.mucommander.commons.io.EncodingDetector;
+import com.mucommander.commons.io.RandomAccessInputStream;
+import com.mucommander.commons.runtime.OsFamily;
+import com.mucommander.text.Translator;
+import com.mucommander.ui.dialog.DialogOwner;
+import com.mucommander.ui.dialog.InformationDialog;
+import com.mucommander.ui.encoding.EncodingListener;
+import com.mucommander.ui.encoding.EncodingMenu;
+import com.mucommander.ui.helper.MenuToolkit;
+import com.mucommander.ui.helper.MnemonicHelper;
+import com.mucommander.ui.theme.Theme;
+import com.mucommander.ui.theme.ThemeManager;
+import com.mucommander.ui.viewer.FileViewer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import ru.trolsoft.utils.search.HorspoolSearcher;
+import ru.trolsoft.utils.search.SearchPattern;
+import ru.trolsoft.utils.search.SearchUtils;
+import ru.trolsoft.utils.search.StringCaseInsensitiveSearchPattern;
+import ru.trolsoft.utils.search.StringCaseSensitiveSearchPattern;
+
+import javax.swing.*;
+import javax.swing.event.ListSelectionEvent;
+import javax.swing.event.ListSelectionListener;
+import javax.swing.text.Position;
+import java.awt.Toolkit;
+import java.awt.event.ActionEvent;
+import java.awt.event.KeyEvent;
+import java.io.IOException;
+import java.io.PushbackInputStream;
+import java.io.UnsupportedEncodingException;
+import java.nio.charset.Charset;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A read-only viewer for text files that are too large to be loaded in memory, like multi-gigabyte logs. The lines
+ * are indexed in the background by a {@link LineIndex}, and only the visible ones are read and decoded, along with a
+ * margin. Once the whole file has been indexed, its size is checked on a regular basis so that lines appended to it
+ * are shown, and optionally scrolled to.
+ *
+ * <p>Lines are displayed by a {@link JList} with a fixed cell size, so that only the visible lines are requested from
+ * the model. As the height of the list can't exceed <code>Integer.MAX_VALUE</code> pixels, only the first hundred
+ * million lines or so can be displayed.</p>
+ */
+public class LargeTextViewer extends FileViewer implements EncodingListener {
+    private static final Logger LOGGER = LoggerFactory.getLogger(LargeTextViewer.class);
+    private static final long serialVersionUID = 1L;
+
+    /** Number of lines read and decoded at once */
+    private static final int WINDOW_SIZE = 500;
+
+    /** Number of lines read before the requested one, to scroll up without reading the file again */
+    private static final int WINDOW_MARGIN = 100;
+
+    /** Number of bytes indexed between two updates of the view */
+    private static final long INDEX_STEP = 16 * 1024 * 1024;
+
+    /** Delay in milliseconds between two checks of the file size, once the file has been indexed */
+    private static final int FOLLOW_INTERVAL = 1000;
+
+    /** Number of spaces tabulations are replaced with */
+    private static final String TAB = "    ";
+
+    private final JList<String> list;
+    private final LinesModel model = new LinesModel();
+    private StatusBar statusBar;
+
+    private AbstractFile file;
+    private String encoding;
+    private LineIndex index;
+    /** Stream used to read the lines from the event dispatch thread */
+    private RandomAccessInputStream in;
+    private Thread indexThread;
+    private int nbResets;
+    private boolean followTail;
+
+    private String searchString;
+    /** Stream of the search in progress, null if there is none */
+    private volatile RandomAccessInputStream searchIn;
+
+    private JMenu editMenu;
+    private JMenu viewMenu;
+    private JMenuItem copyItem;
+    private JMenuItem findItem;
+    private JMenuItem findNextItem;
+    private JMenuItem findPreviousItem;
+    private JMenuItem gotoLineItem;
+    private JMenuItem followTailItem;
+
+
+    public LargeTextViewer() {
+        list = new JList<String>(model) {
+            @Override
+            public int getNextMatch(String prefix, int startIndex, Position.Bias bias) {
+                // The default implementation reads every line looking for the typed prefix
+                return -1;
+            }
+        };
+        list.setFont(ThemeManager.getCurrentFont(Theme.EDITOR_FONT));
+        list.setForeground(ThemeManager.getCurrentColor(Theme.EDITOR_FOREGROUND_COLOR));
+        list.setBackground(ThemeManager.getCurrentColor(Theme.EDITOR_BACKGROUND_COLOR));
+        list.setSelectionForeground(ThemeManager.getCurrentColor(Theme.EDITOR_SELECTED_FOREGROUND_COLOR));
+        list.setSelectionBackground(ThemeManager.getCurrentColor(Theme.EDITOR_SELECTED_BACKGROUND_COLOR));
+        // A fixed cell size prevents the list from computing the size of every line
+        list.setFixedCellHeight(list.getFontMetrics(list.getFont()).getHeight());
+        list.setFixedCellWidth(1);
+        list.addListSelectionListener(new ListSelectionListener() {
+            @Override
+            public void valueChanged(ListSelectionEvent e) {
+                updateStatusBar();
+            }
+        });
+        setComponentToPresent(list);
+        getViewport().setBackground(list.getBackground());
+
+        initMenuBarItems();
+    }
+
+    private static int getCtrlOrMetaMask() {
+        if (OsFamily.getCurrent() != OsFamily.MAC_OS_X) {
+            return KeyEvent.CTRL_DOWN_MASK;
+        } else {
+            return KeyEvent.META_DOWN_MASK;
+        }
+    }
+
+    private void initMenuBarItems() {
+        MnemonicHelper menuItemMnemonicHelper = new MnemonicHelper();
+        editMenu = new JMenu(Translator.get("text_viewer.edit"));
+        copyItem = MenuToolkit.addMenuItem(editMenu, Translator.get("text_viewer.copy"), menuItemMnemonicHelper, null, this);
+        editMenu.addSeparator();
+        findItem = MenuToolkit.addMenuItem(editMenu, Translator.get("text_viewer.find"), menuItemMnemonicHelper, KeyStroke.getKeyStroke(KeyEvent.VK_F, getCtrlOrMetaMask()), this);
+        findNextItem = MenuToolkit.addMenuItem(editMenu, Translator.get("text_viewer.find_next"), menuItemMnemonicHelper, KeyStroke.getKeyStroke(KeyEvent.VK_F3, 0), this);
+        findPreviousItem = MenuToolkit.addMenuItem(editMenu, Translator.get("text_viewer.find_previous"), menuItemMnemonicHelper, KeyStroke.getKeyStroke(KeyEvent.VK_F3, KeyEvent.SHIFT_DOWN_MASK), this);
+        editMenu.addSeparator();
+        gotoLineItem = MenuToolkit.addMenuItem(editMenu, Translator.get("text_viewer.goto_line"), menuItemMnemonicHelper, KeyStroke.getKeyStroke(KeyEvent.VK_G, getCtrlOrMetaMask()), this);
+
+        viewMenu = new JMenu(Translator.get("text_viewer.view"));
+        followTailItem = MenuToolkit.addCheckBoxMenuItem(viewMenu, Translator.get("text_viewer.follow_tail"), menuItemMnemonicHelper, KeyStroke.getKeyStroke(KeyEvent.VK_T, getCtrlOrMetaMask()), this);
+    }
+
+    /**
+     * Indexes the file again with the given encoding, the view is updated as lines are indexed.
+     */
+    private void startIndexing(String encoding) throws IOException {
+        stopIndexing();
+        this.encoding = encoding;
+        index = new LineIndex(encoding);
+        nbResets = 0;
+        model.update(0, true);
+
+        final LineIndex threadIndex = index;
+        final RandomAccessInputStream indexIn = file.getRandomAccessInputStream();
+        indexThread = new Thread("Large text file indexer") {
+            @Override
+            public void run() {
+                try {
+                    while (!isInterrupted()) {
+                        if (threadIndex.update(indexIn, INDEX_STEP)) {
+                            final long length = indexIn.getLength();
+                            SwingUtilities.invokeLater(new Runnable() {
+                                @Override
+                                public void run() {
+                                    updateView(threadIndex, length);
+                                }
+                            });
+                        } else {
+                            // Wait for lines to be appended to the file
+                            Thread.sleep(FOLLOW_INTERVAL);
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    // The viewer has been closed or the file is being indexed again
+                } catch (IOException e) {
+                    if (!isInterrupted()) {
+                        LOGGER.warn("failed to index the lines of "+file, e);
+                        SwingUtilities.invokeLater(new Runnable() {
+                            @Override
+                            public void run() {
+                                if (threadIndex == index) {
+                                    showReadError();
+                                }
+                            }
+                        });
+                    }
+                } finally {
+                    try {
+                        indexIn.close();
+                    } catch (IOException e) {
+                        LOGGER.debug("failed to close "+file, e);
+                    }
+                }
+            }
+        };
+        indexThread.setDaemon(true);
+        indexThread.start();
+    }
+
+    private void stopIndexing() {
+        if (indexThread != null) {
+            indexThread.interrupt();
+            indexThread = null;
+        }
+    }
+
+    /**
+     * Shows the lines that have been indexed, called from the event dispatch thread.
+     *
+     * @param source the index that has been updated
+     * @param length the length of the file when the index was updated
+     */
+    private void updateView(LineIndex source, long length) {
+        if (source != index) {
+            // The file is being indexed with another encoding
+            return;
+        }
+        boolean reset = index.getResetCount() != nbResets;
+        nbResets = index.getResetCount();
+        // Lines beyond the maximum height of the list can't be displayed
+        int maxLines = Integer.MAX_VALUE / list.getFixedCellHeight();
+        model.update(Math.min(index.getLineCount(), maxLines), reset);
+
+        // The list is as wide as the longest line
+        int maxLength = (int)Math.min(LineIndex.MAX_LINE_LENGTH, index.getMaxLineLength() / index.getCharset().newEncoder().averageBytesPerChar());
+        int width = list.getFontMetrics(list.getFont()).charWidth('m') * (maxLength + 1);
+        if (width > list.getFixedCellWidth()) {
+            list.setFixedCellWidth(width);
+        }
+
+        long indexedLength = index.getIndexedLength();
+        if (indexedLength < length) {
+            statusBar.setStatusMessage(Translator.get("text_viewer.indexing", String.valueOf(indexedLength * 100 / length)));
+        } else if (searchIn == null) {
+            statusBar.setStatusMessage("");
+        }
+        if (followTail && model.getSize() > 0) {
+            selectLine(model.getSize() - 1);
+        } else if (list.getSelectedIndex() < 0 && model.getSize() > 0) {
+            list.setSelectedIndex(0);
+        }
+        updateStatusBar();
+    }
+
+    private void updateStatusBar() {
+        statusBar.setLine(list.getSelectedIndex() + 1, model.getSize());
+    }
+
+    /**
+     * Shows in the status bar that the file could not be read, called from the event dispatch thread.
+     */
+    private void showReadError() {
+        statusBar.setStatusMessage(Translator.get("cannot_read_file", file.getName()));
+    }
+
+    private void selectLine(int line) {
+        list.setSelectedIndex(line);
+        list.ensureIndexIsVisible(line);
+    }
+
+    /**
+     * Lines of the file, read by windows of {@link #WINDOW_SIZE} lines when the list requests them.
+     */
+    private class LinesModel extends AbstractListModel<String> {
+        private static final long serialVersionUID = 1L;
+
+        private int size;
+        private int windowStart;
+        private List<String> window = Collections.emptyList();
+        /** True if the last window could not be read, so that the error is reported once */
+        private boolean readFailed;
+
+        @Override
+        public int getSize() {
+            return size;
+        }
+
+        @Override
+        public String getElementAt(int line) {
+            if (line < windowStart || line >= windowStart + window.size()) {
+                readWindow(Math.max(0, line - WINDOW_MARGIN));
+                if (line < windowStart || line >= windowStart + window.size()) {
+                    return "";
+                }
+            }
+            return window.get(line - windowStart);
+        }
+
+        private void readWindow(int start) {
+            windowStart = start;
+            try {
+                window = index.readLines(in, start, WINDOW_SIZE);
+                for (int i = 0; i < window.size(); i++) {
+                    window.set(i, window.get(i).replace("\t", TAB));
+                }
+                readFailed = false;
+            } catch (IOException e) {
+                if (!readFailed) {
+                    LOGGER.warn("failed to read the lines of "+file, e);
+                    showReadError();
+                    readFailed = true;
+                }
+                window = Collections.emptyList();
+            }
+        }
+
+        /**
+         * Sets the number of lines.
+         *
+         * @param newSize the number of lines
+         * @param reset true if the lines have changed, false if lines have been appended
+         */
+        private void update(int newSize, boolean reset) {
+            int oldSize = size;
+            size = newSize;
+            if (reset) {
+                window = Collections.emptyList();
+                if (oldSize > newSize) {
+                    fireIntervalRemoved(this, newSize, oldSize - 1);
+                }
+                if (newSize > 0) {
+                    fireContentsChanged(this, 0, newSize - 1);
+                }
+            } else {
+                // The last line may have been completed
+                if (oldSize > 0 && oldSize - 1 < windowStart + window.size()) {
+                    window = Collections.emptyList();
+                }
+                if (newSize > oldSize) {
+                    fireIntervalAdded(this, oldSize, newSize - 1);
+                }
+                if (oldSize > 0) {
+                    fireContentsChanged(this, oldSize - 1, oldSize - 1);
+                }
+            }
+        }
+    }
+
+    /////////////////
+    // Search code //
+    /////////////////
+
+    private void find() {
+        FindDialog dlgFind = new FindDialog(getFrame()) {
+            @Override
+            protected void doSearch(String text) {
+                if (text != null && !text.isEmpty()) {
+                    searchString = text;
+                    search(0, true);
+                }
+                // Request the focus on the list which could be lost after the Find dialog was disposed
+                list.requestFocus();
+            }
+        };
+        dlgFind.setText(searchString);
+        dlgFind.showDialog();
+    }
+
+    private void findNext() {
+        search(list.getSelectedIndex() + 1, true);
+    }
+
+    private void findPrevious() {
+        int line = list.getSelectedIndex();
+        search(line < 0 ? model.getSize() - 1 : line - 1, false);
+    }
+
+    /**
+     * Returns a case-insensitive pattern if the lower case and upper case strings have the same length once encoded.
+     */
+    private static SearchPattern getSearchPattern(String s, Charset charset) throws UnsupportedEncodingException {
+        String name = charset.name();
+        if (s.toLowerCase().getBytes(name).length == s.toUpperCase().getBytes(name).length) {
+            return new StringCaseInsensitiveSearchPattern(s, name);
+        }
+        return new StringCaseSensitiveSearchPattern(s, name);
+    }
+
+    /**
+     * Searches the file from the given line, in a separate thread, and selects the line of the match.
+     *
+     * @param line the line to search from
+     * @param forward true to search from the start of the line to the end of the file, false to search from the end
+     * of the line to the start of the file
+     */
+    private void search(final int line, final boolean forward) {
+        if (searchString == null || searchString.isEmpty() || searchIn != null) {
+            return;
+        }
+        if (line < 0 || line >= model.getSize()) {
+            beep();
+            return;
+        }
+        final LineIndex searchIndex = index;
+        final HorspoolSearcher searcher;
+        try {
+            searcher = new HorspoolSearcher(getSearchPattern(searchString, searchIndex.getCharset()));
+            searchIn = file.getRandomAccessInputStream();
+        } catch (IOException e) {
+            LOGGER.warn("failed to search "+file, e);
+            showReadError();
+            return;
+        }
+        final RandomAccessInputStream threadIn = searchIn;
+        statusBar.setStatusMessage(Translator.get("text_viewer.searching"));
+
+        Thread searchThread = new Thread("Large text file search") {
+            @Override
+            public void run() {
+                int matchLine = -1;
+                boolean failed = false;
+                try {
+                    long pos = forward ? searchForward(line) : searchBackward(line);
+                    if (pos >= 0) {
+                        matchLine = searchIndex.getLineAt(threadIn, pos);
+                    }
+                } catch (IOException e) {
+                    // The stream is closed if the viewer is closed during the search
+                    if (searchIn == threadIn) {
+                        LOGGER.warn("failed to search "+file, e);
+                        failed = true;
+                    }
+                } finally {
+                    try {
+                        threadIn.close();
+                    } catch (IOException e) {
+                        LOGGER.debug("failed to close "+file, e);
+                    }
+                }
+
+                final int result = matchLine;
+                final boolean searchFailed = failed;
+                SwingUtilities.invokeLater(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (searchIn != threadIn) {
+                            return;
+                        }
+                        searchIn = null;
+                        statusBar.setStatusMessage("");
+                        if (searchFailed) {
+                            showReadError();
+                        } else if (result >= 0 && index == searchIndex && result < model.getSize()) {
+                            selectLine(result);
+                        } else {
+                            beep();
+                        }
+                    }
+                });
+            }
+
+            private long searchForward(int line) throws IOException {
+                long offset = searchIndex.getLineOffset(threadIn, line);
+                while (true) {
+                    threadIn.seek(offset);
+                    long pos = SearchUtils.indexOf(threadIn, searcher);
+                    if (pos < 0) {
+                        return -1;
+                    }
+                    pos += offset;
+                    // Multi-byte encodings may match in the middle of a character
+                    if (searchIndex.isAligned(pos)) {
+                        return pos;
+                    }
+                    offset = pos + 1;
+                }
+            }
+
+            private long searchBackward(int line) throws IOException {
+                long offset = line + 1 < searchIndex.getLineCount() ?
+                        searchIndex.getLineOffset(threadIn, line + 1) - 1 : searchIndex.getIndexedLength();
+                while (offset >= 0) {
+                    long pos = SearchUtils.lastIndexOf(threadIn, offset, searcher);
+                    if (pos < 0 || searchIndex.isAligned(pos)) {
+                        return pos;
+                    }
+                    offset = pos - 1;
+                }
+                return -1;
+            }
+        };
+        searchThread.setDaemon(true);
+        searchThread.start();
+    }
+
+    private void stopSearch() {
+        if (searchIn != null) {
+            RandomAccessInputStream threadIn = searchIn;
+            searchIn = null;
+            try {
+                threadIn.close();
+            } catch (IOException e) {
+                LOGGER.debug("failed to close "+file, e);
+            }
+        }
+    }
+
+    /**
+     * Beeps when no match has been found, in a separate thread as the beep method may lock until the beep has been played.
+     */
+    private static void beep() {
+        new Thread() {
+            @Override
+            public void run() {
+                Toolkit.getDefaultToolkit().beep();
+            }
+        }.start();
+    }
+
+    private void gotoLine() {
+        GotoLineDialog dlgGoto = new GotoLineDialog(getFrame(), model.getSize()) {
+            @Override
+            protected void doGoto(int value) {
+                if (value >= 1) {
+                    selectLine(value - 1);
+                }
+            }
+        };
+        dlgGoto.showDialog();
+    }
+
+    ///////////////////////////////
+    // FileViewer implementation //
+    ///////////////////////////////
+
+    @Override
+    protected void show(AbstractFile file) throws IOException {
+        this.file = file;
+        PushbackInputStream pushbackIn = file.getPushBackInputStream(EncodingDetector.MAX_RECOMMENDED_BYTE_SIZE);
+        String encoding = EncodingDetector.detectEncoding(pushbackIn);
+        // If the detected encoding is invalid (null or not supported), default to "UTF-8"
+        if (encoding == null || !Charset.isSupported(encoding)) {
+            encoding = "UTF-8";
+        }
+        in = file.getRandomAccessInputStream();
+        startIndexing(encoding);
+        getStatusBar().setEncoding(encoding);
+    }
+
+    @Override
+    public JMenuBar getMenuBar() {
+        JMenuBar menuBar = super.getMenuBar();
+
+        // Encoding menu
+        EncodingMenu encodingMenu = new EncodingMenu(new DialogOwner(getFrame()), encoding);
+        encodingMenu.addEncodingListener(this);
+
+        menuBar.add(editMenu);
+        menuBar.add(viewMenu);
+        menuBar.add(encodingMenu);
+
+        setMainKeyListener(list, menuBar);
+        return menuBar;
+    }
+
+    @Override
+    protected StatusBar getStatusBar() {
+        if (statusBar == null) {
+            statusBar = new StatusBar();
+        }
+        return statusBar;
+    }
+
+    @Override
+    protected void saveStateOnClose() {
+        stopIndexing();
+        stopSearch();
+        try {
+            if (in != null) {
+                in.close();
+            }
+        } catch (IOException e) {
+            LOGGER.debug("failed to close "+file, e);
+        }
+        try {
+            file.closePushbackInputStream();
+        } catch (IOException e) {
+            LOGGER.debug("failed to close "+file, e);
+        }
+    }
+
+    @Override
+    protected void restoreStateOnStartup() {
+    }
+
+    ///////////////////////////////////
+    // ActionListener implementation //
+    ///////////////////////////////////
+
+    @Override
+    public void actionPerformed(ActionEvent e) {
+        Object source = e.getSource();
+
+        if (source == copyItem) {
+            TransferHandler.getCopyAction().actionPerformed(new ActionEvent(list, ActionEvent.ACTION_PERFORMED, "copy"));
+        } else if (source == findItem) {
+            find();
+        } else if (source == findNextItem) {
+            findNext();
+        } else if (source == findPreviousItem) {
+            findPrevious();
+        } else if (source == gotoLineItem) {
+            gotoLine();
+        } else if (source == followTailItem) {
+            followTail = followTailItem.isSelected();
+            if (followTail && model.getSize() > 0) {
+                selectLine(model.getSize() - 1);
+            }
+        } else {
+            super.actionPerformed(e);
+        }
+    }
+
+    /////////////////////////////////////
+    // EncodingListener implementation //
+    /////////////////////////////////////
+
+    @Override
+    public void encodingChanged(Object source, String oldEncoding, String newEncoding) {
+        stopSearch();
+        try {
+            startIndexing(newEncoding);
+            statusBar.setEncoding(newEncoding);
+        } catch (IOException ex) {
+            InformationDialog.showErrorDialog(getFrame(), Translator.get("read_error"), Translator.get("cannot_read_file", file.getName()));
+        }
+    }
+}
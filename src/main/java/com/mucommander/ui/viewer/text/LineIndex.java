@@ -0,0 +1,421 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2012 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.ui.viewer.text;
+
+import com.mucommander.commons.io.BufferPool;
+import com.mucommander.commons.io.RandomAccessInputStream;
+import com.mucommander.commons.io.bom.BOM;
+import com.mucommander.commons.io.bom.BOMConstants;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Index of the lines of a text file that is too large to be loaded in memory. The index is built incrementally by
+ * {@link #update(RandomAccessInputStream, long)}, which can be called again when the file grows, and only the offset
+ * of every {@link #LINES_PER_CHECKPOINT}th line is kept: the other ones are found by scanning the lines that follow
+ * the closest checkpoint.
+ *
+ * <p>Lines are separated by the encoded '\n' character, the trailing '\r' of a line is removed when it is decoded.
+ * The encoded '\n' may be several bytes long (UTF-16 and UTF-32), in which case it is only looked for at offsets
+ * aligned on its length. As with text editors, a file that ends with a line separator has an empty last line.</p>
+ *
+ * <p>The index is accessed by the thread that builds it and the ones that read lines, each one using its own stream
+ * on the file.</p>
+ */
+class LineIndex {
+
+    /** The offset of one line out of this number is stored */
+    static final int LINES_PER_CHECKPOINT = 64;
+
+    /** Lines are truncated to this number of bytes when they are read */
+    static final int MAX_LINE_LENGTH = 16 * 1024;
+
+    /** BOMs that may start the file, the UTF-32LE one starts with the UTF-16LE one and must be looked for first */
+    private static final BOM[] BOMS = {BOMConstants.UTF32_BE_BOM, BOMConstants.UTF32_LE_BOM, BOMConstants.UTF8_BOM,
+            BOMConstants.UTF16_BE_BOM, BOMConstants.UTF16_LE_BOM};
+
+    /** Size of the blocks the file is read by */
+    private static final int BLOCK_SIZE = 64 * 1024;
+
+    /** Encoding the index was created with, a BOM at the start of the file takes precedence over it */
+    private final String encoding;
+
+    private Charset charset;
+
+    /** The encoded line separator */
+    private byte[] newline;
+
+    /** Offset of the first line, after the BOM if any, -1 until the start of the file has been read */
+    private long dataStart = -1;
+
+    /** Offset of the lines whose number is a multiple of LINES_PER_CHECKPOINT */
+    private long[] checkpoints = new long[1024];
+
+    private int nbLines;
+
+    /** Offset up to which the file has been indexed */
+    private long indexedLength;
+
+    /** Offset of the last line */
+    private long lastLineStart;
+
+    /** Length in bytes of the longest line that is followed by a separator */
+    private long maxLineLength;
+
+    /** Number of times the file has been found truncated and indexed again */
+    private int nbResets;
+
+
+    /**
+     * Creates an empty index.
+     *
+     * @param encoding the encoding of the file, must be supported
+     */
+    LineIndex(String encoding) {
+        this.encoding = encoding;
+        setCharset(Charset.forName(encoding));
+    }
+
+    private void setCharset(Charset charset) {
+        // The UTF-16 and UTF-32 encoders write a BOM, and the decoders default to big endian without one
+        BOM bom = BOM.getInstance(charset.name());
+        if (bom != null && bom.getEncoding().startsWith("UTF-") && !bom.getEncoding().equals("UTF-8")) {
+            charset = Charset.forName(bom.getEncoding());
+        }
+        this.charset = charset;
+        this.newline = "\n".getBytes(charset);
+    }
+
+    /**
+     * Indexes the data that has been added to the file since the last call, up to the given number of bytes. If the
+     * file has been truncated, it is indexed again from the start. This method should be called repeatedly by a
+     * single thread, it stops early if the thread is interrupted.
+     *
+     * @param in a stream on the file, used by this method only
+     * @param maxBytes the maximum number of bytes to index
+     * @return true if the index has changed
+     * @throws IOException if an I/O error occurred
+     */
+    boolean update(RandomAccessInputStream in, long maxBytes) throws IOException {
+        long length = in.getLength();
+        boolean changed = false;
+        synchronized (this) {
+            if (dataStart < 0 || length < indexedLength) {
+                if (dataStart >= 0) {
+                    nbResets++;
+                }
+                reset(in, length);
+                changed = true;
+            }
+        }
+
+        // Only whole characters are indexed
+        long end = Math.min(length, indexedLength + maxBytes);
+        end -= (end - dataStart) % newline.length;
+        byte[] buffer = BufferPool.getByteArray(BLOCK_SIZE);
+        try {
+            while (indexedLength < end && !Thread.currentThread().isInterrupted()) {
+                int len = (int)Math.min(BLOCK_SIZE, end - indexedLength);
+                in.seek(indexedLength);
+                in.readFully(buffer, 0, len);
+                indexBlock(buffer, len);
+                changed = true;
+            }
+        } finally {
+            BufferPool.releaseByteArray(buffer);
+        }
+        return changed;
+    }
+
+    /**
+     * Empties the index and skips the BOM at the start of the file, if any.
+     */
+    private void reset(RandomAccessInputStream in, long length) throws IOException {
+        dataStart = 0;
+        setCharset(Charset.forName(encoding));
+        byte[] start = new byte[(int)Math.min(4, length)];
+        in.seek(0);
+        in.readFully(start);
+        for (BOM bom : BOMS) {
+            int sigLength = bom.getSignature().length;
+            if (start.length >= sigLength && bom.sigEquals(Arrays.copyOf(start, sigLength)) && Charset.isSupported(bom.getEncoding())) {
+                dataStart = sigLength;
+                setCharset(Charset.forName(bom.getEncoding()));
+                break;
+            }
+        }
+
+        nbLines = 1;
+        checkpoints[0] = dataStart;
+        indexedLength = dataStart;
+        lastLineStart = dataStart;
+        maxLineLength = 0;
+    }
+
+    private synchronized void indexBlock(byte[] buffer, int len) {
+        if (newline.length == 1) {
+            byte b = newline[0];
+            for (int i = 0; i < len; i++) {
+                if (buffer[i] == b) {
+                    addLine(indexedLength + i + 1);
+                }
+            }
+        } else {
+            for (int i = 0; i < len; i += newline.length) {
+                if (isNewline(buffer, i)) {
+                    addLine(indexedLength + i + newline.length);
+                }
+            }
+        }
+        indexedLength += len;
+    }
+
+    private void addLine(long offset) {
+        if (nbLines == Integer.MAX_VALUE) {
+            return;
+        }
+        maxLineLength = Math.max(maxLineLength, offset - newline.length - lastLineStart);
+        lastLineStart = offset;
+        if (nbLines % LINES_PER_CHECKPOINT == 0) {
+            int checkpoint = nbLines / LINES_PER_CHECKPOINT;
+            if (checkpoint == checkpoints.length) {
+                long[] newCheckpoints = new long[checkpoints.length * 2];
+                System.arraycopy(checkpoints, 0, newCheckpoints, 0, checkpoints.length);
+                checkpoints = newCheckpoints;
+            }
+            checkpoints[checkpoint] = offset;
+        }
+        nbLines++;
+    }
+
+    private boolean isNewline(byte[] buffer, int offset) {
+        for (int i = 0; i < newline.length; i++) {
+            if (buffer[offset + i] != newline[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the number of lines indexed so far, the last one may be incomplete.
+     *
+     * @return the number of lines indexed so far
+     */
+    synchronized int getLineCount() {
+        return nbLines;
+    }
+
+    /**
+     * Returns the offset up to which the file has been indexed.
+     *
+     * @return the offset up to which the file has been indexed
+     */
+    synchronized long getIndexedLength() {
+        return indexedLength;
+    }
+
+    /**
+     * Returns the number of times the file has been found truncated and indexed again from the start, which makes the
+     * lines read before invalid.
+     *
+     * @return the number of times the index has been emptied
+     */
+    synchronized int getResetCount() {
+        return nbResets;
+    }
+
+    /**
+     * Returns the length in bytes of the longest line indexed so far.
+     *
+     * @return the length in bytes of the longest line
+     */
+    synchronized long getMaxLineLength() {
+        return Math.max(maxLineLength, indexedLength - lastLineStart);
+    }
+
+    /**
+     * Returns the charset the file is decoded with, which is the one detected from the BOM if the file starts with one.
+     *
+     * @return the charset the file is decoded with
+     */
+    synchronized Charset getCharset() {
+        return charset;
+    }
+
+    /**
+     * Returns whether the given offset is at the start of an encoded character, for encodings whose characters all
+     * have the same length as the line separator.
+     *
+     * @param offset an offset in the file
+     * @return false if the offset is known to be in the middle of a character
+     */
+    synchronized boolean isAligned(long offset) {
+        return offset >= dataStart && (offset - dataStart) % newline.length == 0;
+    }
+
+    /**
+     * Returns the offset of the given line.
+     *
+     * @param in a stream on the file
+     * @param line a line number, starting at 0
+     * @return the offset of the line
+     * @throws IOException if an I/O error occurred
+     */
+    synchronized long getLineOffset(RandomAccessInputStream in, int line) throws IOException {
+        if (line < 0 || line >= nbLines) {
+            throw new IllegalArgumentException("Invalid line " + line);
+        }
+        long offset = checkpoints[line / LINES_PER_CHECKPOINT];
+        int nbLinesToSkip = line % LINES_PER_CHECKPOINT;
+        if (nbLinesToSkip == 0) {
+            return offset;
+        }
+
+        byte[] buffer = BufferPool.getByteArray(BLOCK_SIZE);
+        try {
+            while (offset < indexedLength) {
+                int len = (int)Math.min(BLOCK_SIZE, indexedLength - offset);
+                in.seek(offset);
+                in.readFully(buffer, 0, len);
+                for (int i = 0; i < len; i += newline.length) {
+                    if (isNewline(buffer, i) && --nbLinesToSkip == 0) {
+                        return offset + i + newline.length;
+                    }
+                }
+                offset += len;
+            }
+        } finally {
+            BufferPool.releaseByteArray(buffer);
+        }
+        // Lines are only added by the index
+        throw new IllegalStateException("Line " + line + " not found");
+    }
+
+    /**
+     * Returns the number of the line that contains the given offset, the last line if the offset has not been indexed.
+     *
+     * @param in a stream on the file
+     * @param offset an offset in the file
+     * @return a line number, starting at 0
+     * @throws IOException if an I/O error occurred
+     */
+    synchronized int getLineAt(RandomAccessInputStream in, long offset) throws IOException {
+        if (offset >= lastLineStart) {
+            return nbLines - 1;
+        }
+        // The last checkpoint that is before the offset
+        int low = 0;
+        int high = (nbLines - 1) / LINES_PER_CHECKPOINT;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (checkpoints[mid] <= offset) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+
+        int line = low * LINES_PER_CHECKPOINT;
+        long pos = checkpoints[low];
+        byte[] buffer = BufferPool.getByteArray(BLOCK_SIZE);
+        try {
+            while (pos <= offset) {
+                int len = (int)Math.min(BLOCK_SIZE, indexedLength - pos);
+                in.seek(pos);
+                in.readFully(buffer, 0, len);
+                for (int i = 0; i < len && pos + i <= offset; i += newline.length) {
+                    if (isNewline(buffer, i) && pos + i + newline.length <= offset) {
+                        line++;
+                    }
+                }
+                pos += len;
+            }
+        } finally {
+            BufferPool.releaseByteArray(buffer);
+        }
+        return line;
+    }
+
+    /**
+     * Reads and decodes the given lines, each of them being truncated to {@link #MAX_LINE_LENGTH} bytes.
+     *
+     * @param in a stream on the file
+     * @param first the number of the first line to read
+     * @param count the number of lines to read
+     * @return the lines, fewer than <code>count</code> if the index does not contain as many lines
+     * @throws IOException if an I/O error occurred
+     */
+    synchronized List<String> readLines(RandomAccessInputStream in, int first, int count) throws IOException {
+        int nbLinesToRead = Math.max(0, Math.min(count, nbLines - first));
+        List<String> lines = new ArrayList<>(nbLinesToRead);
+        if (nbLinesToRead == 0) {
+            return lines;
+        }
+
+        long offset = getLineOffset(in, first);
+        byte[] buffer = BufferPool.getByteArray(BLOCK_SIZE);
+        byte[] line = new byte[MAX_LINE_LENGTH];
+        int lineLength = 0;
+        try {
+            while (offset < indexedLength) {
+                int len = (int)Math.min(BLOCK_SIZE, indexedLength - offset);
+                in.seek(offset);
+                in.readFully(buffer, 0, len);
+                int lineStart = 0;
+                for (int i = 0; i < len; i += newline.length) {
+                    if (isNewline(buffer, i)) {
+                        lineLength = append(buffer, lineStart, i, line, lineLength);
+                        lines.add(decode(line, lineLength));
+                        if (lines.size() == nbLinesToRead) {
+                            return lines;
+                        }
+                        lineLength = 0;
+                        lineStart = i + newline.length;
+                    }
+                }
+                lineLength = append(buffer, lineStart, len, line, lineLength);
+                offset += len;
+            }
+            // The last line is not followed by a separator
+            lines.add(decode(line, lineLength));
+            return lines;
+        } finally {
+            BufferPool.releaseByteArray(buffer);
+        }
+    }
+
+    /**
+     * Appends the given bytes to the line, up to {@link #MAX_LINE_LENGTH} bytes, and returns the new line length.
+     */
+    private static int append(byte[] buffer, int from, int to, byte[] line, int lineLength) {
+        int len = Math.min(to - from, line.length - lineLength);
+        System.arraycopy(buffer, from, line, lineLength, len);
+        return lineLength + len;
+    }
+
+    private String decode(byte[] line, int length) {
+        String s = new String(line, 0, length, charset);
+        return s.endsWith("\r") ? s.substring(0, s.length() - 1) : s;
+    }
+}
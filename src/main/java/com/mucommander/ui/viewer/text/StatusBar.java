@@ -66,6 +66,16 @@ public class StatusBar extends org.fife.ui.StatusBar {
         lblPosition.setText(line + " : " + column);
     }
 
+    /**
+     * Shows the current line and the number of lines, for viewers that don't have a caret
+     *
+     * @param line the current line, starting at 1
+     * @param lineCount the number of lines
+     */
+    public void setLine(int line, int lineCount) {
+        lblPosition.setText(line + " / " + lineCount);
+    }
+
     public void setEncoding(String encoding) {
         lblEncoding.setText(encoding);
     }
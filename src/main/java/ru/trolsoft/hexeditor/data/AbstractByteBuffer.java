@@ -18,15 +18,24 @@
 package ru.trolsoft.hexeditor.data;
 
 import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 /**
- * Buffered file reader
+ * Buffered file reader.
+ *
+ * Data is cached in pages of {@link #getCapacity()} bytes aligned on the page size. The most recently used pages are
+ * kept in a LRU cache, so that moving back and forth in a large file doesn't reload the same data over and over.
  */
 public abstract class AbstractByteBuffer {
 
     /**
      * Стратегия кеширования при чтении
+     *
+     * @deprecated pages are aligned on the page size and several of them are cached, the strategy has no effect
      */
+    @Deprecated
     public enum CacheStrategy {
         FORWARD,
         BACKWARD,
@@ -34,21 +43,34 @@ public abstract class AbstractByteBuffer {
     }
 
     /**
-     *
+     * Default size of a page
      */
     protected static final int DEFAULT_CAPACITY = 1024*256;
 
+    /**
+     * Default number of pages kept in cache
+     */
+    protected static final int DEFAULT_MAX_PAGES = 16;
+
 
     /**
-     * Size of buffer
+     * Size of a page
      */
     protected int capacity;
 
     /**
-     * Number of bytes in buffer
+     * Number of bytes in the current page
      */
     protected int size;
+
+    /**
+     * File offset of the current page
+     */
     protected long offset;
+
+    /**
+     * The current page, filled by {@link #loadBuffer()}
+     */
     protected byte[] buffer;
 
     /**
@@ -56,12 +78,26 @@ public abstract class AbstractByteBuffer {
      */
     protected long streamSize;
 
+    /**
+     * Maximum number of pages kept in cache
+     */
+    private final int maxPages;
+
+    /**
+     * Cached pages by file offset, the least recently used first
+     */
+    private final LinkedHashMap<Long, Page> pages;
 
     private CacheStrategy cacheStrategy = CacheStrategy.CENTER;
 
     public AbstractByteBuffer(int capacity) {
+        this(capacity, DEFAULT_MAX_PAGES);
+    }
+
+    public AbstractByteBuffer(int capacity, int maxPages) {
         this.capacity = capacity;
-        buffer = new byte[capacity];
+        this.maxPages = Math.max(1, maxPages);
+        this.pages = new LinkedHashMap<>(this.maxPages * 2, 0.75f, true);
         this.offset = 0;
         this.size = 0;
         this.streamSize = -1;
@@ -86,39 +122,116 @@ public abstract class AbstractByteBuffer {
             if (fileOffset < 0 || fileOffset >= getFileSize()) {
                 throw new IndexOutOfBoundsException("Position: " + fileOffset + ", file size = " + getFileSize());
             }
-            offset = calcOffset(fileOffset, supportRandomAccess());
-            // FIXME if offset > size
-            if (offset < 0) {
-                offset = 0;
-            }
-            loadBuffer();
+            selectPage(fileOffset);
             index = fileOffset - offset;
+            if (index >= size) {
+                throw new IndexOutOfBoundsException("Position: " + fileOffset + ", end of stream = " + (offset + size));
+            }
         }
         return buffer[(int)index];
     }
 
 
-    protected long calcOffset(long fileOffset, boolean randomAccessStream) {
-        if (randomAccessStream) {
-            switch (cacheStrategy) {
-                case FORWARD:
-                    return fileOffset;
-                case BACKWARD:
-                    return fileOffset - buffer.length;
-                case CENTER:
-                    return fileOffset - buffer.length / 2;
+    /**
+     * Reads up to <code>len</code> bytes starting at the given file offset.
+     *
+     * @param fileOffset offset of the first byte to read
+     * @param dst the array to copy the bytes to
+     * @param off offset in <code>dst</code>
+     * @param len maximum number of bytes to read
+     * @return the number of bytes read, -1 if <code>fileOffset</code> is at or after the end of file
+     * @throws IOException if an I/O error occurred
+     */
+    public int getBytes(long fileOffset, byte[] dst, int off, int len) throws IOException {
+        if (fileOffset < 0) {
+            throw new IndexOutOfBoundsException("Position: " + fileOffset);
+        }
+        if (fileOffset >= getFileSize()) {
+            return -1;
+        }
+        int read = 0;
+        while (read < len && fileOffset < getFileSize()) {
+            long index = fileOffset - offset;
+            if (index < 0 || index >= size) {
+                selectPage(fileOffset);
+                index = fileOffset - offset;
+                if (index >= size) {
+                    break;      // The stream is shorter than expected
+                }
+            }
+            int n = Math.min(len - read, size - (int)index);
+            System.arraycopy(buffer, (int)index, dst, off + read, n);
+            read += n;
+            fileOffset += n;
+        }
+        return read;
+    }
+
+
+    /**
+     * Makes the page containing the given offset the current one, loading it if it isn't in cache.
+     */
+    private void selectPage(long fileOffset) throws IOException {
+        long pageOffset = fileOffset - fileOffset % capacity;
+        Page page = pages.get(pageOffset);
+        if (page == null) {
+            byte[] data = null;
+            if (pages.size() >= maxPages) {
+                // Recycle the least recently used page
+                Iterator<Page> it = pages.values().iterator();
+                data = it.next().data;
+                it.remove();
             }
-        } else {
-            switch (cacheStrategy) {
-                case FORWARD:
-                    return fileOffset;
-                case BACKWARD:
-                    return fileOffset - buffer.length;
-                case CENTER:
-                    return fileOffset;
+            if (data == null) {
+                data = new byte[capacity];
             }
+            buffer = data;
+            offset = pageOffset;
+            size = 0;
+            loadBuffer();
+            if (size < 0) {
+                size = 0;
+            }
+            page = new Page(data, size);
+            pages.put(pageOffset, page);
+        }
+        buffer = page.data;
+        offset = pageOffset;
+        size = page.size;
+    }
+
+
+    /**
+     * Drops the cached pages that overlap the given range, they are reloaded when they are accessed next.
+     *
+     * @param fromOffset offset of the first byte of the range
+     * @param toOffset offset following the last byte of the range
+     */
+    protected void invalidate(long fromOffset, long toOffset) {
+        Iterator<Map.Entry<Long, Page>> it = pages.entrySet().iterator();
+        while (it.hasNext()) {
+            long pageOffset = it.next().getKey();
+            if (pageOffset < toOffset && pageOffset + capacity > fromOffset) {
+                it.remove();
+            }
+        }
+        if (offset < toOffset && offset + capacity > fromOffset) {
+            size = 0;
         }
-        return fileOffset;
+    }
+
+
+    /**
+     * Drops all cached data and closes the stream, so that the file is read again when it is accessed next.
+     * This must be called once the file has been modified.
+     *
+     * @throws IOException if the stream could not be closed
+     */
+    public void invalidate() throws IOException {
+        pages.clear();
+        size = 0;
+        streamSize = -1;
+        closeStream();
     }
 
     /**
@@ -141,12 +254,13 @@ public abstract class AbstractByteBuffer {
     public void close() throws IOException {
         size = 0;
         buffer = null;
+        pages.clear();
         closeStream();
     }
 
 
     /**
-     *
+     * Returns the size of a page
      * @return
      */
     public int getCapacity() {
@@ -160,7 +274,7 @@ public abstract class AbstractByteBuffer {
 
 
     /**
-     * Load file data from #offset and fills #buffer
+     * Load file data from #offset and fills #buffer. Up to #capacity bytes are expected, less only at the end of file.
      *
      * @throws IOException
      *
@@ -176,13 +290,28 @@ public abstract class AbstractByteBuffer {
      */
     abstract protected boolean supportRandomAccess();
 
+    @Deprecated
     public CacheStrategy getCacheStrategy() {
         return cacheStrategy;
     }
 
+    @Deprecated
     public void setCacheStrategy(CacheStrategy cacheStrategy) {
         this.cacheStrategy = cacheStrategy;
     }
 
 
+    /**
+     * A cached page
+     */
+    private static class Page {
+        private final byte[] data;
+        private final int size;
+
+        private Page(byte[] data, int size) {
+            this.data = data;
+            this.size = size;
+        }
+    }
+
 }
@@ -18,6 +18,8 @@
 package ru.trolsoft.hexeditor.data;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 
 
 public class FileByteBuffer extends AbstractByteBuffer {
@@ -49,6 +51,7 @@ public class FileByteBuffer extends AbstractByteBuffer {
     protected void closeStream() throws IOException {
         if (file != null) {
             file.close();
+            file = null;
         }
     }
 
@@ -59,8 +62,15 @@ public class FileByteBuffer extends AbstractByteBuffer {
 
     @Override
     protected void loadBuffer() throws IOException {
-        getFile().seek(offset);
-        size = getFile().read(buffer);
+        // Positional read, no need to seek
+        FileChannel channel = getFile().getChannel();
+        ByteBuffer bb = ByteBuffer.wrap(buffer, 0, capacity);
+        while (bb.hasRemaining()) {
+            if (channel.read(bb, offset + bb.position()) < 0) {
+                break;
+            }
+        }
+        size = bb.position();
     }
 
     @Override
@@ -41,6 +41,7 @@ public class MuCommanderByteBuffer extends AbstractByteBuffer {
     protected void closeStream() throws IOException {
         if (is != null) {
             is.close();
+            is = null;
         }
     }
 
@@ -0,0 +1,502 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2013-2014 Oleg Trifonov
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ru.trolsoft.hexeditor.data;
+
+import com.mucommander.commons.io.BufferPool;
+import com.mucommander.commons.io.RandomAccessOutputStream;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Editable view of a file, stored as a piece table: the contents are a sequence of pieces, each of them referring
+ * either to a range of the original file or to a range of an append-only buffer that holds the inserted and
+ * overwritten bytes. The original file is never modified nor loaded entirely, so editing a file of any size is
+ * immediate and only uses memory for the changes.
+ *
+ * Every change is recorded as the pieces it removed and added, which makes undo and redo trivial. Being an
+ * {@link AbstractByteBuffer} itself, a piece table can be viewed and searched like the file it edits.
+ */
+public class PieceTable extends AbstractByteBuffer {
+
+    private static final byte[] EMPTY = new byte[0];
+
+    /**
+     * Number of pages of edited data kept in cache, the original file has its own cache
+     */
+    private static final int MAX_PAGES = 4;
+
+    /**
+     * The original file
+     */
+    private AbstractByteBuffer source;
+
+    /**
+     * Inserted and overwritten bytes, never modified once written
+     */
+    private byte[] addBuffer = new byte[1024];
+    private int addLength;
+
+    private final List<Piece> pieces = new ArrayList<>();
+
+    /**
+     * Offset of each piece, followed by the total length
+     */
+    private long[] pieceOffsets = new long[16];
+
+    /**
+     * Length of the edited data
+     */
+    private long length;
+
+    /**
+     * Applied changes followed by undone ones
+     */
+    private final List<Edit> edits = new ArrayList<>();
+
+    /**
+     * Number of applied changes
+     */
+    private int editCount;
+
+    /**
+     * Value of {@link #editCount} when the data was last saved, -1 if that state can't be reached anymore
+     */
+    private int savedEditCount;
+
+
+    public PieceTable(AbstractByteBuffer source) throws IOException {
+        super(source.getCapacity(), MAX_PAGES);
+        setSource(source);
+    }
+
+
+    private void setSource(AbstractByteBuffer source) throws IOException {
+        this.source = source;
+        pieces.clear();
+        length = source.getFileSize();
+        if (length > 0) {
+            pieces.add(new Piece(false, 0, length));
+        }
+        updateOffsets(0);
+        addLength = 0;
+        edits.clear();
+        editCount = 0;
+        savedEditCount = 0;
+        invalidate(0, Long.MAX_VALUE);
+        streamSize = length;
+    }
+
+
+    /**
+     * Inserts bytes at the given position.
+     *
+     * @param pos offset of the first inserted byte
+     * @param bytes the bytes to insert
+     */
+    public void insert(long pos, byte[] bytes) {
+        replace(pos, 0, bytes);
+    }
+
+    /**
+     * Overwrites bytes at the given position, the data is extended if it is too short.
+     *
+     * @param pos offset of the first overwritten byte
+     * @param bytes the new bytes
+     */
+    public void overwrite(long pos, byte[] bytes) {
+        replace(pos, Math.min(bytes.length, length - pos), bytes);
+    }
+
+    /**
+     * Deletes bytes at the given position.
+     *
+     * @param pos offset of the first deleted byte
+     * @param len number of bytes to delete
+     */
+    public void delete(long pos, long len) {
+        replace(pos, len, EMPTY);
+    }
+
+    /**
+     * Replaces <code>len</code> bytes at the given position with the given ones.
+     *
+     * @param pos offset of the first replaced byte
+     * @param len number of bytes to remove
+     * @param bytes the bytes to insert in place of the removed ones
+     * @throws IndexOutOfBoundsException if the range to remove is out of the data
+     */
+    public void replace(long pos, long len, byte[] bytes) {
+        if (pos < 0 || len < 0 || pos + len > length) {
+            throw new IndexOutOfBoundsException("Position: " + pos + ", length: " + len + ", size = " + length);
+        }
+        if (len == 0 && bytes.length == 0) {
+            return;
+        }
+        final long end = pos + len;
+
+        // Pieces [first, last] are replaced
+        int first = findPiece(pos);
+        if (first > 0 && pos == pieceOffsets[first] && isLastAddPiece(pieces.get(first - 1))) {
+            // Extend the previous change rather than creating a new piece for every typed byte
+            first--;
+        }
+        int last;
+        if (len > 0) {
+            last = findPiece(end - 1);
+        } else {
+            last = pos > pieceOffsets[first] ? first : first - 1;
+        }
+
+        List<Piece> added = new ArrayList<>(3);
+        Piece left = null;
+        if (pos > pieceOffsets[first]) {
+            Piece p = pieces.get(first);
+            left = new Piece(p.add, p.start, pos - pieceOffsets[first]);
+        }
+        if (bytes.length > 0) {
+            Piece p = append(bytes);
+            if (left != null && left.add && left.start + left.length == p.start) {
+                left = new Piece(true, left.start, left.length + p.length);
+            } else {
+                if (left != null) {
+                    added.add(left);
+                }
+                left = p;
+            }
+        }
+        if (left != null) {
+            added.add(left);
+        }
+        if (last >= first && end < pieceOffsets[last + 1]) {
+            Piece p = pieces.get(last);
+            long skip = end - pieceOffsets[last];
+            added.add(new Piece(p.add, p.start + skip, p.length - skip));
+        }
+
+        List<Piece> removed = new ArrayList<>(pieces.subList(first, last + 1));
+        Edit edit = new Edit(first, removed.toArray(new Piece[removed.size()]), added.toArray(new Piece[added.size()]), pos,
+                len, bytes.length);
+
+        // Drop the undone changes, which can't be redone anymore
+        if (savedEditCount > editCount) {
+            savedEditCount = -1;
+        }
+        edits.subList(editCount, edits.size()).clear();
+        edits.add(edit);
+        editCount++;
+
+        apply(edit.index, edit.removed.length, edit.added, edit.position, len != bytes.length ? Long.MAX_VALUE : end);
+    }
+
+
+    /**
+     * Undoes the last change.
+     *
+     * @return the position of the undone change, -1 if there is nothing to undo
+     */
+    public long undo() {
+        if (!canUndo()) {
+            return -1;
+        }
+        Edit edit = edits.get(--editCount);
+        apply(edit.index, edit.added.length, edit.removed, edit.position,
+                edit.removedLength != edit.addedLength ? Long.MAX_VALUE : edit.position + edit.removedLength);
+        return edit.position;
+    }
+
+    /**
+     * Redoes the last undone change.
+     *
+     * @return the position of the redone change, -1 if there is nothing to redo
+     */
+    public long redo() {
+        if (!canRedo()) {
+            return -1;
+        }
+        Edit edit = edits.get(editCount++);
+        apply(edit.index, edit.removed.length, edit.added, edit.position,
+                edit.removedLength != edit.addedLength ? Long.MAX_VALUE : edit.position + edit.addedLength);
+        return edit.position;
+    }
+
+    public boolean canUndo() {
+        return editCount > 0;
+    }
+
+    public boolean canRedo() {
+        return editCount < edits.size();
+    }
+
+    /**
+     * Returns <code>true</code> if the data differs from the last saved state.
+     * @return
+     */
+    public boolean isModified() {
+        return editCount != savedEditCount;
+    }
+
+
+    /**
+     * Returns <code>true</code> if the changes can be written over the original file without moving any of its
+     * bytes, i.e. if the size is unchanged and every byte of the original file is still at its original offset.
+     *
+     * @return true if {@link #writeChanges(RandomAccessOutputStream)} can be used to save the data
+     */
+    public boolean canSaveInPlace() throws IOException {
+        if (length != source.getFileSize()) {
+            return false;
+        }
+        for (int i = 0; i < pieces.size(); i++) {
+            Piece p = pieces.get(i);
+            if (!p.add && p.start != pieceOffsets[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Writes the changed bytes over the original file, which must be possible according to {@link #canSaveInPlace()}.
+     *
+     * @param out a stream writing to the original file
+     * @throws IOException if an I/O error occurred
+     */
+    public void writeChanges(RandomAccessOutputStream out) throws IOException {
+        for (int i = 0; i < pieces.size(); i++) {
+            Piece p = pieces.get(i);
+            if (p.add) {
+                out.seek(pieceOffsets[i]);
+                out.write(addBuffer, (int)p.start, (int)p.length);
+            }
+        }
+    }
+
+    /**
+     * Writes the whole data to the given stream, which is not closed.
+     *
+     * @param out the stream to write to
+     * @throws IOException if an I/O error occurred
+     */
+    public void write(OutputStream out) throws IOException {
+        byte[] buf = BufferPool.getByteArray(getCapacity());
+        try {
+            long pos = 0;
+            while (pos < length) {
+                int n = (int)Math.min(buf.length, length - pos);
+                read(pos, buf, 0, n);
+                out.write(buf, 0, n);
+                pos += n;
+            }
+        } finally {
+            BufferPool.releaseByteArray(buf);
+        }
+    }
+
+    /**
+     * Marks the data as saved and makes the given buffer, which must hold the saved data, the new original file.
+     * The change history is discarded as it refers to the previous original file.
+     *
+     * @param savedSource the saved file, may be the current source which is then reloaded
+     * @throws IOException if an I/O error occurred
+     */
+    public void setSaved(AbstractByteBuffer savedSource) throws IOException {
+        if (savedSource == source) {
+            source.invalidate();
+        } else {
+            source.close();
+        }
+        addBuffer = new byte[1024];
+        setSource(savedSource);
+    }
+
+    /**
+     * Returns the length of the edited data.
+     * @return
+     */
+    public long getLength() {
+        return length;
+    }
+
+    /**
+     * Returns the number of pieces the data is made of.
+     * @return
+     */
+    public int getPieceCount() {
+        return pieces.size();
+    }
+
+
+    /**
+     * Replaces <code>nbRemoved</code> pieces at <code>index</code> with the given ones.
+     *
+     * @param invalidateTo end of the changed range, for the cache
+     */
+    private void apply(int index, int nbRemoved, Piece[] added, long position, long invalidateTo) {
+        List<Piece> range = pieces.subList(index, index + nbRemoved);
+        range.clear();
+        range.addAll(Arrays.asList(added));
+        updateOffsets(index);
+        streamSize = length;
+        invalidate(position, invalidateTo);
+    }
+
+    /**
+     * Recalculates the offsets of the pieces that follow the given index.
+     */
+    private void updateOffsets(int index) {
+        final int n = pieces.size();
+        if (pieceOffsets.length < n + 1) {
+            pieceOffsets = Arrays.copyOf(pieceOffsets, Math.max(n + 1, pieceOffsets.length * 2));
+        }
+        long offs = index == 0 ? 0 : pieceOffsets[index];
+        for (int i = index; i < n; i++) {
+            pieceOffsets[i] = offs;
+            offs += pieces.get(i).length;
+        }
+        pieceOffsets[n] = offs;
+        length = offs;
+    }
+
+    /**
+     * Returns the index of the piece containing the given offset, the number of pieces for the end of data.
+     */
+    private int findPiece(long pos) {
+        final int n = pieces.size();
+        int i = Arrays.binarySearch(pieceOffsets, 0, n + 1, pos);
+        if (i < 0) {
+            i = -i - 2;
+        }
+        return Math.min(i, n);
+    }
+
+    /**
+     * Returns <code>true</code> if the bytes of the given piece are the last ones of the add buffer.
+     */
+    private boolean isLastAddPiece(Piece p) {
+        return p.add && p.start + p.length == addLength;
+    }
+
+    /**
+     * Appends bytes to the add buffer and returns the piece referring to them.
+     */
+    private Piece append(byte[] bytes) {
+        if (addLength + bytes.length > addBuffer.length) {
+            long newLength = Math.max((long)addLength + bytes.length, addBuffer.length * 2L);
+            if (newLength > Integer.MAX_VALUE - 8) {
+                throw new OutOfMemoryError("Too many changes");
+            }
+            addBuffer = Arrays.copyOf(addBuffer, (int)newLength);
+        }
+        System.arraycopy(bytes, 0, addBuffer, addLength, bytes.length);
+        Piece p = new Piece(true, addLength, bytes.length);
+        addLength += bytes.length;
+        return p;
+    }
+
+    /**
+     * Copies <code>len</code> bytes of the edited data, which must be available, to the given array.
+     */
+    private void read(long pos, byte[] dst, int off, int len) throws IOException {
+        int i = findPiece(pos);
+        while (len > 0) {
+            Piece p = pieces.get(i);
+            long skip = pos - pieceOffsets[i];
+            int n = (int)Math.min(len, p.length - skip);
+            if (p.add) {
+                System.arraycopy(addBuffer, (int)(p.start + skip), dst, off, n);
+            } else {
+                int read = 0;
+                while (read < n) {
+                    int r = source.getBytes(p.start + skip + read, dst, off + read, n - read);
+                    if (r <= 0) {
+                        throw new IOException("Unexpected end of file at " + (p.start + skip + read));
+                    }
+                    read += r;
+                }
+            }
+            pos += n;
+            off += n;
+            len -= n;
+            i++;
+        }
+    }
+
+
+    @Override
+    protected void closeStream() throws IOException {
+        source.close();
+    }
+
+    @Override
+    protected long getStreamSize() throws IOException {
+        return length;
+    }
+
+    @Override
+    protected void loadBuffer() throws IOException {
+        size = (int)Math.min(capacity, length - offset);
+        read(offset, buffer, 0, size);
+    }
+
+    @Override
+    protected boolean supportRandomAccess() {
+        return true;
+    }
+
+
+    /**
+     * A range of the original file or of the add buffer
+     */
+    private static class Piece {
+        private final boolean add;
+        private final long start;
+        private final long length;
+
+        private Piece(boolean add, long start, long length) {
+            this.add = add;
+            this.start = start;
+            this.length = length;
+        }
+    }
+
+    /**
+     * A change: the pieces that replaced others at a given index
+     */
+    private static class Edit {
+        private final int index;
+        private final Piece[] removed;
+        private final Piece[] added;
+        /** Offset of the change, and number of bytes removed and added there */
+        private final long position;
+        private final long removedLength;
+        private final long addedLength;
+
+        private Edit(int index, Piece[] removed, Piece[] added, long position, long removedLength, long addedLength) {
+            this.index = index;
+            this.removed = removed;
+            this.added = added;
+            this.position = position;
+            this.removedLength = removedLength;
+            this.addedLength = addedLength;
+        }
+    }
+}
@@ -17,12 +17,21 @@
  */
 package ru.trolsoft.hexeditor.search;
 
+import com.mucommander.commons.io.BufferPool;
 import ru.trolsoft.hexeditor.data.AbstractByteBuffer;
+import ru.trolsoft.utils.search.AhoCorasickSearcher;
+import ru.trolsoft.utils.search.BlockSearcher;
+import ru.trolsoft.utils.search.HorspoolSearcher;
+import ru.trolsoft.utils.search.SearchUtils;
 
 import java.io.IOException;
+import java.io.InputStream;
 
 /**
- * Search in AbstractByteBuffer
+ * Search in AbstractByteBuffer.
+ *
+ * The data is searched by blocks read with {@link AbstractByteBuffer#getBytes(long, byte[], int, int)}, using the
+ * Boyer-Moore-Horspool algorithm for a single pattern and Aho-Corasick for several ones.
  */
 public class ByteBufferSearchUtils {
 
@@ -35,139 +44,141 @@ public class ByteBufferSearchUtils {
      * @return the offset of the first occurrence of the specified data, at the specified offset, or -1 if there is no such occurrence
      */
     public static long indexOf(AbstractByteBuffer data, byte[] pattern, long fromOffset) throws IOException {
-        long fileSize = data.getFileSize();
-        if (fileSize <= 0 || pattern.length == 0) {
+        if (pattern.length == 0) {
             return -1;
         }
-        int[] failure = computeFailure(pattern);
-        AbstractByteBuffer.CacheStrategy cacheStrategy = data.getCacheStrategy();
-        data.setCacheStrategy(AbstractByteBuffer.CacheStrategy.FORWARD);
-
-        int j = 0;
-        for (long i = fromOffset; i < fileSize; i++) {
-            while (j > 0 && pattern[j] != data.getByte(i)) {
-                j = failure[j - 1];
-            }
-            if (pattern[j] == data.getByte(i)) {
-                j++;
-            }
-            if (j == pattern.length) {
-                data.setCacheStrategy(cacheStrategy);
-                return i - pattern.length + 1;
-            }
-        }
-        data.setCacheStrategy(cacheStrategy);
-        return -1;
+        return indexOf(data, new HorspoolSearcher(pattern), fromOffset);
     }
 
+    /**
+     * Returns the offset within the ByteBuffer of the first occurrence of any of the specified patterns, starting at
+     * the specified offset.
+     *
+     * @param data buffer for search
+     * @param patterns the data to search for, none of them can be empty
+     * @param fromOffset the offset from which to start the search
+     * @return the offset of the first occurrence, or -1 if there is no such occurrence
+     */
     public static long indexOf(AbstractByteBuffer data, byte[][] patterns, long fromOffset) throws IOException {
-        long fileSize = data.getFileSize();
-        if (fileSize <= 0 || patterns.length == 0) {
+        if (patterns.length == 0) {
             return -1;
         }
-        int[][] failures = new int[patterns.length][];
-        for (int i = 0; i < patterns.length; i++) {
-            failures[i] = computeFailure(patterns[i]);
-        }
-        AbstractByteBuffer.CacheStrategy cacheStrategy = data.getCacheStrategy();
-        data.setCacheStrategy(AbstractByteBuffer.CacheStrategy.FORWARD);
+        return indexOf(data, new AhoCorasickSearcher(patterns), fromOffset);
+    }
 
-        int[] j = new int[patterns.length];
-        for (int i = 0; i < j.length; i++) {
-            j[i] = 0;
+    /**
+     * Returns the offset within the ByteBuffer of the first match of the specified searcher, starting at the specified
+     * offset.
+     *
+     * @param data buffer for search
+     * @param searcher the searcher of the pattern(s)
+     * @param fromOffset the offset from which to start the search
+     * @return the offset of the first match, or -1 if there is no such match
+     */
+    public static long indexOf(AbstractByteBuffer data, BlockSearcher searcher, long fromOffset) throws IOException {
+        if (fromOffset < 0) {
+            fromOffset = 0;
         }
-/*
-        for (long i = fromOffset; i < fileSize; i++) {
-            while (j > 0 && pattern[j] != data.getByte(i)) {
-                j = failure[j - 1];
-            }
-            if (pattern[j] == data.getByte(i)) {
-                j++;
-            }
-            if (j == pattern.length) {
-                data.setCacheStrategy(cacheStrategy);
-                return i - pattern.length + 1;
-            }
+        if (fromOffset >= data.getFileSize()) {
+            return -1;
         }
-        */
-        data.setCacheStrategy(cacheStrategy);
-        return -1;
+        long pos = SearchUtils.indexOf(new ByteBufferInputStream(data, fromOffset), searcher);
+        return pos < 0 ? -1 : fromOffset + pos;
     }
 
-
+    /**
+     * Returns the offset within the ByteBuffer of the last occurrence of the specified data that starts at or before
+     * the specified offset.
+     *
+     * @param data buffer for search
+     * @param pattern the data to search for
+     * @param fromOffset the offset from which to start the search backward
+     * @return the offset of the last occurrence, or -1 if there is no such occurrence
+     */
     public static long indexOfBackward(AbstractByteBuffer data, byte[] pattern, long fromOffset) throws IOException {
-        byte[] patternInvert = new byte[pattern.length];
-        for (int i = 0; i < pattern.length; i++) {
-            patternInvert[i] = pattern[pattern.length-i-1];
+        long fileSize = data.getFileSize();
+        if (fileSize <= 0 || pattern.length == 0 || fromOffset < 0) {
+            return -1;
         }
-        int[] failure = computeFailure(patternInvert);
-        AbstractByteBuffer.CacheStrategy cacheStrategy = data.getCacheStrategy();
-        data.setCacheStrategy(AbstractByteBuffer.CacheStrategy.BACKWARD);
-
-        int j = 0;
-        for (long i = fromOffset; i >= 0; i--) {
-            while (j > 0 && patternInvert[j] != data.getByte(i)) {
-                j = failure[j - 1];
-            }
-            if (pattern[j] == data.getByte(i)) {
-                j++;
-            }
-            if (j == pattern.length) {
-                data.setCacheStrategy(cacheStrategy);
-                return i - pattern.length + 1;
+        HorspoolSearcher searcher = new HorspoolSearcher(pattern);
+        byte[] buffer = BufferPool.getByteArray(Math.max(SearchUtils.BLOCK_SIZE, 2 * pattern.length));
+        try {
+            long end = Math.min(fileSize, fromOffset + pattern.length);
+            while (end >= pattern.length) {
+                long start = Math.max(0, end - buffer.length);
+                int len = (int)(end - start);
+                readFully(data, start, buffer, len);
+                int pos = searcher.lastIndexOf(buffer, 0, len);
+                if (pos >= 0) {
+                    return start + pos;
+                }
+                if (start == 0) {
+                    break;
+                }
+                // The start of each block is kept at the end of the previous one, for the matches that span two blocks
+                end = start + pattern.length - 1;
             }
+            return -1;
+        } finally {
+            BufferPool.releaseByteArray(buffer);
         }
-        data.setCacheStrategy(cacheStrategy);
-        return -1;
     }
 
 
-
     /**
-     * Knuth-Morris-Pratt Algorithm for Pattern Matching
-     * Finds the first occurrence of the pattern in the text.
+     * Finds the first occurrence of the pattern in the array.
      */
     public static int indexOf(byte[] data, byte[] pattern) {
-        int[] failure = computeFailure(pattern);
-
-        int j = 0;
-        if (data.length == 0) {
+        if (pattern.length == 0) {
             return -1;
         }
+        return new HorspoolSearcher(pattern).indexOf(data, 0, data.length);
+    }
 
-        for (int i = 0; i < data.length; i++) {
-            while (j > 0 && pattern[j] != data[i]) {
-                j = failure[j - 1];
-            }
-            if (pattern[j] == data[i]) {
-                j++;
-            }
-            if (j == pattern.length) {
-                return i - pattern.length + 1;
+
+    private static void readFully(AbstractByteBuffer data, long offset, byte[] buffer, int len) throws IOException {
+        int read = 0;
+        while (read < len) {
+            int n = data.getBytes(offset + read, buffer, read, len - read);
+            if (n <= 0) {
+                throw new IOException("Unexpected end of data at " + (offset + read));
             }
+            read += n;
         }
-        return -1;
     }
 
+
     /**
-     * Computes the failure function using a boot-strapping process,
-     * where the pattern is matched against itself.
+     * Reads an AbstractByteBuffer from a given offset
      */
-    private static int[] computeFailure(byte[] pattern) {
-        int[] failure = new int[pattern.length];
+    private static class ByteBufferInputStream extends InputStream {
+        private final AbstractByteBuffer data;
+        private long offset;
 
-        int j = 0;
-        for (int i = 1; i < pattern.length; i++) {
-            while (j > 0 && pattern[j] != pattern[i]) {
-                j = failure[j - 1];
+        private ByteBufferInputStream(AbstractByteBuffer data, long offset) {
+            this.data = data;
+            this.offset = offset;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return read(b, 0, 1) < 0 ? -1 : b[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
             }
-            if (pattern[j] == pattern[i]) {
-                j++;
+            int n = data.getBytes(offset, b, off, len);
+            if (n <= 0) {
+                // No bytes are returned when the file is shorter than its cached size, e.g. if it has been truncated
+                return -1;
             }
-            failure[i] = j;
+            offset += n;
+            return n;
         }
-        return failure;
     }
 
-
 }
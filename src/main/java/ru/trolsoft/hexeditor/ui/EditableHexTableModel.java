@@ -0,0 +1,107 @@
+package ru.trolsoft.hexeditor.ui;
+
+import ru.trolsoft.hexeditor.data.PieceTable;
+
+/**
+ * The table model used by the <code>JTable</code> in the hex editor. Changes are made to a {@link PieceTable} and
+ * the table is notified of the rows that have to be repainted.
+ */
+public class EditableHexTableModel extends ViewerHexTableModel {
+
+    private static final long serialVersionUID = 1L;
+
+    private final PieceTable pieceTable;
+
+
+    public EditableHexTableModel(PieceTable pieceTable) {
+        super(pieceTable);
+        this.pieceTable = pieceTable;
+    }
+
+
+    public PieceTable getPieceTable() {
+        return pieceTable;
+    }
+
+
+    /**
+     * Replaces the byte at the given offset, or appends it if the offset is the end of file
+     * @param offset
+     * @param value
+     */
+    public void overwrite(long offset, byte value) {
+        pieceTable.overwrite(offset, new byte[] {value});
+        fireChanged(offset);
+    }
+
+
+    /**
+     * Inserts a byte at the given offset
+     * @param offset
+     * @param value
+     */
+    public void insert(long offset, byte value) {
+        pieceTable.insert(offset, new byte[] {value});
+        fireChanged(offset);
+    }
+
+
+    /**
+     * Deletes <code>len</code> bytes at the given offset
+     * @param offset
+     * @param len
+     */
+    public void delete(long offset, long len) {
+        pieceTable.delete(offset, len);
+        fireChanged(offset);
+    }
+
+
+    /**
+     * Undoes the last change
+     * @return the offset of the undone change, -1 if there was nothing to undo
+     */
+    public long undo() {
+        long offset = pieceTable.undo();
+        if (offset >= 0) {
+            fireChanged(offset);
+        }
+        return offset;
+    }
+
+
+    /**
+     * Redoes the last undone change
+     * @return the offset of the redone change, -1 if there was nothing to redo
+     */
+    public long redo() {
+        long offset = pieceTable.redo();
+        if (offset >= 0) {
+            fireChanged(offset);
+        }
+        return offset;
+    }
+
+
+    /**
+     * Reloads the size once the data has been saved
+     */
+    public void reload() {
+        fileSize = pieceTable.getLength();
+        fireTableDataChanged();
+    }
+
+
+    private void fireChanged(long offset) {
+        long newSize = pieceTable.getLength();
+        if (newSize != fileSize) {
+            // Every row after the change has been shifted
+            fileSize = newSize;
+            fireTableDataChanged();
+        } else {
+            int row = (int)(offset / getNumberOfHexColumns());
+            fireTableRowsUpdated(row, row);
+        }
+    }
+
+}
@@ -10,6 +10,7 @@ import javax.swing.table.TableColumn;
 import javax.swing.table.TableColumnModel;
 import java.awt.*;
 import java.awt.event.KeyEvent;
+import java.io.IOException;
 import java.util.Map;
 
 /**
@@ -50,6 +51,16 @@ public class HexTable extends JTable {
     private long leadSelectionIndex;
     private long anchorSelectionIndex;
 
+    /**
+     * Typed bytes are inserted if true, overwrite the existing ones otherwise
+     */
+    private boolean insertMode;
+
+    /**
+     * True when the high nibble of the byte at the cursor has just been typed
+     */
+    private boolean lowNibble;
+
     private OnOffsetChangeListener onOffsetChangeListener;
 
     public HexTable(ViewerHexTableModel model) {
@@ -108,6 +119,7 @@ public class HexTable extends JTable {
 
         final long prevSelectionIndexFrom = anchorSelectionIndex;
         final long prevSelectionIndexTo = leadSelectionIndex;
+        lowNibble = false;
 
         if (extend) {
             leadSelectionIndex = cellToOffset(row, col);
@@ -394,6 +406,7 @@ public class HexTable extends JTable {
         // Clear the old selection (may not be necessary).
         //repaintSelection();
 
+        lowNibble = false;
         anchorSelectionIndex = startOffs;
         leadSelectionIndex = endOffs;
 
@@ -596,6 +609,10 @@ public class HexTable extends JTable {
 
     @Override
     protected void processKeyEvent (KeyEvent e) {
+        if (model instanceof EditableHexTableModel && processEditKeyEvent(e, (EditableHexTableModel)model)) {
+            e.consume();
+            return;
+        }
         // TODO: Convert into Actions and put into InputMap/ActionMap?
         final int hexColumns = model.getNumberOfHexColumns();
         final long lastOffset = model.getSize() - 1;
@@ -645,16 +662,95 @@ public class HexTable extends JTable {
                     changeSelectionByOffset(offs, extend);
                     e.consume();
                     return;
-                case KeyEvent.VK_BACK_SPACE:
-//System.out.println();
-//Profiler.print();
-                    //System.out.println(Profiler.getTime());
-                    return;
             }
         }
         super.processKeyEvent(e);
     }
 
+
+    /**
+     * Handles the keys that change the data: hex digits, Insert, Delete and Backspace.
+     *
+     * @return true if the event has been processed
+     */
+    private boolean processEditKeyEvent(KeyEvent e, EditableHexTableModel editableModel) {
+        if (e.isControlDown() || e.isAltDown() || e.isMetaDown()) {
+            return false;
+        }
+        final long offset = Math.max(leadSelectionIndex, 0);
+        if (e.getID() == KeyEvent.KEY_TYPED) {
+            int digit = Character.digit(e.getKeyChar(), 16);
+            if (digit < 0) {
+                return false;
+            }
+            if (lowNibble) {
+                byte b = (byte)((getByte(offset) & 0xf0) | digit);
+                editableModel.overwrite(offset, b);
+                changeSelectionByOffset(offset + 1, false);
+            } else {
+                if (insertMode || offset >= model.getSize()) {
+                    editableModel.insert(offset, (byte)(digit << 4));
+                } else {
+                    editableModel.overwrite(offset, (byte)((digit << 4) | (getByte(offset) & 0x0f)));
+                }
+                setSelectionByOffsets(offset, offset);
+                lowNibble = true;
+            }
+            return true;
+        }
+        if (e.getID() != KeyEvent.KEY_PRESSED) {
+            return false;
+        }
+        switch (e.getKeyCode()) {
+            case KeyEvent.VK_INSERT:
+                setInsertMode(!insertMode);
+                return true;
+            case KeyEvent.VK_DELETE:
+                if (model.getSize() > 0) {
+                    long start = getSmallestSelectionIndex();
+                    editableModel.delete(start, getLargestSelectionIndex() - start + 1);
+                    gotoOffset(start);
+                }
+                return true;
+            case KeyEvent.VK_BACK_SPACE:
+                if (getSmallestSelectionIndex() != getLargestSelectionIndex()) {
+                    long start = getSmallestSelectionIndex();
+                    editableModel.delete(start, getLargestSelectionIndex() - start + 1);
+                    gotoOffset(start);
+                } else if (offset > 0) {
+                    editableModel.delete(offset - 1, 1);
+                    gotoOffset(offset - 1);
+                }
+                return true;
+        }
+        return false;
+    }
+
+    private int getByte(long offset) {
+        try {
+            return model.getBuffer().getByte(offset) & 0xff;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return 0;
+        }
+    }
+
+
+    /**
+     * Returns true if typed bytes are inserted, false if they overwrite the existing ones
+     * @return
+     */
+    public boolean isInsertMode() {
+        return insertMode;
+    }
+
+    public void setInsertMode(boolean insertMode) {
+        this.insertMode = insertMode;
+        if (onOffsetChangeListener != null) {
+            onOffsetChangeListener.onChange(anchorSelectionIndex);
+        }
+    }
+
     public OnOffsetChangeListener getOnOffsetChangeListener() {
         return onOffsetChangeListener;
     }
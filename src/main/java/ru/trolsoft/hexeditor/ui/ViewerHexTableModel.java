@@ -36,6 +36,15 @@ public class ViewerHexTableModel extends AbstractTableModel {
     }
 
 
+    /**
+     * Returns the buffer the data is read from
+     * @return
+     */
+    public AbstractByteBuffer getBuffer() {
+        return buffer;
+    }
+
+
     /**
      * Get file size
      * @return
@@ -0,0 +1,128 @@
+/*
+ * This file is part of trolCommander, http://www.trolsoft.ru/soft/trolcommander
+ * Copyright (C) 2013-2014 Oleg Trifonov
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ru.trolsoft.utils.search;
+
+import java.util.Arrays;
+
+/**
+ * Aho-Corasick search of several patterns at once. The patterns are compiled into an automaton with a transition for
+ * every byte value, so each searched byte costs a single table lookup whatever the number of patterns.
+ */
+public class AhoCorasickSearcher implements BlockSearcher {
+
+    /** Transitions, 256 per state, state 0 is the root */
+    private final int[] transitions;
+
+    /** Length of the longest pattern that ends at each state, 0 if none does */
+    private final int[] matchLengths;
+
+    private final int maxLength;
+
+
+    public AhoCorasickSearcher(byte[][] patterns) {
+        int nbStates = 1;
+        int maxLength = 0;
+        for (byte[] pattern : patterns) {
+            if (pattern.length == 0) {
+                throw new IllegalArgumentException("Empty pattern");
+            }
+            nbStates += pattern.length;
+            maxLength = Math.max(maxLength, pattern.length);
+        }
+        this.maxLength = maxLength;
+
+        // Build the trie, -1 meaning no transition yet
+        int[] trie = new int[nbStates * 256];
+        Arrays.fill(trie, -1);
+        int[] lengths = new int[nbStates];
+        int count = 1;
+        for (byte[] pattern : patterns) {
+            int state = 0;
+            for (byte b : pattern) {
+                int index = state * 256 + (b & 0xff);
+                if (trie[index] < 0) {
+                    trie[index] = count++;
+                }
+                state = trie[index];
+            }
+            lengths[state] = pattern.length;
+        }
+
+        // Complete the transitions with the failure links, in breadth-first order so that the failure state of a
+        // state is complete before the state itself
+        int[] failures = new int[count];
+        int[] queue = new int[count];
+        int head = 0;
+        int tail = 0;
+        for (int b = 0; b < 256; b++) {
+            int next = trie[b];
+            if (next < 0) {
+                trie[b] = 0;
+            } else {
+                failures[next] = 0;
+                queue[tail++] = next;
+            }
+        }
+        while (head < tail) {
+            int state = queue[head++];
+            lengths[state] = Math.max(lengths[state], lengths[failures[state]]);
+            for (int b = 0; b < 256; b++) {
+                int index = state * 256 + b;
+                int next = trie[index];
+                int failureNext = trie[failures[state] * 256 + b];
+                if (next < 0) {
+                    trie[index] = failureNext;
+                } else {
+                    failures[next] = failureNext;
+                    queue[tail++] = next;
+                }
+            }
+        }
+
+        this.transitions = count == nbStates ? trie : Arrays.copyOf(trie, count * 256);
+        this.matchLengths = count == nbStates ? lengths : Arrays.copyOf(lengths, count);
+    }
+
+
+    @Override
+    public int indexOf(byte[] data, int from, int to) {
+        final int[] transitions = this.transitions;
+        final int[] matchLengths = this.matchLengths;
+        int state = 0;
+        int best = -1;
+        int end = to;
+        for (int i = from; i < end; i++) {
+            state = transitions[(state << 8) + (data[i] & 0xff)];
+            int len = matchLengths[state];
+            if (len > 0) {
+                int start = i - len + 1;
+                if (best < 0 || start < best) {
+                    best = start;
+                    // Matches that start before this one end less than maxLength bytes after its start
+                    end = (int)Math.min(to, (long)best + maxLength);
+                }
+            }
+        }
+        return best;
+    }
+
+    @Override
+    public int getMaxLength() {
+        return maxLength;
+    }
+}
@@ -0,0 +1,43 @@
+/*
+ * This file is part of trolCommander, http://www.trolsoft.ru/soft/trolcommander
+ * Copyright (C) 2013-2014 Oleg Trifonov
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ru.trolsoft.utils.search;
+
+/**
+ * Searches patterns in blocks of bytes. Unlike {@link SearchUtils#indexOf(SearchSourceStream, SearchPattern)}, which
+ * is given one byte at a time, a searcher works on whole arrays, where it can skip bytes that can't be part of a match.
+ *
+ * @see SearchUtils#indexOf(java.io.InputStream, BlockSearcher)
+ */
+public interface BlockSearcher {
+
+    /**
+     * Returns the offset of the leftmost match that lies entirely within <code>data[from, to)</code>.
+     *
+     * @param data the bytes to search
+     * @param from offset of the first byte to search
+     * @param to offset following the last byte to search
+     * @return the offset of the first match, -1 if there is none
+     */
+    int indexOf(byte[] data, int from, int to);
+
+    /**
+     *
+     * @return the length of the longest pattern
+     */
+    int getMaxLength();
+}
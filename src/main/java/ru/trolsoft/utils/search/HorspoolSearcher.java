@@ -0,0 +1,178 @@
+/*
+ * This file is part of trolCommander, http://www.trolsoft.ru/soft/trolcommander
+ * Copyright (C) 2013-2014 Oleg Trifonov
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ru.trolsoft.utils.search;
+
+import java.util.Arrays;
+
+/**
+ * Boyer-Moore-Horspool search of a single pattern. The pattern is compared from its last byte, and on mismatch it is
+ * shifted by up to its whole length depending on the byte under its last position, so that most bytes of the searched
+ * data are never looked at.
+ *
+ * A pattern may allow several values at a given position (see {@link SearchPattern}), e.g. to ignore case. Patterns that
+ * allow a single value everywhere are compared byte by byte, the others through a bitmask of the allowed values.
+ */
+public class HorspoolSearcher implements BlockSearcher {
+
+    private final int length;
+
+    /** The pattern if it allows a single value at each position, null otherwise */
+    private final byte[] bytes;
+
+    /** Bitmask of the values allowed at each position, 4 longs per position */
+    private final long[] masks;
+
+    /** Forward shift for each value of the byte under the last position of the pattern */
+    private final int[] shifts = new int[256];
+
+    /** Backward shift for each value of the byte under the first position of the pattern */
+    private final int[] backShifts = new int[256];
+
+
+    public HorspoolSearcher(byte[] pattern) {
+        if (pattern.length == 0) {
+            throw new IllegalArgumentException("Empty pattern");
+        }
+        this.length = pattern.length;
+        this.bytes = pattern.clone();
+        this.masks = new long[length * 4];
+        for (int i = 0; i < length; i++) {
+            int b = pattern[i] & 0xff;
+            masks[i * 4 + (b >>> 6)] |= 1L << b;
+        }
+        computeShifts();
+    }
+
+    public HorspoolSearcher(SearchPattern pattern) {
+        if (pattern.length() == 0) {
+            throw new IllegalArgumentException("Empty pattern");
+        }
+        this.length = pattern.length();
+        this.masks = new long[length * 4];
+        byte[] singleValues = new byte[length];
+        boolean single = true;
+        for (int i = 0; i < length; i++) {
+            int count = 0;
+            for (int b = 0; b < 256; b++) {
+                if (pattern.checkByte(i, b)) {
+                    masks[i * 4 + (b >>> 6)] |= 1L << b;
+                    singleValues[i] = (byte)b;
+                    count++;
+                }
+            }
+            single &= count == 1;
+        }
+        this.bytes = single ? singleValues : null;
+        computeShifts();
+    }
+
+
+    private void computeShifts() {
+        Arrays.fill(shifts, length);
+        Arrays.fill(backShifts, length);
+        // Later positions override earlier ones, the smallest shift is kept
+        for (int i = 0; i < length - 1; i++) {
+            for (int b = 0; b < 256; b++) {
+                if (allows(i, b)) {
+                    shifts[b] = length - 1 - i;
+                }
+            }
+        }
+        for (int i = length - 1; i > 0; i--) {
+            for (int b = 0; b < 256; b++) {
+                if (allows(i, b)) {
+                    backShifts[b] = i;
+                }
+            }
+        }
+    }
+
+    private boolean allows(int index, int b) {
+        return (masks[index * 4 + (b >>> 6)] & (1L << b)) != 0;
+    }
+
+
+    @Override
+    public int indexOf(byte[] data, int from, int to) {
+        final int last = length - 1;
+        final int end = to - length;
+        int pos = from;
+        if (bytes != null) {
+            final byte lastByte = bytes[last];
+            while (pos <= end) {
+                byte b = data[pos + last];
+                if (b == lastByte) {
+                    int i = last - 1;
+                    while (i >= 0 && data[pos + i] == bytes[i]) {
+                        i--;
+                    }
+                    if (i < 0) {
+                        return pos;
+                    }
+                }
+                pos += shifts[b & 0xff];
+            }
+        } else {
+            while (pos <= end) {
+                int b = data[pos + last] & 0xff;
+                if (allows(last, b)) {
+                    int i = last - 1;
+                    while (i >= 0 && allows(i, data[pos + i] & 0xff)) {
+                        i--;
+                    }
+                    if (i < 0) {
+                        return pos;
+                    }
+                }
+                pos += shifts[b];
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the offset of the rightmost match that lies entirely within <code>data[from, to)</code>.
+     *
+     * @param data the bytes to search
+     * @param from offset of the first byte to search
+     * @param to offset following the last byte to search
+     * @return the offset of the last match, -1 if there is none
+     */
+    public int lastIndexOf(byte[] data, int from, int to) {
+        int pos = to - length;
+        while (pos >= from) {
+            int b = data[pos] & 0xff;
+            if (allows(0, b)) {
+                int i = 1;
+                while (i < length && allows(i, data[pos + i] & 0xff)) {
+                    i++;
+                }
+                if (i == length) {
+                    return pos;
+                }
+            }
+            pos -= backShifts[b];
+        }
+        return -1;
+    }
+
+    @Override
+    public int getMaxLength() {
+        return length;
+    }
+}
@@ -17,6 +17,11 @@
  */
 package ru.trolsoft.utils.search;
 
+import com.mucommander.commons.io.BufferPool;
+import com.mucommander.commons.io.RandomAccessInputStream;
+
+import java.io.IOException;
+import java.io.InputStream;
 
 /**
  * @author Oleg Trifonov
@@ -24,7 +29,98 @@ package ru.trolsoft.utils.search;
  */
 public class SearchUtils {
 
+    /**
+     * Size of the blocks read by {@link #indexOf(InputStream, BlockSearcher)}
+     */
+    public static final int BLOCK_SIZE = 64*1024;
+
+
+    /**
+     * Returns the offset of the first match in the given stream, which is read by blocks and not closed.
+     *
+     * @param in the stream to search
+     * @param searcher the searcher of the pattern(s)
+     * @return the offset of the first match, -1 if there is none
+     * @throws IOException if an I/O error occurred
+     */
+    public static long indexOf(InputStream in, BlockSearcher searcher) throws IOException {
+        // The end of each block is kept at the start of the next one, for the matches that span two blocks
+        final int keep = searcher.getMaxLength() - 1;
+        byte[] buffer = BufferPool.getByteArray(Math.max(BLOCK_SIZE, 2 * searcher.getMaxLength()));
+        try {
+            long blockOffset = 0;
+            int len = 0;
+            boolean eof = false;
+            while (!eof) {
+                int read = in.read(buffer, len, buffer.length - len);
+                // At least one byte is always requested, a stream that returns none would otherwise be read forever
+                if (read <= 0) {
+                    eof = true;
+                } else {
+                    len += read;
+                    if (len < buffer.length) {
+                        continue;
+                    }
+                }
+                int pos = searcher.indexOf(buffer, 0, len);
+                // A match near the end of the block may be preceded by one that spans the next block
+                if (pos >= 0 && (eof || pos + searcher.getMaxLength() <= len)) {
+                    return blockOffset + pos;
+                }
+                if (len > keep) {
+                    System.arraycopy(buffer, len - keep, buffer, 0, keep);
+                    blockOffset += len - keep;
+                    len = keep;
+                }
+            }
+            return -1;
+        } finally {
+            BufferPool.releaseByteArray(buffer);
+        }
+    }
+
+    /**
+     * Returns the offset of the last match that starts at or before the given offset, the stream is read backward by
+     * blocks and not closed.
+     *
+     * @param in the stream to search
+     * @param fromOffset the offset from which to search backward
+     * @param searcher the searcher of the pattern
+     * @return the offset of the last match, -1 if there is none
+     * @throws IOException if an I/O error occurred
+     */
+    public static long lastIndexOf(RandomAccessInputStream in, long fromOffset, HorspoolSearcher searcher) throws IOException {
+        final int length = searcher.getMaxLength();
+        byte[] buffer = BufferPool.getByteArray(Math.max(BLOCK_SIZE, 2 * length));
+        try {
+            long end = Math.min(in.getLength(), fromOffset + length);
+            while (fromOffset >= 0 && end >= length) {
+                long start = Math.max(0, end - buffer.length);
+                int len = (int)(end - start);
+                in.seek(start);
+                in.readFully(buffer, 0, len);
+                int pos = searcher.lastIndexOf(buffer, 0, len);
+                if (pos >= 0) {
+                    return start + pos;
+                }
+                if (start == 0) {
+                    break;
+                }
+                // The start of each block is kept at the end of the previous one, for the matches that span two blocks
+                end = start + length - 1;
+            }
+            return -1;
+        } finally {
+            BufferPool.releaseByteArray(buffer);
+        }
+    }
 
+    /**
+     * KMP search through a byte by byte source.
+     *
+     * @deprecated blocks are much faster to search, use {@link #indexOf(InputStream, BlockSearcher)}
+     */
+    @Deprecated
     public static long indexOf(SearchSourceStream source, SearchPattern pattern) throws SearchException {
         if (!source.hasNext() || pattern.length() == 0) {
             return -1;
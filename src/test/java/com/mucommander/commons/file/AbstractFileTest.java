@@ -1130,6 +1130,23 @@ public abstract class AbstractFileTest {
         assert 1 == children.length;
         assert child.equals(children[0]);
         assert children[0].exists();
+
+        // create other children and assert that the batches passed to the ListingListener add up to the same children
+        // as ls(), in any order
+        for(int i=0; i<10; i++)
+            tempFile.getChild("child"+i).mkfile();
+
+        final List<AbstractFile> listedChildren = new ArrayList<AbstractFile>();
+        tempFile.ls(null, new ListingListener() {
+            public boolean childrenListed(AbstractFile[] batch) {
+                listedChildren.addAll(Arrays.asList(batch));
+                return true;
+            }
+        });
+
+        children = tempFile.ls();
+        assert children.length == listedChildren.size();
+        assert new HashSet<AbstractFile>(listedChildren).equals(new HashSet<AbstractFile>(Arrays.asList(children)));
     }
 
     /**
@@ -0,0 +1,110 @@
+/**
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2010 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.commons.file;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Measures the time it takes for {@link ArchiveEntryTree} to be built from synthetic lists of entries, and to look up
+ * every entry once the tree has been built. Two layouts are generated for each size: a flat one where all entries
+ * are located in the same directory (the worst case for a linear scan of children), and a nested one that mimics
+ * a Maven repository.
+ *
+ * <p>This is not a unit test, run it with <code>java ArchiveEntryTreeBenchmark [size...]</code>. Sizes default to
+ * 10,000, 100,000 and 1,000,000 entries.</p>
+ */
+public class ArchiveEntryTreeBenchmark {
+
+    private final static int DEFAULT_SIZES[] = {10000, 100000, 1000000};
+
+    /** Number of times each measure is repeated, the best time is kept */
+    private final static int NB_RUNS = 3;
+
+    /**
+     * Generates <code>nbEntries</code> regular file entries located in a single directory.
+     */
+    private static List<ArchiveEntry> createFlatEntries(int nbEntries) {
+        List<ArchiveEntry> entries = new ArrayList<>(nbEntries);
+        for(int i=0; i<nbEntries; i++)
+            entries.add(new ArchiveEntry("node_modules/module-"+i+".js", false, 0, i, true));
+        return entries;
+    }
+
+    /**
+     * Generates <code>nbEntries</code> regular file entries spread across a 3-level hierarchy, without explicit
+     * directory entries, in a shuffled order.
+     */
+    private static List<ArchiveEntry> createNestedEntries(int nbEntries) {
+        List<ArchiveEntry> entries = new ArrayList<>(nbEntries);
+        Random random = new Random(0);
+        int groups = Math.max(1, (int)Math.sqrt(nbEntries)/4);
+        for(int i=0; i<nbEntries; i++) {
+            int group = random.nextInt(groups);
+            int artifact = random.nextInt(groups);
+            entries.add(new ArchiveEntry("repository/org"+group+"/artifact"+artifact+"/1.0/file-"+i+".jar", false, 0, i, true));
+        }
+        return entries;
+    }
+
+    private static ArchiveEntryTree buildTree(List<ArchiveEntry> entries) {
+        ArchiveEntryTree tree = new ArchiveEntryTree();
+        for(ArchiveEntry entry : entries)
+            tree.addArchiveEntry(entry);
+        return tree;
+    }
+
+    private static void run(String layout, List<ArchiveEntry> entries) {
+        long bestBuild = Long.MAX_VALUE;
+        long bestLookup = Long.MAX_VALUE;
+        for(int run=0; run<NB_RUNS; run++) {
+            long start = System.nanoTime();
+            ArchiveEntryTree tree = buildTree(entries);
+            bestBuild = Math.min(bestBuild, System.nanoTime()-start);
+
+            start = System.nanoTime();
+            for(ArchiveEntry entry : entries) {
+                if(tree.findEntryNode(entry.getPath())==null)
+                    throw new IllegalStateException("Entry not found: "+entry.getPath());
+            }
+            bestLookup = Math.min(bestLookup, System.nanoTime()-start);
+        }
+
+        System.out.println(String.format("%-7s %,10d entries: build %,8d ms, lookup %,8d ms",
+                layout, entries.size(), bestBuild/1000000, bestLookup/1000000));
+    }
+
+    public static void main(String args[]) {
+        int sizes[];
+        if(args.length==0) {
+            sizes = DEFAULT_SIZES;
+        }
+        else {
+            sizes = new int[args.length];
+            for(int i=0; i<args.length; i++)
+                sizes[i] = Integer.parseInt(args[i]);
+        }
+
+        for(int size : sizes) {
+            run("flat", createFlatEntries(size));
+            run("nested", createNestedEntries(size));
+        }
+    }
+}
@@ -0,0 +1,130 @@
+/**
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2010 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.commons.file;
+
+import org.testng.annotations.Test;
+
+import javax.swing.tree.DefaultMutableTreeNode;
+
+/**
+ * This class is a TestNG test case for {@link ArchiveEntryTree}.
+ *
+ * @see ArchiveEntryTreeBenchmark
+ */
+public class ArchiveEntryTreeTest {
+
+    private static ArchiveEntry createEntry(String path, boolean directory) {
+        return new ArchiveEntry(path, directory, 0, 0, false);
+    }
+
+    private static ArchiveEntry getEntry(DefaultMutableTreeNode node) {
+        return (ArchiveEntry)node.getUserObject();
+    }
+
+    /**
+     * Ensures that intermediate directories are created when missing and that entries can be found using paths with
+     * or without a trailing separator.
+     */
+    @Test
+    public void testAddAndFind() {
+        ArchiveEntryTree tree = new ArchiveEntryTree();
+        tree.addArchiveEntry(createEntry("a/b/c.txt", false));
+        tree.addArchiveEntry(createEntry("a/d/", true));
+        tree.addArchiveEntry(createEntry("e.txt", false));
+
+        assert tree.getChildCount() == 2;
+
+        DefaultMutableTreeNode node = tree.findEntryNode("a");
+        assert node != null;
+        assert "a/".equals(getEntry(node).getPath());
+        assert getEntry(node).isDirectory();
+        assert node.getChildCount() == 2;
+        assert tree.findEntryNode("a/") == node;
+
+        node = tree.findEntryNode("a/b/c.txt");
+        assert node != null;
+        assert "a/b/c.txt".equals(getEntry(node).getPath());
+        assert getEntry(node).exists();
+        assert node.getParent() == tree.findEntryNode("a/b");
+
+        assert tree.findEntryNode("a/d") != null;
+        assert tree.findEntryNode("e.txt").getParent() == tree;
+
+        assert tree.findEntryNode("a/b/missing") == null;
+        assert tree.findEntryNode("missing/c.txt") == null;
+        assert tree.findEntryNode("a/b/c.txt/x") == null;
+    }
+
+    /**
+     * Ensures that an explicit directory entry replaces the one that was implicitly created for its children,
+     * without losing those children.
+     */
+    @Test
+    public void testDirectoryReplacement() {
+        ArchiveEntryTree tree = new ArchiveEntryTree();
+        tree.addArchiveEntry(createEntry("dir/file", false));
+
+        ArchiveEntry dirEntry = createEntry("dir/", true);
+        dirEntry.setDate(1234);
+        tree.addArchiveEntry(dirEntry);
+
+        assert tree.getChildCount() == 1;
+        DefaultMutableTreeNode node = tree.findEntryNode("dir");
+        assert getEntry(node) == dirEntry;
+        assert node.getChildCount() == 1;
+        assert tree.findEntryNode("dir/file") != null;
+    }
+
+    /**
+     * Ensures that the children index is kept up-to-date when nodes are removed from the tree.
+     */
+    @Test
+    public void testRemove() {
+        ArchiveEntryTree tree = new ArchiveEntryTree();
+        tree.addArchiveEntry(createEntry("dir/file1", false));
+        tree.addArchiveEntry(createEntry("dir/file2", false));
+
+        DefaultMutableTreeNode node = tree.findEntryNode("dir/file1");
+        ((DefaultMutableTreeNode)node.getParent()).remove(node);
+
+        assert tree.findEntryNode("dir/file1") == null;
+        assert tree.findEntryNode("dir/file2") != null;
+        assert tree.findEntryNode("dir").getChildCount() == 1;
+
+        // Re-adding the entry must make it visible again
+        tree.addArchiveEntry(createEntry("dir/file1", false));
+        assert tree.findEntryNode("dir/file1") != null;
+    }
+
+    /**
+     * Ensures that a large flat directory is handled correctly.
+     */
+    @Test
+    public void testLargeDirectory() {
+        ArchiveEntryTree tree = new ArchiveEntryTree();
+        int nbEntries = 50000;
+        for(int i=0; i<nbEntries; i++)
+            tree.addArchiveEntry(createEntry("flat/file"+i, false));
+
+        DefaultMutableTreeNode dirNode = tree.findEntryNode("flat");
+        assert dirNode.getChildCount() == nbEntries;
+        for(int i=0; i<nbEntries; i+=997)
+            assert ("flat/file"+i).equals(getEntry(tree.findEntryNode("flat/file"+i)).getPath());
+    }
+}
@@ -0,0 +1,195 @@
+/**
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2010 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.commons.file;
+
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * This class is a TestNG test case for the index format of {@link ArchiveIndexCache}.
+ */
+public class ArchiveIndexCacheTest {
+
+    private final static String KEY = "file:///tmp/archive.tar.gz";
+
+    private static List<ArchiveEntry> createEntries() {
+        List<ArchiveEntry> entries = new ArrayList<>();
+
+        ArchiveEntry entry = new ArchiveEntry("dir/", true, 1000, 0, true);
+        entry.setPermissions(new SimpleFilePermissions(493));
+        entry.setOwner("root");
+        entry.setGroup("wheel");
+        entry.setOffset(0);
+        entries.add(entry);
+
+        entry = new ArchiveEntry("dir/file1.txt", false, 2000, 12345678901L, true);
+        entry.setPermissions(new SimpleFilePermissions(420));
+        entry.setOwner("root");
+        entry.setGroup("wheel");
+        entry.setOffset(512);
+        entries.add(entry);
+
+        entry = new ArchiveEntry("dir/file2.txt", false, -1, -1, true);
+        entry.setOwner("user");
+        entries.add(entry);
+
+        entry = new ArchiveEntry("other/\u00e9t\u00e9.txt", false, 3000, 42, true);
+        entry.setOffset(Long.MAX_VALUE - 1);
+        entries.add(entry);
+
+        return entries;
+    }
+
+    private static byte[] write(List<ArchiveEntry> entries, long size, long date) throws IOException {
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        ArchiveIndexCache.writeIndex(new DataOutputStream(bout), KEY, size, date, entries);
+        return bout.toByteArray();
+    }
+
+    private static List<ArchiveEntry> read(byte[] index, String key, long size, long date) throws IOException {
+        return ArchiveIndexCache.readIndex(new DataInputStream(new ByteArrayInputStream(index)), key, size, date);
+    }
+
+    /**
+     * Ensures that all entry attributes survive a write/read round-trip.
+     *
+     * @throws IOException should not happen
+     */
+    @Test
+    public void testRoundTrip() throws IOException {
+        List<ArchiveEntry> entries = createEntries();
+        List<ArchiveEntry> readEntries = read(write(entries, 100, 200), KEY, 100, 200);
+
+        assert readEntries != null;
+        assert readEntries.size() == entries.size();
+        for(int i=0; i<entries.size(); i++) {
+            ArchiveEntry expected = entries.get(i);
+            ArchiveEntry actual = readEntries.get(i);
+
+            assert expected.getPath().equals(actual.getPath());
+            assert expected.isDirectory() == actual.isDirectory();
+            assert expected.getSize() == actual.getSize();
+            assert expected.getDate() == actual.getDate();
+            assert expected.getOffset() == actual.getOffset();
+            assert expected.getPermissions().getIntValue() == actual.getPermissions().getIntValue();
+            assert expected.getPermissions().getMask().getIntValue() == actual.getPermissions().getMask().getIntValue();
+            assert expected.getOwner() == null ? actual.getOwner() == null : expected.getOwner().equals(actual.getOwner());
+            assert expected.getGroup() == null ? actual.getGroup() == null : expected.getGroup().equals(actual.getGroup());
+            assert actual.exists();
+        }
+    }
+
+    /**
+     * Ensures that entries without permissions, or with permissions that have no mask, can be stored.
+     *
+     * @throws IOException should not happen
+     */
+    @Test
+    public void testMissingPermissions() throws IOException {
+        List<ArchiveEntry> entries = new ArrayList<>();
+        entries.add(new ArchiveEntry("file1.txt", false, 1000, 10, true) {
+            @Override
+            public FilePermissions getPermissions() {
+                return null;
+            }
+        });
+        ArchiveEntry entry = new ArchiveEntry("file2.txt", false, 1000, 10, true);
+        entry.setPermissions(new SimpleFilePermissions(420, null));
+        entries.add(entry);
+
+        List<ArchiveEntry> readEntries = read(write(entries, 100, 200), KEY, 100, 200);
+
+        assert readEntries != null;
+        assert readEntries.size() == 2;
+        // Default permissions are returned by entries that have none
+        assert readEntries.get(0).getPermissions() == FilePermissions.DEFAULT_FILE_PERMISSIONS;
+        assert readEntries.get(1).getPermissions().getIntValue() == 420;
+        assert readEntries.get(1).getPermissions().getMask().getIntValue() == 0;
+        assert readEntries.get(1).getPath().equals("file2.txt");
+    }
+
+    /**
+     * Ensures that an index is rejected if the archive's URL, size or date differ from the ones it was created for.
+     *
+     * @throws IOException should not happen
+     */
+    @Test
+    public void testStaleIndex() throws IOException {
+        byte[] index = write(createEntries(), 100, 200);
+
+        assert read(index, KEY, 100, 200) != null;
+        assert read(index, "file:///tmp/other.tar.gz", 100, 200) == null;
+        assert read(index, KEY, 101, 200) == null;
+        assert read(index, KEY, 100, 201) == null;
+    }
+
+    /**
+     * Ensures that a truncated index is reported as an <code>IOException</code>.
+     *
+     * @throws IOException should not happen
+     */
+    @Test
+    public void testTruncatedIndex() throws IOException {
+        byte[] index = write(createEntries(), 100, 200);
+        byte[] truncated = new byte[index.length/2];
+        System.arraycopy(index, 0, truncated, 0, truncated.length);
+
+        try {
+            read(truncated, KEY, 100, 200);
+            assert false;
+        }
+        catch(IOException e) {
+            // Expected
+        }
+    }
+
+    /**
+     * Ensures that the archive's index data is read back after the entries, and that missing data is read back as
+     * <code>null</code>.
+     *
+     * @throws IOException should not happen
+     */
+    @Test
+    public void testIndexData() throws IOException {
+        byte data[] = new byte[1000];
+        for(int i=0; i<data.length; i++)
+            data[i] = (byte)i;
+
+        for(byte expected[] : new byte[][]{data, new byte[0], null}) {
+            ByteArrayOutputStream bout = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bout);
+            ArchiveIndexCache.writeIndex(out, KEY, 100, 200, createEntries());
+            ArchiveIndexCache.writeData(out, expected);
+
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(bout.toByteArray()));
+            assert ArchiveIndexCache.readIndex(in, KEY, 100, 200).size() == createEntries().size();
+            byte actual[] = ArchiveIndexCache.readData(in);
+            assert expected == null ? actual == null : Arrays.equals(expected, actual);
+            assert in.read() == -1;
+        }
+    }
+}
@@ -0,0 +1,175 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2010 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.commons.file;
+
+import com.mucommander.commons.io.StreamUtils;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A test case for {@link BatchArchiveEntryIterator}.
+ *
+ * @see BatchArchiveEntryIterator
+ */
+public class BatchArchiveEntryIteratorTest {
+
+    /**
+     * Returns the contents of the entry with the given path: a repeated pattern whose length depends on the path.
+     */
+    private static byte[] getContents(String path) {
+        byte contents[] = new byte[path.length() * 10000];
+        for (int i = 0; i < contents.length; i++) {
+            contents[i] = (byte)(path.charAt(i % path.length()) + i);
+        }
+        return contents;
+    }
+
+    /**
+     * Returns a directory entry followed by <code>nbFiles</code> regular file entries.
+     */
+    private static List<ArchiveEntry> getEntries(int nbFiles) {
+        List<ArchiveEntry> entries = new ArrayList<>();
+        entries.add(new ArchiveEntry("dir/", true, 0, 0, true));
+        for (int i = 0; i < nbFiles; i++) {
+            String path = "dir/file" + i;
+            entries.add(new ArchiveEntry(path, false, 0, getContents(path).length, true));
+        }
+        return entries;
+    }
+
+    /**
+     * An iterator that writes the contents returned by {@link #getContents(String)} and counts the extracted entries.
+     */
+    private static class TestIterator extends BatchArchiveEntryIterator {
+        private final AtomicInteger nbExtracted = new AtomicInteger();
+        private final AtomicBoolean finished = new AtomicBoolean();
+
+        private TestIterator(List<ArchiveEntry> entries) {
+            super(entries, 4000);
+        }
+
+        @Override
+        protected void extract(List<ArchiveEntry> fileEntries) throws IOException {
+            for (ArchiveEntry entry : fileEntries) {
+                byte contents[] = getContents(entry.getPath());
+                OutputStream out = openEntry(entry);
+                try {
+                    for (int offset = 0; offset < contents.length; offset += 1000) {
+                        out.write(contents, offset, Math.min(1000, contents.length - offset));
+                    }
+                } finally {
+                    out.close();
+                }
+                nbExtracted.incrementAndGet();
+            }
+            finished.set(true);
+        }
+    }
+
+    /**
+     * Reads every other entry and skips the others, and asserts that the entries are returned in order with the
+     * right contents.
+     *
+     * @throws IOException should not happen
+     */
+    @Test
+    public void testIteration() throws IOException {
+        List<ArchiveEntry> entries = getEntries(50);
+        TestIterator iterator = new TestIterator(entries);
+        try {
+            ArchiveEntry entry;
+            int index = 0;
+            while ((entry = iterator.nextEntry()) != null) {
+                assert entry == entries.get(index);
+                if (!entry.isDirectory() && index % 2 == 0) {
+                    ByteArrayOutputStream bout = new ByteArrayOutputStream();
+                    InputStream in = iterator.getEntryInputStream(entry);
+                    StreamUtils.copyStream(in, bout);
+                    assert Arrays.equals(getContents(entry.getPath()), bout.toByteArray());
+                }
+                index++;
+            }
+            assert index == entries.size();
+        }
+        finally {
+            iterator.close();
+        }
+
+        assert iterator.nbExtracted.get() == 50;
+    }
+
+    /**
+     * Asserts that closing the iterator in the middle of the iteration aborts the extraction.
+     *
+     * @throws Exception should not happen
+     */
+    @Test
+    public void testClose() throws Exception {
+        List<ArchiveEntry> entries = getEntries(50);
+        TestIterator iterator = new TestIterator(entries);
+        iterator.nextEntry();
+        ArchiveEntry entry = iterator.nextEntry();
+        assert iterator.getEntryInputStream(entry).read() != -1;
+        iterator.close();
+
+        Thread.sleep(500);
+        assert !iterator.finished.get();
+        assert iterator.nbExtracted.get() < 50;
+    }
+
+    /**
+     * Asserts that an error that occurs while extracting is thrown to the reader.
+     *
+     * @throws IOException should not happen
+     */
+    @Test
+    public void testExtractionError() throws IOException {
+        final IOException error = new IOException();
+        List<ArchiveEntry> entries = getEntries(2);
+        BatchArchiveEntryIterator iterator = new BatchArchiveEntryIterator(entries) {
+            @Override
+            protected void extract(List<ArchiveEntry> fileEntries) throws IOException {
+                openEntry(fileEntries.get(0)).close();
+                throw error;
+            }
+        };
+
+        try {
+            iterator.nextEntry();
+            assert iterator.getEntryInputStream(iterator.nextEntry()).read() == -1;
+            iterator.getEntryInputStream(iterator.nextEntry());
+            assert false;
+        }
+        catch (IOException e) {
+            assert e == error;
+        }
+        finally {
+            iterator.close();
+        }
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2010 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.commons.file.impl.ftp;
+
+import org.apache.commons.net.ftp.FTPFile;
+import org.testng.annotations.Test;
+
+/**
+ * A test case for {@link FTPListingCache}.
+ */
+public class FTPListingCacheTest {
+
+    /**
+     * Asserts that cached listings are returned until they expire or are invalidated by a change of a file they
+     * contain or of one of their ancestors.
+     *
+     * @throws InterruptedException should not happen
+     */
+    @Test
+    public void testListingCache() throws InterruptedException {
+        FTPListingCache cache = new FTPListingCache();
+        FTPFile files[] = new FTPFile[0];
+        long period = FTPListingCache.getCachingPeriod();
+        try {
+            FTPListingCache.setCachingPeriod(60000);
+
+            cache.put("/pub/", files);
+            cache.put("/pub/folder", files);
+            cache.put("/pub/folder/sub", files);
+            cache.put("/other", files);
+            assert cache.get("/pub") == files;
+
+            // A change of a file invalidates its parent's listing
+            cache.invalidate("/pub/file.txt");
+            assert cache.get("/pub") == null;
+            assert cache.get("/pub/folder") == files;
+
+            // A change of a folder invalidates its parent's listing, its own listing and its descendants'
+            cache.put("/pub", files);
+            cache.invalidate("/pub/folder/");
+            assert cache.get("/pub") == null;
+            assert cache.get("/pub/folder") == null;
+            assert cache.get("/pub/folder/sub") == null;
+            assert cache.get("/other") == files;
+
+            // Listings expire after the caching period
+            FTPListingCache.setCachingPeriod(50);
+            cache.put("/pub", files);
+            assert cache.get("/pub") == files;
+            Thread.sleep(100);
+            assert cache.get("/pub") == null;
+
+            // Caching can be disabled
+            FTPListingCache.setCachingPeriod(0);
+            cache.put("/pub", files);
+            assert cache.get("/pub") == null;
+        }
+        finally {
+            FTPListingCache.setCachingPeriod(period);
+        }
+    }
+}
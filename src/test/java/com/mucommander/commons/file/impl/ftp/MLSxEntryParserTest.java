@@ -0,0 +1,80 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2010 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.commons.file.impl.ftp;
+
+import org.apache.commons.net.ftp.FTPFile;
+import org.testng.annotations.Test;
+
+import java.util.Calendar;
+import java.util.TimeZone;
+
+/**
+ * A test case for {@link MLSxEntryParser}.
+ */
+public class MLSxEntryParserTest {
+
+    /**
+     * Parses entries of an MLSD listing and asserts that their facts are properly interpreted.
+     */
+    @Test
+    public void testParseEntry() {
+        MLSxEntryParser parser = new MLSxEntryParser();
+
+        FTPFile file = parser.parseFTPEntry("type=file;size=1024;modify=20100302143652.123;UNIX.mode=0640;UNIX.owner=john;UNIX.group=staff; read me.txt");
+        assert file.isFile();
+        assert "read me.txt".equals(file.getName());
+        assert file.getSize() == 1024;
+        assert "john".equals(file.getUser());
+        assert "staff".equals(file.getGroup());
+
+        Calendar expectedDate = Calendar.getInstance(TimeZone.getTimeZone("GMT"));
+        expectedDate.clear();
+        expectedDate.set(2010, Calendar.MARCH, 2, 14, 36, 52);
+        expectedDate.set(Calendar.MILLISECOND, 123);
+        assert file.getTimestamp().getTimeInMillis() == expectedDate.getTimeInMillis();
+
+        assert file.hasPermission(FTPFile.USER_ACCESS, FTPFile.READ_PERMISSION);
+        assert file.hasPermission(FTPFile.USER_ACCESS, FTPFile.WRITE_PERMISSION);
+        assert !file.hasPermission(FTPFile.USER_ACCESS, FTPFile.EXECUTE_PERMISSION);
+        assert file.hasPermission(FTPFile.GROUP_ACCESS, FTPFile.READ_PERMISSION);
+        assert !file.hasPermission(FTPFile.GROUP_ACCESS, FTPFile.WRITE_PERMISSION);
+        assert !file.hasPermission(FTPFile.WORLD_ACCESS, FTPFile.READ_PERMISSION);
+
+        // Fact names are case-insensitive, the 'perm' fact is used in the absence of a Unix mode
+        file = parser.parseFTPEntry("Type=dir;Modify=20100302143652;Perm=flcdmpe; folder");
+        assert file.isDirectory();
+        assert "folder".equals(file.getName());
+        assert file.hasPermission(FTPFile.USER_ACCESS, FTPFile.READ_PERMISSION);
+        assert file.hasPermission(FTPFile.USER_ACCESS, FTPFile.WRITE_PERMISSION);
+        assert file.hasPermission(FTPFile.USER_ACCESS, FTPFile.EXECUTE_PERMISSION);
+
+        file = parser.parseFTPEntry("type=OS.unix=slink:/usr/share/doc;size=14; doc");
+        assert file.isSymbolicLink();
+        assert "/usr/share/doc".equals(file.getLink());
+
+        // The listed directory and its parent are discarded, as well as malformed entries
+        assert parser.parseFTPEntry("type=cdir;modify=20100302143652; /pub") == null;
+        assert parser.parseFTPEntry("type=pdir;modify=20100302143652; ..") == null;
+        assert parser.parseFTPEntry("type=file;size=1") == null;
+
+        // ... unless the entry is the result of an MLST command
+        file = MLSxEntryParser.parseEntry("type=cdir;modify=20100302143652; /pub", false);
+        assert file.isDirectory();
+    }
+}
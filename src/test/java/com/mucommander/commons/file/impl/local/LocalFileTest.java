@@ -22,10 +22,20 @@ import com.mucommander.commons.file.AbstractFile;
 import com.mucommander.commons.file.AbstractFileTest;
 import com.mucommander.commons.file.FileFactory;
 import com.mucommander.commons.file.FileOperation;
+import com.mucommander.commons.file.ListingListener;
+import com.mucommander.commons.file.impl.CachedFile;
+import org.testng.SkipException;
 import org.testng.annotations.Test;
 
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.regex.Matcher;
 
 
@@ -174,4 +184,125 @@ public class LocalFileTest extends AbstractFileTest {
         matcher = LocalFile.DRIVE_ROOT_PATTERN.matcher("/blah/C:\\");
         assert !matcher.matches();
     }
+
+    /**
+     * Creates a folder containing a 5-byte file, a subfolder, a symbolic link to the file and a broken symbolic link,
+     * lists it with {@link LocalFile#ls(com.mucommander.commons.file.filter.FileFilter, ListingListener)} and returns
+     * the listed children by name. The test is skipped if symbolic links are not supported.
+     */
+    private Map<String, AbstractFile> listFolderWithSymlinks() throws IOException {
+        tempFile.mkdir();
+        Path folder = Paths.get(tempFile.getAbsolutePath());
+        Files.write(folder.resolve("file"), new byte[5]);
+        Files.createDirectory(folder.resolve("folder"));
+        try {
+            Files.createSymbolicLink(folder.resolve("link"), folder.resolve("file"));
+            Files.createSymbolicLink(folder.resolve("broken"), folder.resolve("nonexistent"));
+        }
+        catch(UnsupportedOperationException | IOException e) {
+            throw new SkipException("Symbolic links are not supported: "+e);
+        }
+
+        final Map<String, AbstractFile> children = new HashMap<String, AbstractFile>();
+        tempFile.ls(null, new ListingListener() {
+            public boolean childrenListed(AbstractFile batch[]) {
+                for(AbstractFile child : batch)
+                    children.put(child.getName(), child);
+                return true;
+            }
+        });
+
+        assert children.size() == 4;
+        return children;
+    }
+
+    /**
+     * Asserts that the attributes read when a folder is listed match the values returned by the getters, that they
+     * follow symbolic links, and that the attributes of a broken symbolic link are read individually.
+     *
+     * @throws IOException should not happen
+     */
+    @Test
+    public void testListedAttributes() throws IOException {
+        Map<String, AbstractFile> children = listFolderWithSymlinks();
+
+        for(String name : new String[]{"file", "folder", "link"}) {
+            LocalFile child = (LocalFile)children.get(name);
+            BasicFileAttributes attributes = child.readAttributes();
+            assert attributes.isDirectory() == child.isDirectory();
+            assert attributes.size() == child.getSize();
+            assert attributes.lastModifiedTime().toMillis() == child.getDate();
+            assert child.getParent().equals(tempFile);
+        }
+
+        // Symbolic links are followed
+        AbstractFile link = children.get("link");
+        assert link.isSymlink();
+        assert ((LocalFile)link).readAttributes().isRegularFile();
+        assert ((LocalFile)link).readAttributes().size() == 5;
+
+        // The attributes of a broken symbolic link could not be read when listed
+        AbstractFile broken = children.get("broken");
+        assert broken.isSymlink();
+        try {
+            ((LocalFile)broken).readAttributes();
+            assert false;
+        }
+        catch(NoSuchFileException e) {
+            // Expected
+        }
+    }
+
+    /**
+     * Asserts that the attributes read when a folder is listed are returned only once, and only by the listed
+     * instances: the instances retrieved from {@link FileFactory} read the attributes from the filesystem.
+     *
+     * @throws IOException should not happen
+     */
+    @Test
+    public void testListedAttributesNotPooled() throws IOException {
+        Map<String, AbstractFile> children = listFolderWithSymlinks();
+        LocalFile listedFile = (LocalFile)children.get("file");
+
+        Files.write(Paths.get(listedFile.getAbsolutePath()), new byte[10]);
+
+        LocalFile pooledFile = (LocalFile)FileFactory.getFile(listedFile.getAbsolutePath());
+        assert pooledFile != listedFile;
+        assert pooledFile.readAttributes().size() == 10;
+
+        // The attributes read when listed are returned once, then read again
+        assert listedFile.readAttributes().size() == 5;
+        assert listedFile.readAttributes().size() == 10;
+    }
+
+    /**
+     * Asserts that {@link CachedFile} instances created around listed children and around instances retrieved from
+     * {@link FileFactory} return the same values as the files they proxy, including for missing files.
+     *
+     * @throws IOException should not happen
+     */
+    @Test
+    public void testCachedFileAttributes() throws IOException {
+        Map<String, AbstractFile> children = listFolderWithSymlinks();
+
+        for(AbstractFile child : children.values()) {
+            for(AbstractFile file : new AbstractFile[]{child, FileFactory.getFile(child.getAbsolutePath())}) {
+                CachedFile cachedFile = new CachedFile(file, true);
+                assert cachedFile.exists() == child.exists();
+                assert cachedFile.isDirectory() == child.isDirectory();
+                assert cachedFile.getSize() == child.getSize();
+                assert cachedFile.getDate() == child.getDate();
+                assert cachedFile.isSymlink() == child.isSymlink();
+            }
+        }
+
+        assert !children.get("broken").exists();
+
+        // A file deleted after being retrieved no longer exists
+        AbstractFile file = FileFactory.getFile(children.get("file").getAbsolutePath());
+        file.delete();
+        CachedFile cachedFile = new CachedFile(file, true);
+        assert !cachedFile.exists();
+        assert !cachedFile.isDirectory();
+    }
 }
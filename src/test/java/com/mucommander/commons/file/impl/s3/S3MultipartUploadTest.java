@@ -0,0 +1,334 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2010 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.commons.file.impl.s3;
+
+import com.mucommander.commons.io.FileTransferException;
+import com.mucommander.commons.io.StreamUtils;
+import com.mucommander.commons.io.base64.Base64Encoder;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.testng.annotations.Test;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A test case for {@link S3MultipartUpload} and {@link RestMultipartUploadClient}, run against local stand-ins of an
+ * S3 server.
+ *
+ * @see S3MultipartUpload
+ */
+public class S3MultipartUploadTest {
+
+    /** Size of the parts used by the tests, smaller than the S3 minimum to keep the tests fast */
+    private final static int PART_SIZE = 64*1024;
+
+    /**
+     * An in-memory stand-in of an S3 server, which can be made to fail part uploads and keeps track of the number of
+     * parts being uploaded concurrently.
+     */
+    private static class MemoryUploadClient implements MultipartUploadClient {
+
+        private final Map<Integer, byte[]> parts = new TreeMap<Integer, byte[]>();
+        private byte object[];
+        private boolean aborted;
+
+        /** Number of failures of each part before it succeeds */
+        private final int nbFailuresPerPart;
+        private final Map<Integer, Integer> nbFailures = new TreeMap<Integer, Integer>();
+
+        private final AtomicInteger nbConcurrentUploads = new AtomicInteger();
+        private volatile int maxConcurrentUploads;
+
+        private MemoryUploadClient(int nbFailuresPerPart) {
+            this.nbFailuresPerPart = nbFailuresPerPart;
+        }
+
+        public String initiateUpload() {
+            return "upload";
+        }
+
+        public String uploadPart(String uploadId, int partNumber, byte data[], int len) throws IOException {
+            int nbConcurrent = nbConcurrentUploads.incrementAndGet();
+            try {
+                maxConcurrentUploads = Math.max(maxConcurrentUploads, nbConcurrent);
+                Thread.sleep(10);
+
+                synchronized(this) {
+                    Integer failures = nbFailures.get(partNumber);
+                    failures = failures==null?0:failures;
+                    if(failures < nbFailuresPerPart) {
+                        nbFailures.put(partNumber, failures+1);
+                        throw new IOException("Part "+partNumber+" failed");
+                    }
+
+                    parts.put(partNumber, Arrays.copyOf(data, len));
+                }
+                return "etag"+partNumber;
+            }
+            catch(InterruptedException e) {
+                throw new IOException(e);
+            }
+            finally {
+                nbConcurrentUploads.decrementAndGet();
+            }
+        }
+
+        public synchronized void completeUpload(String uploadId, List<String> partETags) throws IOException {
+            ByteArrayOutputStream bout = new ByteArrayOutputStream();
+            for(int i=0; i<partETags.size(); i++) {
+                assert partETags.get(i).equals("etag"+(i+1));
+                bout.write(parts.get(i+1));
+            }
+            object = bout.toByteArray();
+        }
+
+        public synchronized void abortUpload(String uploadId) {
+            aborted = true;
+        }
+    }
+
+    /**
+     * Uploads a stream of several parts with transient part failures, and asserts that parts are retried, uploaded
+     * concurrently by a bounded number of threads, and assembled in order.
+     *
+     * @throws FileTransferException should not happen
+     */
+    @Test
+    public void testUpload() throws FileTransferException {
+        for(int length : new int[]{PART_SIZE*10+1234, PART_SIZE*4}) {
+            byte data[] = new byte[length];
+            new Random().nextBytes(data);
+
+            MemoryUploadClient client = new MemoryUploadClient(2);
+            S3MultipartUpload upload = new S3MultipartUpload(client, PART_SIZE, 3, 2);
+            upload.setRetryDelay(1);
+
+            assert upload.upload(Arrays.copyOf(data, PART_SIZE), PART_SIZE, new ByteArrayInputStream(data, PART_SIZE, length-PART_SIZE)) == length;
+            assert Arrays.equals(data, client.object);
+            assert !client.aborted;
+            assert client.maxConcurrentUploads > 1 && client.maxConcurrentUploads <= 3;
+        }
+    }
+
+    /**
+     * Asserts that the upload is aborted when a part fails more times than it is retried, and when the source stream
+     * cannot be read.
+     */
+    @Test
+    public void testAbort() {
+        MemoryUploadClient client = new MemoryUploadClient(3);
+        S3MultipartUpload upload = new S3MultipartUpload(client, PART_SIZE, 2, 2);
+        upload.setRetryDelay(1);
+        try {
+            upload.upload(new byte[PART_SIZE], PART_SIZE, new ByteArrayInputStream(new byte[PART_SIZE*8]));
+            assert false;
+        }
+        catch(FileTransferException e) {
+            assert e.getReason() == FileTransferException.WRITING_DESTINATION;
+        }
+        assert client.aborted && client.object == null;
+
+        client = new MemoryUploadClient(0);
+        upload = new S3MultipartUpload(client, PART_SIZE, 2, 2);
+        try {
+            upload.upload(new byte[PART_SIZE], PART_SIZE, new InputStream() {
+                @Override
+                public int read() throws IOException {
+                    throw new IOException();
+                }
+            });
+            assert false;
+        }
+        catch(FileTransferException e) {
+            assert e.getReason() == FileTransferException.READING_SOURCE;
+        }
+        assert client.aborted && client.object == null;
+    }
+
+    /**
+     * Asserts that the part size grows so that the maximum number of parts is not exceeded.
+     */
+    @Test
+    public void testPartSize() {
+        S3MultipartUpload upload = new S3MultipartUpload(new MemoryUploadClient(0));
+        assert upload.getPartSize(1) == S3MultipartUpload.DEFAULT_PART_SIZE;
+        assert upload.getPartSize(S3MultipartUpload.PART_SIZE_INCREASE_INTERVAL) == S3MultipartUpload.DEFAULT_PART_SIZE;
+        assert upload.getPartSize(S3MultipartUpload.PART_SIZE_INCREASE_INTERVAL+1) == S3MultipartUpload.DEFAULT_PART_SIZE*2;
+        assert upload.getPartSize(S3MultipartUpload.MAX_PARTS) == S3MultipartUpload.MAX_PART_SIZE;
+    }
+
+    /**
+     * Asserts that the first part is read up to the part size, and that a stream that ends before is read into a
+     * buffer of its size.
+     *
+     * @throws IOException should not happen
+     */
+    @Test
+    public void testReadFirstPart() throws IOException {
+        int partSize = PART_SIZE*5+1;
+        for(int length : new int[]{0, 100, PART_SIZE*3, partSize-1, partSize, partSize*2}) {
+            byte data[] = new byte[length];
+            new Random().nextBytes(data);
+
+            S3MultipartUpload upload = new S3MultipartUpload(new MemoryUploadClient(0), partSize, 2, 0);
+            ByteArrayInputStream in = new ByteArrayInputStream(data);
+            byte firstPart[] = upload.readFirstPart(in);
+
+            assert firstPart.length == Math.min(length, partSize);
+            assert Arrays.equals(firstPart, Arrays.copyOf(data, firstPart.length));
+            // The rest of the stream is left to be read
+            assert in.available() == length-firstPart.length;
+        }
+    }
+
+    /**
+     * Returns the signature of the given request, computed the way S3 does: the resource always includes the bucket
+     * name, whether it is addressed in the host name or in the path.
+     */
+    private static String sign(HttpExchange exchange, String resource) throws IOException {
+        String contentType = exchange.getRequestHeaders().getFirst("Content-Type");
+        String stringToSign = exchange.getRequestMethod()+"\n"
+                +"\n"
+                +(contentType==null?"":contentType)+"\n"
+                +"\n"
+                +"x-amz-date:"+exchange.getRequestHeaders().getFirst("x-amz-date")+"\n"
+                +resource+"?"+URLDecoder.decode(exchange.getRequestURI().getRawQuery(), "UTF-8");
+        try {
+            Mac mac = Mac.getInstance("HmacSHA1");
+            mac.init(new SecretKeySpec("secret".getBytes("UTF-8"), "HmacSHA1"));
+            return Base64Encoder.encode(mac.doFinal(stringToSign.getBytes("UTF-8")));
+        }
+        catch(GeneralSecurityException e) {
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * Uploads a stream with {@link RestMultipartUploadClient} to a local HTTP server implementing the multipart
+     * upload requests, and asserts that the object is assembled properly and that requests are signed properly.
+     * Returns the requests received by the server.
+     */
+    private static List<String> uploadWithRestClient(boolean virtualHost) throws IOException {
+        final Map<Integer, byte[]> parts = new TreeMap<Integer, byte[]>();
+        final ByteArrayOutputStream object = new ByteArrayOutputStream();
+        final List<String> requests = new ArrayList<String>();
+
+        HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", new HttpHandler() {
+            public void handle(HttpExchange exchange) throws IOException {
+                String method = exchange.getRequestMethod();
+                String query = exchange.getRequestURI().getRawQuery();
+                String body = "";
+                String eTag = null;
+
+                synchronized(requests) {
+                    requests.add(method+" "+exchange.getRequestURI().getRawPath()+"?"+query);
+                    assert exchange.getRequestHeaders().getFirst("Authorization").equals("AWS access:"+sign(exchange, "/bucket/folder/an%20object"));
+
+                    InputStream in = exchange.getRequestBody();
+                    ByteArrayOutputStream bout = new ByteArrayOutputStream();
+                    StreamUtils.copyStream(in, bout);
+
+                    if(query.equals("uploads")) {
+                        body = "<InitiateMultipartUploadResult><UploadId>id+1</UploadId></InitiateMultipartUploadResult>";
+                    }
+                    else if(method.equals("PUT")) {
+                        Matcher matcher = Pattern.compile("partNumber=(\\d+)&uploadId=id%2B1").matcher(query);
+                        assert matcher.matches();
+                        int partNumber = Integer.parseInt(matcher.group(1));
+                        parts.put(partNumber, bout.toByteArray());
+                        eTag = "\"etag"+partNumber+"\"";
+                    }
+                    else if(method.equals("POST")) {
+                        Matcher matcher = Pattern.compile("<PartNumber>(\\d+)</PartNumber><ETag>\"etag(\\d+)\"</ETag>").matcher(bout.toString("UTF-8"));
+                        while(matcher.find()) {
+                            assert matcher.group(1).equals(matcher.group(2));
+                            object.write(parts.get(Integer.parseInt(matcher.group(1))));
+                        }
+                        body = "<CompleteMultipartUploadResult/>";
+                    }
+                }
+
+                if(eTag!=null)
+                    exchange.getResponseHeaders().set("ETag", eTag);
+                byte response[] = body.getBytes("UTF-8");
+                exchange.sendResponseHeaders(200, response.length==0?-1:response.length);
+                if(response.length>0)
+                    exchange.getResponseBody().write(response);
+                exchange.close();
+            }
+        });
+        server.start();
+        try {
+            byte data[] = new byte[PART_SIZE*3+100];
+            new Random().nextBytes(data);
+
+            MultipartUploadClient client = new RestMultipartUploadClient("http://localhost:"+server.getAddress().getPort(),
+                    "access", "secret", "bucket", "folder/an object", virtualHost);
+            S3MultipartUpload upload = new S3MultipartUpload(client, PART_SIZE, 2, 0);
+            upload.upload(Arrays.copyOf(data, PART_SIZE), PART_SIZE, new ByteArrayInputStream(data, PART_SIZE, data.length-PART_SIZE));
+
+            assert Arrays.equals(data, object.toByteArray());
+            assert requests.size() == 6;
+            return requests;
+        }
+        finally {
+            server.stop(0);
+        }
+    }
+
+    /**
+     * Uploads a stream with {@link RestMultipartUploadClient}, addressing the bucket in the path of the requests.
+     *
+     * @throws IOException should not happen
+     */
+    @Test
+    public void testRestClientPathStyle() throws IOException {
+        assert uploadWithRestClient(false).get(0).equals("POST /bucket/folder/an%20object?uploads");
+    }
+
+    /**
+     * Uploads a stream with {@link RestMultipartUploadClient}, the endpoint designating the bucket: the bucket name
+     * must not be repeated in the path of the requests, but must still be signed.
+     *
+     * @throws IOException should not happen
+     */
+    @Test
+    public void testRestClientVirtualHostStyle() throws IOException {
+        assert uploadWithRestClient(true).get(0).equals("POST /folder/an%20object?uploads");
+    }
+}
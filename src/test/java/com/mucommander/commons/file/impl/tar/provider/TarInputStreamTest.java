@@ -0,0 +1,203 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2010 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.commons.file.impl.tar.provider;
+
+import com.mucommander.commons.io.StreamUtils;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A test case for the entry offsets recorded by {@link TarInputStream}, which allow a stream to be repositioned at
+ * the start of an entry.
+ *
+ * @see TarInputStream
+ */
+public class TarInputStreamTest {
+
+    /** A name too long for a tar header, stored in a GNU <code>././@LongLink</code> entry */
+    private final static String LONG_NAME;
+
+    static {
+        StringBuilder sb = new StringBuilder();
+        while(sb.length()<TarConstants.NAMELEN*2)
+            sb.append("a long folder name/");
+        sb.append("file.txt");
+        LONG_NAME = sb.toString();
+    }
+
+    /**
+     * An input stream of zeros, which skips bytes without producing them.
+     */
+    private static class ZeroInputStream extends InputStream {
+        private long remaining;
+
+        private ZeroInputStream(long length) {
+            this.remaining = length;
+        }
+
+        @Override
+        public int read() {
+            if(remaining==0)
+                return -1;
+            remaining--;
+            return 0;
+        }
+
+        @Override
+        public int read(byte b[], int off, int len) {
+            if(remaining==0)
+                return -1;
+            int n = (int)Math.min(len, remaining);
+            Arrays.fill(b, off, off+n, (byte)0);
+            remaining -= n;
+            return n;
+        }
+
+        @Override
+        public long skip(long n) {
+            n = Math.min(n, remaining);
+            remaining -= n;
+            return n;
+        }
+    }
+
+    private static byte[] createHeader(String name, long size) {
+        TarEntry entry = new TarEntry(name);
+        entry.setSize(size);
+        byte header[] = new byte[TarBuffer.DEFAULT_RCDSIZE];
+        entry.writeEntryHeader(header);
+        return header;
+    }
+
+    private static byte[] createArchive(String names[], byte data[][]) throws IOException {
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        TarOutputStream tout = new TarOutputStream(bout);
+        tout.setLongFileMode(TarOutputStream.LONGFILE_GNU);
+        for(int i=0; i<names.length; i++) {
+            TarEntry entry = new TarEntry(names[i]);
+            entry.setSize(data[i].length);
+            tout.putNextEntry(entry);
+            tout.write(data[i]);
+            tout.closeEntry();
+        }
+        tout.close();
+        return bout.toByteArray();
+    }
+
+    /**
+     * Ensures that the offset of an entry whose name is stored in a GNU long name entry is that of the long name
+     * entry, so that the entry is found with its long name when the stream is repositioned at its offset.
+     *
+     * @throws IOException should not happen
+     */
+    @Test
+    public void testLongNameEntryOffset() throws IOException {
+        String names[] = {"first.txt", LONG_NAME, "last.txt"};
+        byte data[][] = {"first".getBytes("UTF-8"), new byte[1500], "last".getBytes("UTF-8")};
+        Arrays.fill(data[1], (byte)'x');
+        byte archive[] = createArchive(names, data);
+
+        List<Long> offsets = new ArrayList<Long>();
+        TarInputStream tin = new TarInputStream(new ByteArrayInputStream(archive));
+        TarEntry entry;
+        while((entry=tin.getNextEntry())!=null) {
+            assert entry.getName().equals(names[offsets.size()]);
+            offsets.add(entry.getOffset());
+        }
+        tin.close();
+
+        assert offsets.size() == names.length;
+        // The long name entry is made of a header and a record holding the name, followed by the entry's own header
+        assert offsets.get(1) == 1024;
+        assert offsets.get(2) == offsets.get(1) + 3*512 + 1536;
+
+        for(int i=0; i<names.length; i++) {
+            // Reposition the stream like an archive with random read access does
+            InputStream in = new ByteArrayInputStream(archive);
+            assert in.skip(offsets.get(i)) == offsets.get(i);
+            tin = new TarInputStream(in);
+            entry = tin.getNextEntry();
+            assert entry.getName().equals(names[i]);
+            assert Arrays.equals(data[i], readEntry(tin));
+            tin.close();
+
+            // Skip to the entry, like the stream of a compressed archive does
+            tin = new TarInputStream(new ByteArrayInputStream(archive), offsets.get(i));
+            assert tin.getNextEntry().getName().equals(names[i]);
+            tin.close();
+        }
+    }
+
+    private static byte[] readEntry(TarInputStream tin) throws IOException {
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        StreamUtils.copyStream(tin, bout);
+        return bout.toByteArray();
+    }
+
+    /**
+     * Ensures that the offsets of entries located past 2 GB do not overflow, both when listing the archive and when
+     * skipping to them.
+     *
+     * @throws IOException should not happen
+     */
+    @Test
+    public void testEntryOffsetPast2GB() throws IOException {
+        long largeSize = Integer.MAX_VALUE + 1000L;
+        // The data of the large entry is padded to a whole record
+        long expectedOffset = 512 + (largeSize+511)/512*512;
+
+        int padding = (int)(expectedOffset-512-largeSize);
+        ByteArrayOutputStream tail = new ByteArrayOutputStream();
+        tail.write(new byte[padding]);
+        tail.write(createHeader("after.txt", 4));
+        tail.write("data".getBytes("UTF-8"));
+        // Padding of the last entry and end of archive records
+        tail.write(new byte[508+2*512]);
+
+        TarInputStream tin = new TarInputStream(new SequenceInputStream(
+                new SequenceInputStream(new ByteArrayInputStream(createHeader("large.bin", largeSize)), new ZeroInputStream(largeSize)),
+                new ByteArrayInputStream(tail.toByteArray())));
+        TarEntry entry = tin.getNextEntry();
+        assert entry.getName().equals("large.bin");
+        assert entry.getSize() == largeSize;
+        assert entry.getOffset() == 0;
+
+        entry = tin.getNextEntry();
+        assert entry.getName().equals("after.txt");
+        assert entry.getOffset() == expectedOffset;
+        assert tin.getNextEntry() == null;
+        tin.close();
+
+        // Skip straight to the entry, the bytes that precede it are not looked at
+        tin = new TarInputStream(new SequenceInputStream(new ZeroInputStream(expectedOffset),
+                new ByteArrayInputStream(tail.toByteArray(), padding, tail.size()-padding)), expectedOffset);
+        entry = tin.getNextEntry();
+        assert entry.getName().equals("after.txt");
+        assert "data".equals(new String(readEntry(tin), "UTF-8"));
+        tin.close();
+    }
+}
@@ -0,0 +1,413 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2010 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.commons.file.impl.zip.provider;
+
+import com.mucommander.commons.file.AbstractFile;
+import com.mucommander.commons.file.FileFactory;
+import com.mucommander.commons.io.RandomAccessOutputStream;
+import com.mucommander.commons.io.StreamUtils;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Iterator;
+
+/**
+ * Tests the Zip64 extensions of the zip provider. Archives larger than 4GB are too expensive to create in a unit test:
+ * the Zip64 end of central directory is tested with an archive that has more than 65535 entries, and sizes and offsets
+ * of 4GB or more are tested at the header level, with entries whose sizes are faked.
+ */
+public class Zip64Test {
+
+    /** Number of entries of the test archive, more than a Zip32 archive can hold */
+    private final static int NB_ENTRIES = 70000;
+
+    /** A size that does not fit in a Zip32 field */
+    private final static long LARGE_SIZE = 5000000000L;
+
+    /**
+     * A <code>ZipEntryOutputStream</code> of a STORED entry that pretends to have written the given number of bytes,
+     * so that entries larger than 4GB can be finalized without writing their data.
+     */
+    private static class LargeEntryOutputStream extends ZipEntryOutputStream {
+
+        private final long size;
+
+        private LargeEntryOutputStream(long size) {
+            super(null, ZipConstants.STORED);
+            this.size = size;
+        }
+
+        @Override
+        public void write(byte b[], int off, int len) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public long getTotalIn() {
+            return size;
+        }
+
+        @Override
+        public long getTotalOut() {
+            return size;
+        }
+    }
+
+    /**
+     * Returns a STORED entry with the given name, whose sizes are not known yet.
+     */
+    private static ZipEntry createEntry(String name) {
+        ZipEntry ze = new ZipEntry(name);
+        ze.setMethod(ZipConstants.STORED);
+        ze.setTime(System.currentTimeMillis());
+        return ze;
+    }
+
+    /**
+     * Returns the Zip64 extended information extra field contained in the given extra field data, <code>null</code>
+     * if there is none.
+     */
+    private static Zip64ExtendedInformationExtraField getZip64ExtraField(byte[] extra) throws IOException {
+        for (ZipExtraField field : ExtraFieldUtils.parse(extra)) {
+            if (field instanceof Zip64ExtendedInformationExtraField)
+                return (Zip64ExtendedInformationExtraField)field;
+        }
+        return null;
+    }
+
+    /**
+     * Writes the central file header of an entry with the given sizes and local file header offset, and asserts that
+     * the values that do not fit in Zip32 fields, and only them, are stored in a Zip64 extended information extra
+     * field.
+     */
+    private static void assertCentralFileHeader(long size, long compressedSize, long headerOffset) throws IOException {
+        ZipEntry ze = createEntry("entry");
+        ze.setSize(size);
+        ze.setCompressedSize(compressedSize);
+        ze.setCrc(0x12345678L);
+
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        long length = ZipOutputStream.writeCentralFileHeader(ze, bout, ZipConstants.UTF_8, headerOffset, true, new ZipBuffer());
+        byte[] cfh = bout.toByteArray();
+        assert length == cfh.length;
+
+        boolean zip64Size = size >= ZipConstants.ZIP64_MAGIC;
+        boolean zip64CompressedSize = compressedSize >= ZipConstants.ZIP64_MAGIC;
+        boolean zip64Offset = headerOffset >= ZipConstants.ZIP64_MAGIC;
+        boolean zip64 = zip64Size || zip64CompressedSize || zip64Offset;
+
+        assert Arrays.equals(Arrays.copyOfRange(cfh, 0, 4), ZipConstants.CFH_SIG);
+        assert ZipShort.getValue(cfh, 6) == (zip64 ? 45 : 20);
+        assert ZipLong.getValue(cfh, 16) == 0x12345678L;
+        assert ZipLong.getValue(cfh, 20) == (zip64CompressedSize ? ZipConstants.ZIP64_MAGIC : compressedSize);
+        assert ZipLong.getValue(cfh, 24) == (zip64Size ? ZipConstants.ZIP64_MAGIC : size);
+        assert ZipLong.getValue(cfh, 42) == (zip64Offset ? ZipConstants.ZIP64_MAGIC : headerOffset);
+
+        int nameLength = ZipShort.getValue(cfh, 28);
+        int extraLength = ZipShort.getValue(cfh, 30);
+        Zip64ExtendedInformationExtraField field = getZip64ExtraField(Arrays.copyOfRange(cfh, 46 + nameLength, 46 + nameLength + extraLength));
+        if (!zip64) {
+            assert field == null;
+            return;
+        }
+
+        // The field only holds the values whose Zip32 field is set to 0xFFFFFFFF, in this order
+        assert extraLength == 4 + (zip64Size ? 8 : 0) + (zip64CompressedSize ? 8 : 0) + (zip64Offset ? 8 : 0);
+        field.parseCentralDirectoryData(zip64Size, zip64CompressedSize, zip64Offset);
+        if (zip64Size)
+            assert field.getSize() == size;
+        if (zip64CompressedSize)
+            assert field.getCompressedSize() == compressedSize;
+        if (zip64Offset)
+            assert field.getHeaderOffset() == headerOffset;
+    }
+
+    /**
+     * Returns the content of the given file.
+     */
+    private static byte[] readFile(AbstractFile file) throws IOException {
+        byte[] b = new byte[(int)file.getSize()];
+        InputStream in = file.getInputStream();
+        try {
+            StreamUtils.readFully(in, b);
+        }
+        finally {
+            in.close();
+        }
+        return b;
+    }
+
+    /**
+     * Asserts that the Zip64 extended information extra field is written and parsed properly, with the central
+     * directory layout containing only the values that do not fit in Zip32 fields.
+     *
+     * @throws IOException should not happen
+     */
+    @Test
+    public void testExtraField() throws IOException {
+        Zip64ExtendedInformationExtraField field = new Zip64ExtendedInformationExtraField();
+        field.setSize(5000000000L);
+        field.setCompressedSize(123);
+        field.setHeaderOffset(6000000000L);
+        field.setCentralDirectoryValues(true, false, true);
+
+        byte[] data = field.getCentralDirectoryData();
+        assert data.length == 16;
+        assert field.getCentralDirectoryLength().getValue() == 16;
+        assert field.getLocalFileDataData().length == 16;
+
+        Zip64ExtendedInformationExtraField parsed = new Zip64ExtendedInformationExtraField();
+        parsed.parseFromLocalFileData(data, 0, data.length);
+        parsed.parseCentralDirectoryData(true, false, true);
+        assert parsed.getSize() == 5000000000L;
+        assert parsed.getHeaderOffset() == 6000000000L;
+
+        assert ZipEightByteInteger.getValue(ZipEightByteInteger.getBytes(Long.MAX_VALUE), 0) == Long.MAX_VALUE;
+    }
+
+    /**
+     * Creates an archive with more than 65535 entries, asserts that it can be read back by both
+     * <code>java.util.zip.ZipFile</code> and {@link ZipFile}, and that entries can then be deleted and the archive
+     * defragmented.
+     *
+     * @throws IOException should not happen
+     */
+    @Test
+    public void testManyEntries() throws IOException {
+        AbstractFile tempFile = FileFactory.getTemporaryFile(getClass().getName()+".zip", true);
+        try {
+            OutputStream out = tempFile.getOutputStream();
+            ZipOutputStream zout = new ZipOutputStream(out);
+            try {
+                for(int i=0; i<NB_ENTRIES; i++) {
+                    zout.putNextEntry(new ZipEntry("entry"+i));
+                    zout.write(i);
+                }
+            }
+            finally {
+                zout.close();
+            }
+
+            java.util.zip.ZipFile jzf = new java.util.zip.ZipFile(tempFile.getAbsolutePath());
+            try {
+                assert jzf.size() == NB_ENTRIES;
+                assertEntryData(jzf.getInputStream(jzf.getEntry("entry"+(NB_ENTRIES-1))), NB_ENTRIES-1);
+            }
+            finally {
+                jzf.close();
+            }
+
+            ZipFile zf = new ZipFile(tempFile);
+            assert zf.getNbEntries() == NB_ENTRIES;
+            assertEntryData(zf.getInputStream(zf.getEntry("entry"+(NB_ENTRIES-1))), NB_ENTRIES-1);
+
+            // Delete the first entry of the archive and move all the others back to fill the gap
+            zf.deleteEntry(zf.getEntry("entry0"));
+            zf.defragment();
+
+            zf = new ZipFile(tempFile);
+            assert zf.getNbEntries() == NB_ENTRIES-1;
+            Iterator<ZipEntry> entries = zf.getEntries();
+            assert entries.next().getName().equals("entry1");
+            assertEntryData(zf.getInputStream(zf.getEntry("entry"+(NB_ENTRIES-1))), NB_ENTRIES-1);
+
+            jzf = new java.util.zip.ZipFile(tempFile.getAbsolutePath());
+            try {
+                assert jzf.size() == NB_ENTRIES-1;
+                assertEntryData(jzf.getInputStream(jzf.getEntry("entry1")), 1);
+            }
+            finally {
+                jzf.close();
+            }
+        }
+        finally {
+            tempFile.delete();
+        }
+    }
+
+    /**
+     * Asserts that sizes and local file header offsets of 4GB or more are stored in the Zip64 extended information
+     * extra field of the central file header, alone or together, and that no such field is written otherwise.
+     *
+     * @throws IOException should not happen
+     */
+    @Test
+    public void testLargeCentralFileHeader() throws IOException {
+        assertCentralFileHeader(LARGE_SIZE, LARGE_SIZE - 1000, 6000000000L);
+        assertCentralFileHeader(LARGE_SIZE, 1000, 0);
+        assertCentralFileHeader(1000, LARGE_SIZE, 0);
+        assertCentralFileHeader(1000, 1000, 6000000000L);
+        assertCentralFileHeader(ZipConstants.ZIP64_MAGIC, ZipConstants.ZIP64_MAGIC - 1, ZipConstants.ZIP64_MAGIC - 1);
+        assertCentralFileHeader(1000, 1000, 1000);
+    }
+
+    /**
+     * Asserts that the data descriptor of an entry whose sizes are 4GB or more is 24 bytes long, with eight-byte sizes,
+     * and that it is 16 bytes long otherwise.
+     *
+     * @throws IOException should not happen
+     */
+    @Test
+    public void testZip64DataDescriptor() throws IOException {
+        ZipBuffer zipBuffer = new ZipBuffer();
+
+        ZipEntry ze = createEntry("large");
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        ZipOutputStream.finalizeEntryData(ze, new LargeEntryOutputStream(LARGE_SIZE), bout, true, zipBuffer);
+        assert ze.getSize() == LARGE_SIZE;
+        assert ze.getCompressedSize() == LARGE_SIZE;
+        // The data descriptor is written by the caller
+        assert bout.size() == 0;
+
+        assert ZipOutputStream.getDataDescriptorLength(ze) == 24;
+        assert ZipOutputStream.writeDataDescriptor(ze, bout, zipBuffer) == 24;
+        byte[] dd = bout.toByteArray();
+        assert dd.length == 24;
+        assert Arrays.equals(Arrays.copyOfRange(dd, 0, 4), ZipConstants.DD_SIG);
+        assert ZipLong.getValue(dd, 4) == ze.getCrc();
+        assert ZipEightByteInteger.getValue(dd, 8) == LARGE_SIZE;
+        assert ZipEightByteInteger.getValue(dd, 16) == LARGE_SIZE;
+
+        ze = createEntry("small");
+        ZipOutputStream.finalizeEntryData(ze, new LargeEntryOutputStream(1000), bout, true, zipBuffer);
+        bout.reset();
+        assert ZipOutputStream.getDataDescriptorLength(ze) == 16;
+        assert ZipOutputStream.writeDataDescriptor(ze, bout, zipBuffer) == 16;
+        dd = bout.toByteArray();
+        assert dd.length == 16;
+        assert ZipLong.getValue(dd, 8) == 1000;
+        assert ZipLong.getValue(dd, 12) == 1000;
+    }
+
+    /**
+     * Asserts that room for a Zip64 extended information extra field is reserved in the local file header of an
+     * entry of unknown size written to a random access stream, and that the sizes of an entry of 4GB or more are
+     * written in it once the entry has been finalized.
+     *
+     * @throws IOException should not happen
+     */
+    @Test
+    public void testReservedLocalZip64Field() throws IOException {
+        AbstractFile tempFile = FileFactory.getTemporaryFile(getClass().getName()+".zip", true);
+        try {
+            ZipBuffer zipBuffer = new ZipBuffer();
+            ZipEntry ze = createEntry("large");
+            ZipEntryInfo entryInfo = new ZipEntryInfo();
+            ze.setEntryInfo(entryInfo);
+
+            RandomAccessOutputStream raos = tempFile.getRandomAccessOutputStream();
+            try {
+                entryInfo.headerOffset = 0;
+                entryInfo.dataOffset = ZipOutputStream.writeLocalFileHeader(ze, raos, ZipConstants.UTF_8, false, zipBuffer);
+                assert entryInfo.localZip64;
+
+                ZipOutputStream.finalizeEntryData(ze, new LargeEntryOutputStream(LARGE_SIZE), raos, false, zipBuffer);
+            }
+            finally {
+                raos.close();
+            }
+
+            byte[] lfh = readFile(tempFile);
+            assert lfh.length == entryInfo.dataOffset;
+            assert Arrays.equals(Arrays.copyOfRange(lfh, 0, 4), ZipConstants.LFH_SIG);
+            assert ZipShort.getValue(lfh, 4) == 45;
+            assert ZipLong.getValue(lfh, 18) == ZipConstants.ZIP64_MAGIC;
+            assert ZipLong.getValue(lfh, 22) == ZipConstants.ZIP64_MAGIC;
+
+            int nameLength = ZipShort.getValue(lfh, 26);
+            int extraLength = ZipShort.getValue(lfh, 28);
+            // The reserved field is the last one, its 16 data bytes end where the entry data starts
+            assert 30 + nameLength + extraLength == lfh.length;
+            Zip64ExtendedInformationExtraField field = getZip64ExtraField(Arrays.copyOfRange(lfh, 30 + nameLength, lfh.length));
+            assert field != null;
+            assert field.getSize() == LARGE_SIZE;
+            assert field.getCompressedSize() == LARGE_SIZE;
+        }
+        finally {
+            tempFile.delete();
+        }
+    }
+
+    /**
+     * Creates an archive on a random access stream, so that room for a Zip64 extended information extra field is
+     * reserved in the local file header of entries whose size is not known, and asserts that the archive can be
+     * read back by <code>java.util.zip</code>, which also parses the local file headers, and {@link ZipFile}.
+     *
+     * @throws IOException should not happen
+     */
+    @Test
+    public void testReservedLocalZip64FieldArchive() throws IOException {
+        AbstractFile tempFile = FileFactory.getTemporaryFile(getClass().getName()+".zip", true);
+        try {
+            ZipOutputStream zout = new ZipOutputStream(tempFile.getRandomAccessOutputStream());
+            try {
+                assert zout.isSeekable();
+                for(int i=0; i<10; i++) {
+                    zout.putNextEntry(new ZipEntry("entry"+i));
+                    zout.write(i);
+                }
+            }
+            finally {
+                zout.close();
+            }
+
+            java.util.zip.ZipInputStream zin = new java.util.zip.ZipInputStream(tempFile.getInputStream());
+            try {
+                for(int i=0; i<10; i++) {
+                    java.util.zip.ZipEntry entry = zin.getNextEntry();
+                    assert entry.getName().equals("entry"+i);
+                    assert zin.read() == i;
+                    assert zin.read() == -1;
+                }
+                assert zin.getNextEntry() == null;
+            }
+            finally {
+                zin.close();
+            }
+
+            ZipFile zf = new ZipFile(tempFile);
+            assert zf.getNbEntries() == 10;
+            for(int i=0; i<10; i++) {
+                ZipEntry entry = zf.getEntry("entry"+i);
+                assert entry.getSize() == 1;
+                assertEntryData(zf.getInputStream(entry), i);
+            }
+        }
+        finally {
+            tempFile.delete();
+        }
+    }
+
+    /**
+     * Asserts that the given stream contains the single byte written for the entry of the given index.
+     */
+    private static void assertEntryData(InputStream in, int index) throws IOException {
+        try {
+            assert in.read() == (index & 0xFF);
+            assert in.read() == -1;
+        }
+        finally {
+            in.close();
+        }
+    }
+}
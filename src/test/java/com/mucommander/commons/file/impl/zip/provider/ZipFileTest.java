@@ -0,0 +1,215 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2010 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.commons.file.impl.zip.provider;
+
+import com.mucommander.commons.file.AbstractFile;
+import com.mucommander.commons.file.FileFactory;
+import com.mucommander.commons.io.StreamUtils;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.ZipInputStream;
+
+/**
+ * A test case for {@link ZipFile}.
+ *
+ * @see ZipFile
+ */
+public class ZipFileTest {
+
+    /** Number of entries of the test archive */
+    private final static int NB_ENTRIES = 16;
+
+    /** Number of threads reading entries at the same time */
+    private final static int NB_THREADS = 8;
+
+    /**
+     * Creates an archive with stored and deflated entries, reads all of them from several threads at the same time
+     * with interleaved reads, and asserts that each thread reads the data of its own entries.
+     *
+     * @throws Exception should not happen
+     */
+    @Test
+    public void testConcurrentEntryReads() throws Exception {
+        AbstractFile tempFile = FileFactory.getTemporaryFile(getClass().getName()+".zip", true);
+        try {
+            final byte entriesData[][] = new byte[NB_ENTRIES][];
+            Random random = new Random();
+
+            OutputStream out = tempFile.getOutputStream();
+            ZipOutputStream zout = new ZipOutputStream(out);
+            try {
+                for(int i=0; i<NB_ENTRIES; i++) {
+                    entriesData[i] = new byte[100000+random.nextInt(100000)];
+                    random.nextBytes(entriesData[i]);
+
+                    ZipEntry entry = new ZipEntry("entry"+i);
+                    zout.setMethod(i%2==0?ZipConstants.DEFLATED:ZipConstants.STORED);
+                    if(i%2!=0) {
+                        java.util.zip.CRC32 crc = new java.util.zip.CRC32();
+                        crc.update(entriesData[i]);
+                        entry.setSize(entriesData[i].length);
+                        entry.setCrc(crc.getValue());
+                    }
+                    zout.putNextEntry(entry);
+                    zout.write(entriesData[i]);
+                }
+            }
+            finally {
+                zout.close();
+            }
+
+            final ZipFile zf = new ZipFile(tempFile);
+            final AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+            Thread threads[] = new Thread[NB_THREADS];
+            for(int t=0; t<NB_THREADS; t++) {
+                final int threadIndex = t;
+                threads[t] = new Thread() {
+                    @Override
+                    public void run() {
+                        try {
+                            for(int i=threadIndex; i<NB_ENTRIES; i+=NB_THREADS)
+                                assert Arrays.equals(entriesData[i], readEntry(zf, "entry"+i)) : "entry"+i;
+                        }
+                        catch(Throwable e) {
+                            error.set(e);
+                        }
+                    }
+                };
+                threads[t].start();
+            }
+
+            for(Thread thread : threads)
+                thread.join();
+
+            assert error.get()==null : error.get();
+        }
+        finally {
+            tempFile.delete();
+        }
+    }
+
+    /**
+     * Writes an archive with several compression threads, to a regular stream (with data descriptors) and to a
+     * random access stream, and asserts that both can be read back by <code>java.util.zip</code> and {@link ZipFile}.
+     *
+     * @throws IOException should not happen
+     */
+    @Test
+    public void testParallelDeflate() throws IOException {
+        byte entriesData[][] = new byte[NB_ENTRIES][];
+        Random random = new Random();
+        for(int i=0; i<NB_ENTRIES; i++) {
+            // Alternate small and large entries, the large ones spanning several blocks
+            entriesData[i] = new byte[i%4==0?random.nextInt(1000000):random.nextInt(10000)];
+            for(int j=0; j<entriesData[i].length; j++)
+                entriesData[i][j] = (byte)('a'+random.nextInt(4));
+        }
+
+        AbstractFile tempFile = FileFactory.getTemporaryFile(getClass().getName()+".zip", true);
+        try {
+            for(int pass=0; pass<2; pass++) {
+                if(tempFile.exists())
+                    tempFile.delete();
+
+                ZipOutputStream zout = new ZipOutputStream(pass==0?tempFile.getOutputStream():tempFile.getRandomAccessOutputStream());
+                zout.setNbDeflaterThreads(4);
+                try {
+                    for(int i=0; i<NB_ENTRIES; i++) {
+                        if(i==NB_ENTRIES/2)
+                            zout.putNextEntry(new ZipEntry("directory/"));
+
+                        zout.putNextEntry(new ZipEntry("entry"+i));
+                        zout.write(entriesData[i]);
+                    }
+                }
+                finally {
+                    zout.close();
+                }
+
+                java.util.zip.ZipFile jzf = new java.util.zip.ZipFile(tempFile.getAbsolutePath());
+                try {
+                    assert jzf.size() == NB_ENTRIES+1;
+                    for(int i=0; i<NB_ENTRIES; i++)
+                        assert Arrays.equals(entriesData[i], readFully(jzf.getInputStream(jzf.getEntry("entry"+i))));
+                }
+                finally {
+                    jzf.close();
+                }
+
+                ZipInputStream zin = new ZipInputStream(tempFile.getInputStream());
+                try {
+                    int nbEntries = 0;
+                    java.util.zip.ZipEntry entry;
+                    while((entry=zin.getNextEntry())!=null) {
+                        if(!entry.isDirectory()) {
+                            int index = Integer.parseInt(entry.getName().substring(5));
+                            assert Arrays.equals(entriesData[index], readFully(zin));
+                        }
+                        nbEntries++;
+                    }
+                    assert nbEntries == NB_ENTRIES+1;
+                }
+                finally {
+                    zin.close();
+                }
+
+                ZipFile zf = new ZipFile(tempFile);
+                for(int i=0; i<NB_ENTRIES; i++)
+                    assert Arrays.equals(entriesData[i], readEntry(zf, "entry"+i));
+            }
+        }
+        finally {
+            tempFile.delete();
+        }
+    }
+
+    /**
+     * Reads the given stream until its end, without closing it.
+     */
+    private static byte[] readFully(InputStream in) throws IOException {
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        byte b[] = new byte[8192];
+        int nbRead;
+        while((nbRead=in.read(b))!=-1)
+            bout.write(b, 0, nbRead);
+        return bout.toByteArray();
+    }
+
+    /**
+     * Reads the given entry in small chunks, so that reads of concurrent threads are interleaved.
+     */
+    private static byte[] readEntry(ZipFile zf, String name) throws IOException {
+        InputStream in = zf.getInputStream(zf.getEntry(name));
+        try {
+            ByteArrayOutputStream bout = new ByteArrayOutputStream();
+            StreamUtils.copyStream(in, bout, 1000);
+            return bout.toByteArray();
+        }
+        finally {
+            in.close();
+        }
+    }
+}
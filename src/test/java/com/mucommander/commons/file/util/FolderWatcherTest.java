@@ -0,0 +1,180 @@
+/**
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2010 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.commons.file.util;
+
+import com.mucommander.commons.file.AbstractFile;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A test case for the {@link FolderWatcher} class. The tests are skipped on platforms where folders cannot be
+ * watched.
+ */
+public class FolderWatcherTest implements FolderWatchListener {
+
+    /** Number of milliseconds to wait for changes to be reported before timing out */
+    private final static int TIMEOUT = 5000;
+
+    /** Temporary folder used by the current test */
+    private Path folder;
+    /** Watch used by the current test */
+    private FolderWatcher.Watch watch;
+    /** Changes reported to this listener */
+    private BlockingQueue<Report> reports;
+
+    @BeforeMethod
+    public void setUp() throws IOException {
+        folder = Files.createTempDirectory(getClass().getName());
+        reports = new LinkedBlockingQueue<>();
+
+        if(FolderWatcher.isSupported()) {
+            watch = FolderWatcher.watch(folder, null, this);
+            assert watch != null;
+        }
+    }
+
+    @AfterMethod
+    public void tearDown() throws IOException {
+        if(watch!=null)
+            watch.cancel();
+
+        for(String name: new String[]{"a", "b"})
+            Files.deleteIfExists(folder.resolve(name));
+        Files.deleteIfExists(folder);
+    }
+
+    /**
+     * Creates a file and writes to it: a single creation must be reported.
+     *
+     * @throws Exception should not happen
+     */
+    @Test
+    public void testCreateAndWrite() throws Exception {
+        if(watch==null)
+            return;
+
+        Files.write(folder.resolve("a"), new byte[]{1, 2, 3});
+
+        Report report = nextReport();
+        assert report.created.contains("a");
+        assert report.modified.isEmpty();
+        assert report.deleted.isEmpty();
+    }
+
+    /**
+     * Modifies a file, and creates and deletes another one at once: the modification alone must be reported.
+     *
+     * @throws Exception should not happen
+     */
+    @Test
+    public void testCoalescedChanges() throws Exception {
+        if(watch==null)
+            return;
+
+        Files.write(folder.resolve("a"), new byte[]{1});
+        assert nextReport().created.contains("a");
+
+        Files.write(folder.resolve("a"), new byte[]{1, 2});
+        Files.write(folder.resolve("b"), new byte[]{1});
+        Files.delete(folder.resolve("b"));
+
+        Report report = nextReport();
+        assert report.modified.contains("a");
+        assert !report.created.contains("b");
+        assert !report.deleted.contains("b");
+    }
+
+    /**
+     * Deletes the watched folder: the listener must be told to reload the folder.
+     *
+     * @throws Exception should not happen
+     */
+    @Test
+    public void testFolderDeleted() throws Exception {
+        if(watch==null)
+            return;
+
+        Files.delete(folder);
+
+        Report report;
+        do {
+            report = nextReport();
+        } while(!report.folderChanged);
+    }
+
+    /**
+     * Cancels the watch: changes must not be reported anymore.
+     *
+     * @throws Exception should not happen
+     */
+    @Test
+    public void testCancel() throws Exception {
+        if(watch==null)
+            return;
+
+        watch.cancel();
+        watch = null;
+
+        Files.write(folder.resolve("a"), new byte[]{1});
+        assert reports.poll(FolderWatcher.MAX_DELAY*2, TimeUnit.MILLISECONDS) == null;
+    }
+
+
+    /////////////////////////////////
+    // Support methods and classes //
+    /////////////////////////////////
+
+    private Report nextReport() throws InterruptedException {
+        Report report = reports.poll(TIMEOUT, TimeUnit.MILLISECONDS);
+        assert report != null : "No change reported";
+
+        return report;
+    }
+
+    public void childrenChanged(AbstractFile folder, Set<String> created, Set<String> deleted, Set<String> modified) {
+        reports.add(new Report(created, deleted, modified, false));
+    }
+
+    public void folderChanged(AbstractFile folder) {
+        reports.add(new Report(null, null, null, true));
+    }
+
+    private static class Report {
+        private final Set<String> created;
+        private final Set<String> deleted;
+        private final Set<String> modified;
+        private final boolean folderChanged;
+
+        private Report(Set<String> created, Set<String> deleted, Set<String> modified, boolean folderChanged) {
+            this.created = created;
+            this.deleted = deleted;
+            this.modified = modified;
+            this.folderChanged = folderChanged;
+        }
+    }
+}
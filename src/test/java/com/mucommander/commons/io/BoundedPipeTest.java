@@ -0,0 +1,167 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2010 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.commons.io;
+
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * A test case for {@link BoundedPipe}.
+ *
+ * @see BoundedPipe
+ */
+public class BoundedPipeTest {
+
+    /**
+     * Returns an array of random bytes of the given length.
+     */
+    private static byte[] getRandomBytes(int length) {
+        byte bytes[] = new byte[length];
+        new Random().nextBytes(bytes);
+        return bytes;
+    }
+
+    /**
+     * Writes the given bytes to the pipe in a separate thread, mixing single-byte and bulk writes, and closes the
+     * output stream. Returns the thread, the exception that ended it, if any, is stored in <code>error</code>.
+     */
+    private static Thread startProducer(final BoundedPipe pipe, final byte bytes[], final AtomicLong nbWritten,
+                                        final AtomicReference<IOException> error) {
+        Thread thread = new Thread() {
+            @Override
+            public void run() {
+                OutputStream out = pipe.getOutputStream();
+                try {
+                    out.write(bytes[0]);
+                    nbWritten.incrementAndGet();
+                    int offset = 1;
+                    while (offset < bytes.length) {
+                        int len = Math.min(333, bytes.length - offset);
+                        out.write(bytes, offset, len);
+                        offset += len;
+                        nbWritten.addAndGet(len);
+                    }
+                } catch (IOException e) {
+                    error.set(e);
+                } finally {
+                    try {
+                        out.close();
+                    } catch (IOException e) {
+                        error.set(e);
+                    }
+                }
+            }
+        };
+        thread.start();
+
+        return thread;
+    }
+
+    /**
+     * Streams bytes through a pipe and asserts that they are read in order, followed by the end of the stream.
+     *
+     * @throws Exception should not happen
+     */
+    @Test
+    public void testCopy() throws Exception {
+        byte bytes[] = getRandomBytes(1000000);
+        BoundedPipe pipe = new BoundedPipe(1000, 4);
+        AtomicReference<IOException> error = new AtomicReference<>();
+        Thread producer = startProducer(pipe, bytes, new AtomicLong(), error);
+
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        InputStream in = pipe.getInputStream();
+        try {
+            bout.write(in.read());
+            StreamUtils.copyStream(in, bout, 777);
+            assert in.read() == -1;
+        }
+        finally {
+            in.close();
+        }
+
+        producer.join();
+        assert error.get() == null;
+        assert Arrays.equals(bytes, bout.toByteArray());
+    }
+
+    /**
+     * Asserts that the producer is held back when the consumer does not read, and that its writes fail once the
+     * consumer has closed the input stream.
+     *
+     * @throws Exception should not happen
+     */
+    @Test
+    public void testBackpressureAndCancellation() throws Exception {
+        BoundedPipe pipe = new BoundedPipe(1000, 4);
+        AtomicLong nbWritten = new AtomicLong();
+        AtomicReference<IOException> error = new AtomicReference<>();
+        Thread producer = startProducer(pipe, getRandomBytes(1000000), nbWritten, error);
+
+        // The producer can't write more than what the buffers can hold, plus the bytes of the write in progress
+        Thread.sleep(200);
+        assert producer.isAlive();
+        assert nbWritten.get() <= 4 * 1000;
+
+        InputStream in = pipe.getInputStream();
+        in.read(new byte[100]);
+        in.close();
+
+        producer.join(5000);
+        assert !producer.isAlive();
+        assert error.get() != null;
+        assert pipe.isConsumerClosed();
+    }
+
+    /**
+     * Asserts that an exception reported by the producer is thrown to the consumer once the bytes written before have
+     * been read.
+     *
+     * @throws IOException should not happen
+     */
+    @Test
+    public void testFail() throws IOException {
+        BoundedPipe pipe = new BoundedPipe(1000, 4);
+        pipe.getOutputStream().write(new byte[10]);
+        pipe.getOutputStream().flush();
+        IOException failure = new IOException();
+        pipe.fail(failure);
+
+        InputStream in = pipe.getInputStream();
+        assert in.read(new byte[100]) == 10;
+        try {
+            in.read();
+            assert false;
+        }
+        catch (IOException e) {
+            assert e == failure;
+        }
+        finally {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,178 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2010 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.commons.io;
+
+import java.util.Vector;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Measures the throughput of {@link BufferPool} when several threads get and release buffers at the same time, and
+ * compares it with the previous implementation of the pool, which serialized all the calls with a global lock and
+ * looked up buffers in a single list. Each thread repeatedly gets a few buffers of different sizes, touches them and
+ * releases them, which mimics threads copying files or computing checksums.
+ *
+ * <p>This is not a unit test, run it with <code>java BufferPoolBenchmark [nbThreads...]</code>. Thread counts default
+ * to 1, 2, 4, 8, 16 and 32.</p>
+ */
+public class BufferPoolBenchmark {
+
+    private final static int DEFAULT_NB_THREADS[] = {1, 2, 4, 8, 16, 32};
+
+    /** Number of get/release iterations performed by each thread */
+    private final static int NB_ITERATIONS = 200000;
+
+    /** Sizes of the buffers each thread gets at every iteration */
+    private final static int BUFFER_SIZES[] = {8192, 65536, 131072};
+
+    /** Number of times each measure is repeated, the best time is kept */
+    private final static int NB_RUNS = 3;
+
+    /**
+     * The pool implementation being measured.
+     */
+    private interface Pool {
+        byte[] getByteArray(int length);
+        void releaseByteArray(byte buffer[]);
+    }
+
+    /**
+     * The previous implementation of {@link BufferPool}, for byte arrays: a single list of buffers scanned linearly,
+     * guarded by a global lock.
+     */
+    private static class SynchronizedPool implements Pool {
+        private final Vector<byte[]> buffers = new Vector<>();
+        private long poolSize;
+
+        public synchronized byte[] getByteArray(int length) {
+            int nbBuffers = buffers.size();
+            for(int i=0; i<nbBuffers; i++) {
+                byte buffer[] = buffers.elementAt(i);
+                if(buffer.length==length) {
+                    buffers.removeElementAt(i);
+                    poolSize -= length;
+                    return buffer;
+                }
+            }
+
+            return new byte[length];
+        }
+
+        public synchronized void releaseByteArray(byte buffer[]) {
+            // Vector#contains compares arrays by identity
+            if(buffers.contains(buffer) || poolSize+buffer.length>BufferPool.INITIAL_POOL_LIMIT)
+                return;
+
+            buffers.add(buffer);
+            poolSize += buffer.length;
+        }
+    }
+
+    /**
+     * The current implementation of {@link BufferPool}.
+     */
+    private static class CurrentPool implements Pool {
+        public byte[] getByteArray(int length) {
+            return BufferPool.getByteArray(length);
+        }
+
+        public void releaseByteArray(byte buffer[]) {
+            BufferPool.releaseByteArray(buffer);
+        }
+    }
+
+    /**
+     * Has <code>nbThreads</code> threads get and release buffers from the given pool, and returns the time it took,
+     * in nanoseconds.
+     */
+    private static long run(final Pool pool, int nbThreads) throws InterruptedException {
+        final CountDownLatch startLatch = new CountDownLatch(1);
+        final CountDownLatch endLatch = new CountDownLatch(nbThreads);
+
+        for(int t=0; t<nbThreads; t++) {
+            Thread thread = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        startLatch.await();
+                    }
+                    catch(InterruptedException e) {
+                        return;
+                    }
+
+                    byte buffers[][] = new byte[BUFFER_SIZES.length][];
+                    for(int i=0; i<NB_ITERATIONS; i++) {
+                        for(int b=0; b<BUFFER_SIZES.length; b++) {
+                            buffers[b] = pool.getByteArray(BUFFER_SIZES[b]);
+                            buffers[b][i%BUFFER_SIZES[b]] = (byte)i;
+                        }
+
+                        for(int b=0; b<BUFFER_SIZES.length; b++)
+                            pool.releaseByteArray(buffers[b]);
+                    }
+                    endLatch.countDown();
+                }
+            };
+            thread.start();
+        }
+
+        long start = System.nanoTime();
+        startLatch.countDown();
+        endLatch.await();
+
+        return System.nanoTime()-start;
+    }
+
+    private static long getBestTime(Pool pool, int nbThreads) throws InterruptedException {
+        long best = Long.MAX_VALUE;
+        for(int run=0; run<NB_RUNS; run++)
+            best = Math.min(best, run(pool, nbThreads));
+        return best;
+    }
+
+    public static void main(String args[]) throws InterruptedException {
+        int nbThreads[];
+        if(args.length==0) {
+            nbThreads = DEFAULT_NB_THREADS;
+        }
+        else {
+            nbThreads = new int[args.length];
+            for(int i=0; i<args.length; i++)
+                nbThreads[i] = Integer.parseInt(args[i]);
+        }
+
+        // Warm up both implementations
+        getBestTime(new SynchronizedPool(), 4);
+        getBestTime(new CurrentPool(), 4);
+
+        for(int threads : nbThreads) {
+            long nbOperations = (long)threads*NB_ITERATIONS*BUFFER_SIZES.length;
+            long synchronizedTime = getBestTime(new SynchronizedPool(), threads);
+
+            BufferPool.resetStatistics();
+            long currentTime = getBestTime(new CurrentPool(), threads);
+
+            System.out.println(String.format("%2d threads: synchronized %,12d ops/s, current %,12d ops/s (x%.1f) - %s",
+                    threads,
+                    nbOperations*1000000000L/synchronizedTime,
+                    nbOperations*1000000000L/currentTime,
+                    synchronizedTime/(double)currentTime,
+                    BufferPool.getStatistics()));
+        }
+    }
+}
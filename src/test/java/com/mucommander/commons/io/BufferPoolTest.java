@@ -20,6 +20,12 @@ package com.mucommander.commons.io;
 
 import org.testng.annotations.Test;
 
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+
 /**
  * This class is a TestNG test case for {@link BufferPool}.
  *
@@ -156,8 +162,9 @@ public class BufferPoolTest {
         // Test max pool size: max out the pool and verify that releaseBuffer fails (returns false) when trying
         // to add an extra buffer
         assert BufferPool.INITIAL_POOL_LIMIT == BufferPool.getMaxPoolSize();
-        BufferPool.setMaxPoolSize(TEST_MAX_POOL_SIZE);
-        assert TEST_MAX_POOL_SIZE == BufferPool.getMaxPoolSize();
+        // Buffers left in the pool by other tests run in the same VM do not count towards the test limit
+        BufferPool.setMaxPoolSize(originalPoolSize+TEST_MAX_POOL_SIZE);
+        assert originalPoolSize+TEST_MAX_POOL_SIZE == BufferPool.getMaxPoolSize();
         long bufferSize = getBufferSize(BufferPool.getBuffer(factory, TEST_BUFFER_SIZE_1), factory);    // in bytes
         int nbBuffers = (int)(TEST_MAX_POOL_SIZE/bufferSize);
         buffers = new Object[nbBuffers];
@@ -188,6 +195,91 @@ public class BufferPoolTest {
         BufferPool.setMaxPoolSize(BufferPool.INITIAL_POOL_LIMIT);
     }
 
+    /**
+     * Has several threads get and release buffers concurrently, and asserts that a buffer is never handed out to two
+     * threads at the same time and that the pool is left in the same state as it was before the test.
+     *
+     * @throws InterruptedException should not happen
+     */
+    @Test
+    public void testConcurrency() throws InterruptedException {
+        final BufferPool.BufferFactory factory = new BufferPool.ByteArrayFactory();
+        final int originalBufferCount = BufferPool.getBufferCount(factory);
+        final long originalPoolSize = BufferPool.getPoolSize();
+        final Set<Object> usedBuffers = Collections.newSetFromMap(new IdentityHashMap<Object, Boolean>());
+        final AtomicBoolean failed = new AtomicBoolean();
+        BufferPool.Statistics originalStatistics = BufferPool.getStatistics();
+
+        Thread threads[] = new Thread[8];
+        for(int t=0; t<threads.length; t++) {
+            threads[t] = new Thread() {
+                @Override
+                public void run() {
+                    Object buffers[] = new Object[3];
+                    for(int i=0; i<2000; i++) {
+                        for(int b=0; b<buffers.length; b++) {
+                            buffers[b] = BufferPool.getBuffer(factory, b==0?TEST_BUFFER_SIZE_1:TEST_BUFFER_SIZE_2);
+                            synchronized(usedBuffers) {
+                                if(!usedBuffers.add(buffers[b]))
+                                    failed.set(true);
+                            }
+                        }
+
+                        for(Object buffer : buffers) {
+                            synchronized(usedBuffers) {
+                                usedBuffers.remove(buffer);
+                            }
+                            if(!BufferPool.releaseBuffer(buffer, factory))
+                                failed.set(true);
+                        }
+                    }
+                }
+            };
+            threads[t].start();
+        }
+
+        for(Thread thread : threads)
+            thread.join();
+
+        assert !failed.get();
+
+        // Buffers are recycled rather than created for every request
+        BufferPool.Statistics statistics = BufferPool.getStatistics();
+        assert statistics.getHits()-originalStatistics.getHits() > statistics.getMisses()-originalStatistics.getMisses();
+
+        // The buffers the threads left in their magazine are given back to the depot once the threads are dead, and
+        // can be retrieved by another thread
+        while(BufferPool.getBufferCount(factory)>originalBufferCount) {
+            int count = BufferPool.getBufferCount(factory);
+            BufferPool.getBuffer(factory, TEST_BUFFER_SIZE_1);
+            BufferPool.getBuffer(factory, TEST_BUFFER_SIZE_2);
+            assert BufferPool.getBufferCount(factory) < count;
+        }
+
+        assert originalBufferCount == BufferPool.getBufferCount(factory);
+        assert originalPoolSize == BufferPool.getPoolSize();
+    }
+
+    /**
+     * Asserts that heap <code>ByteBuffer</code> instances are not added to the pool, as <code>ByteBuffer</code>
+     * instances returned by the pool are direct.
+     */
+    @Test
+    public void testHeapByteBuffer() {
+        ByteBuffer heapBuffer = ByteBuffer.allocate(TEST_BUFFER_SIZE_1);
+        assert !BufferPool.releaseByteBuffer(heapBuffer);
+        assert !BufferPool.containsBuffer(heapBuffer, new BufferPool.ByteBufferFactory());
+
+        ByteBuffer directBuffer = BufferPool.getByteBuffer(TEST_BUFFER_SIZE_1);
+        assert directBuffer.isDirect();
+        directBuffer.position(10);
+        assert BufferPool.releaseByteBuffer(directBuffer);
+
+        // Released NIO buffers are cleared when they are handed out again
+        assert directBuffer == BufferPool.getByteBuffer(TEST_BUFFER_SIZE_1);
+        assert directBuffer.position() == 0;
+    }
+
     /**
      * Asserts that the given buffer's size matches the specified one.
      *
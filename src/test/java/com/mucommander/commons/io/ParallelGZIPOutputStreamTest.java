@@ -0,0 +1,123 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2010 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.commons.io;
+
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * A test case for {@link ParallelGZIPOutputStream} and {@link ParallelDeflater}.
+ *
+ * @see ParallelGZIPOutputStream
+ */
+public class ParallelGZIPOutputStreamTest {
+
+    /**
+     * Returns compressible data of the given length: random words taken from a small vocabulary.
+     */
+    private static byte[] getCompressibleBytes(int length) {
+        String words[] = {"muCommander ", "archive ", "deflate ", "block ", "dictionary ", "thread ", "\n"};
+        Random random = new Random();
+        ByteArrayOutputStream bout = new ByteArrayOutputStream(length);
+        while (bout.size() < length) {
+            byte word[] = words[random.nextInt(words.length)].getBytes();
+            bout.write(word, 0, Math.min(word.length, length-bout.size()));
+        }
+        return bout.toByteArray();
+    }
+
+    /**
+     * Compresses the given data with a <code>ParallelGZIPOutputStream</code>, writing it in chunks of random sizes.
+     */
+    private static byte[] compress(byte data[], int level, int nbThreads) throws IOException {
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        ParallelGZIPOutputStream gout = new ParallelGZIPOutputStream(bout, level, nbThreads);
+        Random random = new Random();
+        int off = 0;
+        while (off < data.length) {
+            int len = Math.min(data.length-off, random.nextInt(300000));
+            gout.write(data, off, len);
+            off += len;
+        }
+        gout.close();
+
+        return bout.toByteArray();
+    }
+
+    /**
+     * Uncompresses the given Gzip data with <code>java.util.zip.GZIPInputStream</code>.
+     */
+    private static byte[] uncompress(byte compressed[]) throws IOException {
+        GZIPInputStream gin = new GZIPInputStream(new ByteArrayInputStream(compressed));
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        try {
+            StreamUtils.copyStream(gin, bout);
+        }
+        finally {
+            gin.close();
+        }
+        return bout.toByteArray();
+    }
+
+    /**
+     * Compresses data spanning many blocks with several threads, and asserts that it is uncompressed properly by
+     * <code>java.util.zip.GZIPInputStream</code>, which checks the CRC and size of the trailer.
+     *
+     * @throws IOException should not happen
+     */
+    @Test
+    public void testCompress() throws IOException {
+        byte data[] = getCompressibleBytes(3*ParallelDeflater.DEFAULT_BLOCK_SIZE*4 + 12345);
+        byte compressed[] = compress(data, Deflater.DEFAULT_COMPRESSION, 4);
+        assert Arrays.equals(data, uncompress(compressed));
+
+        // Priming blocks with the previous block keeps the compression ratio close to a sequential compression
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        GZIPOutputStream gout = new GZIPOutputStream(bout);
+        gout.write(data);
+        gout.close();
+        assert compressed.length < bout.size()*1.05;
+
+        // Random data and best compression
+        data = new byte[1000000];
+        new Random().nextBytes(data);
+        assert Arrays.equals(data, uncompress(compress(data, Deflater.BEST_COMPRESSION, 3)));
+    }
+
+    /**
+     * Asserts that empty data and data smaller than a block are compressed properly.
+     *
+     * @throws IOException should not happen
+     */
+    @Test
+    public void testSmallData() throws IOException {
+        assert uncompress(compress(new byte[0], Deflater.DEFAULT_COMPRESSION, 2)).length == 0;
+
+        byte data[] = getCompressibleBytes(1000);
+        assert Arrays.equals(data, uncompress(compress(data, Deflater.BEST_SPEED, 2)));
+    }
+}
@@ -0,0 +1,247 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2010 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.commons.io;
+
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * A test case for {@link PipelinedInputStream}.
+ *
+ * @see PipelinedInputStream
+ */
+public class PipelinedInputStreamTest {
+
+    /**
+     * Returns an array of random bytes of the given length.
+     */
+    private static byte[] getRandomBytes(int length) {
+        byte bytes[] = new byte[length];
+        new Random().nextBytes(bytes);
+        return bytes;
+    }
+
+    /**
+     * Copies a stream through a <code>PipelinedInputStream</code> with a small ring, mixing single-byte and bulk reads,
+     * and asserts that the bytes are returned in order and that queue metrics are consistent.
+     *
+     * @throws IOException should not happen
+     */
+    @Test
+    public void testCopy() throws IOException {
+        byte bytes[] = getRandomBytes(1000000);
+        PipelinedInputStream pin = new PipelinedInputStream(new ByteArrayInputStream(bytes), 1000, 4);
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        try {
+            bout.write(pin.read());
+            StreamUtils.copyStream(pin, bout, 777);
+            assert pin.read() == -1;
+            assert pin.read(new byte[1]) == -1;
+        }
+        finally {
+            pin.close();
+        }
+
+        assert Arrays.equals(bytes, bout.toByteArray());
+        assert pin.getMaxQueueDepth() <= 4;
+        assert pin.getAverageQueueDepth() <= pin.getMaxQueueDepth();
+    }
+
+    /**
+     * Asserts that an error thrown by the underlying stream is thrown to the consumer once the bytes read before the
+     * error have been consumed.
+     *
+     * @throws IOException should not happen
+     */
+    @Test
+    public void testReadError() throws IOException {
+        final byte bytes[] = getRandomBytes(5000);
+        InputStream failingIn = new InputStream() {
+            private final InputStream in = new ByteArrayInputStream(bytes);
+
+            @Override
+            public int read() throws IOException {
+                int i = in.read();
+                if (i == -1) {
+                    throw new IOException("read error");
+                }
+                return i;
+            }
+        };
+
+        PipelinedInputStream pin = new PipelinedInputStream(failingIn, 1024, 2);
+        byte b[] = new byte[bytes.length];
+        try {
+            StreamUtils.readFully(pin, b);
+            assert Arrays.equals(bytes, b);
+
+            boolean exceptionThrown = false;
+            try {
+                pin.read();
+            }
+            catch (IOException e) {
+                exceptionThrown = "read error".equals(e.getMessage());
+            }
+            assert exceptionThrown;
+        }
+        finally {
+            pin.close();
+        }
+    }
+
+    /**
+     * Asserts that an unchecked exception thrown by the underlying stream does not leave the consumer waiting forever,
+     * and is thrown to it wrapped in an <code>IOException</code>.
+     *
+     * @throws IOException should not happen
+     */
+    @Test(timeOut = 10000)
+    public void testUncheckedReadError() throws IOException {
+        final IllegalStateException error = new IllegalStateException("unchecked read error");
+        InputStream failingIn = new InputStream() {
+            @Override
+            public int read() throws IOException {
+                throw error;
+            }
+        };
+
+        PipelinedInputStream pin = new PipelinedInputStream(failingIn, 1024, 2);
+        try {
+            boolean exceptionThrown = false;
+            try {
+                pin.read();
+            }
+            catch (IOException e) {
+                exceptionThrown = e.getCause() == error;
+            }
+            assert exceptionThrown;
+        }
+        finally {
+            pin.close();
+        }
+    }
+
+    /**
+     * Asserts that closing the stream from another thread wakes up a consumer that is waiting for the underlying
+     * stream.
+     *
+     * @throws Exception should not happen
+     */
+    @Test(timeOut = 10000)
+    public void testCloseWhileWaiting() throws Exception {
+        final Object lock = new Object();
+        InputStream blockingIn = new InputStream() {
+            @Override
+            public int read() throws IOException {
+                synchronized (lock) {
+                    try {
+                        lock.wait();
+                    }
+                    catch (InterruptedException e) {
+                        // Stream closed
+                    }
+                }
+                throw new IOException("closed");
+            }
+        };
+
+        final PipelinedInputStream pin = new PipelinedInputStream(blockingIn, 16, 2);
+        Thread closer = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(200);
+                    pin.close();
+                }
+                catch (Exception e) {
+                    // Let the test time out
+                }
+            }
+        };
+        closer.start();
+
+        boolean exceptionThrown = false;
+        try {
+            pin.read();
+        }
+        catch (IOException e) {
+            exceptionThrown = true;
+        }
+        closer.join();
+
+        assert exceptionThrown;
+        assert pin.getConsumerStallTime() > 0;
+    }
+
+    /**
+     * Asserts that no more than {@link PipelinedInputStream#MAX_READER_THREADS} streams are read ahead at the same time,
+     * that a stream created beyond that reads its underlying stream directly, and that the readers stop once their
+     * stream is closed.
+     *
+     * @throws Exception should not happen
+     */
+    @Test(timeOut = 10000)
+    public void testReaderThreadsBounded() throws Exception {
+        byte bytes[] = getRandomBytes(1000);
+        List<PipelinedInputStream> readAheadStreams = new ArrayList<PipelinedInputStream>();
+        PipelinedInputStream directStream = null;
+        try {
+            // The readers fill their only buffer and wait for it to be consumed, keeping their thread busy
+            while (directStream == null && readAheadStreams.size() <= PipelinedInputStream.MAX_READER_THREADS) {
+                PipelinedInputStream pin = new PipelinedInputStream(new ByteArrayInputStream(bytes), 16, 1);
+                if (pin.isReadAhead()) {
+                    readAheadStreams.add(pin);
+                }
+                else {
+                    directStream = pin;
+                }
+            }
+
+            assert directStream != null;
+            assert readAheadStreams.size() <= PipelinedInputStream.MAX_READER_THREADS;
+            assert directStream.isReaderDone();
+
+            ByteArrayOutputStream bout = new ByteArrayOutputStream();
+            StreamUtils.copyStream(directStream, bout);
+            assert Arrays.equals(bytes, bout.toByteArray());
+        }
+        finally {
+            if (directStream != null) {
+                directStream.close();
+            }
+            for (PipelinedInputStream pin : readAheadStreams) {
+                pin.close();
+            }
+        }
+
+        for (PipelinedInputStream pin : readAheadStreams) {
+            while (!pin.isReaderDone()) {
+                Thread.sleep(10);
+            }
+        }
+    }
+}
@@ -0,0 +1,240 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2010 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.commons.io;
+
+import com.mucommander.commons.file.AbstractFile;
+import com.mucommander.commons.file.FileFactory;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A test case for {@link SegmentedInputStream}.
+ *
+ * @see SegmentedInputStream
+ */
+public class SegmentedInputStreamTest {
+
+    /** Size of the segments used by the tests */
+    private final static int SEGMENT_SIZE = 10000;
+
+    /**
+     * A source backed by a byte array, which fails the first attempts to read a segment half-way through it, and keeps
+     * track of the number of segments read at the same time.
+     */
+    private static class ArraySegmentSource implements SegmentSource {
+
+        private final byte data[];
+
+        /** Number of failures before reading a segment succeeds */
+        private final AtomicInteger nbFailures;
+
+        private final AtomicInteger nbConcurrentReads = new AtomicInteger();
+        private volatile int maxConcurrentReads;
+
+        private ArraySegmentSource(byte data[], int nbFailures) {
+            this.data = data;
+            this.nbFailures = new AtomicInteger(nbFailures);
+        }
+
+        public boolean isSegmentReadSupported() {
+            return true;
+        }
+
+        public InputStream getSegmentInputStream(long offset, long length) throws IOException {
+            final boolean fail = nbFailures.getAndDecrement() > 0;
+            final int failAfter = (int)length/2;
+            maxConcurrentReads = Math.max(maxConcurrentReads, nbConcurrentReads.incrementAndGet());
+
+            return new FilterInputStream(new ByteArrayInputStream(data, (int)offset, (int)length)) {
+                private int nbRead;
+
+                @Override
+                public int read(byte b[], int off, int len) throws IOException {
+                    try {
+                        Thread.sleep(1);
+                    }
+                    catch(InterruptedException e) {
+                        throw new IOException(e);
+                    }
+
+                    if(fail && nbRead >= failAfter)
+                        throw new IOException("Connection reset");
+
+                    int n = super.read(b, off, Math.min(len, 1000));
+                    if(n > 0)
+                        nbRead += n;
+                    return n;
+                }
+
+                @Override
+                public void close() throws IOException {
+                    nbConcurrentReads.decrementAndGet();
+                    super.close();
+                }
+            };
+        }
+    }
+
+    /**
+     * Returns random data of the given length.
+     */
+    private static byte[] getRandomBytes(int length) {
+        byte data[] = new byte[length];
+        new Random().nextBytes(data);
+        return data;
+    }
+
+    /**
+     * Reads the given stream until its end, in chunks of random sizes, and closes it.
+     */
+    private static byte[] readFully(InputStream in) throws IOException {
+        try {
+            ByteArrayOutputStream bout = new ByteArrayOutputStream();
+            Random random = new Random();
+            byte b[] = new byte[SEGMENT_SIZE*2];
+            int nbRead;
+            while((nbRead=in.read(b, 0, 1+random.nextInt(b.length-1)))!=-1)
+                bout.write(b, 0, nbRead);
+            return bout.toByteArray();
+        }
+        finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Downloads data in segments, with failing segments, and asserts that the bytes are returned in order and that
+     * segments are read concurrently.
+     *
+     * @throws IOException should not happen
+     */
+    @Test
+    public void testRead() throws IOException {
+        byte data[] = getRandomBytes(SEGMENT_SIZE*20+1234);
+
+        ArraySegmentSource source = new ArraySegmentSource(data, 5);
+        SegmentedInputStream in = new SegmentedInputStream(source, 0, data.length, SEGMENT_SIZE, 4);
+        in.setRetryDelay(1);
+        assert Arrays.equals(data, readFully(in));
+        assert source.maxConcurrentReads > 1 && source.maxConcurrentReads <= 4;
+
+        // A range of the data, not starting on a segment boundary
+        in = new SegmentedInputStream(new ArraySegmentSource(data, 0), 12345, SEGMENT_SIZE*3, SEGMENT_SIZE, 3);
+        assert Arrays.equals(Arrays.copyOfRange(data, 12345, 12345+SEGMENT_SIZE*3), readFully(in));
+
+        // Empty range
+        in = new SegmentedInputStream(new ArraySegmentSource(data, 0), 0, 0, SEGMENT_SIZE, 3);
+        assert in.read() == -1;
+        in.close();
+    }
+
+    /**
+     * Downloads data in segments to a file channel by skipping the stream, and asserts that the file contains the
+     * data at the specified position.
+     *
+     * @throws IOException should not happen
+     */
+    @Test
+    public void testTransferToChannel() throws IOException {
+        byte data[] = getRandomBytes(SEGMENT_SIZE*10+5);
+        AbstractFile tempFile = FileFactory.getTemporaryFile(getClass().getName(), true);
+        try {
+            FileChannel channel = new RandomAccessFile(tempFile.getAbsolutePath(), "rw").getChannel();
+            SegmentedInputStream in = new SegmentedInputStream(new ArraySegmentSource(data, 2), 100, data.length-100, SEGMENT_SIZE, 4, channel, 100);
+            in.setRetryDelay(1);
+
+            long total = 0;
+            long nbSkipped;
+            while((nbSkipped=in.skip(SEGMENT_SIZE))>0)
+                total += nbSkipped;
+            in.close();
+
+            assert total == data.length-100;
+            assert !channel.isOpen();
+
+            byte written[] = new byte[data.length];
+            InputStream fileIn = tempFile.getInputStream();
+            try {
+                StreamUtils.readFully(fileIn, written);
+            }
+            finally {
+                fileIn.close();
+            }
+            assert Arrays.equals(Arrays.copyOfRange(data, 100, data.length), Arrays.copyOfRange(written, 100, data.length));
+        }
+        finally {
+            tempFile.delete();
+        }
+    }
+
+    /**
+     * Asserts that an error is thrown when a segment fails more times than it is retried.
+     */
+    @Test
+    public void testFailure() {
+        byte data[] = getRandomBytes(SEGMENT_SIZE*4);
+        SegmentedInputStream in = new SegmentedInputStream(new ArraySegmentSource(data, Integer.MAX_VALUE), 0, data.length, SEGMENT_SIZE, 2);
+        in.setMaxRetries(2);
+        in.setRetryDelay(1);
+        try {
+            readFully(in);
+            assert false;
+        }
+        catch(IOException e) {
+            assert "Connection reset".equals(e.getMessage());
+        }
+    }
+
+    /**
+     * Asserts that an unchecked exception thrown by the source is thrown to the consumer instead of leaving it waiting
+     * for the segment forever.
+     */
+    @Test(timeOut = 10000)
+    public void testUncheckedFailure() {
+        final IllegalStateException error = new IllegalStateException("Not connected");
+        SegmentSource source = new SegmentSource() {
+            public boolean isSegmentReadSupported() {
+                return true;
+            }
+
+            public InputStream getSegmentInputStream(long offset, long length) throws IOException {
+                throw error;
+            }
+        };
+
+        SegmentedInputStream in = new SegmentedInputStream(source, 0, SEGMENT_SIZE*4, SEGMENT_SIZE, 2);
+        try {
+            readFully(in);
+            assert false;
+        }
+        catch(IOException e) {
+            assert e.getCause() == error;
+        }
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2010 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.commons.io;
+
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * A test case for {@link TransferChannelInputStream}.
+ *
+ * @see TransferChannelInputStream
+ */
+public class TransferChannelInputStreamTest {
+
+    /**
+     * Creates a temporary file filled with the given number of random bytes.
+     */
+    private File createSourceFile(byte bytes[]) throws IOException {
+        new Random().nextBytes(bytes);
+        File file = File.createTempFile("transferChannelSource", null);
+        file.deleteOnExit();
+        Files.write(file.toPath(), bytes);
+
+        return file;
+    }
+
+    private File createTargetFile() throws IOException {
+        File file = File.createTempFile("transferChannelTarget", null);
+        file.deleteOnExit();
+
+        return file;
+    }
+
+    /**
+     * Copies a file by skipping a <code>TransferChannelInputStream</code> wrapped in counter and throughput limit
+     * streams, and asserts that the target is identical to the source and that all bytes have been counted.
+     *
+     * @throws IOException should not happen
+     */
+    @Test
+    public void testSkip() throws IOException {
+        byte bytes[] = new byte[100000];
+        File source = createSourceFile(bytes);
+        File target = createTargetFile();
+
+        ByteCounter counter = new ByteCounter();
+        TransferChannelInputStream tin = new TransferChannelInputStream(new FileInputStream(source).getChannel(), new FileOutputStream(target).getChannel());
+        ThroughputLimitInputStream in = new ThroughputLimitInputStream(new CounterInputStream(tin, counter));
+        try {
+            while (in.skip(30000) > 0);
+        }
+        finally {
+            in.close();
+        }
+
+        assert counter.getByteCount() == bytes.length;
+        assert Arrays.equals(bytes, Files.readAllBytes(target.toPath()));
+    }
+
+    /**
+     * Copies a file partly by reading and partly by skipping, appending to an existing target, and asserts that the
+     * read bytes are returned and that the target contains both the existing and the transferred bytes.
+     *
+     * @throws IOException should not happen
+     */
+    @Test
+    public void testReadAndSkip() throws IOException {
+        byte bytes[] = new byte[10000];
+        File source = createSourceFile(bytes);
+        File target = createTargetFile();
+        Files.write(target.toPath(), Arrays.copyOf(bytes, 10));
+
+        FileInputStream fin = new FileInputStream(source);
+        fin.getChannel().position(10);
+        TransferChannelInputStream tin = new TransferChannelInputStream(fin.getChannel(), new FileOutputStream(target, true).getChannel());
+        try {
+            assert tin.read() == (bytes[10] & 0xFF);
+
+            byte b[] = new byte[100];
+            assert tin.read(b) == 100;
+            assert Arrays.equals(Arrays.copyOfRange(bytes, 11, 111), b);
+
+            assert tin.available() == bytes.length - 111;
+            assert tin.skip(bytes.length) == bytes.length - 111;
+            assert tin.skip(bytes.length) == 0;
+            assert tin.read() == -1;
+        }
+        finally {
+            tin.close();
+        }
+
+        assert Arrays.equals(bytes, Files.readAllBytes(target.toPath()));
+    }
+}
@@ -0,0 +1,215 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2010 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.commons.io.checkpoint;
+
+import org.apache.hadoop.io.compress.bzip2.CBZip2OutputStream;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * This class is a TestNG test case for {@link CheckpointBzip2InputStream}. Bzip2 streams are created with
+ * <code>CBZip2OutputStream</code>, with the smallest block size so that the test data spans many blocks.
+ */
+public class CheckpointBzip2InputStreamTest {
+
+    /** Span used for checkpoints, smaller than a block so that a checkpoint is recorded at most block boundaries */
+    private final static int SPAN = 64*1024;
+
+    private final static String WORDS[] = {"muCommander", "archive", "entry", "tar", "bzip2", "the", "of", "and", "\n"};
+
+    /**
+     * Generates data that is partly compressible text and partly random bytes, so that blocks have various lengths
+     * and start at various bit positions.
+     */
+    private static byte[] createData(int size) {
+        Random random = new Random(size);
+        byte data[] = new byte[size];
+        int pos = 0;
+        while(pos<size) {
+            if(random.nextInt(8)==0) {
+                int len = Math.min(size-pos, random.nextInt(20000));
+                for(int i=0; i<len; i++)
+                    data[pos++] = (byte)random.nextInt(256);
+            }
+            else {
+                int len = Math.min(size-pos, random.nextInt(100000));
+                for(int i=0; i<len; ) {
+                    byte word[] = (WORDS[random.nextInt(WORDS.length)]+" ").getBytes();
+                    for(int j=0; j<word.length && i<len; j++, i++)
+                        data[pos++] = word[j];
+                }
+            }
+        }
+        return data;
+    }
+
+    private static byte[] bzip2(byte data[], int blockSize) throws IOException {
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        // CBZip2OutputStream expects the 'BZ' magic bytes to be written by the caller
+        bout.write('B');
+        bout.write('Z');
+        CBZip2OutputStream bzout = new CBZip2OutputStream(bout, blockSize);
+        bzout.write(data);
+        bzout.close();
+        return bout.toByteArray();
+    }
+
+    private static byte[] readFully(InputStream in) throws IOException {
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        byte buffer[] = new byte[7919];
+        int n;
+        while((n=in.read(buffer))!=-1)
+            bout.write(buffer, 0, n);
+        in.close();
+        return bout.toByteArray();
+    }
+
+    /**
+     * Ensures that data compressed with various block sizes is decompressed properly, with and without an index.
+     *
+     * @throws IOException should not happen
+     */
+    @Test
+    public void testDecompress() throws IOException {
+        byte data[] = createData(1500000);
+        for(int blockSize : new int[]{1, 5, 9}) {
+            byte bzipped[] = bzip2(data, blockSize);
+            assert Arrays.equals(data, readFully(new CheckpointBzip2InputStream(new ByteArrayInputStream(bzipped), null))): "block size "+blockSize;
+            assert Arrays.equals(data, readFully(new CheckpointBzip2InputStream(new ByteArrayInputStream(bzipped), new CheckpointIndex(SPAN)))): "block size "+blockSize;
+        }
+
+        assert readFully(new CheckpointBzip2InputStream(new ByteArrayInputStream(bzip2(new byte[0], 1)), null)).length == 0;
+    }
+
+    /**
+     * Ensures that checkpoints are recorded at block boundaries while the stream is read, and that decompression can
+     * be resumed at any of them, whatever the bit position the block starts at.
+     *
+     * @throws IOException should not happen
+     */
+    @Test
+    public void testResume() throws IOException {
+        byte data[] = createData(1500000);
+        byte bzipped[] = bzip2(data, 1);
+
+        CheckpointIndex index = new CheckpointIndex(SPAN);
+        assert Arrays.equals(data, readFully(new CheckpointBzip2InputStream(new ByteArrayInputStream(bzipped), index)));
+        // Blocks hold up to 100KB of data, a little less once run-length encoded
+        assert index.size() >= 10;
+
+        int nbCheckpoints = 0;
+        boolean bitShifted = false;
+        Checkpoint previous = null;
+        // Offsets up to the end of the data, so that a checkpoint recorded close to it is resumed at as well
+        for(long offset=SPAN/4; offset<data.length+SPAN/4; offset+=SPAN/4) {
+            Checkpoint checkpoint = index.get(Math.min(offset, data.length));
+            if(checkpoint==null || checkpoint==previous)
+                continue;
+            previous = checkpoint;
+            nbCheckpoints++;
+            bitShifted |= checkpoint.getBitShift()!=0;
+
+            assert checkpoint.getUncompressedOffset() <= offset;
+
+            InputStream in = new ByteArrayInputStream(bzipped);
+            assert in.skip(checkpoint.getCompressedByteOffset()) == checkpoint.getCompressedByteOffset();
+            CheckpointBzip2InputStream cin = new CheckpointBzip2InputStream(in, checkpoint, null);
+            assert cin.getPosition() == checkpoint.getUncompressedOffset();
+
+            byte expected[] = Arrays.copyOfRange(data, (int)checkpoint.getUncompressedOffset(), data.length);
+            assert Arrays.equals(expected, readFully(cin)): "checkpoint at "+checkpoint.getUncompressedOffset();
+        }
+
+        assert nbCheckpoints == index.size();
+        assert bitShifted;
+    }
+
+    /**
+     * Ensures that checkpoints are recorded past the last one when reading a stream that was resumed.
+     *
+     * @throws IOException should not happen
+     */
+    @Test
+    public void testIndexGrowsWhenResumed() throws IOException {
+        byte data[] = createData(1000000);
+        byte bzipped[] = bzip2(data, 1);
+
+        CheckpointIndex index = new CheckpointIndex(SPAN);
+        CheckpointBzip2InputStream cin = new CheckpointBzip2InputStream(new ByteArrayInputStream(bzipped), index);
+        assert cin.skip(300000) == 300000;
+        cin.close();
+
+        int nbCheckpoints = index.size();
+        Checkpoint last = index.get(data.length);
+        assert last != null;
+
+        InputStream in = new ByteArrayInputStream(bzipped);
+        assert in.skip(last.getCompressedByteOffset()) == last.getCompressedByteOffset();
+        cin = new CheckpointBzip2InputStream(in, last, index);
+        assert Arrays.equals(Arrays.copyOfRange(data, (int)last.getUncompressedOffset(), data.length), readFully(cin));
+
+        assert index.size() > nbCheckpoints;
+        assert index.get(data.length).getUncompressedOffset() > 300000;
+    }
+
+    /**
+     * Ensures that corrupt and truncated streams are reported as <code>IOException</code>.
+     *
+     * @throws IOException should not happen
+     */
+    @Test
+    public void testCorruptStream() throws IOException {
+        byte bzipped[] = bzip2(createData(300000), 1);
+
+        // Corrupt combined CRC, which is the last 32 bits of the stream before the padding
+        byte corrupt[] = bzipped.clone();
+        corrupt[corrupt.length-2] ^= 1;
+        try {
+            readFully(new CheckpointBzip2InputStream(new ByteArrayInputStream(corrupt), null));
+            assert false;
+        }
+        catch(IOException e) {
+            // Expected
+        }
+
+        // Truncated stream
+        try {
+            readFully(new CheckpointBzip2InputStream(new ByteArrayInputStream(Arrays.copyOf(bzipped, bzipped.length/2)), null));
+            assert false;
+        }
+        catch(IOException e) {
+            // Expected
+        }
+
+        // Not a Bzip2 stream
+        try {
+            new CheckpointBzip2InputStream(new ByteArrayInputStream(new byte[]{1, 2, 3, 4}), null);
+            assert false;
+        }
+        catch(IOException e) {
+            // Expected
+        }
+    }
+}
@@ -0,0 +1,400 @@
+/**
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2010 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.commons.io.checkpoint;
+
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * This class is a TestNG test case for {@link CheckpointGzipInputStream}. Gzip streams are created with
+ * <code>java.util.zip.GZIPOutputStream</code> at various compression levels.
+ */
+public class CheckpointGzipInputStreamTest {
+
+    /** Span used for checkpoints, small enough to get several checkpoints out of the test data */
+    private final static int SPAN = 64*1024;
+
+    private final static String WORDS[] = {"muCommander", "archive", "entry", "tar", "gzip", "the", "of", "and", "\n"};
+
+    /**
+     * Generates data that is partly compressible text and partly random bytes, so that compressed streams contain
+     * stored, fixed and dynamic blocks.
+     */
+    private static byte[] createData(int size) {
+        Random random = new Random(size);
+        byte data[] = new byte[size];
+        int pos = 0;
+        while(pos<size) {
+            if(random.nextInt(8)==0) {
+                int len = Math.min(size-pos, random.nextInt(20000));
+                for(int i=0; i<len; i++)
+                    data[pos++] = (byte)random.nextInt(256);
+            }
+            else {
+                int len = Math.min(size-pos, random.nextInt(100000));
+                for(int i=0; i<len; ) {
+                    byte word[] = (WORDS[random.nextInt(WORDS.length)]+" ").getBytes();
+                    for(int j=0; j<word.length && i<len; j++, i++)
+                        data[pos++] = word[j];
+                }
+            }
+        }
+        return data;
+    }
+
+    private static byte[] gzip(byte data[], final int level) throws IOException {
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        GZIPOutputStream gout = new GZIPOutputStream(bout) {
+            {
+                def.setLevel(level);
+            }
+        };
+        gout.write(data);
+        gout.close();
+        return bout.toByteArray();
+    }
+
+    /**
+     * Compresses the given data in chunks of the given size, each chunk being flushed so that it ends up in a block
+     * of its own. The compression level cycles through the given ones, one chunk after the other.
+     */
+    private static byte[] gzipChunks(byte data[], final int chunkSize, final int levels[]) throws IOException {
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        GZIPOutputStream gout = new GZIPOutputStream(bout, true) {
+            {
+                def.setLevel(levels[0]);
+            }
+
+            @Override
+            public void write(byte b[], int off, int len) throws IOException {
+                def.setLevel(levels[(off/chunkSize)%levels.length]);
+                super.write(b, off, len);
+            }
+        };
+        for(int off=0; off<data.length; off+=chunkSize) {
+            gout.write(data, off, Math.min(chunkSize, data.length-off));
+            gout.flush();
+        }
+        gout.close();
+        return bout.toByteArray();
+    }
+
+    /**
+     * Returns the type of the first Deflate block of a stream created by <code>GZIPOutputStream</code>, whose header
+     * is 10 bytes long: 0 for stored, 1 for fixed Huffman codes, 2 for dynamic Huffman codes.
+     */
+    private static int getFirstBlockType(byte gzipped[]) {
+        return (gzipped[10]>>1)&3;
+    }
+
+    /**
+     * Decompresses the given stream with <code>java.util.zip.GZIPInputStream</code>, i.e. with zlib's inflater.
+     */
+    private static byte[] inflate(byte gzipped[]) throws IOException {
+        return readFully(new GZIPInputStream(new ByteArrayInputStream(gzipped)));
+    }
+
+    /**
+     * Decompresses the given stream, checks that the output matches the Inflater's, then resumes decompression at
+     * checkpoints spread over the stream and checks that the output matches the Inflater's from there on.
+     */
+    private static void assertMatchesInflater(byte gzipped[], String description) throws IOException {
+        byte expected[] = inflate(gzipped);
+
+        CheckpointIndex index = new CheckpointIndex(SPAN/16);
+        assert Arrays.equals(expected, readFully(new CheckpointGzipInputStream(new ByteArrayInputStream(gzipped), index))): description;
+        assert index.size() >= 3: description;
+
+        Checkpoint previous = null;
+        for(long offset=0; offset<expected.length; offset+=expected.length/32) {
+            Checkpoint checkpoint = index.get(offset);
+            if(checkpoint==null || checkpoint==previous)
+                continue;
+            previous = checkpoint;
+
+            InputStream in = new ByteArrayInputStream(gzipped);
+            assert in.skip(checkpoint.getCompressedByteOffset()) == checkpoint.getCompressedByteOffset();
+            byte resumed[] = readFully(new CheckpointGzipInputStream(in, checkpoint, null));
+            assert Arrays.equals(Arrays.copyOfRange(expected, (int)checkpoint.getUncompressedOffset(), expected.length), resumed):
+                    description+", checkpoint at "+checkpoint.getUncompressedOffset();
+        }
+    }
+
+    private static byte[] readFully(InputStream in) throws IOException {
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        byte buffer[] = new byte[7919];
+        int n;
+        while((n=in.read(buffer))!=-1)
+            bout.write(buffer, 0, n);
+        in.close();
+        return bout.toByteArray();
+    }
+
+    private static byte[] concat(byte a[], byte b[]) {
+        byte c[] = Arrays.copyOf(a, a.length+b.length);
+        System.arraycopy(b, 0, c, a.length, b.length);
+        return c;
+    }
+
+    /**
+     * Ensures that data compressed at various levels is decompressed properly.
+     *
+     * @throws IOException should not happen
+     */
+    @Test
+    public void testDecompress() throws IOException {
+        byte data[] = createData(1500000);
+        for(int level : new int[]{0, 1, 6, 9}) {
+            byte decompressed[] = readFully(new CheckpointGzipInputStream(new ByteArrayInputStream(gzip(data, level)), null));
+            assert Arrays.equals(data, decompressed): "level "+level;
+        }
+
+        assert readFully(new CheckpointGzipInputStream(new ByteArrayInputStream(gzip(new byte[0], 6)), null)).length == 0;
+    }
+
+    /**
+     * Ensures that streams made of stored, fixed Huffman and dynamic Huffman blocks, and of a mix of them, are
+     * decompressed like <code>java.util.zip.Inflater</code> does, both from the start and from every checkpoint.
+     *
+     * @throws IOException should not happen
+     */
+    @Test
+    public void testBlockTypesMatchInflater() throws IOException {
+        byte data[] = createData(1000000);
+
+        // Level 0 only produces stored blocks
+        byte stored[] = gzip(data, 0);
+        assert getFirstBlockType(stored) == 0;
+        assertMatchesInflater(stored, "stored");
+
+        // Small blocks are not worth the cost of a Huffman table, they are encoded with the fixed codes
+        byte fixed[] = gzipChunks(data, 64, new int[]{9});
+        assert getFirstBlockType(fixed) == 1;
+        assertMatchesInflater(fixed, "fixed");
+
+        byte dynamic[] = gzip(data, 9);
+        assert getFirstBlockType(dynamic) == 2;
+        assertMatchesInflater(dynamic, "dynamic");
+
+        assertMatchesInflater(gzipChunks(data, 4096, new int[]{0, 9, 1, 6}), "mixed");
+        assertMatchesInflater(gzipChunks(data, 97, new int[]{9, 0}), "mixed small");
+    }
+
+    /**
+     * Ensures that an index that was written and read back allows decompression to be resumed at all its checkpoints.
+     *
+     * @throws IOException should not happen
+     */
+    @Test
+    public void testIndexRoundTrip() throws IOException {
+        byte data[] = createData(1500000);
+        byte gzipped[] = gzip(data, 6);
+
+        CheckpointIndex index = new CheckpointIndex(SPAN);
+        readFully(new CheckpointGzipInputStream(new ByteArrayInputStream(gzipped), index));
+        assert index.size() >= 5;
+
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        index.write(new DataOutputStream(bout));
+        CheckpointIndex readIndex = CheckpointIndex.read(new DataInputStream(new ByteArrayInputStream(bout.toByteArray())));
+
+        assert readIndex.getSpan() == index.getSpan();
+        assert readIndex.size() == index.size();
+        for(long offset=0; offset<data.length; offset+=SPAN) {
+            Checkpoint checkpoint = readIndex.get(offset);
+            if(checkpoint==null)
+                continue;
+
+            assert checkpoint.getUncompressedOffset() == index.get(offset).getUncompressedOffset();
+            assert checkpoint.getCompressedBitOffset() == index.get(offset).getCompressedBitOffset();
+
+            InputStream in = new ByteArrayInputStream(gzipped);
+            assert in.skip(checkpoint.getCompressedByteOffset()) == checkpoint.getCompressedByteOffset();
+            byte expected[] = Arrays.copyOfRange(data, (int)checkpoint.getUncompressedOffset(), data.length);
+            assert Arrays.equals(expected, readFully(new CheckpointGzipInputStream(in, checkpoint, null)));
+        }
+
+        // Truncated index
+        try {
+            CheckpointIndex.read(new DataInputStream(new ByteArrayInputStream(Arrays.copyOf(bout.toByteArray(), bout.size()-1))));
+            assert false;
+        }
+        catch(IOException e) {
+            // Expected
+        }
+    }
+
+    /**
+     * Ensures that the members of a multi-member stream are all decompressed.
+     *
+     * @throws IOException should not happen
+     */
+    @Test
+    public void testMultipleMembers() throws IOException {
+        byte data1[] = createData(300000);
+        byte data2[] = createData(200000);
+        byte gzipped[] = concat(gzip(data1, 6), gzip(data2, 1));
+
+        assert Arrays.equals(concat(data1, data2), readFully(new CheckpointGzipInputStream(new ByteArrayInputStream(gzipped), null)));
+    }
+
+    /**
+     * Ensures that checkpoints are recorded while the stream is read and that decompression can be resumed at any of
+     * them, including in the second member of a multi-member stream.
+     *
+     * @throws IOException should not happen
+     */
+    @Test
+    public void testResume() throws IOException {
+        byte data[] = concat(createData(1500000), createData(700000));
+        byte gzipped[] = concat(gzip(Arrays.copyOf(data, 1500000), 6), gzip(Arrays.copyOfRange(data, 1500000, data.length), 9));
+
+        CheckpointIndex index = new CheckpointIndex(SPAN);
+        assert Arrays.equals(data, readFully(new CheckpointGzipInputStream(new ByteArrayInputStream(gzipped), index)));
+        assert index.size() >= 5;
+
+        int nbCheckpoints = 0;
+        Checkpoint previous = null;
+        for(long offset=0; offset<data.length; offset+=SPAN/4) {
+            Checkpoint checkpoint = index.get(offset);
+            if(checkpoint==null || checkpoint==previous)
+                continue;
+            previous = checkpoint;
+            nbCheckpoints++;
+
+            assert checkpoint.getUncompressedOffset() <= offset;
+
+            InputStream in = new ByteArrayInputStream(gzipped);
+            assert in.skip(checkpoint.getCompressedByteOffset()) == checkpoint.getCompressedByteOffset();
+            CheckpointGzipInputStream cin = new CheckpointGzipInputStream(in, checkpoint, null);
+            assert cin.getPosition() == checkpoint.getUncompressedOffset();
+
+            byte expected[] = Arrays.copyOfRange(data, (int)checkpoint.getUncompressedOffset(), data.length);
+            assert Arrays.equals(expected, readFully(cin)): "checkpoint at "+checkpoint.getUncompressedOffset();
+        }
+
+        assert nbCheckpoints == index.size();
+    }
+
+    /**
+     * Ensures that checkpoints are recorded past the last one when reading a stream that was resumed.
+     *
+     * @throws IOException should not happen
+     */
+    @Test
+    public void testIndexGrowsWhenResumed() throws IOException {
+        byte data[] = createData(1000000);
+        byte gzipped[] = gzip(data, 6);
+
+        CheckpointIndex index = new CheckpointIndex(SPAN);
+        CheckpointGzipInputStream cin = new CheckpointGzipInputStream(new ByteArrayInputStream(gzipped), index);
+        assert cin.skip(300000) == 300000;
+        cin.close();
+
+        int nbCheckpoints = index.size();
+        Checkpoint last = index.get(data.length);
+        assert last != null;
+
+        InputStream in = new ByteArrayInputStream(gzipped);
+        assert in.skip(last.getCompressedByteOffset()) == last.getCompressedByteOffset();
+        readFully(new CheckpointGzipInputStream(in, last, index));
+
+        assert index.size() > nbCheckpoints;
+        assert index.get(data.length).getUncompressedOffset() > 300000;
+    }
+
+    /**
+     * Ensures that a stream resumed with an index that already holds checkpoints past it decompresses the data up to
+     * the last of them, which needs no checkpoint, and records checkpoints past it.
+     *
+     * @throws IOException should not happen
+     */
+    @Test
+    public void testResumeBeforeLastCheckpoint() throws IOException {
+        byte data[] = concat(createData(1500000), createData(700000));
+        byte gzipped[] = concat(gzip(Arrays.copyOf(data, 1500000), 6), gzip(Arrays.copyOfRange(data, 1500000, data.length), 9));
+
+        CheckpointIndex index = new CheckpointIndex(SPAN);
+        CheckpointGzipInputStream cin = new CheckpointGzipInputStream(new ByteArrayInputStream(gzipped), index);
+        assert cin.skip(1200000) == 1200000;
+        cin.close();
+
+        int nbCheckpoints = index.size();
+        Checkpoint first = index.get(300000);
+        assert first != null;
+        assert index.get(data.length) != first;
+
+        InputStream in = new ByteArrayInputStream(gzipped);
+        assert in.skip(first.getCompressedByteOffset()) == first.getCompressedByteOffset();
+        cin = new CheckpointGzipInputStream(in, first, index);
+        assert Arrays.equals(Arrays.copyOfRange(data, (int)first.getUncompressedOffset(), data.length), readFully(cin));
+
+        assert index.size() > nbCheckpoints;
+        assert index.get(data.length).getUncompressedOffset() > 1500000;
+    }
+
+    /**
+     * Ensures that corrupt and truncated streams are reported as <code>IOException</code>.
+     *
+     * @throws IOException should not happen
+     */
+    @Test
+    public void testCorruptStream() throws IOException {
+        byte gzipped[] = gzip(createData(100000), 6);
+
+        // Corrupt CRC
+        byte corrupt[] = gzipped.clone();
+        corrupt[corrupt.length-6] ^= 1;
+        try {
+            readFully(new CheckpointGzipInputStream(new ByteArrayInputStream(corrupt), null));
+            assert false;
+        }
+        catch(IOException e) {
+            // Expected
+        }
+
+        // Truncated stream
+        try {
+            readFully(new CheckpointGzipInputStream(new ByteArrayInputStream(Arrays.copyOf(gzipped, gzipped.length/2)), null));
+            assert false;
+        }
+        catch(IOException e) {
+            // Expected
+        }
+
+        // Not a Gzip stream
+        try {
+            new CheckpointGzipInputStream(new ByteArrayInputStream(new byte[]{1, 2, 3, 4}), null);
+            assert false;
+        }
+        catch(IOException e) {
+            // Expected
+        }
+    }
+}
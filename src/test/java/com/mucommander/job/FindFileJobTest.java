@@ -0,0 +1,278 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2012 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.job;
+
+import com.mucommander.commons.file.AbstractFile;
+import com.mucommander.commons.file.FileFactory;
+import com.mucommander.commons.file.impl.TestFile;
+import com.mucommander.text.Translator;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+/**
+ * A test case for {@link FindFileJob}: searches a temporary tree in parallel and checks that all the matching files
+ * are found, in the order of a sequential search when results are ordered, and that the search can be stopped.
+ *
+ * @see FindFileJob
+ */
+public class FindFileJobTest {
+
+    /** Number of threads that traverse the tree */
+    private final static int PARALLELISM = 4;
+
+    /** Names of the files that contain {@link #CONTENT}, whatever the case */
+    private final static List<String> CONTENT_MATCHES = Arrays.asList("a.txt", "d.txt", "e.txt", "f.txt");
+
+    /** The content searched by the tests */
+    private final static String CONTENT = "needle";
+
+    static {
+        // Jobs use localized strings
+        try { Translator.loadDictionaryFile(); }
+        catch(Exception e) { throw new RuntimeException(e); }
+    }
+
+    /** Temporary folder searched by the current test */
+    private Path tempFolder;
+
+    @BeforeMethod
+    public void setUp() throws IOException {
+        tempFolder = Files.createTempDirectory(getClass().getName());
+
+        write(tempFolder.resolve("a.txt"), "a needle in a file");
+        write(tempFolder.resolve("b.log"), "a needle in a file that does not match the mask");
+        Path sub1 = Files.createDirectory(tempFolder.resolve("sub1"));
+        write(sub1.resolve("c.txt"), "nothing to find here");
+        write(sub1.resolve("d.txt"), "NEEDLE");
+        Path deep = Files.createDirectory(sub1.resolve("deep"));
+        write(deep.resolve("e.txt"), "needle");
+        Files.createDirectory(deep.resolve("empty"));
+        Path sub2 = Files.createDirectory(tempFolder.resolve("sub2"));
+        write(sub2.resolve("f.txt"), "haystack needle haystack");
+        write(sub2.resolve("g.txt"), "haystack");
+        for (int i=0; i<20; i++)
+            write(sub2.resolve("h"+i+".txt"), "haystack "+i);
+    }
+
+    @AfterMethod
+    public void tearDown() throws IOException {
+        Files.walkFileTree(tempFolder, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                Files.delete(file);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path dir, IOException e) throws IOException {
+                Files.delete(dir);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    private static void write(Path file, String content) throws IOException {
+        Files.write(file, content.getBytes("UTF-8"));
+    }
+
+    /**
+     * Returns the names of the files under the given folder whose name ends with <code>.txt</code> and that are in
+     * <code>names</code> if it is not <code>null</code>, in the order of a sequential, depth-first search.
+     */
+    private static List<String> searchSequentially(AbstractFile folder, List<String> names) throws IOException {
+        List<String> found = new ArrayList<String>();
+        for (AbstractFile file : folder.ls()) {
+            String name = file.getName();
+            if (name.endsWith(".txt") && (names == null || names.contains(name)))
+                found.add(name);
+            if (file.isDirectory())
+                found.addAll(searchSequentially(file, names));
+        }
+
+        return found;
+    }
+
+    /**
+     * Runs a search of the temporary folder and returns the names of the files that were found.
+     */
+    private List<String> search(String content, boolean orderedResults) throws IOException {
+        FindFileJob job = new FindFileJob(null);
+        job.setStartDirectory(FileFactory.getFile(tempFolder.toString()));
+        job.setParallelism(PARALLELISM);
+        job.setContentThreads(2);
+        job.setOrderedResults(orderedResults);
+        job.setup("*.txt", content, true, false, false, false);
+        job.processFiles();
+
+        assert job.getState() == FileJob.FINISHED;
+
+        List<String> names = new ArrayList<String>();
+        for (AbstractFile file : job.getResults())
+            names.add(file.getName());
+
+        return names;
+    }
+
+    /**
+     * Ensures that the files whose name matches are all found, in the order of a sequential search.
+     *
+     * @throws IOException should not happen
+     */
+    @Test
+    public void testOrderedResults() throws IOException {
+        List<String> expected = searchSequentially(FileFactory.getFile(tempFolder.toString()), null);
+        assert expected.size() == 26;
+
+        for (int i=0; i<5; i++)
+            assert search(null, true).equals(expected);
+    }
+
+    /**
+     * Ensures that the files whose content matches are all found, in the order of a sequential search.
+     *
+     * @throws IOException should not happen
+     */
+    @Test
+    public void testOrderedContentResults() throws IOException {
+        List<String> expected = searchSequentially(FileFactory.getFile(tempFolder.toString()), CONTENT_MATCHES);
+        assert new HashSet<String>(expected).equals(new HashSet<String>(CONTENT_MATCHES));
+
+        for (int i=0; i<5; i++)
+            assert search(CONTENT, true).equals(expected);
+    }
+
+    /**
+     * Ensures that unordered results are complete and contain each file once.
+     *
+     * @throws IOException should not happen
+     */
+    @Test
+    public void testUnorderedResults() throws IOException {
+        List<String> expected = searchSequentially(FileFactory.getFile(tempFolder.toString()), null);
+        Collections.sort(expected);
+        List<String> names = search(null, false);
+        Collections.sort(names);
+        assert names.equals(expected);
+
+        names = search(CONTENT, false);
+        Collections.sort(names);
+        assert names.equals(CONTENT_MATCHES);
+    }
+
+    /**
+     * Ensures that stopping the job stops the search of a file whose content never ends.
+     *
+     * @throws Exception should not happen
+     */
+    @Test
+    public void testStop() throws Exception {
+        EndlessFile endlessFile = new EndlessFile(tempFolder.resolve("endless.txt").toString());
+        final FindFileJob job = new FindFileJob(null);
+        job.setStartDirectory(new Folder(tempFolder.toString(), endlessFile));
+        job.setParallelism(PARALLELISM);
+        job.setOrderedResults(true);
+        job.setup("*", CONTENT, true, false, true, false);
+
+        Thread jobThread = new Thread() {
+            @Override
+            public void run() {
+                job.processFiles();
+            }
+        };
+        jobThread.start();
+
+        // Wait for the content search to be under way
+        for (int i=0; i<500 && endlessFile.nbBytesRead < 1024*1024; i++)
+            Thread.sleep(10);
+        assert endlessFile.nbBytesRead >= 1024*1024;
+
+        job.interrupt();
+        jobThread.join(5000);
+        assert !jobThread.isAlive();
+        assert job.getState() == FileJob.INTERRUPTED;
+        assert endlessFile.closed;
+        assert job.getResults().isEmpty();
+    }
+
+    /**
+     * A folder that contains the given files.
+     */
+    private static class Folder extends TestFile {
+        private final AbstractFile children[];
+
+        private Folder(String path, AbstractFile... children) throws IOException {
+            super(path, true, 0, 0, null);
+            this.children = children;
+        }
+
+        @Override
+        public AbstractFile[] ls() {
+            return children;
+        }
+    }
+
+    /**
+     * A file whose contents never end, and never contain {@link #CONTENT}.
+     */
+    private static class EndlessFile extends TestFile {
+        private volatile long nbBytesRead;
+        private volatile boolean closed;
+
+        private EndlessFile(String path) throws IOException {
+            super(path, false, -1, 0, null);
+        }
+
+        @Override
+        public InputStream getInputStream() {
+            return new InputStream() {
+                @Override
+                public int read() {
+                    nbBytesRead++;
+                    return 0;
+                }
+
+                @Override
+                public int read(byte b[], int off, int len) {
+                    Arrays.fill(b, off, off+len, (byte)0);
+                    nbBytesRead += len;
+                    return len;
+                }
+
+                @Override
+                public void close() {
+                    closed = true;
+                }
+            };
+        }
+    }
+}
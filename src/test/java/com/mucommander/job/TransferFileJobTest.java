@@ -0,0 +1,367 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2012 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.job;
+
+import com.mucommander.commons.file.AbstractFile;
+import com.mucommander.commons.file.FileFactory;
+import com.mucommander.commons.file.FileOperation;
+import com.mucommander.commons.file.UnsupportedFileOperation;
+import com.mucommander.commons.file.UnsupportedFileOperationException;
+import com.mucommander.commons.file.impl.ProxyFile;
+import com.mucommander.commons.file.impl.TestFile;
+import com.mucommander.commons.file.util.FileSet;
+import com.mucommander.commons.io.PipelinedInputStream;
+import com.mucommander.text.Translator;
+import com.mucommander.ui.dialog.file.FileCollisionDialog;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A test case for the files copied by the worker threads of {@link TransferFileJob}: a top-level file must be unmarked
+ * only if all of its files were copied, and a moved folder must be deleted only if all of its files were moved.
+ * Also checks that stopping a job stops the reader of the file being read ahead.
+ *
+ * @see TransferFileJob
+ */
+public class TransferFileJobTest {
+
+    /** The copy of files whose name starts with this prefix fails */
+    private final static String FAILING_PREFIX = "failing";
+
+    /** Number of worker threads */
+    private final static int NB_WORKERS = 2;
+
+    static {
+        // Jobs use localized strings
+        try { Translator.loadDictionaryFile(); }
+        catch(Exception e) { throw new RuntimeException(e); }
+    }
+
+    /** Temporary folder used by the current test */
+    private Path tempFolder;
+    /** Folder containing the files to transfer */
+    private Path sourceFolder;
+    /** Folder the files are transferred to */
+    private Path destFolder;
+
+    @BeforeMethod
+    public void setUp() throws IOException {
+        tempFolder = Files.createTempDirectory(getClass().getName());
+        sourceFolder = Files.createDirectory(tempFolder.resolve("source"));
+        destFolder = Files.createDirectory(tempFolder.resolve("dest"));
+
+        // Top-level files: a.txt, failing.txt, folder1 and folder2
+        write(sourceFolder.resolve("a.txt"));
+        write(sourceFolder.resolve(FAILING_PREFIX+".txt"));
+        Path folder1 = Files.createDirectory(sourceFolder.resolve("folder1"));
+        write(folder1.resolve("b.txt"));
+        write(folder1.resolve(FAILING_PREFIX+"2.txt"));
+        Path folder2 = Files.createDirectory(sourceFolder.resolve("folder2"));
+        write(folder2.resolve("c.txt"));
+    }
+
+    @AfterMethod
+    public void tearDown() throws IOException {
+        Files.walkFileTree(tempFolder, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                Files.delete(file);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path dir, IOException e) throws IOException {
+                Files.delete(dir);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    private static void write(Path file) throws IOException {
+        Files.write(file, file.getFileName().toString().getBytes("UTF-8"));
+    }
+
+    /**
+     * Returns the top-level files to transfer, which cannot be renamed if <code>unrenamable</code> is true.
+     */
+    private FileSet getFiles(boolean unrenamable) throws IOException {
+        AbstractFile folder = FileFactory.getFile(sourceFolder.toString());
+        FileSet files = new FileSet(folder);
+        for (String name: new String[]{"a.txt", FAILING_PREFIX+".txt", "folder1", "folder2"}) {
+            AbstractFile file = folder.getDirectChild(name);
+            files.add(unrenamable ? new UnrenamableFile(file) : file);
+        }
+
+        return files;
+    }
+
+    /**
+     * Returns the names of the given files, sorted.
+     */
+    private static List<String> getNames(List<AbstractFile> files) {
+        List<String> names = new ArrayList<String>();
+        for (AbstractFile file: files)
+            names.add(file.getName());
+        Collections.sort(names);
+
+        return names;
+    }
+
+    /**
+     * Makes the copy of the files whose name starts with {@link #FAILING_PREFIX} fail, after the worker thread has
+     * been handed off the file.
+     */
+    private static boolean isFailingCopy(AbstractFile sourceFile) {
+        if (!sourceFile.getName().startsWith(FAILING_PREFIX))
+            return false;
+
+        // Worker threads are named after the job
+        assert Thread.currentThread().getName().contains(" worker ");
+        try {
+            // Let the job's thread move on to the next files
+            Thread.sleep(200);
+        }
+        catch(InterruptedException e) {
+            throw new RuntimeException(e);
+        }
+
+        return true;
+    }
+
+    /**
+     * Ensures that top-level files that contain a file whose copy failed in a worker thread are not unmarked.
+     *
+     * @throws IOException should not happen
+     */
+    @Test
+    public void testFailingCopy() throws IOException {
+        TestCopyJob job = new TestCopyJob(getFiles(false), FileFactory.getFile(destFolder.toString()));
+        job.processFiles();
+
+        assert job.getState() == FileJob.FINISHED;
+        assert getNames(job.unmarkedFiles).equals(Arrays.asList("a.txt", "folder2"));
+
+        assert Files.exists(destFolder.resolve("a.txt"));
+        assert Files.exists(destFolder.resolve("folder1").resolve("b.txt"));
+        assert !Files.exists(destFolder.resolve("folder1").resolve(FAILING_PREFIX+"2.txt"));
+        assert Files.exists(destFolder.resolve("folder2").resolve("c.txt"));
+    }
+
+    /**
+     * Ensures that top-level files that contain a file whose copy failed in a worker thread are not unmarked, and that
+     * the folders that contain such a file are not deleted.
+     *
+     * @throws IOException should not happen
+     */
+    @Test
+    public void testFailingMove() throws IOException {
+        TestMoveJob job = new TestMoveJob(getFiles(true), FileFactory.getFile(destFolder.toString()));
+        job.processFiles();
+
+        assert job.getState() == FileJob.FINISHED;
+        assert getNames(job.unmarkedFiles).equals(Arrays.asList("a.txt", "folder2"));
+
+        // Moved files and folders
+        assert !Files.exists(sourceFolder.resolve("a.txt"));
+        assert Files.exists(destFolder.resolve("a.txt"));
+        assert !Files.exists(sourceFolder.resolve("folder2"));
+        assert Files.exists(destFolder.resolve("folder2").resolve("c.txt"));
+        assert !Files.exists(sourceFolder.resolve("folder1").resolve("b.txt"));
+        assert Files.exists(destFolder.resolve("folder1").resolve("b.txt"));
+
+        // Files that could not be moved, and the folder that contains one
+        assert Files.exists(sourceFolder.resolve(FAILING_PREFIX+".txt"));
+        assert Files.exists(sourceFolder.resolve("folder1").resolve(FAILING_PREFIX+"2.txt"));
+    }
+
+    /**
+     * Ensures that stopping a job while a file is being read ahead by a {@link PipelinedInputStream} stops its reader.
+     *
+     * @throws Exception should not happen
+     */
+    @Test
+    public void testStoppedPipelinedCopy() throws Exception {
+        EndlessFile sourceFile = new EndlessFile(sourceFolder.resolve("endless").toString());
+        FileSet files = new FileSet(FileFactory.getFile(sourceFolder.toString()));
+        files.add(sourceFile);
+
+        final TestCopyJob job = new TestCopyJob(files, FileFactory.getFile(destFolder.toString()));
+        job.setNbWorkers(1);
+        job.setPipelinedCopyEnabled(true);
+
+        Thread jobThread = new Thread() {
+            @Override
+            public void run() {
+                job.processFiles();
+            }
+        };
+        jobThread.start();
+
+        // Wait for the copy to be under way
+        PipelinedInputStream pipelinedIn = null;
+        for (int i=0; i<500 && (pipelinedIn == null || sourceFile.nbBytesRead < 1024*1024); i++) {
+            Thread.sleep(10);
+            pipelinedIn = job.getPipelinedInputStream();
+        }
+        assert pipelinedIn != null && pipelinedIn.isReadAhead();
+        assert sourceFile.nbBytesRead >= 1024*1024;
+
+        job.interrupt();
+        jobThread.join(5000);
+        assert !jobThread.isAlive();
+        assert job.getState() == FileJob.INTERRUPTED;
+
+        for (int i=0; i<500 && !pipelinedIn.isReaderDone(); i++)
+            Thread.sleep(10);
+        assert pipelinedIn.isReaderDone();
+        assert sourceFile.closed;
+        assert job.unmarkedFiles.isEmpty();
+    }
+
+    /**
+     * A CopyJob that copies files in worker threads, and records the files it unmarks.
+     */
+    private static class TestCopyJob extends CopyJob {
+        private final List<AbstractFile> unmarkedFiles = new ArrayList<AbstractFile>();
+
+        private TestCopyJob(FileSet files, AbstractFile destFolder) {
+            super(null, null, files, destFolder, null, Mode.COPY, FileCollisionDialog.ASK_ACTION);
+            setNbWorkers(NB_WORKERS);
+        }
+
+        @Override
+        protected boolean tryCopyFile(AbstractFile sourceFile, AbstractFile destFile, boolean append, String errorDialogTitle) {
+            return !isFailingCopy(sourceFile) && super.tryCopyFile(sourceFile, destFile, append, errorDialogTitle);
+        }
+
+        @Override
+        protected void unmarkFile(AbstractFile file) {
+            unmarkedFiles.add(file);
+        }
+    }
+
+    /**
+     * A MoveJob that moves files in worker threads, and records the files it unmarks.
+     */
+    private static class TestMoveJob extends MoveJob {
+        private final List<AbstractFile> unmarkedFiles = new ArrayList<AbstractFile>();
+
+        private TestMoveJob(FileSet files, AbstractFile destFolder) {
+            super(null, null, files, destFolder, null, FileCollisionDialog.ASK_ACTION, false);
+            setNbWorkers(NB_WORKERS);
+        }
+
+        @Override
+        protected boolean tryCopyFile(AbstractFile sourceFile, AbstractFile destFile, boolean append, String errorDialogTitle) {
+            return !isFailingCopy(sourceFile) && super.tryCopyFile(sourceFile, destFile, append, errorDialogTitle);
+        }
+
+        @Override
+        protected void unmarkFile(AbstractFile file) {
+            unmarkedFiles.add(file);
+        }
+    }
+
+    /**
+     * A file of unknown size that is not a local file, whose contents never end.
+     */
+    private static class EndlessFile extends TestFile {
+        private volatile long nbBytesRead;
+        private volatile boolean closed;
+
+        private EndlessFile(String path) throws IOException {
+            super(path, false, -1, 0, null);
+        }
+
+        @Override
+        public InputStream getInputStream() {
+            return new InputStream() {
+                @Override
+                public int read() throws IOException {
+                    byte b[] = new byte[1];
+                    read(b, 0, 1);
+                    return b[0];
+                }
+
+                @Override
+                public int read(byte b[], int off, int len) throws IOException {
+                    if (closed)
+                        throw new IOException("Stream closed");
+
+                    try {
+                        // Give the job time to be stopped
+                        Thread.sleep(1);
+                    }
+                    catch(InterruptedException e) {
+                        throw new InterruptedIOException();
+                    }
+
+                    len = Math.min(len, 8192);
+                    nbBytesRead += len;
+                    return len;
+                }
+
+                @Override
+                public void close() {
+                    closed = true;
+                }
+            };
+        }
+    }
+
+    /**
+     * A file that cannot be renamed, so that MoveJob moves it by copying it. The files it contains cannot be renamed
+     * either.
+     */
+    private static class UnrenamableFile extends ProxyFile {
+
+        private UnrenamableFile(AbstractFile file) {
+            super(file);
+        }
+
+        @Override
+        @UnsupportedFileOperation
+        public void renameTo(AbstractFile destFile) throws UnsupportedFileOperationException {
+            throw new UnsupportedFileOperationException(FileOperation.RENAME);
+        }
+
+        @Override
+        public AbstractFile[] ls() throws IOException {
+            AbstractFile children[] = super.ls();
+            for (int i=0; i<children.length; i++)
+                children[i] = new UnrenamableFile(children[i]);
+
+            return children;
+        }
+    }
+}
@@ -0,0 +1,250 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2012 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.ui.event;
+
+import com.mucommander.commons.file.AbstractFile;
+import com.mucommander.commons.file.ListingListener;
+import com.mucommander.commons.file.filter.FileFilter;
+import com.mucommander.commons.file.impl.TestFile;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A test case for {@link FolderListing}: checks that a folder is presented with its first batch of children, that the
+ * other batches are added to it, and that the listing stops when the folder change is cancelled or when the folder
+ * is no longer the current one.
+ *
+ * @see FolderListing
+ */
+public class FolderListingTest {
+
+    private final static String FOLDER_PATH = "/tmp/folderlisting/folder/";
+
+    /**
+     * A folder that lists its children in the given batches, and fails after them if an exception is specified.
+     */
+    private static class BatchedFolder extends TestFile {
+        private final AbstractFile batches[][];
+        private final IOException exception;
+
+        /** Number of batches passed to the listener */
+        private int nbListedBatches;
+
+        private BatchedFolder(int nbBatches, IOException exception) throws MalformedURLException {
+            super(FOLDER_PATH, true, 0, 0, null);
+            this.exception = exception;
+
+            batches = new AbstractFile[nbBatches][];
+            for (int i=0; i<nbBatches; i++) {
+                batches[i] = new AbstractFile[] {
+                        new TestFile(FOLDER_PATH+"file"+i+"a", false, 1, 0, this),
+                        new TestFile(FOLDER_PATH+"file"+i+"b", false, 1, 0, this)
+                };
+            }
+        }
+
+        @Override
+        public void ls(FileFilter filter, ListingListener listener) throws IOException {
+            for (AbstractFile batch[]: batches) {
+                nbListedBatches++;
+                if (!listener.childrenListed(batch)) {
+                    return;
+                }
+            }
+
+            if (exception != null) {
+                throw exception;
+            }
+        }
+    }
+
+    /**
+     * Records the progress of a folder change, and cancels it when asked to.
+     */
+    private static class RecordingCallback implements LocationManager.FolderChangeCallback {
+        private final List<String> events = new ArrayList<String>();
+        private boolean cancelled;
+
+        public boolean presentingFolder() {
+            events.add("presenting");
+            return !cancelled;
+        }
+
+        public void folderPresented() {
+            events.add("presented");
+        }
+
+        public boolean isListingCancelled() {
+            return cancelled;
+        }
+    }
+
+    /**
+     * Records the children presented and added by the listing, and leaves the folder when asked to.
+     */
+    private static class RecordingListing extends FolderListing {
+        private final RecordingCallback callback;
+        private AbstractFile presentedChildren[];
+        private final List<AbstractFile[]> addedBatches = new ArrayList<AbstractFile[]>();
+        private boolean folderLeft;
+
+        /** The folder change is cancelled once this number of batches has been added, -1 for never */
+        private int cancelAfter = -1;
+
+        private RecordingListing(AbstractFile folder, RecordingCallback callback) {
+            super(folder, callback);
+            this.callback = callback;
+        }
+
+        @Override
+        protected void presentFolder(AbstractFile folder, AbstractFile[] children) {
+            // The folder is presented before the callback is notified
+            assert callback.events.equals(Arrays.asList("presenting"));
+            assert presentedChildren == null;
+            presentedChildren = children;
+        }
+
+        @Override
+        protected void addFiles(AbstractFile folder, AbstractFile[] children) {
+            assert callback.events.equals(Arrays.asList("presenting", "presented"));
+            addedBatches.add(children);
+            if (addedBatches.size() == cancelAfter) {
+                callback.cancelled = true;
+            }
+        }
+
+        @Override
+        protected boolean isCurrentFolder(AbstractFile folder) {
+            return !folderLeft;
+        }
+    }
+
+    /**
+     * Ensures that the folder is presented with its first batch of children and that the other batches are added to
+     * it.
+     *
+     * @throws IOException should not happen
+     */
+    @Test
+    public void testBatches() throws IOException {
+        BatchedFolder folder = new BatchedFolder(3, null);
+        RecordingCallback callback = new RecordingCallback();
+        RecordingListing listing = new RecordingListing(folder, callback);
+
+        assert listing.list(null);
+
+        assert callback.events.equals(Arrays.asList("presenting", "presented"));
+        assert listing.presentedChildren == folder.batches[0];
+        assert listing.addedBatches.size() == 2;
+        assert listing.addedBatches.get(0) == folder.batches[1];
+        assert listing.addedBatches.get(1) == folder.batches[2];
+        assert folder.nbListedBatches == 3;
+    }
+
+    /**
+     * Ensures that a folder change cancelled before the folder is presented leaves the folder unpresented and stops
+     * the listing at the first batch.
+     *
+     * @throws IOException should not happen
+     */
+    @Test
+    public void testCancelledBeforePresented() throws IOException {
+        BatchedFolder folder = new BatchedFolder(3, null);
+        RecordingCallback callback = new RecordingCallback();
+        callback.cancelled = true;
+        RecordingListing listing = new RecordingListing(folder, callback);
+
+        assert !listing.list(null);
+
+        assert listing.presentedChildren == null;
+        assert listing.addedBatches.isEmpty();
+        assert folder.nbListedBatches == 1;
+        // Not presented after the listing either
+        assert callback.events.equals(Arrays.asList("presenting"));
+    }
+
+    /**
+     * Ensures that the listing of the other batches stops once the folder change is cancelled.
+     *
+     * @throws IOException should not happen
+     */
+    @Test
+    public void testStoppedWhenCancelled() throws IOException {
+        BatchedFolder folder = new BatchedFolder(5, null);
+        RecordingCallback callback = new RecordingCallback();
+        RecordingListing listing = new RecordingListing(folder, callback);
+        listing.cancelAfter = 1;
+
+        // The folder was presented before the folder change was cancelled
+        assert listing.list(null);
+
+        assert listing.presentedChildren == folder.batches[0];
+        assert listing.addedBatches.size() == 1;
+        assert folder.nbListedBatches == 3;
+    }
+
+    /**
+     * Ensures that the listing of the other batches stops once the folder is no longer the current one.
+     *
+     * @throws IOException should not happen
+     */
+    @Test
+    public void testStoppedWhenFolderLeft() throws IOException {
+        BatchedFolder folder = new BatchedFolder(5, null);
+        RecordingCallback callback = new RecordingCallback();
+        RecordingListing listing = new RecordingListing(folder, callback);
+        listing.folderLeft = true;
+
+        assert listing.list(null);
+
+        assert listing.presentedChildren == folder.batches[0];
+        assert listing.addedBatches.isEmpty();
+        assert folder.nbListedBatches == 2;
+    }
+
+    /**
+     * Ensures that a folder that cannot be listed is presented empty, unless the folder change has been cancelled in
+     * the meantime (the listing is interrupted when the folder change thread is killed).
+     *
+     * @throws IOException should not happen
+     */
+    @Test
+    public void testListingFailure() throws IOException {
+        BatchedFolder folder = new BatchedFolder(0, new IOException());
+        RecordingCallback callback = new RecordingCallback();
+        RecordingListing listing = new RecordingListing(folder, callback);
+
+        assert listing.list(null);
+        assert listing.presentedChildren.length == 0;
+        assert callback.events.equals(Arrays.asList("presenting", "presented"));
+
+        callback = new RecordingCallback();
+        callback.cancelled = true;
+        listing = new RecordingListing(folder, callback);
+
+        assert !listing.list(null);
+        assert listing.presentedChildren == null;
+        assert callback.events.equals(Arrays.asList("presenting"));
+    }
+}
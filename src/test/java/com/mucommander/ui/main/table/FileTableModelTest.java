@@ -0,0 +1,390 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2012 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.ui.main.table;
+
+import com.mucommander.commons.file.AbstractFile;
+import com.mucommander.commons.file.impl.TestFile;
+import com.mucommander.text.CustomDateFormat;
+import com.mucommander.text.Translator;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import javax.swing.JTable;
+import javax.swing.event.TableModelEvent;
+import javax.swing.event.TableModelListener;
+import javax.swing.table.DefaultTableColumnModel;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * This class tests the incremental updates of {@link FileTableModel}: {@link FileTableModel#prepareUpdate} and
+ * {@link FileTableModel#applyUpdate} when a folder is refreshed, and {@link FileTableModel#addFiles} when a folder is
+ * listed in batches. Each test is run with and without the parent folder row.
+ */
+public class FileTableModelTest {
+
+    private final static String FOLDER_PATH = "/tmp/filetablemodel/folder/";
+
+    private final static long DATE = 1262304000000L;
+
+    static {
+        // Columns and sizes use localized strings, dates are formatted with the user's date format
+        try { Translator.loadDictionaryFile(); }
+        catch(Exception e) { throw new RuntimeException(e); }
+        CustomDateFormat.init();
+    }
+
+    /** The folder's parent, null when testing a folder without parent row */
+    private AbstractFile parentFolder;
+
+    /** The folder displayed by the model */
+    private AbstractFile folder;
+
+    @DataProvider(name = "parentRow")
+    public Object[][] parentRow() {
+        return new Object[][]{{false}, {true}};
+    }
+
+    private void createFolder(boolean withParent) throws IOException {
+        parentFolder = withParent ? new TestFile("/tmp/filetablemodel/", true, 0, DATE, null) : null;
+        folder = new TestFile(FOLDER_PATH, true, 0, DATE, parentFolder);
+    }
+
+    private AbstractFile file(String name, long size) throws IOException {
+        return new TestFile(FOLDER_PATH+name, false, size, DATE, folder);
+    }
+
+    private AbstractFile directory(String name) throws IOException {
+        return new TestFile(FOLDER_PATH+name+"/", true, 0, DATE, folder);
+    }
+
+    private FileTableModel createModel(Column criterion, boolean ascending, AbstractFile... children) {
+        SortInfo sortInfo = new SortInfo();
+        sortInfo.setCriterion(criterion);
+        sortInfo.setAscendingOrder(ascending);
+        sortInfo.setFoldersFirst(true);
+
+        FileTableModel model = new FileTableModel();
+        model.setSortInfo(sortInfo);
+        model.setCurrentFolder(folder, children);
+        model.sortRows();
+        return model;
+    }
+
+    /**
+     * Returns the names of the files in the order of the rows, without the parent folder row.
+     */
+    private static List<String> getNames(FileTableModel model) {
+        List<String> names = new ArrayList<>();
+        for (int row=model.getFirstMarkableRow(); row < model.getRowCount(); row++) {
+            names.add(model.getCachedFileAtRow(row).getName());
+        }
+        return names;
+    }
+
+    /**
+     * Refreshes the model's folder with the given children and checks that the change was incremental.
+     */
+    private static void update(FileTableModel model, AbstractFile folder, AbstractFile... children) {
+        FileTableModel.FolderUpdate update = model.prepareUpdate(folder, children);
+        assert update != null;
+        assert model.applyUpdate(update);
+    }
+
+    /**
+     * Replays the fine-grained events fired by a model on a copy of its rows, so that the events can be checked
+     * against the model's rows after the update.
+     */
+    private static class RowEventsRecorder implements TableModelListener {
+
+        private final FileTableModel model;
+        private final List<String> rows = new ArrayList<>();
+        private final List<String> updatedNames = new ArrayList<>();
+        private boolean structureChanged;
+
+        private RowEventsRecorder(FileTableModel model) {
+            this.model = model;
+            for (int row=0; row < model.getRowCount(); row++) {
+                rows.add(model.getCachedFileAtRow(row).getName());
+            }
+            model.addTableModelListener(this);
+        }
+
+        public void tableChanged(TableModelEvent e) {
+            if (e.getFirstRow() == TableModelEvent.HEADER_ROW || e.getLastRow() == Integer.MAX_VALUE) {
+                structureChanged = true;
+                return;
+            }
+
+            for (int row=e.getFirstRow(); row <= e.getLastRow(); row++) {
+                switch (e.getType()) {
+                    case TableModelEvent.DELETE:
+                        // Rows of a range are removed one after the other from the same index
+                        rows.remove(e.getFirstRow());
+                        break;
+                    case TableModelEvent.INSERT:
+                        rows.add(row, model.getCachedFileAtRow(row).getName());
+                        break;
+                    default:
+                        updatedNames.add(model.getCachedFileAtRow(row).getName());
+                }
+            }
+        }
+
+        private void assertMatchesModel() {
+            assert !structureChanged;
+
+            List<String> modelRows = new ArrayList<>();
+            for (int row=0; row < model.getRowCount(); row++) {
+                modelRows.add(model.getCachedFileAtRow(row).getName());
+            }
+            assert rows.equals(modelRows): rows+" "+modelRows;
+        }
+    }
+
+    private FileTableModel createNameSortedModel() throws IOException {
+        FileTableModel model = createModel(Column.NAME, true,
+                file("e.txt", 50), directory("dir2"), file("a.txt", 10), file("c.txt", 30),
+                directory("dir1"), file("b.txt", 20), file("d.txt", 40));
+        assert getNames(model).equals(Arrays.asList("dir1", "dir2", "a.txt", "b.txt", "c.txt", "d.txt", "e.txt"));
+        return model;
+    }
+
+    /**
+     * Ensures that created files are inserted at their sorted position and that rows of deleted files are removed,
+     * with one event per range of rows.
+     *
+     * @param withParent true to test with the parent folder row
+     * @throws IOException should not happen
+     */
+    @Test(dataProvider = "parentRow")
+    public void testInsertionsAndDeletions(boolean withParent) throws IOException {
+        createFolder(withParent);
+        FileTableModel model = createNameSortedModel();
+        assert model.getRowCount() == 7 + (withParent ? 1 : 0);
+        RowEventsRecorder recorder = new RowEventsRecorder(model);
+
+        update(model, folder,
+                file("e.txt", 50), directory("dir0"), file("a.txt", 10), file("aa.txt", 15),
+                file("f.txt", 60), file("b.txt", 20), file("ba.txt", 25), directory("dir1"));
+
+        assert getNames(model).equals(Arrays.asList("dir0", "dir1", "a.txt", "aa.txt", "b.txt", "ba.txt", "e.txt", "f.txt"));
+        assert model.getFileCount() == 8;
+        assert model.getRowCount() == 8 + (withParent ? 1 : 0);
+        recorder.assertMatchesModel();
+        assert recorder.updatedNames.isEmpty();
+
+        if (withParent) {
+            assert model.getCachedFileAtRow(0).equals(parentFolder);
+        }
+
+        // Deleting everything, then adding everything back
+        update(model, folder);
+        assert model.getFileCount() == 0;
+        assert model.getRowCount() == (withParent ? 1 : 0);
+
+        update(model, folder, file("z.txt", 1), directory("dir"), file("y.txt", 2));
+        assert getNames(model).equals(Arrays.asList("dir", "y.txt", "z.txt"));
+        recorder.assertMatchesModel();
+    }
+
+    /**
+     * Ensures that a renamed file, which is seen as a deleted file and a created one, moves to its new sorted
+     * position, and that files whose attributes changed are updated in place when sorted by name.
+     *
+     * @param withParent true to test with the parent folder row
+     * @throws IOException should not happen
+     */
+    @Test(dataProvider = "parentRow")
+    public void testRenamesAndChanges(boolean withParent) throws IOException {
+        createFolder(withParent);
+        FileTableModel model = createNameSortedModel();
+        RowEventsRecorder recorder = new RowEventsRecorder(model);
+
+        // a.txt renamed to g.txt, dir2 renamed to dir0, c.txt modified
+        update(model, folder,
+                file("e.txt", 50), directory("dir0"), file("g.txt", 10), file("c.txt", 35),
+                directory("dir1"), file("b.txt", 20), file("d.txt", 40));
+
+        assert getNames(model).equals(Arrays.asList("dir0", "dir1", "b.txt", "c.txt", "d.txt", "e.txt", "g.txt"));
+        recorder.assertMatchesModel();
+        assert recorder.updatedNames.equals(Arrays.asList("c.txt"));
+        assert model.getCachedFileAtRow(model.getFileRow(file("c.txt", 35))).getSize() == 35;
+    }
+
+    /**
+     * Ensures that marked files stay marked when other files are created, deleted or modified, and that the
+     * combined size of marked files follows the changes.
+     *
+     * @param withParent true to test with the parent folder row
+     * @throws IOException should not happen
+     */
+    @Test(dataProvider = "parentRow")
+    public void testMarksSurviveUpdate(boolean withParent) throws IOException {
+        createFolder(withParent);
+        FileTableModel model = createNameSortedModel();
+
+        model.setFileMarked(file("b.txt", 20), true);
+        model.setFileMarked(file("c.txt", 30), true);
+        model.setFileMarked(file("e.txt", 50), true);
+        model.setFileMarked(directory("dir1"), true);
+        assert model.getNbMarkedFiles() == 4;
+        assert model.getTotalMarkedSize() == 100;
+
+        // The parent folder row can't be marked
+        if (withParent) {
+            model.setRowMarked(0, true);
+            assert !model.isRowMarked(0);
+            assert model.getNbMarkedFiles() == 4;
+        }
+
+        // b.txt modified, e.txt deleted, a.txt renamed, a file created before the marked ones
+        update(model, folder,
+                file("0.txt", 5), directory("dir2"), file("aa.txt", 10), file("c.txt", 30),
+                directory("dir1"), file("b.txt", 22), file("d.txt", 40));
+
+        assert model.getNbMarkedFiles() == 3;
+        assert model.getTotalMarkedSize() == 52;
+
+        List<String> markedNames = new ArrayList<>();
+        for (int row=0; row < model.getRowCount(); row++) {
+            if (model.isRowMarked(row)) {
+                markedNames.add(model.getCachedFileAtRow(row).getName());
+            }
+        }
+        assert markedNames.equals(Arrays.asList("dir1", "b.txt", "c.txt")): markedNames;
+        assert model.getMarkedFiles().size() == 3;
+    }
+
+    /**
+     * Ensures that the selection of a table follows the selected file when rows are inserted and deleted before
+     * it, and that the file can still be found by {@link FileTableModel#getFileRow(AbstractFile)}, which is how
+     * {@link FileTable} restores the selection.
+     *
+     * @param withParent true to test with the parent folder row
+     * @throws IOException should not happen
+     */
+    @Test(dataProvider = "parentRow")
+    public void testSelectionSurvivesUpdate(boolean withParent) throws IOException {
+        createFolder(withParent);
+        FileTableModel model = createNameSortedModel();
+
+        // No column is needed to track the selection
+        JTable table = new JTable(model, new DefaultTableColumnModel());
+        int selectedRow = model.getFileRow(file("c.txt", 30));
+        table.getSelectionModel().setSelectionInterval(selectedRow, selectedRow);
+
+        // Rows inserted and deleted both before and after the selected file
+        update(model, folder,
+                file("0.txt", 5), file("00.txt", 6), directory("dir2"), file("c.txt", 30),
+                file("b.txt", 20), file("f.txt", 60));
+
+        selectedRow = table.getSelectedRow();
+        assert model.getCachedFileAtRow(selectedRow).getName().equals("c.txt");
+        assert model.getFileRow(file("c.txt", 30)) == selectedRow;
+
+        // The parent folder row stays at the top
+        if (withParent) {
+            assert model.getFileRow(parentFolder) == 0;
+        }
+    }
+
+    /**
+     * Ensures that rows stay sorted by an attribute, in descending order, when files are created and when the
+     * attribute of existing files changes.
+     *
+     * @param withParent true to test with the parent folder row
+     * @throws IOException should not happen
+     */
+    @Test(dataProvider = "parentRow")
+    public void testSortOrderSurvivesUpdate(boolean withParent) throws IOException {
+        createFolder(withParent);
+        FileTableModel model = createModel(Column.SIZE, false,
+                file("a.txt", 10), file("b.txt", 20), file("c.txt", 30), file("d.txt", 40), directory("dir"));
+        assert getNames(model).equals(Arrays.asList("dir", "d.txt", "c.txt", "b.txt", "a.txt"));
+        RowEventsRecorder recorder = new RowEventsRecorder(model);
+
+        // a.txt grows past all the others, c.txt shrinks, e.txt is created in the middle
+        update(model, folder,
+                file("a.txt", 100), file("b.txt", 20), file("c.txt", 5), file("d.txt", 40), file("e.txt", 25),
+                directory("dir"));
+
+        assert getNames(model).equals(Arrays.asList("dir", "a.txt", "d.txt", "e.txt", "b.txt", "c.txt")): getNames(model);
+        recorder.assertMatchesModel();
+
+        // Files that keep their place in the order are moved rather than updated, which is just as valid
+        for (String name : recorder.updatedNames) {
+            assert !name.equals("b.txt") && !name.equals("d.txt");
+        }
+    }
+
+    /**
+     * Ensures that an update is rejected when the model has changed since it was prepared, and that no update is
+     * prepared for another folder.
+     *
+     * @param withParent true to test with the parent folder row
+     * @throws IOException should not happen
+     */
+    @Test(dataProvider = "parentRow")
+    public void testStaleUpdate(boolean withParent) throws IOException {
+        createFolder(withParent);
+        FileTableModel model = createNameSortedModel();
+
+        AbstractFile otherFolder = new TestFile("/tmp/filetablemodel/other/", true, 0, DATE, parentFolder);
+        assert model.prepareUpdate(otherFolder, new AbstractFile[]{file("a.txt", 10)}) == null;
+
+        FileTableModel.FolderUpdate update = model.prepareUpdate(folder, new AbstractFile[]{file("a.txt", 10)});
+        assert update != null;
+        update(model, folder, file("a.txt", 10), file("b.txt", 20));
+
+        assert !model.applyUpdate(update);
+        assert getNames(model).equals(Arrays.asList("a.txt", "b.txt"));
+    }
+
+    /**
+     * Ensures that files added in batches while a folder is being listed are inserted at their sorted position.
+     *
+     * @param withParent true to test with the parent folder row
+     * @throws IOException should not happen
+     */
+    @Test(dataProvider = "parentRow")
+    public void testAddFiles(boolean withParent) throws IOException {
+        createFolder(withParent);
+        FileTableModel model = createModel(Column.NAME, true, file("m.txt", 1), directory("dir5"));
+        RowEventsRecorder recorder = new RowEventsRecorder(model);
+
+        model.setFileMarked(file("m.txt", 1), true);
+
+        assert model.addFiles(folder, FileTableModel.createCachedFiles(new AbstractFile[]{
+                file("z.txt", 1), file("a.txt", 1), directory("dir9"), directory("dir0")}));
+        assert model.addFiles(folder, FileTableModel.createCachedFiles(new AbstractFile[]{file("n.txt", 1)}));
+
+        assert getNames(model).equals(Arrays.asList("dir0", "dir5", "dir9", "a.txt", "m.txt", "n.txt", "z.txt"));
+        recorder.assertMatchesModel();
+        assert model.getNbMarkedFiles() == 1;
+        assert model.isRowMarked(model.getFileRow(file("m.txt", 1)));
+
+        // Batches of a folder that is not current anymore are ignored
+        AbstractFile otherFolder = new TestFile("/tmp/filetablemodel/other/", true, 0, DATE, parentFolder);
+        assert !model.addFiles(otherFolder, FileTableModel.createCachedFiles(new AbstractFile[]{file("b.txt", 1)}));
+        assert model.getFileCount() == 7;
+    }
+}
@@ -0,0 +1,250 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2002-2012 Maxence Bernard
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.mucommander.ui.viewer.text;
+
+import com.mucommander.commons.io.RandomAccessInputStream;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * A test case for {@link LineIndex}.
+ *
+ * @see LineIndex
+ */
+public class LineIndexTest {
+
+    /**
+     * A stream over a byte array that can grow or shrink, like a log file.
+     */
+    private static class MemoryInputStream extends RandomAccessInputStream {
+        private byte[] data = new byte[0];
+        private long offset;
+
+        private void setData(byte[] data) {
+            this.data = data;
+        }
+
+        @Override
+        public int read() {
+            return offset < data.length ? data[(int)offset++] & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (offset >= data.length) {
+                return -1;
+            }
+            len = (int)Math.min(len, data.length - offset);
+            System.arraycopy(data, (int)offset, b, off, len);
+            offset += len;
+            return len;
+        }
+
+        @Override
+        public long getOffset() {
+            return offset;
+        }
+
+        @Override
+        public long getLength() {
+            return data.length;
+        }
+
+        @Override
+        public void seek(long offset) {
+            this.offset = offset;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    /**
+     * Returns random lines, some of them empty, with characters that are encoded with several bytes.
+     */
+    private static List<String> getRandomLines(Random random, int nbLines) {
+        String chars = "abcdefghijklmnopqrstuvwxyz 0123456789éжਊ中";
+        List<String> lines = new ArrayList<>();
+        for (int i = 0; i < nbLines; i++) {
+            StringBuilder sb = new StringBuilder();
+            int length = random.nextInt(10) == 0 ? 0 : random.nextInt(200);
+            for (int j = 0; j < length; j++) {
+                sb.append(chars.charAt(random.nextInt(chars.length())));
+            }
+            lines.add(sb.toString());
+        }
+        return lines;
+    }
+
+    private static byte[] encode(List<String> lines, String encoding, byte[] bom) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(bom);
+        for (int i = 0; i < lines.size(); i++) {
+            if (i > 0) {
+                out.write((i % 3 == 0 ? "\r\n" : "\n").getBytes(encoding));
+            }
+            out.write(lines.get(i).getBytes(encoding));
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Indexes the given stream by small steps, as it would be while the file is being viewed.
+     */
+    private static void update(LineIndex index, MemoryInputStream in) throws IOException {
+        while (index.update(in, 10000)) {
+            // Index the next step
+        }
+    }
+
+    /**
+     * Asserts that the index contains the given lines, by reading them at random positions.
+     */
+    private static void checkLines(LineIndex index, MemoryInputStream in, List<String> lines, Random random) throws IOException {
+        assert index.getLineCount() == lines.size();
+        for (int i = 0; i < 100; i++) {
+            int first = random.nextInt(lines.size());
+            int count = random.nextInt(300) + 1;
+            List<String> read = index.readLines(in, first, count);
+            assert read.equals(lines.subList(first, Math.min(first + count, lines.size())));
+
+            long offset = index.getLineOffset(in, first);
+            assert index.getLineAt(in, offset) == first;
+            if (lines.get(first).length() > 0) {
+                assert index.getLineAt(in, offset + 1) == first;
+            }
+            if (first > 0) {
+                assert index.getLineAt(in, offset - 1) == first - 1;
+            }
+        }
+    }
+
+    private void testEncoding(String encoding, byte[] bom) throws IOException {
+        Random random = new Random();
+        List<String> lines = getRandomLines(random, 5000);
+        MemoryInputStream in = new MemoryInputStream();
+        in.setData(encode(lines, encoding, bom));
+        LineIndex index = new LineIndex(encoding);
+        update(index, in);
+        checkLines(index, in, lines, random);
+    }
+
+    /**
+     * Indexes files with different encodings, whose line separator is 1, 2 or 4 bytes long.
+     *
+     * @throws IOException should not happen
+     */
+    @Test
+    public void testEncodings() throws IOException {
+        testEncoding("UTF-8", new byte[0]);
+        testEncoding("UTF-8", new byte[] {(byte)0xEF, (byte)0xBB, (byte)0xBF});
+        testEncoding("UTF-16LE", new byte[0]);
+        testEncoding("UTF-16BE", new byte[0]);
+        testEncoding("UTF-32LE", new byte[0]);
+    }
+
+    /**
+     * Asserts that the encoding of a file that starts with a BOM is the one of the BOM.
+     *
+     * @throws IOException should not happen
+     */
+    @Test
+    public void testBOM() throws IOException {
+        List<String> lines = Arrays.asList("first", "second ਊ", "");
+        MemoryInputStream in = new MemoryInputStream();
+        in.setData(encode(lines, "UTF-16LE", new byte[] {(byte)0xFF, (byte)0xFE}));
+        LineIndex index = new LineIndex("ISO-8859-1");
+        update(index, in);
+        assert index.getCharset().name().equals("UTF-16LE");
+        assert index.readLines(in, 0, 10).equals(lines);
+        assert !index.isAligned(3);
+        assert index.isAligned(4);
+
+        in.setData(encode(lines, "UTF-16BE", new byte[0]));
+        index = new LineIndex("UTF-16");
+        update(index, in);
+        assert index.readLines(in, 0, 10).equals(lines);
+    }
+
+    /**
+     * Appends lines to the file, then truncates it, and asserts that the index follows.
+     *
+     * @throws IOException should not happen
+     */
+    @Test
+    public void testGrowAndTruncate() throws IOException {
+        Random random = new Random();
+        List<String> lines = getRandomLines(random, 1000);
+        MemoryInputStream in = new MemoryInputStream();
+        LineIndex index = new LineIndex("UTF-8");
+        in.setData(encode(lines, "UTF-8", new byte[0]));
+        update(index, in);
+        assert !index.update(in, 10000);
+
+        for (int i = 0; i < 10; i++) {
+            // The last line is completed before other ones are added
+            lines.set(lines.size() - 1, lines.get(lines.size() - 1) + "end");
+            lines.addAll(getRandomLines(random, random.nextInt(500)));
+            in.setData(encode(lines, "UTF-8", new byte[0]));
+            update(index, in);
+            checkLines(index, in, lines, random);
+        }
+
+        lines = lines.subList(0, 10);
+        in.setData(encode(lines, "UTF-8", new byte[0]));
+        update(index, in);
+        assert index.getResetCount() == 1;
+        checkLines(index, in, lines, random);
+
+        in.setData(new byte[0]);
+        update(index, in);
+        assert index.getLineCount() == 1;
+        assert index.readLines(in, 0, 10).equals(Arrays.asList(""));
+    }
+
+    /**
+     * Asserts that long lines are truncated when they are read.
+     *
+     * @throws IOException should not happen
+     */
+    @Test
+    public void testLongLines() throws IOException {
+        byte data[] = new byte[LineIndex.MAX_LINE_LENGTH * 10];
+        Arrays.fill(data, (byte)'a');
+        data[LineIndex.MAX_LINE_LENGTH * 5] = '\n';
+        MemoryInputStream in = new MemoryInputStream();
+        in.setData(data);
+        LineIndex index = new LineIndex("UTF-8");
+        update(index, in);
+        assert index.getLineCount() == 2;
+        assert index.getMaxLineLength() == LineIndex.MAX_LINE_LENGTH * 5;
+        List<String> lines = index.readLines(in, 0, 2);
+        assert lines.size() == 2;
+        assert lines.get(0).length() == LineIndex.MAX_LINE_LENGTH;
+        assert lines.get(1).length() == LineIndex.MAX_LINE_LENGTH;
+        assert index.getLineAt(in, LineIndex.MAX_LINE_LENGTH * 5 + 1) == 1;
+    }
+}
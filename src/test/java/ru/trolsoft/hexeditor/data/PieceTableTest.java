@@ -0,0 +1,232 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2013-2014 Oleg Trifonov
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ru.trolsoft.hexeditor.data;
+
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * A test case for {@link PieceTable} and the page cache of {@link AbstractByteBuffer}.
+ *
+ * @see PieceTable
+ */
+public class PieceTableTest {
+
+    /** Small pages, so that reads and changes span several of them */
+    private static final int PAGE_SIZE = 100;
+
+    /**
+     * A buffer over a byte array that counts the pages it loads.
+     */
+    private static class ArrayByteBuffer extends AbstractByteBuffer {
+        private final byte[] data;
+        private int nbLoads;
+
+        private ArrayByteBuffer(byte[] data) {
+            super(PAGE_SIZE, 4);
+            this.data = data;
+        }
+
+        @Override
+        protected void closeStream() {
+        }
+
+        @Override
+        protected long getStreamSize() {
+            return data.length;
+        }
+
+        @Override
+        protected void loadBuffer() {
+            size = (int)Math.min(capacity, data.length - offset);
+            System.arraycopy(data, (int)offset, buffer, 0, size);
+            nbLoads++;
+        }
+
+        @Override
+        protected boolean supportRandomAccess() {
+            return true;
+        }
+    }
+
+    private static byte[] getRandomBytes(int length) {
+        byte bytes[] = new byte[length];
+        new Random().nextBytes(bytes);
+        return bytes;
+    }
+
+    /**
+     * Returns the data of the given buffer, read with both {@link AbstractByteBuffer#getByte(long)} and
+     * {@link AbstractByteBuffer#getBytes(long, byte[], int, int)}.
+     */
+    private static byte[] getData(AbstractByteBuffer buffer) throws IOException {
+        byte data[] = new byte[(int)buffer.getFileSize()];
+        for (int i = data.length - 1; i >= 0; i--) {
+            data[i] = buffer.getByte(i);
+        }
+        byte bulk[] = new byte[data.length];
+        int pos = 0;
+        while (pos < bulk.length) {
+            int n = buffer.getBytes(pos, bulk, pos, Math.min(37, bulk.length - pos));
+            assert n > 0;
+            pos += n;
+        }
+        assert buffer.getBytes(bulk.length, bulk, 0, 1) == -1;
+        assert Arrays.equals(data, bulk);
+        return data;
+    }
+
+    private static byte[] replace(byte[] data, int pos, int len, byte[] bytes) {
+        byte result[] = new byte[data.length - len + bytes.length];
+        System.arraycopy(data, 0, result, 0, pos);
+        System.arraycopy(bytes, 0, result, pos, bytes.length);
+        System.arraycopy(data, pos + len, result, pos + bytes.length, data.length - pos - len);
+        return result;
+    }
+
+    /**
+     * Asserts that pages are cached and the least recently used one is evicted first.
+     *
+     * @throws IOException should not happen
+     */
+    @Test
+    public void testPageCache() throws IOException {
+        ArrayByteBuffer buffer = new ArrayByteBuffer(getRandomBytes(1000));
+        for (int i = 0; i < 4; i++) {
+            buffer.getByte(i * PAGE_SIZE + 50);
+        }
+        assert buffer.nbLoads == 4;
+        for (int i = 3; i >= 0; i--) {
+            buffer.getByte(i * PAGE_SIZE);
+        }
+        assert buffer.nbLoads == 4;
+
+        // Evicts the page at 300, which is the least recently used one
+        buffer.getByte(999);
+        assert buffer.nbLoads == 5;
+        buffer.getByte(0);
+        assert buffer.nbLoads == 5;
+        buffer.getByte(300);
+        assert buffer.nbLoads == 6;
+
+        buffer.invalidate();
+        buffer.getByte(0);
+        assert buffer.nbLoads == 7;
+    }
+
+    /**
+     * Applies random changes, compares the data with the expected one after each of them, then undoes and redoes them.
+     *
+     * @throws IOException should not happen
+     */
+    @Test
+    public void testEdits() throws IOException {
+        Random random = new Random();
+        byte original[] = getRandomBytes(1000);
+        PieceTable pieceTable = new PieceTable(new ArrayByteBuffer(original));
+        assert !pieceTable.isModified();
+        assert !pieceTable.canUndo();
+
+        List<byte[]> states = new ArrayList<>();
+        byte data[] = original;
+        states.add(data);
+        for (int i = 0; i < 200; i++) {
+            int pos = random.nextInt(data.length + 1);
+            switch (random.nextInt(3)) {
+                case 0:
+                    byte inserted[] = getRandomBytes(random.nextInt(150) + 1);
+                    pieceTable.insert(pos, inserted);
+                    data = replace(data, pos, 0, inserted);
+                    break;
+                case 1:
+                    byte overwritten[] = getRandomBytes(random.nextInt(150) + 1);
+                    pieceTable.overwrite(pos, overwritten);
+                    data = replace(data, pos, Math.min(overwritten.length, data.length - pos), overwritten);
+                    break;
+                default:
+                    if (pos == data.length) {
+                        continue;   // Nothing to delete
+                    }
+                    int len = random.nextInt(data.length - pos) + 1;
+                    pieceTable.delete(pos, len);
+                    data = replace(data, pos, len, new byte[0]);
+            }
+            assert pieceTable.getLength() == data.length;
+            assert Arrays.equals(data, getData(pieceTable));
+            states.add(data);
+        }
+
+        for (int i = states.size() - 2; i >= 0; i--) {
+            assert pieceTable.undo() >= 0;
+            assert Arrays.equals(states.get(i), getData(pieceTable));
+        }
+        assert pieceTable.undo() == -1;
+        assert !pieceTable.isModified();
+
+        for (int i = 1; i < states.size(); i++) {
+            assert pieceTable.redo() >= 0;
+            assert Arrays.equals(states.get(i), getData(pieceTable));
+        }
+        assert pieceTable.redo() == -1;
+        assert pieceTable.isModified();
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        pieceTable.write(out);
+        assert Arrays.equals(data, out.toByteArray());
+    }
+
+    /**
+     * Asserts that bytes typed one after the other extend the same piece, and that only overwrites allow saving in
+     * place.
+     *
+     * @throws IOException should not happen
+     */
+    @Test
+    public void testTypingAndSaveInPlace() throws IOException {
+        PieceTable pieceTable = new PieceTable(new ArrayByteBuffer(getRandomBytes(1000)));
+        for (int i = 0; i < 100; i++) {
+            pieceTable.overwrite(500 + i, new byte[] {(byte)i});
+        }
+        assert pieceTable.getPieceCount() == 3;
+        assert pieceTable.canSaveInPlace();
+
+        for (int i = 0; i < 100; i++) {
+            pieceTable.insert(100 + i, new byte[] {(byte)i});
+        }
+        assert pieceTable.getPieceCount() == 5;
+        assert !pieceTable.canSaveInPlace();
+
+        pieceTable.undo();
+        pieceTable.delete(100, 99);
+        assert pieceTable.getLength() == 1000;
+        assert pieceTable.canSaveInPlace();
+
+        // Every change can be undone
+        for (int i = 0; i < 200; i++) {
+            pieceTable.undo();
+        }
+        assert !pieceTable.canUndo();
+        assert !pieceTable.isModified();
+    }
+}
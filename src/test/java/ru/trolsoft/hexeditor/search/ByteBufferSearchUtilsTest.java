@@ -0,0 +1,103 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2013-2014 Oleg Trifonov
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ru.trolsoft.hexeditor.search;
+
+import org.testng.annotations.Test;
+import ru.trolsoft.hexeditor.data.FileByteBuffer;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+
+/**
+ * A test case for {@link ByteBufferSearchUtils}.
+ *
+ * @see ByteBufferSearchUtils
+ */
+public class ByteBufferSearchUtilsTest {
+
+    /** Small pages, so that the data spans several of them */
+    private static final int PAGE_SIZE = 1000;
+
+    /**
+     * Creates a temporary file made of <code>length</code> zeros followed by the given pattern.
+     */
+    private static File createFile(int length, byte[] pattern) throws IOException {
+        File file = File.createTempFile("byteBufferSearch", null);
+        file.deleteOnExit();
+        OutputStream out = new FileOutputStream(file);
+        try {
+            out.write(new byte[length]);
+            out.write(pattern);
+        } finally {
+            out.close();
+        }
+        return file;
+    }
+
+    /**
+     * Asserts that the patterns are found forward and backward, at page boundaries included.
+     *
+     * @throws IOException should not happen
+     */
+    @Test
+    public void testIndexOf() throws IOException {
+        byte pattern[] = {1, 2, 3};
+        File file = createFile(PAGE_SIZE * 3 - 1, pattern);
+        FileByteBuffer data = new FileByteBuffer(file.getAbsolutePath(), "r", PAGE_SIZE);
+        try {
+            assert ByteBufferSearchUtils.indexOf(data, pattern, 0) == PAGE_SIZE * 3 - 1;
+            assert ByteBufferSearchUtils.indexOf(data, pattern, PAGE_SIZE * 3) == -1;
+            assert ByteBufferSearchUtils.indexOf(data, new byte[][] {{4}, {2, 3}}, 10) == PAGE_SIZE * 3;
+            assert ByteBufferSearchUtils.indexOfBackward(data, pattern, data.getFileSize()) == PAGE_SIZE * 3 - 1;
+            assert ByteBufferSearchUtils.indexOfBackward(data, pattern, PAGE_SIZE * 3 - 2) == -1;
+        } finally {
+            data.close();
+        }
+    }
+
+    /**
+     * Asserts that searching a file that has been truncated since its size was read ends instead of looping forever.
+     *
+     * @throws IOException should not happen
+     */
+    @Test(timeOut = 10000)
+    public void testTruncatedFile() throws IOException {
+        byte pattern[] = {1, 2, 3};
+        File file = createFile(PAGE_SIZE * 5, pattern);
+        FileByteBuffer data = new FileByteBuffer(file.getAbsolutePath(), "r", PAGE_SIZE);
+        try {
+            // The size of the file is cached by the buffer
+            assert data.getFileSize() == PAGE_SIZE * 5 + pattern.length;
+
+            RandomAccessFile raf = new RandomAccessFile(file, "rw");
+            try {
+                raf.setLength(PAGE_SIZE * 2 + 10);
+            } finally {
+                raf.close();
+            }
+
+            assert ByteBufferSearchUtils.indexOf(data, pattern, 0) == -1;
+            assert ByteBufferSearchUtils.indexOf(data, new byte[][] {pattern, {4}}, PAGE_SIZE) == -1;
+        } finally {
+            data.close();
+        }
+    }
+}
@@ -0,0 +1,174 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2013-2014 Oleg Trifonov
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ru.trolsoft.utils.search;
+
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.util.Random;
+
+/**
+ * A test case for the {@link BlockSearcher} implementations and {@link SearchUtils#indexOf(InputStream, BlockSearcher)}.
+ *
+ * @see HorspoolSearcher
+ * @see AhoCorasickSearcher
+ */
+public class BlockSearcherTest {
+
+    /** Data made of few distinct values, so that partial and overlapping matches are frequent */
+    private static byte[] getRandomBytes(Random random, int length) {
+        byte bytes[] = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = (byte)random.nextInt(3);
+        }
+        return bytes;
+    }
+
+    private static boolean matches(byte[] data, int pos, byte[] pattern) {
+        for (int j = 0; j < pattern.length; j++) {
+            if (data[pos + j] != pattern[j]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int naiveIndexOf(byte[] data, int from, int to, byte[]... patterns) {
+        for (int i = from; i < to; i++) {
+            for (byte[] pattern : patterns) {
+                if (i + pattern.length <= to && matches(data, i, pattern)) {
+                    return i;
+                }
+            }
+        }
+        return -1;
+    }
+
+    private static int naiveLastIndexOf(byte[] data, int from, int to, byte[] pattern) {
+        for (int i = to - pattern.length; i >= from; i--) {
+            if (matches(data, i, pattern)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * A stream that returns few bytes at a time, so that blocks are filled by several reads.
+     */
+    private static class SlowInputStream extends FilterInputStream {
+        private SlowInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            return super.read(b, off, Math.min(len, 1000));
+        }
+    }
+
+    /**
+     * Compares {@link HorspoolSearcher#indexOf(byte[], int, int)} and {@link HorspoolSearcher#lastIndexOf(byte[], int, int)}
+     * with a naive search.
+     */
+    @Test
+    public void testHorspool() {
+        Random random = new Random();
+        for (int i = 0; i < 1000; i++) {
+            byte data[] = getRandomBytes(random, 500);
+            byte pattern[] = getRandomBytes(random, random.nextInt(8) + 1);
+            int from = random.nextInt(100);
+            int to = data.length - random.nextInt(100);
+            HorspoolSearcher searcher = new HorspoolSearcher(pattern);
+            assert searcher.indexOf(data, from, to) == naiveIndexOf(data, from, to, pattern);
+            assert searcher.lastIndexOf(data, from, to) == naiveLastIndexOf(data, from, to, pattern);
+        }
+    }
+
+    /**
+     * Asserts that a case-insensitive pattern matches all the cases of the string.
+     *
+     * @throws UnsupportedEncodingException should not happen
+     */
+    @Test
+    public void testCaseInsensitive() throws UnsupportedEncodingException {
+        byte data[] = "The QUICK brown fox jumps over the lazy dog".getBytes("utf-8");
+        HorspoolSearcher searcher = new HorspoolSearcher(new StringCaseInsensitiveSearchPattern("quick", "utf-8"));
+        assert searcher.indexOf(data, 0, data.length) == 4;
+        searcher = new HorspoolSearcher(new StringCaseInsensitiveSearchPattern("the", "utf-8"));
+        assert searcher.indexOf(data, 1, data.length) == 31;
+        assert searcher.lastIndexOf(data, 0, data.length) == 31;
+        searcher = new HorspoolSearcher(new StringCaseSensitiveSearchPattern("the", "utf-8"));
+        assert searcher.indexOf(data, 0, data.length) == 31;
+    }
+
+    /**
+     * Compares {@link AhoCorasickSearcher} with a naive search of several patterns, one being a suffix of another.
+     */
+    @Test
+    public void testAhoCorasick() {
+        Random random = new Random();
+        for (int i = 0; i < 1000; i++) {
+            byte data[] = getRandomBytes(random, 500);
+            byte longPattern[] = getRandomBytes(random, random.nextInt(8) + 2);
+            byte suffix[] = new byte[random.nextInt(longPattern.length - 1) + 1];
+            System.arraycopy(longPattern, longPattern.length - suffix.length, suffix, 0, suffix.length);
+            byte patterns[][] = {longPattern, suffix, getRandomBytes(random, random.nextInt(8) + 1)};
+            int from = random.nextInt(100);
+            int to = data.length - random.nextInt(100);
+            AhoCorasickSearcher searcher = new AhoCorasickSearcher(patterns);
+            assert searcher.getMaxLength() == Math.max(longPattern.length, patterns[2].length);
+            assert searcher.indexOf(data, from, to) == naiveIndexOf(data, from, to, patterns);
+        }
+    }
+
+    /**
+     * Searches streams larger than a block, with matches spanning two blocks.
+     *
+     * @throws IOException should not happen
+     */
+    @Test
+    public void testStream() throws IOException {
+        Random random = new Random();
+        byte data[] = new byte[SearchUtils.BLOCK_SIZE * 3];
+        byte pattern[] = {1, 2, 3, 4, 5, 6, 7, 8};
+        for (int offset : new int[] {0, 100, SearchUtils.BLOCK_SIZE - 3, SearchUtils.BLOCK_SIZE * 2 - 7,
+                SearchUtils.BLOCK_SIZE * 2 + 1, data.length - pattern.length}) {
+            random.nextBytes(data);
+            for (int i = 0; i < data.length; i++) {
+                if (data[i] == 1 || data[i] == 7) {
+                    data[i] = 0;
+                }
+            }
+            System.arraycopy(pattern, 0, data, offset, pattern.length);
+            assert SearchUtils.indexOf(new SlowInputStream(new ByteArrayInputStream(data)), new HorspoolSearcher(pattern)) == offset;
+
+            // The shorter pattern is found further, but the longer one starts before it
+            byte patterns[][] = {pattern, {7, 8}};
+            assert SearchUtils.indexOf(new SlowInputStream(new ByteArrayInputStream(data)), new AhoCorasickSearcher(patterns)) == offset;
+        }
+
+        data = new byte[SearchUtils.BLOCK_SIZE * 2 + 10];
+        assert SearchUtils.indexOf(new ByteArrayInputStream(data), new HorspoolSearcher(pattern)) == -1;
+        assert SearchUtils.indexOf(new ByteArrayInputStream(new byte[3]), new HorspoolSearcher(pattern)) == -1;
+    }
+}
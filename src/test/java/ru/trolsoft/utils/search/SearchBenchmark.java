@@ -0,0 +1,102 @@
+/*
+ * This file is part of muCommander, http://www.mucommander.com
+ * Copyright (C) 2013-2014 Oleg Trifonov
+ *
+ * muCommander is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * muCommander is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ru.trolsoft.utils.search;
+
+import java.io.ByteArrayInputStream;
+import java.io.UnsupportedEncodingException;
+import java.util.Random;
+
+/**
+ * Measures the throughput of the content search, as used by the file search and the hex viewer: the previous byte by
+ * byte KMP search through {@link InputStreamSource} and the Boyer-Moore-Horspool block search of
+ * {@link SearchUtils#indexOf(java.io.InputStream, BlockSearcher)}. The pattern is searched in random lowercase text
+ * where it does not occur, so that the whole data is scanned.
+ *
+ * <p>This is not a unit test, run it with <code>java SearchBenchmark [pattern...]</code>. Patterns default to strings
+ * of 4 to 30 characters.</p>
+ */
+public class SearchBenchmark {
+
+    private final static String DEFAULT_PATTERNS[] = {"jdk7", "muCommander", "OutOfMemoryError", "The quick brown fox jumps over"};
+
+    /** Size of the searched data */
+    private final static int DATA_SIZE = 64 * 1024 * 1024;
+
+    /** Number of times each measure is repeated, the best time is kept */
+    private final static int NB_RUNS = 3;
+
+    private static byte[] getRandomText() {
+        Random random = new Random(0);
+        byte data[] = new byte[DATA_SIZE];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte)(random.nextInt(10) == 0 ? ' ' : 'a' + random.nextInt(26));
+        }
+        return data;
+    }
+
+    @SuppressWarnings("deprecation")
+    private static long runKmp(byte[] data, SearchPattern pattern) throws Exception {
+        long start = System.nanoTime();
+        InputStreamSource source = new InputStreamSource(new ByteArrayInputStream(data));
+        long pos = SearchUtils.indexOf(source, pattern);
+        source.close();
+        long time = System.nanoTime() - start;
+        assert pos == -1;
+        return time;
+    }
+
+    private static long runBlocks(byte[] data, SearchPattern pattern) throws Exception {
+        long start = System.nanoTime();
+        long pos = SearchUtils.indexOf(new ByteArrayInputStream(data), new HorspoolSearcher(pattern));
+        long time = System.nanoTime() - start;
+        assert pos == -1;
+        return time;
+    }
+
+    private static double getBestThroughput(byte[] data, SearchPattern pattern, boolean blocks) throws Exception {
+        long best = Long.MAX_VALUE;
+        for (int run = 0; run < NB_RUNS; run++) {
+            best = Math.min(best, blocks ? runBlocks(data, pattern) : runKmp(data, pattern));
+        }
+        return data.length / (double)best;     // bytes per nanosecond = GB/s
+    }
+
+    private static SearchPattern getPattern(String s, boolean caseSensitive) throws UnsupportedEncodingException {
+        return caseSensitive ? new StringCaseSensitiveSearchPattern(s, "utf-8") :
+                new StringCaseInsensitiveSearchPattern(s, "utf-8");
+    }
+
+    public static void main(String args[]) throws Exception {
+        String patterns[] = args.length == 0 ? DEFAULT_PATTERNS : args;
+        byte data[] = getRandomText();
+
+        // Warm up both implementations
+        getBestThroughput(data, getPattern("warmup", true), false);
+        getBestThroughput(data, getPattern("warmup", true), true);
+
+        for (String s : patterns) {
+            for (boolean caseSensitive : new boolean[] {true, false}) {
+                SearchPattern pattern = getPattern(s, caseSensitive);
+                double kmp = getBestThroughput(data, pattern, false);
+                double blocks = getBestThroughput(data, pattern, true);
+                System.out.println(String.format("%-32s %-16s KMP %6.2f GB/s, blocks %6.2f GB/s (x%.1f)",
+                        '"' + s + '"', caseSensitive ? "case sensitive" : "ignore case", kmp, blocks, blocks / kmp));
+            }
+        }
+    }
+}